@@ -11,7 +11,7 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2015 ForgeRock AS.
+ * Copyright 2015-2016 ForgeRock AS.
  */
 package org.forgerock.openam.audit;
 
@@ -304,6 +304,42 @@ public final class AuditConstants {
      */
     public static final String LOGIN_MODULE_CONTROL_FLAG = "loginModuleControlFlag";
 
+    /**
+     * System property that turns on publishing audit events from a background thread rather than from the thread
+     * that creates them. Defaults to {@code true}.
+     */
+    public static final String CONFIG_ASYNC_ENABLED = "org.forgerock.openam.audit.async.enabled";
+
+    /**
+     * System property for the number of audit events that can wait to be published by the background thread.
+     */
+    public static final String CONFIG_ASYNC_QUEUE_SIZE = "org.forgerock.openam.audit.async.queuesize";
+
+    /**
+     * System property for the most audit events that the background thread takes from the queue at once, which it
+     * publishes together topic by topic.
+     */
+    public static final String CONFIG_ASYNC_BATCH_SIZE = "org.forgerock.openam.audit.async.batchsize";
+
+    /**
+     * System property for the milliseconds to wait before retrying to publish spooled audit events, after the audit
+     * service has failed to handle one.
+     */
+    public static final String CONFIG_ASYNC_RETRY_INTERVAL = "org.forgerock.openam.audit.async.retryinterval";
+
+    /**
+     * System property for the directory of the journals in which audit events are spooled when they cannot be
+     * published straight away. Defaults to the {@code audit/spool} directory of the configuration directory.
+     */
+    public static final String CONFIG_SPOOL_DIRECTORY = "org.forgerock.openam.audit.spool.directory";
+
+    /**
+     * System property for the size in megabytes of each journal in which audit events are spooled: one for events
+     * that overflow the queue, and one for each realm and topic whose audit service has failed. A size of zero turns
+     * spooling off.
+     */
+    public static final String CONFIG_SPOOL_SIZE = "org.forgerock.openam.audit.spool.size";
+
     private AuditConstants() {
         // Prevent instantiation
     }
@@ -45,25 +45,43 @@ public class AuditEventPublisherImpl implements AuditEventPublisher {
     private static Debug debug = Debug.getInstance("amAudit");
 
     private final AuditServiceProvider auditServiceProvider;
+    private final AuditEventQueue auditEventQueue;
 
     /**
-     * Constructs a new {@code AuditEventPublisher}.
+     * Constructs a new {@code AuditEventPublisher} that publishes events on the calling thread.
      *
      * @param auditServiceProvider A {@code AuditServiceProvider} instance.
      */
-    @Inject
     public AuditEventPublisherImpl(AuditServiceProvider auditServiceProvider) {
+        this(auditServiceProvider, null);
+    }
+
+    /**
+     * Constructs a new {@code AuditEventPublisher} that hands events to an {@code AuditEventQueue} to be published.
+     *
+     * @param auditServiceProvider A {@code AuditServiceProvider} instance.
+     * @param auditEventQueue The queue that publishes events in the background, or {@code null} to publish events on
+     *                        the calling thread.
+     */
+    @Inject
+    public AuditEventPublisherImpl(AuditServiceProvider auditServiceProvider, AuditEventQueue auditEventQueue) {
         this.auditServiceProvider = auditServiceProvider;
+        this.auditEventQueue = auditEventQueue;
+        if (auditEventQueue != null) {
+            auditEventQueue.start(new AuditEventQueue.Delivery() {
+                @Override
+                public void deliver(String topic, JsonValue event) throws ResourceException {
+                    publish(topic, event);
+                }
+            });
+        }
     }
 
     @Override
     public void tryPublish(String topic, AuditEvent auditEvent) {
         try {
-            String realm = getValue(auditEvent.getValue(), EVENT_REALM, null);
-            if (isBlank(realm)) {
-                publishToDefault(topic, auditEvent);
-            } else {
-                publishForRealm(realm, topic, auditEvent);
+            if (auditEventQueue == null || !auditEventQueue.dispatch(topic, auditEvent.getValue())) {
+                publish(topic, auditEvent.getValue());
             }
         } catch (Exception e) {
             logException(e, topic, auditEvent);
@@ -79,19 +97,28 @@ public class AuditEventPublisherImpl implements AuditEventPublisher {
         }
     }
 
-    private void publishToDefault(String topic, AuditEvent auditEvent) throws ResourceException {
+    private void publish(String topic, JsonValue auditEvent) throws ResourceException {
+        String realm = getValue(auditEvent, EVENT_REALM, null);
+        if (isBlank(realm)) {
+            publishToDefault(topic, auditEvent);
+        } else {
+            publishForRealm(realm, topic, auditEvent);
+        }
+    }
+
+    private void publishToDefault(String topic, JsonValue auditEvent) throws ResourceException {
 
         AMAuditService auditService = auditServiceProvider.getDefaultAuditService();
         Connection connection = newInternalConnection(auditService);
-        CreateRequest request = newCreateRequest(topic, auditEvent.getValue());
+        CreateRequest request = newCreateRequest(topic, auditEvent);
 
         connection.create(new RootContext(), request);
     }
 
-    private void publishForRealm(String realm, String topic, AuditEvent auditEvent) throws ResourceException {
+    private void publishForRealm(String realm, String topic, JsonValue auditEvent) throws ResourceException {
         AMAuditService auditService = auditServiceProvider.getAuditService(realm);
         Connection connection = newInternalConnection(auditService);
-        CreateRequest request = newCreateRequest(topic, auditEvent.getValue());
+        CreateRequest request = newCreateRequest(topic, auditEvent);
 
         try {
             connection.create(new RootContext(), request);
@@ -0,0 +1,754 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.audit;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.forgerock.openam.audit.AuditConstants.*;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.sun.identity.shared.Constants;
+import com.sun.identity.shared.configuration.SystemPropertiesManager;
+import com.sun.identity.shared.debug.Debug;
+import org.forgerock.json.JsonException;
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.ResourceException;
+import org.forgerock.openam.utils.JsonValueBuilder;
+import org.forgerock.openam.utils.StringUtils;
+import org.forgerock.util.thread.listener.ShutdownListener;
+import org.forgerock.util.thread.listener.ShutdownManager;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Publishes audit events from a background thread, so that the threads that create them do not wait for the audit
+ * event handlers.
+ * <p/>
+ * Events wait in a bounded queue, each with a sequence number. When the queue is full, because the handlers are slow,
+ * only the event that did not fit is written to an overflow {@link AuditEventSpool journal}. The background thread
+ * takes events off the queue and the overflow journal in sequence order, so that they are published in the order they
+ * were dispatched.
+ * <p/>
+ * Each event is published to a target: the audit service of the event's realm, for the event's topic. When a target
+ * fails to handle an event, its events are spooled to a journal of its own, and once the retry interval has passed
+ * they are replayed from it before any newer events for that target. Other targets carry on being published to in
+ * the meantime. Spooled events survive a restart. Events are only dropped when there is no room left in a journal, or
+ * no journals.
+ *
+ * @since 14.0.0
+ */
+@Singleton
+public class AuditEventQueue {
+
+    private static final Debug DEBUG = Debug.getInstance(DEBUG_NAME);
+    private static final long POLL_INTERVAL = 1000L;
+    private static final long SHUTDOWN_TIMEOUT = 5000L;
+    private static final String SPOOL_FILE = "audit-events.spool";
+    private static final String TARGET_SPOOL_PREFIX = "audit-events-";
+    private static final String SPOOL_SUFFIX = ".spool";
+    private static final char TARGET_SEPARATOR = '@';
+    private static final String UTF_8 = "UTF-8";
+    private static final long DROP_LOG_INTERVAL = 60000L;
+
+    /**
+     * Publishes an event to the audit service.
+     */
+    interface Delivery {
+
+        /**
+         * Publishes an event to the audit service.
+         *
+         * @param topic The topic of the event.
+         * @param event The event.
+         * @throws ResourceException If the audit service fails to handle the event.
+         */
+        void deliver(String topic, JsonValue event) throws ResourceException;
+    }
+
+    private final boolean enabled;
+    private final BlockingQueue<PendingEvent> queue;
+    private final int batchSize;
+    private final long retryInterval;
+    private final File spoolDirectory;
+    private final int spoolSize;
+    private final AuditEventSpool overflow;
+    private final ConcurrentMap<String, Target> targets = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong spooled = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong totalLatency = new AtomicLong();
+    private final AtomicLong maximumLatency = new AtomicLong();
+    private final AtomicLong nextDropLogTime = new AtomicLong();
+    /** Held to dispatch events, and exclusively to stop dispatching, so that no event is queued after shutdown. */
+    private final ReadWriteLock dispatchLock = new ReentrantReadWriteLock();
+    private volatile Delivery delivery;
+    private volatile boolean running;
+    private Thread worker;
+
+    /**
+     * Creates the queue from the {@code org.forgerock.openam.audit.async} and {@code org.forgerock.openam.audit.spool}
+     * system properties.
+     *
+     * @param shutdownManager The shutdown manager, to stop the background thread on shutdown.
+     */
+    @Inject
+    public AuditEventQueue(ShutdownManager shutdownManager) {
+        this(SystemPropertiesManager.getAsBoolean(CONFIG_ASYNC_ENABLED, true),
+                SystemPropertiesManager.getAsInt(CONFIG_ASYNC_QUEUE_SIZE, 10000),
+                SystemPropertiesManager.getAsInt(CONFIG_ASYNC_BATCH_SIZE, 100),
+                SystemPropertiesManager.getAsInt(CONFIG_ASYNC_RETRY_INTERVAL, 5000),
+                getSpoolDirectory(),
+                (int) Math.min(SystemPropertiesManager.getAsInt(CONFIG_SPOOL_SIZE, 64) * 1024L * 1024L,
+                        Integer.MAX_VALUE));
+        shutdownManager.addShutdownListener(new ShutdownListener() {
+            @Override
+            public void shutdown() {
+                AuditEventQueue.this.shutdown();
+            }
+        });
+    }
+
+    /**
+     * Creates a queue, recovering the events spooled in the journals of the spool directory.
+     *
+     * @param enabled Whether events are published from the background thread.
+     * @param capacity The number of events that can wait to be published.
+     * @param batchSize The most events to take off the queue at once.
+     * @param retryInterval The milliseconds to wait before publishing spooled events to a target after a failure.
+     * @param spoolDirectory The directory of the journals to spool events to, or {@code null} for none.
+     * @param spoolSize The size in bytes of each journal, or zero for none.
+     */
+    AuditEventQueue(boolean enabled, int capacity, int batchSize, long retryInterval, File spoolDirectory,
+            int spoolSize) {
+        this.enabled = enabled;
+        this.queue = new ArrayBlockingQueue<>(Math.max(capacity, 1));
+        this.batchSize = Math.max(batchSize, 1);
+        this.retryInterval = retryInterval;
+        this.spoolDirectory = spoolSize > 0 ? spoolDirectory : null;
+        this.spoolSize = spoolSize;
+        if (this.spoolDirectory == null) {
+            this.overflow = null;
+        } else {
+            this.overflow = openSpool(new File(this.spoolDirectory, SPOOL_FILE));
+            recoverSpooledEvents();
+        }
+    }
+
+    private static File getSpoolDirectory() {
+        String directory = SystemPropertiesManager.get(CONFIG_SPOOL_DIRECTORY);
+        if (StringUtils.isBlank(directory)) {
+            String configDirectory = SystemPropertiesManager.get(Constants.AM_INSTALL_DIR);
+            directory = StringUtils.isBlank(configDirectory) ? null
+                    : configDirectory + File.separator + "audit" + File.separator + "spool";
+        }
+        return directory == null ? null : new File(directory);
+    }
+
+    private AuditEventSpool openSpool(File file) {
+        try {
+            return new AuditEventSpool(file, spoolSize);
+        } catch (IOException e) {
+            DEBUG.error("Unable to open the audit event spool {}. Audit events will not be spooled to it.", file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Opens the journals of the targets that had events spooled before a restart, and moves any events left in the
+     * overflow journal to them, so that the overflow journal only holds events dispatched since.
+     */
+    private void recoverSpooledEvents() {
+        File[] files = spoolDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (!name.startsWith(TARGET_SPOOL_PREFIX) || !name.endsWith(SPOOL_SUFFIX)) {
+                    continue;
+                }
+                String key;
+                try {
+                    key = URLDecoder.decode(name.substring(TARGET_SPOOL_PREFIX.length(),
+                            name.length() - SPOOL_SUFFIX.length()), UTF_8);
+                } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+                    DEBUG.warning("Ignoring audit event spool {} of an unknown target", file);
+                    continue;
+                }
+                int separator = key.indexOf(TARGET_SEPARATOR);
+                if (separator < 0) {
+                    DEBUG.warning("Ignoring audit event spool {} of an unknown target", file);
+                    continue;
+                }
+                Target target = getTarget(key.substring(0, separator), key.substring(separator + 1));
+                target.journal = openSpool(file);
+                closeJournalIfEmpty(target);
+            }
+        }
+        PendingEvent event;
+        while ((event = takeOverflowEvent()) != null) {
+            spool(getTarget(event), event);
+        }
+    }
+
+    /**
+     * Starts publishing events from the background thread.
+     *
+     * @param delivery Publishes the events to the audit service.
+     */
+    synchronized void start(Delivery delivery) {
+        if (!enabled || running) {
+            return;
+        }
+        this.delivery = delivery;
+        running = true;
+        worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                publishEvents();
+            }
+        }, "AuditEventQueue");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Queues an event to be published from the background thread. If the queue is full, the event is written to the
+     * overflow journal instead, from which the background thread takes it in sequence with the queued events.
+     *
+     * @param topic The topic of the event.
+     * @param event The event.
+     * @return {@code false} if events are not being published from the background thread, and so the event has not
+     * been queued.
+     */
+    boolean dispatch(String topic, JsonValue event) {
+        dispatchLock.readLock().lock();
+        try {
+            if (!running) {
+                return false;
+            }
+            PendingEvent pending = new PendingEvent(sequence.incrementAndGet(), topic, event, System.nanoTime());
+            if (!queue.offer(pending)) {
+                spool(overflow, pending);
+            }
+            return true;
+        } finally {
+            dispatchLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stops the background thread, spooling the events still waiting to be published to the journals of their
+     * targets so that they are published after the next start. Events dispatched while the queue stops are either
+     * queued before the remaining events are spooled or not queued at all, so none are left behind in the queue.
+     */
+    synchronized void shutdown() {
+        dispatchLock.writeLock().lock();
+        try {
+            if (!running) {
+                return;
+            }
+            running = false;
+        } finally {
+            dispatchLock.writeLock().unlock();
+        }
+        try {
+            worker.join(SHUTDOWN_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<PendingEvent> remaining = new ArrayList<>(batchSize);
+        do {
+            remaining.clear();
+            takeBatch(remaining);
+            for (PendingEvent event : remaining) {
+                if (spoolDirectory == null) {
+                    attempt(getTarget(event), event);
+                } else {
+                    spool(getTarget(event), event);
+                }
+            }
+        } while (!remaining.isEmpty());
+        close(overflow);
+        for (Target target : targets.values()) {
+            close(target.journal);
+        }
+    }
+
+    private void close(AuditEventSpool journal) {
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                DEBUG.error("Unable to close the audit event spool", e);
+            }
+        }
+    }
+
+    private void publishEvents() {
+        List<PendingEvent> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                replaySpooledEvents();
+                takeBatch(batch);
+                if (batch.isEmpty()) {
+                    PendingEvent first = queue.poll(POLL_INTERVAL, MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                }
+                publish(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                DEBUG.error("Unexpected error publishing audit events", e);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Takes up to a batch of events off the queue and the overflow journal, lowest sequence number first. Only the
+     * background thread, or the thread that stops it, takes events, so the event at the head of the queue is still
+     * there when it is taken.
+     */
+    private void takeBatch(List<PendingEvent> batch) {
+        PendingEvent overflowed = peekOverflowEvent();
+        while (batch.size() < batchSize) {
+            PendingEvent queued = queue.peek();
+            if (overflowed != null && (queued == null || overflowed.sequence < queued.sequence)) {
+                batch.add(overflowed);
+                overflow.remove();
+                overflowed = peekOverflowEvent();
+            } else if (queued != null) {
+                batch.add(queue.poll());
+            } else {
+                return;
+            }
+        }
+    }
+
+    private PendingEvent takeOverflowEvent() {
+        PendingEvent event = peekOverflowEvent();
+        if (event != null) {
+            overflow.remove();
+        }
+        return event;
+    }
+
+    /**
+     * Returns the oldest event in the overflow journal, discarding any that cannot be read.
+     */
+    private PendingEvent peekOverflowEvent() {
+        while (overflow != null) {
+            AuditEventSpool.Record record = overflow.peek();
+            if (record == null) {
+                return null;
+            }
+            PendingEvent event = read(record);
+            if (event != null) {
+                return event;
+            }
+            overflow.remove();
+        }
+        return null;
+    }
+
+    private PendingEvent read(AuditEventSpool.Record record) {
+        try {
+            return new PendingEvent(record.getSequence(), record.getTopic(),
+                    JsonValueBuilder.toJsonValue(record.getEvent()), record.getEvent());
+        } catch (JsonException e) {
+            DEBUG.error("Discarding unreadable spooled {} audit event", record.getTopic(), e);
+            failed.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Publishes a batch of events, target by target. Events for a target that still has spooled events, or that is
+     * waiting to be retried, are spooled after them instead.
+     */
+    private void publish(List<PendingEvent> batch) {
+        Map<Target, List<PendingEvent>> byTarget = new LinkedHashMap<>();
+        for (PendingEvent event : batch) {
+            Target target = getTarget(event);
+            List<PendingEvent> events = byTarget.get(target);
+            if (events == null) {
+                events = new ArrayList<>();
+                byTarget.put(target, events);
+            }
+            events.add(event);
+        }
+        for (Map.Entry<Target, List<PendingEvent>> entry : byTarget.entrySet()) {
+            Target target = entry.getKey();
+            for (PendingEvent event : entry.getValue()) {
+                if (spoolDirectory != null && (hasSpooledEvents(target) || isWaiting(target))) {
+                    spool(target, event);
+                } else if (!attempt(target, event)) {
+                    spool(target, event);
+                }
+            }
+        }
+    }
+
+    /**
+     * Publishes the spooled events of each target whose retry interval has passed, oldest first, until its journal is
+     * empty or it fails again.
+     */
+    private void replaySpooledEvents() {
+        for (Target target : targets.values()) {
+            AuditEventSpool journal = target.journal;
+            while (running && journal != null && journal.size() > 0 && !isWaiting(target)) {
+                PendingEvent event = read(journal.peek());
+                if (event != null && !attempt(target, event)) {
+                    break;
+                }
+                journal.remove();
+            }
+            closeJournalIfEmpty(target);
+        }
+    }
+
+    /**
+     * Publishes an event, noting whether its target is available.
+     *
+     * @return {@code false} if the target failed to handle the event and it should be tried again later.
+     */
+    private boolean attempt(Target target, PendingEvent event) {
+        try {
+            delivery.deliver(event.topic, event.event);
+            delivered.incrementAndGet();
+            if (event.json == null) {
+                recordLatency(System.nanoTime() - event.queuedTime);
+            } else {
+                replayed.incrementAndGet();
+            }
+            target.unavailable = false;
+            return true;
+        } catch (ResourceException e) {
+            if (e.isServerError()) {
+                if (!target.unavailable) {
+                    DEBUG.warning("Audit service for realm '{}' failed to handle {} audit event, spooling its {} "
+                            + "audit events: {}", target.realm, event.topic, event.topic, e.getMessage());
+                }
+                target.unavailable = true;
+                target.retryTime = System.currentTimeMillis() + retryInterval;
+                return false;
+            }
+            DEBUG.error("Unable to publish {} audit event due to error: {} [{}]", event.topic, e.getMessage(),
+                    e.getReason(), e);
+            failed.incrementAndGet();
+            return true;
+        } catch (RuntimeException e) {
+            DEBUG.error("Unable to publish {} audit event due to error: [{}]", event.topic, e.getMessage(), e);
+            failed.incrementAndGet();
+            return true;
+        }
+    }
+
+    private boolean isWaiting(Target target) {
+        return target.unavailable && System.currentTimeMillis() < target.retryTime;
+    }
+
+    private boolean hasSpooledEvents(Target target) {
+        AuditEventSpool journal = target.journal;
+        return journal != null && journal.size() > 0;
+    }
+
+    /**
+     * Spools an event to the journal of its target, opening the journal if the target has none.
+     */
+    private void spool(Target target, PendingEvent event) {
+        if (target.journal == null && spoolDirectory != null) {
+            target.journal = openSpool(getJournalFile(target));
+        }
+        spool(target.journal, event);
+    }
+
+    private void spool(AuditEventSpool journal, PendingEvent event) {
+        if (journal != null) {
+            try {
+                String json = event.json == null
+                        ? JsonValueBuilder.getObjectMapper().writeValueAsString(event.event.getObject()) : event.json;
+                if (journal.append(event.sequence, event.topic, json)) {
+                    if (event.json == null) {
+                        spooled.incrementAndGet();
+                    }
+                    return;
+                }
+            } catch (JsonProcessingException e) {
+                DEBUG.error("Unable to spool {} audit event", event.topic, e);
+            }
+        }
+        long count = dropped.incrementAndGet();
+        long now = System.currentTimeMillis();
+        long nextLogTime = nextDropLogTime.get();
+        if (now >= nextLogTime && nextDropLogTime.compareAndSet(nextLogTime, now + DROP_LOG_INTERVAL)) {
+            DEBUG.error("Audit event spool is full, dropping {} audit event ({} audit events dropped so far)",
+                    event.topic, count);
+        }
+    }
+
+    /**
+     * Closes and deletes the journal of a target once all of its events have been published.
+     */
+    private void closeJournalIfEmpty(Target target) {
+        AuditEventSpool journal = target.journal;
+        if (journal == null || journal.size() > 0) {
+            return;
+        }
+        target.journal = null;
+        close(journal);
+        File file = getJournalFile(target);
+        if (!file.delete()) {
+            DEBUG.warning("Unable to delete the empty audit event spool {}", file);
+        }
+    }
+
+    private File getJournalFile(Target target) {
+        try {
+            return new File(spoolDirectory, TARGET_SPOOL_PREFIX
+                    + URLEncoder.encode(target.topic + TARGET_SEPARATOR + target.realm, UTF_8) + SPOOL_SUFFIX);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Target getTarget(PendingEvent event) {
+        String realm = event.event.isDefined(EVENT_REALM) ? event.event.get(EVENT_REALM).asString() : null;
+        return getTarget(event.topic, StringUtils.isBlank(realm) ? "" : realm);
+    }
+
+    private Target getTarget(String topic, String realm) {
+        String key = topic + TARGET_SEPARATOR + realm;
+        Target target = targets.get(key);
+        if (target == null) {
+            Target created = new Target(topic, realm);
+            target = targets.putIfAbsent(key, created);
+            if (target == null) {
+                target = created;
+            }
+        }
+        return target;
+    }
+
+    private void recordLatency(long latency) {
+        totalLatency.addAndGet(latency);
+        long maximum = maximumLatency.get();
+        while (latency > maximum && !maximumLatency.compareAndSet(maximum, latency)) {
+            maximum = maximumLatency.get();
+        }
+    }
+
+    /**
+     * Whether events are published from the background thread.
+     *
+     * @return {@code true} if the background thread is running.
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Whether the audit service of any realm failed to handle the last event for a topic, so that its events are
+     * being spooled.
+     *
+     * @return {@code true} if events are being spooled until the audit service handles them again.
+     */
+    public boolean isSpooling() {
+        for (Target target : targets.values()) {
+            if (target.unavailable) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of events waiting in the queue.
+     *
+     * @return The queue depth.
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Returns the number of events waiting in the journals.
+     *
+     * @return The number of spooled events.
+     */
+    public int getSpoolDepth() {
+        int depth = overflow == null ? 0 : overflow.size();
+        for (Target target : targets.values()) {
+            AuditEventSpool journal = target.journal;
+            if (journal != null) {
+                depth += journal.size();
+            }
+        }
+        return depth;
+    }
+
+    /**
+     * Returns the fraction of the fullest journal that is taken up by events.
+     *
+     * @return A number between 0 and 1.
+     */
+    public double getSpoolUsage() {
+        double usage = overflow == null ? 0 : (double) overflow.getUsedBytes() / overflow.getCapacity();
+        for (Target target : targets.values()) {
+            AuditEventSpool journal = target.journal;
+            if (journal != null) {
+                usage = Math.max(usage, (double) journal.getUsedBytes() / journal.getCapacity());
+            }
+        }
+        return usage;
+    }
+
+    /**
+     * Returns the number of events published, including those published from the spool.
+     *
+     * @return The number of events.
+     */
+    public long getPublishedCount() {
+        return delivered.get();
+    }
+
+    /**
+     * Returns the number of events that the audit service rejected and that were not retried.
+     *
+     * @return The number of events.
+     */
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * Returns the number of events spooled, because the queue was full or the audit service of their realm failed.
+     *
+     * @return The number of events.
+     */
+    public long getSpooledCount() {
+        return spooled.get();
+    }
+
+    /**
+     * Returns the number of spooled events that have since been published.
+     *
+     * @return The number of events.
+     */
+    public long getReplayedCount() {
+        return replayed.get();
+    }
+
+    /**
+     * Returns the number of events dropped, because neither the queue nor the spool had room for them.
+     *
+     * @return The number of events.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Returns the average time between an event being queued and being published, for events that were not
+     * spooled.
+     *
+     * @param unit The unit of the time.
+     * @return The average latency.
+     */
+    public double getAverageLatency(TimeUnit unit) {
+        long count = delivered.get() - replayed.get();
+        return count <= 0 ? 0 : (double) unit.convert(totalLatency.get(), TimeUnit.NANOSECONDS) / count;
+    }
+
+    /**
+     * Returns the longest time between an event being queued and being published, for events that were not spooled.
+     *
+     * @param unit The unit of the time.
+     * @return The maximum latency.
+     */
+    public long getMaximumLatency(TimeUnit unit) {
+        return unit.convert(maximumLatency.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * An event waiting to be published.
+     */
+    private static final class PendingEvent {
+        private final long sequence;
+        private final String topic;
+        private final JsonValue event;
+        /** The JSON the event was spooled as, or {@code null} if it has not been spooled. */
+        private final String json;
+        private final long queuedTime;
+
+        private PendingEvent(long sequence, String topic, JsonValue event, long queuedTime) {
+            this.sequence = sequence;
+            this.topic = topic;
+            this.event = event;
+            this.json = null;
+            this.queuedTime = queuedTime;
+        }
+
+        private PendingEvent(long sequence, String topic, JsonValue event, String json) {
+            this.sequence = sequence;
+            this.topic = topic;
+            this.event = event;
+            this.json = json;
+            this.queuedTime = 0;
+        }
+    }
+
+    /**
+     * The audit service of a realm, for one topic, to which events are published and spooled separately from other
+     * targets.
+     */
+    private static final class Target {
+        private final String topic;
+        private final String realm;
+        private volatile AuditEventSpool journal;
+        private volatile boolean unavailable;
+        private volatile long retryTime;
+
+        private Target(String topic, String realm) {
+            this.topic = topic;
+            this.realm = realm;
+        }
+    }
+}
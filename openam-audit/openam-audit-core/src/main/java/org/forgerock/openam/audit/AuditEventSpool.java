@@ -0,0 +1,282 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.audit;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * A journal of audit events that could not be delivered straight away, kept in a memory-mapped file so that they
+ * survive a restart of the server.
+ * <p/>
+ * The file starts with a header holding the positions of the oldest record and of the end of the records, followed
+ * by the records themselves, each of which is the length of its content followed by the sequence number, the topic
+ * and the JSON of the event. Records are appended at the end and removed from the start, and the records left are moved back to the
+ * start of the file when there is no room left at the end. Events are not written when the journal is full.
+ *
+ * @since 14.0.0
+ */
+final class AuditEventSpool implements Closeable {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int MAGIC = 0x41554453;
+    private static final int VERSION = 2;
+    private static final int READ_POSITION = 8;
+    private static final int WRITE_POSITION = 16;
+    private static final int HEADER_SIZE = 24;
+    private static final int LENGTH_SIZE = 4;
+    private static final int SEQUENCE_SIZE = 8;
+    private static final int RECORD_OVERHEAD = LENGTH_SIZE + SEQUENCE_SIZE;
+    private static final char TOPIC_SEPARATOR = '\n';
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private int readPosition;
+    private int writePosition;
+    private int records;
+
+    /**
+     * Opens the journal in a file, creating it if it does not exist, and recovering the records in it if it does.
+     *
+     * @param path The journal file.
+     * @param capacity The size of the journal file in bytes.
+     * @throws IOException If the file cannot be mapped.
+     */
+    AuditEventSpool(File path, int capacity) throws IOException {
+        File directory = path.getAbsoluteFile().getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create audit spool directory " + directory);
+        }
+        this.file = new RandomAccessFile(path, "rw");
+        try {
+            this.capacity = (int) Math.max(capacity, Math.min(file.length(), Integer.MAX_VALUE));
+            this.buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, this.capacity);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+        recover();
+    }
+
+    /**
+     * Reads the header of an existing journal, keeping the records that are intact, or starts an empty one.
+     */
+    private void recover() {
+        readPosition = HEADER_SIZE;
+        writePosition = HEADER_SIZE;
+        if (buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION) {
+            long read = buffer.getLong(READ_POSITION);
+            long write = buffer.getLong(WRITE_POSITION);
+            if (read >= HEADER_SIZE && read <= write && write <= capacity) {
+                readPosition = (int) read;
+                writePosition = (int) write;
+            }
+        }
+        // Drop a partly written last record, counting the records before it.
+        int position = readPosition;
+        while (position < writePosition) {
+            int length = position + RECORD_OVERHEAD <= writePosition ? buffer.getInt(position) : -1;
+            if (length <= 0 || length > writePosition - position - RECORD_OVERHEAD) {
+                break;
+            }
+            position += RECORD_OVERHEAD + length;
+            records++;
+        }
+        writePosition = position;
+        if (records == 0) {
+            readPosition = HEADER_SIZE;
+            writePosition = HEADER_SIZE;
+        }
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        writeHeader();
+    }
+
+    /**
+     * Appends an event to the journal.
+     *
+     * @param sequence The sequence number of the event.
+     * @param topic The topic of the event.
+     * @param event The JSON of the event.
+     * @return {@code true} if the event was written, or {@code false} if there is no room for it.
+     */
+    synchronized boolean append(long sequence, String topic, String event) {
+        byte[] content = (topic + TOPIC_SEPARATOR + event).getBytes(UTF_8);
+        int size = RECORD_OVERHEAD + content.length;
+        if (writePosition + size > capacity) {
+            compact();
+            if (writePosition + size > capacity) {
+                return false;
+            }
+        }
+        buffer.putInt(writePosition, content.length);
+        buffer.putLong(writePosition + LENGTH_SIZE, sequence);
+        ByteBuffer target = buffer.duplicate();
+        target.position(writePosition + RECORD_OVERHEAD);
+        target.put(content);
+        writePosition += size;
+        records++;
+        // The header is written last, so that a record is only part of the journal once it is complete.
+        writeHeader();
+        return true;
+    }
+
+    /**
+     * Returns the oldest event in the journal, without removing it.
+     *
+     * @return The event, or {@code null} if the journal is empty.
+     */
+    synchronized Record peek() {
+        if (records == 0) {
+            return null;
+        }
+        int length = buffer.getInt(readPosition);
+        byte[] content = new byte[length];
+        ByteBuffer source = buffer.duplicate();
+        source.position(readPosition + RECORD_OVERHEAD);
+        source.get(content);
+        String record = new String(content, UTF_8);
+        int separator = record.indexOf(TOPIC_SEPARATOR);
+        return new Record(buffer.getLong(readPosition + LENGTH_SIZE), record.substring(0, separator),
+                record.substring(separator + 1));
+    }
+
+    /**
+     * Removes the oldest event from the journal, once it has been delivered.
+     */
+    synchronized void remove() {
+        if (records == 0) {
+            return;
+        }
+        readPosition += RECORD_OVERHEAD + buffer.getInt(readPosition);
+        records--;
+        if (records == 0) {
+            readPosition = HEADER_SIZE;
+            writePosition = HEADER_SIZE;
+        }
+        writeHeader();
+    }
+
+    /**
+     * Returns the number of events in the journal.
+     *
+     * @return The number of events.
+     */
+    synchronized int size() {
+        return records;
+    }
+
+    /**
+     * Returns the number of bytes taken up by the events in the journal.
+     *
+     * @return The number of bytes.
+     */
+    synchronized int getUsedBytes() {
+        return writePosition - readPosition;
+    }
+
+    /**
+     * Returns the size of the journal file.
+     *
+     * @return The number of bytes.
+     */
+    int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Writes the journal to disk and closes its file.
+     *
+     * @throws IOException If the file cannot be closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        file.close();
+    }
+
+    /**
+     * Moves the records back to the start of the file, to make room for more at the end. They are only moved when
+     * they would not overwrite themselves, so that the records the header points to stay intact until it is written.
+     */
+    private void compact() {
+        if (readPosition - HEADER_SIZE < writePosition - readPosition) {
+            return;
+        }
+        ByteBuffer source = buffer.duplicate();
+        source.position(readPosition).limit(writePosition);
+        ByteBuffer target = buffer.duplicate();
+        target.position(HEADER_SIZE);
+        target.put(source);
+        writePosition = HEADER_SIZE + writePosition - readPosition;
+        readPosition = HEADER_SIZE;
+        writeHeader();
+    }
+
+    private void writeHeader() {
+        buffer.putLong(READ_POSITION, readPosition);
+        buffer.putLong(WRITE_POSITION, writePosition);
+    }
+
+    /**
+     * An event in the journal.
+     */
+    static final class Record {
+        private final long sequence;
+        private final String topic;
+        private final String event;
+
+        private Record(long sequence, String topic, String event) {
+            this.sequence = sequence;
+            this.topic = topic;
+            this.event = event;
+        }
+
+        /**
+         * Returns the sequence number of the event.
+         *
+         * @return The sequence number the event was given when it was dispatched.
+         */
+        long getSequence() {
+            return sequence;
+        }
+
+        /**
+         * Returns the topic of the event.
+         *
+         * @return The topic.
+         */
+        String getTopic() {
+            return topic;
+        }
+
+        /**
+         * Returns the JSON of the event.
+         *
+         * @return The JSON.
+         */
+        String getEvent() {
+            return event;
+        }
+    }
+}
@@ -0,0 +1,329 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.audit;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.forgerock.json.JsonValue.field;
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.BadRequestException;
+import org.forgerock.json.resource.ResourceException;
+import org.forgerock.json.resource.ServiceUnavailableException;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+public class AuditEventQueueTest {
+
+    private static final int SPOOL_SIZE = 64 * 1024;
+
+    private File directory;
+    private RecordingDelivery delivery;
+    private AuditEventQueue queue;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("audit").toFile();
+        delivery = new RecordingDelivery();
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        if (queue != null) {
+            queue.shutdown();
+        }
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void shouldNotQueueEventsUntilStarted() {
+        // Given
+        queue = new AuditEventQueue(true, 100, 10, 0, directory, SPOOL_SIZE);
+
+        // Then
+        assertThat(queue.dispatch("access", event(1))).isFalse();
+        assertThat(queue.getQueueDepth()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldNotQueueEventsWhenDisabled() {
+        // Given
+        queue = new AuditEventQueue(false, 100, 10, 0, null, 0);
+
+        // When
+        queue.start(delivery);
+
+        // Then
+        assertThat(queue.isRunning()).isFalse();
+        assertThat(queue.dispatch("access", event(1))).isFalse();
+    }
+
+    @Test
+    public void shouldPublishQueuedEventsInTheBackground() throws Exception {
+        // Given
+        queue = new AuditEventQueue(true, 100, 10, 0, directory, SPOOL_SIZE);
+        delivery.expectEvents(25);
+        queue.start(delivery);
+
+        // When
+        for (int i = 0; i < 25; i++) {
+            assertThat(queue.dispatch("access", event(i))).isTrue();
+        }
+        delivery.awaitEvents();
+        queue.shutdown();
+
+        // Then
+        assertThat(delivery.ids()).isEqualTo(ids(0, 25));
+        assertThat(queue.getPublishedCount()).isEqualTo(25);
+        assertThat(queue.getSpooledCount()).isEqualTo(0);
+        assertThat(queue.getMaximumLatency(NANOSECONDS)).isGreaterThan(0);
+    }
+
+    @Test
+    public void shouldSpoolEventsWhileAuditServiceIsUnavailableAndReplayThemInOrder() throws Exception {
+        // Given
+        queue = new AuditEventQueue(true, 100, 10, 0, directory, SPOOL_SIZE);
+        delivery.failures = 3;
+        delivery.expectEvents(10);
+        queue.start(delivery);
+
+        // When
+        for (int i = 0; i < 10; i++) {
+            queue.dispatch("access", event(i));
+        }
+        delivery.awaitEvents();
+        queue.shutdown();
+
+        // Then
+        assertThat(delivery.ids()).isEqualTo(ids(0, 10));
+        assertThat(queue.getSpooledCount()).isGreaterThan(0);
+        assertThat(queue.getReplayedCount()).isEqualTo(queue.getSpooledCount());
+        assertThat(queue.getSpoolDepth()).isEqualTo(0);
+        assertThat(queue.getDroppedCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldKeepPublishingToOtherRealmsWhileOneIsUnavailable() throws Exception {
+        // Given
+        queue = new AuditEventQueue(true, 100, 10, 60000, directory, SPOOL_SIZE);
+        delivery.failingRealm = "/broken";
+        delivery.expectEvents(5);
+        queue.start(delivery);
+
+        // When
+        queue.dispatch("access", event(100, "/broken"));
+        for (int i = 0; i < 5; i++) {
+            queue.dispatch("access", event(i, "/working"));
+        }
+        queue.dispatch("access", event(101, "/broken"));
+        delivery.awaitEvents();
+        queue.shutdown();
+
+        // Then
+        assertThat(delivery.ids()).isEqualTo(ids(0, 5));
+        assertThat(queue.isSpooling()).isTrue();
+        assertThat(queue.getSpooledCount()).isEqualTo(2);
+        assertThat(queue.getSpoolDepth()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldSpoolOnlyTheEventThatOverflowsTheQueueAndPublishItInOrder() throws Exception {
+        // Given
+        queue = new AuditEventQueue(true, 3, 1, 0, directory, SPOOL_SIZE);
+        delivery.release = new CountDownLatch(1);
+        delivery.expectEvents(5);
+        queue.start(delivery);
+        queue.dispatch("access", event(0));
+        assertThat(delivery.entered.await(5, SECONDS)).isTrue();
+
+        // When
+        for (int i = 1; i < 5; i++) {
+            queue.dispatch("access", event(i));
+        }
+        int queueDepth = queue.getQueueDepth();
+        delivery.release.countDown();
+        delivery.awaitEvents();
+        queue.shutdown();
+
+        // Then
+        assertThat(queueDepth).isEqualTo(3);
+        assertThat(delivery.ids()).isEqualTo(ids(0, 5));
+        assertThat(queue.getSpooledCount()).isEqualTo(1);
+        assertThat(queue.getReplayedCount()).isEqualTo(1);
+        assertThat(queue.getDroppedCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldCountRejectedEventsAsFailedWithoutRetrying() throws Exception {
+        // Given
+        queue = new AuditEventQueue(true, 100, 10, 0, directory, SPOOL_SIZE);
+        delivery.rejected = true;
+        delivery.expectAttempts(2);
+        queue.start(delivery);
+
+        // When
+        queue.dispatch("access", event(1));
+        queue.dispatch("access", event(2));
+        delivery.awaitAttempts();
+        queue.shutdown();
+
+        // Then
+        assertThat(queue.getFailedCount()).isEqualTo(2);
+        assertThat(queue.getSpooledCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldDropEventsWhenThereIsNoSpool() throws Exception {
+        // Given
+        queue = new AuditEventQueue(true, 100, 10, 60000, null, 0);
+        delivery.failures = Integer.MAX_VALUE;
+        delivery.expectAttempts(1);
+        queue.start(delivery);
+
+        // When
+        queue.dispatch("access", event(1));
+        delivery.awaitAttempts();
+        queue.shutdown();
+
+        // Then
+        assertThat(queue.isSpooling()).isTrue();
+        assertThat(queue.getDroppedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldSpoolQueuedEventsOnShutdownAndReplayThemAfterRestart() throws Exception {
+        // Given
+        queue = new AuditEventQueue(true, 100, 10, 60000, directory, SPOOL_SIZE);
+        delivery.failures = Integer.MAX_VALUE;
+        delivery.expectAttempts(1);
+        queue.start(delivery);
+        for (int i = 0; i < 5; i++) {
+            queue.dispatch("access", event(i));
+        }
+        delivery.awaitAttempts();
+
+        // When
+        queue.shutdown();
+        queue = new AuditEventQueue(true, 100, 10, 0, directory, SPOOL_SIZE);
+        assertThat(queue.getSpoolDepth()).isEqualTo(5);
+        delivery = new RecordingDelivery();
+        delivery.expectEvents(5);
+        queue.start(delivery);
+        delivery.awaitEvents();
+        queue.shutdown();
+
+        // Then
+        assertThat(delivery.ids()).isEqualTo(ids(0, 5));
+        assertThat(queue.getReplayedCount()).isEqualTo(5);
+        assertThat(queue.getSpoolDepth()).isEqualTo(0);
+    }
+
+    private static JsonValue event(int id) {
+        return json(object(field("_id", String.valueOf(id))));
+    }
+
+    private static JsonValue event(int id, String realm) {
+        return json(object(field("_id", String.valueOf(id)), field("realm", realm)));
+    }
+
+    private static List<String> ids(int from, int to) {
+        List<String> ids = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            ids.add(String.valueOf(i));
+        }
+        return ids;
+    }
+
+    private static final class RecordingDelivery implements AuditEventQueue.Delivery {
+        private final List<String> ids = Collections.synchronizedList(new ArrayList<String>());
+        private volatile int failures;
+        private volatile boolean rejected;
+        private volatile String failingRealm;
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private volatile CountDownLatch release;
+        private volatile CountDownLatch attempted = new CountDownLatch(0);
+        private volatile CountDownLatch delivered = new CountDownLatch(0);
+
+        @Override
+        public void deliver(String topic, JsonValue event) throws ResourceException {
+            attempted.countDown();
+            if (release != null) {
+                entered.countDown();
+                try {
+                    release.await(5, SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (rejected) {
+                throw new BadRequestException("Invalid event");
+            }
+            if (failures > 0) {
+                failures--;
+                throw new ServiceUnavailableException("Handler unavailable");
+            }
+            if (failingRealm != null && failingRealm.equals(event.get("realm").asString())) {
+                throw new ServiceUnavailableException("Handler unavailable");
+            }
+            ids.add(event.get("_id").asString());
+            delivered.countDown();
+        }
+
+        private List<String> ids() {
+            synchronized (ids) {
+                return new ArrayList<>(ids);
+            }
+        }
+
+        private void expectEvents(int count) {
+            delivered = new CountDownLatch(count);
+        }
+
+        private void expectAttempts(int count) {
+            attempted = new CountDownLatch(count);
+        }
+
+        private void awaitEvents() throws InterruptedException {
+            if (!delivered.await(5, SECONDS)) {
+                fail("Timed out waiting for " + delivered.getCount() + " more audit events to be published");
+            }
+        }
+
+        private void awaitAttempts() throws InterruptedException {
+            if (!attempted.await(5, SECONDS)) {
+                fail("Timed out waiting for " + attempted.getCount() + " more attempts to publish audit events");
+            }
+        }
+    }
+}
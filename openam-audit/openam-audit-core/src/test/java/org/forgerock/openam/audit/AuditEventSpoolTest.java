@@ -0,0 +1,139 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.audit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+public class AuditEventSpoolTest {
+
+    private File file;
+    private AuditEventSpool spool;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        file = File.createTempFile("audit", ".spool");
+        file.delete();
+        spool = new AuditEventSpool(file, 256);
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        spool.close();
+        file.delete();
+    }
+
+    @Test
+    public void shouldReturnEventsInTheOrderTheyWereAppended() {
+        // Given
+        spool.append(1, "access", "{\"a\":1}");
+        spool.append(2, "activity", "{\"b\":2}");
+
+        // When
+        AuditEventSpool.Record first = spool.peek();
+        spool.remove();
+        AuditEventSpool.Record second = spool.peek();
+        spool.remove();
+
+        // Then
+        assertRecord(first, 1, "access", "{\"a\":1}");
+        assertRecord(second, 2, "activity", "{\"b\":2}");
+        assertThat(spool.peek()).isNull();
+        assertThat(spool.size()).isEqualTo(0);
+        assertThat(spool.getUsedBytes()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldRecoverEventsWhenReopened() throws Exception {
+        // Given
+        spool.append(1, "access", "{\"a\":1}");
+        spool.append(2, "access", "{\"a\":2}");
+        spool.remove();
+        spool.close();
+
+        // When
+        spool = new AuditEventSpool(file, 256);
+
+        // Then
+        assertThat(spool.size()).isEqualTo(1);
+        assertRecord(spool.peek(), 2, "access", "{\"a\":2}");
+    }
+
+    @Test
+    public void shouldDropPartlyWrittenEventWhenReopened() throws Exception {
+        // Given
+        spool.append(1, "access", "{\"a\":1}");
+        spool.close();
+        RandomAccessFile raw = new RandomAccessFile(file, "rw");
+        raw.seek(16);
+        raw.writeLong(24 + 12 + "access\n{\"a\":1}".length() + 2);
+        raw.close();
+
+        // When
+        spool = new AuditEventSpool(file, 256);
+
+        // Then
+        assertThat(spool.size()).isEqualTo(1);
+        assertRecord(spool.peek(), 1, "access", "{\"a\":1}");
+    }
+
+    @Test
+    public void shouldRefuseEventsWhenFull() {
+        // Given
+        int appended = 0;
+        while (spool.append(1, "access", "{\"event\":\"0123456789\"}")) {
+            appended++;
+        }
+
+        // Then
+        assertThat(appended).isGreaterThan(0);
+        assertThat(spool.size()).isEqualTo(appended);
+        assertThat(spool.getUsedBytes()).isLessThanOrEqualTo(spool.getCapacity());
+    }
+
+    @Test
+    public void shouldReuseSpaceOfRemovedEvents() {
+        // Given
+        while (spool.append(1, "access", "{\"event\":\"0123456789\"}")) {
+            // fill the spool
+        }
+        int full = spool.size();
+        for (int i = 0; i < full - 1; i++) {
+            spool.remove();
+        }
+
+        // When
+        boolean appended = spool.append(2, "activity", "{\"event\":\"9876543210\"}");
+
+        // Then
+        assertThat(appended).isTrue();
+        assertThat(spool.size()).isEqualTo(2);
+        spool.remove();
+        assertRecord(spool.peek(), 2, "activity", "{\"event\":\"9876543210\"}");
+    }
+
+    private static void assertRecord(AuditEventSpool.Record record, long sequence, String topic, String event) {
+        assertThat(record.getSequence()).isEqualTo(sequence);
+        assertThat(record.getTopic()).isEqualTo(topic);
+        assertThat(record.getEvent()).isEqualTo(event);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.audit.rest;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.forgerock.json.JsonValue.field;
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+import static org.forgerock.json.resource.Responses.newResourceResponse;
+
+import javax.inject.Inject;
+
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.ActionRequest;
+import org.forgerock.json.resource.ActionResponse;
+import org.forgerock.json.resource.NotSupportedException;
+import org.forgerock.json.resource.PatchRequest;
+import org.forgerock.json.resource.ReadRequest;
+import org.forgerock.json.resource.ResourceException;
+import org.forgerock.json.resource.ResourceResponse;
+import org.forgerock.json.resource.SingletonResourceProvider;
+import org.forgerock.json.resource.UpdateRequest;
+import org.forgerock.openam.audit.AuditEventQueue;
+import org.forgerock.services.context.Context;
+import org.forgerock.util.promise.Promise;
+
+/**
+ * Reports how audit events are being published by the {@link AuditEventQueue}: how many are waiting, how many have
+ * been spooled or dropped, and how long they take to be published.
+ *
+ * This resource is read-only.
+ * @since 14.0.0
+ */
+public class AuditEventQueueResource implements SingletonResourceProvider {
+
+    private static final String RESOURCE_ID = "statistics";
+
+    private final AuditEventQueue auditEventQueue;
+
+    /**
+     * Constructs a new {@code AuditEventQueueResource}.
+     *
+     * @param auditEventQueue The queue that publishes audit events.
+     */
+    @Inject
+    public AuditEventQueueResource(AuditEventQueue auditEventQueue) {
+        this.auditEventQueue = auditEventQueue;
+    }
+
+    @Override
+    public Promise<ActionResponse, ResourceException> actionInstance(Context context, ActionRequest actionRequest) {
+        return new NotSupportedException().asPromise();
+    }
+
+    @Override
+    public Promise<ResourceResponse, ResourceException> patchInstance(Context context, PatchRequest patchRequest) {
+        return new NotSupportedException().asPromise();
+    }
+
+    @Override
+    public Promise<ResourceResponse, ResourceException> readInstance(Context context, ReadRequest readRequest) {
+        JsonValue result = json(object(
+                field("asynchronous", auditEventQueue.isRunning()),
+                field("spooling", auditEventQueue.isSpooling()),
+                field("queueDepth", auditEventQueue.getQueueDepth()),
+                field("spoolDepth", auditEventQueue.getSpoolDepth()),
+                field("spoolUsage", auditEventQueue.getSpoolUsage()),
+                field("published", auditEventQueue.getPublishedCount()),
+                field("failed", auditEventQueue.getFailedCount()),
+                field("spooled", auditEventQueue.getSpooledCount()),
+                field("replayed", auditEventQueue.getReplayedCount()),
+                field("dropped", auditEventQueue.getDroppedCount()),
+                field("averageLatencyMs", auditEventQueue.getAverageLatency(MILLISECONDS)),
+                field("maximumLatencyMs", auditEventQueue.getMaximumLatency(MILLISECONDS))
+        ));
+
+        return newResourceResponse(RESOURCE_ID, Integer.toString(result.asMap().hashCode()), result).asPromise();
+    }
+
+    @Override
+    public Promise<ResourceResponse, ResourceException> updateInstance(Context context, UpdateRequest updateRequest) {
+        return new NotSupportedException().asPromise();
+    }
+}
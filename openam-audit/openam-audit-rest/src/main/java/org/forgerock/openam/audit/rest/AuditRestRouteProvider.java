@@ -11,7 +11,7 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2015 ForgeRock AS.
+ * Copyright 2015-2016 ForgeRock AS.
  */
 
 package org.forgerock.openam.audit.rest;
@@ -69,6 +69,12 @@ public class AuditRestRouteProvider extends AbstractRestRouteProvider {
 
     @Override
     public void addResourceRoutes(ResourceRouter rootRouter, ResourceRouter realmRouter) {
+        rootRouter.route("global-audit/statistics")
+                .auditAs(AUDIT, AuditEndpointAuditFilter.class)
+                .authorizeWith(SpecialOrAdminOrAgentAuthzModule.class)
+                .forVersion(1)
+                .toSingleton(AuditEventQueueResource.class);
+
         rootRouter.route("global-audit")
                 .auditAs(AUDIT, AuditEndpointAuditFilter.class)
                 .authorizeWith(SpecialOrAdminOrAgentAuthzModule.class)
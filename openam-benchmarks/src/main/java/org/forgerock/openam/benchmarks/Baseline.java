@@ -0,0 +1,260 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The scores of a benchmark run, in a plain text format that can be kept alongside build output and compared with
+ * the baseline of another build.
+ * <p>
+ * Each line holds one benchmark, separated by tabs: the benchmark name with any parameters appended as
+ * {@code :name=value}, the JMH mode, the score, the score error and the unit. Lines starting with {@code #} are
+ * comments. Lines are sorted by benchmark name so that baselines can also be compared with {@code diff}.
+ */
+public final class Baseline {
+
+    private static final String COMMENT = "#";
+    private static final String SEPARATOR = "\t";
+    private static final String THROUGHPUT = "thrpt";
+
+    private final Map<String, Score> scores = new TreeMap<String, Score>();
+
+    /**
+     * Adds a benchmark's score, replacing any previous score for the same benchmark.
+     *
+     * @param score The score.
+     */
+    public void add(Score score) {
+        scores.put(score.getBenchmark(), score);
+    }
+
+    /**
+     * Returns the benchmark scores.
+     *
+     * @return The scores, ordered by benchmark name.
+     */
+    public Collection<Score> getScores() {
+        return Collections.unmodifiableCollection(scores.values());
+    }
+
+    /**
+     * Returns the score of a benchmark.
+     *
+     * @param benchmark The benchmark name, including any parameters.
+     * @return The score, or null if the benchmark is not in this baseline.
+     */
+    public Score getScore(String benchmark) {
+        return scores.get(benchmark);
+    }
+
+    /**
+     * Writes this baseline.
+     *
+     * @param writer The destination, which is not closed.
+     * @param description A description of the run, such as the build and JVM, written as a comment.
+     * @throws IOException If the baseline can not be written.
+     */
+    public void write(Writer writer, String description) throws IOException {
+        if (description != null) {
+            for (String line : description.split("\n")) {
+                writer.write(COMMENT + " " + line + "\n");
+            }
+        }
+        for (Score score : scores.values()) {
+            writer.write(score.getBenchmark() + SEPARATOR + score.getMode() + SEPARATOR
+                    + String.format(Locale.ROOT, "%.6f", score.getScore()) + SEPARATOR
+                    + String.format(Locale.ROOT, "%.6f", score.getError()) + SEPARATOR + score.getUnit() + "\n");
+        }
+        writer.flush();
+    }
+
+    /**
+     * Reads a baseline previously written by {@link #write(Writer, String)}.
+     *
+     * @param reader The source, which is not closed.
+     * @return The baseline.
+     * @throws IOException If the baseline can not be read or is not in the expected format.
+     */
+    public static Baseline read(Reader reader) throws IOException {
+        Baseline baseline = new Baseline();
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        int lineNumber = 0;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty() || line.startsWith(COMMENT)) {
+                continue;
+            }
+            String[] fields = line.split(SEPARATOR);
+            if (fields.length != 5) {
+                throw new IOException("Malformed baseline at line " + lineNumber + ": " + line);
+            }
+            try {
+                baseline.add(new Score(fields[0], fields[1], Double.parseDouble(fields[2]),
+                        Double.parseDouble(fields[3]), fields[4]));
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed score at line " + lineNumber + ": " + line, e);
+            }
+        }
+        return baseline;
+    }
+
+    /**
+     * Compares this baseline with the baseline of an earlier build.
+     * <p>
+     * A benchmark has regressed if its score is worse than the earlier score by more than the given tolerance, and
+     * the difference is larger than the two score errors combined, so that noisy benchmarks are not reported.
+     * Benchmarks that are not in both baselines, or whose mode or unit has changed, are not compared.
+     *
+     * @param previous The earlier baseline.
+     * @param tolerance The fraction by which a score may be worse before it is reported, for example 0.1 for 10%.
+     * @return The benchmarks that have regressed, ordered by benchmark name.
+     */
+    public List<Regression> compareWith(Baseline previous, double tolerance) {
+        List<Regression> regressions = new ArrayList<Regression>();
+        for (Score current : scores.values()) {
+            Score earlier = previous.getScore(current.getBenchmark());
+            if (earlier == null || !earlier.getMode().equals(current.getMode())
+                    || !earlier.getUnit().equals(current.getUnit())) {
+                continue;
+            }
+            double change = current.changeFrom(earlier);
+            double difference = Math.abs(current.getScore() - earlier.getScore());
+            if (change < -tolerance && difference > current.getError() + earlier.getError()) {
+                regressions.add(new Regression(earlier, current, change));
+            }
+        }
+        return regressions;
+    }
+
+    /**
+     * The score of one benchmark.
+     */
+    public static final class Score {
+        private final String benchmark;
+        private final String mode;
+        private final double score;
+        private final double error;
+        private final String unit;
+
+        /**
+         * Constructs a score.
+         *
+         * @param benchmark The benchmark name, including any parameters.
+         * @param mode The JMH mode short label, such as {@code thrpt} or {@code avgt}.
+         * @param score The score.
+         * @param error The score error, or {@code NaN} if not known.
+         * @param unit The score unit.
+         */
+        public Score(String benchmark, String mode, double score, double error, String unit) {
+            this.benchmark = benchmark;
+            this.mode = mode;
+            this.score = score;
+            this.error = Double.isNaN(error) ? 0 : error;
+            this.unit = unit;
+        }
+
+        public String getBenchmark() {
+            return benchmark;
+        }
+
+        public String getMode() {
+            return mode;
+        }
+
+        public double getScore() {
+            return score;
+        }
+
+        public double getError() {
+            return error;
+        }
+
+        public String getUnit() {
+            return unit;
+        }
+
+        /**
+         * Whether a larger score is better, which is only the case for throughput.
+         *
+         * @return True if a larger score is better.
+         */
+        public boolean isHigherBetter() {
+            return THROUGHPUT.equals(mode);
+        }
+
+        /**
+         * Returns the relative improvement of this score over an earlier one, negative if this score is worse.
+         */
+        private double changeFrom(Score earlier) {
+            if (earlier.score == 0) {
+                return 0;
+            }
+            double change = (score - earlier.score) / earlier.score;
+            return isHigherBetter() ? change : -change;
+        }
+    }
+
+    /**
+     * A benchmark whose score is worse than in an earlier baseline.
+     */
+    public static final class Regression {
+        private final Score previous;
+        private final Score current;
+        private final double change;
+
+        private Regression(Score previous, Score current, double change) {
+            this.previous = previous;
+            this.current = current;
+            this.change = change;
+        }
+
+        public Score getPrevious() {
+            return previous;
+        }
+
+        public Score getCurrent() {
+            return current;
+        }
+
+        /**
+         * Returns the relative change in score, which is negative as the score is worse.
+         *
+         * @return The change, for example -0.25 if the benchmark is 25% worse.
+         */
+        public double getChange() {
+            return change;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s: %.3f -> %.3f %s (%+.1f%%)", current.getBenchmark(),
+                    previous.getScore(), current.getScore(), current.getUnit(), change * 100);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.benchmarks;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+
+/**
+ * Runs the benchmarks, records their scores as a {@link Baseline} and optionally compares them with the baseline of
+ * an earlier build.
+ * <p>
+ * Usage: {@code BaselineReport -o <baseline> [-b <previous baseline>] [-t <tolerance %>] [JMH options]}
+ * <p>
+ * Any other arguments are passed to JMH, so for example a benchmark name pattern runs only the matching benchmarks.
+ * The exit status is 1 if any benchmark has regressed beyond the tolerance, which defaults to 10%, and 2 if the
+ * arguments are invalid.
+ */
+public final class BaselineReport {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final double DEFAULT_TOLERANCE_PERCENT = 10;
+
+    private BaselineReport() {
+    }
+
+    /**
+     * Runs the benchmarks.
+     *
+     * @param args The command line arguments.
+     * @throws IOException If a baseline can not be read or written.
+     * @throws RunnerException If the benchmarks fail to run.
+     */
+    public static void main(String[] args) throws IOException, RunnerException {
+        File output = null;
+        File previous = null;
+        double tolerance = DEFAULT_TOLERANCE_PERCENT;
+        List<String> jmhArgs = new ArrayList<String>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if ("-o".equals(args[i]) && i + 1 < args.length) {
+                    output = new File(args[++i]);
+                } else if ("-b".equals(args[i]) && i + 1 < args.length) {
+                    previous = new File(args[++i]);
+                } else if ("-t".equals(args[i]) && i + 1 < args.length) {
+                    tolerance = Double.parseDouble(args[++i]);
+                } else {
+                    jmhArgs.add(args[i]);
+                }
+            }
+        } catch (NumberFormatException e) {
+            usage("Invalid tolerance: " + e.getMessage());
+            return;
+        }
+        if (output == null) {
+            usage("No baseline file given");
+            return;
+        }
+
+        CommandLineOptions options;
+        try {
+            options = new CommandLineOptions(jmhArgs.toArray(new String[jmhArgs.size()]));
+        } catch (CommandLineOptionException e) {
+            usage(e.getMessage());
+            return;
+        }
+
+        Baseline baseline = toBaseline(new Runner(options).run());
+        Writer writer = new OutputStreamWriter(new FileOutputStream(output), UTF_8);
+        try {
+            baseline.write(writer, describeRun());
+        } finally {
+            writer.close();
+        }
+        System.out.println("Baseline written to " + output);
+
+        if (previous != null) {
+            List<Baseline.Regression> regressions = baseline.compareWith(read(previous), tolerance / 100);
+            if (regressions.isEmpty()) {
+                System.out.println("No benchmarks have regressed by more than " + tolerance + "% since " + previous);
+            } else {
+                System.out.println(regressions.size() + " benchmarks have regressed by more than " + tolerance
+                        + "% since " + previous + ":");
+                for (Baseline.Regression regression : regressions) {
+                    System.out.println("    " + regression);
+                }
+                System.exit(1);
+            }
+        }
+    }
+
+    /**
+     * Converts JMH results to a baseline.
+     *
+     * @param results The JMH results.
+     * @return The baseline.
+     */
+    static Baseline toBaseline(Collection<RunResult> results) {
+        Baseline baseline = new Baseline();
+        for (RunResult result : results) {
+            BenchmarkParams params = result.getParams();
+            StringBuilder name = new StringBuilder(params.getBenchmark());
+            for (String key : params.getParamsKeys()) {
+                name.append(':').append(key).append('=').append(params.getParam(key));
+            }
+            Result primary = result.getPrimaryResult();
+            baseline.add(new Baseline.Score(name.toString(), params.getMode().shortLabel(), primary.getScore(),
+                    primary.getScoreError(), primary.getScoreUnit()));
+        }
+        return baseline;
+    }
+
+    private static Baseline read(File file) throws IOException {
+        Reader reader = new InputStreamReader(new FileInputStream(file), UTF_8);
+        try {
+            return Baseline.read(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static String describeRun() {
+        return "OpenAM benchmark baseline, " + new Date() + "\n"
+                + "java " + System.getProperty("java.version") + " (" + System.getProperty("java.vm.name") + "), "
+                + System.getProperty("os.name") + " " + System.getProperty("os.arch") + ", "
+                + Runtime.getRuntime().availableProcessors() + " processors";
+    }
+
+    private static void usage(String error) {
+        System.err.println(error);
+        System.err.println("Usage: BaselineReport -o <baseline> [-b <previous baseline>] [-t <tolerance %>] "
+                + "[JMH options]");
+        System.exit(2);
+    }
+}
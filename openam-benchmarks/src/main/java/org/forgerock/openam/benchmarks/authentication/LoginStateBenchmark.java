@@ -0,0 +1,100 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.benchmarks.authentication;
+
+import java.util.Hashtable;
+import java.util.concurrent.TimeUnit;
+
+import javax.security.auth.callback.Callback;
+import javax.security.auth.callback.NameCallback;
+import javax.security.auth.callback.PasswordCallback;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sun.identity.authentication.service.LoginState;
+
+/**
+ * Measures the parts of {@link LoginState} used on every authentication request that do not need the authentication
+ * service: creating the state for a new login request and exchanging callbacks with a login module.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@Threads(Threads.MAX)
+public class LoginStateBenchmark {
+
+    private static final String PAGE_STATE = "1";
+
+    private Hashtable<String, String> requestParameters;
+    private LoginState loginState;
+    private Callback[] requested;
+    private Callback[] submitted;
+
+    @Setup
+    public void setUp() {
+        requestParameters = new Hashtable<String, String>();
+        requestParameters.put("realm", "/");
+        requestParameters.put("module", "DataStore");
+        requestParameters.put("goto", "http://app.example.com:8080/app/index.html");
+        requestParameters.put("locale", "en");
+
+        NameCallback name = new NameCallback("User Name:");
+        PasswordCallback password = new PasswordCallback("Password:", false);
+        requested = new Callback[] {name, password};
+
+        NameCallback submittedName = new NameCallback("User Name:");
+        submittedName.setName("demo");
+        PasswordCallback submittedPassword = new PasswordCallback("Password:", false);
+        submittedPassword.setPassword("changeit".toCharArray());
+        submitted = new Callback[] {submittedName, submittedPassword};
+
+        loginState = new LoginState();
+    }
+
+    @Benchmark
+    public LoginState newLoginRequest() {
+        LoginState state = new LoginState();
+        state.setParamHash(requestParameters);
+        state.setNewRequest(true);
+        return state;
+    }
+
+    /**
+     * Exchanges callbacks as the login module and authentication request threads do for each page of a login, in the
+     * mode where the login module runs on the request thread.
+     */
+    @Benchmark
+    public Callback[] callbackExchange() {
+        loginState.setReceivedCallback_NoThread(requested);
+        loginState.setCallbacksPerState(PAGE_STATE, loginState.getReceivedInfo());
+        loginState.setSubmittedCallback_NoThread(submitted);
+        return loginState.getSubmittedInfo();
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.benchmarks.cache;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.iplanet.am.util.Cache;
+import com.iplanet.am.util.ConcurrentCache;
+
+/**
+ * Compares the single monitor {@link Cache} with the segmented {@link ConcurrentCache} under a read mostly workload
+ * with a key space larger than the cache, so that both hits and evictions occur.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@Threads(Threads.MAX)
+public class CacheBenchmark {
+
+    private static final int MAX_SIZE = 10000;
+    private static final int KEY_SPACE = 2 * MAX_SIZE;
+
+    @Param({"synchronized", "concurrent"})
+    private String implementation;
+
+    private Cache cache;
+    private String[] keys;
+
+    @Setup
+    public void setUp() {
+        cache = "concurrent".equals(implementation) ? new ConcurrentCache(MAX_SIZE) : new Cache(MAX_SIZE);
+        keys = new String[KEY_SPACE];
+        for (int i = 0; i < KEY_SPACE; i++) {
+            keys[i] = "id=user" + i + ",ou=user,dc=openam,dc=forgerock,dc=org";
+        }
+        for (int i = 0; i < MAX_SIZE; i++) {
+            cache.put(keys[i], keys[i]);
+        }
+    }
+
+    /**
+     * Per thread source of key indexes.
+     */
+    @State(Scope.Thread)
+    public static class Keys {
+        private final Random random = new Random();
+
+        int next() {
+            return random.nextInt(KEY_SPACE);
+        }
+    }
+
+    @Benchmark
+    public Object get(Keys keys) {
+        return cache.get(this.keys[keys.next()]);
+    }
+
+    @Benchmark
+    public Object getOrPut(Keys keys) {
+        String key = this.keys[keys.next()];
+        Object value = cache.get(key);
+        if (value == null) {
+            cache.put(key, key);
+            value = key;
+        }
+        return value;
+    }
+
+    @Benchmark
+    public boolean containsKey(Keys keys) {
+        return cache.containsKey(this.keys[keys.next()]);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.benchmarks.cts;
+
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.openam.benchmarks.session.SessionFixtures;
+import org.forgerock.openam.cts.CoreTokenConfig;
+import org.forgerock.openam.cts.adapters.SessionAdapter;
+import org.forgerock.openam.cts.api.tokens.Token;
+import org.forgerock.openam.cts.api.tokens.TokenIdFactory;
+import org.forgerock.openam.cts.impl.CTSDataLayerConfiguration;
+import org.forgerock.openam.cts.utils.KeyConversion;
+import org.forgerock.openam.cts.utils.LDAPDataConversion;
+import org.forgerock.openam.cts.utils.LdapTokenAttributeConversion;
+import org.forgerock.openam.cts.utils.blob.TokenBlobUtils;
+import org.forgerock.opendj.ldap.Entry;
+import org.forgerock.opendj.ldap.LinkedHashMapEntry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the conversion of a session token to and from the LDAP entry stored in the CTS. No directory server is
+ * involved; the entries are only built and read in memory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class LdapTokenAttributeConversionBenchmark {
+
+    private static final String ROOT_SUFFIX = "dc=openam,dc=forgerock,dc=org";
+
+    private LdapTokenAttributeConversion conversion;
+    private Token token;
+    private Entry entry;
+
+    @Setup
+    public void setUp() {
+        conversion = new LdapTokenAttributeConversion(new LDAPDataConversion(),
+                new CTSDataLayerConfiguration(ROOT_SUFFIX));
+        SessionAdapter adapter = new SessionAdapter(new TokenIdFactory(new KeyConversion()), new CoreTokenConfig(),
+                SessionFixtures.getSerialisation(), new TokenBlobUtils());
+        token = adapter.toToken(SessionFixtures.newSession());
+        entry = conversion.getEntry(token);
+    }
+
+    @Benchmark
+    public Entry getEntry() {
+        return conversion.getEntry(token);
+    }
+
+    /**
+     * Converts a copy of the entry, as the conversion removes the object class from the entry it is given. The copy
+     * is a small part of the cost, and is the same for every build.
+     */
+    @Benchmark
+    public Token tokenFromEntry() {
+        return conversion.tokenFromEntry(new LinkedHashMapEntry(entry));
+    }
+}
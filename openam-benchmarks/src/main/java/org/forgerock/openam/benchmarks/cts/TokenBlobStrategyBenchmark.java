@@ -0,0 +1,121 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.benchmarks.cts;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.openam.benchmarks.session.SessionFixtures;
+import org.forgerock.openam.cts.CoreTokenConfig;
+import org.forgerock.openam.cts.api.CoreTokenConstants;
+import org.forgerock.openam.cts.utils.blob.TokenBlobStrategy;
+import org.forgerock.openam.cts.utils.blob.TokenBlobUtils;
+import org.forgerock.openam.cts.utils.blob.TokenStrategyFactory;
+import org.forgerock.openam.cts.utils.blob.TokenStrategyFailedException;
+import org.forgerock.openam.cts.utils.blob.strategies.AttributeCompressionStrategy;
+import org.forgerock.openam.cts.utils.blob.strategies.CompressionStrategy;
+import org.forgerock.openam.cts.utils.blob.strategies.EncryptionStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sun.identity.shared.debug.Debug;
+
+/**
+ * Measures the cost of the {@link TokenBlobStrategy} applied to every session blob written to and read from the CTS,
+ * for each combination of the attribute name compression, compression and encryption settings, compressing with
+ * GZip or, for {@code deflate}, with pooled deflaters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class TokenBlobStrategyBenchmark {
+
+    @Param({"none", "compression", "deflate", "encryption", "compression,encryption", "deflate,encryption",
+            "attributes,compression,encryption"})
+    private String strategies;
+
+    private TokenBlobStrategy blobStrategy;
+    private byte[] blob;
+    private byte[] storedBlob;
+
+    @Setup
+    public void setUp() throws TokenStrategyFailedException {
+        List<String> enabled = Arrays.asList(strategies.split(","));
+        CompressionStrategy.Algorithm algorithm = enabled.contains("deflate")
+                ? CompressionStrategy.Algorithm.DEFLATE : CompressionStrategy.Algorithm.GZIP;
+        TokenStrategyFactory factory = new TokenStrategyFactory(new CompressionStrategy(algorithm),
+                new EncryptionStrategy(Debug.getInstance(CoreTokenConstants.CTS_DEBUG)),
+                new AttributeCompressionStrategy(new TokenBlobUtils()));
+        blobStrategy = new TokenBlobStrategy(factory, new StrategyConfig(enabled.contains("attributes"),
+                enabled.contains("compression") || enabled.contains("deflate"), enabled.contains("encryption")));
+        blob = SessionFixtures.serialise(SessionFixtures.newSession()).getBytes(SessionFixtures.UTF_8);
+        storedBlob = blobStrategy.perform(blob);
+    }
+
+    @Benchmark
+    public byte[] perform() throws TokenStrategyFailedException {
+        return blobStrategy.perform(blob);
+    }
+
+    @Benchmark
+    public byte[] reverse() throws TokenStrategyFailedException {
+        return blobStrategy.reverse(storedBlob);
+    }
+
+    /**
+     * CTS configuration with the blob strategies chosen by the benchmark rather than by system properties.
+     */
+    private static final class StrategyConfig extends CoreTokenConfig {
+        private final boolean attributeNamesCompressed;
+        private final boolean tokenCompressed;
+        private final boolean tokenEncrypted;
+
+        private StrategyConfig(boolean attributeNamesCompressed, boolean tokenCompressed, boolean tokenEncrypted) {
+            this.attributeNamesCompressed = attributeNamesCompressed;
+            this.tokenCompressed = tokenCompressed;
+            this.tokenEncrypted = tokenEncrypted;
+        }
+
+        @Override
+        public boolean isAttributeNamesCompressed() {
+            return attributeNamesCompressed;
+        }
+
+        @Override
+        public boolean isTokenCompressed() {
+            return tokenCompressed;
+        }
+
+        @Override
+        public boolean isTokenEncrypted() {
+            return tokenEncrypted;
+        }
+    }
+}
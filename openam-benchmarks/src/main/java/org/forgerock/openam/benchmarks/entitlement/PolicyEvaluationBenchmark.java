@@ -0,0 +1,160 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.benchmarks.entitlement;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.openam.entitlement.utils.indextree.PersistentIndexRuleTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sun.identity.entitlement.Application;
+import com.sun.identity.entitlement.DenyOverride;
+import com.sun.identity.entitlement.Entitlement;
+import com.sun.identity.entitlement.EntitlementException;
+import com.sun.identity.entitlement.ResourceMatch;
+import com.sun.identity.entitlement.URLResourceName;
+import com.sun.identity.entitlement.interfaces.ResourceName;
+
+/**
+ * Measures the resource matching and decision combining of a policy evaluation for a single URL, with the policies
+ * of a realm held in memory rather than read from the configuration store.
+ * <p>
+ * The policy path index tree selects the candidate policies for the requested URL, each candidate's resource pattern
+ * is compared with the URL and the entitlements of the matching policies are combined with deny override, as the
+ * policy evaluator does. Subject and condition evaluation are not included.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@Threads(Threads.MAX)
+public class PolicyEvaluationBenchmark {
+
+    private static final String APPLICATION = "iPlanetAMWebAgentService";
+    private static final Set<String> ACTIONS = new HashSet<String>();
+    private static final int REQUESTS = 1024;
+
+    static {
+        ACTIONS.add("GET");
+        ACTIONS.add("POST");
+    }
+
+    @Param({"100", "1000"})
+    private int policies;
+
+    private Application application;
+    private ResourceName comparator;
+    private PersistentIndexRuleTree indexTree;
+    private Map<String, Entitlement> entitlements;
+    private String[] requests;
+
+    @Setup
+    public void setUp() throws Exception {
+        application = new Application(APPLICATION, null);
+        application.setResourceComparator(URLResourceName.class);
+        comparator = application.getResourceComparator();
+        indexTree = new PersistentIndexRuleTree();
+        entitlements = new HashMap<String, Entitlement>();
+
+        for (int i = 0; i < policies; i++) {
+            // Every application has a policy allowing access, a policy for its query strings and an admin area that
+            // is denied.
+            addPolicy("http://www.example.com:80/app" + i + "/*", true);
+            addPolicy("http://www.example.com:80/app" + i + "/*?*", true);
+            addPolicy("http://www.example.com:80/app" + i + "/*/admin/*", false);
+        }
+        addPolicy("http://*.example.com:80/public/*", true);
+
+        Random random = new Random(42);
+        requests = new String[REQUESTS];
+        for (int i = 0; i < REQUESTS; i++) {
+            int app = random.nextInt(policies);
+            switch (i % 4) {
+            case 0:
+                requests[i] = "http://www.example.com:80/app" + app + "/index.html";
+                break;
+            case 1:
+                requests[i] = "http://www.example.com:80/app" + app + "/search?q=" + i;
+                break;
+            case 2:
+                requests[i] = "http://www.example.com:80/app" + app + "/a/b/admin/users.html";
+                break;
+            default:
+                requests[i] = "http://www.example.com:80/public/images/logo" + i + ".png";
+            }
+        }
+    }
+
+    private void addPolicy(String resource, boolean allow) {
+        Map<String, Boolean> actionValues = new HashMap<String, Boolean>();
+        for (String action : ACTIONS) {
+            actionValues.put(action, allow);
+        }
+        entitlements.put(resource, new Entitlement(APPLICATION, resource, actionValues));
+        indexTree.addIndexRule(resource);
+    }
+
+    /**
+     * Per thread position in the request sequence.
+     */
+    @State(Scope.Thread)
+    public static class Requests {
+        private int next;
+
+        int next() {
+            next = (next + 1) % REQUESTS;
+            return next;
+        }
+    }
+
+    @Benchmark
+    public List<Entitlement> evaluate(Requests requests) throws EntitlementException {
+        String resource = comparator.canonicalize(this.requests[requests.next()]);
+        DenyOverride combiner = new DenyOverride();
+        combiner.init(resource, resource, ACTIONS, false, application);
+        for (String candidate : indexTree.searchTree(resource)) {
+            ResourceMatch match = comparator.compare(resource, candidate, true);
+            if (ResourceMatch.EXACT_MATCH.equals(match) || ResourceMatch.WILDCARD_MATCH.equals(match)) {
+                combiner.add(Collections.singletonList(entitlements.get(candidate)));
+            }
+            if (combiner.isDone()) {
+                break;
+            }
+        }
+        return combiner.getResults();
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.benchmarks.session;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.openam.cts.CoreTokenConfig;
+import org.forgerock.openam.cts.adapters.SessionAdapter;
+import org.forgerock.openam.cts.api.tokens.Token;
+import org.forgerock.openam.cts.api.tokens.TokenIdFactory;
+import org.forgerock.openam.cts.utils.JSONSerialisation;
+import org.forgerock.openam.cts.utils.KeyConversion;
+import org.forgerock.openam.cts.utils.blob.TokenBlobUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.iplanet.dpro.session.service.InternalSession;
+import com.iplanet.dpro.session.service.InternalSessionCodec;
+
+/**
+ * Measures the serialisation of an {@link InternalSession} to and from a CTS blob, as JSON, in the generic binary
+ * format or in the field level format of {@link InternalSessionCodec}, and its conversion to and from a CTS
+ * {@link Token} by the {@link SessionAdapter}, which happen whenever a session is saved to or read from the CTS. When
+ * the binary format is enabled the adapter uses the field level format, so the {@code binary} and {@code fields}
+ * formats only differ for {@link #serialise()} and {@link #deserialise()}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class InternalSessionSerialisationBenchmark {
+
+    @Param({"json", "binary", "fields"})
+    private String format;
+
+    private JSONSerialisation serialisation;
+    private SessionAdapter adapter;
+    private InternalSession session;
+    private byte[] blob;
+    private Token token;
+
+    @Setup
+    public void setUp() throws IOException {
+        serialisation = "json".equals(format)
+                ? SessionFixtures.getSerialisation() : SessionFixtures.getBinarySerialisation();
+        adapter = new SessionAdapter(new TokenIdFactory(new KeyConversion()), new CoreTokenConfig(), serialisation,
+                new TokenBlobUtils());
+        session = SessionFixtures.newSession();
+        blob = serialise();
+        token = adapter.toToken(session);
+    }
+
+    @Benchmark
+    public byte[] serialise() throws IOException {
+        if ("fields".equals(format)) {
+            return InternalSessionCodec.encode(session);
+        }
+        return serialisation.serialiseToBlob(session);
+    }
+
+    @Benchmark
+    public InternalSession deserialise() throws IOException {
+        if ("fields".equals(format)) {
+            return InternalSessionCodec.decode(blob);
+        }
+        return serialisation.deserialiseBlob(blob, InternalSession.class);
+    }
+
+    @Benchmark
+    public Token toToken() {
+        return adapter.toToken(session);
+    }
+
+    @Benchmark
+    public InternalSession fromToken() {
+        return adapter.fromToken(token);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.benchmarks.session;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+import org.apache.commons.io.IOUtils;
+import org.forgerock.openam.cts.CoreTokenConfig;
+import org.forgerock.openam.cts.utils.JSONSerialisation;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.core.Version;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.KeyDeserializer;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.iplanet.dpro.session.SessionID;
+import com.iplanet.dpro.session.service.InternalSession;
+
+/**
+ * Sessions for benchmarks, which are read from a typical session as stored in the CTS rather than created through the
+ * session service.
+ */
+public final class SessionFixtures {
+
+    /**
+     * The encoding of session blobs in the CTS.
+     */
+    public static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String SESSION_RESOURCE = "session.json";
+    private static final ObjectMapper MAPPER = createObjectMapper();
+    private static final JSONSerialisation SERIALISATION = new JSONSerialisation(MAPPER);
+    private static final JSONSerialisation BINARY_SERIALISATION = new JSONSerialisation(MAPPER, new CoreTokenConfig() {
+        @Override
+        public boolean isBinaryFormat() {
+            return true;
+        }
+    });
+    private static final String SESSION_JSON = readSessionJson();
+
+    private SessionFixtures() {
+    }
+
+    /**
+     * Returns the serialisation used by the CTS session adapter.
+     *
+     * @return The serialisation.
+     */
+    public static JSONSerialisation getSerialisation() {
+        return SERIALISATION;
+    }
+
+    /**
+     * Returns the serialisation used by the CTS session adapter when the binary format is enabled.
+     *
+     * @return The serialisation.
+     */
+    public static JSONSerialisation getBinarySerialisation() {
+        return BINARY_SERIALISATION;
+    }
+
+    /**
+     * Creates a valid session for a user authenticated with the DataStore module, with a restricted token and session
+     * notification URLs.
+     *
+     * @return A new session.
+     */
+    public static InternalSession newSession() {
+        return SERIALISATION.deserialise(SESSION_JSON, InternalSession.class);
+    }
+
+    /**
+     * Serialises a session as it is stored in the CTS.
+     *
+     * @param session The session.
+     * @return The session JSON.
+     */
+    public static String serialise(InternalSession session) {
+        return SERIALISATION.serialise(session);
+    }
+
+    /**
+     * Creates an object mapper configured as the CTS object mapper provided by {@code CoreGuiceModule}, without
+     * needing the Guice injector. The handler for fields written by older versions is not needed, as the session
+     * fixture is in the current format.
+     */
+    private static ObjectMapper createObjectMapper() {
+        ObjectMapper mapper = new ObjectMapper()
+                .configure(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY, true)
+                .configure(MapperFeature.CAN_OVERRIDE_ACCESS_MODIFIERS, true);
+        mapper.setVisibilityChecker(mapper.getSerializationConfig().getDefaultVisibilityChecker()
+                .withFieldVisibility(JsonAutoDetect.Visibility.ANY)
+                .withGetterVisibility(JsonAutoDetect.Visibility.NONE)
+                .withIsGetterVisibility(JsonAutoDetect.Visibility.NONE)
+                .withSetterVisibility(JsonAutoDetect.Visibility.NONE)
+                .withCreatorVisibility(JsonAutoDetect.Visibility.NONE));
+        SimpleModule module = new SimpleModule("openam-benchmarks", Version.unknownVersion());
+        module.addKeyDeserializer(SessionID.class, new KeyDeserializer() {
+            @Override
+            public Object deserializeKey(String key, DeserializationContext context) {
+                return new SessionID(key);
+            }
+        });
+        mapper.registerModule(module);
+        return mapper;
+    }
+
+    private static String readSessionJson() {
+        InputStream in = SessionFixtures.class.getResourceAsStream(SESSION_RESOURCE);
+        if (in == null) {
+            throw new IllegalStateException("Missing session fixture " + SESSION_RESOURCE);
+        }
+        try {
+            return IOUtils.toString(in, UTF_8.name());
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read session fixture " + SESSION_RESOURCE, e);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+}
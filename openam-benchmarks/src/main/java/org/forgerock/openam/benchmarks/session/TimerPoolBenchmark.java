@@ -0,0 +1,152 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.benchmarks.session;
+
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import com.sun.identity.common.GeneralTaskRunnable;
+import com.sun.identity.common.TimerPool;
+
+/**
+ * Measures rescheduling session timeouts in a {@link TimerPool} that already holds the timeouts of a million
+ * sessions, with the tasks kept in time order ({@code tick} 0) and in a timing wheel.
+ * <p>
+ * Timeouts are whole seconds, as session timeouts are, and are all at least an hour away so that none of them run
+ * during the benchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@Threads(Threads.MAX)
+public class TimerPoolBenchmark {
+
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    @Param({"0", "100"})
+    private long tick;
+
+    @Param({"1000000"})
+    private int sessions;
+
+    private TimerPool pool;
+    private SessionTimeout[] timeouts;
+
+    @Setup
+    public void setUp() {
+        pool = new TimerPool("TimerPoolBenchmark", 3, true, null, tick);
+        timeouts = new SessionTimeout[sessions];
+        Random random = new Random(42);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < sessions; i++) {
+            timeouts[i] = new SessionTimeout();
+            pool.schedule(timeouts[i], timeoutTime(now, random));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    private static Date timeoutTime(long now, Random random) {
+        long time = now + HOUR + random.nextInt((int) HOUR);
+        return new Date(time - time % 1000);
+    }
+
+    /**
+     * Per thread share of the sessions, so that no two threads reschedule the same session at once.
+     */
+    @State(Scope.Thread)
+    public static class Sessions {
+        private final Random random = new Random();
+        private int next;
+        private int step;
+
+        @Setup
+        public void setUp(ThreadParams threads) {
+            next = threads.getThreadIndex();
+            step = threads.getThreadCount();
+        }
+
+        int next(int sessions) {
+            next = (next + step) % sessions;
+            return next;
+        }
+    }
+
+    /**
+     * Cancels a session timeout and schedules it for a new time, as is done when a session's idle timeout or
+     * maximum time is changed.
+     */
+    @Benchmark
+    public SessionTimeout reschedule(Sessions state) {
+        SessionTimeout timeout = timeouts[state.next(sessions)];
+        timeout.cancel();
+        pool.schedule(timeout, timeoutTime(System.currentTimeMillis(), state.random));
+        return timeout;
+    }
+
+    /**
+     * A session timeout task that does nothing when it runs.
+     */
+    static final class SessionTimeout extends GeneralTaskRunnable {
+
+        @Override
+        public boolean addElement(Object key) {
+            return false;
+        }
+
+        @Override
+        public boolean removeElement(Object key) {
+            return false;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return true;
+        }
+
+        @Override
+        public long getRunPeriod() {
+            return -1;
+        }
+
+        @Override
+        public void run() {
+        }
+    }
+}
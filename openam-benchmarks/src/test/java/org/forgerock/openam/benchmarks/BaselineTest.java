@@ -0,0 +1,126 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.benchmarks;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+public class BaselineTest {
+
+    @Test
+    public void shouldReadWhatWasWritten() throws IOException {
+        // Given
+        Baseline baseline = new Baseline();
+        baseline.add(new Baseline.Score("a.Benchmark.get:size=10", "thrpt", 1234.5, 12.25, "ops/us"));
+        baseline.add(new Baseline.Score("a.Benchmark.put", "avgt", 0.5, Double.NaN, "us/op"));
+        StringWriter writer = new StringWriter();
+
+        // When
+        baseline.write(writer, "build 1\njava 7");
+        Baseline read = Baseline.read(new StringReader(writer.toString()));
+
+        // Then
+        assertThat(writer.toString()).startsWith("# build 1\n# java 7\n");
+        assertThat(read.getScores()).hasSize(2);
+        Baseline.Score score = read.getScore("a.Benchmark.get:size=10");
+        assertThat(score.getMode()).isEqualTo("thrpt");
+        assertThat(score.getScore()).isEqualTo(1234.5);
+        assertThat(score.getError()).isEqualTo(12.25);
+        assertThat(score.getUnit()).isEqualTo("ops/us");
+        assertThat(read.getScore("a.Benchmark.put").getError()).isEqualTo(0.0);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void shouldRejectMalformedBaseline() throws IOException {
+        Baseline.read(new StringReader("a.Benchmark.get\tthrpt\tfast\t1\tops/us\n"));
+    }
+
+    @Test
+    public void shouldReportLowerThroughputAsRegression() {
+        // Given
+        Baseline previous = baseline(new Baseline.Score("get", "thrpt", 100, 1, "ops/us"));
+        Baseline current = baseline(new Baseline.Score("get", "thrpt", 80, 1, "ops/us"));
+
+        // When
+        List<Baseline.Regression> regressions = current.compareWith(previous, 0.1);
+
+        // Then
+        assertThat(regressions).hasSize(1);
+        assertThat(regressions.get(0).getChange()).isEqualTo(-0.2);
+    }
+
+    @Test
+    public void shouldReportHigherAverageTimeAsRegression() {
+        // Given
+        Baseline previous = baseline(new Baseline.Score("get", "avgt", 10, 0.1, "us/op"));
+        Baseline current = baseline(new Baseline.Score("get", "avgt", 15, 0.1, "us/op"));
+
+        // When
+        List<Baseline.Regression> regressions = current.compareWith(previous, 0.1);
+
+        // Then
+        assertThat(regressions).hasSize(1);
+        assertThat(regressions.get(0).getChange()).isEqualTo(-0.5);
+    }
+
+    @Test
+    public void shouldNotReportImprovementsOrChangesWithinTolerance() {
+        // Given
+        Baseline previous = baseline(new Baseline.Score("get", "thrpt", 100, 1, "ops/us"),
+                new Baseline.Score("put", "avgt", 10, 0.1, "us/op"));
+        Baseline current = baseline(new Baseline.Score("get", "thrpt", 95, 1, "ops/us"),
+                new Baseline.Score("put", "avgt", 5, 0.1, "us/op"));
+
+        // When / Then
+        assertThat(current.compareWith(previous, 0.1)).isEmpty();
+    }
+
+    @Test
+    public void shouldNotReportChangesWithinScoreError() {
+        // Given
+        Baseline previous = baseline(new Baseline.Score("get", "thrpt", 100, 15, "ops/us"));
+        Baseline current = baseline(new Baseline.Score("get", "thrpt", 80, 10, "ops/us"));
+
+        // When / Then
+        assertThat(current.compareWith(previous, 0.1)).isEmpty();
+    }
+
+    @Test
+    public void shouldNotCompareBenchmarksWithDifferentUnits() {
+        // Given
+        Baseline previous = baseline(new Baseline.Score("get", "thrpt", 100, 1, "ops/ms"));
+        Baseline current = baseline(new Baseline.Score("get", "thrpt", 1, 0, "ops/us"),
+                new Baseline.Score("put", "thrpt", 1, 0, "ops/us"));
+
+        // When / Then
+        assertThat(current.compareWith(previous, 0.1)).isEmpty();
+    }
+
+    private static Baseline baseline(Baseline.Score... scores) {
+        Baseline baseline = new Baseline();
+        for (Baseline.Score score : scores) {
+            baseline.add(score);
+        }
+        return baseline;
+    }
+}
@@ -11,7 +11,7 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2015 ForgeRock AS.
+ * Copyright 2015-2016 ForgeRock AS.
  */
 package com.iplanet.am.util;
 
@@ -30,4 +30,15 @@ public class SystemPropertiesWrapper {
     public int getAsInt(String key, int def) {
         return SystemProperties.getAsInt(key, def);
     }
+
+    /**
+     * Wraps the call to {@link com.iplanet.am.util.SystemProperties#getAsLong(String, long)}.
+     *
+     * @param key System Properties key to retrieve the value for.
+     * @param def Default if no value is found.
+     * @return The configured value, or the default.
+     */
+    public long getAsLong(String key, long def) {
+        return SystemProperties.getAsLong(key, def);
+    }
 }
@@ -44,7 +44,10 @@ import org.forgerock.openam.utils.StringUtils;
 
 import javax.servlet.http.HttpServletRequest;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
 import java.net.URL;
 import java.security.AccessController;
@@ -447,6 +450,58 @@ public class SessionID implements Serializable {
         return cookieMode;
     }
 
+    /**
+     * Writes the state of this session ID that is stored in the CTS, for the field level binary format of
+     * {@link com.iplanet.dpro.session.service.InternalSessionCodec}. This is the same state as the CTS JSON format
+     * stores.
+     *
+     * @param out The output to write to.
+     * @throws IOException If the state could not be written.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        writeNullableUTF(out, encryptedString);
+        out.writeBoolean(comingFromAuth);
+        writeNullableUTF(out, sessionServerProtocol);
+        writeNullableUTF(out, sessionServer);
+        writeNullableUTF(out, sessionServerPort);
+        writeNullableUTF(out, sessionServerURI);
+        writeNullableUTF(out, sessionDomain);
+        writeNullableUTF(out, sessionServerID);
+        out.writeByte(cookieMode == null ? 0 : cookieMode ? 2 : 1);
+    }
+
+    /**
+     * Reads a session ID written by {@link #writeTo(DataOutput)}.
+     *
+     * @param in The input to read from.
+     * @return Non null session ID.
+     * @throws IOException If the state could not be read.
+     */
+    public static SessionID readFrom(DataInput in) throws IOException {
+        SessionID sid = new SessionID(readNullableUTF(in));
+        sid.comingFromAuth = in.readBoolean();
+        sid.sessionServerProtocol = readNullableUTF(in);
+        sid.sessionServer = readNullableUTF(in);
+        sid.sessionServerPort = readNullableUTF(in);
+        sid.sessionServerURI = readNullableUTF(in);
+        sid.sessionDomain = readNullableUTF(in);
+        sid.sessionServerID = readNullableUTF(in);
+        byte cookieMode = in.readByte();
+        sid.cookieMode = cookieMode == 0 ? null : Boolean.valueOf(cookieMode == 2);
+        return sid;
+    }
+
+    private static void writeNullableUTF(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullableUTF(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
     /**
      * Retrieves extension value by name Currently used session id extensions
      * are
@@ -11,15 +11,20 @@
 * Header, with the fields enclosed by brackets [] replaced by your own identifying
 * information: "Portions copyright [year] [name of copyright owner]".
 *
-* Copyright 2014 ForgeRock AS.
+* Copyright 2014-2016 ForgeRock AS.
 */
 package com.iplanet.dpro.session.monitoring;
 
+import java.util.Locale;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
+import org.forgerock.openam.shared.monitoring.LatencyHistogram;
+import org.forgerock.openam.shared.monitoring.MetricFamily;
+import org.forgerock.openam.shared.monitoring.MetricsRegistry;
 
 /**
  * The store for session monitoring information. Each of the operations which can be applied to sessions
@@ -28,7 +33,8 @@ import javax.inject.Singleton;
  * {@link SessionTimingEntry} samples, which can be used to calculate e.g. the slowest, or average speed of a given
  * operation.
  *
- * Uses an ExecutorService to perform writes out to the store (which may block).
+ * Uses an ExecutorService to perform writes out to the store (which may block). Each duration is also recorded, on
+ * the calling thread, in a latency histogram of the {@link MetricsRegistry}.
  */
 @Singleton
 public class SessionMonitoringStore {
@@ -39,6 +45,7 @@ public class SessionMonitoringStore {
     private final ConcurrentHashMap<SessionMonitorType, SessionMonitoringTimingStore> logoutStore;
 
     private final SessionMonitoringTimingStoreFactory sessionMonitoringTimingStoreFactory;
+    private final MetricFamily<LatencyHistogram> operationLatency;
 
     //for pushing off our monitoring writes to another thread
     private final ExecutorService executorService;
@@ -50,12 +57,15 @@ public class SessionMonitoringStore {
      * to be pushed in.
      *
      * @param executorService the service to which to offload out writes
+     * @param metricsRegistry the registry for the operation latency histograms
      */
     @Inject
     public SessionMonitoringStore(@Named(EXECUTOR_BINDING_NAME) ExecutorService executorService,
-                                  SessionMonitoringTimingStoreFactory sessionMonitoringTimingStoreFactory) {
+                                  SessionMonitoringTimingStoreFactory sessionMonitoringTimingStoreFactory,
+                                  MetricsRegistry metricsRegistry) {
         this.executorService = executorService;
         this.sessionMonitoringTimingStoreFactory = sessionMonitoringTimingStoreFactory;
+        this.operationLatency = operationLatency(metricsRegistry);
 
         this.refreshStore = new ConcurrentHashMap<SessionMonitorType, SessionMonitoringTimingStore>();
         this.propertyStore= new ConcurrentHashMap<SessionMonitorType, SessionMonitoringTimingStore>();
@@ -72,15 +82,18 @@ public class SessionMonitoringStore {
      * @param propertyStore Property store
      * @param destroyStore Destroy store
      * @param logoutStore Logout store
+     * @param metricsRegistry Registry for the operation latency histograms
      */
     SessionMonitoringStore(ExecutorService executorService,
                                   SessionMonitoringTimingStoreFactory sessionMonitoringTimingStoreFactory,
                                   ConcurrentHashMap<SessionMonitorType, SessionMonitoringTimingStore> refreshStore,
                                   ConcurrentHashMap<SessionMonitorType, SessionMonitoringTimingStore> propertyStore,
                                   ConcurrentHashMap<SessionMonitorType, SessionMonitoringTimingStore> destroyStore,
-                                  ConcurrentHashMap<SessionMonitorType, SessionMonitoringTimingStore> logoutStore) {
+                                  ConcurrentHashMap<SessionMonitorType, SessionMonitoringTimingStore> logoutStore,
+                                  MetricsRegistry metricsRegistry) {
         this.executorService = executorService;
         this.sessionMonitoringTimingStoreFactory = sessionMonitoringTimingStoreFactory;
+        this.operationLatency = operationLatency(metricsRegistry);
 
         this.refreshStore = refreshStore;
         this.propertyStore = propertyStore;
@@ -95,6 +108,7 @@ public class SessionMonitoringStore {
      * @param type the type of session to which this entry pertains
      */
     public void storeRefreshTime(final long duration, final SessionMonitorType type) {
+        recordLatency("refresh", duration, type);
         executorService.submit(new Runnable() {
             @Override
             public void run() {
@@ -129,6 +143,7 @@ public class SessionMonitoringStore {
      * @param type the type of session to which this entry pertains
      */
     public void storeSetPropertyTime(final long duration, final SessionMonitorType type) {
+        recordLatency("set_property", duration, type);
         executorService.submit(new Runnable() {
             @Override
             public void run() {
@@ -163,6 +178,7 @@ public class SessionMonitoringStore {
      * @param type the type of session to which this entry pertains
      */
     public void storeDestroyTime(final long duration, final SessionMonitorType type) {
+        recordLatency("destroy", duration, type);
         executorService.submit(new Runnable() {
             @Override
             public void run() {
@@ -198,6 +214,7 @@ public class SessionMonitoringStore {
      * @param type the type of session to which this entry pertains
      */
     public void storeLogoutTime(final long duration, final SessionMonitorType type) {
+        recordLatency("logout", duration, type);
         executorService.submit(new Runnable() {
             @Override
             public void run() {
@@ -225,4 +242,13 @@ public class SessionMonitoringStore {
         return logoutStore.get(type).getDurationAverage();
     }
 
+    private static MetricFamily<LatencyHistogram> operationLatency(MetricsRegistry metricsRegistry) {
+        return metricsRegistry.latency("openam_session_operation_seconds", "Time taken by session operations",
+                TimeUnit.NANOSECONDS, "operation", "type");
+    }
+
+    private void recordLatency(String operation, long duration, SessionMonitorType type) {
+        operationLatency.labels(operation, type.name().toLowerCase(Locale.ROOT)).record(duration);
+    }
+
 }
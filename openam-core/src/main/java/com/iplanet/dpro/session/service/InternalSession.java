@@ -54,6 +54,9 @@ import org.forgerock.util.annotations.VisibleForTesting;
 
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
@@ -1453,6 +1456,130 @@ public class InternalSession implements TaskRunnable, Serializable {
         }
     }
 
+    /**
+     * Writes the state of this session that is stored in the CTS, in the order {@link InternalSessionCodec} expects.
+     * This is the same state as the CTS JSON format stores, so the session handle is not included, and neither is the
+     * latest access time, which the CTS stores in a token attribute of its own.
+     *
+     * @param out The output to write to.
+     * @throws IOException If the state could not be written.
+     */
+    void writeTo(DataOutput out) throws IOException {
+        InternalSessionCodec.writeSessionID(out, sessionID);
+        out.writeInt(sessionType);
+        InternalSessionCodec.writeString(out, clientID);
+        InternalSessionCodec.writeString(out, clientDomain);
+        out.writeLong(maxSessionTime);
+        out.writeLong(maxIdleTime);
+        out.writeLong(maxCachingTime);
+        out.writeInt(sessionState);
+        if (sessionProperties == null) {
+            out.writeInt(-1);
+        } else {
+            Map<Object, Object> properties = new HashMap<Object, Object>(sessionProperties);
+            out.writeInt(properties.size());
+            for (Map.Entry<Object, Object> property : properties.entrySet()) {
+                InternalSessionCodec.writeString(out, String.valueOf(property.getKey()));
+                InternalSessionCodec.writeString(out, String.valueOf(property.getValue()));
+            }
+        }
+        out.writeBoolean(willExpireFlag);
+        out.writeLong(creationTime);
+        out.writeBoolean(isISStored);
+        InternalSessionCodec.writeBoolean(out, cookieMode);
+        InternalSessionCodec.writeString(out, cookieStr);
+        Map<SessionID, TokenRestriction> restrictions = new HashMap<SessionID, TokenRestriction>(restrictedTokensBySid);
+        out.writeInt(restrictions.size());
+        for (Map.Entry<SessionID, TokenRestriction> entry : restrictions.entrySet()) {
+            InternalSessionCodec.writeString(out, entry.getKey().toString());
+            InternalSessionCodec.writeRestriction(out, entry.getValue());
+        }
+        out.writeLong(timedOutAt);
+        out.writeBoolean(reschedulePossible);
+        Map<String, Set<SessionID>> urls = new HashMap<String, Set<SessionID>>();
+        for (Map.Entry<String, Set<SessionID>> entry : sessionEventURLs.entrySet()) {
+            urls.put(entry.getKey(), new HashSet<SessionID>(entry.getValue()));
+        }
+        out.writeInt(urls.size());
+        for (Map.Entry<String, Set<SessionID>> entry : urls.entrySet()) {
+            InternalSessionCodec.writeString(out, entry.getKey());
+            out.writeInt(entry.getValue().size());
+            for (SessionID sid : entry.getValue()) {
+                InternalSessionCodec.writeSessionID(out, sid);
+            }
+        }
+    }
+
+    /**
+     * Reads the state written by {@link #writeTo(DataOutput)} into this session, without any of the side effects of
+     * the setters.
+     *
+     * @param in The input to read from.
+     * @throws IOException If the state could not be read.
+     */
+    void readFrom(DataInputStream in) throws IOException {
+        sessionID = InternalSessionCodec.readSessionID(in);
+        sessionType = in.readInt();
+        clientID = InternalSessionCodec.readString(in);
+        clientDomain = InternalSessionCodec.readString(in);
+        maxSessionTime = in.readLong();
+        maxIdleTime = in.readLong();
+        maxCachingTime = in.readLong();
+        sessionState = in.readInt();
+        int propertyCount = in.readInt();
+        if (propertyCount < 0) {
+            sessionProperties = null;
+        } else {
+            sessionProperties = new Properties();
+            for (int i = 0; i < propertyCount; i++) {
+                sessionProperties.put(InternalSessionCodec.readString(in), InternalSessionCodec.readString(in));
+            }
+        }
+        willExpireFlag = in.readBoolean();
+        creationTime = in.readLong();
+        isISStored = in.readBoolean();
+        cookieMode = InternalSessionCodec.readBoolean(in);
+        cookieStr = InternalSessionCodec.readString(in);
+        int restrictionCount = in.readInt();
+        for (int i = 0; i < restrictionCount; i++) {
+            SessionID sid = new SessionID(InternalSessionCodec.readString(in));
+            TokenRestriction restriction = InternalSessionCodec.readRestriction(in);
+            restrictedTokensBySid.put(sid, restriction);
+            restrictedTokensByRestriction.put(restriction, sid);
+        }
+        timedOutAt = in.readLong();
+        reschedulePossible = in.readBoolean();
+        int urlCount = in.readInt();
+        for (int i = 0; i < urlCount; i++) {
+            String url = InternalSessionCodec.readString(in);
+            int sidCount = in.readInt();
+            Set<SessionID> sids = Collections.newSetFromMap(new ConcurrentHashMap<SessionID, Boolean>());
+            for (int j = 0; j < sidCount; j++) {
+                sids.add(InternalSessionCodec.readSessionID(in));
+            }
+            sessionEventURLs.put(url, sids);
+        }
+    }
+
+    /**
+     * Returns the latest access time that {@link InternalSessionCodec} stores outside of the session blob.
+     *
+     * @return The latest access time in seconds.
+     */
+    long getLatestAccessTime() {
+        return latestAccessTime;
+    }
+
+    /**
+     * Restores the latest access time of a session decoded by {@link InternalSessionCodec}, without the side effects
+     * of {@link #setLatestAccessTime()}.
+     *
+     * @param latestAccessTime The latest access time in seconds.
+     */
+    void restoreLatestAccessTime(long latestAccessTime) {
+        this.latestAccessTime = latestAccessTime;
+    }
+
     /**
      * Returns the value of willExpireFlag.
      *
@@ -0,0 +1,208 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.iplanet.dpro.session.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import com.iplanet.dpro.session.SessionID;
+import com.iplanet.dpro.session.TokenRestriction;
+import com.iplanet.dpro.session.TokenRestrictionFactory;
+
+/**
+ * Field level binary format for {@link InternalSession}s stored in the Core Token Service.
+ * <p>
+ * The format holds the same state as the CTS JSON format, but each field is written directly in a fixed order rather
+ * than through the CTS object mapper, so saving a session to the CTS or reading it back needs neither reflection nor
+ * an intermediate token stream.
+ * <p>
+ * Blobs start with the header of the generic CTS binary format followed by {@link #VERSION}, so that they can be told
+ * apart from JSON text and from blobs in the generic binary format.
+ * <p>
+ * The latest access time is left out of the blob, so that a session that is only touched keeps the same blob. Callers
+ * store it alongside the blob, as the CTS JSON format does, and pass it back in when decoding.
+ *
+ * @since 14.0.0
+ */
+public final class InternalSessionCodec {
+
+    /** The version of the CTS binary format that identifies this format. */
+    public static final byte VERSION = 2;
+
+    private static final byte[] HEADER = {0, 'C', 'T', 'S'};
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int NULL_LENGTH = -1;
+    private static final byte NULL_BOOLEAN = 0;
+    private static final byte FALSE = 1;
+    private static final byte TRUE = 2;
+
+    private InternalSessionCodec() {
+    }
+
+    /**
+     * Determines whether a blob is in this format.
+     *
+     * @param blob The blob, may be null.
+     * @return True if the blob starts with the header and version of this format.
+     */
+    public static boolean isEncoded(byte[] blob) {
+        if (blob == null || blob.length <= HEADER.length) {
+            return false;
+        }
+        for (int i = 0; i < HEADER.length; i++) {
+            if (blob[i] != HEADER[i]) {
+                return false;
+            }
+        }
+        return blob[HEADER.length] == VERSION;
+    }
+
+    /**
+     * Encodes a session to this format.
+     *
+     * @param session Non null session.
+     * @return Non null blob.
+     * @throws IOException If the session could not be encoded.
+     */
+    public static byte[] encode(InternalSession session) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(HEADER);
+        out.writeByte(VERSION);
+        session.writeTo(out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Returns the latest access time of a session, which is not part of the blob.
+     *
+     * @param session Non null session.
+     * @return The latest access time in seconds.
+     */
+    public static long getLatestAccessTime(InternalSession session) {
+        return session.getLatestAccessTime();
+    }
+
+    /**
+     * Decodes a session from a blob in this format.
+     *
+     * @param blob Non null blob in this format.
+     * @param latestAccessTime The latest access time of the session in seconds, stored alongside the blob.
+     * @return Non null session, which has none of its session service dependencies set.
+     * @throws IOException If the blob is not in this format or is not a complete session.
+     */
+    public static InternalSession decode(byte[] blob, long latestAccessTime) throws IOException {
+        if (!isEncoded(blob)) {
+            throw new IOException("Unsupported session format");
+        }
+        int offset = HEADER.length + 1;
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(blob, offset, blob.length - offset));
+        InternalSession session = new InternalSession();
+        session.readFrom(in);
+        if (in.read() != -1) {
+            throw new IOException("Unexpected data after session");
+        }
+        session.restoreLatestAccessTime(latestAccessTime);
+        return session;
+    }
+
+    /**
+     * Writes a string of any length, which may be null.
+     */
+    static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(NULL_LENGTH);
+            return;
+        }
+        byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        if (length < 0 || length > in.available()) {
+            throw new IOException("Truncated session blob");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    static void writeBoolean(DataOutput out, Boolean value) throws IOException {
+        out.writeByte(value == null ? NULL_BOOLEAN : value ? TRUE : FALSE);
+    }
+
+    static Boolean readBoolean(DataInputStream in) throws IOException {
+        byte value = in.readByte();
+        switch (value) {
+            case NULL_BOOLEAN:
+                return null;
+            case FALSE:
+                return Boolean.FALSE;
+            case TRUE:
+                return Boolean.TRUE;
+            default:
+                throw new IOException("Invalid boolean " + value);
+        }
+    }
+
+    static void writeSessionID(DataOutput out, SessionID sid) throws IOException {
+        out.writeBoolean(sid != null);
+        if (sid != null) {
+            sid.writeTo(out);
+        }
+    }
+
+    static SessionID readSessionID(DataInputStream in) throws IOException {
+        return in.readBoolean() ? SessionID.readFrom(in) : null;
+    }
+
+    static void writeRestriction(DataOutput out, TokenRestriction restriction) throws IOException {
+        try {
+            writeString(out, TokenRestrictionFactory.marshal(restriction));
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Unable to encode token restriction", e);
+        }
+    }
+
+    static TokenRestriction readRestriction(DataInputStream in) throws IOException {
+        String restriction = readString(in);
+        if (restriction == null) {
+            throw new IOException("Missing token restriction");
+        }
+        try {
+            return TokenRestrictionFactory.unmarshal(restriction);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Unable to decode token restriction", e);
+        }
+    }
+}
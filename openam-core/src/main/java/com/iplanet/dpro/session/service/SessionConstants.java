@@ -46,5 +46,39 @@ public class SessionConstants {
      */
     public static final String SESSION_BLACKLIST_PURGE_DELAY_ATTR = "openam-session-stateless-blacklist-purge-delay";
 
+    /**
+     * System property for the window of expiry times (in minutes) covered by each partition of the session blacklist
+     * bloom filter.
+     */
+    public static final String SESSION_BLACKLIST_PARTITION_DURATION =
+            "org.forgerock.openam.session.blacklist.partition.duration";
+
+    /**
+     * System property for the number of blacklisted sessions each slice of a session blacklist bloom filter
+     * partition is sized for.
+     */
+    public static final String SESSION_BLACKLIST_PARTITION_SIZE =
+            "org.forgerock.openam.session.blacklist.partition.size";
+
+    /**
+     * System property to enable/disable sharing session blacklist changes between servers as compact deltas.
+     */
+    public static final String SESSION_BLACKLIST_DELTA_SYNC_ENABLED =
+            "org.forgerock.openam.session.blacklist.delta.enabled";
+
+    /**
+     * System property for the time (in milliseconds) that session notifications for a remote destination are
+     * collected for before being sent together. Zero sends each notification as soon as possible.
+     */
+    public static final String SESSION_NOTIFICATION_BATCH_WINDOW =
+            "org.forgerock.openam.session.notification.batch.window";
+
+    /**
+     * System property for the maximum number of session notifications sent to a remote destination in one
+     * notification set.
+     */
+    public static final String SESSION_NOTIFICATION_BATCH_SIZE =
+            "org.forgerock.openam.session.notification.batch.size";
+
 
 }
@@ -0,0 +1,517 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.iplanet.dpro.session.service;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.iplanet.am.util.ThreadPool;
+import com.iplanet.am.util.ThreadPoolException;
+import com.iplanet.dpro.session.share.SessionNotification;
+import com.iplanet.services.comm.server.PLLServer;
+import com.iplanet.services.comm.server.SendNotificationException;
+import com.iplanet.services.comm.share.Notification;
+import com.iplanet.services.comm.share.NotificationSet;
+import com.sun.identity.common.GeneralTaskRunnable;
+import com.sun.identity.common.SystemTimer;
+import com.sun.identity.shared.debug.Debug;
+
+/**
+ * Sends session notifications to remote notification URLs, collecting the notifications for each destination URL
+ * and sending them together in a single PLL notification set.
+ * <p>
+ * Notifications for a destination are sent once the configured batch window has passed, or straight away once a
+ * full batch is pending. While a notification for a session is waiting to be sent, a later notification for the same
+ * session replaces it, as the listener only needs to know the latest state of the session. Each destination has at
+ * most one batch being sent at a time, so the notifications a destination receives stay in order.
+ *
+ * @see SessionServiceConfig#getSessionNotificationBatchWindow(TimeUnit)
+ * @see SessionServiceConfig#getSessionNotificationBatchSize()
+ */
+public class SessionNotificationDispatcher {
+
+    private final Debug sessionDebug;
+    private final Executor executor;
+    private final NotificationTransport transport;
+    private final long batchWindow;
+    private final int batchSize;
+    private final ConcurrentMap<String, Destination> destinations = new ConcurrentHashMap<String, Destination>();
+    private final List<DestinationListener> listeners = new CopyOnWriteArrayList<DestinationListener>();
+    private final AtomicInteger destinationIndex = new AtomicInteger();
+    private volatile BatchWindowTask batchWindowTask;
+    private volatile boolean shutdown = false;
+
+    /**
+     * Creates a dispatcher that sends notification sets with the PLL server using the given thread pool.
+     *
+     * @param sessionDebug The session debug instance.
+     * @param serviceConfig The session service configuration, for the batch window and size.
+     * @param threadPool The session notification thread pool.
+     */
+    SessionNotificationDispatcher(Debug sessionDebug, SessionServiceConfig serviceConfig, ThreadPool threadPool) {
+        this(sessionDebug, new ThreadPoolAdapter(threadPool), new PLLNotificationTransport(),
+                serviceConfig.getSessionNotificationBatchWindow(TimeUnit.MILLISECONDS),
+                serviceConfig.getSessionNotificationBatchSize());
+    }
+
+    SessionNotificationDispatcher(Debug sessionDebug, Executor executor, NotificationTransport transport,
+            long batchWindow, int batchSize) {
+        this.sessionDebug = sessionDebug;
+        this.executor = executor;
+        this.transport = transport;
+        this.batchWindow = batchWindow;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Starts the timer task that sends the pending notifications at the end of each batch window. Does nothing if
+     * notifications are not being batched by time.
+     */
+    void start() {
+        if (batchWindow > 0 && batchWindowTask == null) {
+            batchWindowTask = new BatchWindowTask();
+            SystemTimer.getTimer().schedule(batchWindowTask, new Date(System.currentTimeMillis() + batchWindow));
+        }
+    }
+
+    /**
+     * Stops the batch window task and sends any pending notifications on the calling thread. Notifications
+     * dispatched after this are sent straight away on the dispatching thread. A destination that already has a send in
+     * progress is left to that send, which then sends the rest of its notifications.
+     */
+    void shutdown() {
+        shutdown = true;
+        if (batchWindowTask != null) {
+            batchWindowTask.cancel();
+        }
+        for (Destination destination : destinations.values()) {
+            sendNow(destination);
+        }
+    }
+
+    /**
+     * Queues a session notification to be sent to the remote notification URL.
+     *
+     * @param url The notification URL.
+     * @param notification The session notification.
+     */
+    public void dispatch(URL url, SessionNotification notification) {
+        Destination destination = getDestination(url);
+        int queueDepth = destination.add(notification);
+        if (shutdown) {
+            sendNow(destination);
+        } else if (batchWindow == 0 || queueDepth >= batchSize) {
+            scheduleSend(destination);
+        }
+    }
+
+    /**
+     * Schedules a send for every destination with pending notifications, as is done at the end of each batch window.
+     */
+    void flush() {
+        for (Destination destination : destinations.values()) {
+            if (destination.getQueueDepth() > 0) {
+                scheduleSend(destination);
+            }
+        }
+    }
+
+    /**
+     * Registers a listener to be told about each destination as it is first dispatched to.
+     *
+     * @param listener The listener.
+     */
+    public void addDestinationListener(DestinationListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Returns the destinations that notifications have been dispatched to.
+     *
+     * @return An unmodifiable view of the destinations.
+     */
+    public Collection<Destination> getDestinations() {
+        return Collections.unmodifiableCollection(destinations.values());
+    }
+
+    /**
+     * Returns the number of notifications waiting to be sent, across all destinations.
+     *
+     * @return The total queue depth.
+     */
+    public long getQueueDepth() {
+        long total = 0;
+        for (Destination destination : destinations.values()) {
+            total += destination.getQueueDepth();
+        }
+        return total;
+    }
+
+    /**
+     * Returns the number of notifications sent, across all destinations.
+     *
+     * @return The total number of notifications sent.
+     */
+    public long getNotificationsSent() {
+        long total = 0;
+        for (Destination destination : destinations.values()) {
+            total += destination.getNotificationsSent();
+        }
+        return total;
+    }
+
+    /**
+     * Returns the number of notifications that were replaced by a later notification for the same session before
+     * being sent, across all destinations.
+     *
+     * @return The total number of superseded notifications.
+     */
+    public long getNotificationsSuperseded() {
+        long total = 0;
+        for (Destination destination : destinations.values()) {
+            total += destination.getNotificationsSuperseded();
+        }
+        return total;
+    }
+
+    /**
+     * Returns the average time taken to send a notification set, across all destinations.
+     *
+     * @return The average send time in milliseconds.
+     */
+    public long getAverageSendTime() {
+        long batches = 0;
+        long sendTime = 0;
+        for (Destination destination : destinations.values()) {
+            batches += destination.batchesSent.get();
+            sendTime += destination.totalSendTime.get();
+        }
+        return batches == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(sendTime / batches);
+    }
+
+    private Destination getDestination(URL url) {
+        String key = url.toString();
+        Destination destination = destinations.get(key);
+        if (destination == null) {
+            Destination created = new Destination(url, destinationIndex.incrementAndGet());
+            destination = destinations.putIfAbsent(key, created);
+            if (destination == null) {
+                destination = created;
+                for (DestinationListener listener : listeners) {
+                    listener.destinationAdded(destination);
+                }
+            }
+        }
+        return destination;
+    }
+
+    private void scheduleSend(final Destination destination) {
+        if (destination.sendScheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(new SendTask(destination));
+            } catch (RejectedExecutionException e) {
+                destination.sendScheduled.set(false);
+                sessionDebug.error("Unable to schedule notifications to " + destination.getUrl(), e);
+            }
+        }
+    }
+
+    /**
+     * Sends the pending notifications for the destination on the calling thread, unless a send for the destination is
+     * already scheduled or in progress. Checks again after each send, as notifications dispatched while the
+     * destination was busy are left to whichever send holds it.
+     */
+    private void sendNow(Destination destination) {
+        while (destination.getQueueDepth() > 0 && destination.sendScheduled.compareAndSet(false, true)) {
+            try {
+                send(destination);
+            } finally {
+                destination.sendScheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Sends the pending notifications for the destination, a batch at a time, until none are left. Only called by
+     * the holder of the destination's send flag.
+     */
+    private void send(Destination destination) {
+        for (List<SessionNotification> batch = destination.drain(batchSize); !batch.isEmpty();
+                batch = destination.drain(batchSize)) {
+            NotificationSet notificationSet = new NotificationSet(SessionService.SESSION_SERVICE);
+            for (SessionNotification notification : batch) {
+                notificationSet.addNotification(new Notification(notification.toXMLString()));
+            }
+            long start = System.nanoTime();
+            try {
+                transport.send(destination.getUrl(), notificationSet);
+                destination.recordSent(batch.size(), System.nanoTime() - start);
+            } catch (Exception e) {
+                destination.sendFailures.incrementAndGet();
+                sessionDebug.error("Remote notification to " + destination.getUrl(), e);
+            }
+        }
+    }
+
+    /**
+     * Sends the pending notifications of one destination on a notification thread.
+     */
+    private class SendTask implements Runnable {
+
+        private final Destination destination;
+
+        SendTask(Destination destination) {
+            this.destination = destination;
+        }
+
+        @Override
+        public void run() {
+            try {
+                send(destination);
+            } finally {
+                destination.sendScheduled.set(false);
+            }
+            // Notifications dispatched while the last batch was being sent, that would otherwise wait for a send
+            // that is no longer scheduled. Once shut down, the thread pool may no longer run tasks.
+            int queueDepth = destination.getQueueDepth();
+            if (queueDepth > 0 && shutdown) {
+                sendNow(destination);
+            } else if (queueDepth > 0 && (batchWindow == 0 || queueDepth >= batchSize)) {
+                scheduleSend(destination);
+            }
+        }
+    }
+
+    /**
+     * Schedules the sends for all destinations with pending notifications at the end of each batch window.
+     */
+    private class BatchWindowTask extends GeneralTaskRunnable {
+
+        @Override
+        public void run() {
+            flush();
+        }
+
+        @Override
+        public boolean addElement(Object obj) {
+            return false;
+        }
+
+        @Override
+        public boolean removeElement(Object obj) {
+            return false;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return true;
+        }
+
+        @Override
+        public long getRunPeriod() {
+            return batchWindow;
+        }
+    }
+
+    /**
+     * A remote notification URL, with its pending notifications and the statistics for the notifications sent to it.
+     */
+    public static final class Destination {
+
+        private final URL url;
+        private final int index;
+        private final Map<String, SessionNotification> pending = new LinkedHashMap<String, SessionNotification>();
+        private final AtomicBoolean sendScheduled = new AtomicBoolean(false);
+        private final AtomicLong notificationsSent = new AtomicLong();
+        private final AtomicLong batchesSent = new AtomicLong();
+        private final AtomicLong notificationsSuperseded = new AtomicLong();
+        private final AtomicLong sendFailures = new AtomicLong();
+        private final AtomicLong totalSendTime = new AtomicLong();
+        private final AtomicLong maxSendTime = new AtomicLong();
+
+        private Destination(URL url, int index) {
+            this.url = url;
+            this.index = index;
+        }
+
+        private int add(SessionNotification notification) {
+            String sessionId = notification.getSessionInfo().getSessionID();
+            synchronized (pending) {
+                // Replacing the value keeps the position of the earlier notification.
+                if (pending.put(sessionId, notification) != null) {
+                    notificationsSuperseded.incrementAndGet();
+                }
+                return pending.size();
+            }
+        }
+
+        private List<SessionNotification> drain(int max) {
+            synchronized (pending) {
+                List<SessionNotification> batch = new ArrayList<SessionNotification>(Math.min(max, pending.size()));
+                Iterator<SessionNotification> iterator = pending.values().iterator();
+                while (iterator.hasNext() && batch.size() < max) {
+                    batch.add(iterator.next());
+                    iterator.remove();
+                }
+                return batch;
+            }
+        }
+
+        private void recordSent(int notifications, long sendTime) {
+            notificationsSent.addAndGet(notifications);
+            batchesSent.incrementAndGet();
+            totalSendTime.addAndGet(sendTime);
+            long max = maxSendTime.get();
+            while (sendTime > max && !maxSendTime.compareAndSet(max, sendTime)) {
+                max = maxSendTime.get();
+            }
+        }
+
+        /**
+         * @return The notification URL.
+         */
+        public URL getUrl() {
+            return url;
+        }
+
+        /**
+         * @return A number identifying this destination, starting at one and increasing in the order destinations
+         * were first dispatched to.
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * @return The number of notifications waiting to be sent.
+         */
+        public int getQueueDepth() {
+            synchronized (pending) {
+                return pending.size();
+            }
+        }
+
+        /**
+         * @return The number of notifications sent.
+         */
+        public long getNotificationsSent() {
+            return notificationsSent.get();
+        }
+
+        /**
+         * @return The number of notification sets sent.
+         */
+        public long getBatchesSent() {
+            return batchesSent.get();
+        }
+
+        /**
+         * @return The number of notifications replaced by a later notification for the same session.
+         */
+        public long getNotificationsSuperseded() {
+            return notificationsSuperseded.get();
+        }
+
+        /**
+         * @return The number of notification sets that could not be sent.
+         */
+        public long getSendFailures() {
+            return sendFailures.get();
+        }
+
+        /**
+         * @return The average time taken to send a notification set, in milliseconds.
+         */
+        public long getAverageSendTime() {
+            long batches = batchesSent.get();
+            return batches == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalSendTime.get() / batches);
+        }
+
+        /**
+         * @return The longest time taken to send a notification set, in milliseconds.
+         */
+        public long getMaxSendTime() {
+            return TimeUnit.NANOSECONDS.toMillis(maxSendTime.get());
+        }
+    }
+
+    /**
+     * Told about each destination as it is first dispatched to.
+     */
+    public interface DestinationListener {
+
+        /**
+         * Called when notifications are first dispatched to a destination.
+         *
+         * @param destination The new destination.
+         */
+        void destinationAdded(Destination destination);
+    }
+
+    /**
+     * Sends a notification set to a remote notification URL.
+     */
+    interface NotificationTransport {
+
+        void send(URL url, NotificationSet notificationSet) throws Exception;
+    }
+
+    private static final class PLLNotificationTransport implements NotificationTransport {
+
+        @Override
+        public void send(URL url, NotificationSet notificationSet) throws SendNotificationException {
+            PLLServer.send(url, notificationSet);
+        }
+    }
+
+    /**
+     * Runs tasks on the session notification thread pool.
+     */
+    private static final class ThreadPoolAdapter implements Executor {
+
+        private final ThreadPool threadPool;
+
+        ThreadPoolAdapter(ThreadPool threadPool) {
+            this.threadPool = threadPool;
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            try {
+                threadPool.run(task);
+            } catch (ThreadPoolException e) {
+                throw new RejectedExecutionException(e);
+            }
+        }
+    }
+}
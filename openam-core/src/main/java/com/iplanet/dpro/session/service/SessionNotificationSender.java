@@ -24,7 +24,7 @@
  *
  * $Id: SessionService.java,v 1.37 2010/02/03 03:52:54 bina Exp $
  *
- * Portions Copyrighted 2010-2015 ForgeRock AS.
+ * Portions Copyrighted 2010-2016 ForgeRock AS.
  */
 
 package com.iplanet.dpro.session.service;
@@ -36,9 +36,6 @@ import com.iplanet.dpro.session.SessionNotificationHandler;
 import com.iplanet.dpro.session.share.SessionInfo;
 import com.iplanet.dpro.session.share.SessionNotification;
 import com.iplanet.dpro.session.utils.SessionInfoFactory;
-import com.iplanet.services.comm.server.PLLServer;
-import com.iplanet.services.comm.share.Notification;
-import com.iplanet.services.comm.share.NotificationSet;
 import com.sun.identity.shared.debug.Debug;
 import org.forgerock.util.thread.listener.ShutdownListener;
 import org.forgerock.util.thread.listener.ShutdownManager;
@@ -56,7 +53,8 @@ import java.util.concurrent.CopyOnWriteArraySet;
 /**
  * Responsible for sending PLL session notification events to registered listeners.
  *
- * Remote listeners (e.g. other instances of AM, Agents, and rich clients) will be notified using PLL/HTTP.
+ * Remote listeners (e.g. other instances of AM, Agents, and rich clients) will be notified using PLL/HTTP, with the
+ * notifications for each listener URL batched by the {@link SessionNotificationDispatcher}.
  *
  * Local listeners (i.e. this instance of AM) will be notified by calling SessionNotificationHandler directly.
  */
@@ -73,6 +71,7 @@ public class SessionNotificationSender {
     private final SessionServerConfig serverConfig;
     private final SessionInfoFactory sessionInfoFactory;
     private final ThreadPool threadPool;
+    private final SessionNotificationDispatcher notificationDispatcher;
     /**
      * The URL Vector for ALL session events : SESSION_CREATION, IDLE_TIMEOUT,
      * MAX_TIMEOUT, LOGOUT, REACTIVATION, DESTROY.
@@ -94,9 +93,12 @@ public class SessionNotificationSender {
 
         threadPool = new ThreadPool(THREAD_POOL_NAME, serviceConfig.getNotificationThreadPoolSize(),
                 serviceConfig.getNotificationThreadPoolThreshold(), true, sessionDebug);
+        notificationDispatcher = new SessionNotificationDispatcher(sessionDebug, serviceConfig, threadPool);
+        notificationDispatcher.start();
         shutdownManager.addShutdownListener(
                 new ShutdownListener() {
                     public void shutdown() {
+                        notificationDispatcher.shutdown();
                         threadPool.shutdown();
                     }
                 }
@@ -105,10 +107,17 @@ public class SessionNotificationSender {
     }
 
     /**
-     * Returns current Notification queue size.
+     * Returns current Notification queue size, including the notifications waiting to be sent in a batch.
      */
     public int getNotificationQueueSize() {
-        return threadPool.getCurrentSize();
+        return threadPool.getCurrentSize() + (int) notificationDispatcher.getQueueDepth();
+    }
+
+    /**
+     * Returns the dispatcher that batches notifications to remote listeners.
+     */
+    public SessionNotificationDispatcher getNotificationDispatcher() {
+        return notificationDispatcher;
     }
 
     /**
@@ -132,7 +141,8 @@ public class SessionNotificationSender {
             SessionNotificationSenderTask sns = new SessionNotificationSenderTask(session, eventType);
             // First send local notification. sendToLocal will return
             // true if remote URL's exists than add the notification
-            // to the thread pool to process remote notifications.
+            // to the thread pool to build the remote notifications and
+            // pass them to the dispatcher, which batches them.
             if (sns.sendToLocal()) {
                 threadPool.run(sns);
             }
@@ -216,8 +226,10 @@ public class SessionNotificationSender {
 
 
         /**
-         * Thread which sends the Session Notification.
+         * Builds the Session Notification for each remote URL on the notification thread, and passes them to the
+         * dispatcher, which batches them.
          */
+        @Override
         public void run() {
             if (urls == null) {
                 throw new IllegalStateException("Must call sendToLocal before starting thread");
@@ -228,16 +240,13 @@ public class SessionNotificationSender {
 
                 SessionNotification globalNotification =
                         new SessionNotification(session.toSessionInfo(), eventType, System.currentTimeMillis());
-                Notification globalNotificationXml = new Notification(globalNotification.toXMLString());
-                NotificationSet globalNotificationSet = new NotificationSet(SessionService.SESSION_SERVICE);
-                globalNotificationSet.addNotification(globalNotificationXml);
 
                 for (String globalUrl : sessionEventURLs) {
                     try {
                         URL parsedGlobalUrl = new URL(globalUrl);
                         // Only send to remote URLs, local URLs should be handled by sendToLocal
                         if (!serverConfig.isLocalNotificationService(parsedGlobalUrl)) {
-                            PLLServer.send(parsedGlobalUrl, globalNotificationSet);
+                            notificationDispatcher.dispatch(parsedGlobalUrl, globalNotification);
                         }
                     } catch (Exception e) {
                         sessionDebug.error("Remote Global notification to " + globalUrl, e);
@@ -258,11 +267,7 @@ public class SessionNotificationSender {
                                 SessionInfo info = sessionInfoFactory.makeSessionInfo(session, sid);
                                 SessionNotification notification =
                                         new SessionNotification(info, eventType, System.currentTimeMillis());
-                                Notification notificationXml = new Notification(notification.toXMLString());
-                                NotificationSet notificationSet = new NotificationSet(SessionService.SESSION_SERVICE);
-                                notificationSet.addNotification(notificationXml);
-
-                                PLLServer.send(parsedUrl, notificationSet);
+                                notificationDispatcher.dispatch(parsedUrl, notification);
                             }
                         }
                     } catch (Exception e) {
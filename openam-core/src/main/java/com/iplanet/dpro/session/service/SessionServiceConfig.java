@@ -133,6 +133,21 @@ public class SessionServiceConfig {
     private final int sessionFailoverClusterStateCheckTimeout;
     private final long sessionFailoverClusterStateCheckPeriod;
 
+    private static final long DEFAULT_SESSION_BLACKLIST_PARTITION_DURATION = 15;
+    private final long sessionBlacklistPartitionDurationMinutes;
+
+    private static final int DEFAULT_SESSION_BLACKLIST_PARTITION_SIZE = 10000;
+    private final int sessionBlacklistPartitionSize;
+
+    private static final boolean DEFAULT_SESSION_BLACKLIST_DELTA_SYNC_ENABLED = false;
+    private final boolean sessionBlacklistDeltaSyncEnabled;
+
+    private static final long DEFAULT_SESSION_NOTIFICATION_BATCH_WINDOW = 100;
+    private final long sessionNotificationBatchWindowMillis;
+
+    private static final int DEFAULT_SESSION_NOTIFICATION_BATCH_SIZE = 100;
+    private final int sessionNotificationBatchSize;
+
     /*
      * amSession.xml (SMS) Properties
      */
@@ -355,6 +370,19 @@ public class SessionServiceConfig {
                 loadSessionFailoverClusterStateCheckTimeout();
         sessionFailoverClusterStateCheckPeriod =
                 loadSessionFailoverClusterStateCheckPeriod();
+        sessionBlacklistPartitionDurationMinutes = Math.max(1,
+                SystemProperties.getAsLong(SESSION_BLACKLIST_PARTITION_DURATION,
+                        DEFAULT_SESSION_BLACKLIST_PARTITION_DURATION));
+        sessionBlacklistPartitionSize = Math.max(1,
+                SystemProperties.getAsInt(SESSION_BLACKLIST_PARTITION_SIZE, DEFAULT_SESSION_BLACKLIST_PARTITION_SIZE));
+        sessionBlacklistDeltaSyncEnabled =
+                SystemProperties.getAsBoolean(SESSION_BLACKLIST_DELTA_SYNC_ENABLED,
+                        DEFAULT_SESSION_BLACKLIST_DELTA_SYNC_ENABLED);
+        sessionNotificationBatchWindowMillis = Math.max(0,
+                SystemProperties.getAsLong(SESSION_NOTIFICATION_BATCH_WINDOW,
+                        DEFAULT_SESSION_NOTIFICATION_BATCH_WINDOW));
+        sessionNotificationBatchSize = Math.max(1,
+                SystemProperties.getAsInt(SESSION_NOTIFICATION_BATCH_SIZE, DEFAULT_SESSION_NOTIFICATION_BATCH_SIZE));
 
         try {
 
@@ -778,4 +806,58 @@ public class SessionServiceConfig {
     public long getSessionBlacklistPurgeDelay(TimeUnit unit) {
         return unit.convert(hotSwappableSessionServiceConfig.sessionBlacklistPurgeDelayMinutes, TimeUnit.MINUTES);
     }
+
+    /**
+     * The window of session blacklist expiry times covered by each partition of the blacklist bloom filter. Whole
+     * partitions are dropped once this window has passed.
+     *
+     * Defaults to 15 minutes.
+     *
+     * @param unit the desired time unit for the partition duration.
+     */
+    public long getSessionBlacklistPartitionDuration(TimeUnit unit) {
+        return unit.convert(sessionBlacklistPartitionDurationMinutes, TimeUnit.MINUTES);
+    }
+
+    /**
+     * The number of blacklisted sessions each slice of a blacklist bloom filter partition is sized for. Partitions
+     * that receive more sessions than this grow by a further slice.
+     *
+     * Defaults to 10000.
+     */
+    public int getSessionBlacklistPartitionSize() {
+        return sessionBlacklistPartitionSize;
+    }
+
+    /**
+     * Whether servers share session blacklist changes with each other as compact deltas rather than by polling for
+     * each individual blacklisted session. All servers in a cluster must use the same setting.
+     *
+     * Defaults to false.
+     */
+    public boolean isSessionBlacklistDeltaSyncEnabled() {
+        return sessionBlacklistDeltaSyncEnabled;
+    }
+
+    /**
+     * The time that session notifications for a remote destination are collected for before being sent to it in a
+     * single notification set. Zero sends notifications as soon as a notification thread is available.
+     *
+     * Defaults to 100 milliseconds.
+     *
+     * @param unit the desired time unit for the batch window.
+     */
+    public long getSessionNotificationBatchWindow(TimeUnit unit) {
+        return unit.convert(sessionNotificationBatchWindowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * The maximum number of session notifications sent to a remote destination in a single notification set. A
+     * destination is sent its notifications without waiting for the batch window once this many are pending.
+     *
+     * Defaults to 100.
+     */
+    public int getSessionNotificationBatchSize() {
+        return sessionNotificationBatchSize;
+    }
 }
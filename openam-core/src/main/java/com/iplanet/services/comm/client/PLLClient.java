@@ -27,11 +27,12 @@
  */
 
 /**
- * Portions Copyrighted 2011-2015 ForgeRock AS.
+ * Portions Copyrighted 2011-2016 ForgeRock AS.
  */
 package com.iplanet.services.comm.client;
 
 import com.iplanet.am.util.SystemProperties;
+import com.iplanet.services.comm.share.BinaryPLLCodec;
 import com.iplanet.services.comm.share.PLLBundle;
 import com.iplanet.services.comm.share.RequestSet;
 import com.iplanet.services.comm.share.ResponseSet;
@@ -39,20 +40,26 @@ import com.iplanet.services.naming.WebtopNaming.SiteMonitor;
 import com.sun.identity.shared.Constants;
 import com.sun.identity.shared.debug.Debug;
 import com.sun.identity.common.HttpURLConnectionManager;
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.servlet.http.Cookie;
 
 import org.forgerock.http.header.TransactionIdHeader;
@@ -64,6 +71,11 @@ import org.forgerock.openam.utils.IOUtils;
  * to the URL specified in the send() method. The high level services and
  * application can use Naming Service to find the service specific URL. This
  * class provides static methods to register notification handlers.
+ * <p>
+ * Requests offer the binary encoding of {@link BinaryPLLCodec}. Once a server
+ * has answered in that encoding, later RequestSets sent to it are binary too,
+ * and {@link #sendAll(URL, List)} sends several of them in one round trip.
+ * Servers that only answer in XML are always sent XML.
  * 
  * @see com.iplanet.services.comm.share.RequestSet
  * @see com.iplanet.services.comm.share.Response
@@ -80,8 +92,20 @@ public class PLLClient {
     
     private static boolean useCache = Boolean.getBoolean(
       SystemProperties.get(Constants.URL_CONNECTION_USE_CACHE, "false"));
-    
-    
+
+    private static final boolean binaryEnabled =
+      SystemProperties.getAsBoolean(Constants.SERVICES_COMM_BINARY_ENABLED, true);
+
+    /** the largest binary request to send, as the server's default limit */
+    private static final int maxContentLength = SystemProperties.getAsInt(
+      Constants.SERVICES_COMM_SERVER_PLLREQUEST_MAX_CONTENT_LENGTH, 16384);
+
+    private static final String ACCEPT = BinaryPLLCodec.CONTENT_TYPE + ", text/xml";
+
+    /** servers, as protocol://host:port, that have answered in binary */
+    private static final Set<String> binaryServers =
+      Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
 
     /**
      * Translates the Java object to an XML RequestSet document and sends the
@@ -139,12 +163,62 @@ public class PLLClient {
         return send(url, null, set, cookieTable);
     }
 
+    /**
+     * Sends several RequestSets to the specified URL. When the server is
+     * known to accept the binary encoding they are sent in as few requests as
+     * the server's request size limit allows, otherwise one after the other.
+     *
+     * @param url
+     *            The destination URL for the RequestSets.
+     * @param sets
+     *            The RequestSets to send.
+     * @return The Vector of Response objects for each RequestSet, in the
+     *            order of the RequestSets.
+     * @exception SendRequestException
+     *                if there is an error in sending the RequestSets.
+     */
+    public static List<Vector> sendAll(URL url, List<RequestSet> sets)
+            throws SendRequestException {
+        List<Vector> responses = new ArrayList<Vector>(sets.size());
+        int next = 0;
+        while (next < sets.size()) {
+            int end = next + 1;
+            if (isBinaryServer(url)) {
+                int length = BinaryPLLCodec.HEADER_LENGTH
+                        + BinaryPLLCodec.encodedLength(sets.get(next));
+                while (end < sets.size()) {
+                    length += BinaryPLLCodec.encodedLength(sets.get(end));
+                    if (length > maxContentLength) {
+                        break;
+                    }
+                    end++;
+                }
+            }
+            List<RequestSet> batch = sets.subList(next, end);
+            for (ResponseSet resset : send(url, null, batch, null)) {
+                responses.add(resset.getResponses());
+            }
+            next += batch.size();
+        }
+        return responses;
+    }
+
+    private static Vector send(URL url, String cookies, RequestSet set,
+            HashMap cookieTable) throws SendRequestException {
+        return send(url, cookies, Collections.singletonList(set), cookieTable)
+                .get(0).getResponses();
+    }
+
     // The private method that implements the above interfaces.
     // HashMap cookieTable passes in the cookies that will be replayed. It also
     // is the place holder to retrieve additional cookies if any from the
     // URL connection response.
-    private static Vector send(URL url, String cookies, RequestSet set,
-            HashMap cookieTable) throws SendRequestException {
+    // More than one RequestSet may only be sent to a server that is known to
+    // accept the binary encoding.
+    private static List<ResponseSet> send(URL url, String cookies,
+            List<RequestSet> sets, HashMap cookieTable)
+            throws SendRequestException {
+        boolean binary = isBinaryServer(url);
         HttpURLConnection conn = null;
         OutputStream out = null;
         BufferedReader in = null;
@@ -187,29 +261,53 @@ public class PLLClient {
                 }
                 conn.setRequestProperty("Cookie", cookies);
             }
-            conn.setRequestProperty("Content-Type", "text/xml;charset=UTF-8");
             conn.setRequestProperty(TransactionIdHeader.NAME, AuditRequestContext.createSubTransactionIdValue());
+            if (binaryEnabled) {
+                conn.setRequestProperty("Accept", ACCEPT);
+            }
 
             // Output ...
-            String xml = set.toXMLString();
+            byte[] body;
+            if (binary) {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                BinaryPLLCodec.writeRequestSets(buffer, sets);
+                body = buffer.toByteArray();
+                conn.setRequestProperty("Content-Type", BinaryPLLCodec.CONTENT_TYPE);
+            } else {
+                body = sets.get(0).toXMLString().getBytes("UTF-8");
+                conn.setRequestProperty("Content-Type", "text/xml;charset=UTF-8");
+            }
             // compute and set length, just in case iWS set arbitrary length
-            int requestLength = xml.getBytes("UTF-8").length;
             conn.setRequestProperty("Content-Length", Integer
-                    .toString(requestLength));
+                    .toString(body.length));
             out = conn.getOutputStream();
-            out.write(xml.getBytes("UTF-8"));
+            out.write(body);
             out.flush();
 
             // Input ...
-            in = new BufferedReader(new InputStreamReader(conn
-                    .getInputStream(), "UTF-8"));
-            StringBuilder in_buf = new StringBuilder();
-            int len;
-            char[] buf = new char[1024];
-            while ((len = in.read(buf, 0, buf.length)) != -1) {
-                in_buf.append(buf, 0, len);
+            List<ResponseSet> ressets;
+            if (BinaryPLLCodec.isBinary(conn.getContentType())) {
+                binaryServers.add(serverOf(url));
+                InputStream bin = new BufferedInputStream(conn.getInputStream());
+                try {
+                    int maxLength = conn.getContentLength() < 0 ? Integer.MAX_VALUE : conn.getContentLength();
+                    ressets = BinaryPLLCodec.readResponseSets(bin, maxLength);
+                    // drain, so that the connection can be kept alive
+                    IOUtils.readStream(bin);
+                } finally {
+                    IOUtils.closeIfNotNull(bin);
+                }
+            } else {
+                in = new BufferedReader(new InputStreamReader(conn
+                        .getInputStream(), "UTF-8"));
+                StringBuilder in_buf = new StringBuilder();
+                int len;
+                char[] buf = new char[1024];
+                while ((len = in.read(buf, 0, buf.length)) != -1) {
+                    in_buf.append(buf, 0, len);
+                }
+                ressets = Collections.singletonList(ResponseSet.parseXML(in_buf.toString()));
             }
-            String in_string = in_buf.toString();
 
             // retrieves cookies from the response
             Map headers = conn.getHeaderFields();
@@ -217,10 +315,18 @@ public class PLLClient {
                 parseCookies(headers, cookieTable);
             }
 
-            ResponseSet resset = ResponseSet.parseXML(in_string);
-            return resset.getResponses();
+            if (ressets.size() != sets.size()) {
+                throw new SendRequestException("Expected " + sets.size() + " ResponseSets but received "
+                        + ressets.size());
+            }
+            return ressets;
         } catch (Exception e) {
             debug.warning("PLLClient.send: exception: ", e);
+            if (binary) {
+                // the server may have been replaced by one without binary
+                // support, so fall back to XML until it answers in binary
+                binaryServers.remove(serverOf(url));
+            }
             throw new SendRequestException(e.getMessage());
         } finally {
             IOUtils.closeIfNotNull(out);
@@ -240,6 +346,14 @@ public class PLLClient {
         }
     }
 
+    private static boolean isBinaryServer(URL url) {
+        return binaryEnabled && binaryServers.contains(serverOf(url));
+    }
+
+    private static String serverOf(URL url) {
+        return url.getProtocol() + "://" + url.getHost() + ":" + url.getPort();
+    }
+
     /**
      * Parses the cookies from the response header and stores them in
      * in cookieTable
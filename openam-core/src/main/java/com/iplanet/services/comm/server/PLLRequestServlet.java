@@ -24,11 +24,12 @@
  *
  * $Id: PLLRequestServlet.java,v 1.9 2009/02/12 17:24:13 bina Exp $
  *
- * Portions Copyrighted 2012-2015 ForgeRock AS.
+ * Portions Copyrighted 2012-2016 ForgeRock AS.
  */
 package com.iplanet.services.comm.server;
 
 import com.iplanet.am.util.SystemProperties;
+import com.iplanet.services.comm.share.BinaryPLLCodec;
 import com.iplanet.services.comm.share.PLLBundle;
 import com.iplanet.services.comm.share.RequestSet;
 import com.iplanet.services.comm.share.ResponseSet;
@@ -39,10 +40,14 @@ import org.forgerock.guice.core.InjectorHolder;
 import org.forgerock.openam.audit.AuditEventFactory;
 import org.forgerock.openam.audit.AuditEventPublisher;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStreamWriter;
+import java.util.ArrayList;
 import java.util.Hashtable;
+import java.util.List;
 import javax.servlet.ServletException;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServlet;
@@ -57,6 +62,9 @@ import javax.servlet.http.HttpServletResponse;
  * </p>
  * The doPost() method gets the XML RequestSet document from the HttpRequest
  * object, then parses the XML documnent and reconstructs a RequestSet object.
+ * Servers may instead send one or more RequestSets in the binary encoding of
+ * {@link BinaryPLLCodec}, and clients that accept that encoding are answered
+ * in it.
  * 
  * @see com.iplanet.services.comm.share.Request
  * @see com.iplanet.services.comm.share.RequestSet
@@ -75,6 +83,9 @@ public class PLLRequestServlet extends HttpServlet {
 
     private static final String AUTH_SVC_ID = "Auth";
 
+    private static final boolean binaryEnabled =
+        SystemProperties.getAsBoolean(Constants.SERVICES_COMM_BINARY_ENABLED, true);
+
     public void init() throws ServletException {
         String maxContentLengthProp = SystemProperties.get(
                 PROPERTY_MAX_CONTENT_LENGTH, String.valueOf(maxContentLength));
@@ -127,6 +138,10 @@ public class PLLRequestServlet extends HttpServlet {
                 rlength += r;
                 offset += r;
             }
+            if (binaryEnabled && BinaryPLLCodec.isBinary(req.getContentType())) {
+                handleBinaryRequest(auditor, reqData, req, res);
+                return;
+            }
             String xml = new String(reqData, 0, length, "UTF-8");
 
             RequestSet set = RequestSet.parseXML(xml);
@@ -137,7 +152,14 @@ public class PLLRequestServlet extends HttpServlet {
                 }
             }
 
-            String responseXML = handleRequest(auditor, set, req, res);
+            ResponseSet rset = handleRequest(auditor, set, req, res);
+            if (binaryEnabled && acceptsBinary(req)) {
+                List<ResponseSet> rsets = new ArrayList<>(1);
+                rsets.add(rset);
+                writeBinaryResponse(rsets, res);
+                return;
+            }
+            String responseXML = rset.toXMLString();
             res.setContentLength(responseXML.getBytes("UTF-8").length);
             OutputStreamWriter out = new OutputStreamWriter(res.getOutputStream(),
                     "UTF-8");
@@ -160,6 +182,48 @@ public class PLLRequestServlet extends HttpServlet {
 
     }
 
+    /*
+     * Processes the RequestSets of a binary request in order and writes all
+     * of their ResponseSets as one binary response.
+     */
+    private void handleBinaryRequest(PLLAuditor auditor, byte[] reqData, HttpServletRequest req,
+            HttpServletResponse res) throws ServletException, IOException {
+        List<RequestSet> sets = BinaryPLLCodec.readRequestSets(new ByteArrayInputStream(reqData), reqData.length);
+        if (sets.isEmpty()) {
+            throw servletException("invalidRequestSet");
+        }
+        List<ResponseSet> rsets = new ArrayList<>(sets.size());
+        for (RequestSet set : sets) {
+            if (PLLServer.pllDebug.messageEnabled() && !AUTH_SVC_ID.equalsIgnoreCase(set.getServiceID())) {
+                PLLServer.pllDebug.message("Received binary RequestSet :\n" + set.toXMLString());
+            }
+            rsets.add(handleRequest(auditor, set, req, res));
+        }
+        writeBinaryResponse(rsets, res);
+    }
+
+    private void writeBinaryResponse(List<ResponseSet> rsets, HttpServletResponse res) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        BinaryPLLCodec.writeResponseSets(buffer, rsets);
+        res.setContentType(BinaryPLLCodec.CONTENT_TYPE);
+        res.setContentLength(buffer.size());
+        ServletOutputStream out = res.getOutputStream();
+        try {
+            buffer.writeTo(out);
+            out.flush();
+        } finally {
+            try {
+                out.close();
+            } catch (Exception ex) {
+            }
+        }
+    }
+
+    private boolean acceptsBinary(HttpServletRequest req) {
+        String accept = req.getHeader("Accept");
+        return accept != null && accept.toLowerCase().contains(BinaryPLLCodec.CONTENT_TYPE);
+    }
+
     private PLLAuditor newAuditor(HttpServletRequest httpServletRequest) {
         return new PLLAuditor(
                 PLLServer.pllDebug,
@@ -185,11 +249,11 @@ public class PLLRequestServlet extends HttpServlet {
      * 
      * @param String XML RequestSet String - Conforming to RequestSet.dtd @param
      * req HttpServletRequest object @param res HttpServletResponse object
-     * @return String XML ResponseSet String - Conforming to ResponseSet.dtd
+     * @return ResponseSet The ResponseSet of the service handler
      * 
      * @see sunir.share.profile.service.server.http.RequestProcessor
      */
-    private String handleRequest(PLLAuditor auditor, RequestSet set, HttpServletRequest req, HttpServletResponse res)
+    private ResponseSet handleRequest(PLLAuditor auditor, RequestSet set, HttpServletRequest req, HttpServletResponse res)
             throws ServletException {
         if (!isValid(set)) {
             throw servletException("invalidRequestSet");
@@ -201,7 +265,7 @@ public class PLLRequestServlet extends HttpServlet {
         }
         ResponseSet rset = handler.process(auditor, set.getRequests(), req, res, getServletConfig().getServletContext());
         rset.setRequestSetID(set.getRequestSetID());
-        return rset.toXMLString();
+        return rset;
     }
 
     /*
@@ -0,0 +1,256 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.iplanet.services.comm.share;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * Compact binary encoding of PLL {@link RequestSet}s and {@link ResponseSet}s, used between servers in place of the
+ * XML documents when both ends support it.
+ * <br/>
+ * A message is a magic number and version, the number of sets it holds and then each set. Strings are written as
+ * their UTF-8 length, or -1 for null, followed by their UTF-8 bytes. Messages are read straight from the stream, so
+ * no document is built, and several sets can travel in one message.
+ *
+ * @since 14.0.0
+ */
+public final class BinaryPLLCodec {
+
+    /**
+     * The content type of binary PLL messages.
+     */
+    public static final String CONTENT_TYPE = "application/x-openam-pll";
+
+    /**
+     * The length of the header that starts every message.
+     */
+    public static final int HEADER_LENGTH = 8;
+
+    private static final int MAGIC = 0x504C4C01;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private BinaryPLLCodec() {
+    }
+
+    /**
+     * Determines whether an HTTP content type is that of binary PLL messages.
+     *
+     * @param contentType A content type header value, may be null.
+     * @return true if the content type is {@link #CONTENT_TYPE}, ignoring any parameters.
+     */
+    public static boolean isBinary(String contentType) {
+        return contentType != null && contentType.toLowerCase().startsWith(CONTENT_TYPE);
+    }
+
+    /**
+     * Gives the number of bytes that a request set adds to a message, so that messages can be kept within the
+     * request size that a server accepts.
+     *
+     * @param set The request set.
+     * @return The encoded length of the request set.
+     */
+    public static int encodedLength(RequestSet set) {
+        int length = stringLength(set.getRequestSetVersion()) + stringLength(set.getServiceID())
+                + stringLength(set.getRequestSetID()) + 4;
+        for (Request request : set.getRequests()) {
+            length += stringLength(request.getDtdID()) + stringLength(request.getSessionID())
+                    + stringLength(request.getContent());
+        }
+        return length;
+    }
+
+    /**
+     * Writes request sets as one message.
+     *
+     * @param out The stream to write to, which is flushed but not closed.
+     * @param sets The request sets.
+     * @throws IOException If the stream cannot be written.
+     */
+    public static void writeRequestSets(OutputStream out, List<RequestSet> sets) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(sets.size());
+        for (RequestSet set : sets) {
+            writeString(data, set.getRequestSetVersion());
+            writeString(data, set.getServiceID());
+            writeString(data, set.getRequestSetID());
+            data.writeInt(set.getRequests().size());
+            for (Request request : set.getRequests()) {
+                writeString(data, request.getDtdID());
+                writeString(data, request.getSessionID());
+                writeString(data, request.getContent());
+            }
+        }
+        data.flush();
+    }
+
+    /**
+     * Reads a message of request sets.
+     *
+     * @param in The stream to read from, which is not closed.
+     * @param maxLength The largest number of bytes that any one string or count in the message may claim.
+     * @return The request sets, in the order they were written.
+     * @throws IOException If the stream cannot be read or does not hold a valid message.
+     */
+    public static List<RequestSet> readRequestSets(InputStream in, int maxLength) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        int count = readHeader(data, maxLength);
+        List<RequestSet> sets = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            RequestSet set = new RequestSet();
+            set.setRequestSetVersion(readString(data, maxLength));
+            set.setServiceID(readString(data, maxLength));
+            set.setRequestSetID(readString(data, maxLength));
+            int requests = readCount(data, maxLength);
+            for (int j = 0; j < requests; j++) {
+                Request request = new Request();
+                request.setDtdID(readString(data, maxLength));
+                request.setSessionID(readString(data, maxLength));
+                request.setContent(readString(data, maxLength));
+                set.addRequest(request);
+            }
+            sets.add(set);
+        }
+        return sets;
+    }
+
+    /**
+     * Writes response sets as one message.
+     *
+     * @param out The stream to write to, which is flushed but not closed.
+     * @param sets The response sets.
+     * @throws IOException If the stream cannot be written.
+     */
+    public static void writeResponseSets(OutputStream out, List<ResponseSet> sets) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(sets.size());
+        for (ResponseSet set : sets) {
+            writeString(data, set.getResponseSetVersion());
+            writeString(data, set.getServiceID());
+            writeString(data, set.getRequestSetID());
+            Vector responses = set.getResponses();
+            data.writeInt(responses.size());
+            for (Object response : responses) {
+                writeString(data, ((Response) response).getDtdID());
+                writeString(data, ((Response) response).getContent());
+            }
+        }
+        data.flush();
+    }
+
+    /**
+     * Reads a message of response sets.
+     *
+     * @param in The stream to read from, which is not closed.
+     * @param maxLength The largest number of bytes that any one string or count in the message may claim.
+     * @return The response sets, in the order they were written.
+     * @throws IOException If the stream cannot be read or does not hold a valid message.
+     */
+    public static List<ResponseSet> readResponseSets(InputStream in, int maxLength) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        int count = readHeader(data, maxLength);
+        List<ResponseSet> sets = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ResponseSet set = new ResponseSet();
+            set.setResponseSetVersion(readString(data, maxLength));
+            set.setServiceID(readString(data, maxLength));
+            set.setRequestSetID(readString(data, maxLength));
+            int responses = readCount(data, maxLength);
+            for (int j = 0; j < responses; j++) {
+                Response response = new Response();
+                response.setDtdID(readString(data, maxLength));
+                response.setContent(readString(data, maxLength));
+                set.addResponse(response);
+            }
+            sets.add(set);
+        }
+        return sets;
+    }
+
+    private static int readHeader(DataInputStream data, int maxLength) throws IOException {
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a binary PLL message");
+        }
+        return readCount(data, maxLength);
+    }
+
+    private static int readCount(DataInputStream data, int maxLength) throws IOException {
+        int count = data.readInt();
+        if (count < 0 || count > maxLength) {
+            throw new IOException("Invalid count in binary PLL message: " + count);
+        }
+        return count;
+    }
+
+    private static int stringLength(String value) {
+        int length = 4;
+        if (value != null) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    length++;
+                } else if (c < 0x800) {
+                    length += 2;
+                } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    length += 4;
+                    i++;
+                } else {
+                    length += 3;
+                }
+            }
+        }
+        return length;
+    }
+
+    private static void writeString(DataOutputStream data, String value) throws IOException {
+        if (value == null) {
+            data.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(UTF_8);
+            data.writeInt(bytes.length);
+            data.write(bytes);
+        }
+    }
+
+    private static String readString(DataInputStream data, int maxLength) throws IOException {
+        int length = data.readInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > maxLength) {
+            throw new IOException("Invalid string length in binary PLL message: " + length);
+        }
+        byte[] bytes = new byte[length];
+        try {
+            data.readFully(bytes);
+        } catch (EOFException e) {
+            throw new IOException("Truncated binary PLL message", e);
+        }
+        return new String(bytes, UTF_8);
+    }
+}
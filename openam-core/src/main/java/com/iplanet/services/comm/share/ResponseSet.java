@@ -27,7 +27,7 @@
  */
 
 /**
- * Portions Copyrighted [2011] [ForgeRock AS]
+ * Portions Copyrighted [2011-2016] [ForgeRock AS]
  */
 package com.iplanet.services.comm.share;
 
@@ -192,4 +192,20 @@ public class ResponseSet {
     void setServiceID(String id) {
         serviceID = id;
     }
+
+    /*
+     * The following methods are used by BinaryPLLCodec to write a
+     * ResponseSet object.
+     */
+    String getResponseSetVersion() {
+        return responseSetVersion;
+    }
+
+    String getServiceID() {
+        return serviceID;
+    }
+
+    String getRequestSetID() {
+        return requestSetID;
+    }
 }
@@ -24,7 +24,7 @@
  *
  * $Id: AMLoginContext.java,v 1.24 2009/12/23 20:03:04 mrudul_uchil Exp $
  *
- * Portions Copyrighted 2011-2015 ForgeRock AS.
+ * Portions Copyrighted 2011-2016 ForgeRock AS.
  * Portions Copyrighted 2014 Nomura Research Institute, Ltd
  */
 package com.sun.identity.authentication.service;
@@ -45,6 +45,7 @@ import com.sun.identity.authentication.config.AMConfiguration;
 import com.sun.identity.authentication.config.AMConfigurationException;
 import com.sun.identity.authentication.server.AuthContextLocal;
 import com.sun.identity.authentication.service.DSAMECallbackHandler.DSAMECallbackHandlerError;
+import com.sun.identity.authentication.spi.AMLoginModule;
 import com.sun.identity.authentication.spi.AuthErrorCodeException;
 import com.sun.identity.authentication.spi.AuthLoginException;
 import com.sun.identity.authentication.spi.InvalidPasswordException;
@@ -128,7 +129,9 @@ public class AMLoginContext {
     private boolean internalAuthError = false;
     private boolean processDone = false;
     private int jaasCheck;
+    private boolean jaasContinuation = false;
     private Thread jaasThread = null;
+    private DSAMECallbackHandler dsameCallbackHandler;
     private AppConfigurationEntry[] entries = null;
     private Callback[] recdCallback;
     private final AuthenticationProcessEventAuditor auditor;
@@ -391,6 +394,12 @@ public class AMLoginContext {
         try {
             jaasCheck = AuthUtils.isPureJAASModulePresent(configName, this);
 
+            if (isPureJAAS() && AuthD.isJAASContinuations() && entries != null && !hasAMLoginModule(entries)) {
+                debug.message("Using jaas continuation mode.");
+                jaasCheck = 0;
+                jaasContinuation = true;
+            }
+
             if (isPureJAAS()) {
                 debug.message("Using pure jaas mode.");
                 if (authThread == null) {
@@ -399,7 +408,7 @@ public class AMLoginContext {
                 }
             }
 
-            DSAMECallbackHandler dsameCallbackHandler = new DSAMECallbackHandler(this);
+            dsameCallbackHandler = new DSAMECallbackHandler(this);
 
             if (isPureJAAS()) {
                 if (subject != null)  {
@@ -409,13 +418,7 @@ public class AMLoginContext {
                 }
             } else {
                 debug.message("Using non pure jaas mode.");
-                if (subject != null)  {
-                    jaasLoginContext = new com.sun.identity.authentication.jaas.LoginContext(
-                            entries, subject, dsameCallbackHandler);
-                } else {
-                    jaasLoginContext = new com.sun.identity.authentication.jaas.LoginContext(
-                            entries, dsameCallbackHandler);
-                }
+                jaasLoginContext = newJAASLoginContext();
             }
         } catch (AuthLoginException ae) {
             debug.error("JAAS module for config: " + configName + ", " + ae.getMessage());
@@ -562,6 +565,12 @@ public class AMLoginContext {
                 loginContext.login();
                 subject = loginContext.getSubject();
             } else {
+                if (jaasContinuation) {
+                    // Pure JAAS modules cannot carry on from where they asked for callbacks, so each request starts
+                    // the modules again and the callback handler answers the callbacks it has been given so far.
+                    jaasLoginContext = newJAASLoginContext();
+                    dsameCallbackHandler.replayCallbacks();
+                }
                 jaasLoginContext.login();
                 subject = jaasLoginContext.getSubject();
             }
@@ -2030,6 +2039,42 @@ public class AMLoginContext {
         return jaasCheck == 1;
     }
 
+    /**
+     * Checks if the chain of pure JAAS modules is run without a JAAS thread, by starting the modules again on each
+     * request and replaying the callbacks that have already been answered.
+     * @return <code>true</code> if in JAAS continuation mode
+     */
+    public boolean isJAASContinuation() {
+        return jaasContinuation;
+    }
+
+    private com.sun.identity.authentication.jaas.LoginContext newJAASLoginContext() throws LoginException {
+        if (subject != null) {
+            return new com.sun.identity.authentication.jaas.LoginContext(entries, subject, dsameCallbackHandler);
+        } else {
+            return new com.sun.identity.authentication.jaas.LoginContext(entries, dsameCallbackHandler);
+        }
+    }
+
+    /**
+     * Checks if any module in the chain is an <code>AMLoginModule</code>, which keeps its own state between requests
+     * and so must not be started again on each request.
+     */
+    private boolean hasAMLoginModule(AppConfigurationEntry[] entries) {
+        for (AppConfigurationEntry entry : entries) {
+            try {
+                Class<?> moduleClass = Class.forName(entry.getLoginModuleName(), false,
+                        Thread.currentThread().getContextClassLoader());
+                if (AMLoginModule.class.isAssignableFrom(moduleClass)) {
+                    return true;
+                }
+            } catch (ClassNotFoundException e) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private void nullifyUsedVars() {
         configName = null; // jaas configuration name.
         subject = null;
@@ -24,7 +24,7 @@
  *
  * $Id: AuthD.java,v 1.23 2009/11/25 12:02:02 manish_rustagi Exp $
  *
- * Portions Copyrighted 2010-2015 ForgeRock AS.
+ * Portions Copyrighted 2010-2016 ForgeRock AS.
  */
 package com.sun.identity.authentication.service;
 
@@ -170,6 +170,7 @@ public class AuthD implements ConfigurationListener {
     static final int LOG_ERROR  = 1;
 
     private static final boolean enforceJAASThread = SystemProperties.getAsBoolean(Constants.ENFORCE_JAAS_THREAD);
+    private static final boolean jaasContinuations = SystemProperties.getAsBoolean(Constants.JAAS_CONTINUATIONS);
     /**
      * Configured directory server host name for auth
      */
@@ -1366,4 +1367,13 @@ public class AuthD implements ConfigurationListener {
     static boolean isEnforceJAASThread() {
         return enforceJAASThread;
     }
+
+    /**
+     * Flag to run chains of pure JAAS modules without a JAAS thread, replaying
+     * the answered callbacks on each request.
+     * Default is false.
+     */
+    static boolean isJAASContinuations() {
+        return jaasContinuations;
+    }
 }
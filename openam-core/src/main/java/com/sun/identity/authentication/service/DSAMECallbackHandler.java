@@ -24,14 +24,22 @@
  *
  * $Id: DSAMECallbackHandler.java,v 1.7 2008/08/19 19:08:54 veiming Exp $
  *
- * Portions Copyrighted 2014-2015 ForgeRock AS.
+ * Portions Copyrighted 2014-2016 ForgeRock AS.
  */
 package com.sun.identity.authentication.service;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.security.auth.callback.Callback;
 import javax.security.auth.callback.CallbackHandler;
+import javax.security.auth.callback.ChoiceCallback;
+import javax.security.auth.callback.ConfirmationCallback;
+import javax.security.auth.callback.LanguageCallback;
+import javax.security.auth.callback.NameCallback;
+import javax.security.auth.callback.PasswordCallback;
+import javax.security.auth.callback.TextInputCallback;
 import javax.security.auth.callback.UnsupportedCallbackException;
 
 import com.sun.identity.shared.debug.Debug;
@@ -56,6 +64,10 @@ public class DSAMECallbackHandler implements CallbackHandler {
     // this will be sent by AuthContext for module to read.
     Callback[] submitRequiredInfo = null;
     static AuthThreadManager authThreadManager ;
+
+    // callbacks answered so far, replayed in JAAS continuation mode
+    private final List<Callback[]> answeredCallbacks = new ArrayList<Callback[]>();
+    private int replayed = 0;
     String sid = null;
     private static final DSAMECallbackHandlerError HANDLER_ERROR =
             new DSAMECallbackHandlerError("return from DSAMECallback");
@@ -127,6 +139,8 @@ public class DSAMECallbackHandler implements CallbackHandler {
                     // check if there is a timeout 
                 checkLoginTimeout();
 
+            } else if (am.isJAASContinuation()) {
+                handleContinuation(callbacks);
             } else {
                 if (loginState.getSubmittedInfo() != null) {
                     debug.message("DSAMEHandler: found submitted callbacks !");
@@ -152,6 +166,89 @@ public class DSAMECallbackHandler implements CallbackHandler {
         }
     } 
 
+    /**
+     * Starts replaying the answered callbacks, for the modules that have been
+     * started again in JAAS continuation mode.
+     */
+    void replayCallbacks() {
+        replayed = 0;
+    }
+
+    /**
+     * Answers the callbacks of a module started again in JAAS continuation
+     * mode: callbacks already answered are given the same answers, then the
+     * callbacks just submitted, and the next callbacks are sent to the user.
+     */
+    private void handleContinuation(Callback[] callbacks) throws IOException {
+        if (replayed < answeredCallbacks.size()) {
+            copyAnswers(callbacks, answeredCallbacks.get(replayed++));
+            return;
+        }
+        Callback[] submitted = loginState.getSubmittedInfo();
+        if (submitted != null) {
+            debug.message("DSAMEHandler: found submitted callbacks !");
+            checkLoginTimeout();
+            copyAnswers(callbacks, submitted);
+            answeredCallbacks.add(submitted);
+            replayed++;
+            loginState.setReceivedCallback_NoThread(null);
+        } else {
+            setPageTimeout(callbacks);
+            loginState.setReceivedCallback_NoThread(callbacks);
+            debug.message("Set callbacks, throwing java.lang.Error.");
+            throw HANDLER_ERROR;
+        }
+    }
+
+    /**
+     * Copies the answers of callbacks answered in an earlier request to the
+     * callbacks a module has asked for again. The module must ask for the same
+     * callbacks as before, since the answers would otherwise be given to the
+     * wrong questions.
+     * @param callbacks the callbacks the module has asked for.
+     * @param answers the callbacks answered in an earlier request.
+     */
+    static void copyAnswers(Callback[] callbacks, Callback[] answers)
+        throws IOException {
+
+        if (callbacks.length != answers.length) {
+            throw new IOException("Callbacks do not match the callbacks answered");
+        }
+        for (int i = 0; i < callbacks.length; i++) {
+            Callback callback = callbacks[i];
+            Callback answer = answers[i];
+            if (callback == answer) {
+                continue;
+            }
+            if (callback.getClass() != answer.getClass()) {
+                throw new IOException("Callbacks do not match the callbacks answered");
+            }
+            if (callback instanceof NameCallback) {
+                ((NameCallback) callback).setName(((NameCallback) answer).getName());
+            } else if (callback instanceof PasswordCallback) {
+                ((PasswordCallback) callback).setPassword(((PasswordCallback) answer).getPassword());
+            } else if (callback instanceof TextInputCallback) {
+                ((TextInputCallback) callback).setText(((TextInputCallback) answer).getText());
+            } else if (callback instanceof ChoiceCallback) {
+                int[] selected = ((ChoiceCallback) answer).getSelectedIndexes();
+                if (selected != null && selected.length > 1) {
+                    ((ChoiceCallback) callback).setSelectedIndexes(selected);
+                } else if (selected != null && selected.length == 1) {
+                    ((ChoiceCallback) callback).setSelectedIndex(selected[0]);
+                }
+            } else if (callback instanceof ConfirmationCallback) {
+                int selected = ((ConfirmationCallback) answer).getSelectedIndex();
+                if (selected >= 0) {
+                    ((ConfirmationCallback) callback).setSelectedIndex(selected);
+                }
+            } else if (callback instanceof LanguageCallback) {
+                ((LanguageCallback) callback).setLocale(((LanguageCallback) answer).getLocale());
+            } else {
+                callbacks[i] = answer;
+            }
+        }
+    }
+
     /**
      * Clones callbacks from cb2 to cb1.
      * @param cb1 new callbacks will be cloned from.
@@ -24,7 +24,7 @@
  *
  * $Id: Application.java,v 1.7 2010/01/08 22:20:47 veiming Exp $
  *
- * Portions copyright 2013-2015 ForgeRock AS.
+ * Portions copyright 2013-2016 ForgeRock AS.
  */
 package com.sun.identity.entitlement;
 
@@ -138,6 +138,7 @@ public class Application implements Cloneable {
     private ResourceName resourceComparatorInstance;
     private ISaveIndex saveIndexInstance;
     private ISearchIndex searchIndexInstance;
+    private volatile ResourceMatcher resourceMatcher;
 
     /**
      * Public, default constructor
@@ -197,6 +198,7 @@ public class Application implements Cloneable {
         clone.saveIndexInstance = saveIndexInstance;
         clone.resourceComparator = resourceComparator;
         clone.resourceComparatorInstance = resourceComparatorInstance;
+        clone.resourceMatcher = resourceMatcher;
 
         if (attributeNames != null) {
             clone.attributeNames = new HashSet<String>();
@@ -486,6 +488,22 @@ public class Application implements Cloneable {
         }
     }
 
+    /**
+     * Returns the matcher of the resource patterns of this Application's policies, which is built up as the
+     * policies are evaluated.
+     *
+     * @return resource matcher, or <code>null</code> if the resource comparator's patterns cannot be indexed.
+     */
+    ResourceMatcher getResourceMatcher() {
+        final ResourceName comparator = getResourceComparator();
+        ResourceMatcher matcher = resourceMatcher;
+        if (matcher == null || !matcher.isFor(comparator)) {
+            matcher = ResourceMatcher.forComparator(comparator);
+            resourceMatcher = matcher;
+        }
+        return matcher;
+    }
+
     /**
      * Sets attribute names.
      *
@@ -32,6 +32,7 @@ import com.sun.identity.entitlement.util.SearchFilter;
 import com.sun.identity.entitlement.util.SearchFilter.Operator;
 import com.sun.identity.shared.debug.Debug;
 import org.forgerock.guice.core.InjectorHolder;
+import org.forgerock.openam.entitlement.EntitlementDecisionCache;
 import org.forgerock.openam.entitlement.PolicyConstants;
 import org.forgerock.openam.entitlement.service.ResourceTypeService;
 import org.forgerock.openam.utils.CollectionUtils;
@@ -317,6 +318,7 @@ public final class ApplicationManager {
                 adminSubject, realm);
             ec.removeApplication(name);
             clearCache(realm);
+            InjectorHolder.getInstance(EntitlementDecisionCache.class).invalidate(realm, name, null);
         }
     }
 
@@ -400,6 +402,7 @@ public final class ApplicationManager {
             adminSubject, realm);
         ec.storeApplication(application);
         clearCache(realm);
+        InjectorHolder.getInstance(EntitlementDecisionCache.class).invalidate(realm, application.getName(), null);
     }
 
     private static String getApplicationCreatedBy(
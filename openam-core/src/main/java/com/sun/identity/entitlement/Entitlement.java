@@ -24,7 +24,7 @@
  *
  * $Id: Entitlement.java,v 1.7 2010/01/25 23:48:14 veiming Exp $
  *
- * Portions copyright 2010-2015 ForgeRock AS.
+ * Portions copyright 2010-2016 ForgeRock AS.
  */
 package com.sun.identity.entitlement;
 
@@ -474,6 +474,7 @@ public class Entitlement {
         }
 
         ResourceName resComparator = getResourceComparator(adminSubject, realm);
+        ResourceMatcher.Match resourceMatch = getResourceMatch(realm, resourceName, recursive);
 
         Set<String> matched = new HashSet<String>();
 
@@ -481,6 +482,15 @@ public class Entitlement {
                 ? tagswapResourceNames(subject, resourceNames) : resourceNames;
 
         for (String r : resources) {
+            if (resourceMatch != null) {
+                if (!resourceMatch.isCandidate(r)) {
+                    // r cannot match the resource being evaluated, so there is no need to compare them.
+                    continue;
+                }
+                if (resourceNames.contains(r)) {
+                    resourceMatch.learn(r);
+                }
+            }
             if (!recursive) {
                 if (resComparator instanceof RegExResourceName) {
                     ResourceMatch match = resComparator.compare(
@@ -526,6 +536,23 @@ public class Entitlement {
         return matched;
     }
 
+    /**
+     * Returns the match of the resource being evaluated against the resource patterns of the application, if the
+     * resource is being evaluated by the {@link PrivilegeEvaluator}.
+     */
+    private ResourceMatcher.Match getResourceMatch(String realm, String resourceName, boolean recursive)
+            throws EntitlementException {
+        final ResourceMatcher.Match match = ResourceMatcher.getCurrentMatch();
+        if (match == null) {
+            return null;
+        }
+        final Application application = getApplication(PolicyConstants.SUPER_ADMIN_SUBJECT, realm);
+        if (application == null || !match.isFor(application.getResourceMatcher(), resourceName, recursive)) {
+            return null;
+        }
+        return match;
+    }
+
     private Set<String> tagswapResourceNames(Subject sbj, Set<String> set) throws EntitlementException {
 
         if (sbj == null) {
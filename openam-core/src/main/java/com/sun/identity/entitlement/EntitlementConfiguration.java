@@ -24,7 +24,7 @@
  *
  * $Id: EntitlementConfiguration.java,v 1.7 2010/01/08 23:59:31 veiming Exp $
  *
- * Portions Copyrighted 2011-2015 ForgeRock AS.
+ * Portions Copyrighted 2011-2016 ForgeRock AS.
  */
 
 package com.sun.identity.entitlement;
@@ -46,6 +46,8 @@ public abstract class EntitlementConfiguration {
     public static final String POLICY_SEARCH_THREAD_SIZE = "searchThreadSize";
     public static final String POLICY_CACHE_SIZE = "policyCacheSize";
     public static final String INDEX_CACHE_SIZE = "indexCacheSize";
+    public static final String DECISION_CACHE_SIZE = "decisionCacheSize";
+    public static final String DECISION_CACHE_TIME_TO_LIVE = "decisionCacheTimeToLive";
     public static final String RESOURCE_COMPARATOR = "resourceComparator";
     
     private Subject adminSubject;
@@ -24,7 +24,7 @@
  *
  * $Id: Evaluator.java,v 1.2 2009/09/10 16:35:38 veiming Exp $
  *
- * Portions copyright 2013-2015 ForgeRock AS.
+ * Portions copyright 2013-2016 ForgeRock AS.
  */
 package com.sun.identity.entitlement;
 
@@ -40,6 +40,7 @@ import org.forgerock.openam.entitlement.PolicyConstants;
 import org.forgerock.openam.entitlement.monitoring.EntitlementConfigurationWrapper;
 import org.forgerock.openam.entitlement.monitoring.PolicyMonitor;
 import org.forgerock.openam.entitlement.monitoring.PolicyMonitoringType;
+import org.forgerock.openam.session.util.AppTokenHandler;
 
 /**
  * The class evaluates entitlement request and provides decisions.
@@ -140,6 +141,10 @@ public class Evaluator {
     /**
      * Returns a list of entitlements for a given subject, resource names
      * and environment.
+     * <p/>
+     * The resources are evaluated together, sharing the lookup of the subject attributes that policies are searched
+     * for by, and the policies of every resource are evaluated at the same time. The request is therefore recorded as
+     * a single evaluation, of all the resources, when monitoring is running.
      *
      * @param realm Realm Name.
      * @param subject Subject who is under evaluation.
@@ -159,16 +164,41 @@ public class Evaluator {
             throw new EntitlementException(424);
         }
 
-        List<Entitlement> results = new ArrayList<Entitlement>();
+        long startTime = System.currentTimeMillis();
+        Application application = getApplication(realm);
+        Set<String> subjectIndexes = SubjectAttributesManager.getInstance(adminSubject, realm)
+                .getSubjectSearchFilter(subject, applicationName);
+        Object appToken = AppTokenHandler.getAndClear();
+
+        List<PrivilegeEvaluator> evaluators = new ArrayList<PrivilegeEvaluator>(resourceNames.size());
+        try {
+            for (String res : resourceNames) {
+                PrivilegeEvaluator evaluator = new PrivilegeEvaluator();
+                evaluators.add(evaluator);
+                evaluator.start(realm, adminSubject, subject, applicationName,
+                        application.getResourceComparator().canonicalize(res), res, environment, subjectIndexes,
+                        appToken);
+            }
 
-        for (String res : resourceNames) {
-            List<Entitlement> r = evaluate(realm, subject, res, environment,
-                false);
-            if ((r != null) && !r.isEmpty()) {
-                results.addAll(r);
+            List<Entitlement> results = new ArrayList<Entitlement>();
+            for (PrivilegeEvaluator evaluator : evaluators) {
+                List<Entitlement> r = evaluator.getResults();
+                if ((r != null) && !r.isEmpty()) {
+                    results.addAll(r);
+                }
+            }
+
+            // The resources are evaluated at the same time, so the request is timed as one evaluation.
+            if (configWrapper.isMonitoringRunning()) {
+                policyMonitor.addEvaluation(System.currentTimeMillis() - startTime, realm, applicationName,
+                        resourceNames.toString(), subject, PolicyMonitoringType.SELF);
+            }
+            return results;
+        } finally {
+            for (PrivilegeEvaluator evaluator : evaluators) {
+                evaluator.cancel();
             }
         }
-        return results;
     }
 
     /**
@@ -201,14 +231,7 @@ public class Evaluator {
 
         long startTime = System.currentTimeMillis();
 
-        // Delegation to applications is currently not configurable, passing super admin (see AME-4959)
-        Application application = ApplicationManager
-                .getApplication(PolicyConstants.SUPER_ADMIN_SUBJECT, realm, applicationName);
-
-        if (application == null) {
-            // App retrieval error.
-            throw new EntitlementException(EntitlementException.APP_RETRIEVAL_ERROR, new String[] {realm});
-        }
+        Application application = getApplication(realm);
 
         // Normalise the incoming resource URL.
         String normalisedResourceName = application.getResourceComparator().canonicalize(resourceName);
@@ -225,6 +248,18 @@ public class Evaluator {
         return results;
     }
 
+    private Application getApplication(String realm) throws EntitlementException {
+        // Delegation to applications is currently not configurable, passing super admin (see AME-4959)
+        Application application = ApplicationManager
+                .getApplication(PolicyConstants.SUPER_ADMIN_SUBJECT, realm, applicationName);
+
+        if (application == null) {
+            // App retrieval error.
+            throw new EntitlementException(EntitlementException.APP_RETRIEVAL_ERROR, new String[] {realm});
+        }
+        return application;
+    }
+
     /**
      * Returns application name.
      * 
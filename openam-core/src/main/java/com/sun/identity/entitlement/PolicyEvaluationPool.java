@@ -0,0 +1,291 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.entitlement;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.forgerock.openam.entitlement.PolicyConstants;
+
+/**
+ * Evaluates the policies found for requests on a shared work stealing {@link ForkJoinPool}.
+ * <p>
+ * Policies are submitted as they are found, and each submission is split in halves down to single policies, so that
+ * threads that run out of work take on the policies that others have yet to start rather than a fixed share of
+ * them. Once the entitlements combined so far decide the request, or a policy fails to evaluate, the policies of
+ * the request that have not started are skipped.
+ * <p>
+ * With a parallelism of 1 or less, and for evaluations started by a thread of the pool, policies are evaluated on
+ * the submitting thread instead.
+ *
+ * @since 14.0.0
+ */
+final class PolicyEvaluationPool {
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a pool of the given number of threads.
+     *
+     * @param parallelism The number of threads, with 1 or less evaluating policies on the calling thread.
+     */
+    PolicyEvaluationPool(int parallelism) {
+        this.pool = parallelism > 1 ? new ForkJoinPool(parallelism, new WorkerThreadFactory(),
+                new UncaughtExceptionHandler(), true) : null;
+    }
+
+    /**
+     * Starts the evaluation of a request.
+     *
+     * @param handler Evaluates the policies of the request and combines their entitlements.
+     * @return The evaluation, to which the policies found for the request are submitted.
+     */
+    Evaluation newEvaluation(PolicyHandler handler) {
+        Thread thread = Thread.currentThread();
+        boolean inPool = thread instanceof ForkJoinWorkerThread && ((ForkJoinWorkerThread) thread).getPool() == pool;
+        // Evaluations started by a policy being evaluated do not wait on the threads that they may be holding up.
+        return new Evaluation(handler, pool == null || inPool ? null : pool);
+    }
+
+    /**
+     * Stops the threads of the pool.
+     */
+    void shutdown() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Evaluates the policies of a request and combines their entitlements.
+     */
+    interface PolicyHandler {
+
+        /**
+         * Evaluates a policy, on any thread.
+         *
+         * @param policy The policy.
+         * @return The entitlements of the policy, or {@code null} if it has none.
+         * @throws EntitlementException If the policy cannot be evaluated.
+         */
+        List<Entitlement> evaluate(IPrivilege policy) throws EntitlementException;
+
+        /**
+         * Combines the entitlements of a policy with those of the policies evaluated before it. Calls are made one
+         * at a time.
+         *
+         * @param entitlements The entitlements of a policy.
+         * @return {@code true} if the request is decided, and no more policies need to be evaluated.
+         */
+        boolean combine(List<Entitlement> entitlements);
+    }
+
+    /**
+     * The evaluation of a single request.
+     */
+    final class Evaluation {
+
+        private final PolicyHandler handler;
+        private final ForkJoinPool executor;
+        private final Lock lock = new ReentrantLock();
+        private final Condition finished = lock.newCondition();
+        private volatile boolean stopped;
+        private int remaining;
+        private Exception failure;
+
+        private Evaluation(PolicyHandler handler, ForkJoinPool executor) {
+            this.handler = handler;
+            this.executor = executor;
+        }
+
+        /**
+         * Submits policies for evaluation, evaluating them on the calling thread if the evaluation is not parallel.
+         *
+         * @param policies The policies.
+         */
+        void submit(Collection<IPrivilege> policies) {
+            if (executor == null) {
+                evaluate(policies);
+                return;
+            }
+            List<IPrivilege> list = new ArrayList<IPrivilege>(policies);
+            lock.lock();
+            try {
+                if (stopped) {
+                    return;
+                }
+                remaining += list.size();
+            } finally {
+                lock.unlock();
+            }
+            executor.execute(new PolicyTask(list, 0, list.size()));
+        }
+
+        /**
+         * Evaluates policies on the calling thread.
+         *
+         * @param policies The policies.
+         */
+        void evaluate(Collection<IPrivilege> policies) {
+            lock.lock();
+            try {
+                remaining += policies.size();
+            } finally {
+                lock.unlock();
+            }
+            for (IPrivilege policy : policies) {
+                evaluate(policy);
+            }
+        }
+
+        /**
+         * Returns whether the request is decided, failed or was cancelled, so that no more policies are evaluated.
+         *
+         * @return {@code true} once no more policies are evaluated.
+         */
+        boolean isStopped() {
+            return stopped;
+        }
+
+        /**
+         * Stops evaluating policies.
+         */
+        void cancel() {
+            lock.lock();
+            try {
+                stop();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Waits until every policy submitted has been evaluated or the request is decided. Every policy must have
+         * been submitted before this is called.
+         *
+         * @throws EntitlementException If a policy could not be evaluated.
+         * @throws RuntimeException If a policy failed to evaluate unexpectedly.
+         * @throws InterruptedException If the thread was interrupted while waiting.
+         */
+        void await() throws EntitlementException, InterruptedException {
+            lock.lock();
+            try {
+                while (!stopped && remaining > 0) {
+                    finished.await();
+                }
+                if (failure instanceof EntitlementException) {
+                    throw (EntitlementException) failure;
+                } else if (failure != null) {
+                    throw (RuntimeException) failure;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void evaluate(IPrivilege policy) {
+            if (stopped) {
+                return;
+            }
+            List<Entitlement> entitlements = null;
+            Exception error = null;
+            try {
+                entitlements = handler.evaluate(policy);
+            } catch (EntitlementException | RuntimeException e) {
+                error = e;
+            }
+            lock.lock();
+            try {
+                remaining--;
+                if (stopped) {
+                    return;
+                }
+                if (error != null) {
+                    failure = error;
+                    stop();
+                } else if (entitlements != null && handler.combine(entitlements)) {
+                    stop();
+                } else if (remaining == 0) {
+                    finished.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void stop() {
+            stopped = true;
+            finished.signalAll();
+        }
+
+        /**
+         * Evaluates a range of policies, handing half of them to any idle thread until one is left.
+         */
+        private final class PolicyTask extends RecursiveAction {
+
+            private final List<IPrivilege> policies;
+            private final int from;
+            private final int to;
+
+            private PolicyTask(List<IPrivilege> policies, int from, int to) {
+                this.policies = policies;
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected void compute() {
+                int start = from;
+                int end = to;
+                while (end - start > 1 && !stopped) {
+                    int middle = (start + end) >>> 1;
+                    new PolicyTask(policies, middle, end).fork();
+                    end = middle;
+                }
+                for (int i = start; i < end; i++) {
+                    evaluate(policies.get(i));
+                }
+            }
+        }
+    }
+
+    private static final class WorkerThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+
+        @Override
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("entitlementEvaluation-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    private static final class UncaughtExceptionHandler implements Thread.UncaughtExceptionHandler {
+
+        @Override
+        public void uncaughtException(Thread thread, Throwable throwable) {
+            PolicyConstants.DEBUG.error("PolicyEvaluationPool: uncaught exception in " + thread.getName(), throwable);
+        }
+    }
+}
@@ -24,7 +24,7 @@
  *
  * $Id: PrivilegeChangeNotifier.java,v 1.5 2010/01/07 00:19:11 veiming Exp $
  *
- * Portions Copyrighted 2014-2015 ForgeRock AS.
+ * Portions Copyrighted 2014-2016 ForgeRock AS.
  */
 
 package com.sun.identity.entitlement;
@@ -42,6 +42,8 @@ import java.util.Map;
 import java.util.Set;
 import javax.security.auth.Subject;
 
+import org.forgerock.guice.core.InjectorHolder;
+import org.forgerock.openam.entitlement.EntitlementDecisionCache;
 import org.forgerock.openam.entitlement.PolicyConstants;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -106,6 +108,9 @@ public class PrivilegeChangeNotifier {
         String applicationName,
         String privilegeName,
         Set<String> resources) {
+        InjectorHolder.getInstance(EntitlementDecisionCache.class).invalidate(realm, applicationName, resources);
+        forgetResourcePatterns(realm, applicationName, resources);
+
         try {
             Set<EntitlementListener> listeners =
                 ListenerManager.getInstance().getListeners(adminSubject);
@@ -129,6 +134,23 @@ public class PrivilegeChangeNotifier {
         }
     }
 
+    /**
+     * Drops the resources of a changed privilege from the resource matcher of its application, which learns those
+     * that are still used again as they are evaluated.
+     */
+    private void forgetResourcePatterns(String realm, String applicationName, Set<String> resources) {
+        try {
+            Application app = ApplicationManager.getApplication(
+                    PolicyConstants.SUPER_ADMIN_SUBJECT, realm, applicationName);
+            ResourceMatcher matcher = (app == null) ? null : app.getResourceMatcher();
+            if (matcher != null) {
+                matcher.forget(resources);
+            }
+        } catch (EntitlementException e) {
+            PolicyConstants.DEBUG.error("PrivilegeChangeNotifier.forgetResourcePatterns", e);
+        }
+    }
+
     private boolean toSendNotification(
         Subject adminSubject,
         String realm,
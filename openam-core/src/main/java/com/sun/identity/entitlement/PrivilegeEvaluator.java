@@ -24,32 +24,34 @@
  *
  * $Id: PrivilegeEvaluator.java,v 1.2 2009/10/07 06:36:40 veiming Exp $
  *
- * Portions Copyrighted 2010-2015 ForgeRock AS.
+ * Portions Copyrighted 2010-2016 ForgeRock AS.
  */
 package com.sun.identity.entitlement;
 
-import com.sun.identity.entitlement.interfaces.IThreadPool;
 import com.sun.identity.shared.debug.Debug;
 import java.security.Principal;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 import javax.security.auth.Subject;
 
+import org.forgerock.guice.core.InjectorHolder;
+import org.forgerock.openam.entitlement.EntitlementDecisionCache;
 import org.forgerock.openam.entitlement.PolicyConstants;
 import org.forgerock.openam.entitlement.PrivilegeEvaluatorContext;
 import org.forgerock.openam.session.util.AppTokenHandler;
 import org.forgerock.openam.utils.CollectionUtils;
+import org.forgerock.util.thread.listener.ShutdownListener;
 
 /**
  * This class evaluates entitlements of a subject for a given resource
  * and a environment parameters.
+ * <p/>
+ * The policies found for the resource are evaluated on a shared {@link PolicyEvaluationPool} as they are found, and
+ * evaluation stops as soon as the entitlement combiner has decided the request.
  */
 class PrivilegeEvaluator {
     private String realm = "/";
@@ -60,23 +62,24 @@ class PrivilegeEvaluator {
     private String requestedResourceName;
     private Map<String, Set<String>> envParameters;
     private ResourceSearchIndexes indexes;
-    private List<List<Entitlement>> resultQ = new
-        LinkedList<List<Entitlement>>();
     private Application application;
     private Set<String> actionNames;
     private EntitlementCombiner entitlementCombiner;
     private boolean recursive;
-    private EntitlementException eException;
-    private final Lock lock = new ReentrantLock();
-    private final Condition hasResults = lock.newCondition();
+    private Object appToken;
+    private PrivilegeEvaluatorContext context;
+    private ResourceMatcher.Match resourceMatch;
+    private PolicyEvaluationPool.Evaluation evaluation;
+    private EntitlementDecisionCache.Lookup cachedDecision;
+    private final EntitlementDecisionCache decisionCache =
+        InjectorHolder.getInstance(EntitlementDecisionCache.class);
 
     // Static variables
-    // TODO determine number of tasks per thread
     private static int evalThreadSize = Evaluator.DEFAULT_POLICY_EVAL_THREAD;
-    private static final int TASKS_PER_THREAD = 5;
+    /** The number of policies found that are submitted for evaluation together. */
+    private static final int POLICIES_PER_SUBMISSION = 5;
 
-    private static final IThreadPool threadPool;
-    private static final boolean isMultiThreaded;
+    private static final PolicyEvaluationPool evaluationPool;
 
     static {
         EntitlementConfiguration ec = EntitlementConfiguration.getInstance(
@@ -94,8 +97,12 @@ class PrivilegeEvaluator {
                     e);
             }
         }
-        isMultiThreaded = evalThreadSize > 1;
-        threadPool = isMultiThreaded ? new EntitlementThreadPool(evalThreadSize) : new SequentialThreadPool();
+        evaluationPool = new PolicyEvaluationPool(evalThreadSize);
+        com.sun.identity.common.ShutdownManager.getInstance().addShutdownListener(new ShutdownListener() {
+            public void shutdown() {
+                evaluationPool.shutdown();
+            }
+        });
     }
 
     /**
@@ -243,9 +250,40 @@ class PrivilegeEvaluator {
         indexes = getApplication().getResourceSearchIndex(normalisedResourceName, realm);
 
         return evaluate(realm);
+    }
 
+    /**
+     * Starts the evaluation of the entitlements of a subject for one of the resources of a request, without waiting
+     * for the policies to be evaluated, so that the resources of the request are evaluated together.
+     *
+     * @param realm Realm name.
+     * @param adminSubject Administrator subject which is used for evaluation.
+     * @param subject Subject to be evaluated.
+     * @param applicationName Application Name.
+     * @param normalisedResourceName The normalised resource name.
+     * @param requestedResourceName The requested resource name.
+     * @param envParameters Environment parameters.
+     * @param subjectIndexes The subject search indexes of the subject, shared by the resources of the request.
+     * @param appToken The application token of the request.
+     * @throws EntitlementException if evaluation cannot be started.
+     * @see #getResults()
+     */
+    void start(
+        String realm,
+        Subject adminSubject,
+        Subject subject,
+        String applicationName,
+        String normalisedResourceName,
+        String requestedResourceName,
+        Map<String, Set<String>> envParameters,
+        Set<String> subjectIndexes,
+        Object appToken
+    ) throws EntitlementException {
+        init(adminSubject, subject, realm, applicationName,
+            normalisedResourceName, requestedResourceName, null, envParameters, false);
+        indexes = getApplication().getResourceSearchIndex(normalisedResourceName, realm);
 
-
+        start(realm, subjectIndexes, appToken);
     }
 
     /**
@@ -259,48 +297,63 @@ class PrivilegeEvaluator {
      * @throws EntitlementException
      */
     private List<Entitlement> evaluate(String realm) throws EntitlementException {
-        final Debug debug = PolicyConstants.DEBUG;
-
-        // Search for relevant policies.
         final SubjectAttributesManager sam = SubjectAttributesManager.getInstance(adminSubject, realm);
         final Set<String> subjectIndexes = sam.getSubjectSearchFilter(subject, applicationName);
-        final PrivilegeIndexStore indexStore = PrivilegeIndexStore.getInstance(adminSubject, realm);
-        final Iterator<IPrivilege> policyIterator = indexStore.search(realm, indexes, subjectIndexes, recursive);
 
-        int totalCount = 0;
-        IPrivilege policy;
-
-        // First collect policies to be evaluated locally.
-        final Set<IPrivilege> localBatch = new HashSet<IPrivilege>(2 * TASKS_PER_THREAD);
-        while (totalCount < TASKS_PER_THREAD && policyIterator.hasNext()) {
-            policy = policyIterator.next();
-
-            if (policy instanceof ReferralPrivilege) {
-                // We want to ignore referrals - deprecated.
-                continue;
-            }
+        start(realm, subjectIndexes, AppTokenHandler.getAndClear());
+        return getResults();
+    }
 
-            if (debug.messageEnabled()) {
-                debug.message("[PolicyEval] PolicyEvaluator.evaluate");
-                debug.message("[PolicyEval] search result: privilege=" + policy.getName());
+    /**
+     * Searches for the policies relevant to the request resource and submits them for evaluation as they are found.
+     *
+     * @param realm
+     *         the evaluation realm
+     * @param subjectIndexes
+     *         the subject search indexes of the subject
+     * @param appToken
+     *         the application token of the request
+     *
+     * @throws EntitlementException
+     */
+    private void start(String realm, Set<String> subjectIndexes, Object appToken) throws EntitlementException {
+        final Debug debug = PolicyConstants.DEBUG;
+        this.appToken = appToken;
+
+        // Answer repeat requests with the decision made for them before.
+        if (decisionCache.isEnabled()) {
+            cachedDecision = decisionCache.lookup(new EntitlementDecisionCache.DecisionKey(realm, applicationName,
+                    normalisedResourceName, requestedResourceName, actionNames, recursive, subject, subjectIndexes,
+                    appToken), envParameters);
+            if (cachedDecision.isHit()) {
+                if (debug.messageEnabled()) {
+                    debug.message("[PolicyEval] PolicyEvaluator.evaluate: decision found in cache");
+                }
+                return;
             }
-
-            localBatch.add(policy);
-            totalCount++;
+            // Conditions read the environment through the lookup, so that it knows what the decision depends on.
+            envParameters = cachedDecision.getEnvironment();
         }
 
+        // Search for relevant policies.
+        final PrivilegeIndexStore indexStore = PrivilegeIndexStore.getInstance(adminSubject, realm);
+        final Iterator<IPrivilege> policyIterator = indexStore.search(realm, indexes, subjectIndexes, recursive);
+
         // Define an evaluation context.
-        final PrivilegeEvaluatorContext context =
-                new PrivilegeEvaluatorContext(realm, normalisedResourceName, applicationName);
-        final Object appToken = AppTokenHandler.getAndClear();
+        context = new PrivilegeEvaluatorContext(realm, normalisedResourceName, applicationName);
+        final ResourceMatcher matcher = getApplication().getResourceMatcher();
+        if (matcher != null) {
+            // Find the resource patterns that can match the resource once, rather than comparing every one.
+            resourceMatch = matcher.match(normalisedResourceName, recursive);
+        }
+        evaluation = evaluationPool.newEvaluation(new PolicyHandler());
 
-        // Submit additional policies to be executed by worker threads.
-        final Set<IPrivilege> threadBatch = new HashSet<IPrivilege>(2 * TASKS_PER_THREAD);
-        boolean tasksSubmitted = false;
+        // Submit policies as they are found, until the request is decided.
+        List<IPrivilege> batch = new ArrayList<IPrivilege>(POLICIES_PER_SUBMISSION);
+        boolean submitted = false;
 
-        while (policyIterator.hasNext()) {
-            tasksSubmitted = true;
-            policy = policyIterator.next();
+        while (policyIterator.hasNext() && !evaluation.isStopped()) {
+            IPrivilege policy = policyIterator.next();
 
             if (policy instanceof ReferralPrivilege) {
                 // We want to ignore referrals - deprecated.
@@ -312,75 +365,61 @@ class PrivilegeEvaluator {
                 debug.message("[PolicyEval] search result: privilege=" + policy.getName());
             }
 
-            threadBatch.add(policy);
-            totalCount++;
+            batch.add(policy);
 
-            if (threadBatch.size() == TASKS_PER_THREAD) {
-                final Set<IPrivilege> copiedBatch = new HashSet<IPrivilege>(threadBatch);
-                threadPool.submit(new PrivilegeTask(this, copiedBatch, isMultiThreaded, appToken, context));
-                threadBatch.clear();
+            if (batch.size() == POLICIES_PER_SUBMISSION) {
+                evaluation.submit(batch);
+                batch = new ArrayList<IPrivilege>(POLICIES_PER_SUBMISSION);
+                submitted = true;
             }
         }
 
-        if (!threadBatch.isEmpty()) {
-            // Submit any remaining policies.
-            threadPool.submit(new PrivilegeTask(this, threadBatch, isMultiThreaded, appToken, context));
+        if (!submitted && batch.size() == 1) {
+            // A single policy is evaluated here rather than handed to another thread.
+            evaluation.evaluate(batch);
+        } else if (!batch.isEmpty()) {
+            evaluation.submit(batch);
         }
+    }
 
-        // Submit the local policies.
-        final Runnable localTask = new PrivilegeTask(this, localBatch, tasksSubmitted, appToken, context);
-        localTask.run();
-
-        // Wait for submitted threads to complete evaluation.
-        if (tasksSubmitted) {
-            if (isMultiThreaded) {
-                receiveEvalResults(totalCount);
-            } else {
-                boolean isDone = false;
-                while (!resultQ.isEmpty() && !isDone) {
-                    entitlementCombiner.add(resultQ.remove(0));
-                    isDone = entitlementCombiner.isDone();
-                }
-            }
-        } else if (eException == null) {
-            boolean isDone = false;
-            while (!resultQ.isEmpty() && !isDone) {
-                entitlementCombiner.add(resultQ.remove(0));
-                isDone = entitlementCombiner.isDone();
-            }
+    /**
+     * Waits for the policies relevant to the request resource to be evaluated, and returns the combined
+     * entitlements.
+     *
+     * @return a list of applicable entitlements
+     *
+     * @throws EntitlementException
+     */
+    List<Entitlement> getResults() throws EntitlementException {
+        if (cachedDecision != null && cachedDecision.isHit()) {
+            return cachedDecision.getResults();
         }
 
-        if (eException != null) {
-            // Throw caught exception.
-            throw eException;
+        boolean interrupted = false;
+        try {
+            evaluation.await();
+        } catch (InterruptedException ex) {
+            PolicyConstants.DEBUG.error("PrivilegeEvaluator.evaluate", ex);
+            evaluation.cancel();
+            interrupted = true;
         }
 
-        return entitlementCombiner.getResults();
+        final List<Entitlement> results = entitlementCombiner.getResults();
+        if (cachedDecision != null && !interrupted) {
+            cachedDecision.store(getApplication().getResourceComparator(), results);
+        }
+        return results;
     }
 
-    private void receiveEvalResults(int totalCount) {
-        int counter = 0;
-        lock.lock();
-        boolean isDone = (eException != null);
-
-        try {
-            while (!isDone && (counter < totalCount)) {
-                if (resultQ.isEmpty()) {
-                    hasResults.await();
-                }
-                while (!resultQ.isEmpty() && !isDone) {
-                    entitlementCombiner.add(resultQ.remove(0));
-                    isDone = entitlementCombiner.isDone();
-                    counter++;
-                }
-            }
-        } catch (InterruptedException ex) {
-            PolicyConstants.DEBUG.error("PrivilegeEvaluator.evaluate", ex);
-        } finally {
-            lock.unlock();
+    /**
+     * Stops evaluating the policies relevant to the request resource, once the results are no longer needed.
+     */
+    void cancel() {
+        if (evaluation != null) {
+            evaluation.cancel();
         }
     }
-    
+
     private Application getApplication()
         throws EntitlementException {
         if (application == null) {
@@ -395,62 +434,31 @@ class PrivilegeEvaluator {
         return application;
     }
 
-    class PrivilegeTask implements Runnable {
-        final PrivilegeEvaluator parent;
-        private final Set<IPrivilege> privileges;
-        private final boolean isThreaded;
-        private final Object context;
-        private final PrivilegeEvaluatorContext ctx;
-
-        PrivilegeTask(PrivilegeEvaluator parent, Set<IPrivilege> privileges,
-            boolean isThreaded, Object context, PrivilegeEvaluatorContext ctx) {
-            this.parent = parent;
-            this.privileges = privileges;
-            this.isThreaded = isThreaded;
-            this.context = context;
-            this.ctx = ctx;
-        }
+    /**
+     * Evaluates the policies of the request and combines their entitlements.
+     */
+    private final class PolicyHandler implements PolicyEvaluationPool.PolicyHandler {
+
+        @Override
+        public List<Entitlement> evaluate(IPrivilege policy) throws EntitlementException {
+            final PrivilegeEvaluatorContext previous = PrivilegeEvaluatorContext.getCurrent();
+            final ResourceMatcher.Match previousMatch = ResourceMatcher.getCurrentMatch();
+            PrivilegeEvaluatorContext.setCurrent(context);
+            ResourceMatcher.setCurrentMatch(resourceMatch);
 
-        public void run() {
-            PrivilegeEvaluatorContext.setCurrent(ctx);
-            
             try {
-                for (final IPrivilege eval : privileges) {
-                    List<Entitlement> entitlements = eval.evaluate(
-                                            parent.adminSubject,
-                                            parent.realm, parent.subject,
-                                            parent.applicationName, parent.normalisedResourceName,
-                                            parent.requestedResourceName,
-                                            parent.actionNames, parent.envParameters,
-                                            parent.recursive, context);
-
-                    if (entitlements != null) {
-                        if (isThreaded) {
-                            try {
-                                parent.lock.lock();
-                                parent.resultQ.add(entitlements);
-                                parent.hasResults.signal();
-                            } finally {
-                                parent.lock.unlock();
-                            }
-                        } else {
-                            parent.resultQ.add(entitlements);
-                        }
-                    }
-                }
-            } catch (EntitlementException ex) {
-                if (isThreaded) {
-                    try {
-                        parent.lock.lock();
-                        parent.eException = ex;
-                        parent.hasResults.signal();
-                    } finally {
-                        parent.lock.unlock();
-                    }
-                } else {
-                    parent.eException = ex;
-                }
+                return policy.evaluate(adminSubject, realm, subject, applicationName, normalisedResourceName,
+                        requestedResourceName, actionNames, envParameters, recursive, appToken);
+            } finally {
+                PrivilegeEvaluatorContext.setCurrent(previous);
+                ResourceMatcher.setCurrentMatch(previousMatch);
             }
         }
+
+        @Override
+        public boolean combine(List<Entitlement> entitlements) {
+            entitlementCombiner.add(entitlements);
+            return entitlementCombiner.isDone();
+        }
     }
 }
@@ -26,18 +26,17 @@
  *
  * $Id: RegExResourceName.java,v 1.1 2009/12/07 19:53:02 veiming Exp $
  *
- * Portions Copyrighted 2014 ForgeRock AS.
+ * Portions Copyrighted 2014-2016 ForgeRock AS.
  */
 
 package com.sun.identity.entitlement;
 
-import com.iplanet.am.util.Cache;
 import com.sun.identity.entitlement.interfaces.ResourceName;
 
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -46,11 +45,11 @@ import java.util.regex.Pattern;
  */
 public class RegExResourceName implements ResourceName {
     private String delimiter = "/";
-    private static final ReadWriteLock patternCacheLock =
-        new ReentrantReadWriteLock();
 
     private static final int MAX_CACHE_SIZE = 1000;
-    private static Cache patternCache = new Cache(MAX_CACHE_SIZE);
+    /** Compiled patterns, read without locking as every policy comparison looks them up. */
+    private static final ConcurrentMap<String, Pattern> patternCache =
+        new ConcurrentHashMap<String, Pattern>();
 
     public Set<String> getServiceTypeNames() {
         return null;
@@ -171,42 +170,41 @@ public class RegExResourceName implements ResourceName {
     }
 
     private static Pattern getPatternFromCache(String strPattern) {
-        patternCacheLock.writeLock().lock();
-        try {
-            Pattern pattern = (Pattern)patternCache.get(strPattern);
-            if (pattern != null) {
-                return pattern;
-            }
-
-            StringBuilder buff = new StringBuilder();
-            for (int i = 0; i < strPattern.length()-1; i++) {
-                char c = strPattern.charAt(i);
-                if (c == '.') {
-                    buff.append("\\.");
-                } else if (c == '*') {
-                    buff.append(".*?");
-                } else if (c == '?') {
-                    buff.append("\\?");
-                } else if (c == '+') {
-                    buff.append("\\+");
-                } else {
-                    buff.append(c);
-                }
-            }
+        Pattern pattern = patternCache.get(strPattern);
+        if (pattern != null) {
+            return pattern;
+        }
 
-            char lastChar = strPattern.charAt(strPattern.length()-1);
-            if (lastChar == '*') {
-                buff.append(".*");
+        StringBuilder buff = new StringBuilder();
+        for (int i = 0; i < strPattern.length()-1; i++) {
+            char c = strPattern.charAt(i);
+            if (c == '.') {
+                buff.append("\\.");
+            } else if (c == '*') {
+                buff.append(".*?");
+            } else if (c == '?') {
+                buff.append("\\?");
+            } else if (c == '+') {
+                buff.append("\\+");
             } else {
-                buff.append(lastChar);
+                buff.append(c);
             }
+        }
 
-            pattern = Pattern.compile(buff.toString() + "(.*)");
-            patternCache.put(strPattern, pattern);
-            return pattern;
-        } finally {
-            patternCacheLock.writeLock().unlock();
+        char lastChar = strPattern.charAt(strPattern.length()-1);
+        if (lastChar == '*') {
+            buff.append(".*");
+        } else {
+            buff.append(lastChar);
+        }
+
+        pattern = Pattern.compile(buff.toString() + "(.*)");
+        if (patternCache.size() >= MAX_CACHE_SIZE) {
+            // Requested resources are compiled too, so start again rather than keep the first ones seen.
+            patternCache.clear();
         }
+        patternCache.put(strPattern, pattern);
+        return pattern;
     }
 
     public String[] split(String res) {
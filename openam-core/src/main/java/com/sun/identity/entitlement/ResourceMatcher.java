@@ -0,0 +1,390 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.entitlement;
+
+import com.sun.identity.entitlement.interfaces.ResourceName;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Matches a requested resource against the resource patterns of the policies of an application in one pass,
+ * narrowing the patterns that have to be compared with the application's {@link ResourceName} to those that can
+ * match it.
+ * <p>
+ * Each pattern is indexed in a trie by its literal prefix: the characters before its first wildcard, lower cased and
+ * without delimiters. A pattern can only match a resource that starts with its prefix, or for a sub tree evaluation a
+ * resource that its prefix starts with, so walking the requested resource down the trie finds every pattern that can
+ * match. Those candidates are still compared by the resource name, so the {@link ResourceMatch} semantics of the
+ * comparator are kept exactly and only the comparisons that would fail are saved.
+ * <p>
+ * Patterns are learnt as the policies using them are evaluated and forgotten when those policies change, so the trie
+ * is built up incrementally rather than from a scan of all policies. A pattern that has not been learnt, or that is
+ * not indexed because its prefix cannot be worked out safely, is always a candidate. Resources that cannot be walked
+ * safely, such as those containing wildcards, are not matched at all and every pattern is compared with them.
+ *
+ * @since 14.0.0
+ */
+final class ResourceMatcher {
+
+    /** The most patterns a matcher learns. Patterns beyond these are always compared. */
+    static final int MAX_PATTERNS = 100000;
+
+    private static final char DELIMITER = '/';
+    private static final char WILDCARD = '*';
+    private static final String ONE_LEVEL_WILDCARD = "-*-";
+    private static final String REGEX_SPECIAL_CHARACTERS = "\\^$|()[]{}";
+    private static final String REGEX_UNESCAPED_LAST_CHARACTERS = ".?+";
+    private static final long NOT_INDEXED = Long.MAX_VALUE;
+
+    private static final ThreadLocal<Match> currentMatch = new ThreadLocal<Match>();
+
+    private final ResourceName comparator;
+    private final boolean regex;
+    private final Node root = new Node();
+    /** The patterns learnt, with the generation in which they were indexed. */
+    private final ConcurrentMap<String, Long> patterns = new ConcurrentHashMap<String, Long>();
+    private final AtomicLong generation = new AtomicLong();
+
+    private ResourceMatcher(ResourceName comparator, boolean regex) {
+        this.comparator = comparator;
+        this.regex = regex;
+    }
+
+    /**
+     * Creates a matcher for the resource patterns of the given resource name.
+     *
+     * @param comparator the resource name of the application
+     * @return a matcher, or {@code null} if the resource name is not one whose patterns can be indexed
+     */
+    static ResourceMatcher forComparator(ResourceName comparator) {
+        if (comparator == null) {
+            return null;
+        }
+        final Class<?> type = comparator.getClass();
+        if (type == URLResourceName.class || type == PrefixResourceName.class) {
+            return new ResourceMatcher(comparator, false);
+        }
+        if (type == RegExResourceName.class) {
+            return new ResourceMatcher(comparator, true);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the match of the policy being evaluated by the current thread, as set by the
+     * {@link PrivilegeEvaluator}.
+     *
+     * @return the current match, or {@code null} if there is none
+     */
+    static Match getCurrentMatch() {
+        return currentMatch.get();
+    }
+
+    /**
+     * Sets the match of the policy being evaluated by the current thread.
+     *
+     * @param match the match, or {@code null} to clear it
+     */
+    static void setCurrentMatch(Match match) {
+        if (match == null) {
+            currentMatch.remove();
+        } else {
+            currentMatch.set(match);
+        }
+    }
+
+    /**
+     * Whether this matcher indexes the patterns of the given resource name.
+     *
+     * @param comparator a resource name
+     * @return {@code true} if this matcher was created for that resource name
+     */
+    boolean isFor(ResourceName comparator) {
+        return this.comparator == comparator;
+    }
+
+    /**
+     * Learns a resource pattern, so that it is only a candidate for the resources that it can match.
+     *
+     * @param pattern a resource pattern of a policy of the application
+     */
+    void learn(String pattern) {
+        if (pattern == null || patterns.containsKey(pattern) || patterns.size() >= MAX_PATTERNS) {
+            return;
+        }
+        synchronized (root) {
+            if (patterns.containsKey(pattern)) {
+                return;
+            }
+            final String key = indexKey(pattern);
+            if (key == null) {
+                patterns.put(pattern, NOT_INDEXED);
+                return;
+            }
+            Node node = root;
+            for (int i = 0; i < key.length(); i++) {
+                node = node.getOrAddChild(key.charAt(i));
+            }
+            node.patterns.add(pattern);
+            // Matches started before this point do not know about the pattern, and so still compare it.
+            patterns.put(pattern, generation.incrementAndGet());
+        }
+    }
+
+    /**
+     * Forgets resource patterns, such as those of a policy that has changed. The patterns are learnt again when
+     * next evaluated.
+     *
+     * @param forgotten the resource patterns
+     */
+    void forget(Set<String> forgotten) {
+        if (forgotten == null) {
+            return;
+        }
+        synchronized (root) {
+            for (String pattern : forgotten) {
+                final Long indexed = patterns.remove(pattern);
+                if (indexed != null && indexed != NOT_INDEXED) {
+                    root.remove(indexKey(pattern), 0, pattern);
+                }
+            }
+        }
+    }
+
+    /**
+     * Clears all of the learnt patterns.
+     */
+    void clear() {
+        synchronized (root) {
+            patterns.clear();
+            root.children.clear();
+            root.patterns.clear();
+        }
+    }
+
+    /**
+     * Returns the number of patterns learnt.
+     *
+     * @return the number of patterns
+     */
+    int size() {
+        return patterns.size();
+    }
+
+    /**
+     * Finds the learnt patterns that can match a resource, by walking it down the trie of their prefixes.
+     *
+     * @param resource the normalised resource being evaluated
+     * @param recursive {@code true} for a sub tree evaluation, which also matches the patterns below the resource
+     * @return the match, or {@code null} if the resource cannot be matched and every pattern has to be compared
+     */
+    Match match(String resource, boolean recursive) {
+        if (!isMatchable(resource)) {
+            return null;
+        }
+        final long known = generation.get();
+        final Set<String> candidates = new HashSet<String>();
+        Node node = root;
+        candidates.addAll(node.patterns);
+        for (int i = 0; i < resource.length() && node != null; i++) {
+            final char c = resource.charAt(i);
+            if (c != DELIMITER) {
+                node = node.children.get(toLowerCase(c));
+                if (node != null) {
+                    candidates.addAll(node.patterns);
+                }
+            }
+        }
+        if (recursive && node != null) {
+            node.addDescendantPatterns(candidates);
+        }
+        return new Match(this, resource, recursive, known, candidates);
+    }
+
+    /**
+     * The prefix by which a pattern is indexed: the characters that every resource the pattern matches starts with,
+     * or that start every resource it is a sub resource of, lower cased and without delimiters.
+     *
+     * @return the prefix, or {@code null} if the pattern cannot be indexed
+     */
+    private String indexKey(String pattern) {
+        if (!isAscii(pattern) || (regex && !isLiteralRegex(pattern))) {
+            return null;
+        }
+        String literal = regex ? pattern : PrefixResourceName.doTargetResourceNormalization(pattern);
+        int end = literal.indexOf(WILDCARD);
+        if (!regex) {
+            // A one level wildcard can match anywhere within its level, so the prefix stops at the level before it.
+            final int oneLevel = literal.indexOf(ONE_LEVEL_WILDCARD);
+            if (oneLevel != -1) {
+                end = Math.min(end, literal.lastIndexOf(DELIMITER, oneLevel) + 1);
+            }
+        }
+        if (end != -1) {
+            literal = literal.substring(0, end);
+        }
+        final StringBuilder key = new StringBuilder(literal.length());
+        for (int i = 0; i < literal.length(); i++) {
+            final char c = literal.charAt(i);
+            if (c != DELIMITER) {
+                key.append(toLowerCase(c));
+            }
+        }
+        return key.toString();
+    }
+
+    private boolean isMatchable(String resource) {
+        return resource != null && resource.indexOf(WILDCARD) == -1 && isAscii(resource)
+                && (!regex || isLiteralRegex(resource));
+    }
+
+    /**
+     * Whether a string means the same when the regular expression resource name turns it into a pattern, apart from
+     * its wildcards.
+     */
+    private static boolean isLiteralRegex(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (REGEX_SPECIAL_CHARACTERS.indexOf(value.charAt(i)) != -1) {
+                return false;
+            }
+        }
+        return value.isEmpty()
+                || REGEX_UNESCAPED_LAST_CHARACTERS.indexOf(value.charAt(value.length() - 1)) == -1;
+    }
+
+    private static boolean isAscii(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > 127) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static char toLowerCase(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    /**
+     * The result of matching a resource: the learnt patterns that can match it.
+     */
+    static final class Match {
+        private final ResourceMatcher matcher;
+        private final String resource;
+        private final boolean recursive;
+        private final long generation;
+        private final Set<String> candidates;
+
+        private Match(ResourceMatcher matcher, String resource, boolean recursive, long generation,
+                Set<String> candidates) {
+            this.matcher = matcher;
+            this.resource = resource;
+            this.recursive = recursive;
+            this.generation = generation;
+            this.candidates = candidates;
+        }
+
+        /**
+         * Whether this is the match of a resource by a matcher.
+         *
+         * @param matcher the matcher of the application of the resource patterns
+         * @param resource the resource being evaluated
+         * @param recursive {@code true} for a sub tree evaluation
+         * @return {@code true} if the match applies
+         */
+        boolean isFor(ResourceMatcher matcher, String resource, boolean recursive) {
+            return this.matcher == matcher && this.recursive == recursive && this.resource.equals(resource);
+        }
+
+        /**
+         * Whether a pattern can match the resource, and so has to be compared with it.
+         *
+         * @param pattern a resource pattern
+         * @return {@code false} only if the pattern cannot match the resource
+         */
+        boolean isCandidate(String pattern) {
+            final Long indexed = matcher.patterns.get(pattern);
+            return indexed == null || indexed > generation || candidates.contains(pattern);
+        }
+
+        /**
+         * Learns a resource pattern that has been compared with the resource, so that later matches know whether it
+         * is a candidate.
+         *
+         * @param pattern a resource pattern
+         */
+        void learn(String pattern) {
+            matcher.learn(pattern);
+        }
+
+        /**
+         * Returns the learnt patterns that can match the resource.
+         *
+         * @return the candidate patterns
+         */
+        Set<String> getCandidates() {
+            return Collections.unmodifiableSet(candidates);
+        }
+    }
+
+    /**
+     * A node of the trie, holding the patterns whose prefix ends at it.
+     */
+    private static final class Node {
+        private final ConcurrentMap<Character, Node> children = new ConcurrentHashMap<Character, Node>(4);
+        private final Set<String> patterns = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>(2));
+
+        private Node getOrAddChild(char c) {
+            Node child = children.get(c);
+            if (child == null) {
+                child = new Node();
+                children.put(c, child);
+            }
+            return child;
+        }
+
+        /**
+         * Removes a pattern from the node at the end of its key, pruning the nodes left empty.
+         *
+         * @return {@code true} if this node is left empty
+         */
+        private boolean remove(String key, int index, String pattern) {
+            if (index == key.length()) {
+                patterns.remove(pattern);
+            } else {
+                final Character c = key.charAt(index);
+                final Node child = children.get(c);
+                if (child != null && child.remove(key, index + 1, pattern)) {
+                    children.remove(c);
+                }
+            }
+            return patterns.isEmpty() && children.isEmpty();
+        }
+
+        private void addDescendantPatterns(Set<String> candidates) {
+            for (Node child : children.values()) {
+                candidates.addAll(child.patterns);
+                child.addDescendantPatterns(candidates);
+            }
+        }
+    }
+}
@@ -24,7 +24,7 @@
  *
  * $Id: NotificationServlet.java,v 1.2 2010/01/20 17:01:36 veiming Exp $
  *
- * Portions Copyrighted 2012-2015 ForgeRock AS.
+ * Portions Copyrighted 2012-2016 ForgeRock AS.
  */
 
 package com.sun.identity.entitlement.opensso;
@@ -32,6 +32,8 @@ package com.sun.identity.entitlement.opensso;
 import com.sun.identity.entitlement.ApplicationManager;
 import com.sun.identity.entitlement.EntitlementException;
 import com.sun.identity.entitlement.PrivilegeIndexStore;
+import org.forgerock.guice.core.InjectorHolder;
+import org.forgerock.openam.entitlement.EntitlementDecisionCache;
 import org.forgerock.openam.entitlement.PolicyConstants;
 import org.forgerock.openam.utils.IOUtils;
 
@@ -143,6 +145,7 @@ public class NotificationServlet extends HttpServlet {
     private void handleApplicationsChanged(HttpServletRequest req) {
         String realm = req.getParameter(ATTR_REALM_NAME);
         ApplicationManager.clearCache(realm);
+        InjectorHolder.getInstance(EntitlementDecisionCache.class).invalidate(realm);
     }
 
 }
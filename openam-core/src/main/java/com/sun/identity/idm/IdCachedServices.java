@@ -24,6 +24,7 @@
  *
  * $Id: IdCachedServices.java,v 1.2 2008/06/25 05:43:28 qcheng Exp $
  *
+ * Portions Copyrighted 2016 ForgeRock AS.
  */
 
 package com.sun.identity.idm;
@@ -36,6 +37,13 @@ public interface IdCachedServices extends IdServices {
 
     public void clearCache();
 
+    /**
+     * Clears the cached identities of a single realm.
+     *
+     * @param realm the DN of the realm.
+     */
+    public void clearCache(String realm);
+
     public void dirtyCache(String changedId, int eventType, boolean cosType,
             boolean aciChange, Set attrNames);
 
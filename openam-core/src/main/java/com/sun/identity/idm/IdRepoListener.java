@@ -101,13 +101,17 @@ public final class IdRepoListener {
             }
             cacheChecked = true;
         }
+        String org = (String) configMap.get("realm");
         if (cacheEnabled) {
-            // If Caching was enabled - then clear the cache!!
-            ((IdCachedServices) idServices).clearCache();
+            // If Caching was enabled - then clear the cache for this realm
+            if (StringUtils.isNotEmpty(org)) {
+                ((IdCachedServices) idServices).clearCache(org);
+            } else {
+                ((IdCachedServices) idServices).clearCache();
+            }
         }
 
         // Get the list of listeners setup with idRepo
-        String org = (String) configMap.get("realm");
         ArrayList list = (ArrayList) AMIdentityRepository.listeners.get(org);
         // Update any listeners registered with IdRepo
         if (list != null) {
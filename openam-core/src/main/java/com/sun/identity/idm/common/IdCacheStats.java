@@ -24,17 +24,25 @@
  *
  * $Id: IdCacheStats.java,v 1.2 2008/08/07 17:22:06 arviranga Exp $
  *
+ * Portions Copyrighted 2016 ForgeRock AS.
  */
 
 package com.sun.identity.idm.common;
 
 import com.sun.identity.shared.stats.Stats;
 import com.sun.identity.shared.stats.StatsListener;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /** 
  * <code>IdCacheStats</code> implements the <code>StatsListener</code>
  * and provides the information of the total number of entry in cache 
- * table and the number of hits and total number of reads.
+ * table and the number of hits and total number of reads. Requests and
+ * hits are also counted for each realm, along with the number of lookups
+ * answered from the cache of identities which do not exist.
  */
 public class IdCacheStats implements StatsListener {
 
@@ -54,6 +62,13 @@ public class IdCacheStats implements StatsListener {
 
     long totalSearchHits = 0;   // Overall search cache hits
 
+    // Overall lookups of identities known not to exist
+    private final AtomicLong totalNotFoundHits = new AtomicLong();
+
+    // Requests and hits for each realm
+    private final ConcurrentMap<String, RealmStats> realmStats =
+        new ConcurrentHashMap<String, RealmStats>();
+
     private Stats stats = null;
 
 
@@ -67,6 +82,16 @@ public class IdCacheStats implements StatsListener {
         stats = Stats.getInstance(name);
     }
 
+    /**
+     * Returns whether statistics are being recorded. Callers may use this
+     * to avoid working out the size of the cache when it is not needed.
+     *
+     * @return true if statistics are enabled.
+     */
+    public boolean isEnabled() {
+        return stats.isEnabled();
+    }
+
     public void updateGetHitCount(int sizeOfCache) {
         if (stats.isEnabled()) {
             totalGetCacheHits++;
@@ -99,6 +124,85 @@ public class IdCacheStats implements StatsListener {
         }
     }
 
+    /**
+     * Records a get request hitting the cache for an identity in a realm.
+     *
+     * @param realm the realm of the identity.
+     * @param sizeOfCache the number of entries in the cache.
+     */
+    public void updateGetHitCount(String realm, int sizeOfCache) {
+        updateGetHitCount(sizeOfCache);
+        updateRealmHitCount(realm);
+    }
+
+    /**
+     * Records a get request for an identity in a realm.
+     *
+     * @param realm the realm of the identity.
+     * @param sizeOfCache the number of entries in the cache.
+     */
+    public void incrementGetRequestCount(String realm, int sizeOfCache) {
+        incrementGetRequestCount(sizeOfCache);
+        incrementRealmRequestCount(realm);
+    }
+
+    /**
+     * Records a search request hitting the cache for an identity in a realm.
+     *
+     * @param realm the realm of the identity.
+     * @param sizeOfCache the number of entries in the cache.
+     */
+    public void updateSearchHitCount(String realm, int sizeOfCache) {
+        updateSearchHitCount(sizeOfCache);
+        updateRealmHitCount(realm);
+    }
+
+    /**
+     * Records a search request for an identity in a realm.
+     *
+     * @param realm the realm of the identity, or null if the search could
+     *        not have been answered from the cache.
+     * @param sizeOfCache the number of entries in the cache.
+     */
+    public void incrementSearchRequestCount(String realm, int sizeOfCache) {
+        incrementSearchRequestCount(sizeOfCache);
+        incrementRealmRequestCount(realm);
+    }
+
+    /**
+     * Records a request answered from the cache of identities which do not
+     * exist. The request must also be recorded as a get or search hit.
+     */
+    public void updateNotFoundHitCount() {
+        if (stats.isEnabled()) {
+            totalNotFoundHits.incrementAndGet();
+        }
+    }
+
+    private void incrementRealmRequestCount(String realm) {
+        if (stats.isEnabled() && (realm != null)) {
+            getRealmStats(realm).requests.incrementAndGet();
+        }
+    }
+
+    private void updateRealmHitCount(String realm) {
+        if (stats.isEnabled()) {
+            getRealmStats(realm).hits.incrementAndGet();
+        }
+    }
+
+    private RealmStats getRealmStats(String realm) {
+        RealmStats realmStat = realmStats.get(realm);
+        if (realmStat == null) {
+            RealmStats newRealmStat = new RealmStats();
+            realmStat = realmStats.putIfAbsent(realm, newRealmStat);
+            if (realmStat == null) {
+                realmStat = newRealmStat;
+            }
+        }
+        return realmStat;
+    }
+
 
     /**
      * Prints the session statistics for the given session table.
@@ -122,6 +226,9 @@ public class IdCacheStats implements StatsListener {
                 + "\nTotal number of FQDN Search hits since server start: "
                 + totalSearchHits + "\nOverall Hit ratio: "
                 + (double) totalSearchHits / (double) totalSearchRequests
+                + "\nTotal number of not found hits since server start: "
+                + totalNotFoundHits.get()
+                + getRealmStatistics()
                 + "\nTotal Cache Size: " + cacheSize + "\n");
 
         // Reset interval hits to 0
@@ -129,5 +236,27 @@ public class IdCacheStats implements StatsListener {
         totalIntervalHits = 0;
     
    }
+
+    private String getRealmStatistics() {
+        StringBuilder sb = new StringBuilder();
+        Map<String, RealmStats> sorted = new TreeMap<String, RealmStats>(realmStats);
+        for (Map.Entry<String, RealmStats> entry : sorted.entrySet()) {
+            long requests = entry.getValue().requests.get();
+            long hits = entry.getValue().hits.get();
+            sb.append("\nRealm ").append(entry.getKey())
+                .append(": requests: ").append(requests)
+                .append(", hits: ").append(hits)
+                .append(", hit ratio: ").append((double) hits / (double) requests);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Requests and hits for a single realm.
+     */
+    private static final class RealmStats {
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong hits = new AtomicLong();
+    }
 }
 
@@ -24,7 +24,7 @@
  *
  * $Id: IdRemoteCachedServicesImpl.java,v 1.20 2010/01/28 00:45:25 bigfatrat Exp $
  *
- * Portions Copyrighted 2011-2015 ForgeRock AS.
+ * Portions Copyrighted 2011-2016 ForgeRock AS.
  */
 package com.sun.identity.idm.remote;
 
@@ -131,7 +131,7 @@ public class IdRemoteCachedServicesImpl extends IdRemoteServicesImpl implements
     }
 
     private void initializeCache() {
-        idRepoCache = new Cache(maxSize);
+        idRepoCache = Cache.newInstance(maxSize);
     }
 
     /**
@@ -213,6 +213,16 @@ public class IdRemoteCachedServicesImpl extends IdRemoteServicesImpl implements
         initializeCache();
     }
 
+    /**
+     * The client cache is not split by realm, so this clears the entire
+     * cache.
+     *
+     * @param realm the DN of the realm.
+     */
+    public void clearCache(String realm) {
+        clearCache();
+    }
+
     /**
      * This method will be called by <code>AMIdRepoListener</code>. This
      * method will update the cache by removing all the entires which are
@@ -24,13 +24,12 @@
  *
  * $Id: IdCachedServicesImpl.java,v 1.21 2009/08/25 06:50:53 hengming Exp $
  *
- * Portions Copyrighted 2011-2015 ForgeRock AS.
+ * Portions Copyrighted 2011-2016 ForgeRock AS.
  */
 package com.sun.identity.idm.server;
 
 import com.iplanet.am.sdk.AMEvent;
 import com.iplanet.am.sdk.AMHashMap;
-import com.iplanet.am.util.Cache;
 import com.iplanet.am.util.SystemProperties;
 import com.iplanet.sso.SSOException;
 import com.iplanet.sso.SSOToken;
@@ -40,6 +39,7 @@ import com.sun.identity.common.configuration.ConfigurationObserver;
 import com.sun.identity.idm.AMIdentity;
 import com.sun.identity.idm.IdCachedServices;
 import com.sun.identity.idm.IdConstants;
+import com.sun.identity.idm.IdRepoBundle;
 import com.sun.identity.idm.IdRepoErrorCode;
 import com.sun.identity.idm.IdRepoException;
 import com.sun.identity.idm.IdSearchControl;
@@ -53,10 +53,12 @@ import com.sun.identity.monitoring.Agent;
 import com.sun.identity.monitoring.MonitoringUtil;
 import com.sun.identity.monitoring.SsoServerIdRepoSvcImpl;
 import com.sun.identity.shared.stats.Stats;
+import com.sun.identity.sm.DNMapper;
 import com.sun.identity.sm.ServiceManager;
-import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import org.forgerock.openam.utils.CrestQuery;
 import org.forgerock.util.thread.listener.ShutdownListener;
@@ -64,6 +66,13 @@ import org.forgerock.util.thread.listener.ShutdownManager;
 
 /*
  * Class which provides caching on top of available IdRepoLDAPServices.
+ *
+ * Identities are cached separately for each realm, each realm holding at
+ * most its own quota of entries, so that a busy realm can not evict the
+ * identities of other realms. Identities which were recently found not to
+ * exist are also cached for a short time, so that repeated lookups of
+ * unknown users do not each reach the data stores. The maximum cache size
+ * bounds the identities cached across all realms together.
  */
 public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServices, ConfigurationListener {
 
@@ -73,12 +82,35 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
 
     static final int CACHE_MAX_SIZE_INT = 10000;
 
+    // Default maximum number of identities cached for each realm, within
+    // the maximum cache size shared by all realms
+    static final String CACHE_REALM_MAX_SIZE_KEY =
+        "com.iplanet.am.sdk.cache.realmMaxSize";
+
+    // Realm specific quotas, as comma separated realm=maxSize pairs
+    static final String CACHE_REALM_QUOTAS_KEY =
+        "com.iplanet.am.sdk.cache.realmQuotas";
+
+    // Maximum number of missing identities remembered across all realms
+    static final String CACHE_NOT_FOUND_MAX_SIZE_KEY =
+        "com.iplanet.am.sdk.cache.notFound.maxSize";
+
+    static final int CACHE_NOT_FOUND_MAX_SIZE_INT = 1000;
+
+    // Number of seconds for which a missing identity is remembered
+    static final String CACHE_NOT_FOUND_TTL_KEY =
+        "com.iplanet.am.sdk.cache.notFound.ttl";
+
+    static final int CACHE_NOT_FOUND_TTL_INT = 30;
+
     private static int maxSize;
 
     private static IdCachedServicesImpl instance;
 
     // Class Private
-    private Cache idRepoCache;
+    private volatile StripedIdCache idRepoCache;
+
+    private String cacheConfiguration;
 
     private IdCacheStats cacheStats;
 
@@ -116,7 +148,58 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
     }
 
     private void initializeCache() {
-        idRepoCache = new Cache(maxSize);
+        int notFoundMaxSize = SystemProperties.getAsInt(
+            CACHE_NOT_FOUND_MAX_SIZE_KEY, CACHE_NOT_FOUND_MAX_SIZE_INT);
+        int notFoundTtl = SystemProperties.getAsInt(CACHE_NOT_FOUND_TTL_KEY,
+            CACHE_NOT_FOUND_TTL_INT);
+        if (notFoundTtl < 1) {
+            notFoundMaxSize = 0;
+        }
+        cacheConfiguration = getCacheConfiguration();
+        idRepoCache = new StripedIdCache(maxSize,
+            SystemProperties.getAsInt(CACHE_REALM_MAX_SIZE_KEY, maxSize),
+            getRealmQuotas(), notFoundMaxSize,
+            TimeUnit.SECONDS.toMillis(notFoundTtl));
+    }
+
+    /**
+     * Returns the configured realm quotas, keyed by realm DN. Realms may be
+     * configured by name or by DN, for example
+     * <code>/=10000,/customers=50000</code>.
+     */
+    private static Map<String, Integer> getRealmQuotas() {
+        Map<String, Integer> quotas = new HashMap<String, Integer>();
+        String value = SystemProperties.get(CACHE_REALM_QUOTAS_KEY);
+        if (value == null || value.trim().isEmpty()) {
+            return quotas;
+        }
+        for (String quota : value.split(",")) {
+            int index = quota.lastIndexOf('=');
+            if (index < 1) {
+                DEBUG.warning("IdCachedServicesImpl.getRealmQuotas(): "
+                    + "Ignoring invalid realm quota: " + quota);
+                continue;
+            }
+            try {
+                quotas.put(DNMapper.orgNameToDN(quota.substring(0, index).trim()),
+                    Integer.parseInt(quota.substring(index + 1).trim()));
+            } catch (NumberFormatException e) {
+                DEBUG.warning("IdCachedServicesImpl.getRealmQuotas(): "
+                    + "Ignoring invalid realm quota: " + quota);
+            }
+        }
+        return quotas;
+    }
+
+    /**
+     * Returns the properties that the cache was built from, so that changes
+     * can be detected.
+     */
+    private static String getCacheConfiguration() {
+        return SystemProperties.get(CACHE_REALM_MAX_SIZE_KEY) + "|"
+            + SystemProperties.get(CACHE_REALM_QUOTAS_KEY) + "|"
+            + SystemProperties.get(CACHE_NOT_FOUND_MAX_SIZE_KEY) + "|"
+            + SystemProperties.get(CACHE_NOT_FOUND_TTL_KEY);
     }
 
     private void resetCache(int maxCacheSize) {
@@ -171,13 +254,13 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
     public String toString() {
         StringBuilder sb = new StringBuilder();
         sb.append("\n<<<<<<< BEGIN SDK CACHE CONTENTS >>>>>>>>");
-        if (!idRepoCache.isEmpty()) { // Should never be null
-            Enumeration cacheKeys = idRepoCache.keys();
-            while (cacheKeys.hasMoreElements()) {
-                String key = (String) cacheKeys.nextElement();
-                IdCacheBlock cb = (IdCacheBlock) idRepoCache.get(key);
-                sb.append("\nSDK Cache Block: ").append(key);
-                sb.append(cb.toString());
+        if (idRepoCache.size() > 0) { // Should never be null
+            for (String key : idRepoCache.keys()) {
+                IdCacheBlock cb = idRepoCache.get(key);
+                if (cb != null) {
+                    sb.append("\nSDK Cache Block: ").append(key);
+                    sb.append(cb.toString());
+                }
             }
         } else {
             sb.append("<empty>");
@@ -190,15 +273,13 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
     // Update/Dirty methods of this class.
     // *************************************************************************
     private void removeCachedAttributes(String affectDNs, Set attrNames) {
-        Enumeration cacheKeys = idRepoCache.keys();
-        while (cacheKeys.hasMoreElements()) {
-            String key = DNUtils.normalizeDN(
-                cacheKeys.nextElement().toString());
+        for (String cacheKey : idRepoCache.keys()) {
+            String key = DNUtils.normalizeDN(cacheKey);
             int l1 = key.length();
             int l2 = affectDNs.length();
             if (key.regionMatches(true, (l1 - l2), affectDNs, 0, l2)) {
                 // key ends with 'affectDN' string
-                IdCacheBlock cb = (IdCacheBlock) idRepoCache.get(key);
+                IdCacheBlock cb = idRepoCache.get(key);
                 if (cb != null) {
                     // key ends with 'affectDN' string
                     if ((attrNames != null) &&
@@ -226,6 +307,21 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
         initializeCache();
     }
 
+    /**
+     * Clears the cached identities of a single realm, for example when the
+     * persistent search of one of the realm's data stores has reconnected,
+     * leaving the identities cached for other realms in place.
+     *
+     * @param realm the DN of the realm.
+     */
+    public void clearCache(String realm) {
+        boolean cleared = idRepoCache.clearRealm(realm);
+        if (DEBUG.messageEnabled()) {
+            DEBUG.message("IdCachedServicesImpl.clearCache(): realm: "
+                    + realm + ", cleared: " + cleared);
+        }
+    }
+
     /**
      * This method will be called by <code>AMIdRepoListener</code>. This
      * method will update the cache by removing all the entires which are
@@ -254,6 +350,8 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
         String originalDN = dn;
         dn = DNUtils.normalizeDN(dn);
         String cachedID = getCacheId(dn);
+        // Whatever changed, the identity may now exist
+        idRepoCache.removeNotFound(cachedID);
         switch (eventType) {
         case AMEvent.OBJECT_ADDED:
             cb = getFromCache(dn);
@@ -265,7 +363,7 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
             }
             break;
         case AMEvent.OBJECT_REMOVED:
-            cb = (IdCacheBlock) idRepoCache.remove(cachedID);
+            cb = idRepoCache.remove(cachedID);
             if (cb != null) {
                 cb.clear(); // Clear anyway & help the GC process
             }
@@ -276,7 +374,7 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
         case AMEvent.OBJECT_RENAMED:
             // Better to remove the renamed entry, or else it will be just
             // hanging in the cache, until LRU kicks in.
-            cb = (IdCacheBlock) idRepoCache.remove(cachedID);
+            cb = idRepoCache.remove(cachedID);
             if (cb != null) {
                 cb.clear(); // Clear anyway & help the GC process
             }
@@ -313,7 +411,7 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
     private void updateCache(SSOToken token, String dn, Map stringAttributes,
         Map byteAttributes) throws IdRepoException, SSOException {
         String key = dn; // This is already normalized
-        IdCacheBlock cb = (IdCacheBlock) idRepoCache.get(key);
+        IdCacheBlock cb = idRepoCache.get(key);
         if (cb != null && !cb.hasExpiredAndUpdated() && cb.isExists()) {
             AMIdentity tokenId = IdUtils.getIdentity(token);
             String pDN = tokenId.getUniversalId();
@@ -341,16 +439,11 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
         if ((attrNames == null) || attrNames.isEmpty()) {
             return getAttributes(token, type, name, amOrgName, amsdkDN);
         }
-        cacheStats.incrementGetRequestCount(getSize());
-        if (MonitoringUtil.isRunning() &&
-            ((monIdRepo = Agent.getIdrepoSvcMBean()) != null)) {
-            long li = (long)getSize();
-            monIdRepo.incGetRqts(li);
-        }
-
         // Get the entry DN
         AMIdentity id = new AMIdentity(token, name, type, amOrgName, amsdkDN);
         String dn = id.getUniversalId().toLowerCase();
+        String realm = StripedIdCache.getRealm(dn);
+        recordGetRequest(realm);
 
         // Get the principal DN
         AMIdentity tokenId = IdUtils.getIdentity(token);
@@ -369,8 +462,10 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
         AMHashMap attributes;
 
         // Check in the cache
-        IdCacheBlock cb = (IdCacheBlock) idRepoCache.get(dn);
+        IdCacheBlock cb = idRepoCache.get(dn);
         if (cb == null) { // Entry not present in cache
+            // Check if the entry is known not to exist
+            checkNotFound(dn, realm);
             if (DEBUG.messageEnabled()) {
                 DEBUG.message("IdCachedServicesImpl.getAttributes(): "
                         + "NO entry found in Cachefor key = " + dn
@@ -381,8 +476,12 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
             // If the attributes returned here have an empty set as value, then
             // such attributes do not have a value or invalid attributes.
             // Internally keep track of these attributes.
-            attributes = (AMHashMap) super.getAttributes(token, type, name,
-                    attrNames, amOrgName, amsdkDN, isStringValues);
+            try {
+                attributes = (AMHashMap) super.getAttributes(token, type, name,
+                        attrNames, amOrgName, amsdkDN, isStringValues);
+            } catch (IdRepoException ide) {
+                throw cacheNotFound(dn, ide);
+            }
 
             // Find the missing attributes and add to cache
             Set missAttrNames = attributes.getMissingAndEmptyKeys(attrNames);
@@ -417,12 +516,7 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
                 cb.putAttributes(principalDN, dsAttributes, newMissAttrNames,
                         false, !isStringValues);
             } else { // All attributes found in cache
-                cacheStats.updateGetHitCount(getSize());
-                if (MonitoringUtil.isRunning() &&
-                    ((monIdRepo = Agent.getIdrepoSvcMBean()) != null)) {
-                    long li = (long)getSize();
-                    monIdRepo.incCacheHits(li);
-                }
+                recordGetHit(realm);
                 if (DEBUG.messageEnabled()) {
                     DEBUG.message("IdCachedServicesImpl"
                             + ".getAttributes(): " + amsdkDN
@@ -437,30 +531,21 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
         String amOrgName, String amsdkDN)
         throws IdRepoException, SSOException {
 
-        cacheStats.incrementGetRequestCount(getSize());
-        if (MonitoringUtil.isRunning() &&
-            ((monIdRepo = Agent.getIdrepoSvcMBean()) != null)) {
-            long li = (long)getSize();
-            monIdRepo.incGetRqts(li);
-        }
         // Get the identity dn
         AMIdentity id = new AMIdentity(token, name, type, amOrgName, amsdkDN);
         String dn = id.getUniversalId().toLowerCase();
+        String realm = StripedIdCache.getRealm(dn);
+        recordGetRequest(realm);
 
         // Get the principal dn
         AMIdentity tokenId = IdUtils.getIdentity(token);
         String principalDN = IdUtils.getUniversalId(tokenId);
 
         // Get the cache entry
-        IdCacheBlock cb = (IdCacheBlock) idRepoCache.get(dn);
+        IdCacheBlock cb = idRepoCache.get(dn);
         AMHashMap attributes;
         if ((cb != null) && cb.hasCompleteSet(principalDN)) {
-            cacheStats.updateGetHitCount(getSize());
-            if (MonitoringUtil.isRunning() &&
-                ((monIdRepo = Agent.getIdrepoSvcMBean()) != null)) {
-                long li = (long)getSize();
-                monIdRepo.incCacheHits(li);
-            }
+            recordGetHit(realm);
             if (DEBUG.messageEnabled()) {
                 DEBUG.message("IdCachedServicesImpl."
                     + "getAttributes(): DN: " + dn
@@ -468,6 +553,10 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
             }
             attributes = (AMHashMap) cb.getAttributes(principalDN, false);
         } else {
+            if (cb == null) {
+                // Check if the entry is known not to exist
+                checkNotFound(dn, realm);
+            }
             // Get all the attributes from data store
             if (DEBUG.messageEnabled()) {
                 DEBUG.message("IdCachedServicesImpl."
@@ -475,8 +564,12 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
                     + " complete attribute"
                     + " set NOT found in cache. Getting from DS.");
             }
-            attributes = (AMHashMap) super.getAttributes(token, type, name,
-                amOrgName, amsdkDN);
+            try {
+                attributes = (AMHashMap) super.getAttributes(token, type, name,
+                    amOrgName, amsdkDN);
+            } catch (IdRepoException ide) {
+                throw cacheNotFound(dn, ide);
+            }
             if (cb == null) {
                 cb = new IdCacheBlock(dn, true);
                 idRepoCache.put(dn, cb);
@@ -524,6 +617,16 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
         }
     }
 
+    public AMIdentity create(SSOToken token, IdType type, String name,
+        Map attrMap, String amOrgName) throws IdRepoException, SSOException {
+        AMIdentity id = super.create(token, type, name, attrMap, amOrgName);
+
+        // The identity may have been cached as not existing
+        idRepoCache.removeNotFound(
+            getCacheId(id.getUniversalId().toLowerCase()));
+        return id;
+    }
+
     public void delete(SSOToken token, IdType type, String name,
         String orgName, String amsdkDN) throws IdRepoException,
         SSOException {
@@ -545,7 +648,7 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
         // Update the cache
         AMIdentity id = new AMIdentity(token, name, type, orgName, amsdkDN);
         String dn = id.getUniversalId().toLowerCase();
-        IdCacheBlock cb = (IdCacheBlock) idRepoCache.get(dn);
+        IdCacheBlock cb = idRepoCache.get(dn);
         if ((cb != null) && !cb.hasExpiredAndUpdated() && cb.isExists()) {
             // Remove the attributes
             cb.removeAttributes(attrNames);
@@ -558,12 +661,7 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
             throws IdRepoException, SSOException {
 
         IdSearchResults answer = new IdSearchResults(type, orgName);
-        cacheStats.incrementSearchRequestCount(getSize());
-        if (MonitoringUtil.isRunning() &&
-            ((monIdRepo = Agent.getIdrepoSvcMBean()) != null)) {
-            long li = (long)getSize();
-            monIdRepo.incSearchRqts(li);
-        }
+        String universalID = null;
 
         // If searching for a string (presumably from a _queryID), it is possible to see if the value is cached.  If
         // so we can bypass the real search.
@@ -583,19 +681,24 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
                 // If yes, get Attributes from cache.
                 // If not search in server.
                 AMIdentity uvid = new AMIdentity(token, pattern, type, orgName, null);
-                String universalID = uvid.getUniversalId().toLowerCase();
-                IdCacheBlock cb = (IdCacheBlock) idRepoCache.get(universalID);
+                universalID = uvid.getUniversalId().toLowerCase();
+                String realm = StripedIdCache.getRealm(universalID);
+                recordSearchRequest(realm);
+                IdCacheBlock cb = idRepoCache.get(universalID);
+                if ((cb == null) && (ctrl.getSearchModifierMap() == null)
+                        && (idRepoCache.getNotFound(universalID) != null)) {
+                    // The identity is known not to exist
+                    recordSearchHit(realm);
+                    cacheStats.updateNotFoundHitCount();
+                    return answer;
+                }
                 if ((cb != null) && !cb.hasExpiredAndUpdated() && cb.isExists() &&
                                                                             (ctrl.getSearchModifierMap() == null)) {
                     // Check if search is for a specific identity
                     // Search is for a specific user, look in the cache
                     Map attributes;
                     try {
-                        cacheStats.updateSearchHitCount(getSize());
-                        if (MonitoringUtil.isRunning() && ((monIdRepo = Agent.getIdrepoSvcMBean()) != null)) {
-                            long li = (long) getSize();
-                            monIdRepo.incSearchCacheHits(li);
-                        }
+                        recordSearchHit(realm);
                         if (ctrl.isGetAllReturnAttributesEnabled()) {
                             attributes = getAttributes(token, type, pattern, orgName, null);
                         } else {
@@ -619,8 +722,24 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
             }
         }
 
+        if (universalID == null) {
+            // Could not have been answered from the cache, so is not
+            // counted against any realm
+            recordSearchRequest(null);
+        }
+
         // Not in Cache.  Do a search on the server.
-        return super.search(token, type, ctrl, orgName, crestQuery);
+        IdSearchResults results = super.search(token, type, ctrl, orgName, crestQuery);
+        if ((universalID != null) && (ctrl.getSearchModifierMap() == null)
+                && (results.getErrorCode() == IdSearchResults.SUCCESS)
+                && results.getSearchResults().isEmpty()) {
+            // Remember that the identity does not exist
+            idRepoCache.putNotFound(universalID,
+                new IdRepoException(IdRepoBundle.BUNDLE_NAME,
+                    IdRepoErrorCode.UNABLE_FIND_ENTRY,
+                    new Object[] {getClass().getName(), universalID}));
+        }
+        return results;
     }
 
     // Returns fully qualified names for the identity
@@ -634,7 +753,7 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
 
         // Get the cache entry
         Set answer = null;
-        IdCacheBlock cb = (IdCacheBlock) idRepoCache.get(dn);
+        IdCacheBlock cb = idRepoCache.get(dn);
         if (cb != null) {
             // Get the fully qualified names
             answer = cb.getFullyQualifiedNames();
@@ -652,7 +771,7 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
 
     // Return cache block for the universal identifier
     private IdCacheBlock getFromCache(String dn) {
-        IdCacheBlock cb = (IdCacheBlock) idRepoCache.get(dn);
+        IdCacheBlock cb = idRepoCache.get(dn);
         if (cb == null) {
             int ind = dn.toLowerCase().indexOf(",amsdkdn=");
             if (ind > -1) {
@@ -660,12 +779,89 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
                 // TODO: Should return entries which might have amsdkDN but
                 // notifications have not told us about it (like
                 // notifications from plugins other than AMSDKRepo
-                cb = (IdCacheBlock) idRepoCache.get(tmp);
+                cb = idRepoCache.get(tmp);
             }
         }
         return cb;
     }
 
+    /**
+     * Throws the error raised when the identity was last found not to exist,
+     * if it has been recently.
+     */
+    private void checkNotFound(String dn, String realm)
+        throws IdRepoException {
+        IdRepoException notFound = idRepoCache.getNotFound(dn);
+        if (notFound != null) {
+            recordGetHit(realm);
+            cacheStats.updateNotFoundHitCount();
+            if (DEBUG.messageEnabled()) {
+                DEBUG.message("IdCachedServicesImpl.checkNotFound(): "
+                        + dn + " found in not found cache.");
+            }
+            IdRepoException ide = new IdRepoException(
+                notFound.getResourceBundleName(), notFound.getErrorCode(),
+                notFound.getMessageArgs());
+            ide.setLDAPErrorCode(notFound.getLDAPErrorCode());
+            throw ide;
+        }
+    }
+
+    /**
+     * Remembers that an identity does not exist, if that is why the data
+     * stores raised the given error.
+     */
+    private IdRepoException cacheNotFound(String dn, IdRepoException ide) {
+        if (IdRepoErrorCode.UNABLE_FIND_ENTRY.equals(ide.getErrorCode())) {
+            idRepoCache.putNotFound(dn, ide);
+        }
+        return ide;
+    }
+
+    private void recordGetRequest(String realm) {
+        if (cacheStats.isEnabled()) {
+            cacheStats.incrementGetRequestCount(realm, getSize());
+        }
+        if (MonitoringUtil.isRunning() &&
+            ((monIdRepo = Agent.getIdrepoSvcMBean()) != null)) {
+            long li = (long)getSize();
+            monIdRepo.incGetRqts(li);
+        }
+    }
+
+    private void recordGetHit(String realm) {
+        if (cacheStats.isEnabled()) {
+            cacheStats.updateGetHitCount(realm, getSize());
+        }
+        if (MonitoringUtil.isRunning() &&
+            ((monIdRepo = Agent.getIdrepoSvcMBean()) != null)) {
+            long li = (long)getSize();
+            monIdRepo.incCacheHits(li);
+        }
+    }
+
+    private void recordSearchRequest(String realm) {
+        if (cacheStats.isEnabled()) {
+            cacheStats.incrementSearchRequestCount(realm, getSize());
+        }
+        if (MonitoringUtil.isRunning() &&
+            ((monIdRepo = Agent.getIdrepoSvcMBean()) != null)) {
+            long li = (long)getSize();
+            monIdRepo.incSearchRqts(li);
+        }
+    }
+
+    private void recordSearchHit(String realm) {
+        if (cacheStats.isEnabled()) {
+            cacheStats.updateSearchHitCount(realm, getSize());
+        }
+        if (MonitoringUtil.isRunning() &&
+            ((monIdRepo = Agent.getIdrepoSvcMBean()) != null)) {
+            long li = (long)getSize();
+            monIdRepo.incSearchCacheHits(li);
+        }
+    }
+
     // strip away amsdkdn from dn.
     private String getCacheId(String dn) {
         String cachedId = dn;
@@ -680,7 +876,8 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
     public synchronized void notifyChanges() {
         final int value = SystemProperties.getAsInt(CACHE_MAX_SIZE_KEY, CACHE_MAX_SIZE_INT);
 
-        if (value != maxSize) {
+        if (value != maxSize
+                || !getCacheConfiguration().equals(cacheConfiguration)) {
             resetCache(value);
         }
 
@@ -0,0 +1,427 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.idm.server;
+
+import com.iplanet.am.util.ConcurrentCache;
+import com.sun.identity.common.DNUtils;
+import com.sun.identity.idm.IdRepoException;
+import com.sun.identity.idm.common.IdCacheBlock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Identity cache split into one stripe per realm, so that lookups in one realm can not evict the cached identities
+ * of another.
+ * <p>
+ * Entries are keyed by lower case universal identifier, from which the realm is taken. Each realm holds at most its
+ * quota of {@link IdCacheBlock}s, evicting its least recently used entries once full. Each realm also holds
+ * identities that were recently found not to exist, which expire after a short time so that repeated lookups of
+ * unknown identities do not all reach the data store.
+ * <p>
+ * The realms together hold at most the cache's maximum size of identities, and at most its maximum number of missing
+ * identities, however many realms there are. Once a ceiling is reached, entries are evicted from the realm that added
+ * the latest entry if it holds more than an equal share, and otherwise from the realm holding the most.
+ */
+final class StripedIdCache {
+
+    private static final String AMSDKDN = ",amsdkdn=";
+    private static final int MIN_SEGMENT_SIZE = 64;
+
+    private final ConcurrentMap<String, Stripe> stripes = new ConcurrentHashMap<String, Stripe>();
+    private final Ceiling entryCeiling;
+    private final Ceiling notFoundCeiling;
+    private final int defaultQuota;
+    private final Map<String, Integer> realmQuotas;
+    private final int notFoundMaxSize;
+    private final long notFoundTimeToLive;
+
+    /**
+     * Constructs an empty cache.
+     *
+     * @param maxSize The maximum number of identities cached across all realms.
+     * @param defaultQuota The maximum number of identities cached for a realm with no quota of its own.
+     * @param realmQuotas The maximum number of identities cached for each realm, keyed by realm DN.
+     * @param notFoundMaxSize The maximum number of missing identities remembered across all realms, or zero to
+     * disable negative caching.
+     * @param notFoundTimeToLive The number of milliseconds for which a missing identity is remembered.
+     */
+    StripedIdCache(int maxSize, int defaultQuota, Map<String, Integer> realmQuotas, int notFoundMaxSize,
+            long notFoundTimeToLive) {
+        this.entryCeiling = new Ceiling(maxSize);
+        this.notFoundCeiling = new Ceiling(notFoundMaxSize);
+        this.defaultQuota = defaultQuota;
+        this.realmQuotas = new TreeMap<String, Integer>(String.CASE_INSENSITIVE_ORDER);
+        for (Map.Entry<String, Integer> quota : realmQuotas.entrySet()) {
+            this.realmQuotas.put(normalize(quota.getKey()), quota.getValue());
+        }
+        this.notFoundMaxSize = notFoundMaxSize;
+        this.notFoundTimeToLive = notFoundTimeToLive;
+    }
+
+    /**
+     * Returns the cached identity.
+     *
+     * @param key The lower case universal identifier.
+     * @return The cache block, or null if the identity is not cached.
+     */
+    IdCacheBlock get(String key) {
+        Stripe stripe = stripes.get(getRealm(key));
+        return stripe == null ? null : (IdCacheBlock) stripe.entries.get(key);
+    }
+
+    /**
+     * Caches an identity, replacing any record of it not existing.
+     *
+     * @param key The lower case universal identifier.
+     * @param block The cache block.
+     */
+    void put(String key, IdCacheBlock block) {
+        Stripe stripe = getStripe(getRealm(key));
+        if (stripe.entries.put(key, block) == null) {
+            entryCeiling.enforce(stripe.entries);
+        }
+        if (stripe.notFound != null) {
+            stripe.notFound.remove(stripCacheId(key));
+        }
+    }
+
+    /**
+     * Removes an identity from the cache.
+     *
+     * @param key The lower case universal identifier.
+     * @return The removed cache block, or null if the identity was not cached.
+     */
+    IdCacheBlock remove(String key) {
+        Stripe stripe = stripes.get(getRealm(key));
+        return stripe == null ? null : (IdCacheBlock) stripe.entries.remove(key);
+    }
+
+    /**
+     * Returns the error raised when the identity was last found not to exist, if that was recent enough to be
+     * trusted.
+     *
+     * @param key The lower case universal identifier.
+     * @return The error, or null if the identity is not known to be missing.
+     */
+    IdRepoException getNotFound(String key) {
+        Stripe stripe = stripes.get(getRealm(key));
+        if (stripe == null || stripe.notFound == null) {
+            return null;
+        }
+        return (IdRepoException) stripe.notFound.get(stripCacheId(key));
+    }
+
+    /**
+     * Records that an identity does not exist.
+     *
+     * @param key The lower case universal identifier.
+     * @param notFound The error raised by the data store.
+     */
+    void putNotFound(String key, IdRepoException notFound) {
+        if (notFoundMaxSize > 0) {
+            Stripe stripe = getStripe(getRealm(key));
+            if (stripe.notFound.put(stripCacheId(key), notFound) == null) {
+                notFoundCeiling.enforce(stripe.notFound);
+            }
+        }
+    }
+
+    /**
+     * Forgets that an identity did not exist, for example because it has now been created.
+     *
+     * @param key The lower case universal identifier.
+     */
+    void removeNotFound(String key) {
+        Stripe stripe = stripes.get(getRealm(key));
+        if (stripe != null && stripe.notFound != null) {
+            stripe.notFound.remove(stripCacheId(key));
+        }
+    }
+
+    /**
+     * Removes every cached identity.
+     */
+    void clear() {
+        for (String realm : stripes.keySet()) {
+            Stripe stripe = stripes.remove(realm);
+            if (stripe != null) {
+                stripe.discard();
+            }
+        }
+    }
+
+    /**
+     * Removes every cached identity in a realm.
+     *
+     * @param realm The realm DN.
+     * @return True if the realm had any cached identities.
+     */
+    boolean clearRealm(String realm) {
+        String normalizedRealm = normalize(realm);
+        boolean cleared = false;
+        for (String cachedRealm : stripes.keySet()) {
+            if (cachedRealm.equalsIgnoreCase(realm) || normalize(cachedRealm).equals(normalizedRealm)) {
+                Stripe stripe = stripes.remove(cachedRealm);
+                if (stripe != null) {
+                    stripe.discard();
+                    cleared = true;
+                }
+            }
+        }
+        return cleared;
+    }
+
+    /**
+     * Returns a snapshot of the cached identities' keys.
+     *
+     * @return The lower case universal identifiers of the cached identities.
+     */
+    List<String> keys() {
+        List<String> keys = new ArrayList<String>();
+        for (Stripe stripe : stripes.values()) {
+            for (Object key : stripe.entries.keySet()) {
+                keys.add((String) key);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Returns the number of cached identities.
+     *
+     * @return The number of cached identities, across all realms.
+     */
+    int size() {
+        int size = 0;
+        for (Stripe stripe : stripes.values()) {
+            size += stripe.entries.size();
+        }
+        return size;
+    }
+
+    /**
+     * Returns the number of cached identities in each realm.
+     *
+     * @return The number of cached identities keyed by realm DN.
+     */
+    Map<String, Integer> getRealmSizes() {
+        Map<String, Integer> sizes = new TreeMap<String, Integer>();
+        for (Map.Entry<String, Stripe> stripe : stripes.entrySet()) {
+            sizes.put(stripe.getKey(), stripe.getValue().entries.size());
+        }
+        return Collections.unmodifiableMap(sizes);
+    }
+
+    /**
+     * Returns the maximum number of identities cached for a realm.
+     *
+     * @param realm The realm DN.
+     * @return The realm's quota.
+     */
+    int getQuota(String realm) {
+        Integer quota = realmQuotas.get(realm);
+        if (quota == null && !realmQuotas.isEmpty()) {
+            quota = realmQuotas.get(normalize(realm));
+        }
+        return quota == null || quota < 1 ? defaultQuota : quota;
+    }
+
+    private Stripe getStripe(String realm) {
+        Stripe stripe = stripes.get(realm);
+        if (stripe == null) {
+            Stripe newStripe = new Stripe(getQuota(realm));
+            stripe = stripes.putIfAbsent(realm, newStripe);
+            if (stripe == null) {
+                stripe = newStripe;
+            } else {
+                newStripe.discard();
+            }
+        }
+        return stripe;
+    }
+
+    /**
+     * Returns the realm of a universal identifier, of the form {@code id=name,ou=type,realm[,amsdkdn=dn]}.
+     *
+     * @param key The universal identifier.
+     * @return The realm DN, or an empty string if the identifier is not of the expected form.
+     */
+    static String getRealm(String key) {
+        String cacheId = stripCacheId(key);
+        int commas = 0;
+        for (int i = 0; i < cacheId.length(); i++) {
+            char c = cacheId.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == ',' && ++commas == 2) {
+                return cacheId.substring(i + 1).trim();
+            }
+        }
+        return "";
+    }
+
+    /**
+     * Normalizes a DN so that differently formatted DNs for the same realm can be compared.
+     */
+    private static String normalize(String dn) {
+        String normalized = DNUtils.normalizeDN(dn);
+        return normalized == null ? dn.toLowerCase() : normalized;
+    }
+
+    /**
+     * Strips any AM SDK DN from a universal identifier.
+     */
+    private static String stripCacheId(String key) {
+        int index = key.indexOf(AMSDKDN);
+        return index == -1 ? key : key.substring(0, index);
+    }
+
+    /**
+     * The identities cached for one realm.
+     */
+    private final class Stripe {
+        private final StripeCache entries;
+        private final StripeCache notFound;
+
+        private Stripe(int quota) {
+            this.entries = new StripeCache(Math.min(quota, entryCeiling.maxSize), 0, entryCeiling);
+            this.notFound = notFoundMaxSize > 0
+                    ? new StripeCache(notFoundMaxSize, notFoundTimeToLive, notFoundCeiling)
+                    : null;
+        }
+
+        private void discard() {
+            entries.discard();
+            if (notFound != null) {
+                notFound.discard();
+            }
+        }
+    }
+
+    /**
+     * One kind of entry held by a stripe, counted towards the ceiling that all stripes share for that kind.
+     */
+    private static final class StripeCache extends ConcurrentCache {
+        private final AtomicInteger size = new AtomicInteger();
+        private final Ceiling ceiling;
+        private volatile boolean discarded;
+
+        private StripeCache(int maxSize, long timeToLive, Ceiling ceiling) {
+            super(maxSize, timeToLive, getConcurrencyLevel(maxSize));
+            this.ceiling = ceiling;
+            ceiling.members.add(this);
+        }
+
+        @Override
+        public Object put(Object key, Object value) {
+            Object previous = super.put(key, value);
+            if (previous == null) {
+                count(1);
+            }
+            return previous;
+        }
+
+        @Override
+        public Object remove(Object key) {
+            Object previous = super.remove(key);
+            if (previous != null) {
+                count(-1);
+            }
+            return previous;
+        }
+
+        @Override
+        protected void onEviction(Object key, Object value) {
+            count(-1);
+        }
+
+        private void count(int delta) {
+            size.addAndGet(delta);
+            if (!discarded) {
+                ceiling.size.addAndGet(delta);
+            }
+        }
+
+        /**
+         * Stops counting this stripe's entries towards the ceiling, once the stripe has been removed.
+         */
+        private void discard() {
+            discarded = true;
+            if (ceiling.members.remove(this)) {
+                ceiling.size.addAndGet(-size.get());
+            }
+        }
+    }
+
+    /**
+     * The maximum number of entries of one kind held across all stripes.
+     */
+    private static final class Ceiling {
+        private final int maxSize;
+        private final AtomicInteger size = new AtomicInteger();
+        private final Set<StripeCache> members =
+                Collections.newSetFromMap(new ConcurrentHashMap<StripeCache, Boolean>());
+
+        private Ceiling(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        /**
+         * Evicts entries while the stripes hold more than the ceiling, from the stripe that has just added an entry
+         * if it holds more than an equal share of the ceiling, and otherwise from the stripe that holds the most.
+         */
+        private void enforce(StripeCache added) {
+            int excess = size.get() - maxSize;
+            while (excess > 0) {
+                StripeCache victim = added.size.get() > maxSize / Math.max(1, members.size()) ? added : getLargest();
+                if (victim == null || victim.evict(excess) == 0) {
+                    return;
+                }
+                excess = size.get() - maxSize;
+            }
+        }
+
+        private StripeCache getLargest() {
+            StripeCache largest = null;
+            int largestSize = 0;
+            for (StripeCache member : members) {
+                int memberSize = member.size.get();
+                if (memberSize > largestSize) {
+                    largest = member;
+                    largestSize = memberSize;
+                }
+            }
+            return largest;
+        }
+    }
+
+    /**
+     * Each segment of a {@link ConcurrentCache} holds an equal share of its maximum size, so small caches use fewer
+     * segments in order that an uneven spread of keys does not evict entries well before the cache is full.
+     */
+    private static int getConcurrencyLevel(int maxSize) {
+        return Math.max(1, Math.min(ConcurrentCache.DEFAULT_CONCURRENCY_LEVEL, maxSize / MIN_SEGMENT_SIZE));
+    }
+}
@@ -24,7 +24,7 @@
  *
  * $Id: LogConstants.java,v 1.16 2008/09/18 22:56:31 veiming Exp $
  *
- * Portions Copyrighted 2011-2015 ForgeRock AS.
+ * Portions Copyrighted 2011-2016 ForgeRock AS.
  * Portions Copyrighted 2013 Cybernetica AS.
  * Portions Copyrighted 2014 Nomura Research Institute, Ltd
  */
@@ -625,4 +625,20 @@ public class LogConstants {
      * Key name for enable/disable log rotation.
      */
     public static final String ENABLE_ROTATION = "openam-logging-file-rotation-enabled";
+
+    /**
+     * System property to enable/disable writing file log records from a dedicated writer thread.
+     */
+    public static final String ASYNC_FILE_WRITER_ENABLED = "org.forgerock.openam.logging.file.async.enabled";
+
+    /**
+     * System property defining the capacity of the queue in front of the file log writer thread.
+     */
+    public static final String ASYNC_FILE_WRITER_QUEUE_SIZE = "org.forgerock.openam.logging.file.async.queue.size";
+
+    /**
+     * System property defining what happens when the file log writer queue is full; one of BLOCK, DROP or SPILL.
+     */
+    public static final String ASYNC_FILE_WRITER_OVERFLOW_POLICY =
+            "org.forgerock.openam.logging.file.async.overflow.policy";
 }
@@ -0,0 +1,409 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.log.handlers;
+
+import com.iplanet.am.util.SystemProperties;
+import com.sun.identity.log.LogConstants;
+import com.sun.identity.shared.debug.Debug;
+import org.forgerock.util.thread.listener.ShutdownListener;
+import org.forgerock.util.thread.listener.ShutdownManager;
+import org.forgerock.util.thread.listener.ShutdownPriority;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes formatted log records to their {@link Sink}s from a single dedicated thread, so that threads logging a
+ * record never wait on a handler monitor or on disk I/O.
+ * <p/>
+ * Records are placed on a bounded, lock-free multi-producer ring buffer. The writer thread takes every record that is
+ * available (up to a maximum batch size), writes each to its sink and then {@link Sink#commit() commits} each sink
+ * that was written to once, so that a burst of records costs one write to each file rather than one per record.
+ * <p/>
+ * What happens when the ring buffer is full is controlled by the {@link OverflowPolicy}.
+ */
+public class AsyncLogWriter {
+
+    /**
+     * The destination of log records written by the writer thread. Only ever called from the writer thread, or from
+     * the logging thread once the writer has been shut down.
+     */
+    public interface Sink {
+        /**
+         * Writes a single formatted record.
+         *
+         * @param message the formatted log record.
+         */
+        void write(String message);
+
+        /**
+         * Makes everything written since the last commit durable, for example by writing buffered bytes to a file.
+         */
+        void commit();
+
+        /**
+         * Discards a record which could not be queued.
+         *
+         * @param message the formatted log record.
+         */
+        void dropped(String message);
+    }
+
+    /**
+     * Behaviour when a record is published while the ring buffer is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * The logging thread waits until there is space.
+         */
+        BLOCK,
+        /**
+         * The record is discarded and counted as dropped.
+         */
+        DROP,
+        /**
+         * The record is placed on an unbounded overflow queue, which the writer drains after the ring buffer.
+         */
+        SPILL
+    }
+
+    private static final int DEFAULT_QUEUE_SIZE = 8192;
+    private static final int MAX_BATCH_SIZE = 1024;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private static AsyncLogWriter instance = null;
+
+    private final Debug debug = Debug.getInstance("amLogging");
+    private final OverflowPolicy overflowPolicy;
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<Entry> slots;
+    /**
+     * For each slot, one more than the sequence of the entry last published to it.
+     */
+    private final AtomicLongArray published;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final Queue<Entry> overflow = new ConcurrentLinkedQueue<Entry>();
+    private final AtomicBoolean writerWaiting = new AtomicBoolean();
+    private final AtomicBoolean running = new AtomicBoolean(true);
+    private final Thread writerThread;
+
+    private final AtomicLong highestQueueDepth = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong spilledCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+
+    AsyncLogWriter(int queueSize, OverflowPolicy overflowPolicy) {
+        this.capacity = Integer.highestOneBit(Math.max(2, queueSize - 1)) << 1;
+        this.mask = capacity - 1;
+        this.overflowPolicy = overflowPolicy;
+        this.slots = new AtomicReferenceArray<Entry>(capacity);
+        this.published = new AtomicLongArray(capacity);
+        this.writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "AsyncLogWriter");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Returns the shared writer, creating it if necessary. Returns null if asynchronous file logging is disabled.
+     *
+     * @return the shared writer, or null.
+     */
+    public static synchronized AsyncLogWriter getInstance() {
+        if (instance == null && SystemProperties.getAsBoolean(LogConstants.ASYNC_FILE_WRITER_ENABLED, true)) {
+            final AsyncLogWriter writer = new AsyncLogWriter(
+                    SystemProperties.getAsInt(LogConstants.ASYNC_FILE_WRITER_QUEUE_SIZE, DEFAULT_QUEUE_SIZE),
+                    getOverflowPolicy());
+            ShutdownManager shutdownMan = com.sun.identity.common.ShutdownManager.getInstance();
+            shutdownMan.addShutdownListener(new ShutdownListener() {
+                public void shutdown() {
+                    synchronized (AsyncLogWriter.class) {
+                        if (instance == writer) {
+                            instance = null;
+                        }
+                    }
+                    writer.shutdown();
+                }
+            }, ShutdownPriority.LOWEST);
+            instance = writer;
+        }
+        return instance;
+    }
+
+    private static OverflowPolicy getOverflowPolicy() {
+        final String policy = SystemProperties.get(LogConstants.ASYNC_FILE_WRITER_OVERFLOW_POLICY);
+        if (policy != null) {
+            try {
+                return OverflowPolicy.valueOf(policy.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                Debug.getInstance("amLogging").warning("AsyncLogWriter: Unknown overflow policy {}", policy);
+            }
+        }
+        return OverflowPolicy.BLOCK;
+    }
+
+    /**
+     * Queues a record to be written to the given sink.
+     *
+     * @param sink the destination of the record.
+     * @param message the formatted log record.
+     * @return false if the writer has been shut down and the caller must write the record itself, otherwise true.
+     */
+    public boolean publish(Sink sink, String message) {
+        if (!running.get()) {
+            return false;
+        }
+        final Entry entry = new Entry(sink, message);
+        if (!overflow.isEmpty()) {
+            // Keep records in order while the writer is still draining spilled records
+            spill(entry);
+            return true;
+        }
+        while (!offer(entry)) {
+            if (!running.get()) {
+                return false;
+            }
+            switch (overflowPolicy) {
+            case DROP:
+                droppedCount.incrementAndGet();
+                sink.dropped(message);
+                return true;
+            case SPILL:
+                spill(entry);
+                return true;
+            default:
+                wakeWriter();
+                LockSupport.parkNanos(this, FULL_PARK_NANOS);
+            }
+        }
+        wakeWriter();
+        return true;
+    }
+
+    /**
+     * Waits until every record published before this call has been written and committed.
+     *
+     * @param timeout the maximum time to wait.
+     * @param unit the unit of the timeout.
+     * @return true if all records were written within the timeout.
+     */
+    public boolean flush(long timeout, TimeUnit unit) {
+        if (Thread.currentThread() == writerThread) {
+            return true;
+        }
+        final long target = tail.get() + spilledCount.get();
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (processed.get() < target && writerThread.isAlive()) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            wakeWriter();
+            LockSupport.parkNanos(this, FULL_PARK_NANOS);
+        }
+        return true;
+    }
+
+    /**
+     * Stops accepting records and waits for the writer thread to write everything already queued.
+     */
+    public void shutdown() {
+        if (running.compareAndSet(true, false)) {
+            LockSupport.unpark(writerThread);
+            try {
+                writerThread.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of records waiting to be written.
+     *
+     * @return the current queue depth.
+     */
+    public long getQueueDepth() {
+        return tail.get() - head.get() + overflow.size();
+    }
+
+    /**
+     * Returns the highest queue depth seen by the writer thread.
+     *
+     * @return the highest queue depth.
+     */
+    public long getHighestQueueDepth() {
+        return highestQueueDepth.get();
+    }
+
+    /**
+     * Returns the number of records discarded because the queue was full.
+     *
+     * @return the dropped record count.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Returns the number of records placed on the overflow queue because the ring buffer was full.
+     *
+     * @return the spilled record count.
+     */
+    public long getSpilledCount() {
+        return spilledCount.get();
+    }
+
+    /**
+     * Returns the number of records written.
+     *
+     * @return the written record count.
+     */
+    public long getWrittenCount() {
+        return processed.get();
+    }
+
+    /**
+     * Returns the number of batches committed. Together with {@link #getWrittenCount()} this gives the average
+     * number of records written per commit.
+     *
+     * @return the batch count.
+     */
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    private boolean offer(Entry entry) {
+        long sequence;
+        do {
+            sequence = tail.get();
+            if (sequence - head.get() >= capacity) {
+                return false;
+            }
+        } while (!tail.compareAndSet(sequence, sequence + 1));
+        final int index = (int) (sequence & mask);
+        slots.set(index, entry);
+        published.set(index, sequence + 1);
+        return true;
+    }
+
+    private void spill(Entry entry) {
+        spilledCount.incrementAndGet();
+        overflow.add(entry);
+        wakeWriter();
+    }
+
+    private void wakeWriter() {
+        if (writerWaiting.get() && writerWaiting.compareAndSet(true, false)) {
+            LockSupport.unpark(writerThread);
+        }
+    }
+
+    private void writeLoop() {
+        final List<Entry> batch = new ArrayList<Entry>(MAX_BATCH_SIZE);
+        final Set<Sink> written = new LinkedHashSet<Sink>();
+        while (true) {
+            drainTo(batch);
+            if (batch.isEmpty()) {
+                if (!running.get()) {
+                    return;
+                }
+                writerWaiting.set(true);
+                if (getQueueDepth() == 0) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                writerWaiting.set(false);
+                continue;
+            }
+
+            for (Entry entry : batch) {
+                try {
+                    entry.sink.write(entry.message);
+                } catch (RuntimeException e) {
+                    debug.error("AsyncLogWriter: Unable to write log record", e);
+                }
+                written.add(entry.sink);
+            }
+            for (Sink sink : written) {
+                try {
+                    sink.commit();
+                } catch (RuntimeException e) {
+                    debug.error("AsyncLogWriter: Unable to commit log records", e);
+                }
+            }
+            batchCount.incrementAndGet();
+            processed.addAndGet(batch.size());
+            batch.clear();
+            written.clear();
+        }
+    }
+
+    private void drainTo(List<Entry> batch) {
+        long sequence = head.get();
+        final long depth = tail.get() - sequence;
+        if (depth > highestQueueDepth.get()) {
+            highestQueueDepth.set(depth);
+        }
+        while (batch.size() < MAX_BATCH_SIZE) {
+            final int index = (int) (sequence & mask);
+            if (published.get(index) != sequence + 1) {
+                break;
+            }
+            batch.add(slots.get(index));
+            slots.set(index, null);
+            head.set(++sequence);
+        }
+        while (batch.size() < MAX_BATCH_SIZE && tail.get() == sequence) {
+            // Spilled records are only taken once the ring buffer is empty, so that they follow earlier records
+            final Entry entry = overflow.poll();
+            if (entry == null) {
+                break;
+            }
+            batch.add(entry);
+        }
+    }
+
+    /**
+     * A record waiting to be written.
+     */
+    private static final class Entry {
+        private final Sink sink;
+        private final String message;
+
+        private Entry(Sink sink, String message) {
+            this.sink = sink;
+            this.message = message;
+        }
+    }
+}
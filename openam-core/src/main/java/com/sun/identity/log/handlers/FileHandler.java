@@ -26,24 +26,28 @@
  *
  */
 /*
- * Portions Copyrighted 2011-2014 ForgeRock AS
+ * Portions Copyrighted 2011-2016 ForgeRock AS
  * Portions Copyrighted 2014 Nomura Research Institute, Ltd
  */
 package com.sun.identity.log.handlers;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
-import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.text.SimpleDateFormat;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Date;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Formatter;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
@@ -75,13 +79,28 @@ import java.util.Calendar;
  * etc., * to the base filename. The Locking mechanism is much more relaxed 
  * (in JDK's  FileHandler an exclusive lock is created on the file till the
  * handler is closed which makes reading impossible)
+ * <p>
+ * Unless disabled with <i>LogConstants.ASYNC_FILE_WRITER_ENABLED</i>,
+ * formatted records are handed to the shared {@link AsyncLogWriter} and
+ * written by its thread, so logging threads never wait for this handler or
+ * for disk I/O. In that mode the record count and time based buffering
+ * settings are not used, as records are written as soon as the writer
+ * thread takes them. Records are encoded into a direct buffer and written
+ * to the file's channel once per batch.
  */
 public class FileHandler extends java.util.logging.Handler {
 
+    private static final int WRITE_BUFFER_SIZE = 32 * 1024;
+    private static final long ASYNC_FLUSH_TIMEOUT_SECONDS = 10;
+
     private LogManager lmanager = LogManagerUtil.getLogManager();
-    private OutputStream output;
-    private Writer writer;
-    private MeteredStream meteredStream;
+    private FileChannel channel;
+    private long currentFileSize;
+    private CharsetEncoder encoder;
+    private final ByteBuffer encodedBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+    private final Object writeLock = new Object();
+    private final AsyncLogWriter.Sink sink = new FileSink();
+    private AsyncLogWriter asyncWriter;
     private File files[];
     private boolean headerWritten;
     private int count; // count represent number of history files
@@ -107,91 +126,16 @@ public class FileHandler extends java.util.logging.Handler {
 
     private static final String DEFAULT_LOG_SUFFIX_FORMAT = "-MM.dd.yy-kk.mm";
 
-    private class MeteredStream extends OutputStream {
-
-        OutputStream out;
-        String filename = null;
-
-        MeteredStream(File fileName, boolean append) throws IOException {
-            this.filename = fileName.toString();
-            FileOutputStream fout = new FileOutputStream(filename, append);
-            this.out = new BufferedOutputStream(fout);
-        }
-
-        /**
-         * writes a single integer to the outputstream and increments 
-         * the number of bytes written by one.
-         * @param b integer value to be written.
-         * @throws IOException if it fails to write out.
-         */
-        public void write(int b) throws IOException {
-            out.write(b);
-        }
-
-        /**
-         * Writes the array of bytes to the output stream and increments 
-         * the number of bytes written by the size of the array.
-         * @param b the byte array to be written. 
-         * @throws IOException if it fails to write out.
-         */
-        public void write(byte[] b) throws IOException {
-            out.write(b);
-        }
-
-        /**
-         * Writes the array of bytes to the output stream and increments 
-         * the number of bytes written by the size of the array.
-         * @param b the byte array to be written. 
-         * @param offset the offset of array to be written. 
-         * @param length the length of bytes to be written. 
-         * @throws IOException if it fails to write out.
-         */
-        public void write(byte[] b, int offset, int length)
-                throws IOException {
-            out.write(b, offset, length);
-        }
-
-        /**
-         * Flush any buffered messages.
-         * @throws IOException if it fails to write out.
-         */
-        public void flush() throws IOException {
-            out.flush();
-        }
-
-        /**
-         * close the current output stream.
-         * @throws IOException if it fails to close output stream.
-         */
-        public void close() throws IOException {
-            out.close();
-        }
-    }
-
     /**
-     * sets the output stream to the specified output stream ..picked up from
-     * StreamHandler.
+     * Creates an encoder for the current character encoding which, like
+     * <tt>OutputStreamWriter</tt>, replaces characters it cannot encode.
      */
-    private void setOutputStream(OutputStream out) throws SecurityException,
-            UnsupportedEncodingException {
-        if (out == null) {
-            if (Debug.warningEnabled()) {
-                Debug.warning(fileName + ":FileHandler: OutputStream is null");
-            }
-        }
-        output = out;
-        headerWritten = false;
+    private CharsetEncoder newEncoder() {
         String encoding = getEncoding();
-        if (encoding == null) {
-            writer = new OutputStreamWriter(output);
-        } else {
-            try {
-                writer = new OutputStreamWriter(output, encoding);
-            } catch (UnsupportedEncodingException e) {
-                Debug.error(fileName + ":FileHandler: Unsupported Encoding", e);
-                throw new UnsupportedEncodingException(e.getMessage());
-            }
-        }
+        Charset charset = (encoding == null) ? Charset.defaultCharset() : Charset.forName(encoding);
+        return charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
     }
 
     /**
@@ -210,15 +154,10 @@ public class FileHandler extends java.util.logging.Handler {
     public void setEncoding(String encoding) throws SecurityException,
             UnsupportedEncodingException {
         super.setEncoding(encoding);
-        if (output == null) {
-            return;
-        }
-        // Replace the current writer with a writer for the new encoding.
-        cleanup();
-        if (encoding == null) {
-            writer = new OutputStreamWriter(output);
-        } else {
-            writer = new OutputStreamWriter(output, encoding);
+        synchronized (writeLock) {
+            // Write out anything encoded with the old encoding first.
+            cleanup();
+            encoder = newEncoder();
         }
     }
 
@@ -338,12 +277,14 @@ public class FileHandler extends java.util.logging.Handler {
 
     /** 
      * Algorithm: Check how many bytes have already been written to to that file
-     * Get an instance of MeteredStream and assign it as the output stream. 
-     * Create a file of the name of FileOutputStream.
+     * Open a channel to the file, positioned at its end when appending.
      */
     private void open(File fileName, boolean append) throws IOException {
-        meteredStream = new MeteredStream(fileName, append);
-        setOutputStream(meteredStream);
+        channel = new FileOutputStream(fileName, append).getChannel();
+        currentFileSize = channel.size();
+        if (encoder == null) {
+            encoder = newEncoder();
+        }
         checkForHeaderWritten(fileName.toString());
     }
 
@@ -383,7 +324,8 @@ public class FileHandler extends java.util.logging.Handler {
 
         recordBuffer = new LinkedList();
 
-        if (timeBufferingEnabled) {
+        asyncWriter = AsyncLogWriter.getInstance();
+        if (timeBufferingEnabled && asyncWriter == null) {
             startTimeBufferingThread();
         }
 
@@ -427,10 +369,13 @@ public class FileHandler extends java.util.logging.Handler {
 
     }
 
+    /**
+     * Writes any encoded bytes to the file. Must be called holding the write lock.
+     */
     private void cleanup() {
-        if (writer != null) {
+        if (channel != null && encodedBuffer.position() > 0) {
             try {
-                writer.flush();
+                drainEncodedBuffer();
             } catch (Exception ex) {
                 Debug.error(fileName +
                         ":FileHandler: Could not Flush Output", ex);
@@ -439,16 +384,27 @@ public class FileHandler extends java.util.logging.Handler {
     }
 
     /**
-     * Flush any buffered messages and Close all the files.
+     * Writes any encoded bytes and closes the current file. Must be called holding the write lock.
      */
-    public void close() {
-        flush();
-        if (writer != null) {
+    private void closeChannel() {
+        if (channel != null) {
+            cleanup();
             try {
-                writer.close();
+                channel.close();
             } catch (IOException e) {
                 Debug.error(fileName + ":FileHandler: Error closing writer", e);
             }
+            channel = null;
+        }
+    }
+
+    /**
+     * Flush any buffered messages and Close all the files.
+     */
+    public void close() {
+        flush();
+        synchronized (writeLock) {
+            closeChannel();
         }
         stopBufferTimer();
     }
@@ -476,6 +432,16 @@ public class FileHandler extends java.util.logging.Handler {
         }
         Formatter formatter = getFormatter();
         String message = formatter.format(lrecord);
+        if (asyncWriter != null) {
+            if (!asyncWriter.publish(sink, message)) {
+                // use current thread to write the record if the writer is shutdown
+                synchronized (writeLock) {
+                    writeRecord(message);
+                    cleanup();
+                }
+            }
+            return;
+        }
         synchronized (this) {        
             recordBuffer.add(message);
             if (recordBuffer.size() >= recCountLimit) {
@@ -517,55 +483,91 @@ public class FileHandler extends java.util.logging.Handler {
             LoggingThread.getInstance().run(task);
         } catch (ThreadPoolException ex) {
             // use current thread to flush the data if ThreadPool is shutdown
-            synchronized (this) {
-                task.run();
-            }
+            task.run();
         }
     }
 
     public void flush() {
+        if (asyncWriter != null
+                && !asyncWriter.flush(ASYNC_FLUSH_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            Debug.warning(fileName + ":FileHandler.flush: timed out waiting for log writer");
+        }
+        LinkedList buffer;
         synchronized (this) {
-            if (recordBuffer.size() <= 0) {
+            if (recordBuffer == null || recordBuffer.size() <= 0) {
                 return;
             }
-            if (writer == null) {
-                int recordsToBeDropped = recordBuffer.size();
-                if (MonitoringUtil.isRunning() && fileLogHandlerForMonitoring !=
-                    null) {
-                    fileLogHandlerForMonitoring.incHandlerDroppedCount(
-                        recordsToBeDropped);
-                }
-                recordBuffer.clear();
-                return;
+            buffer = recordBuffer;
+            recordBuffer = new LinkedList();
+        }
+        new LogTask(buffer).run();
+    }
+
+    /**
+     * Writes a single record, rotating the file first if required. Must be
+     * called holding the write lock.
+     */
+    private void writeRecord(String message) {
+        if (channel == null) {
+            if (MonitoringUtil.isRunning() && fileLogHandlerForMonitoring != null) {
+                fileLogHandlerForMonitoring.incHandlerDroppedCount(1);
             }
-            for (Iterator iter = recordBuffer.iterator(); iter.hasNext();) {
-                String message = (String) iter.next();
-                if (needsRotation(message)) {
-                    rotate();
-                }
-                try {
-                    if (!headerWritten) {
-                        writer.write(getHeaderString());
-                        headerWritten = true;
-                    }
-                    writer.write(message);
-                    if (MonitoringUtil.isRunning() &&
-                        fileLogHandlerForMonitoring != null) {
-                        fileLogHandlerForMonitoring.incHandlerSuccessCount(1);
-                    }
-                } catch (IOException ex) {
-                }
-                cleanup();
+            return;
+        }
+        if (needsRotation(message)) {
+            rotate();
+        }
+        try {
+            if (!headerWritten) {
+                encode(getHeaderString());
+                headerWritten = true;
             }
-            recordBuffer.clear();
-        }        
+            encode(message);
+            if (MonitoringUtil.isRunning() &&
+                fileLogHandlerForMonitoring != null) {
+                fileLogHandlerForMonitoring.incHandlerSuccessCount(1);
+            }
+        } catch (IOException ex) {
+            Debug.error(fileName +
+                ":FileHandler: could not write to file: ", ex);
+        }
+    }
+
+    /**
+     * Encodes the text into the write buffer, writing the buffer to the file
+     * whenever it fills up.
+     */
+    private void encode(String text) throws IOException {
+        CharBuffer chars = CharBuffer.wrap(text);
+        encoder.reset();
+        CoderResult result = encoder.encode(chars, encodedBuffer, true);
+        while (result.isOverflow()) {
+            drainEncodedBuffer();
+            result = encoder.encode(chars, encodedBuffer, true);
+        }
+        result = encoder.flush(encodedBuffer);
+        while (result.isOverflow()) {
+            drainEncodedBuffer();
+            result = encoder.flush(encodedBuffer);
+        }
+    }
+
+    private void drainEncodedBuffer() throws IOException {
+        encodedBuffer.flip();
+        try {
+            while (encodedBuffer.hasRemaining()) {
+                currentFileSize += channel.write(encodedBuffer);
+            }
+        } finally {
+            encodedBuffer.clear();
+        }
     }
 
     private boolean needsRotation(String message) {
         if (rotateEnabled) {
             if (rotatingBySize) {
                 if (!message.isEmpty()
-                        && new File(meteredStream.filename).length() >= maxFileSize
+                        && currentFileSize + encodedBuffer.position() >= maxFileSize
                                 - message.length()) {
                     return true;
                 }
@@ -584,15 +586,7 @@ public class FileHandler extends java.util.logging.Handler {
     }
 
     private void rotate() {
-       if (writer != null) {
-            try {
-                writer.flush();
-                writer.close();
-            } catch (Exception ex) {
-                Debug.error(fileName + ":FileHandler: " +
-                        "Error closing writer", ex);
-            }
-        }
+        closeChannel();
         if (rotatingBySize) {
             //
             //  delete file<n>; file<n-1> becomes file<n>; and so on.
@@ -739,40 +733,25 @@ public class FileHandler extends java.util.logging.Handler {
         }
 
         public void run() {
-            if (writer == null) {
-                Debug.error(fileName + ":FileHandler: Writer is null");
-                int recordsToBeDropped = buffer.size();
-                if (MonitoringUtil.isRunning() && fileLogHandlerForMonitoring !=
-                    null) {
-                    fileLogHandlerForMonitoring.incHandlerDroppedCount(
-                        recordsToBeDropped);
+            synchronized (writeLock) {
+                if (channel == null) {
+                    Debug.error(fileName + ":FileHandler: Writer is null");
+                    int recordsToBeDropped = buffer.size();
+                    if (MonitoringUtil.isRunning() && fileLogHandlerForMonitoring !=
+                        null) {
+                        fileLogHandlerForMonitoring.incHandlerDroppedCount(
+                            recordsToBeDropped);
+                    }
+                    buffer.clear();
+                    return;
                 }
-                buffer.clear();
-                return;
-            }
-            if (Debug.messageEnabled()) {
-                Debug.message(fileName + ":FileHandler.flush: writing " +
-                    "buffered records (" +
-                    buffer.size() + " records)");
-            }
-            for (Iterator iter = buffer.iterator(); iter.hasNext();) {
-                String message = (String) iter.next();
-                if (needsRotation(message)) {
-                    rotate();
+                if (Debug.messageEnabled()) {
+                    Debug.message(fileName + ":FileHandler.flush: writing " +
+                        "buffered records (" +
+                        buffer.size() + " records)");
                 }
-                try {
-                    if (!headerWritten) {
-                        writer.write(getHeaderString());
-                        headerWritten = true;
-                    }
-                    writer.write(message);
-                    if (MonitoringUtil.isRunning() &&
-                        fileLogHandlerForMonitoring != null) {
-                        fileLogHandlerForMonitoring.incHandlerSuccessCount(1);
-                    }
-                } catch (IOException ex) {
-                    Debug.error(fileName +
-                        ":FileHandler: could not write to file: ", ex);
+                for (Iterator iter = buffer.iterator(); iter.hasNext();) {
+                    writeRecord((String) iter.next());
                 }
                 cleanup();
             }
@@ -780,6 +759,30 @@ public class FileHandler extends java.util.logging.Handler {
 
     }
 
+    /**
+     * Receives this handler's records from the {@link AsyncLogWriter} thread.
+     */
+    private class FileSink implements AsyncLogWriter.Sink {
+
+        public void write(String message) {
+            synchronized (writeLock) {
+                writeRecord(message);
+            }
+        }
+
+        public void commit() {
+            synchronized (writeLock) {
+                cleanup();
+            }
+        }
+
+        public void dropped(String message) {
+            if (MonitoringUtil.isRunning() && fileLogHandlerForMonitoring != null) {
+                fileLogHandlerForMonitoring.incHandlerDroppedCount(1);
+            }
+        }
+    }
+
     private class TimeBufferingTask extends GeneralTaskRunnable {
 
         private long runPeriod;
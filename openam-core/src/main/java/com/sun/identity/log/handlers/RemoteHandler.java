@@ -24,7 +24,7 @@
  *
  * $Id: RemoteHandler.java,v 1.18 2009/12/13 22:58:06 hvijay Exp $
  *
- * Portions Copyrighted 2011-2015 ForgeRock AS.
+ * Portions Copyrighted 2011-2016 ForgeRock AS.
  */
 
 package com.sun.identity.log.handlers;
@@ -32,9 +32,12 @@ package com.sun.identity.log.handlers;
 import com.iplanet.am.util.ThreadPoolException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Vector;
 import java.util.logging.Handler;
@@ -193,13 +196,14 @@ public class RemoteHandler extends Handler {
             }
             return;
         }
-        Vector responses = new Vector();
         if (Debug.messageEnabled()) {
             Debug.message("RemoteHandler.flush(): sending buffered records");
         }
 
         String thisAMException = null;
         try {
+            Map<String, List<RequestSet>> hostReqSets =
+                new LinkedHashMap<String, List<RequestSet>>();
             Iterator sidIter = reqSetMap.keySet().iterator();
             while (sidIter.hasNext()) {
                 String currentLoggedBySID = (String)sidIter.next();
@@ -210,23 +214,11 @@ public class RemoteHandler extends Handler {
                     reqSetMap = new HashMap();
                     return;
                 }
-                RequestSet reqSet = 
-                    (RequestSet)reqSetMap.get(currentLoggedBySID);
-                responses = PLLClient.send(logHostURL, reqSet);
-                Iterator respIter = responses.iterator();
-                while (respIter.hasNext()) {
-                    Response resp = (Response)respIter.next();
-                    String respContent = resp.getContent();
-                    if (!respContent.equals("OK")) {
-                        Debug.error("RemoteHandler.flush(): " + respContent 
-                            + " on remote machine");
-                        if (thisAMException == null) {
-                            thisAMException = "RemoteHandler.flush(): " +
-                            respContent + " on remote machine";
-                        }
-                    }
-                }
+                addRequestSet(hostReqSets, logHostURL,
+                    (RequestSet)reqSetMap.get(currentLoggedBySID));
             }
+            thisAMException = sendRequestSets(hostReqSets,
+                "RemoteHandler.flush(): ");
         } catch (Exception e) {
             Debug.error("RemoteHandler.flush(): " , e);
         }
@@ -269,6 +261,57 @@ public class RemoteHandler extends Handler {
     }
 
  
+    /**
+     * Adds a RequestSet to those for its log host. Records logged by
+     * sessions of the same server go to the same log host, and are sent to
+     * it together.
+     */
+    private static void addRequestSet(
+        Map<String, List<RequestSet>> hostReqSets, URL logHostURL,
+        RequestSet reqSet) {
+        String logHost = logHostURL.toString();
+        List<RequestSet> reqSets = hostReqSets.get(logHost);
+        if (reqSets == null) {
+            reqSets = new ArrayList<RequestSet>();
+            hostReqSets.put(logHost, reqSets);
+        }
+        reqSets.add(reqSet);
+    }
+
+    /**
+     * Sends the RequestSets for each log host, in as few round trips as
+     * {@link PLLClient#sendAll(URL, List)} allows.
+     *
+     * @return the first error reported by a log host, or null if every
+     *         record was logged.
+     */
+    private static String sendRequestSets(
+        Map<String, List<RequestSet>> hostReqSets, String method)
+        throws Exception {
+        String error = null;
+        for (Map.Entry<String, List<RequestSet>> entry :
+            hostReqSets.entrySet()) {
+            List<Vector> responses =
+                PLLClient.sendAll(new URL(entry.getKey()), entry.getValue());
+            for (Vector reqSetResponses : responses) {
+                Iterator respIter = reqSetResponses.iterator();
+                while (respIter.hasNext()) {
+                    Response resp = (Response)respIter.next();
+                    String respContent = resp.getContent();
+                    if (!respContent.equals("OK")) {
+                        Debug.error(method + respContent +
+                            " on remote machine");
+                        if (error == null) {
+                            error = method + respContent +
+                                " on remote machine";
+                        }
+                    }
+                }
+            }
+        }
+        return error;
+    }
+
     private URL getLogHostURL(String loggedBySID) {
         SessionID sid = new SessionID(loggedBySID);
         
@@ -333,7 +376,6 @@ public class RemoteHandler extends Handler {
         }
         
         public void run() {
-            Vector responses = new Vector();
             if (Debug.messageEnabled()) {
                 Debug.message("RemoteHandler.FlushTask.run(): " +
                         "sending buffered records");
@@ -341,6 +383,8 @@ public class RemoteHandler extends Handler {
 
             String thisAMException = null;
             try {
+                Map<String, List<RequestSet>> hostReqSets =
+                        new LinkedHashMap<String, List<RequestSet>>();
                 for(String currentLoggedBySID : logReqsMap.keySet()){
                     URL logHostURL = getLogHostURL(currentLoggedBySID);
                     if (logHostURL == null) {
@@ -348,24 +392,11 @@ public class RemoteHandler extends Handler {
                                 "logHostURL is null");
                         return;
                     }
-                    RequestSet reqSet =
-                            (RequestSet) logReqsMap.get(currentLoggedBySID);
-                    responses = PLLClient.send(logHostURL, reqSet);
-                    Iterator respIter = responses.iterator();
-                    while (respIter.hasNext()) {
-                        Response resp = (Response) respIter.next();
-                        String respContent = resp.getContent();
-                        if (!respContent.equals("OK")) {
-                            Debug.error("RemoteHandler.FlushTask.run(): " + 
-                                    respContent + " on remote machine");
-                            if (thisAMException == null) {
-                                thisAMException =
-                                        "RemoteHandler.FlushTask.run(): " +
-                                        respContent + " on remote machine";
-                            }
-                        }
-                    }
+                    addRequestSet(hostReqSets, logHostURL,
+                            logReqsMap.get(currentLoggedBySID));
                 }
+                thisAMException = sendRequestSets(hostReqSets,
+                        "RemoteHandler.FlushTask.run(): ");
             } catch (Exception e) {
                 Debug.error("RemoteHandler.FlushTask.run(): ", e);
             }
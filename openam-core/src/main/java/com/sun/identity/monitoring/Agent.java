@@ -133,6 +133,7 @@ public class Agent {
     private static int policyWindow;
     private static int sessionWindow;
     private static String monAuthFilePath;
+    private static Map<String, String> monAuthUsers;
     private static String ssoProtocol;
     private static String ssoName;
     private static String ssoPort;
@@ -459,6 +460,9 @@ public class Agent {
             return MON_CONFIG_DISABLED;
         }
 
+        // the same users protect the HTML adaptor and the OpenMetrics endpoint
+        monAuthUsers = MonitoringUtil.getMonAuthList(monAuthFilePath);
+
         /*
          *  verify that the HTML, SNMP and RMI ports aren't the same as
          *  the OpenAM server port.  if HTML or SNMP conflict with it,
@@ -678,7 +682,7 @@ public class Agent {
                             "HTML adaptor is bound on TCP port " + monHtmlPort);
                 }
 
-                Map<String, String> users = MonitoringUtil.getMonAuthList(monAuthFilePath);
+                Map<String, String> users = monAuthUsers;
                 if (users != null) {
                     AuthInfo authInfo[] = new AuthInfo[users.size()];
                     int i = 0;
@@ -937,6 +941,15 @@ public class Agent {
         return agentStarted;
     }
 
+    /**
+     * Return the monitoring users read from the monitoring authentication file.
+     *
+     * @return map of user ID to password, or null if the file could not be read or named no users.
+     */
+    protected static Map<String, String> getMonAuthUsers() {
+        return monAuthUsers;
+    }
+
     /**
      * Return the size of the policy window to configure.
      *
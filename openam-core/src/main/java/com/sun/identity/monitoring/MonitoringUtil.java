@@ -34,7 +34,9 @@ package com.sun.identity.monitoring;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.security.AccessController;
+import java.security.MessageDigest;
 import java.util.HashMap;
 import java.util.Set;
 import java.util.StringTokenizer;
@@ -293,6 +295,25 @@ public class MonitoringUtil {
         return isMonAvailable ? Agent.isRunning() : false;
     }
 
+    /**
+     * Checks the given credentials against the users in the monitoring authentication file, which also protect the
+     * HTML adaptor.
+     *
+     * @param userId The user ID, may be null.
+     * @param password The password, may be null.
+     * @return true if monitoring is running and the credentials match a monitoring user.
+     */
+    public static boolean isMonitoringUser(String userId, String password) {
+        checkInit();
+        if (!isMonAvailable || !Agent.isRunning() || userId == null || password == null) {
+            return false;
+        }
+        Map<String, String> users = Agent.getMonAuthUsers();
+        String expected = users == null ? null : users.get(userId);
+        return expected != null && MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8),
+                password.getBytes(StandardCharsets.UTF_8));
+    }
+
     public static int getPolicyWindowSize() {
         checkInit();
         return isMonAvailable ? Agent.getPolicyWindowSize() : 0;
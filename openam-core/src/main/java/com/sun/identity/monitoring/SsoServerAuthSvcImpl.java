@@ -28,6 +28,7 @@
 
 /*
  * Portions Copyrighted 2011-13 ForgeRock Inc.
+ * Portions Copyrighted 2016 ForgeRock AS.
  */
 package com.sun.identity.monitoring;
 
@@ -37,7 +38,11 @@ import com.sun.identity.shared.debug.Debug;
 import com.sun.management.snmp.agent.SnmpMib;
 import java.util.Deque;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.management.MBeanServer;
+import org.forgerock.guice.core.InjectorHolder;
+import org.forgerock.openam.shared.monitoring.MetricFamily;
+import org.forgerock.openam.shared.monitoring.MetricsRegistry;
 
 /**
  * This class extends the "SsoServerAuthSvc" class.
@@ -57,6 +62,8 @@ public class SsoServerAuthSvcImpl extends SsoServerAuthSvc {
     private static int AVERAGE_RECORD_COUNT = 1000;
     private Deque<Long> historicSuccessRecords;
     private Deque<Long> historicFailureRecords;
+    private AtomicLong successCounter;
+    private AtomicLong failureCounter;
 
     /**
      * Constructors
@@ -104,6 +111,10 @@ public class SsoServerAuthSvcImpl extends SsoServerAuthSvc {
         historicFailureRecords = new LinkedBlockingDeque<Long>();
         historicSuccessRecords = new LinkedBlockingDeque<Long>();
 
+        MetricFamily<AtomicLong> authentications = InjectorHolder.getInstance(MetricsRegistry.class)
+                .counter("openam_authentication", "Completed authentications", "outcome");
+        successCounter = authentications.labels("success");
+        failureCounter = authentications.labels("failure");
     }
 
 
@@ -165,6 +176,7 @@ public class SsoServerAuthSvcImpl extends SsoServerAuthSvc {
         long li = AuthenticationFailureCount.longValue();
         li++;
         AuthenticationFailureCount = Long.valueOf(li);
+        failureCounter.incrementAndGet();
         historicFailureRecords.add(System.currentTimeMillis());
 
         updateSsoServerAuthenticationRates();
@@ -174,6 +186,7 @@ public class SsoServerAuthSvcImpl extends SsoServerAuthSvc {
         long li = AuthenticationSuccessCount.longValue();
         li++;
         AuthenticationSuccessCount = Long.valueOf(li);
+        successCounter.incrementAndGet();
         historicSuccessRecords.add(System.currentTimeMillis());
 
         updateSsoServerAuthenticationRates();
@@ -24,7 +24,7 @@
  *
  * $Id: Policy.java,v 1.9 2010/01/10 01:19:35 veiming Exp $
  *
- * Portions Copyrighted 2011-2015 ForgeRock AS.
+ * Portions Copyrighted 2011-2016 ForgeRock AS.
  */
 
 package com.sun.identity.policy;
@@ -119,7 +119,7 @@ public class Policy implements Cloneable {
     private final static int MATCHED_RULE_RESULTS_CACHE_SIZE = 1000;
     private final static int MATCHED_REFERRAL_RULES_CACHE_SIZE = 100;
     private Cache matchRulesResultsCache 
-            = new Cache(MATCHED_RULE_RESULTS_CACHE_SIZE);
+            = Cache.newInstance(MATCHED_RULE_RESULTS_CACHE_SIZE);
     private String subjectRealm;
 
     /**
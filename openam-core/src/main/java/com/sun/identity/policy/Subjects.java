@@ -55,7 +55,7 @@ public class Subjects {
     private String name;
     private String description;
     private Map users = new HashMap();
-    private Cache resultCache = new Cache(SUBJECTS_RESULT_CACHE_SIZE);
+    private Cache resultCache = Cache.newInstance(SUBJECTS_RESULT_CACHE_SIZE);
     private long resultTtl;
 
     /**
@@ -753,7 +753,7 @@ public class Subjects {
     }
 
     void setPolicyConfig(Map policyConfig) throws PolicyException {
-        resultCache = new Cache(SUBJECTS_RESULT_CACHE_SIZE);
+        resultCache = Cache.newInstance(SUBJECTS_RESULT_CACHE_SIZE);
         Iterator sIter = users.keySet().iterator();
         while ( sIter.hasNext() ) {
             QualifiedSubject qualifiedSubject 
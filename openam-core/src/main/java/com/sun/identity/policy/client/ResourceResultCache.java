@@ -24,12 +24,12 @@
  *
  * $Id: ResourceResultCache.java,v 1.21 2010/01/21 22:18:01 dillidorai Exp $
  *
- * Portions Copyrighted 2015 ForgeRock AS.
+ * Portions Copyrighted 2015-2016 ForgeRock AS.
  */
 
 package com.sun.identity.policy.client;
 
-import com.iplanet.am.util.Cache;
+import com.iplanet.am.util.ConcurrentCache;
 import com.iplanet.am.util.SystemProperties;
 import com.iplanet.dpro.session.Session;
 import com.iplanet.dpro.session.SessionException;
@@ -48,6 +48,7 @@ import com.iplanet.sso.SSOTokenEvent;
 import com.iplanet.sso.SSOTokenListener;
 import com.iplanet.sso.SSOTokenManager;
 import com.sun.identity.common.HttpURLConnectionManager;
+import com.sun.identity.common.TimingWheel;
 import com.sun.identity.idm.AMIdentity;
 import com.sun.identity.idm.IdUtils;
 import com.sun.identity.policy.ActionDecision;
@@ -94,28 +95,55 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Singleton class that implements client side policy decision cache.
  * Handles communication with policy service acting 
  * as a proxy to policy service.  In effect, this is a caching proxy.
+ * <p>
+ * Cached results are held in concurrent maps and are read without locking.
+ * Expired results are removed using a timing wheel, advanced by whichever
+ * request thread next finds it due. Concurrent requests that miss the cache
+ * for the same token, service, resource, scope, actions and environment
+ * share a single call to the policy service.
  */
 class ResourceResultCache implements SSOTokenListener {
 
     //service>resource>tokenID>scope>result
-    private static ResourceResultCache resourceResultCache;
+    private static volatile ResourceResultCache resourceResultCache;
 
-    private PolicyProperties policyProperties;
+    private static final long EXPIRY_TICK = 1000;
+    private static final int EXPIRY_WHEEL_SIZE = 64;
+
+    private volatile PolicyProperties policyProperties;
     private Set remotePolicyListeners 
             = Collections.synchronizedSet(new HashSet(10));
 
     //serviceName -> resourceName -> sessionId -> scope -> result
-    private Map resultCache = new HashMap(10); 
+    private final ConcurrentMap<String, Map> resultCache
+            = new ConcurrentHashMap<String, Map>(10);
+
+    // results being fetched from the server, shared by concurrent requests
+    private final ConcurrentMap<FetchKey, FutureTask<Set>> inFlightFetches
+            = new ConcurrentHashMap<FetchKey, FutureTask<Set>>();
+
+    // incremented whenever cached results are cleared by a notification
+    private final AtomicLong invalidationCount = new AtomicLong();
+
+    private final TimingWheel<CachedResults> expiryWheel
+            = new TimingWheel<CachedResults>(EXPIRY_TICK, EXPIRY_WHEEL_SIZE,
+            System.currentTimeMillis());
 
     private PolicyNotificationHandler notificationHandler;
-    private Set tokenRegistry = 
-        Collections.synchronizedSet(new HashSet(10000));
-    private int        cacheTtl;
+    private Set tokenRegistry = Collections.newSetFromMap(
+            new ConcurrentHashMap<String, Boolean>(10000));
+    private volatile int cacheTtl;
     private Set        advicesHandleableByAM; 
 
     private static Debug debug = PolicyEvaluator.debug;
@@ -212,7 +240,7 @@ class ResourceResultCache implements SSOTokenListener {
      * @return reference to the singleton instance of 
      *         <code>ResourceResultCache</code>
      */
-    private synchronized static ResourceResultCache getInstance() {
+    private static ResourceResultCache getInstance() {
         if ( (resourceResultCache == null) 
                 && debug.warningEnabled()) {
             debug.warning("ResourceResultCache.getInstance():"
@@ -433,165 +461,101 @@ class ResourceResultCache implements SSOTokenListener {
                     + ":entering ");
         }
 
-        Map resourceTokenIDsMap = null;
-        // resultCache -> serviceName -> resourceName -> sessionId -> scope -> result
-        synchronized(resultCache) {
-            // resourceName -> sessionId -> scope -> result
-            resourceTokenIDsMap = (Map)resultCache.get(serviceName);
-            if (resourceTokenIDsMap == null) {
-                // changed to fix 4295 Policy cache causes frequent 
-                // full gc or out of memory issues
-                resourceTokenIDsMap 
-                        = new Cache(policyProperties.getResultsCacheResourceCap());
-                resultCache.put(serviceName, resourceTokenIDsMap);
-            }
-        }
-
-        Map tokenIDScopesMap = null;
-        // resourceTokenIDsMap -> resourceName -> sessionId -> scope -> result
-        synchronized(resourceTokenIDsMap) {
-            // sessionId -> scope -> result
-            tokenIDScopesMap = (Map)resourceTokenIDsMap.get(resourceName);
-            if (tokenIDScopesMap == null) {
-                // changed to fix 4295 Policy cache causes frequent full 
-                // gc or out of memory issues
-                tokenIDScopesMap  
-                        = new Cache(policyProperties.getResultsCacheSessionCap());
-                resourceTokenIDsMap.put(resourceName, tokenIDScopesMap);
-            }
-        }
+        expireCachedResults();
 
-        Map scopeResultsMap= null;
         String tokenID =  token.getTokenID().toString();
-        // tokenIDScopesMap -> sessionId -> scope -> result
-        synchronized(tokenIDScopesMap) {
-            scopeResultsMap = (Map)tokenIDScopesMap.get(tokenID);
-            if (scopeResultsMap == null) {
-                scopeResultsMap = new HashMap();
-                tokenIDScopesMap.put(tokenID, scopeResultsMap);
-                if (!tokenRegistry.contains(tokenID)) {
-                    token.addSSOTokenListener(this);
-                    tokenRegistry.add(tokenID);
-                }
-            }
+        if (tokenRegistry.add(tokenID)) {
+            token.addSSOTokenListener(this);
         }
 
-        Object[] results = null;
+        // resultCache -> serviceName -> resourceName -> sessionId -> scope -> result
+        Map<String, CachedResults> scopeResultsMap
+                = getScopeResultsMap(serviceName, resourceName, tokenID);
+        CachedResults results = scopeResultsMap.get(scope);
         boolean fetchResultsFromServer = false;
-        // scopeResultsMap -> scope -> result
-        synchronized(scopeResultsMap) {
-            results = (Object[])scopeResultsMap.get(scope);
-            if ( results == null) {
-
-                //array elements:resourceResults, env, ttl, actionNames
-                results = new Object[4];
-                scopeResultsMap.put(scope, results);
+        if ( !useCache ) {
+            if (debug.messageEnabled()) {
+                debug.message("ResourceResultCache.getResourceResults():"
+                        + "would contact server since useCache is false");
             }
-
-            if ( !useCache ) {
-                if (debug.messageEnabled()) {
-                    debug.message("ResourceResultCache.getResourceResults():"
-                            + "would contact server since useCache is false");
-                }
-                fetchResultsFromServer = true;
-            } else if (results[0] == null) {
-                if (debug.messageEnabled()) {
-                    debug.message("ResourceResultCache.getResourceResults():"
-                            + "would contact server "
-                            + " since results not in cache");
-                }
-                fetchResultsFromServer = true;
-            } else if ((env == null) && (results[1] != null)) {
-                if (debug.messageEnabled()) {
-                    debug.message("ResourceResultCache.getResourceResults():"
-                            + "would contact server since env does not match");
-                }
-                fetchResultsFromServer = true;
-            } else if ((env != null) && !env.equals(results[1])) { 
-                if (debug.messageEnabled()) {
-                    debug.message("ResourceResultCache.getResourceResults():"
-                            + "would contact server since env does not Match");
-                }
-                fetchResultsFromServer = true;
-            } else if (((Long)results[2]).longValue() 
-                    < System.currentTimeMillis()) {
-                if (debug.messageEnabled()) {
-                    debug.message("ResourceResultCache.getResourceResults():"
-                            + "would contact server since results ttl has "
-                            + " expired");
-                }
-                fetchResultsFromServer = true;
-            } else if ((actionNames == null) && (results[3] != null)) {
-                if (debug.messageEnabled()) {
-                    debug.message("ResourceResultCache.getResourceResults():"
-                            + "would contact server since action names do not "
-                            + " match");
-                }
-                fetchResultsFromServer = true;
-            } else if ((actionNames != null) &&  (results[3] == null)) {
-                if (debug.messageEnabled()) {
-                    debug.message("ResourceResultCache.getResourceResults():"
-                            + "would contact server since action names do not "
-                            + " Match");
-                }
-                fetchResultsFromServer = true;
-            } else if ((results[3] !=null) &&!((Set)results[3]).containsAll(
-                    actionNames))  {
-                if (debug.messageEnabled()) {
-                    debug.message("ResourceResultCache.getResourceResults():"
-                            + "would contact server since cached action names "
-                            + " do not cover request action names");
-                }
-                fetchResultsFromServer = true;
-            } else if (resourceResultsHasAdvices((Set)(results[0]))
-                    && PolicyProperties.SELF.equals(cacheMode)) { 
-                //get from server if there were advices in the cached decision
-                //we do this only if cacheMode is self
-                fetchResultsFromServer = true;
-
+            fetchResultsFromServer = true;
+        } else if (results == null) {
+            if (debug.messageEnabled()) {
+                debug.message("ResourceResultCache.getResourceResults():"
+                        + "would contact server "
+                        + " since results not in cache");
+            }
+            fetchResultsFromServer = true;
+        } else if ((env == null) && (results.env != null)) {
+            if (debug.messageEnabled()) {
+                debug.message("ResourceResultCache.getResourceResults():"
+                        + "would contact server since env does not match");
+            }
+            fetchResultsFromServer = true;
+        } else if ((env != null) && !env.equals(results.env)) { 
+            if (debug.messageEnabled()) {
+                debug.message("ResourceResultCache.getResourceResults():"
+                        + "would contact server since env does not Match");
+            }
+            fetchResultsFromServer = true;
+        } else if (results.expiryTime 
+                < System.currentTimeMillis()) {
+            if (debug.messageEnabled()) {
+                debug.message("ResourceResultCache.getResourceResults():"
+                        + "would contact server since results ttl has "
+                        + " expired");
+            }
+            fetchResultsFromServer = true;
+        } else if ((actionNames == null) && (results.actionNames != null)) {
+            if (debug.messageEnabled()) {
+                debug.message("ResourceResultCache.getResourceResults():"
+                        + "would contact server since action names do not "
+                        + " match");
+            }
+            fetchResultsFromServer = true;
+        } else if ((actionNames != null) &&  (results.actionNames == null)) {
+            if (debug.messageEnabled()) {
+                debug.message("ResourceResultCache.getResourceResults():"
+                        + "would contact server since action names do not "
+                        + " Match");
+            }
+            fetchResultsFromServer = true;
+        } else if ((results.actionNames !=null) &&!(results.actionNames).containsAll(
+                actionNames))  {
+            if (debug.messageEnabled()) {
+                debug.message("ResourceResultCache.getResourceResults():"
+                        + "would contact server since cached action names "
+                        + " do not cover request action names");
             }
+            fetchResultsFromServer = true;
+        } else if (resourceResultsHasAdvices(results.resourceResults)
+                && PolicyProperties.SELF.equals(cacheMode)) { 
+            //get from server if there were advices in the cached decision
+            //we do this only if cacheMode is self
+            fetchResultsFromServer = true;
 
         }
 
         // changed to fix 4205 Policy client code has bottleneck when processing notificati 
-        // FIXME: remove the check for service name with the some fix on server
         if (fetchResultsFromServer) {
-            if(policyProperties.useRESTProtocol() 
-                    && IPLANET_AM_WEB_AGENT_SERVICE.equalsIgnoreCase(serviceName)) {
-                resourceResults = getRESTResultsFromServer(appToken, 
-                        serviceName, token, resourceName, scope, 
-                        actionNames, env);
+            if (useCache) {
+                resourceResults = fetchResultsCoalesced(appToken, serviceName,
+                        token, resourceName, scope, actionNames, env,
+                        scopeResultsMap);
             } else {
-                resourceResults = getResultsFromServer(appToken, 
-                        serviceName, token, resourceName, scope, 
-                        actionNames, env);
-            }
-            results[0] = resourceResults;
-
-            if (env != null) {
-                env = PolicyUtils.cloneMap(env);
+                resourceResults = fetchResults(appToken, serviceName,
+                        token, resourceName, scope, actionNames, env,
+                        scopeResultsMap);
             }
-            results[1] = env;
-
-            results[2] 
-                    = new Long(System.currentTimeMillis() + cacheTtl);
-
-            if (actionNames != null) {
-                Set actionNames1 = actionNames;
-                actionNames = new HashSet();
-                actionNames.addAll(actionNames1);
-            }
-            results[3] = actionNames;
         } else {
             if (debug.messageEnabled()) {
                 debug.message("ResourceResultCache.getResourceResults():"
                         + "would not contact server, "
                         + " would use results from  cache ");
             }
+            resourceResults = results.resourceResults;
         }
 
-
-        resourceResults = (Set)(results[0]);
         if (debug.messageEnabled()) {
             debug.message("ResourceResultCache.getResourceResults("
                     + serviceName + ","
@@ -603,6 +567,181 @@ class ResourceResultCache implements SSOTokenListener {
         return resourceResults;
     }
 
+    /**
+     * Returns the map of scope to cached results for a token, service and
+     * resource, creating it if necessary
+     * @param serviceName service name
+     * @param resourceName resource name
+     * @param tokenID session token ID
+     * @return map of scope to cached results
+     */
+    private Map<String, CachedResults> getScopeResultsMap(String serviceName,
+            String resourceName, String tokenID) {
+        // resourceName -> sessionId -> scope -> result
+        Map resourceTokenIDsMap = resultCache.get(serviceName);
+        if (resourceTokenIDsMap == null) {
+            // changed to fix 4295 Policy cache causes frequent 
+            // full gc or out of memory issues
+            Map newMap = new ConcurrentCache(
+                    policyProperties.getResultsCacheResourceCap());
+            resourceTokenIDsMap = resultCache.putIfAbsent(serviceName, newMap);
+            if (resourceTokenIDsMap == null) {
+                resourceTokenIDsMap = newMap;
+            }
+        }
+
+        // sessionId -> scope -> result
+        Map tokenIDScopesMap = (Map)resourceTokenIDsMap.get(resourceName);
+        if (tokenIDScopesMap == null) {
+            // only creation is synchronized, lookups are lock free
+            synchronized (resourceTokenIDsMap) {
+                tokenIDScopesMap = (Map)resourceTokenIDsMap.get(resourceName);
+                if (tokenIDScopesMap == null) {
+                    tokenIDScopesMap = new ConcurrentCache(
+                            policyProperties.getResultsCacheSessionCap());
+                    resourceTokenIDsMap.put(resourceName, tokenIDScopesMap);
+                }
+            }
+        }
+
+        // scope -> result
+        Map<String, CachedResults> scopeResultsMap
+                = (Map<String, CachedResults>)tokenIDScopesMap.get(tokenID);
+        if (scopeResultsMap == null) {
+            synchronized (tokenIDScopesMap) {
+                scopeResultsMap
+                        = (Map<String, CachedResults>)tokenIDScopesMap.get(tokenID);
+                if (scopeResultsMap == null) {
+                    scopeResultsMap
+                            = new ConcurrentHashMap<String, CachedResults>();
+                    tokenIDScopesMap.put(tokenID, scopeResultsMap);
+                }
+            }
+        }
+        return scopeResultsMap;
+    }
+
+    /**
+     * Gets resource results from the server, sharing the call with any
+     * concurrent request for the same results
+     */
+    private Set fetchResultsCoalesced(final SSOToken appToken,
+            final String serviceName, final SSOToken token,
+            final String resourceName, final String scope,
+            final Set actionNames, final Map env,
+            final Map<String, CachedResults> scopeResultsMap)
+            throws InvalidAppSSOTokenException, 
+            PolicyException, SSOException {
+        FetchKey key = new FetchKey(serviceName, resourceName,
+                token.getTokenID().toString(), scope, actionNames, env);
+        FutureTask<Set> fetch = new FutureTask<Set>(new Callable<Set>() {
+            public Set call() throws Exception {
+                return fetchResults(appToken, serviceName, token, resourceName,
+                        scope, actionNames, env, scopeResultsMap);
+            }
+        });
+
+        FutureTask<Set> inFlight = inFlightFetches.putIfAbsent(key, fetch);
+        if (inFlight == null) {
+            try {
+                fetch.run();
+            } finally {
+                inFlightFetches.remove(key, fetch);
+            }
+            inFlight = fetch;
+        } else if (debug.messageEnabled()) {
+            debug.message("ResourceResultCache.fetchResultsCoalesced():"
+                    + "waiting for results already being fetched from server");
+        }
+
+        try {
+            return inFlight.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new PolicyException(ie);
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof PolicyException) {
+                throw (PolicyException)cause;
+            } else if (cause instanceof SSOException) {
+                throw (SSOException)cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            } else if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new PolicyException(cause);
+        }
+    }
+
+    /**
+     * Gets resource results from the server and caches them, unless cached
+     * results were cleared by a notification while they were being fetched
+     */
+    private Set fetchResults(SSOToken appToken, String serviceName,
+            SSOToken token, String resourceName, String scope,
+            Set actionNames, Map env,
+            Map<String, CachedResults> scopeResultsMap)
+            throws InvalidAppSSOTokenException, 
+            PolicyException, SSOException {
+        long invalidations = invalidationCount.get();
+        Set resourceResults = null;
+        // FIXME: remove the check for service name with the some fix on server
+        if(policyProperties.useRESTProtocol() 
+                && IPLANET_AM_WEB_AGENT_SERVICE.equalsIgnoreCase(serviceName)) {
+            resourceResults = getRESTResultsFromServer(appToken, 
+                    serviceName, token, resourceName, scope, 
+                    actionNames, env);
+        } else {
+            resourceResults = getResultsFromServer(appToken, 
+                    serviceName, token, resourceName, scope, 
+                    actionNames, env);
+        }
+
+        if (env != null) {
+            env = PolicyUtils.cloneMap(env);
+        }
+        if (actionNames != null) {
+            actionNames = new HashSet(actionNames);
+        }
+        CachedResults results = new CachedResults(serviceName, resourceName,
+                token.getTokenID().toString(), scope, resourceResults, env,
+                System.currentTimeMillis() + cacheTtl, actionNames);
+
+        if (invalidationCount.get() == invalidations) {
+            scopeResultsMap.put(scope, results);
+            expiryWheel.schedule(results, results.expiryTime);
+            if (invalidationCount.get() != invalidations) {
+                // cleared while being stored, may be stale
+                scopeResultsMap.remove(scope);
+            }
+        }
+        return resourceResults;
+    }
+
+    /**
+     * Removes cached results whose time to live has passed
+     */
+    private void expireCachedResults() {
+        for (CachedResults expired
+                : expiryWheel.expire(System.currentTimeMillis())) {
+            Map resourceTokenIDsMap = resultCache.get(expired.serviceName);
+            if (resourceTokenIDsMap == null) {
+                continue;
+            }
+            Map tokenIDScopesMap
+                    = (Map)resourceTokenIDsMap.get(expired.resourceName);
+            if (tokenIDScopesMap == null) {
+                continue;
+            }
+            Map scopeResultsMap = (Map)tokenIDScopesMap.get(expired.tokenID);
+            if (scopeResultsMap != null) {
+                // only remove the results if they have not been refreshed
+                ((ConcurrentMap)scopeResultsMap).remove(expired.scope, expired);
+            }
+        }
+    }
+
     private Set getRESTResultsFromServer(SSOToken appToken, String serviceName,
             SSOToken token, String resourceName, String scope, 
             Set actionNames, Map env) 
@@ -1223,40 +1362,29 @@ class ResourceResultCache implements SSOTokenListener {
         }
 
         try {
-            synchronized(resultCache) {
-                Set services = (Set)resultCache.keySet();
-                Iterator serviceIter = services.iterator();
-                while (serviceIter.hasNext()) {
-                    String serviceName = (String)serviceIter.next();
-                    Map resourceTokenIDsMap = (Map)resultCache.get(serviceName);
-                    synchronized(resourceTokenIDsMap) {
-                        Set resources = (Set)resourceTokenIDsMap.keySet();
-                        Iterator resourceIter = resources.iterator();
-                        while (resourceIter.hasNext()) {
-                            String resource = (String)resourceIter.next();
-                            Map tokenIDScopesMap 
-                                    = (Map)resourceTokenIDsMap.get(resource);
-                            if (tokenIDScopesMap != null) {
-                                tokenIDScopesMap.remove(tokenID);
-                            }
-                            
-                            boolean tokenPresent = tokenRegistry.remove(tokenID);
-                            if ( (tokenPresent == false) &&
-                                (debug.messageEnabled()) ) {
-                                debug.message("ResourceResultCache. tokenID= "
-                                    + SECRET_MASK
-                                    + " not found in Token Registry.");
-                            }
-
-                            if (debug.messageEnabled()) {
-                                debug.message("ResourceResultCache."
-                                    + "ssoTokenChanged():"
-                                    + "removing cache results for "
-                                    + "tokenID=" + SECRET_MASK //mask tokenID
-                                    + ":serviceName=" + serviceName 
-                                    + ":resource=" + resource);
-                            }
-                        }
+            boolean tokenPresent = tokenRegistry.remove(tokenID);
+            if ( (tokenPresent == false) &&
+                (debug.messageEnabled()) ) {
+                debug.message("ResourceResultCache. tokenID= "
+                    + SECRET_MASK
+                    + " not found in Token Registry.");
+            }
+
+            for (Map.Entry<String, Map> service : resultCache.entrySet()) {
+                String serviceName = service.getKey();
+                Map resourceTokenIDsMap = service.getValue();
+                Iterator resourceIter = resourceTokenIDsMap.entrySet().iterator();
+                while (resourceIter.hasNext()) {
+                    Map.Entry resourceEntry = (Map.Entry)resourceIter.next();
+                    Map tokenIDScopesMap = (Map)resourceEntry.getValue();
+                    if ((tokenIDScopesMap.remove(tokenID) != null)
+                            && debug.messageEnabled()) {
+                        debug.message("ResourceResultCache."
+                            + "ssoTokenChanged():"
+                            + "removing cache results for "
+                            + "tokenID=" + SECRET_MASK //mask tokenID
+                            + ":serviceName=" + serviceName 
+                            + ":resource=" + resourceEntry.getKey());
                     }
                 }
             }
@@ -1280,6 +1408,9 @@ class ResourceResultCache implements SSOTokenListener {
             return;
         }  
 
+        // results being fetched now may predate the change, do not cache them
+        resourceResultCache.invalidationCount.incrementAndGet();
+
         Map resourceTokenIDsMap 
                 = (Map)(resourceResultCache.resultCache).get(serviceName);
         if ((resourceTokenIDsMap == null)
@@ -1298,18 +1429,32 @@ class ResourceResultCache implements SSOTokenListener {
                         + "clearCacheForResourceNames():"
                         + "affectedResourceName=" + affectedRN);
             }
-            synchronized (resourceTokenIDsMap) {
-                Set cachedResourceNames = resourceTokenIDsMap.keySet();
-                Iterator crIter = cachedResourceNames.iterator();
-                while (crIter.hasNext()) {
-                    String cachedRN = (String)crIter.next();
+            // iterates over a snapshot, removal clears the cached entry
+            Set cachedResourceNames = resourceTokenIDsMap.keySet();
+            Iterator crIter = cachedResourceNames.iterator();
+            while (crIter.hasNext()) {
+                String cachedRN = (String)crIter.next();
+                if (debug.messageEnabled()) {
+                    debug.message("ResourceResultCache."
+                            + "clearCacheForResourceNames():"
+                            + "affectedResourceName=" + affectedRN
+                            + ":cachedResourceName=" + cachedRN);
+                }
+                if (affectedRN.equals(cachedRN)) {
+                    crIter.remove();
                     if (debug.messageEnabled()) {
                         debug.message("ResourceResultCache."
                                 + "clearCacheForResourceNames():"
-                                + "affectedResourceName=" + affectedRN
-                                + ":cachedResourceName=" + cachedRN);
+                                + "cleared cached results for "
+                                + "resourceName=" + cachedRN
+                                + ":affectedResourceName=" + affectedRN
+                                + ":match=SAME RESOURCE NAME");
                     }
-                    if (affectedRN.equals(cachedRN)) {
+                } else {
+                    ResourceMatch rm 
+                            = resourceComparator.compare( cachedRN, 
+                            affectedRN, true); //wildcard compare
+                    if (rm.equals(ResourceMatch.EXACT_MATCH)) {
                         crIter.remove();
                         if (debug.messageEnabled()) {
                             debug.message("ResourceResultCache."
@@ -1317,43 +1462,28 @@ class ResourceResultCache implements SSOTokenListener {
                                     + "cleared cached results for "
                                     + "resourceName=" + cachedRN
                                     + ":affectedResourceName=" + affectedRN
-                                    + ":match=SAME RESOURCE NAME");
+                                    + ":match=EXACT_MATCH");
                         }
-                    } else {
-                        ResourceMatch rm 
-                                = resourceComparator.compare( cachedRN, 
-                                affectedRN, true); //wildcard compare
-                        if (rm.equals(ResourceMatch.EXACT_MATCH)) {
-                            crIter.remove();
-                            if (debug.messageEnabled()) {
-                                debug.message("ResourceResultCache."
-                                        + "clearCacheForResourceNames():"
-                                        + "cleared cached results for "
-                                        + "resourceName=" + cachedRN
-                                        + ":affectedResourceName=" + affectedRN
-                                        + ":match=EXACT_MATCH");
-                            }
-                        } else if (rm.equals(ResourceMatch.WILDCARD_MATCH)) {
-                            crIter.remove();
-                            if (debug.messageEnabled()) {
-                                debug.message("ResourceResultCache."
-                                        + "clearCacheForResourceNames():"
-                                        + "cleared cached results for "
-                                        + "resourceName=" + cachedRN
-                                        + ":affectedResourceName=" + affectedRN
-                                        + ":match=WILD_CARD_MATCH");
-                            }
-                        } else if (rm.equals(
-                                ResourceMatch.SUB_RESOURCE_MATCH)) {
-                            crIter.remove();
-                            if (debug.messageEnabled()) {
-                                debug.message("ResourceResultCache."
-                                        + "clearCacheForResourceNames():"
-                                        + "cleared cached results for "
-                                        + "resourceName=" + cachedRN
-                                        + ":affectedResourceName=" + affectedRN
-                                        + ":match=SUB_RESOURCE_MACTH");
-                            }
+                    } else if (rm.equals(ResourceMatch.WILDCARD_MATCH)) {
+                        crIter.remove();
+                        if (debug.messageEnabled()) {
+                            debug.message("ResourceResultCache."
+                                    + "clearCacheForResourceNames():"
+                                    + "cleared cached results for "
+                                    + "resourceName=" + cachedRN
+                                    + ":affectedResourceName=" + affectedRN
+                                    + ":match=WILD_CARD_MATCH");
+                        }
+                    } else if (rm.equals(
+                            ResourceMatch.SUB_RESOURCE_MATCH)) {
+                        crIter.remove();
+                        if (debug.messageEnabled()) {
+                            debug.message("ResourceResultCache."
+                                    + "clearCacheForResourceNames():"
+                                    + "cleared cached results for "
+                                    + "resourceName=" + cachedRN
+                                    + ":affectedResourceName=" + affectedRN
+                                    + ":match=SUB_RESOURCE_MACTH");
                         }
                     }
                 }
@@ -1558,9 +1688,8 @@ class ResourceResultCache implements SSOTokenListener {
                     + "clearCachedDecisionsForService():"
                     + "serviceName=" + serviceName);
         } 
-        synchronized(resultCache) {
-            resultCache.remove(serviceName);
-        }
+        invalidationCount.incrementAndGet();
+        resultCache.remove(serviceName);
     }
 
     /**
@@ -2414,6 +2543,92 @@ class ResourceResultCache implements SSOTokenListener {
         return (url.substring(0, si));
     }
 
-    
+    /**
+     * Resource results cached for a token, service, resource and scope,
+     * along with the request they were fetched for. Never modified once
+     * cached, so may be read without locking
+     */
+    private static final class CachedResults {
+        private final String serviceName;
+        private final String resourceName;
+        private final String tokenID;
+        private final String scope;
+        private final Set resourceResults;
+        private final Map env;
+        private final long expiryTime;
+        private final Set actionNames;
+
+        private CachedResults(String serviceName, String resourceName,
+                String tokenID, String scope, Set resourceResults, Map env,
+                long expiryTime, Set actionNames) {
+            this.serviceName = serviceName;
+            this.resourceName = resourceName;
+            this.tokenID = tokenID;
+            this.scope = scope;
+            this.resourceResults = resourceResults;
+            this.env = env;
+            this.expiryTime = expiryTime;
+            this.actionNames = actionNames;
+        }
+    }
+
+    /**
+     * Identifies a request for resource results, so that concurrent
+     * identical requests can share a single call to the server
+     */
+    private static final class FetchKey {
+        private final String serviceName;
+        private final String resourceName;
+        private final String tokenID;
+        private final String scope;
+        private final Set actionNames;
+        private final Map env;
+
+        private FetchKey(String serviceName, String resourceName,
+                String tokenID, String scope, Set actionNames, Map env) {
+            this.serviceName = serviceName;
+            this.resourceName = resourceName;
+            this.tokenID = tokenID;
+            this.scope = scope;
+            this.actionNames = actionNames;
+            this.env = env;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof FetchKey)) {
+                return false;
+            }
+            FetchKey other = (FetchKey)o;
+            return equal(serviceName, other.serviceName)
+                    && equal(resourceName, other.resourceName)
+                    && equal(tokenID, other.tokenID)
+                    && equal(scope, other.scope)
+                    && equal(actionNames, other.actionNames)
+                    && equal(env, other.env);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 17;
+            hash = 31 * hash + hash(serviceName);
+            hash = 31 * hash + hash(resourceName);
+            hash = 31 * hash + hash(tokenID);
+            hash = 31 * hash + hash(scope);
+            hash = 31 * hash + hash(actionNames);
+            return 31 * hash + hash(env);
+        }
+
+        private static boolean equal(Object a, Object b) {
+            return (a == null) ? (b == null) : a.equals(b);
+        }
+
+        private static int hash(Object o) {
+            return (o == null) ? 0 : o.hashCode();
+        }
+    }
 }
 
@@ -44,6 +44,8 @@ public class CoreTokenConfig {
     private final boolean tokensEncrypted;
     private final boolean tokensCompressed;
     private final boolean attributeNamesCompressed;
+    private final String tokenCompressionAlgorithm;
+    private final boolean binaryFormat;
 
     /**
      * Create a new default instance of the CoreTokenConfig which will establish the various configuration
@@ -73,6 +75,10 @@ public class CoreTokenConfig {
 
         // Control Attribute Name Compression.
         attributeNamesCompressed = SystemProperties.getAsBoolean(Constants.SESSION_REPOSITORY_ATTRIBUTE_NAME_COMPRESSION);
+        // Control the algorithm used for Token Compression.
+        tokenCompressionAlgorithm = SystemProperties.get(Constants.SESSION_REPOSITORY_COMPRESSION_ALGORITHM);
+        // Control the Binary Token format.
+        binaryFormat = SystemProperties.getAsBoolean(Constants.SESSION_REPOSITORY_BINARY_FORMAT);
 
         // Controls the size of pages requested for CTS Reaper
         cleanupPageSize = 1000;
@@ -179,6 +185,21 @@ public class CoreTokenConfig {
         return attributeNamesCompressed;
     }
 
+    /**
+     * @return The name of the algorithm used to compress tokens, or null for the default.
+     */
+    public String getTokenCompressionAlgorithm() {
+        return tokenCompressionAlgorithm;
+    }
+
+    /**
+     * @return True if Token binary objects should be stored in the binary format rather than as JSON. False by
+     * default, as servers of earlier versions are unable to read the binary format.
+     */
+    public boolean isBinaryFormat() {
+        return binaryFormat;
+    }
+
     /**
      * @return The LDAP Query Page size in Tokens that will be deleted by the CTS Reaper.
      */
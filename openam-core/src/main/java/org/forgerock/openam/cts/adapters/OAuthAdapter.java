@@ -1,5 +1,5 @@
 /**
- * Copyright 2013-2015 ForgeRock AS.
+ * Copyright 2013-2016 ForgeRock AS.
  *
  * The contents of this file are subject to the terms of the Common Development and
  * Distribution License (the License). You may not use this file except in compliance with the
@@ -144,8 +144,7 @@ public class OAuthAdapter implements TokenAdapter<JsonValue> {
          * the object contained within the JsonValue which we know to be a map.
          */
         Object objectToStore = request.getObject();
-        String serialisedObject = serialisation.serialise(objectToStore);
-        blobUtils.setBlobFromString(token, serialisedObject);
+        token.setBlob(serialisation.serialiseToBlob(objectToStore));
 
         return token;
     }
@@ -155,7 +154,7 @@ public class OAuthAdapter implements TokenAdapter<JsonValue> {
     }
 
     /**
-     * Convert from a Token using the serialised JSON blob to generate the JsonValue.
+     * Convert from a Token using the serialised JSON or binary blob to generate the JsonValue.
      *
      * @param token Token to be converted back to its original format.
      * @return Non null JsonValue.
@@ -166,14 +165,14 @@ public class OAuthAdapter implements TokenAdapter<JsonValue> {
         if (token == null){
             return null;
         }
-        String data = blobUtils.getBlobAsString(token);
+        byte[] data = token.getBlob();
         if (data == null) {
             return null;
         }
 
         JsonValue r;
         try {
-            r = new JsonValue(serialisation.deserialise(data, Map.class));
+            r = new JsonValue(serialisation.deserialiseBlob(data, Map.class));
             Set<String> keys = new HashSet<String>(r.keys());
             for (String key : keys){
                 if (r.get(key).isList()) {
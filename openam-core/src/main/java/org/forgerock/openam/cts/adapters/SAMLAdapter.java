@@ -11,7 +11,7 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2013-2015 ForgeRock AS.
+ * Copyright 2013-2016 ForgeRock AS.
  */
 package org.forgerock.openam.cts.adapters;
 
@@ -83,14 +83,13 @@ public class SAMLAdapter implements TokenAdapter<SAMLToken> {
         }
 
         // Binary data
-        String jsonBlob = serialisation.serialise(samlToken.getToken());
-        blobUtils.setBlobFromString(token, jsonBlob);
+        token.setBlob(serialisation.serialiseToBlob(samlToken.getToken()));
 
         return token;
     }
 
     /**
-     * Convert from a Token using deserialsied JSON blob to rebuild the SAMLToken.
+     * Convert from a Token using deserialsied JSON or binary blob to rebuild the SAMLToken.
      *
      * @param token Token to be converted back to its original format.
      * @return Non null SAMLToken.
@@ -114,8 +113,7 @@ public class SAMLAdapter implements TokenAdapter<SAMLToken> {
         }
 
         // Binary Data
-        String jsonBlob = blobUtils.getBlobAsString(token);
-        Object blob = serialisation.deserialise(jsonBlob, c);
+        Object blob = serialisation.deserialiseBlob(token.getBlob(), c);
 
         // Expiry Date
         long expiryTime = TimeUtils.toUnixTime(token.getExpiryTimestamp());
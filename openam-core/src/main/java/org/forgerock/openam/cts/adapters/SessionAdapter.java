@@ -16,6 +16,7 @@
 package org.forgerock.openam.cts.adapters;
 
 import com.iplanet.dpro.session.service.InternalSession;
+import com.iplanet.dpro.session.service.InternalSessionCodec;
 import org.forgerock.openam.cts.CoreTokenConfig;
 import org.forgerock.openam.tokens.TokenType;
 import org.forgerock.openam.cts.api.fields.SessionTokenField;
@@ -27,7 +28,9 @@ import org.forgerock.openam.cts.utils.blob.strategies.AttributeCompressionStrate
 import org.forgerock.openam.utils.TimeUtils;
 
 import javax.inject.Inject;
+import java.io.IOException;
 import java.lang.reflect.Field;
+import java.text.MessageFormat;
 import java.util.Calendar;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
@@ -96,12 +99,18 @@ public class SessionAdapter implements TokenAdapter<InternalSession> {
         token.setAttribute(SessionTokenField.SESSION_ID.getField(), session.getID().toString());
 
         // Binary data
-        String jsonBlob = serialisation.serialise(session);
-        blobUtils.setBlobFromString(token, jsonBlob);
-
-        String latestAccessTime = filterLatestAccessTime(token);
-        if (latestAccessTime != null) {
-            token.setAttribute(SessionTokenField.LATEST_ACCESS_TIME.getField(), latestAccessTime);
+        if (serialisation.isBinaryEnabled()) {
+            token.setBlob(encode(session));
+            token.setAttribute(SessionTokenField.LATEST_ACCESS_TIME.getField(),
+                    String.valueOf(InternalSessionCodec.getLatestAccessTime(session)));
+        } else {
+            String jsonBlob = serialisation.serialise(session);
+            blobUtils.setBlobFromString(token, jsonBlob);
+
+            String latestAccessTime = filterLatestAccessTime(token);
+            if (latestAccessTime != null) {
+                token.setAttribute(SessionTokenField.LATEST_ACCESS_TIME.getField(), latestAccessTime);
+            }
         }
 
         // Session handle
@@ -113,12 +122,48 @@ public class SessionAdapter implements TokenAdapter<InternalSession> {
     /**
      * Convert from a Token to an Internal Session.
      *
-     * Simply deserialise the InternalSession from the JSON blob.
+     * Simply deserialise the InternalSession from the JSON or binary blob.
      *
      * @param token Token to be converted back to its original format.
      * @return Non null InternalSession.
      */
     public InternalSession fromToken(Token token) {
+        InternalSession session;
+        if (InternalSessionCodec.isEncoded(token.getBlob())) {
+            session = decode(token.getBlob(),
+                    token.<String>getValue(SessionTokenField.LATEST_ACCESS_TIME.getField()));
+        } else if (JSONSerialisation.isBinary(token.getBlob())) {
+            session = serialisation.deserialiseBlob(token.getBlob(), InternalSession.class);
+        } else {
+            session = fromJSONBlob(token);
+        }
+        if (session.getSessionHandle() == null) {
+            //Originally the sessionHandle was stored in the serialize token, so if after the deserialization the
+            //sessionHandle field is not set, then we should attempt to retrieve the value directly from the token.
+            session.setSessionHandle(token.<String>getValue(SessionTokenField.SESSION_HANDLE.getField()));
+        }
+
+        return session;
+    }
+
+    private static InternalSession decode(byte[] blob, String latestAccessTime) {
+        try {
+            return InternalSessionCodec.decode(blob, latestAccessTime == null ? 0 : Long.parseLong(latestAccessTime));
+        } catch (IOException | NumberFormatException e) {
+            throw new IllegalStateException("Failed to decode InternalSession", e);
+        }
+    }
+
+    private static byte[] encode(InternalSession session) {
+        try {
+            return InternalSessionCodec.encode(session);
+        } catch (IOException e) {
+            throw new IllegalStateException(
+                    MessageFormat.format("Failed to encode InternalSession:{0}", session), e);
+        }
+    }
+
+    private InternalSession fromJSONBlob(Token token) {
         String jsonBlob = blobUtils.getBlobAsString(token);
         int index = findIndexOfValidField(jsonBlob);
 
@@ -137,14 +182,7 @@ public class SessionAdapter implements TokenAdapter<InternalSession> {
             jsonBlob = jsonBlob.substring(0, index) + addition + jsonBlob.substring(index, jsonBlob.length());
         }
 
-        InternalSession session = serialisation.deserialise(jsonBlob, InternalSession.class);
-        if (session.getSessionHandle() == null) {
-            //Originally the sessionHandle was stored in the serialize token, so if after the deserialization the
-            //sessionHandle field is not set, then we should attempt to retrieve the value directly from the token.
-            session.setSessionHandle(token.<String>getValue(SessionTokenField.SESSION_HANDLE.getField()));
-        }
-
-        return session;
+        return serialisation.deserialise(jsonBlob, InternalSession.class);
     }
 
     /**
@@ -11,7 +11,7 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2013-2015 ForgeRock AS.
+ * Copyright 2013-2016 ForgeRock AS.
  */
 package org.forgerock.openam.cts.api;
 
@@ -136,6 +136,18 @@ public class CoreTokenConstants {
      */
     public static final String CTS_ASYNC_QUEUE_SIZE = "org.forgerock.services.cts.async.queue.size";
 
+    /**
+     * Whether the asynchronous work queues should use the work stealing task executor instead of one fixed queue
+     * per task processor.
+     */
+    public static final String CTS_ASYNC_WORK_STEALING = "org.forgerock.services.cts.async.workstealing.enabled";
+
+    /**
+     * The maximum number of queued tasks a task processor will perform on its connection before it allows other
+     * work to be picked up. Only used by the work stealing task executor.
+     */
+    public static final String CTS_ASYNC_BATCH_SIZE = "org.forgerock.services.cts.async.batch.size";
+
     /**
      * Where to broadcast session logout/destroy to.
      */
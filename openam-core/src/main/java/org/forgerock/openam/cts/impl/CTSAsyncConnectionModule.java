@@ -11,7 +11,7 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2015 ForgeRock AS.
+ * Copyright 2015-2016 ForgeRock AS.
  */
 
 package org.forgerock.openam.cts.impl;
@@ -28,6 +28,7 @@ import org.forgerock.openam.sm.datalayer.api.ConnectionFactory;
 import org.forgerock.openam.sm.datalayer.api.QueueConfiguration;
 import org.forgerock.openam.sm.datalayer.impl.SeriesTaskExecutor;
 import org.forgerock.openam.sm.datalayer.impl.SeriesTaskExecutorThreadFactory;
+import org.forgerock.openam.sm.datalayer.impl.WorkStealingTaskExecutor;
 import org.forgerock.openam.sm.datalayer.providers.DataLayerConnectionFactoryCache;
 
 import com.google.inject.Key;
@@ -38,7 +39,8 @@ import com.google.inject.name.Names;
 public class CTSAsyncConnectionModule extends CTSConnectionModule {
 
     public CTSAsyncConnectionModule() {
-        super(SeriesTaskExecutor.class, true);
+        super(CTSQueueConfiguration.isWorkStealingEnabled()
+                ? WorkStealingTaskExecutor.class : SeriesTaskExecutor.class, true);
     }
 
     @Override
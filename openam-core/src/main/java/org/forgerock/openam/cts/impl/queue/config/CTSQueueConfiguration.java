@@ -11,7 +11,7 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2014-2015 ForgeRock AS.
+ * Copyright 2014-2016 ForgeRock AS.
  */
 package org.forgerock.openam.cts.impl.queue.config;
 
@@ -41,6 +41,7 @@ import org.forgerock.openam.sm.exceptions.InvalidConfigurationException;
 public class CTSQueueConfiguration implements QueueConfiguration {
     public static final int DEFAULT_TIMEOUT = 120;
     public static final int DEFAULT_QUEUE_SIZE = 5000;
+    public static final int DEFAULT_BATCH_SIZE = 16;
 
     private final ConnectionConfigFactory dataLayerConfig;
     private final Debug debug;
@@ -84,6 +85,30 @@ public class CTSQueueConfiguration implements QueueConfiguration {
         return queueSize;
     }
 
+    /**
+     * The maximum number of tasks a task processor will take from one group of tokens and perform on its connection
+     * in one go.
+     *
+     * @return A positive batch size. Default is {@link #DEFAULT_BATCH_SIZE}.
+     */
+    public int getBatchSize() {
+        int batchSize = SystemProperties.getAsInt(CoreTokenConstants.CTS_ASYNC_BATCH_SIZE, DEFAULT_BATCH_SIZE);
+        if (batchSize <= 0) {
+            debug("Batch size {0} was invalid, using default {1}", batchSize, DEFAULT_BATCH_SIZE);
+            return DEFAULT_BATCH_SIZE;
+        }
+        return batchSize;
+    }
+
+    /**
+     * Whether the work stealing task executor should be used for the asynchronous CTS connection.
+     *
+     * @return True if {@link CoreTokenConstants#CTS_ASYNC_WORK_STEALING} is enabled. Default is false.
+     */
+    public static boolean isWorkStealingEnabled() {
+        return SystemProperties.getAsBoolean(CoreTokenConstants.CTS_ASYNC_WORK_STEALING, false);
+    }
+
     @Override
     public int getProcessors() throws DataLayerException {
         try {
@@ -0,0 +1,61 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.cts.monitoring;
+
+/**
+ * A data structure for storing monitoring information about the CTS asynchronous work queues.
+ * <br/>
+ * Queue depths and wait times are recorded into histograms with power of two buckets: bucket zero counts
+ * samples of zero, and bucket {@code i} counts samples in the range {@code [2^(i-1), 2^i)}.
+ */
+public interface CTSQueueMonitoringStore {
+
+    /**
+     * Records the total number of tasks waiting in the work queues, sampled as a task is queued.
+     *
+     * @param depth The number of queued tasks, including the one just added.
+     */
+    void addQueueDepth(int depth);
+
+    /**
+     * Records how long a task waited in a work queue before a worker picked it up.
+     *
+     * @param waitTime The wait time in milliseconds.
+     */
+    void addQueueWaitTime(long waitTime);
+
+    /**
+     * Gets the histogram of sampled queue depths.
+     *
+     * @return A snapshot of the bucket counts.
+     */
+    long[] getQueueDepthHistogram();
+
+    /**
+     * Gets the histogram of queue wait times in milliseconds.
+     *
+     * @return A snapshot of the bucket counts.
+     */
+    long[] getQueueWaitTimeHistogram();
+
+    /**
+     * Gets the average time in milliseconds a task waited in a work queue.
+     *
+     * @return The average wait time, or zero if no tasks have been recorded.
+     */
+    double getAverageQueueWaitTime();
+}
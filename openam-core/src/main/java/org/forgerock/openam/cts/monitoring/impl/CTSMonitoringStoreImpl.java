@@ -11,7 +11,7 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2013-2015 ForgeRock AS.
+ * Copyright 2013-2016 ForgeRock AS.
  */
 
 package org.forgerock.openam.cts.monitoring.impl;
@@ -23,9 +23,11 @@ import org.forgerock.openam.tokens.TokenType;
 import org.forgerock.openam.cts.api.tokens.Token;
 import org.forgerock.openam.cts.monitoring.CTSConnectionMonitoringStore;
 import org.forgerock.openam.cts.monitoring.CTSOperationsMonitoringStore;
+import org.forgerock.openam.cts.monitoring.CTSQueueMonitoringStore;
 import org.forgerock.openam.cts.monitoring.CTSReaperMonitoringStore;
 import org.forgerock.openam.cts.monitoring.impl.connections.ConnectionStore;
 import org.forgerock.openam.cts.monitoring.impl.operations.TokenOperationsStore;
+import org.forgerock.openam.cts.monitoring.impl.queue.TaskQueueStore;
 import org.forgerock.openam.cts.monitoring.impl.reaper.ReaperMonitor;
 
 import javax.inject.Inject;
@@ -43,7 +45,7 @@ import java.util.concurrent.RejectedExecutionException;
  */
 @Singleton
 public class CTSMonitoringStoreImpl implements CTSOperationsMonitoringStore, CTSReaperMonitoringStore,
-        CTSConnectionMonitoringStore {
+        CTSConnectionMonitoringStore, CTSQueueMonitoringStore {
 
     /**
      * Constant for binding an Executor for the CTS monitoring store to store CTS runtime data.
@@ -56,6 +58,7 @@ public class CTSMonitoringStoreImpl implements CTSOperationsMonitoringStore, CTS
     private final ExecutorService executorService;
     private final ReaperMonitor reaperMonitor;
     private final ConnectionStore connectionStore;
+    private final TaskQueueStore taskQueueStore;
 
     /**
      * Constructs an instance of the CTSMonitoringStoreImpl.
@@ -64,18 +67,22 @@ public class CTSMonitoringStoreImpl implements CTSOperationsMonitoringStore, CTS
      * @param executorService An instance of an ExecutorService.
      * @param tokenOperationsStore An instance of the TokenOperationsStore.
      * @param reaperMonitor An instance of the ReaperMonitor.
+     * @param connectionStore An instance of the ConnectionStore.
+     * @param taskQueueStore An instance of the TaskQueueStore.
      */
     @Inject
     public CTSMonitoringStoreImpl(@Named(EXECUTOR_BINDING_NAME) final ExecutorService executorService,
                                   final TokenOperationsStore tokenOperationsStore,
                                   final ReaperMonitor reaperMonitor,
                                   final ConnectionStore connectionStore,
+                                  final TaskQueueStore taskQueueStore,
                                   @Named(CoreTokenConstants.CTS_DEBUG) final Debug debug) {
         this.debug = debug;
         this.executorService = executorService;
         this.tokenOperationsStore = tokenOperationsStore;
         this.reaperMonitor = reaperMonitor;
         this.connectionStore = connectionStore;
+        this.taskQueueStore = taskQueueStore;
     }
 
     /**
@@ -230,4 +237,29 @@ public class CTSMonitoringStoreImpl implements CTSOperationsMonitoringStore, CTS
     public double getConnectionsCumulativeCount(boolean success) {
         return connectionStore.getConnectionsCumulativeCount(success);
     }
+
+    @Override
+    public void addQueueDepth(int depth) {
+        taskQueueStore.addQueueDepth(depth);
+    }
+
+    @Override
+    public void addQueueWaitTime(long waitTime) {
+        taskQueueStore.addQueueWaitTime(waitTime);
+    }
+
+    @Override
+    public long[] getQueueDepthHistogram() {
+        return taskQueueStore.getQueueDepthHistogram();
+    }
+
+    @Override
+    public long[] getQueueWaitTimeHistogram() {
+        return taskQueueStore.getQueueWaitTimeHistogram();
+    }
+
+    @Override
+    public double getAverageQueueWaitTime() {
+        return taskQueueStore.getAverageQueueWaitTime();
+    }
 }
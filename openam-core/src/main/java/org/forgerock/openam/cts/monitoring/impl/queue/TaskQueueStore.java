@@ -0,0 +1,126 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.cts.monitoring.impl.queue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.forgerock.openam.shared.monitoring.LatencyHistogram;
+import org.forgerock.openam.shared.monitoring.MetricsRegistry;
+
+/**
+ * Stores queue depth and wait time histograms for the CTS asynchronous work queues.
+ * <br/>
+ * Each histogram uses one atomic counter per power of two bucket, so recording a sample is a constant time,
+ * lock free operation regardless of how many samples have been recorded. Wait times are also recorded in a latency
+ * histogram of the {@link MetricsRegistry}, from which percentiles can be read.
+ *
+ * @see org.forgerock.openam.cts.monitoring.CTSQueueMonitoringStore
+ */
+@Singleton
+public class TaskQueueStore {
+
+    /**
+     * Number of buckets in each histogram, enough for any non-negative long value.
+     */
+    public static final int BUCKETS = 64;
+
+    private final AtomicLongArray depths = new AtomicLongArray(BUCKETS);
+    private final AtomicLongArray waitTimes = new AtomicLongArray(BUCKETS);
+    private final AtomicLong waitTimeCount = new AtomicLong();
+    private final AtomicLong waitTimeTotal = new AtomicLong();
+    private final LatencyHistogram waitTimeLatency;
+
+    /**
+     * Constructs a new store.
+     *
+     * @param metricsRegistry The registry for the wait time latency histogram.
+     */
+    @Inject
+    public TaskQueueStore(MetricsRegistry metricsRegistry) {
+        this.waitTimeLatency = metricsRegistry.latency("openam_cts_queue_wait_seconds",
+                "Time CTS tasks wait in the queue before being run", TimeUnit.MILLISECONDS).labels();
+    }
+
+    /**
+     * Records a sampled queue depth.
+     *
+     * @param depth Non negative number of queued tasks.
+     */
+    public void addQueueDepth(int depth) {
+        depths.incrementAndGet(bucket(depth));
+    }
+
+    /**
+     * Records a queue wait time.
+     *
+     * @param waitTime Non negative wait time in milliseconds.
+     */
+    public void addQueueWaitTime(long waitTime) {
+        waitTimes.incrementAndGet(bucket(waitTime));
+        waitTimeCount.incrementAndGet();
+        waitTimeTotal.addAndGet(waitTime);
+        waitTimeLatency.record(waitTime);
+    }
+
+    /**
+     * @return A snapshot of the queue depth bucket counts.
+     */
+    public long[] getQueueDepthHistogram() {
+        return snapshot(depths);
+    }
+
+    /**
+     * @return A snapshot of the queue wait time bucket counts.
+     */
+    public long[] getQueueWaitTimeHistogram() {
+        return snapshot(waitTimes);
+    }
+
+    /**
+     * @return The average queue wait time in milliseconds, zero if nothing has been recorded.
+     */
+    public double getAverageQueueWaitTime() {
+        long count = waitTimeCount.get();
+        return count == 0 ? 0 : (double) waitTimeTotal.get() / count;
+    }
+
+    /**
+     * Determines the histogram bucket for the given value.
+     *
+     * @param value The sample value, negative values are treated as zero.
+     * @return The bucket index, zero for zero and {@code floor(log2(value)) + 1} otherwise.
+     */
+    static int bucket(long value) {
+        if (value <= 0) {
+            return 0;
+        }
+        return Long.SIZE - Long.numberOfLeadingZeros(value);
+    }
+
+    private static long[] snapshot(AtomicLongArray buckets) {
+        long[] result = new long[buckets.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = buckets.get(i);
+        }
+        return result;
+    }
+}
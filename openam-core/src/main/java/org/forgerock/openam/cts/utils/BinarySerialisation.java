@@ -0,0 +1,408 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.cts.utils;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+/**
+ * Versioned binary format for objects stored in the Core Token Service.
+ * <p>
+ * Objects are serialised by the same {@link ObjectMapper} as the JSON format, so any type the CTS can store as JSON
+ * can be stored in this format, but the resulting tokens are written as tagged binary values rather than as text.
+ * Each field name is written once per blob and then referred to by its index, which makes the separate attribute
+ * name compression unnecessary, and numbers are written as variable length integers.
+ * <p>
+ * Every blob starts with a header that holds a version, so that blobs in this format can be told apart from JSON
+ * text and from each other. Version 2 is the field level format of
+ * {@link com.iplanet.dpro.session.service.InternalSessionCodec}, which sessions are stored in instead.
+ *
+ * @since 14.0.0
+ */
+final class BinarySerialisation {
+
+    /** The version of the format that is written. */
+    static final byte VERSION = 1;
+
+    private static final byte[] HEADER = {0, 'C', 'T', 'S'};
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int TAG_START_OBJECT = 1;
+    private static final int TAG_END_OBJECT = 2;
+    private static final int TAG_START_ARRAY = 3;
+    private static final int TAG_END_ARRAY = 4;
+    private static final int TAG_NEW_FIELD_NAME = 5;
+    private static final int TAG_FIELD_NAME = 6;
+    private static final int TAG_STRING = 7;
+    private static final int TAG_INT = 8;
+    private static final int TAG_LONG = 9;
+    private static final int TAG_BIG_INTEGER = 10;
+    private static final int TAG_FLOAT = 11;
+    private static final int TAG_DOUBLE = 12;
+    private static final int TAG_BIG_DECIMAL = 13;
+    private static final int TAG_TRUE = 14;
+    private static final int TAG_FALSE = 15;
+    private static final int TAG_NULL = 16;
+    private static final int TAG_BINARY = 17;
+
+    private final ObjectMapper mapper;
+
+    BinarySerialisation(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    /**
+     * Determines whether a blob is in this format, of any version.
+     *
+     * @param blob The blob, may be null.
+     * @return True if the blob starts with the header of this format.
+     */
+    static boolean isBinary(byte[] blob) {
+        if (blob == null || blob.length <= HEADER.length) {
+            return false;
+        }
+        for (int i = 0; i < HEADER.length; i++) {
+            if (blob[i] != HEADER[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Serialise an object to this format.
+     *
+     * @param object Non null object to serialise.
+     * @return Non null blob.
+     * @throws IOException If the object could not be serialised.
+     */
+    byte[] serialise(Object object) throws IOException {
+        TokenBuffer buffer = new TokenBuffer(mapper, false);
+        mapper.writeValue(buffer, object);
+        Output out = new Output();
+        out.write(HEADER);
+        out.write(VERSION);
+        Map<String, Integer> names = new HashMap<>();
+        JsonParser parser = buffer.asParser();
+        JsonToken token;
+        while ((token = parser.nextToken()) != null) {
+            switch (token) {
+                case START_OBJECT:
+                    out.write(TAG_START_OBJECT);
+                    break;
+                case END_OBJECT:
+                    out.write(TAG_END_OBJECT);
+                    break;
+                case START_ARRAY:
+                    out.write(TAG_START_ARRAY);
+                    break;
+                case END_ARRAY:
+                    out.write(TAG_END_ARRAY);
+                    break;
+                case FIELD_NAME:
+                    String name = parser.getCurrentName();
+                    Integer index = names.get(name);
+                    if (index == null) {
+                        names.put(name, names.size());
+                        out.write(TAG_NEW_FIELD_NAME);
+                        out.writeString(name);
+                    } else {
+                        out.write(TAG_FIELD_NAME);
+                        out.writeVarLong(index);
+                    }
+                    break;
+                case VALUE_STRING:
+                    out.write(TAG_STRING);
+                    out.writeString(parser.getText());
+                    break;
+                case VALUE_NUMBER_INT:
+                    writeInteger(out, parser);
+                    break;
+                case VALUE_NUMBER_FLOAT:
+                    writeDecimal(out, parser);
+                    break;
+                case VALUE_TRUE:
+                    out.write(TAG_TRUE);
+                    break;
+                case VALUE_FALSE:
+                    out.write(TAG_FALSE);
+                    break;
+                case VALUE_NULL:
+                    out.write(TAG_NULL);
+                    break;
+                case VALUE_EMBEDDED_OBJECT:
+                    Object embedded = parser.getEmbeddedObject();
+                    if (!(embedded instanceof byte[])) {
+                        throw new IOException("Cannot serialise embedded " + embedded);
+                    }
+                    out.write(TAG_BINARY);
+                    out.writeBytes((byte[]) embedded);
+                    break;
+                default:
+                    throw new IOException("Cannot serialise " + token);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private void writeInteger(Output out, JsonParser parser) throws IOException {
+        switch (parser.getNumberType()) {
+            case INT:
+                out.write(TAG_INT);
+                out.writeVarLong(parser.getIntValue());
+                break;
+            case LONG:
+                out.write(TAG_LONG);
+                out.writeVarLong(parser.getLongValue());
+                break;
+            default:
+                out.write(TAG_BIG_INTEGER);
+                out.writeString(parser.getBigIntegerValue().toString());
+        }
+    }
+
+    private void writeDecimal(Output out, JsonParser parser) throws IOException {
+        switch (parser.getNumberType()) {
+            case FLOAT:
+                out.write(TAG_FLOAT);
+                out.writeVarLong(Float.floatToIntBits(parser.getFloatValue()));
+                break;
+            case DOUBLE:
+                out.write(TAG_DOUBLE);
+                out.writeLong(Double.doubleToLongBits(parser.getDoubleValue()));
+                break;
+            default:
+                out.write(TAG_BIG_DECIMAL);
+                out.writeString(parser.getDecimalValue().toString());
+        }
+    }
+
+    /**
+     * Deserialise a blob in this format to an object of type T.
+     *
+     * @param blob Non null blob in this format.
+     * @param clazz Class of the object stored in the blob.
+     * @param <T> Type of the object to return.
+     * @return Non null object of type T.
+     * @throws IOException If the blob is not of a supported version or could not be deserialised.
+     */
+    <T> T deserialise(byte[] blob, Class<T> clazz) throws IOException {
+        if (!isBinary(blob) || blob[HEADER.length] != VERSION) {
+            throw new IOException("Unsupported binary format");
+        }
+        Input in = new Input(blob, HEADER.length + 1);
+        TokenBuffer buffer = new TokenBuffer(mapper, false);
+        List<String> names = new ArrayList<>();
+        while (in.hasMore()) {
+            int tag = in.read();
+            switch (tag) {
+                case TAG_START_OBJECT:
+                    buffer.writeStartObject();
+                    break;
+                case TAG_END_OBJECT:
+                    buffer.writeEndObject();
+                    break;
+                case TAG_START_ARRAY:
+                    buffer.writeStartArray();
+                    break;
+                case TAG_END_ARRAY:
+                    buffer.writeEndArray();
+                    break;
+                case TAG_NEW_FIELD_NAME:
+                    String name = in.readString();
+                    names.add(name);
+                    buffer.writeFieldName(name);
+                    break;
+                case TAG_FIELD_NAME:
+                    int index = (int) in.readVarLong();
+                    if (index < 0 || index >= names.size()) {
+                        throw new IOException("Invalid field name reference " + index);
+                    }
+                    buffer.writeFieldName(names.get(index));
+                    break;
+                case TAG_STRING:
+                    buffer.writeString(in.readString());
+                    break;
+                case TAG_INT:
+                    buffer.writeNumber((int) in.readVarLong());
+                    break;
+                case TAG_LONG:
+                    buffer.writeNumber(in.readVarLong());
+                    break;
+                case TAG_BIG_INTEGER:
+                    buffer.writeNumber(new BigInteger(in.readString()));
+                    break;
+                case TAG_FLOAT:
+                    buffer.writeNumber(Float.intBitsToFloat((int) in.readVarLong()));
+                    break;
+                case TAG_DOUBLE:
+                    buffer.writeNumber(Double.longBitsToDouble(in.readLong()));
+                    break;
+                case TAG_BIG_DECIMAL:
+                    buffer.writeNumber(new BigDecimal(in.readString()));
+                    break;
+                case TAG_TRUE:
+                    buffer.writeBoolean(true);
+                    break;
+                case TAG_FALSE:
+                    buffer.writeBoolean(false);
+                    break;
+                case TAG_NULL:
+                    buffer.writeNull();
+                    break;
+                case TAG_BINARY:
+                    buffer.writeBinary(in.readBytes());
+                    break;
+                default:
+                    throw new IOException("Invalid tag " + tag);
+            }
+        }
+        return mapper.readValue(buffer.asParser(), clazz);
+    }
+
+    /**
+     * Growable output buffer.
+     */
+    private static final class Output {
+        private byte[] bytes = new byte[512];
+        private int length;
+
+        void write(int b) {
+            ensureCapacity(1);
+            bytes[length++] = (byte) b;
+        }
+
+        void write(byte[] b) {
+            ensureCapacity(b.length);
+            System.arraycopy(b, 0, bytes, length, b.length);
+            length += b.length;
+        }
+
+        /** Writes a value as a zig-zag encoded variable length integer, so that small values take few bytes. */
+        void writeVarLong(long value) {
+            long v = (value << 1) ^ (value >> 63);
+            ensureCapacity(10);
+            while ((v & ~0x7FL) != 0) {
+                bytes[length++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            bytes[length++] = (byte) v;
+        }
+
+        void writeLong(long value) {
+            ensureCapacity(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                bytes[length++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeBytes(byte[] b) {
+            writeVarLong(b.length);
+            write(b);
+        }
+
+        void writeString(String value) {
+            writeBytes(value.getBytes(UTF_8));
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, length);
+        }
+
+        private void ensureCapacity(int extra) {
+            if (length + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+            }
+        }
+    }
+
+    /**
+     * Reader over a blob which fails on truncated input.
+     */
+    private static final class Input {
+        private final byte[] bytes;
+        private int position;
+
+        Input(byte[] bytes, int position) {
+            this.bytes = bytes;
+            this.position = position;
+        }
+
+        boolean hasMore() {
+            return position < bytes.length;
+        }
+
+        int read() throws IOException {
+            if (position >= bytes.length) {
+                throw new IOException("Truncated binary blob");
+            }
+            return bytes[position++] & 0xFF;
+        }
+
+        long readVarLong() throws IOException {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = read();
+                v |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return (v >>> 1) ^ -(v & 1);
+                }
+            }
+            throw new IOException("Invalid variable length integer");
+        }
+
+        long readLong() throws IOException {
+            long v = 0;
+            for (int i = 0; i < 8; i++) {
+                v = (v << 8) | read();
+            }
+            return v;
+        }
+
+        byte[] readBytes() throws IOException {
+            long length = readVarLong();
+            if (length < 0 || length > bytes.length - position) {
+                throw new IOException("Truncated binary blob");
+            }
+            byte[] b = Arrays.copyOfRange(bytes, position, position + (int) length);
+            position += (int) length;
+            return b;
+        }
+
+        String readString() throws IOException {
+            long length = readVarLong();
+            if (length < 0 || length > bytes.length - position) {
+                throw new IOException("Truncated binary blob");
+            }
+            String s = new String(bytes, position, (int) length, UTF_8);
+            position += (int) length;
+            return s;
+        }
+    }
+}
@@ -11,17 +11,20 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2013-2015 ForgeRock AS.
+ * Copyright 2013-2016 ForgeRock AS.
  */
 package org.forgerock.openam.cts.utils;
 
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 import java.text.MessageFormat;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 
+import org.forgerock.openam.cts.CoreTokenConfig;
 import org.forgerock.openam.cts.api.CoreTokenConstants;
+import org.forgerock.openam.cts.utils.blob.TokenBlobUtils;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -43,16 +46,40 @@ import com.fasterxml.jackson.databind.ObjectMapper;
  * String, Integer, Map or a List. Based on this I cannot recommend this class as a general purpose Object to JSON
  * serialisation class, unless the caller makes extra effort to ensure that their objects are being
  * serialised following the above guidelines.
+ *
+ * Token blobs may also be stored in a versioned binary format, which is built from
+ * the same Jackson serialisation. Blobs in either format can always be read.
  */
 public class JSONSerialisation {
     private final ObjectMapper mapper;
+    private final BinarySerialisation binary;
+    private final boolean binaryEnabled;
+
+    /**
+     * New instance of the JSONSerialsation which stores blobs as JSON.
+     *
+     * @param mapper Non null mapper to serialise with.
+     */
+    public JSONSerialisation(ObjectMapper mapper) {
+        this(mapper, false);
+    }
 
     /**
-     * New default instance of the JSONSerialsation.
+     * New default instance of the JSONSerialsation, which stores blobs in the binary format if the
+     * configuration enables it.
+     *
+     * @param mapper Non null mapper to serialise with.
+     * @param config Non null configuration of the Core Token Service.
      */
     @Inject
-    public JSONSerialisation(@Named(CoreTokenConstants.OBJECT_MAPPER) ObjectMapper mapper) {
+    public JSONSerialisation(@Named(CoreTokenConstants.OBJECT_MAPPER) ObjectMapper mapper, CoreTokenConfig config) {
+        this(mapper, config.isBinaryFormat());
+    }
+
+    private JSONSerialisation(ObjectMapper mapper, boolean binaryEnabled) {
         this.mapper = mapper;
+        this.binary = new BinarySerialisation(mapper);
+        this.binaryEnabled = binaryEnabled;
     }
 
     /**
@@ -97,6 +124,86 @@ public class JSONSerialisation {
         }
     }
 
+    /**
+     * @return True if blobs are stored in the binary format rather than as JSON text.
+     */
+    public boolean isBinaryEnabled() {
+        return binaryEnabled;
+    }
+
+    /**
+     * Serialise an object to a Token blob, in the binary format if it is enabled and as JSON text otherwise.
+     *
+     * @param <T> The generic type of the passed in object.
+     * @param object Non null object to serialise.
+     * @return Non null blob.
+     */
+    public <T> byte[] serialiseToBlob(T object) {
+        if (!binaryEnabled) {
+            return toBytes(serialise(object));
+        }
+        try {
+            return binary.serialise(object);
+        } catch (IOException e) {
+            throw new IllegalStateException(
+                    MessageFormat.format(
+                            "Failed to serialise {0}:{1}",
+                            object.getClass().getSimpleName(),
+                            object),
+                    e);
+        }
+    }
+
+    /**
+     * Deserialise a Token blob to an object of type T. The blob may be in either the binary format or JSON text,
+     * whether or not the binary format is enabled.
+     *
+     * @param blob Non null blob to deserialise.
+     * @param clazz Class which contains the type of the value stored in the blob, required for deserialsiation.
+     * @param <T> Type to cast the created object to when deserialising.
+     * @return Non null object of type T.
+     */
+    public <T> T deserialiseBlob(byte[] blob, Class<T> clazz) {
+        if (!isBinary(blob)) {
+            return deserialise(toString(blob), clazz);
+        }
+        try {
+            return binary.deserialise(blob, clazz);
+        } catch (IOException e) {
+            throw new IllegalStateException(
+                    MessageFormat.format(
+                            "Failed to deserailise {0}",
+                            clazz.getSimpleName()),
+                    e);
+        }
+    }
+
+    /**
+     * Determines whether a Token blob is in the binary format rather than JSON text.
+     *
+     * @param blob The blob, may be null.
+     * @return True if the blob is in the binary format.
+     */
+    public static boolean isBinary(byte[] blob) {
+        return BinarySerialisation.isBinary(blob);
+    }
+
+    private static byte[] toBytes(String text) {
+        try {
+            return text.getBytes(TokenBlobUtils.ENCODING);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("Failed to encode blob to " + TokenBlobUtils.ENCODING, e);
+        }
+    }
+
+    private static String toString(byte[] blob) {
+        try {
+            return new String(blob, TokenBlobUtils.ENCODING);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("Failed to decode blob from " + TokenBlobUtils.ENCODING, e);
+        }
+    }
+
     /**
      * Wrap the attribute name in quotes and a colon to make it look like a JSON attribute.
      *
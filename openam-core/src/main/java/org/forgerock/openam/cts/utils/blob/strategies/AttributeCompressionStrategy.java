@@ -11,7 +11,7 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2013-2014 ForgeRock AS.
+ * Copyright 2013-2016 ForgeRock AS.
  */
 package org.forgerock.openam.cts.utils.blob.strategies;
 
@@ -99,7 +99,7 @@ public class AttributeCompressionStrategy implements BlobStrategy {
      */
     @SuppressWarnings("unchecked")
     private boolean isTokenValidForCompression(byte[] blob) {
-        if (blob == null) {
+        if (blob == null || JSONSerialisation.isBinary(blob)) {
             return false;
         }
 
@@ -11,26 +11,102 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2013-2014 ForgeRock AS.
+ * Copyright 2013-2016 ForgeRock AS.
  */
 package org.forgerock.openam.cts.utils.blob.strategies;
 
 import org.apache.commons.io.IOUtils;
+import org.forgerock.openam.cts.CoreTokenConfig;
 import org.forgerock.openam.cts.utils.blob.BlobStrategy;
 import org.forgerock.openam.cts.utils.blob.TokenStrategyFailedException;
 import org.forgerock.util.Reject;
 
+import javax.inject.Inject;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
 
 /**
- * Responsible for compressing the binary object of Tokens using a GZip compression.
+ * Responsible for compressing the binary object of Tokens using either GZip compression or Deflate compression.
+ * <p>
+ * Deflate compressed Tokens start with a header that marks the algorithm and holds the uncompressed length, and
+ * are compressed with {@link Deflater}s and {@link Inflater}s from a pool rather than with new streams each time.
+ * Tokens compressed with either algorithm are decompressed, whichever algorithm is used for compression, so that
+ * servers configured with different algorithms can read each other's Tokens.
  */
 public class CompressionStrategy implements BlobStrategy {
 
+    /**
+     * The supported compression algorithms.
+     */
+    public enum Algorithm {
+        /** GZip compression, which all versions are able to decompress. */
+        GZIP,
+        /** Deflate compression with pooled compressors, which earlier versions are unable to decompress. */
+        DEFLATE;
+
+        /**
+         * Finds an algorithm by name, ignoring case.
+         *
+         * @param name The name of the algorithm, may be null.
+         * @return The named algorithm, or GZIP if the name is null or unknown.
+         */
+        public static Algorithm fromName(String name) {
+            for (Algorithm algorithm : values()) {
+                if (algorithm.name().equalsIgnoreCase(name)) {
+                    return algorithm;
+                }
+            }
+            return GZIP;
+        }
+    }
+
+    private static final byte[] DEFLATE_HEADER = {0, 'C', 'T', 'Z', 1};
+    private static final int DEFLATE_PREFIX_LENGTH = DEFLATE_HEADER.length + 4;
+    /** Deflate cannot compress by more than this factor, so longer lengths are corrupt. */
+    private static final long MAX_DEFLATE_RATIO = 1032;
+    private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+
+    private static final BlockingQueue<Deflater> DEFLATERS = new ArrayBlockingQueue<Deflater>(POOL_SIZE);
+    private static final BlockingQueue<Inflater> INFLATERS = new ArrayBlockingQueue<Inflater>(POOL_SIZE);
+
+    private final Algorithm algorithm;
+
+    /**
+     * Creates a strategy that compresses with GZip.
+     */
+    public CompressionStrategy() {
+        this(Algorithm.GZIP);
+    }
+
+    /**
+     * Creates a strategy that compresses with the algorithm of the configuration.
+     *
+     * @param config Non null Core Token Service configuration.
+     */
+    @Inject
+    public CompressionStrategy(CoreTokenConfig config) {
+        this(Algorithm.fromName(config.getTokenCompressionAlgorithm()));
+    }
+
+    /**
+     * Creates a strategy that compresses with the given algorithm.
+     *
+     * @param algorithm Non null compression algorithm.
+     */
+    public CompressionStrategy(Algorithm algorithm) {
+        Reject.ifNull(algorithm);
+        this.algorithm = algorithm;
+    }
+
     /**
      * Compress the Tokens binary object.
      *
@@ -41,6 +117,9 @@ public class CompressionStrategy implements BlobStrategy {
     @Override
     public byte[] perform(byte[] blob) throws TokenStrategyFailedException {
         Reject.ifNull(blob);
+        if (algorithm == Algorithm.DEFLATE) {
+            return deflate(blob);
+        }
         final ByteArrayOutputStream bout = new ByteArrayOutputStream(blob.length);
         try {
             final GZIPOutputStream out = new GZIPOutputStream(bout);
@@ -63,6 +142,9 @@ public class CompressionStrategy implements BlobStrategy {
     @Override
     public byte[] reverse(byte[] blob) throws TokenStrategyFailedException {
         Reject.ifNull(blob);
+        if (isDeflated(blob)) {
+            return inflate(blob);
+        }
         final int lengthGuess = blob.length * 2;
         final ByteArrayOutputStream bout = new ByteArrayOutputStream(lengthGuess);
         try {
@@ -74,4 +156,91 @@ public class CompressionStrategy implements BlobStrategy {
         }
         return bout.toByteArray();
     }
+
+    private static boolean isDeflated(byte[] blob) {
+        if (blob.length < DEFLATE_PREFIX_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < DEFLATE_HEADER.length; i++) {
+            if (blob[i] != DEFLATE_HEADER[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] deflate(byte[] blob) {
+        Deflater deflater = DEFLATERS.poll();
+        if (deflater == null) {
+            deflater = new Deflater(Deflater.BEST_SPEED);
+        }
+        try {
+            byte[] out = Arrays.copyOf(DEFLATE_HEADER, DEFLATE_PREFIX_LENGTH + blob.length / 2 + 64);
+            writeInt(out, DEFLATE_HEADER.length, blob.length);
+            int length = DEFLATE_PREFIX_LENGTH;
+            deflater.setInput(blob);
+            deflater.finish();
+            while (!deflater.finished()) {
+                if (length == out.length) {
+                    out = Arrays.copyOf(out, out.length * 2);
+                }
+                length += deflater.deflate(out, length, out.length - length);
+            }
+            return Arrays.copyOf(out, length);
+        } finally {
+            deflater.reset();
+            if (!DEFLATERS.offer(deflater)) {
+                deflater.end();
+            }
+        }
+    }
+
+    private static byte[] inflate(byte[] blob) throws TokenStrategyFailedException {
+        int length = readInt(blob, DEFLATE_HEADER.length);
+        Inflater inflater = INFLATERS.poll();
+        if (inflater == null) {
+            inflater = new Inflater();
+        }
+        try {
+            if (length < 0 || length > (blob.length - DEFLATE_PREFIX_LENGTH) * MAX_DEFLATE_RATIO) {
+                throw new DataFormatException("Invalid length of compressed Token: " + length);
+            }
+            byte[] out = new byte[length];
+            inflater.setInput(blob, DEFLATE_PREFIX_LENGTH, blob.length - DEFLATE_PREFIX_LENGTH);
+            int inflated = 0;
+            // Inflate into a spare byte once the output is full, to read the checksum and catch excess data.
+            byte[] excess = new byte[1];
+            while (!inflater.finished() && inflated <= length) {
+                int n = inflated < length
+                        ? inflater.inflate(out, inflated, length - inflated) : inflater.inflate(excess);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflated += n;
+            }
+            if (inflated != length || !inflater.finished()) {
+                throw new DataFormatException("Compressed Token does not match its length");
+            }
+            return out;
+        } catch (DataFormatException e) {
+            throw new TokenStrategyFailedException(e);
+        } finally {
+            inflater.reset();
+            if (!INFLATERS.offer(inflater)) {
+                inflater.end();
+            }
+        }
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) << 24 | (bytes[offset + 1] & 0xFF) << 16
+                | (bytes[offset + 2] & 0xFF) << 8 | bytes[offset + 3] & 0xFF;
+    }
 }
@@ -0,0 +1,641 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.entitlement;
+
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.security.auth.Subject;
+
+import org.forgerock.util.Reject;
+import org.forgerock.util.annotations.VisibleForTesting;
+import org.forgerock.util.time.TimeService;
+
+import com.iplanet.sso.SSOToken;
+import com.sun.identity.entitlement.Entitlement;
+import com.sun.identity.entitlement.EntitlementConfiguration;
+import com.sun.identity.entitlement.ResourceMatch;
+import com.sun.identity.entitlement.interfaces.ResourceName;
+import com.sun.identity.entitlement.opensso.SubjectUtils;
+
+/**
+ * A realm scoped cache of the combined entitlements that policy evaluation arrives at, so that identical repeat
+ * requests, such as an agent makes for each resource it protects, are answered without searching for and evaluating
+ * policies again.
+ * <p>
+ * Decisions are keyed by a {@link DecisionKey}, made up of the realm, application, resource, actions and mode of the
+ * evaluation, and a fingerprint of the subject made up of its principals, session and subject search indexes, and
+ * the application token of the request. Conditions read the environment of the request through a
+ * {@link RecordingEnvironment}, and a decision is only reused for requests with the same values for the environment
+ * parameters that were read while it was made.
+ * <p>
+ * A decision lives until the earliest time to live of its entitlements, and for no longer than the configured time
+ * to live, which bounds how long changes that are not notified, such as to session properties or identity
+ * attributes that conditions read, take to be seen. Decisions are removed when policies change, through
+ * {@link #invalidate(String, String, Set)} for changes made by this server and
+ * {@link #invalidatePathIndex(String, String)} for policy index changes made by any server.
+ * <p>
+ * The cache holds up to {@link EntitlementConfiguration#DECISION_CACHE_SIZE} decisions in each realm, evicting the
+ * decisions made longest ago, and is disabled if that is 0, as it is by default.
+ *
+ * @since 14.0.0
+ */
+@Singleton
+public class EntitlementDecisionCache {
+
+    /** The default time in milliseconds that a decision lives for. */
+    static final long DEFAULT_TIME_TO_LIVE = 60000L;
+    /** The most environments that the decision for a key is kept for at once. */
+    static final int MAX_ENVIRONMENTS = 16;
+
+    private final int maxSize;
+    private final long timeToLive;
+    private final TimeService clock;
+    private final ConcurrentMap<String, RealmDecisions> realms = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * Constructs the cache from the entitlement configuration.
+     */
+    @Inject
+    public EntitlementDecisionCache() {
+        this(EntitlementConfiguration.getInstance(PolicyConstants.SUPER_ADMIN_SUBJECT, "/"));
+    }
+
+    private EntitlementDecisionCache(EntitlementConfiguration configuration) {
+        this((int) getConfiguration(configuration, EntitlementConfiguration.DECISION_CACHE_SIZE, 0),
+                getConfiguration(configuration, EntitlementConfiguration.DECISION_CACHE_TIME_TO_LIVE,
+                        DEFAULT_TIME_TO_LIVE),
+                TimeService.SYSTEM);
+    }
+
+    @VisibleForTesting
+    EntitlementDecisionCache(int maxSize, long timeToLive, TimeService clock) {
+        Reject.ifNull(clock);
+        Reject.ifFalse(maxSize >= 0, "maxSize must be >= 0");
+        Reject.ifFalse(timeToLive > 0, "timeToLive must be > 0");
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive;
+        this.clock = clock;
+    }
+
+    private static long getConfiguration(EntitlementConfiguration configuration, String name, long defaultValue) {
+        Set<String> values = configuration == null ? null : configuration.getConfiguration(name);
+        if (values == null || values.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Math.max(Long.parseLong(values.iterator().next()), 0L);
+        } catch (NumberFormatException e) {
+            PolicyConstants.DEBUG.error("EntitlementDecisionCache.getConfiguration: attribute name=" + name, e);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Returns whether decisions are cached.
+     *
+     * @return {@code true} if the cache is enabled.
+     */
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * Looks up the decision for a request.
+     *
+     * @param key The key of the request.
+     * @param environment The environment of the request, which may be {@code null}.
+     * @return The lookup, through which the decision made on a miss is stored.
+     */
+    public Lookup lookup(DecisionKey key, Map<String, Set<String>> environment) {
+        RealmDecisions realm = getRealm(key.realm);
+        long generation = realm.generation.get();
+        Decisions decisions = realm.entries.get(key);
+        List<Entitlement> results = decisions == null ? null : decisions.find(environment, clock.now());
+        if (results == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return new Lookup(realm, generation, key, environment, results);
+    }
+
+    /**
+     * Removes the decisions for the resources of a policy that has been added, changed or removed.
+     *
+     * @param realm The realm of the policy.
+     * @param applicationName The application of the policy.
+     * @param resources The resources of the policy, before and after the change, or {@code null} to remove every
+     * decision for the application.
+     */
+    public void invalidate(String realm, String applicationName, Set<String> resources) {
+        RealmDecisions decisions = realms.get(realmKey(realm));
+        if (decisions == null) {
+            return;
+        }
+        decisions.generation.incrementAndGet();
+        Iterator<Decisions> iterator = decisions.writeOrder.iterator();
+        while (iterator.hasNext()) {
+            Decisions entry = iterator.next();
+            if (entry.key.applicationName.equalsIgnoreCase(applicationName)
+                    && (resources == null || entry.isAffectedByAny(resources))) {
+                iterator.remove();
+                decisions.remove(entry);
+            }
+        }
+    }
+
+    /**
+     * Removes the decisions for resources that a policy path index, added or removed on any server, applies to.
+     *
+     * @param realm The realm of the path index.
+     * @param pathIndex The path index, which is a lower case policy resource.
+     */
+    public void invalidatePathIndex(String realm, String pathIndex) {
+        RealmDecisions decisions = realms.get(realmKey(realm));
+        if (decisions == null) {
+            return;
+        }
+        decisions.generation.incrementAndGet();
+        Iterator<Decisions> iterator = decisions.writeOrder.iterator();
+        while (iterator.hasNext()) {
+            Decisions entry = iterator.next();
+            if (entry.isAffectedByPathIndex(pathIndex)) {
+                iterator.remove();
+                decisions.remove(entry);
+            }
+        }
+    }
+
+    /**
+     * Removes every decision in a realm.
+     *
+     * @param realm The realm.
+     */
+    public void invalidate(String realm) {
+        RealmDecisions decisions = realms.get(realmKey(realm));
+        if (decisions != null) {
+            decisions.clear();
+        }
+    }
+
+    /**
+     * Removes every decision.
+     */
+    public void invalidateAll() {
+        for (RealmDecisions decisions : realms.values()) {
+            decisions.clear();
+        }
+    }
+
+    /**
+     * Returns the number of requests answered by the cache.
+     *
+     * @return The number of hits.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of requests that the cache had no decision for.
+     *
+     * @return The number of misses.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the percentage of requests answered by the cache.
+     *
+     * @return The hit ratio, from 0 to 100.
+     */
+    public long getHitRatio() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return total == 0 ? 0 : hitCount * 100 / total;
+    }
+
+    /**
+     * Returns the number of keys that the cache holds decisions for.
+     *
+     * @return The number of entries.
+     */
+    public long getSize() {
+        long size = 0;
+        for (RealmDecisions decisions : realms.values()) {
+            size += decisions.size.get();
+        }
+        return size;
+    }
+
+    /**
+     * Returns the number of entries removed because policies, policy indexes or applications changed.
+     *
+     * @return The number of invalidations.
+     */
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    private RealmDecisions getRealm(String realm) {
+        String key = realmKey(realm);
+        RealmDecisions decisions = realms.get(key);
+        if (decisions == null) {
+            RealmDecisions created = new RealmDecisions();
+            decisions = realms.putIfAbsent(key, created);
+            if (decisions == null) {
+                decisions = created;
+            }
+        }
+        return decisions;
+    }
+
+    private static String realmKey(String realm) {
+        return realm == null ? "/" : realm.toLowerCase();
+    }
+
+    private static List<Entitlement> copy(List<Entitlement> entitlements) {
+        List<Entitlement> copies = new ArrayList<>(entitlements.size());
+        for (Entitlement entitlement : entitlements) {
+            Map<String, Boolean> actionValues = entitlement.getActionValues();
+            Entitlement copy = new Entitlement(entitlement.getApplicationName(),
+                    copySet(entitlement.getResourceNames()),
+                    actionValues == null ? Collections.<String, Boolean>emptyMap() : actionValues);
+            copy.setName(entitlement.getName());
+            copy.setRequestedResourceNames(copySet(entitlement.getRequestedResourceNames()));
+            copy.setAdvices(copyMap(entitlement.getAdvices()));
+            copy.setAttributes(copyMap(entitlement.getAttributes()));
+            copy.setTTL(entitlement.getTTL());
+            copies.add(copy);
+        }
+        return copies;
+    }
+
+    private static Set<String> copySet(Set<String> set) {
+        return set == null ? null : new HashSet<>(set);
+    }
+
+    private static Map<String, Set<String>> copyMap(Map<String, Set<String>> map) {
+        if (map == null) {
+            return null;
+        }
+        Map<String, Set<String>> copy = new HashMap<>(map.size());
+        for (Map.Entry<String, Set<String>> entry : map.entrySet()) {
+            copy.put(entry.getKey(), copySet(entry.getValue()));
+        }
+        return copy;
+    }
+
+    /**
+     * The result of looking up a request, through which the decision made for it is stored if it was not found.
+     */
+    public final class Lookup {
+
+        private final RealmDecisions realm;
+        private final long generation;
+        private final DecisionKey key;
+        private final RecordingEnvironment recordingEnvironment;
+        private final List<Entitlement> results;
+
+        private Lookup(RealmDecisions realm, long generation, DecisionKey key, Map<String, Set<String>> environment,
+                List<Entitlement> results) {
+            this.realm = realm;
+            this.generation = generation;
+            this.key = key;
+            this.recordingEnvironment = environment == null ? null : new RecordingEnvironment(environment);
+            this.results = results;
+        }
+
+        /**
+         * Returns whether a decision was found.
+         *
+         * @return {@code true} on a hit.
+         */
+        public boolean isHit() {
+            return results != null;
+        }
+
+        /**
+         * Returns a copy of the decision that was found.
+         *
+         * @return The combined entitlements, or {@code null} on a miss.
+         */
+        public List<Entitlement> getResults() {
+            return results == null ? null : copy(results);
+        }
+
+        /**
+         * Returns the environment that policies must be evaluated with for the decision to be stored.
+         *
+         * @return The environment, which is {@code null} if the environment of the request was.
+         */
+        public Map<String, Set<String>> getEnvironment() {
+            return recordingEnvironment;
+        }
+
+        /**
+         * Stores the decision made for the request, unless the environment was changed while it was made or a
+         * change to the policies of the realm was seen since the lookup.
+         *
+         * @param comparator The resource comparator of the application, used to find the decisions that policy
+         * changes apply to.
+         * @param entitlements The combined entitlements.
+         */
+        public void store(ResourceName comparator, List<Entitlement> entitlements) {
+            if (recordingEnvironment != null && recordingEnvironment.isModified()) {
+                return;
+            }
+            long now = clock.now();
+            long expiry = now + timeToLive;
+            for (Entitlement entitlement : entitlements) {
+                expiry = Math.min(expiry, entitlement.getTTL());
+            }
+            if (expiry <= now) {
+                return;
+            }
+            Decision decision = recordingEnvironment == null
+                    ? new Decision(null, null, copy(entitlements), expiry)
+                    : new Decision(recordingEnvironment.getReadParameters(), recordingEnvironment.getReadValues(),
+                            copy(entitlements), expiry);
+            Decisions decisions = realm.getOrCreate(key, comparator);
+            decisions.add(decision);
+            // A policy change seen since the lookup may have missed this decision, which may be stale.
+            if (realm.generation.get() != generation) {
+                decisions.decisions.remove(decision);
+            }
+        }
+    }
+
+    /**
+     * The key of a policy decision.
+     */
+    public static final class DecisionKey {
+
+        private final String realm;
+        private final String applicationName;
+        private final String normalisedResourceName;
+        private final String requestedResourceName;
+        private final Set<String> actionNames;
+        private final boolean recursive;
+        private final Set<String> principals;
+        private final String sessionId;
+        private final Set<String> subjectIndexes;
+        private final Object appToken;
+        private final int hashCode;
+
+        /**
+         * Constructs the key of a policy decision.
+         *
+         * @param realm The realm.
+         * @param applicationName The application name.
+         * @param normalisedResourceName The normalised resource name.
+         * @param requestedResourceName The requested resource name.
+         * @param actionNames The action names, which may be {@code null}.
+         * @param recursive {@code true} for a subtree evaluation.
+         * @param subject The subject, which may be {@code null}.
+         * @param subjectIndexes The subject search indexes of the subject, which may be {@code null}.
+         * @param appToken The application token of the request, which may be {@code null}.
+         */
+        public DecisionKey(String realm, String applicationName, String normalisedResourceName,
+                String requestedResourceName, Set<String> actionNames, boolean recursive, Subject subject,
+                Set<String> subjectIndexes, Object appToken) {
+            this.realm = realmKey(realm);
+            this.applicationName = applicationName;
+            this.normalisedResourceName = normalisedResourceName;
+            this.requestedResourceName = requestedResourceName;
+            this.actionNames = actionNames == null ? Collections.<String>emptySet() : new HashSet<>(actionNames);
+            this.recursive = recursive;
+            this.principals = new HashSet<>();
+            SSOToken token = null;
+            if (subject != null) {
+                for (Principal principal : subject.getPrincipals()) {
+                    principals.add(principal.getName());
+                }
+                token = SubjectUtils.getSSOToken(subject);
+            }
+            this.sessionId = token == null ? null : token.getTokenID().toString();
+            this.subjectIndexes = subjectIndexes == null ? Collections.<String>emptySet()
+                    : new HashSet<>(subjectIndexes);
+            this.appToken = appToken instanceof SSOToken ? ((SSOToken) appToken).getTokenID().toString() : appToken;
+            this.hashCode = Objects.hash(this.realm, applicationName, normalisedResourceName, requestedResourceName,
+                    this.actionNames, recursive, principals, sessionId, this.subjectIndexes, this.appToken);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof DecisionKey)) {
+                return false;
+            }
+            DecisionKey that = (DecisionKey) o;
+            return hashCode == that.hashCode
+                    && recursive == that.recursive
+                    && realm.equals(that.realm)
+                    && Objects.equals(applicationName, that.applicationName)
+                    && Objects.equals(normalisedResourceName, that.normalisedResourceName)
+                    && Objects.equals(requestedResourceName, that.requestedResourceName)
+                    && actionNames.equals(that.actionNames)
+                    && Objects.equals(sessionId, that.sessionId)
+                    && principals.equals(that.principals)
+                    && subjectIndexes.equals(that.subjectIndexes)
+                    && Objects.equals(appToken, that.appToken);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    /**
+     * The decisions of a realm, in the order that they were first stored.
+     */
+    private final class RealmDecisions {
+
+        private final ConcurrentMap<DecisionKey, Decisions> entries = new ConcurrentHashMap<>();
+        private final Queue<Decisions> writeOrder = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+        /** Changed whenever decisions are invalidated, so that decisions made at the same time are not stored. */
+        private final AtomicLong generation = new AtomicLong();
+
+        private Decisions getOrCreate(DecisionKey key, ResourceName comparator) {
+            Decisions decisions = entries.get(key);
+            if (decisions != null) {
+                return decisions;
+            }
+            Decisions created = new Decisions(key, comparator);
+            decisions = entries.putIfAbsent(key, created);
+            if (decisions != null) {
+                return decisions;
+            }
+            writeOrder.add(created);
+            if (size.incrementAndGet() > maxSize) {
+                evict();
+            }
+            return created;
+        }
+
+        private void evict() {
+            while (size.get() > maxSize) {
+                Decisions eldest = writeOrder.poll();
+                if (eldest == null) {
+                    return;
+                }
+                if (entries.remove(eldest.key, eldest)) {
+                    size.decrementAndGet();
+                }
+            }
+        }
+
+        private void remove(Decisions decisions) {
+            if (entries.remove(decisions.key, decisions)) {
+                size.decrementAndGet();
+                invalidations.incrementAndGet();
+            }
+        }
+
+        private void clear() {
+            generation.incrementAndGet();
+            Decisions decisions;
+            while ((decisions = writeOrder.poll()) != null) {
+                remove(decisions);
+            }
+        }
+    }
+
+    /**
+     * The decisions for a key, made with different environments.
+     */
+    private final class Decisions {
+
+        private final DecisionKey key;
+        private final ResourceName comparator;
+        private final List<Decision> decisions = new CopyOnWriteArrayList<>();
+
+        private Decisions(DecisionKey key, ResourceName comparator) {
+            this.key = key;
+            this.comparator = comparator;
+        }
+
+        private List<Entitlement> find(Map<String, Set<String>> environment, long now) {
+            for (Decision decision : decisions) {
+                if (decision.expiry <= now) {
+                    decisions.remove(decision);
+                } else if (decision.matches(environment)) {
+                    return decision.results;
+                }
+            }
+            return null;
+        }
+
+        private synchronized void add(Decision decision) {
+            for (Decision existing : decisions) {
+                if (Objects.equals(existing.parameters, decision.parameters)
+                        && Objects.equals(existing.values, decision.values)) {
+                    decisions.remove(existing);
+                }
+            }
+            decisions.add(decision);
+            if (decisions.size() > MAX_ENVIRONMENTS) {
+                decisions.remove(0);
+            }
+        }
+
+        private boolean isAffectedByAny(Set<String> resources) {
+            for (String resource : resources) {
+                if (isAffectedBy(key.normalisedResourceName, resource)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean isAffectedByPathIndex(String pathIndex) {
+            // Path indexes are lower case and abbreviate the single level wildcard.
+            return key.normalisedResourceName == null
+                    || isAffectedBy(key.normalisedResourceName.toLowerCase(), pathIndex.replace("^", "-*-"));
+        }
+
+        private boolean isAffectedBy(String resourceName, String policyResource) {
+            if (resourceName == null || comparator == null) {
+                return true;
+            }
+            try {
+                return !ResourceMatch.NO_MATCH.equals(comparator.compare(resourceName, policyResource, true));
+            } catch (RuntimeException e) {
+                PolicyConstants.DEBUG.warning("EntitlementDecisionCache: unable to compare " + resourceName
+                        + " with " + policyResource, e);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * A decision and the values of the environment parameters that it was made with.
+     */
+    private static final class Decision {
+
+        /** The parameters read, or {@code null} if the decision depends on the whole environment. */
+        private final Set<String> parameters;
+        private final Map<String, Set<String>> values;
+        private final int valuesHash;
+        private final List<Entitlement> results;
+        private final long expiry;
+
+        private Decision(Set<String> parameters, Map<String, Set<String>> values, List<Entitlement> results,
+                long expiry) {
+            this.parameters = parameters;
+            this.values = values;
+            this.valuesHash = Objects.hashCode(values);
+            this.results = results;
+            this.expiry = expiry;
+        }
+
+        private boolean matches(Map<String, Set<String>> environment) {
+            if (values == null) {
+                return environment == null;
+            }
+            Map<String, Set<String>> requestValues = RecordingEnvironment.valuesOf(environment, parameters);
+            return requestValues != null && requestValues.hashCode() == valuesHash && requestValues.equals(values);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.entitlement;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The environment of a policy evaluation, which notes the parameters that policy conditions read so that the
+ * {@link EntitlementDecisionCache} only reuses a decision for requests with the same values for them.
+ * <p>
+ * Reading a parameter records the value it had when it was first read. Reading the environment as a whole, through
+ * its size, its views or comparing it, records every parameter, and changing the environment means that the decision
+ * is not cached at all. The views are read only. The environment may be read by several evaluation threads at once.
+ *
+ * @since 14.0.0
+ */
+final class RecordingEnvironment implements Map<String, Set<String>> {
+
+    /** Marks a parameter that was read but is not in the environment. */
+    private static final Set<String> ABSENT = Collections.unmodifiableSet(new HashSet<String>());
+
+    private final Map<String, Set<String>> environment;
+    private final ConcurrentMap<String, Set<String>> read = new ConcurrentHashMap<>();
+    private volatile Map<String, Set<String>> readAll;
+    private volatile boolean modified;
+
+    /**
+     * Constructs a new recording environment.
+     *
+     * @param environment The environment of the request.
+     */
+    RecordingEnvironment(Map<String, Set<String>> environment) {
+        this.environment = environment;
+    }
+
+    /**
+     * Returns whether the environment was changed during the evaluation.
+     *
+     * @return {@code true} if a parameter was put or removed.
+     */
+    boolean isModified() {
+        return modified;
+    }
+
+    /**
+     * Returns the parameters that were read, if the environment was not read as a whole.
+     *
+     * @return The names of the parameters read, or {@code null} if every parameter was read.
+     */
+    Set<String> getReadParameters() {
+        return readAll == null ? new HashSet<>(read.keySet()) : null;
+    }
+
+    /**
+     * Returns the values of the parameters that were read, as they were when they were first read. Parameters that
+     * were not in the environment have a {@code null} value.
+     *
+     * @return The values of the parameters read.
+     */
+    Map<String, Set<String>> getReadValues() {
+        Map<String, Set<String>> values = readAll;
+        if (values != null) {
+            return values;
+        }
+        values = new HashMap<>(read.size());
+        for (Map.Entry<String, Set<String>> entry : read.entrySet()) {
+            values.put(entry.getKey(), entry.getValue() == ABSENT ? null : entry.getValue());
+        }
+        return values;
+    }
+
+    /**
+     * Copies the values of the given parameters in an environment, in the form {@link #getReadValues()} returns.
+     *
+     * @param environment The environment, which may be {@code null}.
+     * @param parameters The names of the parameters, or {@code null} for every parameter.
+     * @return The values of the parameters, or {@code null} if every parameter of a {@code null} environment was
+     * asked for.
+     */
+    static Map<String, Set<String>> valuesOf(Map<String, Set<String>> environment, Set<String> parameters) {
+        if (parameters == null) {
+            if (environment == null) {
+                return null;
+            }
+            Map<String, Set<String>> values = new HashMap<>(environment.size());
+            for (Map.Entry<String, Set<String>> entry : environment.entrySet()) {
+                values.put(entry.getKey(), copy(entry.getValue()));
+            }
+            return values;
+        }
+        Map<String, Set<String>> values = new HashMap<>(parameters.size());
+        for (String parameter : parameters) {
+            values.put(parameter, environment == null ? null : copy(environment.get(parameter)));
+        }
+        return values;
+    }
+
+    private static Set<String> copy(Set<String> value) {
+        return value == null ? null : new HashSet<>(value);
+    }
+
+    private void record(Object key) {
+        if (readAll == null && key instanceof String && !read.containsKey(key)) {
+            Set<String> value = copy(environment.get(key));
+            read.putIfAbsent((String) key, value == null ? ABSENT : value);
+        }
+    }
+
+    private void recordAll() {
+        if (readAll == null) {
+            readAll = valuesOf(environment, null);
+        }
+    }
+
+    @Override
+    public Set<String> get(Object key) {
+        record(key);
+        return environment.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        record(key);
+        return environment.containsKey(key);
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        recordAll();
+        return environment.containsValue(value);
+    }
+
+    @Override
+    public int size() {
+        recordAll();
+        return environment.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        recordAll();
+        return environment.isEmpty();
+    }
+
+    @Override
+    public Set<String> keySet() {
+        recordAll();
+        return Collections.unmodifiableSet(environment.keySet());
+    }
+
+    @Override
+    public Collection<Set<String>> values() {
+        recordAll();
+        return Collections.unmodifiableCollection(environment.values());
+    }
+
+    @Override
+    public Set<Entry<String, Set<String>>> entrySet() {
+        recordAll();
+        return Collections.unmodifiableMap(environment).entrySet();
+    }
+
+    @Override
+    public Set<String> put(String key, Set<String> value) {
+        modified = true;
+        return environment.put(key, value);
+    }
+
+    @Override
+    public Set<String> remove(Object key) {
+        modified = true;
+        return environment.remove(key);
+    }
+
+    @Override
+    public void putAll(Map<? extends String, ? extends Set<String>> map) {
+        modified = true;
+        environment.putAll(map);
+    }
+
+    @Override
+    public void clear() {
+        modified = true;
+        environment.clear();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        recordAll();
+        return environment.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        recordAll();
+        return environment.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        // Only used for logging, so the decision does not depend on it.
+        return environment.toString();
+    }
+}
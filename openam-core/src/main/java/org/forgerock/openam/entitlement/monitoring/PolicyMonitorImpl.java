@@ -11,7 +11,7 @@
 * Header, with the fields enclosed by brackets [] replaced by your own identifying
 * information: "Portions copyright [year] [name of copyright owner]".
 *
-* Copyright 2014 ForgeRock AS.
+* Copyright 2014-2016 ForgeRock AS.
 */
 package org.forgerock.openam.entitlement.monitoring;
 
@@ -19,10 +19,14 @@ import com.sun.identity.shared.debug.Debug;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 import javax.security.auth.Subject;
+import org.forgerock.openam.shared.monitoring.LatencyHistogram;
+import org.forgerock.openam.shared.monitoring.MetricFamily;
+import org.forgerock.openam.shared.monitoring.MetricsRegistry;
 
 /**
  * Singleton through which all access to the policy monitoring stores is achieved.
@@ -32,6 +36,8 @@ import javax.security.auth.Subject;
  *
  * It has one set of stores for each of the two modes that policy can be queried by - Self and Subtree,
  * it also contains a store for the internal (individual privilege) evaluation timings.
+ *
+ * Evaluation times are also recorded, on the calling thread, in latency histograms of the {@link MetricsRegistry}.
  */
 @Singleton
 public class PolicyMonitorImpl implements PolicyMonitor {
@@ -50,6 +56,11 @@ public class PolicyMonitorImpl implements PolicyMonitor {
     //internal monitoring store
     private final InternalEvaluationTimingStore internalEvaluationTimingStore;
 
+    //latency histograms
+    private final LatencyHistogram selfEvaluationLatency;
+    private final LatencyHistogram subtreeEvaluationLatency;
+    private final LatencyHistogram internalEvaluationLatency;
+
     //for pushing off our monitoring writes to another thread
     private final ExecutorService executorService;
     public static final String EXECUTOR_BINDING_NAME = "POLICY_MONITORING_EXECUTOR";
@@ -64,6 +75,7 @@ public class PolicyMonitorImpl implements PolicyMonitor {
      * @param subtreeEvaluationMonitoringStore Store for the SUBTREE mode evaluation monitoring
      * @param subtreeEvaluationTimingStore Store for the SELF mode timing monitoring
      * @param internalEvaluationTimingStore Store for the internal privilege evaluation monitoring
+     * @param metricsRegistry Registry for the evaluation latency histograms
      */
     @Inject
     public PolicyMonitorImpl(@Named(POLICY_MONITOR_DEBUG) Debug debug,
@@ -72,7 +84,8 @@ public class PolicyMonitorImpl implements PolicyMonitor {
                              final EvaluationTimingStore selfEvaluationTimingStore,
                              final EvaluationMonitoringStore subtreeEvaluationMonitoringStore,
                              final EvaluationTimingStore subtreeEvaluationTimingStore,
-                             final InternalEvaluationTimingStore internalEvaluationTimingStore) {
+                             final InternalEvaluationTimingStore internalEvaluationTimingStore,
+                             final MetricsRegistry metricsRegistry) {
         this.debug = debug;
         this.executorService = executorService;
         this.selfEvaluationMonitoringStore = selfEvaluationMonitoringStore;
@@ -80,6 +93,13 @@ public class PolicyMonitorImpl implements PolicyMonitor {
         this.subtreeEvaluationMonitoringStore = subtreeEvaluationMonitoringStore;
         this.subtreeEvaluationTimingStore = subtreeEvaluationTimingStore;
         this.internalEvaluationTimingStore = internalEvaluationTimingStore;
+        MetricFamily<LatencyHistogram> evaluationLatency = metricsRegistry.latency(
+                "openam_policy_evaluation_seconds", "Time taken to evaluate policy requests", TimeUnit.MILLISECONDS,
+                "mode");
+        this.selfEvaluationLatency = evaluationLatency.labels("self");
+        this.subtreeEvaluationLatency = evaluationLatency.labels("subtree");
+        this.internalEvaluationLatency = metricsRegistry.latency("openam_policy_privilege_evaluation_seconds",
+                "Time taken to evaluate individual policies", TimeUnit.MILLISECONDS).labels();
     }
 
     /**
@@ -89,6 +109,7 @@ public class PolicyMonitorImpl implements PolicyMonitor {
     public void addEvaluation(final long duration, final String realm, final String applicationName,
                               final String resourceName, final Subject subject, final PolicyMonitoringType monitoringType) {
         if (monitoringType == PolicyMonitoringType.SUBTREE) {
+            subtreeEvaluationLatency.record(duration);
 
             try {
                 executorService.submit(new Runnable() {
@@ -102,6 +123,7 @@ public class PolicyMonitorImpl implements PolicyMonitor {
             }
 
         } else {
+            selfEvaluationLatency.record(duration);
 
             try {
                 executorService.submit(new Runnable() {
@@ -122,6 +144,7 @@ public class PolicyMonitorImpl implements PolicyMonitor {
     @Override
     public void addEvaluation(final String policyName, final long duration, final String realm,
                        final String applicationName, final String resourceName, final Subject subject) {
+        internalEvaluationLatency.record(duration);
 
         try {
             executorService.submit(new Callable<Void>() {
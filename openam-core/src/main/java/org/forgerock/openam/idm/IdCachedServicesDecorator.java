@@ -12,6 +12,8 @@
  * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Portions copyright 2016 ForgeRock AS.
  */
 
 package org.forgerock.openam.idm;
@@ -52,6 +54,11 @@ public class IdCachedServicesDecorator extends IdServicesDecorator implements Id
         getDelegate().clearCache();
     }
 
+    @Override
+    public void clearCache(String realm) {
+        getDelegate().clearCache(realm);
+    }
+
     @Override
     public void dirtyCache(String changedId, int eventType, boolean cosType, boolean aciChange, Set attrNames) {
         getDelegate().dirtyCache(changedId, eventType, cosType, aciChange, attrNames);
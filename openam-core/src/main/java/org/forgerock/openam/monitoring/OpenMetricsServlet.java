@@ -0,0 +1,79 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.monitoring;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.forgerock.guice.core.InjectorHolder;
+import org.forgerock.openam.shared.monitoring.MetricsRegistry;
+import org.forgerock.openam.shared.monitoring.OpenMetricsWriter;
+
+import com.sun.identity.monitoring.MonitoringUtil;
+import com.sun.identity.shared.encode.Base64;
+
+/**
+ * Publishes the server's {@link MetricsRegistry} in the OpenMetrics text format, for scrapers such as Prometheus.
+ * <br/>
+ * The endpoint is only available while the monitoring service is running, as for the SNMP and HTML adaptors, and
+ * like the HTML adaptor it requires HTTP basic authentication as one of the users in the monitoring authentication
+ * file. If no such file has been configured no request is accepted.
+ *
+ * @since 14.0.0
+ */
+public class OpenMetricsServlet extends HttpServlet {
+
+    private static final String BASIC_SCHEME = "Basic ";
+    private static final String REALM = "OpenAM Monitoring";
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (!MonitoringUtil.isRunning()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        if (!isMonitoringUser(request.getHeader("Authorization"))) {
+            response.setHeader("WWW-Authenticate", "Basic realm=\"" + REALM + "\"");
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+            return;
+        }
+        response.setContentType(OpenMetricsWriter.CONTENT_TYPE);
+        response.setHeader("Cache-Control", "no-store");
+        Writer writer = response.getWriter();
+        new OpenMetricsWriter(writer).write(InjectorHolder.getInstance(MetricsRegistry.class));
+        writer.flush();
+    }
+
+    private boolean isMonitoringUser(String authorization) {
+        if (authorization == null || !authorization.regionMatches(true, 0, BASIC_SCHEME, 0, BASIC_SCHEME.length())) {
+            return false;
+        }
+        byte[] decoded = Base64.decode(authorization.substring(BASIC_SCHEME.length()).trim());
+        if (decoded == null) {
+            return false;
+        }
+        String credentials = new String(decoded, StandardCharsets.UTF_8);
+        int separator = credentials.indexOf(':');
+        return separator > 0 && MonitoringUtil.isMonitoringUser(credentials.substring(0, separator),
+                credentials.substring(separator + 1));
+    }
+}
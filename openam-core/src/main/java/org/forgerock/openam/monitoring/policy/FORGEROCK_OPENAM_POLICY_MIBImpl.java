@@ -1,5 +1,5 @@
 /*
- * Copyright 2014 ForgeRock AS.
+ * Copyright 2014-2016 ForgeRock AS.
  *
  * The contents of this file are subject to the terms of the Common Development and
  * Distribution License (the License). You may not use this file except in compliance with the
@@ -34,6 +34,8 @@ public class FORGEROCK_OPENAM_POLICY_MIBImpl extends FORGEROCK_OPENAM_POLICY_MIB
 
     private PolicyEvaluation policyEvaluation;
 
+    private PolicyDecisionCache policyDecisionCache;
+
     /**
      * Default constructor. Initialize the Mib tree.
      */
@@ -194,4 +196,34 @@ public class FORGEROCK_OPENAM_POLICY_MIBImpl extends FORGEROCK_OPENAM_POLICY_MIB
         return policyEvaluation;
     }
 
+    /**
+     * Factory method for "PolicyDecisionCache" MBean.
+     *
+     * You can redefine this method if you need to replace the default
+     * generated MBean class with your own customized class.
+     *
+     * @param groupName Name of the group ("PolicyDecisionCache")
+     * @param groupOid  OID of this group
+     * @param groupObjname ObjectName for this group (may be null)
+     * @param server    MBeanServer for this group (may be null)
+     *
+     * @return An instance of the MBean class generated for the
+     *         "PolicyDecisionCache" group (PolicyDecisionCache)
+     *
+     * Note that when using standard metadata,
+     * the returned object must implement the "PolicyDecisionCache"
+     * interface.
+     **/
+    protected Object createPolicyDecisionCacheMBean(String groupName,
+                                                    String groupOid,
+                                                    ObjectName groupObjname, MBeanServer server)  {
+
+        policyDecisionCache = new PolicyDecisionCacheImpl(this);
+        return policyDecisionCache;
+    }
+
+    public PolicyDecisionCache getPolicyDecisionCache() {
+        return policyDecisionCache;
+    }
+
 }
@@ -0,0 +1,85 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.monitoring.policy;
+
+import com.sun.management.snmp.SnmpStatusException;
+import com.sun.management.snmp.agent.SnmpMib;
+import org.forgerock.guice.core.InjectorHolder;
+import org.forgerock.openam.entitlement.EntitlementDecisionCache;
+
+/**
+ * Implementation of the SNMP {@link PolicyDecisionCache} interface.
+ *
+ * Reads its data from the {@link EntitlementDecisionCache} singleton.
+ *
+ * @since 14.0.0
+ */
+public class PolicyDecisionCacheImpl extends PolicyDecisionCache {
+
+    private final EntitlementDecisionCache decisionCache;
+
+    /**
+     * Constructs an instance of the {@link PolicyDecisionCache} interface.
+     * Injects a {@link EntitlementDecisionCache} using Guice.
+     *
+     * @param myMib The MIB.
+     */
+    public PolicyDecisionCacheImpl(SnmpMib myMib) {
+        super(myMib);
+
+        this.decisionCache = InjectorHolder.getInstance(EntitlementDecisionCache.class);
+    }
+
+    /**
+     * Getter for the "DecisionCacheHits" variable.
+     */
+    @Override
+    public Long getDecisionCacheHits() throws SnmpStatusException {
+        return decisionCache.getHits();
+    }
+
+    /**
+     * Getter for the "DecisionCacheMisses" variable.
+     */
+    @Override
+    public Long getDecisionCacheMisses() throws SnmpStatusException {
+        return decisionCache.getMisses();
+    }
+
+    /**
+     * Getter for the "DecisionCacheHitRatio" variable.
+     */
+    @Override
+    public Long getDecisionCacheHitRatio() throws SnmpStatusException {
+        return decisionCache.getHitRatio();
+    }
+
+    /**
+     * Getter for the "DecisionCacheSize" variable.
+     */
+    @Override
+    public Long getDecisionCacheSize() throws SnmpStatusException {
+        return decisionCache.getSize();
+    }
+
+    /**
+     * Getter for the "DecisionCacheInvalidations" variable.
+     */
+    @Override
+    public Long getDecisionCacheInvalidations() throws SnmpStatusException {
+        return decisionCache.getInvalidations();
+    }
+}
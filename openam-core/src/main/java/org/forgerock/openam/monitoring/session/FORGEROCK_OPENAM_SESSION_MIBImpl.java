@@ -11,16 +11,22 @@
 * Header, with the fields enclosed by brackets [] replaced by your own identifying
 * information: "Portions copyright [year] [name of copyright owner]".
 *
-* Copyright 2014-2015 ForgeRock AS.
+* Copyright 2014-2016 ForgeRock AS.
 */
 package org.forgerock.openam.monitoring.session;
 
+import com.google.inject.Key;
+import com.google.inject.name.Names;
 import com.iplanet.dpro.session.monitoring.SessionMonitoringStore;
+import com.iplanet.dpro.session.service.SessionConstants;
+import com.iplanet.dpro.session.service.SessionNotificationSender;
+import com.sun.identity.shared.debug.Debug;
 import java.io.Serializable;
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
 import org.forgerock.guice.core.InjectorHolder;
 import org.forgerock.openam.cts.monitoring.impl.persistence.CtsPersistenceOperationsMonitor;
+import org.forgerock.openam.session.blacklist.SessionBlacklist;
 
 /**
  * The class is used for representing "FORGEROCK-OPENAM-SESSION-MIB".
@@ -32,6 +38,8 @@ public class FORGEROCK_OPENAM_SESSION_MIBImpl extends FORGEROCK_OPENAM_SESSION_M
     private InternalSessions internalSessions;
     private RemoteSessions remoteSessions;
     private StatelessSessions statelessSessions;
+    private SessionBlacklisting sessionBlacklisting;
+    private SessionNotifications sessionNotifications;
 
 
     /**
@@ -147,4 +155,34 @@ public class FORGEROCK_OPENAM_SESSION_MIBImpl extends FORGEROCK_OPENAM_SESSION_M
         return statelessSessions;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    protected SessionBlacklisting createSessionBlacklistingMBean(String groupName, String groupOid,
+                                                                 ObjectName groupObjname, MBeanServer server) {
+        sessionBlacklisting = new SessionBlacklistingImpl(this, InjectorHolder.getInstance(SessionBlacklist.class));
+
+        return sessionBlacklisting;
+    }
+
+    public SessionBlacklisting getSessionBlacklisting() {
+        return sessionBlacklisting;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected SessionNotifications createSessionNotificationsMBean(String groupName, String groupOid,
+                                                                   ObjectName groupObjname, MBeanServer server) {
+        sessionNotifications = new SessionNotificationsImpl(this,
+                InjectorHolder.getInstance(Key.get(Debug.class, Names.named(SessionConstants.SESSION_DEBUG))),
+                InjectorHolder.getInstance(SessionNotificationSender.class).getNotificationDispatcher());
+
+        return sessionNotifications;
+    }
+
+    public SessionNotifications getSessionNotifications() {
+        return sessionNotifications;
+    }
+
 }
@@ -0,0 +1,83 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.monitoring.session;
+
+import com.iplanet.dpro.session.service.SessionNotificationDispatcher;
+import com.sun.management.snmp.SnmpStatusException;
+import com.sun.management.snmp.agent.SnmpMib;
+
+/**
+ * A row of the notification destination table, reporting on the session notifications sent to one remote
+ * notification URL.
+ */
+public class NotificationDestinationEntryImpl extends NotificationDestinationEntry {
+
+    private final SessionNotificationDispatcher.Destination destination;
+
+    public NotificationDestinationEntryImpl(final SnmpMib mib,
+                                            final SessionNotificationDispatcher.Destination destination) {
+        super(mib);
+        this.destination = destination;
+    }
+
+    /**
+     * Getter for the "NotificationDestinationQueueDepth" variable.
+     */
+    @Override
+    public Long getNotificationDestinationQueueDepth() throws SnmpStatusException {
+        return (long) destination.getQueueDepth();
+    }
+
+    /**
+     * Getter for the "NotificationDestinationSent" variable.
+     */
+    @Override
+    public Long getNotificationDestinationSent() throws SnmpStatusException {
+        return destination.getNotificationsSent();
+    }
+
+    /**
+     * Getter for the "NotificationDestinationSuperseded" variable.
+     */
+    @Override
+    public Long getNotificationDestinationSuperseded() throws SnmpStatusException {
+        return destination.getNotificationsSuperseded();
+    }
+
+    /**
+     * Getter for the "NotificationDestinationFailures" variable.
+     */
+    @Override
+    public Long getNotificationDestinationFailures() throws SnmpStatusException {
+        return destination.getSendFailures();
+    }
+
+    /**
+     * Getter for the "NotificationDestinationAverageSendTime" variable.
+     */
+    @Override
+    public Long getNotificationDestinationAverageSendTime() throws SnmpStatusException {
+        return destination.getAverageSendTime();
+    }
+
+    /**
+     * Getter for the "NotificationDestinationMaxSendTime" variable.
+     */
+    @Override
+    public Long getNotificationDestinationMaxSendTime() throws SnmpStatusException {
+        return destination.getMaxSendTime();
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.monitoring.session;
+
+import com.sun.management.snmp.SnmpStatusException;
+import com.sun.management.snmp.agent.SnmpMib;
+import org.forgerock.openam.session.blacklist.BloomFilterSessionBlacklist;
+import org.forgerock.openam.session.blacklist.SessionBlacklist;
+
+/**
+ * Monitoring for the session blacklist bloom filter. All values are zero when the bloom filter is not in use.
+ */
+public class SessionBlacklistingImpl extends SessionBlacklisting {
+    private static final double PARTS_PER_MILLION = 1000000d;
+
+    private final SessionBlacklist sessionBlacklist;
+
+    public SessionBlacklistingImpl(final SnmpMib mib, final SessionBlacklist sessionBlacklist) {
+        super(mib);
+        this.sessionBlacklist = sessionBlacklist;
+    }
+
+    /**
+     * Getter for the "BlacklistFalsePositiveRate" variable.
+     */
+    @Override
+    public Long getBlacklistFalsePositiveRate() throws SnmpStatusException {
+        final BloomFilterSessionBlacklist bloomFilter = getBloomFilter();
+        return bloomFilter == null ? 0L : Math.round(bloomFilter.getFalsePositiveProbability() * PARTS_PER_MILLION);
+    }
+
+    /**
+     * Getter for the "BlacklistMemoryUsage" variable.
+     */
+    @Override
+    public Long getBlacklistMemoryUsage() throws SnmpStatusException {
+        final BloomFilterSessionBlacklist bloomFilter = getBloomFilter();
+        return bloomFilter == null ? 0L : bloomFilter.getMemoryUsage();
+    }
+
+    /**
+     * Getter for the "BlacklistPartitions" variable.
+     */
+    @Override
+    public Long getBlacklistPartitions() throws SnmpStatusException {
+        final BloomFilterSessionBlacklist bloomFilter = getBloomFilter();
+        return bloomFilter == null ? 0L : (long) bloomFilter.getPartitionCount();
+    }
+
+    /**
+     * Getter for the "SumBlacklistedSessions" variable.
+     */
+    @Override
+    public Long getSumBlacklistedSessions() throws SnmpStatusException {
+        final BloomFilterSessionBlacklist bloomFilter = getBloomFilter();
+        return bloomFilter == null ? 0L : bloomFilter.getBlacklistedSessionCount();
+    }
+
+    private BloomFilterSessionBlacklist getBloomFilter() {
+        if (sessionBlacklist instanceof BloomFilterSessionBlacklist) {
+            return (BloomFilterSessionBlacklist) sessionBlacklist;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.monitoring.session;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import com.iplanet.dpro.session.service.SessionNotificationDispatcher;
+import com.sun.identity.shared.debug.Debug;
+import com.sun.management.snmp.SnmpStatusException;
+import com.sun.management.snmp.agent.SnmpMib;
+
+/**
+ * Monitoring for the batched session notifications sent to remote notification URLs. Each URL is added to the
+ * notification destination table when notifications are first dispatched to it.
+ */
+public class SessionNotificationsImpl extends SessionNotifications
+        implements SessionNotificationDispatcher.DestinationListener {
+
+    private final SnmpMib mib;
+    private final Debug debug;
+    private final SessionNotificationDispatcher dispatcher;
+    private final Set<Integer> tableIndexes = new HashSet<Integer>();
+
+    public SessionNotificationsImpl(final SnmpMib mib, final Debug debug,
+                                    final SessionNotificationDispatcher dispatcher) {
+        super(mib);
+        this.mib = mib;
+        this.debug = debug;
+        this.dispatcher = dispatcher;
+
+        dispatcher.addDestinationListener(this);
+        for (SessionNotificationDispatcher.Destination destination : dispatcher.getDestinations()) {
+            destinationAdded(destination);
+        }
+    }
+
+    /**
+     * Adds a row for the destination to the notification destination table.
+     */
+    @Override
+    public synchronized void destinationAdded(SessionNotificationDispatcher.Destination destination) {
+        // A destination added while the table was being filled at construction is seen twice.
+        if (!tableIndexes.add(destination.getIndex())) {
+            return;
+        }
+        final NotificationDestinationEntry entry = new NotificationDestinationEntryImpl(mib, destination);
+        entry.NotificationDestinationIndex = (long) destination.getIndex();
+        entry.NotificationDestinationUrl = destination.getUrl().toString();
+        try {
+            NotificationDestinationTable.addEntry(entry);
+        } catch (SnmpStatusException e) {
+            debug.error("Unable to add notification destination " + destination.getUrl() + " to monitoring", e);
+        }
+    }
+
+    /**
+     * Getter for the "SumNotificationQueueDepth" variable.
+     */
+    @Override
+    public Long getSumNotificationQueueDepth() throws SnmpStatusException {
+        return dispatcher.getQueueDepth();
+    }
+
+    /**
+     * Getter for the "SumNotificationsSent" variable.
+     */
+    @Override
+    public Long getSumNotificationsSent() throws SnmpStatusException {
+        return dispatcher.getNotificationsSent();
+    }
+
+    /**
+     * Getter for the "SumNotificationsSuperseded" variable.
+     */
+    @Override
+    public Long getSumNotificationsSuperseded() throws SnmpStatusException {
+        return dispatcher.getNotificationsSuperseded();
+    }
+
+    /**
+     * Getter for the "AverageNotificationSendTime" variable.
+     */
+    @Override
+    public Long getAverageNotificationSendTime() throws SnmpStatusException {
+        return dispatcher.getAverageSendTime();
+    }
+}
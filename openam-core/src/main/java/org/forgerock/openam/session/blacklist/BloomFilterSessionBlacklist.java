@@ -11,7 +11,7 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2015 ForgeRock AS.
+ * Copyright 2015-2016 ForgeRock AS.
  */
 
 package org.forgerock.openam.session.blacklist;
@@ -21,9 +21,6 @@ import com.iplanet.dpro.session.SessionException;
 import com.iplanet.dpro.session.service.SessionConstants;
 import com.iplanet.dpro.session.service.SessionServiceConfig;
 import com.sun.identity.shared.debug.Debug;
-import org.forgerock.bloomfilter.BloomFilter;
-import org.forgerock.bloomfilter.BloomFilters;
-import org.forgerock.bloomfilter.ConcurrencyStrategy;
 import org.forgerock.bloomfilter.ExpiryStrategy;
 import org.forgerock.guava.common.hash.Funnel;
 import org.forgerock.guava.common.hash.Funnels;
@@ -31,6 +28,7 @@ import org.forgerock.guava.common.hash.PrimitiveSink;
 import org.forgerock.openam.utils.StringUtils;
 import org.forgerock.util.Reject;
 import org.forgerock.util.annotations.VisibleForTesting;
+import org.forgerock.util.time.TimeService;
 
 import javax.annotation.Nonnull;
 import java.nio.charset.Charset;
@@ -40,23 +38,24 @@ import java.util.concurrent.TimeUnit;
  * A session blacklist decorator implementation that uses a bloom filter to reduce the number of checks that need to
  * be performed against the underlying blacklist implementation. The advantage of a bloom filter is that it can store
  * very large blacklists (millions of entries) in memory, but with some possibility of false positives.
+ * <p/>
+ * The bloom filter is partitioned by session blacklist expiry time (see {@link RollingBloomFilter}), so whole
+ * partitions are dropped once the sessions they hold have expired rather than the filter growing for the lifetime
+ * of the server.
  */
 public final class BloomFilterSessionBlacklist implements SessionBlacklist {
     private static final double FALSE_POSITIVE_PROBABILITY = 0.001d; // 0.1%
-    private static final int NUM_EXPECTED_BLACKLISTED_SESSIONS = 10000;
-    private static final int CAPACITY_GROWTH_FACTOR = 2;
-    private static final double FALSE_POSITIVE_PROBABILITY_SCALE_FACTOR = 0.6d;
 
     private static final Debug DEBUG = Debug.getInstance(SessionConstants.SESSION_DEBUG);
 
     private final SessionBlacklist delegate;
-    private final BloomFilter<SessionBlacklistEntry> bloomFilter;
+    private final RollingBloomFilter<SessionBlacklistEntry> bloomFilter;
     private final SessionServiceConfig serviceConfig;
 
     @VisibleForTesting
     BloomFilterSessionBlacklist(final SessionBlacklist delegate,
                                 final SessionServiceConfig serviceConfig,
-                                final BloomFilter<SessionBlacklistEntry> bloomFilter) {
+                                final RollingBloomFilter<SessionBlacklistEntry> bloomFilter) {
         Reject.ifNull(delegate, serviceConfig, bloomFilter);
 
         this.delegate = delegate;
@@ -87,14 +86,12 @@ public final class BloomFilterSessionBlacklist implements SessionBlacklist {
      */
     public BloomFilterSessionBlacklist(final SessionBlacklist delegate,
                                        final SessionServiceConfig serviceConfig) {
-        this(delegate, serviceConfig, BloomFilters.<SessionBlacklistEntry>create(SessionFunnel.INSTANCE)
-                        .withFalsePositiveProbability(FALSE_POSITIVE_PROBABILITY)
-                        .withInitialCapacity(NUM_EXPECTED_BLACKLISTED_SESSIONS)
-                        .withExpiryStrategy(SessionExpirationStrategy.INSTANCE)
-                        .withCapacityGrowthFactor(CAPACITY_GROWTH_FACTOR)
-                        .withFalsePositiveProbabilityScaleFactor(FALSE_POSITIVE_PROBABILITY_SCALE_FACTOR)
-                        .withConcurrencyStrategy(ConcurrencyStrategy.ATOMIC)
-                        .build());
+        this(delegate, serviceConfig, new RollingBloomFilter<SessionBlacklistEntry>(SessionFunnel.INSTANCE,
+                SessionExpirationStrategy.INSTANCE,
+                serviceConfig.getSessionBlacklistPartitionDuration(TimeUnit.MILLISECONDS),
+                serviceConfig.getSessionBlacklistPartitionSize(),
+                FALSE_POSITIVE_PROBABILITY,
+                TimeService.SYSTEM));
     }
 
     @Override
@@ -119,6 +116,43 @@ public final class BloomFilterSessionBlacklist implements SessionBlacklist {
         delegate.subscribe(listener);
     }
 
+    /**
+     * Estimates the probability that a session which has not been blacklisted will be checked against the delegate
+     * blacklist.
+     *
+     * @return the estimated false positive probability, between 0 and 1.
+     */
+    public double getFalsePositiveProbability() {
+        return bloomFilter.getExpectedFalsePositiveProbability();
+    }
+
+    /**
+     * Returns the approximate memory used by the bloom filter.
+     *
+     * @return the memory footprint, in bytes.
+     */
+    public long getMemoryUsage() {
+        return bloomFilter.getMemoryUsage();
+    }
+
+    /**
+     * Returns the number of expiry time partitions currently held by the bloom filter.
+     *
+     * @return the partition count.
+     */
+    public int getPartitionCount() {
+        return bloomFilter.getPartitionCount();
+    }
+
+    /**
+     * Returns the number of blacklisted sessions held in the live partitions of the bloom filter.
+     *
+     * @return the number of blacklisted sessions.
+     */
+    public long getBlacklistedSessionCount() {
+        return bloomFilter.getInsertionCount();
+    }
+
     /**
      * Adapter to allow session objects to be stored in Guava bloom filters. Uses the UTF-8 encoded bytes of the
      * stable id of the session as the key.
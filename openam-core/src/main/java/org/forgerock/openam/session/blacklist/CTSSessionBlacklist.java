@@ -11,7 +11,7 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2015 ForgeRock AS.
+ * Copyright 2015-2016 ForgeRock AS.
  */
 
 package org.forgerock.openam.session.blacklist;
@@ -27,7 +27,6 @@ import com.iplanet.dpro.session.service.SessionServiceConfig;
 import com.sun.identity.shared.debug.Debug;
 import org.forgerock.openam.cts.CTSPersistentStore;
 import org.forgerock.openam.cts.api.CoreTokenConstants;
-import org.forgerock.openam.cts.api.filter.TokenFilter;
 import org.forgerock.openam.cts.api.filter.TokenFilterBuilder;
 import org.forgerock.openam.cts.api.tokens.Token;
 import org.forgerock.openam.cts.exceptions.CoreTokenException;
@@ -40,12 +39,18 @@ import org.forgerock.util.Reject;
 
 import javax.inject.Inject;
 import javax.inject.Named;
+import java.io.IOException;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -72,6 +77,12 @@ import java.util.concurrent.atomic.AtomicLong;
  * subscribed blacklist {@link Listener}s for <em>all</em> blacklist entries, not just local ones. This feature is
  * essential for correct operation of the {@link BloomFilterSessionBlacklist}, which would otherwise report false
  * negatives.
+ * <p/>
+ * When {@link SessionServiceConfig#isSessionBlacklistDeltaSyncEnabled() delta sync} is enabled, the sessions
+ * blacklisted on this server are also collected and written to the CTS once per poll interval as a single
+ * {@link TokenType#SESSION_BLACKLIST_DELTA} token holding a compact {@link SessionBlacklistDelta}, and other servers poll
+ * for those tokens instead of for each individual blacklisted session. A delta that cannot be written is retried at
+ * the next interval; it never fails the blacklist call, as the per-session tokens remain the definitive blacklist.
  *
  * @since 13.0.0
  */
@@ -80,6 +91,12 @@ public final class CTSSessionBlacklist implements SessionBlacklist {
 
     private final AtomicLong lastPollTime = new AtomicLong(0);
     private final Set<Listener> listeners = new CopyOnWriteArraySet<Listener>();
+    private final Listener broadcaster = new Listener() {
+        @Override
+        public void onBlacklisted(final String id, final long expiryTime) {
+            notifyListeners(id, expiryTime);
+        }
+    };
 
     /**
      * CTS field to store the time at which each session was blacklisted.
@@ -87,11 +104,19 @@ public final class CTSSessionBlacklist implements SessionBlacklist {
     private static final CoreTokenField BLACKLIST_TIME_FIELD = CoreTokenField.DATE_ONE;
     private static final CoreTokenField SERVER_ID_FIELD = CoreTokenField.STRING_ONE;
 
+    /**
+     * Maximum number of sessions to publish in a single delta token.
+     */
+    private static final int MAX_DELTA_SIZE = 10000;
+
     private final CTSPersistentStore cts;
     private final PollTask pollTask;
+    private final PublishTask publishTask;
     private final ScheduledExecutorService scheduledExecutorService;
     private final String localServerId;
     private final long purgeDelayMs;
+    private final boolean deltaSyncEnabled;
+    private final ConcurrentMap<String, Long> pendingDelta = new ConcurrentHashMap<String, Long>();
 
     @Inject
     public CTSSessionBlacklist(final CTSPersistentStore cts,
@@ -103,8 +128,11 @@ public final class CTSSessionBlacklist implements SessionBlacklist {
         this.cts = cts;
         this.scheduledExecutorService = scheduler;
         this.pollTask = new PollTask(scheduler, threadMonitor, serviceConfig.getSessionBlacklistPollInterval(MILLISECONDS));
+        this.publishTask = new PublishTask(scheduler, threadMonitor,
+                serviceConfig.getSessionBlacklistPollInterval(MILLISECONDS));
         this.localServerId = serverConfig.getLocalServerID();
         this.purgeDelayMs = serviceConfig.getSessionBlacklistPurgeDelay(MILLISECONDS);
+        this.deltaSyncEnabled = serviceConfig.isSessionBlacklistDeltaSyncEnabled();
     }
 
     @Override
@@ -123,6 +151,11 @@ public final class CTSSessionBlacklist implements SessionBlacklist {
         }
 
         notifyListeners(session);
+
+        if (deltaSyncEnabled) {
+            pendingDelta.put(session.getStableStorageID(), session.getBlacklistExpiryTime(purgeDelayMs));
+            publishTask.start();
+        }
     }
 
     @Override
@@ -146,9 +179,15 @@ public final class CTSSessionBlacklist implements SessionBlacklist {
             @Override
             public void run() {
                 // Replay the existing blacklisted sessions for the listener
-                for (PartialToken token : findSessionsBlacklistedSince(0)) {
-                    listener.onBlacklisted(token.<String>getValue(CoreTokenField.TOKEN_ID),
-                            token.<Calendar>getValue(CoreTokenField.EXPIRY_DATE).getTimeInMillis());
+                if (deltaSyncEnabled) {
+                    for (PartialToken token : findDeltasPublishedSince(0)) {
+                        applyDelta(token, listener);
+                    }
+                } else {
+                    for (PartialToken token : findSessionsBlacklistedSince(0)) {
+                        listener.onBlacklisted(token.<String>getValue(CoreTokenField.TOKEN_ID),
+                                token.<Calendar>getValue(CoreTokenField.EXPIRY_DATE).getTimeInMillis());
+                    }
                 }
             }
         });
@@ -175,24 +214,127 @@ public final class CTSSessionBlacklist implements SessionBlacklist {
     }
 
     private Collection<PartialToken> findSessionsBlacklistedSince(final long lastPollTime) {
+        return findTokensCreatedSince(TokenType.SESSION_BLACKLIST, lastPollTime, CoreTokenField.TOKEN_ID,
+                CoreTokenField.EXPIRY_DATE);
+    }
+
+    private Collection<PartialToken> findDeltasPublishedSince(final long lastPollTime) {
+        return findTokensCreatedSince(TokenType.SESSION_BLACKLIST_DELTA, lastPollTime, CoreTokenField.TOKEN_ID,
+                CoreTokenField.BLOB);
+    }
+
+    private Collection<PartialToken> findTokensCreatedSince(final TokenType tokenType, final long lastPollTime,
+            final CoreTokenField... returnFields) {
         // Search for blacklist tokens that have been added since our last poll time, but not from this server (those
         // will already have been notified directly from the blacklist() method).
-        final TokenFilter filter = new TokenFilterBuilder()
-                .withQuery(and(equalTo(CoreTokenField.TOKEN_TYPE, TokenType.SESSION_BLACKLIST),
+        final TokenFilterBuilder builder = new TokenFilterBuilder()
+                .withQuery(and(equalTo(CoreTokenField.TOKEN_TYPE, tokenType),
                                 greaterThanOrEqualTo(BLACKLIST_TIME_FIELD, timeOf(lastPollTime)),
-                                not(equalTo(SERVER_ID_FIELD, localServerId))))
-                .returnAttribute(CoreTokenField.TOKEN_ID)
-                .returnAttribute(CoreTokenField.EXPIRY_DATE)
-                .build();
+                                not(equalTo(SERVER_ID_FIELD, localServerId))));
+        for (CoreTokenField field : returnFields) {
+            builder.returnAttribute(field);
+        }
 
         try {
-            return cts.attributeQuery(filter);
+            return cts.attributeQuery(builder.build());
         } catch (CoreTokenException e) {
             DEBUG.error("CTSSessionBlacklist: CTS failure while polling session blacklist: {}", e, e);
             return Collections.emptySet();
         }
     }
 
+    private void applyDelta(final PartialToken token, final Listener listener) {
+        try {
+            SessionBlacklistDelta.decode(token.<byte[]>getValue(CoreTokenField.BLOB), listener);
+        } catch (IOException e) {
+            DEBUG.error("CTSSessionBlacklist: Unable to read session blacklist delta {}",
+                    token.<String>getValue(CoreTokenField.TOKEN_ID), e);
+        }
+    }
+
+    /**
+     * Publishes the sessions blacklisted on this server since the last delta, in deltas of at most
+     * {@link #MAX_DELTA_SIZE} sessions. Sessions whose delta could not be written are kept for the next attempt.
+     */
+    private void publishPendingDelta() {
+        final Map<String, Long> batch = new LinkedHashMap<String, Long>();
+        while (drainPendingDelta(batch, MAX_DELTA_SIZE)) {
+            try {
+                createDelta(batch);
+            } catch (CoreTokenException e) {
+                DEBUG.error("CTSSessionBlacklist: Error publishing session blacklist delta, will retry", e);
+                requeue(batch);
+                return;
+            }
+            batch.clear();
+        }
+    }
+
+    private boolean drainPendingDelta(final Map<String, Long> batch, final int maxEntries) {
+        boolean drained = false;
+        for (Map.Entry<String, Long> entry : pendingDelta.entrySet()) {
+            if (batch.size() >= maxEntries) {
+                break;
+            }
+            if (pendingDelta.remove(entry.getKey(), entry.getValue())) {
+                batch.put(entry.getKey(), entry.getValue());
+                drained = true;
+            }
+        }
+        return drained;
+    }
+
+    private void requeue(final Map<String, Long> batch) {
+        for (Map.Entry<String, Long> entry : batch.entrySet()) {
+            pendingDelta.putIfAbsent(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void createDelta(final Map<String, Long> batch) throws CoreTokenException {
+        long latestExpiry = 0;
+        for (Long expiryTime : batch.values()) {
+            latestExpiry = Math.max(latestExpiry, expiryTime);
+        }
+
+        final Token token = new Token(localServerId + "-" + UUID.randomUUID(), TokenType.SESSION_BLACKLIST_DELTA);
+        token.setExpiryTimestamp(timeOf(latestExpiry));
+        token.setAttribute(BLACKLIST_TIME_FIELD, now());
+        token.setAttribute(SERVER_ID_FIELD, localServerId);
+        token.setBlob(SessionBlacklistDelta.encode(batch));
+        cts.create(token);
+        DEBUG.message("CTSSessionBlacklist: Published delta of {} blacklisted sessions", batch.size());
+    }
+
+    /**
+     * Periodic task that publishes the sessions blacklisted on this server as deltas.
+     */
+    private final class PublishTask implements Runnable {
+        private final ScheduledExecutorService scheduledExecutorService;
+        private final ThreadMonitor threadMonitor;
+        private final AtomicBoolean running = new AtomicBoolean(false);
+        private final long publishIntervalMs;
+
+        PublishTask(final ScheduledExecutorService scheduledExecutorService, final ThreadMonitor threadMonitor,
+                final long publishIntervalMs) {
+            this.scheduledExecutorService = scheduledExecutorService;
+            this.threadMonitor = threadMonitor;
+            this.publishIntervalMs = publishIntervalMs;
+        }
+
+        void start() {
+            if (running.compareAndSet(false, true)) {
+                DEBUG.message("CTSSessionBlacklist: starting delta publish thread");
+                threadMonitor.watchScheduledThread(scheduledExecutorService, this, publishIntervalMs,
+                        publishIntervalMs, MILLISECONDS);
+            }
+        }
+
+        @Override
+        public void run() {
+            publishPendingDelta();
+        }
+    }
+
     /**
      * Periodic task that checks for newly black-listed sessions.
      */
@@ -219,6 +361,17 @@ public final class CTSSessionBlacklist implements SessionBlacklist {
 
         @Override
         public void run() {
+            if (deltaSyncEnabled) {
+                DEBUG.message("CTSSessionBlacklist: polling for new session blacklist deltas");
+                final Collection<PartialToken> deltas =
+                        findDeltasPublishedSince(lastPollTime.getAndSet(System.currentTimeMillis()));
+                DEBUG.message("CTSSessionBlacklist: Processing {} session blacklist deltas", deltas.size());
+                for (PartialToken token : deltas) {
+                    applyDelta(token, broadcaster);
+                }
+                return;
+            }
+
             DEBUG.message("CTSSessionBlacklist: polling for new blacklisted sessions");
             final Collection<PartialToken> results =
                     findSessionsBlacklistedSince(lastPollTime.getAndSet(System.currentTimeMillis()));
@@ -0,0 +1,292 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.session.blacklist;
+
+import org.forgerock.bloomfilter.ExpiryStrategy;
+import org.forgerock.guava.common.hash.Funnel;
+import org.forgerock.guava.common.hash.HashFunction;
+import org.forgerock.guava.common.hash.Hashing;
+import org.forgerock.util.Reject;
+import org.forgerock.util.time.TimeService;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bloom filter partitioned by the expiry time of its elements. Each partition covers a fixed window of expiry
+ * times and is dropped as a whole once every element it could contain has expired, so the filter never has to be
+ * rebuilt or grown to cope with elements that are no longer relevant.
+ * <p/>
+ * Each partition is made up of one or more fixed size slices. When the current slice of a partition has received
+ * its expected number of insertions a further slice of the same size is added, so a burst of insertions (for example
+ * a mass logout) only costs memory until the partition's window has passed.
+ * <p/>
+ * Membership checks consult every partition whose window has not yet passed. The expiry time of an element is only
+ * used to place it, so an element is still found if it is checked with a different expiry time than it was added
+ * with, for example because the blacklist purge delay has since changed or differs between servers.
+ *
+ * @param <T> the type of elements stored in the filter.
+ */
+class RollingBloomFilter<T> {
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+    private static final double LN2 = Math.log(2);
+
+    private final Funnel<? super T> funnel;
+    private final ExpiryStrategy<T> expiryStrategy;
+    private final TimeService clock;
+    private final long partitionDuration;
+    private final int expectedInsertions;
+    private final int numBits;
+    private final int numHashFunctions;
+    private final ConcurrentNavigableMap<Long, Partition> partitions = new ConcurrentSkipListMap<Long, Partition>();
+    private final AtomicLong nextExpiryCheck = new AtomicLong();
+
+    /**
+     * Constructs an empty rolling bloom filter.
+     *
+     * @param funnel the funnel used to hash elements.
+     * @param expiryStrategy determines the time after which an element no longer needs to be stored.
+     * @param partitionDuration the window of expiry times, in milliseconds, covered by each partition.
+     * @param expectedInsertions the number of insertions each partition slice is sized for.
+     * @param falsePositiveProbability the false positive probability of each full slice.
+     * @param clock the source of the current time.
+     */
+    RollingBloomFilter(Funnel<? super T> funnel, ExpiryStrategy<T> expiryStrategy, long partitionDuration,
+            int expectedInsertions, double falsePositiveProbability, TimeService clock) {
+        Reject.ifNull(funnel, expiryStrategy, clock);
+        Reject.ifFalse(partitionDuration > 0, "partitionDuration must be > 0");
+        Reject.ifFalse(expectedInsertions > 0, "expectedInsertions must be > 0");
+        Reject.ifFalse(falsePositiveProbability > 0 && falsePositiveProbability < 1,
+                "falsePositiveProbability must be between 0 and 1");
+
+        this.funnel = funnel;
+        this.expiryStrategy = expiryStrategy;
+        this.clock = clock;
+        this.partitionDuration = partitionDuration;
+        this.expectedInsertions = expectedInsertions;
+        long bits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveProbability) / (LN2 * LN2));
+        this.numBits = (int) Math.min(Integer.MAX_VALUE - Long.SIZE, Math.max(Long.SIZE, bits));
+        this.numHashFunctions = Math.max(1, (int) Math.round((double) numBits / expectedInsertions * LN2));
+    }
+
+    /**
+     * Adds an element to the filter. Elements which have already expired are ignored.
+     *
+     * @param element the element to add.
+     */
+    void add(T element) {
+        final long now = clock.now();
+        expirePartitions(now);
+
+        final long expiryTime = expiryStrategy.expiryTime(element);
+        if (expiryTime < now) {
+            return;
+        }
+
+        final Long key = partitionKey(expiryTime);
+        Partition partition = partitions.get(key);
+        if (partition == null) {
+            Partition created = new Partition();
+            partition = partitions.putIfAbsent(key, created);
+            if (partition == null) {
+                partition = created;
+            }
+        }
+        partition.add(hash(element));
+    }
+
+    /**
+     * Determines whether the element might have been added to the filter. A {@code false} result is definitive,
+     * whereas a {@code true} result may be a false positive.
+     *
+     * @param element the element to check.
+     * @return {@code false} if the element has definitely not been added or has expired, otherwise {@code true}.
+     */
+    boolean mightContain(T element) {
+        final long[] hash = hash(element);
+        for (Partition partition : partitions.tailMap(partitionKey(clock.now())).values()) {
+            if (partition.mightContain(hash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Estimates the current probability of a false positive, based on the fraction of bits set in each slice. As a
+     * membership check consults every live partition, this combines the estimates of all of them.
+     *
+     * @return the estimated false positive probability, between 0 and 1.
+     */
+    double getExpectedFalsePositiveProbability() {
+        double noFalsePositive = 1d;
+        for (Partition partition : partitions.tailMap(partitionKey(clock.now())).values()) {
+            noFalsePositive *= 1d - partition.getExpectedFalsePositiveProbability();
+        }
+        return 1d - noFalsePositive;
+    }
+
+    /**
+     * Returns the approximate number of bytes used by the bit sets of all live partitions.
+     *
+     * @return the memory used by the filter, in bytes.
+     */
+    long getMemoryUsage() {
+        long slices = 0;
+        for (Partition partition : partitions.values()) {
+            slices += partition.slices.size();
+        }
+        return slices * ((numBits + Long.SIZE - 1) / Long.SIZE) * (Long.SIZE / Byte.SIZE);
+    }
+
+    /**
+     * Returns the number of live partitions.
+     *
+     * @return the partition count.
+     */
+    int getPartitionCount() {
+        return partitions.size();
+    }
+
+    /**
+     * Returns the number of insertions into live partitions.
+     *
+     * @return the insertion count.
+     */
+    long getInsertionCount() {
+        long count = 0;
+        for (Partition partition : partitions.values()) {
+            for (Slice slice : partition.slices) {
+                count += slice.insertions.get();
+            }
+        }
+        return count;
+    }
+
+    private void expirePartitions(long now) {
+        final long next = nextExpiryCheck.get();
+        if (now >= next && nextExpiryCheck.compareAndSet(next, now + partitionDuration)) {
+            partitions.headMap(Long.valueOf(now / partitionDuration)).clear();
+        }
+    }
+
+    private Long partitionKey(long expiryTime) {
+        return Long.valueOf(expiryTime / partitionDuration);
+    }
+
+    private long[] hash(T element) {
+        final ByteBuffer bytes = ByteBuffer.wrap(HASH_FUNCTION.hashObject(element, funnel).asBytes())
+                .order(ByteOrder.LITTLE_ENDIAN);
+        return new long[] { bytes.getLong(), bytes.getLong() };
+    }
+
+    /**
+     * The slices holding elements whose expiry times fall within a single window.
+     */
+    private final class Partition {
+        private final List<Slice> slices = new CopyOnWriteArrayList<Slice>();
+
+        Partition() {
+            slices.add(new Slice());
+        }
+
+        void add(long[] hash) {
+            Slice current = slices.get(slices.size() - 1);
+            if (current.insertions.get() >= expectedInsertions) {
+                synchronized (this) {
+                    current = slices.get(slices.size() - 1);
+                    if (current.insertions.get() >= expectedInsertions) {
+                        current = new Slice();
+                        slices.add(current);
+                    }
+                }
+            }
+            current.add(hash);
+        }
+
+        boolean mightContain(long[] hash) {
+            for (Slice slice : slices) {
+                if (slice.mightContain(hash)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        double getExpectedFalsePositiveProbability() {
+            double noFalsePositive = 1d;
+            for (Slice slice : slices) {
+                noFalsePositive *= 1d - slice.getExpectedFalsePositiveProbability();
+            }
+            return 1d - noFalsePositive;
+        }
+    }
+
+    /**
+     * A fixed size bit set addressed with double hashing.
+     */
+    private final class Slice {
+        private final AtomicLongArray bits = new AtomicLongArray((numBits + Long.SIZE - 1) / Long.SIZE);
+        private final AtomicInteger insertions = new AtomicInteger();
+        private final AtomicLong bitCount = new AtomicLong();
+
+        void add(long[] hash) {
+            long combined = hash[0];
+            for (int i = 0; i < numHashFunctions; i++) {
+                set((int) ((combined & Long.MAX_VALUE) % numBits));
+                combined += hash[1];
+            }
+            insertions.incrementAndGet();
+        }
+
+        boolean mightContain(long[] hash) {
+            long combined = hash[0];
+            for (int i = 0; i < numHashFunctions; i++) {
+                int index = (int) ((combined & Long.MAX_VALUE) % numBits);
+                if ((bits.get(index >>> 6) & (1L << index)) == 0) {
+                    return false;
+                }
+                combined += hash[1];
+            }
+            return true;
+        }
+
+        double getExpectedFalsePositiveProbability() {
+            return Math.pow((double) bitCount.get() / numBits, numHashFunctions);
+        }
+
+        private void set(int index) {
+            final int word = index >>> 6;
+            final long mask = 1L << index;
+            long current;
+            do {
+                current = bits.get(word);
+                if ((current & mask) != 0) {
+                    return;
+                }
+            } while (!bits.compareAndSet(word, current, current | mask));
+            bitCount.incrementAndGet();
+        }
+    }
+}
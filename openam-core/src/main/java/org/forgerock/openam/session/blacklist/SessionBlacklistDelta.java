@@ -0,0 +1,151 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.session.blacklist;
+
+import org.forgerock.util.Reject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compact binary encoding of a batch of blacklisted sessions, used to share blacklist changes between servers in a
+ * single CTS token rather than one token per session.
+ * <p/>
+ * Stable session ids are usually the decimal form of a random long, in which case they are written as eight bytes.
+ * Expiry times are written as variable length offsets from the earliest expiry time in the batch, and the whole
+ * batch is deflated.
+ */
+final class SessionBlacklistDelta {
+    private static final int VERSION = 1;
+    private static final int NUMERIC_ID = 0;
+    private static final int STRING_ID = 1;
+
+    private SessionBlacklistDelta() {
+    }
+
+    /**
+     * Encodes the given blacklisted sessions.
+     *
+     * @param entries the stable ids of the blacklisted sessions mapped to their blacklist expiry times.
+     * @return the encoded delta.
+     */
+    static byte[] encode(Map<String, Long> entries) {
+        Reject.ifNull(entries);
+        long baseExpiry = Long.MAX_VALUE;
+        for (Long expiryTime : entries.values()) {
+            baseExpiry = Math.min(baseExpiry, expiryTime);
+        }
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            final DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes));
+            out.writeByte(VERSION);
+            writeVarLong(out, entries.size());
+            writeVarLong(out, entries.isEmpty() ? 0 : baseExpiry);
+            for (Map.Entry<String, Long> entry : entries.entrySet()) {
+                final Long numericId = asNumericId(entry.getKey());
+                if (numericId != null) {
+                    out.writeByte(NUMERIC_ID);
+                    out.writeLong(numericId);
+                } else {
+                    out.writeByte(STRING_ID);
+                    out.writeUTF(entry.getKey());
+                }
+                writeVarLong(out, entry.getValue() - baseExpiry);
+            }
+            out.close();
+        } catch (IOException e) {
+            // Cannot happen when writing to memory
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a delta, passing each blacklisted session to the given listener.
+     *
+     * @param delta the encoded delta.
+     * @param listener the listener to notify of each blacklisted session.
+     * @throws IOException if the delta is corrupt or of an unsupported version.
+     */
+    static void decode(byte[] delta, SessionBlacklist.Listener listener) throws IOException {
+        Reject.ifNull(delta, listener);
+        final DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(delta)));
+        try {
+            final int version = in.readUnsignedByte();
+            if (version != VERSION) {
+                throw new IOException("Unsupported session blacklist delta version: " + version);
+            }
+            final long count = readVarLong(in);
+            final long baseExpiry = readVarLong(in);
+            for (long i = 0; i < count; i++) {
+                final String id;
+                final int type = in.readUnsignedByte();
+                if (type == NUMERIC_ID) {
+                    id = String.valueOf(in.readLong());
+                } else if (type == STRING_ID) {
+                    id = in.readUTF();
+                } else {
+                    throw new IOException("Unknown session id type: " + type);
+                }
+                listener.onBlacklisted(id, baseExpiry + readVarLong(in));
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static Long asNumericId(String id) {
+        if (id.isEmpty() || id.length() > 20) {
+            return null;
+        }
+        try {
+            final long value = Long.parseLong(id);
+            return String.valueOf(value).equals(id) ? value : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            final int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length value");
+    }
+}
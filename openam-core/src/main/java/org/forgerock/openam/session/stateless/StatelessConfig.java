@@ -11,7 +11,7 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2015 ForgeRock AS.
+ * Copyright 2015-2016 ForgeRock AS.
  */
 package org.forgerock.openam.session.stateless;
 
@@ -37,4 +37,12 @@ public class StatelessConfig {
     public int getJWTCacheSize() {
         return properties.getAsInt(StatelessConstants.STATELESS_JWT_CACHE_MAX_SIZE, 10000);
     }
+
+    /**
+     * @see org.forgerock.openam.session.stateless.StatelessConstants#STATELESS_JWT_CACHE_MAX_BYTES
+     * @return The default JWT Cache byte limit of 32MB, or another limit as defined by the user.
+     */
+    public long getJWTCacheMaxBytes() {
+        return properties.getAsLong(StatelessConstants.STATELESS_JWT_CACHE_MAX_BYTES, 32L * 1024 * 1024);
+    }
 }
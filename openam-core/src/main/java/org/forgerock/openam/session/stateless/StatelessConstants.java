@@ -11,7 +11,7 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2015 ForgeRock AS.
+ * Copyright 2015-2016 ForgeRock AS.
  */
 package org.forgerock.openam.session.stateless;
 
@@ -23,4 +23,9 @@ public class StatelessConstants {
      * System Property for Stateless JWT Cache sizing.
      */
     public static final String STATELESS_JWT_CACHE_MAX_SIZE = "org.forgerock.session.stateless.jwtcache.size";
+
+    /**
+     * System Property for the approximate number of bytes of JWTs the Stateless JWT Cache may hold.
+     */
+    public static final String STATELESS_JWT_CACHE_MAX_BYTES = "org.forgerock.session.stateless.jwtcache.maxbytes";
 }
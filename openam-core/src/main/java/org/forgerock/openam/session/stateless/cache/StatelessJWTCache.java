@@ -15,14 +15,25 @@
  */
 package org.forgerock.openam.session.stateless.cache;
 
-import java.util.Collections;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import org.forgerock.openam.session.stateless.StatelessConfig;
-import org.forgerock.openam.utils.collections.LeastRecentlyUsed;
 import org.forgerock.util.Reject;
 import org.forgerock.util.annotations.VisibleForTesting;
 
@@ -36,21 +47,62 @@ import com.iplanet.services.naming.ServiceListeners;
  * This cache acts as a performance enhancement which will reduce the number of times JWT
  * tokens need to be decrypted and decoded.
  *
- * This cache is intentionally unable to perform the reverse lookup of SessionInfo to
- * JWT, as we expect the JWT to change each time the SessionInfo changes.
+ * Entries are keyed by a SHA-256 digest of the JWT rather than the JWT itself, so lookups
+ * compare 32 byte keys instead of multi-kilobyte strings. The cache is split into shards,
+ * each guarded by its own lock, so validations of different sessions do not contend with
+ * each other. Each shard evicts its least recently used entries once it holds more than its
+ * share of either the configured number of entries or the configured number of bytes, where
+ * the size of an entry is estimated from the length of its JWT.
+ *
+ * A reverse index from session ID to cached digests allows {@link #contains(SessionInfo)}
+ * without scanning the cache. This cache is still intentionally unable to return the JWT for
+ * a SessionInfo, as we expect the JWT to change each time the SessionInfo changes.
  *
  * Assumption: There is only one representation of a JWT to the SessionInfo it contains.
  *
- * Thread Safety: This class uses a synchronized data structure and so is thread safe.
+ * Thread Safety: This class is thread safe.
  */
 @Singleton
 public class StatelessJWTCache {
-    private final Map<String, SessionInfo> sessionInfoCache;
+
+    private static final int MAX_SHARDS = 16;
+    /**
+     * Estimated fixed cost in bytes of each entry, covering the digest, map entry and index.
+     */
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private static final ThreadLocal<MessageDigest> DIGEST = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is not available", e);
+            }
+        }
+    };
+
+    private final Shard[] shards;
+    private final ConcurrentMap<String, Set<DigestKey>> sessionIndex =
+            new ConcurrentHashMap<String, Set<DigestKey>>();
+    private final Object[] indexLocks = new Object[MAX_SHARDS];
 
     @Inject
     public StatelessJWTCache(StatelessConfig config, ServiceListeners listeners) {
-        sessionInfoCache = Collections.synchronizedMap(
-                new LeastRecentlyUsed<String, SessionInfo>(config.getJWTCacheSize()));
+        int maxEntries = Math.max(config.getJWTCacheSize(), 0);
+        long maxBytes = config.getJWTCacheMaxBytes();
+
+        for (int i = 0; i < indexLocks.length; i++) {
+            indexLocks[i] = new Object();
+        }
+
+        int shardCount = Math.max(Math.min(maxEntries, MAX_SHARDS), 1);
+        shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            int entries = maxEntries / shardCount + (i < maxEntries % shardCount ? 1 : 0);
+            long bytes = maxBytes > 0 ? Math.max(maxBytes / shardCount, 1) : Long.MAX_VALUE;
+            shards[i] = new Shard(entries, bytes);
+        }
 
         // Responds to configuration changes, preventing possibly invalid keys from remaining in the cache
         final ServiceListeners.Action action = new ServiceListeners.Action() {
@@ -70,7 +122,8 @@ public class StatelessJWTCache {
      */
     public void cache(SessionInfo info, String jwtToken) {
         Reject.ifNull(info, jwtToken, "Arguments cannot be null.");
-        sessionInfoCache.put(jwtToken, info);
+        DigestKey key = new DigestKey(jwtToken);
+        shardFor(key).put(key, new CachedSession(info, ENTRY_OVERHEAD + 2L * jwtToken.length()));
     }
 
     /**
@@ -78,7 +131,11 @@ public class StatelessJWTCache {
      * @return Possibly null. Cached SessionInfo that corresponds to the given JWT token.
      */
     public SessionInfo getSessionInfo(String jwt) {
-        return sessionInfoCache.get(jwt);
+        if (jwt == null) {
+            return null;
+        }
+        DigestKey key = new DigestKey(jwt);
+        return shardFor(key).get(key);
     }
 
     /**
@@ -86,7 +143,23 @@ public class StatelessJWTCache {
      * @return True if there is a JWT representation for this SessionInfo.
      */
     public boolean contains(SessionInfo info) {
-        return sessionInfoCache.containsValue(info);
+        if (info == null || info.getSessionID() == null) {
+            return false;
+        }
+        List<DigestKey> keys;
+        synchronized (indexLockFor(info.getSessionID())) {
+            Set<DigestKey> indexed = sessionIndex.get(info.getSessionID());
+            if (indexed == null) {
+                return false;
+            }
+            keys = new ArrayList<DigestKey>(indexed);
+        }
+        for (DigestKey key : keys) {
+            if (info.equals(shardFor(key).peek(key))) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -94,7 +167,11 @@ public class StatelessJWTCache {
      * @return True if this JWT has been stored in the cache previously.
      */
     public boolean contains(String jwtToken) {
-        return sessionInfoCache.containsKey(jwtToken);
+        if (jwtToken == null) {
+            return false;
+        }
+        DigestKey key = new DigestKey(jwtToken);
+        return shardFor(key).peek(key) != null;
     }
 
     /**
@@ -105,6 +182,238 @@ public class StatelessJWTCache {
      */
     @VisibleForTesting
     void clear() {
-        sessionInfoCache.clear();
+        for (Shard shard : shards) {
+            shard.clear();
+        }
+    }
+
+    /**
+     * Takes a snapshot of the statistics of each shard of the cache.
+     *
+     * @return Non null list with one entry per shard.
+     */
+    public List<ShardStatistics> getStatistics() {
+        List<ShardStatistics> statistics = new ArrayList<ShardStatistics>(shards.length);
+        for (Shard shard : shards) {
+            statistics.add(shard.statistics());
+        }
+        return statistics;
+    }
+
+    private Shard shardFor(DigestKey key) {
+        return shards[(key.hashCode() & Integer.MAX_VALUE) % shards.length];
+    }
+
+    private void index(String sessionId, DigestKey key) {
+        if (sessionId == null) {
+            return;
+        }
+        synchronized (indexLockFor(sessionId)) {
+            Set<DigestKey> keys = sessionIndex.get(sessionId);
+            if (keys == null) {
+                keys = new HashSet<DigestKey>(2);
+                sessionIndex.put(sessionId, keys);
+            }
+            keys.add(key);
+        }
+    }
+
+    private void unindex(String sessionId, DigestKey key) {
+        if (sessionId == null) {
+            return;
+        }
+        synchronized (indexLockFor(sessionId)) {
+            Set<DigestKey> keys = sessionIndex.get(sessionId);
+            if (keys != null && keys.remove(key) && keys.isEmpty()) {
+                sessionIndex.remove(sessionId);
+            }
+        }
+    }
+
+    private Object indexLockFor(String sessionId) {
+        return indexLocks[(sessionId.hashCode() & Integer.MAX_VALUE) % indexLocks.length];
+    }
+
+    /**
+     * A compact cache key holding the SHA-256 digest of a JWT.
+     */
+    private static final class DigestKey {
+        private final byte[] digest;
+        private final int hash;
+
+        private DigestKey(String jwt) {
+            this.digest = DIGEST.get().digest(jwt.getBytes(StandardCharsets.UTF_8));
+            this.hash = Arrays.hashCode(digest);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof DigestKey && Arrays.equals(digest, ((DigestKey) o).digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class CachedSession {
+        private final SessionInfo info;
+        private final String sessionId;
+        private final long weight;
+
+        private CachedSession(SessionInfo info, long weight) {
+            this.info = info;
+            this.sessionId = info.getSessionID();
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * A lock protected, access ordered partition of the cache bounded both by entries and by estimated bytes.
+     */
+    private final class Shard {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<DigestKey, CachedSession> entries =
+                new LinkedHashMap<DigestKey, CachedSession>(16, 0.75f, true);
+        private final int maxEntries;
+        private final long maxBytes;
+        private long bytes;
+        private long hits;
+        private long misses;
+        private long evictions;
+
+        private Shard(int maxEntries, long maxBytes) {
+            this.maxEntries = maxEntries;
+            this.maxBytes = maxBytes;
+        }
+
+        void put(DigestKey key, CachedSession session) {
+            if (maxEntries == 0 || session.weight > maxBytes) {
+                return;
+            }
+            lock.lock();
+            try {
+                CachedSession previous = entries.put(key, session);
+                if (previous != null) {
+                    bytes -= previous.weight;
+                    unindex(previous.sessionId, key);
+                }
+                bytes += session.weight;
+                index(session.sessionId, key);
+
+                Iterator<Map.Entry<DigestKey, CachedSession>> it = entries.entrySet().iterator();
+                while ((entries.size() > maxEntries || bytes > maxBytes) && it.hasNext()) {
+                    Map.Entry<DigestKey, CachedSession> eldest = it.next();
+                    it.remove();
+                    bytes -= eldest.getValue().weight;
+                    unindex(eldest.getValue().sessionId, eldest.getKey());
+                    evictions++;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        SessionInfo get(DigestKey key) {
+            lock.lock();
+            try {
+                CachedSession session = entries.get(key);
+                if (session == null) {
+                    misses++;
+                    return null;
+                }
+                hits++;
+                return session.info;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        SessionInfo peek(DigestKey key) {
+            lock.lock();
+            try {
+                CachedSession session = entries.get(key);
+                return session == null ? null : session.info;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void clear() {
+            lock.lock();
+            try {
+                for (Map.Entry<DigestKey, CachedSession> entry : entries.entrySet()) {
+                    unindex(entry.getValue().sessionId, entry.getKey());
+                }
+                entries.clear();
+                bytes = 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        ShardStatistics statistics() {
+            lock.lock();
+            try {
+                return new ShardStatistics(entries.size(), bytes, hits, misses, evictions);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * A point in time view of the usage of one shard of the cache.
+     */
+    public static final class ShardStatistics {
+        private final int entries;
+        private final long bytes;
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+
+        ShardStatistics(int entries, long bytes, long hits, long misses, long evictions) {
+            this.entries = entries;
+            this.bytes = bytes;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+        }
+
+        /**
+         * @return The number of cached JWTs.
+         */
+        public int getEntries() {
+            return entries;
+        }
+
+        /**
+         * @return The estimated number of bytes held by the cached entries.
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * @return The number of lookups which found a cached SessionInfo.
+         */
+        public long getHits() {
+            return hits;
+        }
+
+        /**
+         * @return The number of lookups which found nothing.
+         */
+        public long getMisses() {
+            return misses;
+        }
+
+        /**
+         * @return The number of entries removed to keep the shard within its bounds.
+         */
+        public long getEvictions() {
+            return evictions;
+        }
     }
-}
\ No newline at end of file
+}
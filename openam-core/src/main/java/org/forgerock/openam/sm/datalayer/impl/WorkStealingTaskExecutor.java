@@ -0,0 +1,298 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.sm.datalayer.impl;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.forgerock.openam.cts.api.CoreTokenConstants;
+import org.forgerock.openam.cts.impl.queue.QueueSelector;
+import org.forgerock.openam.cts.impl.queue.config.CTSQueueConfiguration;
+import org.forgerock.openam.cts.monitoring.CTSQueueMonitoringStore;
+import org.forgerock.openam.shared.concurrency.ThreadMonitor;
+import org.forgerock.openam.sm.datalayer.api.DataLayerConstants;
+import org.forgerock.openam.sm.datalayer.api.DataLayerException;
+import org.forgerock.openam.sm.datalayer.api.QueueTimeoutException;
+import org.forgerock.openam.sm.datalayer.api.Task;
+import org.forgerock.openam.sm.datalayer.api.TaskExecutor;
+import org.forgerock.openam.sm.datalayer.api.TokenStorageAdapter;
+
+import com.sun.identity.shared.debug.Debug;
+
+/**
+ * A TaskExecutor which preserves the ordering of tasks for each token without tying each token to one worker thread.
+ * <br/>
+ * Tokens are hashed into a number of task groups, several times larger than the number of task processors. Each
+ * group has its own bounded queue, and a group with pending work is placed on a single shared ready queue which all
+ * {@link SeriesTaskExecutorThread} processors take from. Only one processor works on a group at a time, so tasks for
+ * the same token are still performed in the order they were submitted, but any idle processor can pick up any group.
+ * A slow operation therefore only holds up the tokens in its own group rather than every token hashed to the same
+ * processor as it does with {@link SeriesTaskExecutor}.
+ * <br/>
+ * When a processor picks up a group it performs up to {@link CTSQueueConfiguration#getBatchSize()} of the group's
+ * queued tasks back to back on its connection before returning the group to the ready queue, which amortises the
+ * queue hand-off and connection validation over the batch. A task failing with an unexpected runtime error ends its
+ * batch: it and the remaining tasks in the batch are given the error rather than being performed on a connection in
+ * an unknown state.
+ * <br/>
+ * Queries have no ordering requirement and are spread over the groups in turn.
+ *
+ * @see SeriesTaskExecutor
+ */
+public class WorkStealingTaskExecutor implements TaskExecutor {
+
+    /**
+     * Number of task groups created for each task processor.
+     */
+    static final int GROUPS_PER_PROCESSOR = 4;
+
+    private final Debug debug;
+    private final SeriesTaskExecutorThreadFactory processorFactory;
+    private final ThreadMonitor monitor;
+    private final CTSQueueConfiguration configuration;
+    private final ExecutorService poolService;
+    private final CTSQueueMonitoringStore monitoringStore;
+    private final BlockingQueue<Task> readyGroups = new LinkedBlockingQueue<Task>();
+    private final AtomicInteger queryCounter = new AtomicInteger();
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private TaskGroup[] groups;
+    private int batchSize;
+    private boolean initialised = false;
+
+    /**
+     * Create a default instance of the WorkStealingTaskExecutor.
+     *
+     * @param poolService Required to schedule worker threads.
+     * @param processorFactory Required to create worker thread instances.
+     * @param monitor Required to ensure threads are restarted.
+     * @param configuration Required to determine runtime configuration options.
+     * @param monitoringStore Required to record queue depth and wait times.
+     * @param debug Required for debugging.
+     */
+    @Inject
+    public WorkStealingTaskExecutor(
+            ExecutorService poolService,
+            SeriesTaskExecutorThreadFactory processorFactory,
+            ThreadMonitor monitor,
+            CTSQueueConfiguration configuration,
+            CTSQueueMonitoringStore monitoringStore,
+            @Named(DataLayerConstants.DATA_LAYER_DEBUG) Debug debug) {
+        this.poolService = poolService;
+        this.processorFactory = processorFactory;
+        this.monitor = monitor;
+        this.configuration = configuration;
+        this.monitoringStore = monitoringStore;
+        this.debug = debug;
+    }
+
+    @Override
+    public void execute(String tokenId, Task task) throws DataLayerException {
+        TaskGroup group = getGroup(tokenId);
+        QueuedTask queued = new QueuedTask(new SeriesTaskExecutor.AuditRequestContextPropagatingTask(task));
+        try {
+            debug("Queuing Task {0}", task);
+            if (!group.tasks.offer(queued, configuration.getQueueTimeout(), TimeUnit.SECONDS)) {
+                throw new QueueTimeoutException(task);
+            }
+        } catch (InterruptedException e) {
+            throw new QueueTimeoutException(task, e);
+        }
+        monitoringStore.addQueueDepth(queueDepth.incrementAndGet());
+        group.schedule();
+    }
+
+    /**
+     * Create the task groups and a TaskProcessor thread for each configured connection, all sharing the ready
+     * queue. Ensure each thread is monitored by {@link ThreadMonitor}.
+     *
+     * Synchronized to ensure that only one set of threads are initialised.
+     */
+    @Override
+    public synchronized void start() throws DataLayerException {
+        if (initialised) {
+            return;
+        }
+
+        int processors = configuration.getProcessors();
+        batchSize = configuration.getBatchSize();
+
+        groups = new TaskGroup[processors * GROUPS_PER_PROCESSOR];
+        for (int i = 0; i < groups.length; i++) {
+            groups[i] = new TaskGroup(configuration.getQueueSize());
+        }
+
+        for (int i = 0; i < processors; i++) {
+            SeriesTaskExecutorThread processor = processorFactory.create(readyGroups);
+            monitor.watchThread(poolService, processor);
+        }
+        debug("Created {0} Task Processors for {1} task groups", processors, groups.length);
+
+        initialised = true;
+    }
+
+    /**
+     * Select the group for the given Token ID. The selection is consistent for a given Token ID, and
+     * round robin for queries.
+     *
+     * @param tokenId Token ID, or null for a query.
+     * @return A non null task group.
+     */
+    private TaskGroup getGroup(String tokenId) {
+        if (tokenId == null) {
+            return groups[(queryCounter.getAndIncrement() & Integer.MAX_VALUE) % groups.length];
+        }
+        int select = QueueSelector.select(tokenId, groups.length);
+        debug("Select Group: Token ID {0} - Group {1}", tokenId, select);
+        return groups[select];
+    }
+
+    private void debug(String format, Object... args) {
+        if (debug.messageEnabled()) {
+            debug.message(MessageFormat.format(CoreTokenConstants.DEBUG_ASYNC_HEADER + format, args));
+        }
+    }
+
+    private void error(String message, Throwable t) {
+        debug.error(CoreTokenConstants.DEBUG_ASYNC_HEADER + "Task Processor Error: " + message, t);
+    }
+
+    /**
+     * A task together with the time it was queued.
+     */
+    private static final class QueuedTask {
+        private final Task task;
+        private final long queuedAt = System.currentTimeMillis();
+
+        private QueuedTask(Task task) {
+            this.task = task;
+        }
+    }
+
+    /**
+     * The pending tasks for a subset of tokens. The group itself is the unit of work placed on the ready queue, and
+     * is on that queue at most once at any time, so at most one processor performs its tasks at once.
+     */
+    private final class TaskGroup implements Task {
+
+        private final BlockingQueue<QueuedTask> tasks;
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        private TaskGroup(int queueSize) {
+            this.tasks = new LinkedBlockingQueue<QueuedTask>(queueSize);
+        }
+
+        /**
+         * Places this group on the ready queue unless it is already there or being processed.
+         */
+        void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                readyGroups.add(this);
+            }
+        }
+
+        /**
+         * Hands the group back after a batch. A task queued while the batch was running will have seen the group as
+         * scheduled, so the queue is checked again once the flag is cleared.
+         */
+        void release() {
+            scheduled.set(false);
+            if (!tasks.isEmpty()) {
+                schedule();
+            }
+        }
+
+        private List<QueuedTask> takeBatch() {
+            List<QueuedTask> batch = new ArrayList<QueuedTask>(batchSize);
+            tasks.drainTo(batch, batchSize);
+            queueDepth.addAndGet(-batch.size());
+            long now = System.currentTimeMillis();
+            for (QueuedTask queued : batch) {
+                monitoringStore.addQueueWaitTime(now - queued.queuedAt);
+            }
+            return batch;
+        }
+
+        /**
+         * Performs the batch on the given connection. A task which fails with a {@link DataLayerException} has
+         * already reported the failure to its own result handler, so the batch carries on. Any other failure leaves
+         * the task and the state of the connection unknown, so the failing task and every task still pending in the
+         * batch are failed rather than performed on that connection.
+         */
+        @Override
+        public <T> void execute(T connection, TokenStorageAdapter<T> adapter) throws DataLayerException {
+            List<QueuedTask> batch = takeBatch();
+            int next = 0;
+            try {
+                while (next < batch.size()) {
+                    Task task = batch.get(next++).task;
+                    try {
+                        debug("process Task {0}", task);
+                        task.execute(connection, adapter);
+                    } catch (DataLayerException e) {
+                        // The task has already reported the error to its result handler.
+                        error("processing task", e);
+                    } catch (RuntimeException e) {
+                        error("processing task", e);
+                        List<QueuedTask> pending = batch.subList(next - 1, batch.size());
+                        next = batch.size();
+                        failPending(pending, new DataLayerException("Unexpected error processing task", e));
+                    }
+                }
+            } finally {
+                if (next < batch.size()) {
+                    failPending(batch.subList(next, batch.size()),
+                            new DataLayerException("Task batch was not completed"));
+                }
+                release();
+            }
+        }
+
+        @Override
+        public void processError(DataLayerException error) {
+            try {
+                failPending(takeBatch(), error);
+            } finally {
+                release();
+            }
+        }
+
+        private void failPending(List<QueuedTask> pending, DataLayerException error) {
+            for (QueuedTask queued : pending) {
+                try {
+                    queued.task.processError(error);
+                } catch (RuntimeException e) {
+                    error("reporting task error", e);
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return MessageFormat.format("TaskGroup: {0} queued", tasks.size());
+        }
+    }
+}
@@ -11,7 +11,7 @@
 * Header, with the fields enclosed by brackets [] replaced by your own identifying
 * information: "Portions copyright [year] [name of copyright owner]".
 *
-* Copyright 2014 ForgeRock AS.
+* Copyright 2014-2016 ForgeRock AS.
 */
 package com.iplanet.dpro.session.monitoring;
 
@@ -20,6 +20,7 @@ import java.util.concurrent.AbstractExecutorService;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
+import org.forgerock.openam.shared.monitoring.MetricsRegistry;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Mockito.mock;
@@ -43,7 +44,7 @@ public class SessionMonitoringStoreTest {
     public void setUp() {
         mockFactory = mock(SessionMonitoringTimingStoreFactory.class);
         testSessionMonitoringStore = new SessionMonitoringStore(service, mockFactory, refreshStore,
-                propertyStore, destroyStore, logoutStore);
+                propertyStore, destroyStore, logoutStore, new MetricsRegistry());
     }
 
     @Test
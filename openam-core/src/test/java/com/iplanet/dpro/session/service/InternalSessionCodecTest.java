@@ -0,0 +1,194 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.iplanet.dpro.session.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.forgerock.openam.cts.CoreTokenConfig;
+import org.forgerock.openam.cts.utils.JSONSerialisation;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.core.Version;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.KeyDeserializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.iplanet.dpro.session.SessionID;
+
+public class InternalSessionCodecTest {
+
+    private static final String SID =
+            "AQIC5wM2LY4SfczP_8x74sOXqIX5N5SloYYSYRAOGk1kPP0.*AAJTSQACMDIAAlNLABM3OTgyMzAzOTM0Mjc1NjE4NTQ0AAJTMQACMDE.*";
+    private static final String RESTRICTED_SID =
+            "AQIC5wM2LY4SfcyTLz6VjQ7nkFeDcEh8K5dXkIENpXlpg28.*AAJTSQACMDIAAlMxAAIwMQACU0sAEzc5ODIzMDM5MzQyNzU2MTg1NDQ.*";
+    private static final String SESSION_JSON = "{"
+            + "\"clientDomain\":\"dc=openam,dc=forgerock,dc=org\","
+            + "\"clientID\":\"id=demo,ou=user,dc=openam,dc=forgerock,dc=org\","
+            + "\"cookieMode\":true,"
+            + "\"cookieStr\":null,"
+            + "\"creationTime\":1396296561,"
+            + "\"isISStored\":true,"
+            + "\"latestAccessTime\":1396296600,"
+            + "\"maxCachingTime\":3,"
+            + "\"maxIdleTime\":30,"
+            + "\"maxSessionTime\":120,"
+            + "\"reschedulePossible\":false,"
+            + "\"restrictedTokensBySid\":{\"" + RESTRICTED_SID + "\":{"
+            + "\"@class\":\"com.iplanet.dpro.session.DNOrIPAddressListTokenRestriction\","
+            + "\"addressList\":[],"
+            + "\"asString\":\"Fzy2GsI/O1TsXhvlVuqjqIuTG2k=\","
+            + "\"dn\":\"id=myagent,ou=agent,dc=openam,dc=forgerock,dc=org\"}},"
+            + "\"sessionEventURLs\":{\"http://app.example.com:48080/agentapp/notification\":[{"
+            + "\"comingFromAuth\":false,"
+            + "\"cookieMode\":null,"
+            + "\"encryptedString\":\"" + RESTRICTED_SID + "\","
+            + "\"sessionDomain\":\"\","
+            + "\"sessionServer\":\"lb.example.com\","
+            + "\"sessionServerID\":\"02\","
+            + "\"sessionServerPort\":\"8080\","
+            + "\"sessionServerProtocol\":\"http\","
+            + "\"sessionServerURI\":\"/openam\"}]},"
+            + "\"sessionID\":{"
+            + "\"comingFromAuth\":true,"
+            + "\"cookieMode\":false,"
+            + "\"encryptedString\":\"" + SID + "\","
+            + "\"sessionDomain\":\"dc=openam,dc=forgerock,dc=org\","
+            + "\"sessionServer\":\"\","
+            + "\"sessionServerID\":\"\","
+            + "\"sessionServerPort\":\"\","
+            + "\"sessionServerProtocol\":\"\","
+            + "\"sessionServerURI\":\"\"},"
+            + "\"sessionProperties\":{\"UserId\":\"demo\",\"Locale\":\"é中\",\"Host\":\"127.0.0.1\"},"
+            + "\"sessionState\":1,"
+            + "\"sessionType\":0,"
+            + "\"timedOutAt\":0,"
+            + "\"willExpireFlag\":true}";
+
+    private ObjectMapper mapper;
+    private JSONSerialisation serialisation;
+
+    @BeforeMethod
+    public void setup() {
+        mapper = new ObjectMapper();
+        mapper.setVisibilityChecker(mapper.getSerializationConfig().getDefaultVisibilityChecker()
+                .withFieldVisibility(JsonAutoDetect.Visibility.ANY)
+                .withGetterVisibility(JsonAutoDetect.Visibility.NONE)
+                .withIsGetterVisibility(JsonAutoDetect.Visibility.NONE)
+                .withSetterVisibility(JsonAutoDetect.Visibility.NONE)
+                .withCreatorVisibility(JsonAutoDetect.Visibility.NONE));
+        SimpleModule module = new SimpleModule("test", Version.unknownVersion());
+        module.addKeyDeserializer(SessionID.class, new KeyDeserializer() {
+            @Override
+            public Object deserializeKey(String key, DeserializationContext context) {
+                return new SessionID(key);
+            }
+        });
+        mapper.registerModule(module);
+        serialisation = new JSONSerialisation(mapper);
+    }
+
+    @Test
+    public void shouldDecodeTheStateTheJsonFormatStores() throws IOException {
+        // Given
+        InternalSession session = serialisation.deserialise(SESSION_JSON, InternalSession.class);
+
+        // When
+        InternalSession result = InternalSessionCodec.decode(InternalSessionCodec.encode(session),
+                InternalSessionCodec.getLatestAccessTime(session));
+
+        // Then
+        assertThat(mapper.readTree(serialisation.serialise(result)))
+                .isEqualTo(mapper.readTree(serialisation.serialise(session)));
+        assertThat(result.getRestrictionForToken(new SessionID(RESTRICTED_SID)))
+                .isEqualTo(session.getRestrictionForToken(new SessionID(RESTRICTED_SID)));
+        assertThat(result.getRestrictedTokens()).containsOnly(new SessionID(RESTRICTED_SID));
+    }
+
+    @Test
+    public void shouldDecodeSessionWithoutOptionalState() throws IOException {
+        // Given
+        InternalSession session = new InternalSession();
+
+        // When
+        InternalSession result = InternalSessionCodec.decode(InternalSessionCodec.encode(session),
+                InternalSessionCodec.getLatestAccessTime(session));
+
+        // Then
+        assertThat(result.getID()).isNull();
+        assertThat(mapper.readTree(serialisation.serialise(result)))
+                .isEqualTo(mapper.readTree(serialisation.serialise(session)));
+    }
+
+    @Test
+    public void shouldKeepLatestAccessTimeOutOfTheBlob() throws IOException {
+        // Given
+        InternalSession session = serialisation.deserialise(SESSION_JSON, InternalSession.class);
+        byte[] blob = InternalSessionCodec.encode(session);
+
+        // When
+        session.restoreLatestAccessTime(1396299999L);
+
+        // Then
+        assertThat(InternalSessionCodec.encode(session)).isEqualTo(blob);
+        assertThat(InternalSessionCodec.getLatestAccessTime(InternalSessionCodec.decode(blob, 1396299999L)))
+                .isEqualTo(1396299999L);
+    }
+
+    @Test
+    public void shouldOnlyRecogniseBlobsInThisFormat() throws IOException {
+        // Given
+        InternalSession session = serialisation.deserialise(SESSION_JSON, InternalSession.class);
+        CoreTokenConfig config = mock(CoreTokenConfig.class);
+        given(config.isBinaryFormat()).willReturn(true);
+        JSONSerialisation binary = new JSONSerialisation(mapper, config);
+
+        // When
+        byte[] encoded = InternalSessionCodec.encode(session);
+
+        // Then
+        assertThat(InternalSessionCodec.isEncoded(encoded)).isTrue();
+        assertThat(JSONSerialisation.isBinary(encoded)).isTrue();
+        assertThat(InternalSessionCodec.isEncoded(binary.serialiseToBlob(session))).isFalse();
+        assertThat(InternalSessionCodec.isEncoded(SESSION_JSON.getBytes("UTF-8"))).isFalse();
+        assertThat(InternalSessionCodec.isEncoded(null)).isFalse();
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void shouldRejectTruncatedBlob() throws IOException {
+        // Given
+        byte[] blob = InternalSessionCodec.encode(serialisation.deserialise(SESSION_JSON, InternalSession.class));
+
+        // When
+        InternalSessionCodec.decode(Arrays.copyOf(blob, blob.length - 3), 0);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void shouldRejectTrailingData() throws IOException {
+        // Given
+        byte[] blob = InternalSessionCodec.encode(serialisation.deserialise(SESSION_JSON, InternalSession.class));
+
+        // When
+        InternalSessionCodec.decode(Arrays.copyOf(blob, blob.length + 1), 0);
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package com.iplanet.dpro.session.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+import com.iplanet.dpro.session.SessionEvent;
+import com.iplanet.dpro.session.share.SessionInfo;
+import com.iplanet.dpro.session.share.SessionNotification;
+import com.iplanet.services.comm.share.NotificationSet;
+import com.sun.identity.shared.debug.Debug;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+public class SessionNotificationDispatcherTest {
+
+    private static final int BATCH_SIZE = 3;
+
+    private URL agentUrl;
+    private URL serverUrl;
+    private RecordingTransport transport;
+    private SessionNotificationDispatcher dispatcher;
+
+    @BeforeMethod
+    public void setup() throws Exception {
+        agentUrl = new URL("http://agent.example.com:8080/agentapp/notification");
+        serverUrl = new URL("http://openam.example.com:8080/openam/notificationservice");
+        transport = new RecordingTransport();
+        dispatcher = new SessionNotificationDispatcher(mock(Debug.class), new DirectExecutor(), transport, 100,
+                BATCH_SIZE);
+    }
+
+    @Test
+    public void shouldWaitForBatchWindowBeforeSending() {
+        // Given
+        dispatcher.dispatch(agentUrl, notification("sid1", 1));
+        dispatcher.dispatch(agentUrl, notification("sid2", 1));
+
+        // When
+        int sentBeforeFlush = transport.sent.size();
+        dispatcher.flush();
+
+        // Then
+        assertThat(sentBeforeFlush).isEqualTo(0);
+        assertThat(transport.sent).hasSize(1);
+        assertThat(transport.sent.get(0).getNotifications()).hasSize(2);
+        assertThat(dispatcher.getQueueDepth()).isEqualTo(0);
+        assertThat(dispatcher.getNotificationsSent()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldOnlySendLatestNotificationForSession() {
+        // Given
+        dispatcher.dispatch(agentUrl, notification("sid1", SessionEvent.PROPERTY_CHANGED));
+        dispatcher.dispatch(agentUrl, notification("sid2", SessionEvent.PROPERTY_CHANGED));
+        dispatcher.dispatch(agentUrl, notification("sid1", SessionEvent.LOGOUT));
+
+        // When
+        dispatcher.flush();
+
+        // Then
+        NotificationSet sent = transport.sent.get(0);
+        assertThat(sent.getNotifications()).hasSize(2);
+        assertThat(sent.getNotifications().get(0).getContent())
+                .contains("sid=\"sid1\"").contains("<Type>" + SessionEvent.LOGOUT + "</Type>");
+        assertThat(dispatcher.getNotificationsSuperseded()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldSendFullBatchWithoutWaitingForBatchWindow() {
+        // Given
+        for (int i = 0; i < BATCH_SIZE + 1; i++) {
+            dispatcher.dispatch(agentUrl, notification("sid" + i, 1));
+        }
+
+        // Then
+        assertThat(transport.sent).hasSize(1);
+        assertThat(transport.sent.get(0).getNotifications()).hasSize(BATCH_SIZE);
+        assertThat(dispatcher.getQueueDepth()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldSendEachDestinationSeparately() {
+        // Given
+        dispatcher.dispatch(agentUrl, notification("sid1", 1));
+        dispatcher.dispatch(serverUrl, notification("sid1", 1));
+
+        // When
+        dispatcher.flush();
+
+        // Then
+        assertThat(transport.sent).hasSize(2);
+        assertThat(transport.urls).containsOnly(agentUrl, serverUrl);
+        assertThat(dispatcher.getDestinations()).hasSize(2);
+    }
+
+    @Test
+    public void shouldSendStraightAwayWithoutBatchWindow() {
+        // Given
+        dispatcher = new SessionNotificationDispatcher(mock(Debug.class), new DirectExecutor(), transport, 0,
+                BATCH_SIZE);
+
+        // When
+        dispatcher.dispatch(agentUrl, notification("sid1", 1));
+        dispatcher.dispatch(agentUrl, notification("sid1", 2));
+
+        // Then
+        assertThat(transport.sent).hasSize(2);
+        assertThat(dispatcher.getNotificationsSuperseded()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldTellListenerAboutNewDestinations() {
+        // Given
+        final List<URL> added = new ArrayList<URL>();
+        dispatcher.addDestinationListener(new SessionNotificationDispatcher.DestinationListener() {
+            @Override
+            public void destinationAdded(SessionNotificationDispatcher.Destination destination) {
+                added.add(destination.getUrl());
+            }
+        });
+
+        // When
+        dispatcher.dispatch(agentUrl, notification("sid1", 1));
+        dispatcher.dispatch(agentUrl, notification("sid2", 1));
+        dispatcher.dispatch(serverUrl, notification("sid1", 1));
+
+        // Then
+        assertThat(added).containsExactly(agentUrl, serverUrl);
+    }
+
+    @Test
+    public void shouldCountFailedSends() {
+        // Given
+        transport.fail = true;
+        dispatcher.dispatch(agentUrl, notification("sid1", 1));
+
+        // When
+        dispatcher.flush();
+
+        // Then
+        SessionNotificationDispatcher.Destination destination = dispatcher.getDestinations().iterator().next();
+        assertThat(destination.getSendFailures()).isEqualTo(1);
+        assertThat(destination.getNotificationsSent()).isEqualTo(0);
+        assertThat(destination.getQueueDepth()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldSendPendingNotificationsOnShutdown() {
+        // Given
+        dispatcher.dispatch(agentUrl, notification("sid1", 1));
+
+        // When
+        dispatcher.shutdown();
+
+        // Then
+        assertThat(transport.sent).hasSize(1);
+    }
+
+    @Test
+    public void shouldLeavePendingNotificationsToSendInProgressOnShutdown() {
+        // Given
+        dispatcher = new SessionNotificationDispatcher(mock(Debug.class), new DirectExecutor(), transport, 0,
+                BATCH_SIZE);
+        transport.onSend = new Runnable() {
+            @Override
+            public void run() {
+                transport.onSend = null;
+                dispatcher.dispatch(agentUrl, notification("sid2", 1));
+                dispatcher.shutdown();
+                dispatcher.dispatch(agentUrl, notification("sid3", 1));
+            }
+        };
+
+        // When
+        dispatcher.dispatch(agentUrl, notification("sid1", 1));
+
+        // Then
+        assertThat(transport.maxConcurrentSends).isEqualTo(1);
+        assertThat(transport.sent).hasSize(2);
+        assertThat(transport.sent.get(1).getNotifications()).hasSize(2);
+        assertThat(dispatcher.getQueueDepth()).isEqualTo(0);
+    }
+
+    private static SessionNotification notification(String sessionId, int eventType) {
+        SessionInfo info = new SessionInfo();
+        info.setSessionID(sessionId);
+        return new SessionNotification(info, eventType, System.currentTimeMillis());
+    }
+
+    private static final class DirectExecutor implements Executor {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    }
+
+    private static final class RecordingTransport implements SessionNotificationDispatcher.NotificationTransport {
+        private final List<URL> urls = new ArrayList<URL>();
+        private final List<NotificationSet> sent = new ArrayList<NotificationSet>();
+        private boolean fail = false;
+        private Runnable onSend;
+        private int concurrentSends;
+        private int maxConcurrentSends;
+
+        @Override
+        public void send(URL url, NotificationSet notificationSet) throws Exception {
+            if (fail) {
+                throw new Exception("Unreachable");
+            }
+            concurrentSends++;
+            maxConcurrentSends = Math.max(maxConcurrentSends, concurrentSends);
+            try {
+                urls.add(url);
+                sent.add(notificationSet);
+                if (onSend != null) {
+                    onSend.run();
+                }
+            } finally {
+                concurrentSends--;
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.iplanet.services.comm.share;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+public class BinaryPLLCodecTest {
+
+    @Test
+    public void shouldReadRequestSetsThatWereWritten() throws IOException {
+        // Given
+        RequestSet first = new RequestSet("session");
+        Request request = new Request("<SessionRequest vers=\"1.0\" reqid=\"1\">é中😀</SessionRequest>");
+        request.setDtdID("dtd");
+        request.setSessionID("sid");
+        first.addRequest(request);
+        first.addRequest(new Request("second"));
+        RequestSet second = new RequestSet("naming");
+        second.addRequest(new Request("third"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // When
+        BinaryPLLCodec.writeRequestSets(out, Arrays.asList(first, second));
+        List<RequestSet> read = BinaryPLLCodec.readRequestSets(new ByteArrayInputStream(out.toByteArray()), 1024);
+
+        // Then
+        assertThat(out.size()).isEqualTo(BinaryPLLCodec.HEADER_LENGTH + BinaryPLLCodec.encodedLength(first)
+                + BinaryPLLCodec.encodedLength(second));
+        assertThat(read).hasSize(2);
+        assertThat(read.get(0).toXMLString()).isEqualTo(first.toXMLString());
+        assertThat(read.get(1).toXMLString()).isEqualTo(second.toXMLString());
+        assertThat(read.get(0).getRequests().get(1).getDtdID()).isNull();
+    }
+
+    @Test
+    public void shouldReadResponseSetsThatWereWritten() throws IOException {
+        // Given
+        ResponseSet set = new ResponseSet("session");
+        set.setRequestSetID("42");
+        Response response = new Response("<SessionResponse/>");
+        response.setDtdID("dtd");
+        set.addResponse(response);
+        set.addResponse(new Response(null));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // When
+        BinaryPLLCodec.writeResponseSets(out, Collections.singletonList(set));
+        List<ResponseSet> read = BinaryPLLCodec.readResponseSets(new ByteArrayInputStream(out.toByteArray()), 1024);
+
+        // Then
+        assertThat(read).hasSize(1);
+        assertThat(read.get(0).toXMLString()).isEqualTo(set.toXMLString());
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void shouldRejectXmlDocument() throws IOException {
+        RequestSet set = new RequestSet("session");
+        set.addRequest(new Request("content"));
+        BinaryPLLCodec.readRequestSets(new ByteArrayInputStream(set.toXMLString().getBytes("UTF-8")), 1024);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void shouldRejectStringLongerThanLimit() throws IOException {
+        RequestSet set = new RequestSet("session");
+        set.addRequest(new Request("content that is longer than the limit"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryPLLCodec.writeRequestSets(out, Collections.singletonList(set));
+
+        BinaryPLLCodec.readRequestSets(new ByteArrayInputStream(out.toByteArray()), 16);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void shouldRejectTruncatedMessage() throws IOException {
+        RequestSet set = new RequestSet("session");
+        set.addRequest(new Request("content"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryPLLCodec.writeRequestSets(out, Collections.singletonList(set));
+
+        BinaryPLLCodec.readRequestSets(new ByteArrayInputStream(out.toByteArray(), 0, out.size() - 2), 1024);
+    }
+
+    @Test
+    public void shouldRecogniseContentType() {
+        assertThat(BinaryPLLCodec.isBinary("application/x-openam-pll")).isTrue();
+        assertThat(BinaryPLLCodec.isBinary("Application/X-OpenAM-PLL; q=1")).isTrue();
+        assertThat(BinaryPLLCodec.isBinary("text/xml;charset=UTF-8")).isFalse();
+        assertThat(BinaryPLLCodec.isBinary(null)).isFalse();
+    }
+}
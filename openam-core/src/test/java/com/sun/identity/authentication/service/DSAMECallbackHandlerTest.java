@@ -0,0 +1,129 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package com.sun.identity.authentication.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.verify;
+
+import com.sun.identity.authentication.service.DSAMECallbackHandler.DSAMECallbackHandlerError;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.security.auth.callback.Callback;
+import javax.security.auth.callback.ConfirmationCallback;
+import javax.security.auth.callback.NameCallback;
+import javax.security.auth.callback.PasswordCallback;
+import java.io.IOException;
+
+public class DSAMECallbackHandlerTest {
+
+    @Mock
+    private AMLoginContext mockLoginContext;
+
+    @Mock
+    private LoginState mockState;
+
+    private DSAMECallbackHandler handler;
+
+    @BeforeMethod
+    public void setupMocks() {
+        MockitoAnnotations.initMocks(this);
+        given(mockLoginContext.getLoginState()).willReturn(mockState);
+        given(mockLoginContext.isJAASContinuation()).willReturn(true);
+        given(mockState.getLastCallbackSent()).willReturn(System.currentTimeMillis());
+        given(mockState.getPageTimeOut()).willReturn(60L);
+        handler = new DSAMECallbackHandler(mockLoginContext);
+    }
+
+    @Test
+    public void shouldSendCallbacksToUserWhenNoneSubmitted() throws Exception {
+        // Given
+        Callback[] callbacks = {new NameCallback("User Name:")};
+
+        // When
+        boolean suspended = handle(callbacks);
+
+        // Then
+        assertThat(suspended).isTrue();
+        verify(mockState).setReceivedCallback_NoThread(callbacks);
+    }
+
+    @Test
+    public void shouldReplayAnsweredCallbacksWhenModuleIsStartedAgain() throws Exception {
+        // Given
+        NameCallback name = new NameCallback("User Name:");
+        handle(name);
+        name.setName("demo");
+        given(mockState.getSubmittedInfo()).willReturn(new Callback[] {name}).willReturn(null);
+        handler.replayCallbacks();
+        NameCallback secondName = new NameCallback("User Name:");
+        handle(secondName);
+        PasswordCallback password = new PasswordCallback("Password:", false);
+        handle(password);
+        password.setPassword("changeit".toCharArray());
+        given(mockState.getSubmittedInfo()).willReturn(new Callback[] {password}).willReturn(null);
+
+        // When
+        handler.replayCallbacks();
+        NameCallback thirdName = new NameCallback("User Name:");
+        PasswordCallback secondPassword = new PasswordCallback("Password:", false);
+        boolean suspendedOnName = handle(thirdName);
+        boolean suspendedOnPassword = handle(secondPassword);
+
+        // Then
+        assertThat(secondName.getName()).isEqualTo("demo");
+        assertThat(suspendedOnName).isFalse();
+        assertThat(suspendedOnPassword).isFalse();
+        assertThat(thirdName.getName()).isEqualTo("demo");
+        assertThat(new String(secondPassword.getPassword())).isEqualTo("changeit");
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void shouldRejectAnswersToDifferentCallbacks() throws Exception {
+        DSAMECallbackHandler.copyAnswers(new Callback[] {new NameCallback("User Name:")},
+                new Callback[] {new PasswordCallback("Password:", false)});
+    }
+
+    @Test
+    public void shouldCopySelectedConfirmationOption() throws Exception {
+        // Given
+        ConfirmationCallback answer = confirmation();
+        answer.setSelectedIndex(1);
+        ConfirmationCallback callback = confirmation();
+
+        // When
+        DSAMECallbackHandler.copyAnswers(new Callback[] {callback}, new Callback[] {answer});
+
+        // Then
+        assertThat(callback.getSelectedIndex()).isEqualTo(1);
+    }
+
+    private boolean handle(Callback... callbacks) throws Exception {
+        try {
+            handler.handle(callbacks);
+            return false;
+        } catch (DSAMECallbackHandlerError e) {
+            return true;
+        }
+    }
+
+    private static ConfirmationCallback confirmation() {
+        return new ConfirmationCallback(ConfirmationCallback.INFORMATION, new String[] {"Yes", "No"}, 0);
+    }
+}
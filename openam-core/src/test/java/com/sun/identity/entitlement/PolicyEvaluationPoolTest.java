@@ -0,0 +1,218 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.entitlement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class PolicyEvaluationPoolTest {
+
+    private PolicyEvaluationPool pool;
+    private List<IPrivilege> policies;
+
+    @BeforeMethod
+    public void setUp() {
+        pool = new PolicyEvaluationPool(2);
+        policies = new ArrayList<IPrivilege>();
+        for (int i = 0; i < 8; i++) {
+            policies.add(mock(IPrivilege.class));
+        }
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void shouldCombineEntitlementsOfEveryPolicy() throws Exception {
+        // Given
+        CountingHandler handler = new CountingHandler(Integer.MAX_VALUE);
+        PolicyEvaluationPool.Evaluation evaluation = pool.newEvaluation(handler);
+
+        // When
+        evaluation.submit(policies.subList(0, 5));
+        evaluation.submit(policies.subList(5, 8));
+        evaluation.await();
+
+        // Then
+        assertThat(handler.evaluated.get()).isEqualTo(8);
+        assertThat(handler.combined).hasSize(8);
+    }
+
+    @Test
+    public void shouldStopEvaluatingOnceDecided() throws Exception {
+        // Given
+        pool = new PolicyEvaluationPool(1);
+        CountingHandler handler = new CountingHandler(2);
+        PolicyEvaluationPool.Evaluation evaluation = pool.newEvaluation(handler);
+
+        // When
+        evaluation.submit(policies);
+        evaluation.await();
+
+        // Then
+        assertThat(evaluation.isStopped()).isTrue();
+        assertThat(handler.evaluated.get()).isEqualTo(2);
+    }
+
+    @Test(timeOut = 10000)
+    public void shouldNotWaitForPoliciesStillBeingEvaluatedOnceDecided() throws Exception {
+        // Given
+        final CountDownLatch release = new CountDownLatch(1);
+        final IPrivilege slowPolicy = policies.get(0);
+        CountingHandler handler = new CountingHandler(1) {
+            @Override
+            public List<Entitlement> evaluate(IPrivilege policy) throws EntitlementException {
+                if (policy == slowPolicy) {
+                    await(release);
+                }
+                return super.evaluate(policy);
+            }
+        };
+        PolicyEvaluationPool.Evaluation evaluation = pool.newEvaluation(handler);
+
+        // When
+        evaluation.submit(policies.subList(0, 2));
+        evaluation.await();
+        release.countDown();
+
+        // Then
+        assertThat(handler.combined).hasSize(1);
+    }
+
+    @Test(timeOut = 10000)
+    public void shouldShareOutPoliciesOfSubmissionBetweenThreads() throws Exception {
+        // Given
+        final CountDownLatch othersEvaluated = new CountDownLatch(3);
+        final IPrivilege slowPolicy = policies.get(0);
+        final AtomicInteger slowPolicyWaited = new AtomicInteger();
+        CountingHandler handler = new CountingHandler(Integer.MAX_VALUE) {
+            @Override
+            public List<Entitlement> evaluate(IPrivilege policy) throws EntitlementException {
+                if (policy == slowPolicy) {
+                    // The other policies of the submission are evaluated while this one is.
+                    slowPolicyWaited.set(await(othersEvaluated) ? 1 : -1);
+                } else {
+                    othersEvaluated.countDown();
+                }
+                return super.evaluate(policy);
+            }
+        };
+        PolicyEvaluationPool.Evaluation evaluation = pool.newEvaluation(handler);
+
+        // When
+        evaluation.submit(policies.subList(0, 4));
+        evaluation.await();
+
+        // Then
+        assertThat(slowPolicyWaited.get()).isEqualTo(1);
+        assertThat(handler.combined).hasSize(4);
+    }
+
+    @Test
+    public void shouldThrowExceptionOfPolicyThatFailed() throws Exception {
+        // Given
+        final EntitlementException failure = new EntitlementException(EntitlementException.CONDITION_EVALUATION_FAILED);
+        final IPrivilege failingPolicy = policies.get(3);
+        CountingHandler handler = new CountingHandler(Integer.MAX_VALUE) {
+            @Override
+            public List<Entitlement> evaluate(IPrivilege policy) throws EntitlementException {
+                if (policy == failingPolicy) {
+                    throw failure;
+                }
+                return super.evaluate(policy);
+            }
+        };
+        PolicyEvaluationPool.Evaluation evaluation = pool.newEvaluation(handler);
+        evaluation.submit(policies);
+
+        // When
+        try {
+            evaluation.await();
+            fail("Expected the policy failure");
+        } catch (EntitlementException e) {
+            // Then
+            assertThat(e).isSameAs(failure);
+        }
+    }
+
+    @Test
+    public void shouldEvaluateOnCallingThread() throws Exception {
+        // Given
+        final List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+        CountingHandler handler = new CountingHandler(Integer.MAX_VALUE) {
+            @Override
+            public List<Entitlement> evaluate(IPrivilege policy) throws EntitlementException {
+                threads.add(Thread.currentThread());
+                return super.evaluate(policy);
+            }
+        };
+        PolicyEvaluationPool.Evaluation evaluation = pool.newEvaluation(handler);
+
+        // When
+        evaluation.evaluate(policies.subList(0, 1));
+        evaluation.await();
+
+        // Then
+        assertThat(threads).containsExactly(Thread.currentThread());
+    }
+
+    private static boolean await(CountDownLatch latch) {
+        try {
+            return latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static class CountingHandler implements PolicyEvaluationPool.PolicyHandler {
+
+        private final int decidedAfter;
+        private final AtomicInteger evaluated = new AtomicInteger();
+        private final List<List<Entitlement>> combined = new ArrayList<List<Entitlement>>();
+
+        CountingHandler(int decidedAfter) {
+            this.decidedAfter = decidedAfter;
+        }
+
+        @Override
+        public List<Entitlement> evaluate(IPrivilege policy) throws EntitlementException {
+            evaluated.incrementAndGet();
+            return Collections.singletonList(new Entitlement());
+        }
+
+        @Override
+        public boolean combine(List<Entitlement> entitlements) {
+            combined.add(entitlements);
+            return combined.size() >= decidedAfter;
+        }
+    }
+}
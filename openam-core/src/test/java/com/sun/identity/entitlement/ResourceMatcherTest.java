@@ -0,0 +1,279 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.entitlement;
+
+import static org.assertj.core.api.Assertions.*;
+
+import com.sun.identity.entitlement.interfaces.ResourceName;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks {@link ResourceMatcher} against the {@link ResourceMatch} semantics of the resource names, as applied by
+ * {@link Entitlement}, by matching generated resources against generated patterns both ways.
+ */
+public class ResourceMatcherTest {
+
+    private static final String[] SCHEMES = {"http", "https", "HTTP"};
+    private static final String[] HOSTS = {"a.example.com", "b.example.com", "A.Example.com", "ab.example.org"};
+    private static final String[] PORTS = {"", ":80", ":8080", ":443"};
+    private static final String[] SEGMENTS = {"x", "y", "xy", "X", "xx", "yx", "index.html", "a=1"};
+    private static final String[] QUERIES = {"", "?a=1", "?b=2&a=1", "?a=2"};
+
+    private static final String[] PATTERN_SCHEMES = {"http", "https", "http*", "HTTP", "*"};
+    private static final String[] PATTERN_HOSTS = {"a.example.com", "b.example.com", "*.example.com",
+        "-*-.example.com", "A.example.com", "a.example.*", "a*", "ab.example.org"};
+    private static final String[] PATTERN_PORTS = {"", ":80", ":8080", ":*", ":-*-", ":443"};
+    private static final String[] PATTERN_SEGMENTS = {"x", "y", "xy", "X", "*", "-*-", "x*", "-*-y", "x-*-",
+        "-*--*-", "*x", "index.html", "index.*", "", "..", "."};
+    private static final String[] PATTERN_QUERIES = {"", "?a=1", "?*", "?a=*", "?b=2&a=1", "*?*", "?*?*"};
+    private static final String[] REGEX_SEGMENTS = {"x", "y", "x.y", "*", "x*", "*.html", "x+", "x?", "(x|y)",
+        "[xy]", "x.", "index.html"};
+
+    @DataProvider
+    public Object[][] resourceNames() {
+        return new Object[][] {
+            {new URLResourceName(), false},
+            {new URLResourceName(), true},
+            {new PrefixResourceName(), false},
+            {new PrefixResourceName(), true},
+            {new RegExResourceName(), false},
+            {new RegExResourceName(), true}
+        };
+    }
+
+    @Test(dataProvider = "resourceNames")
+    public void shouldFindEveryPatternThatMatches(ResourceName resourceName, boolean recursive) {
+        // Given
+        Random random = new Random(42);
+        boolean regex = resourceName instanceof RegExResourceName;
+        List<String> patterns = new ArrayList<String>();
+        for (int i = 0; i < 2000; i++) {
+            patterns.add(regex ? regexPattern(random) : pattern(resourceName, random));
+        }
+        ResourceMatcher matcher = ResourceMatcher.forComparator(resourceName);
+        for (String pattern : patterns) {
+            matcher.learn(pattern);
+        }
+        int matches = 0;
+        int skipped = 0;
+
+        for (int i = 0; i < 500; i++) {
+            String resource = resource(resourceName, random);
+
+            // When
+            ResourceMatcher.Match match = matcher.match(resource, recursive);
+
+            // Then
+            assertThat(match).isNotNull();
+            for (String pattern : patterns) {
+                boolean candidate = match.isCandidate(pattern);
+                if (matches(resourceName, pattern, resource, recursive)) {
+                    matches++;
+                    if (!candidate) {
+                        fail(pattern + " matches " + resource + " but is not a candidate");
+                    }
+                } else if (!candidate) {
+                    skipped++;
+                }
+            }
+        }
+        assertThat(matches).isGreaterThan(0);
+        assertThat(skipped).isGreaterThan(matches);
+    }
+
+    @Test
+    public void shouldOnlyMatchPatternsWithMatchingPrefix() {
+        // Given
+        ResourceMatcher matcher = ResourceMatcher.forComparator(new URLResourceName());
+        matcher.learn("http://a.example.com:80/x/*");
+        matcher.learn("http://a.example.com:80/y/*");
+        matcher.learn("http://a.example.com:80/x/y/-*-/z");
+        matcher.learn("http*://*.example.com:*/*");
+
+        // When
+        ResourceMatcher.Match match = matcher.match("http://a.example.com:80/x/y/index.html", false);
+
+        // Then
+        assertThat(match.getCandidates()).containsOnly("http://a.example.com:80/x/*",
+                "http://a.example.com:80/x/y/-*-/z", "http*://*.example.com:*/*");
+        assertThat(match.isCandidate("http://a.example.com:80/y/*")).isFalse();
+    }
+
+    @Test
+    public void shouldMatchPatternsBelowResourceForSubTree() {
+        // Given
+        ResourceMatcher matcher = ResourceMatcher.forComparator(new URLResourceName());
+        matcher.learn("http://a.example.com:80/x/y/*");
+        matcher.learn("http://a.example.com:80/y/*");
+
+        // When
+        ResourceMatcher.Match match = matcher.match("http://a.example.com:80/x", true);
+
+        // Then
+        assertThat(match.isCandidate("http://a.example.com:80/x/y/*")).isTrue();
+        assertThat(match.isCandidate("http://a.example.com:80/y/*")).isFalse();
+    }
+
+    @Test
+    public void shouldTreatUnknownPatternsAsCandidates() {
+        // Given
+        ResourceMatcher matcher = ResourceMatcher.forComparator(new URLResourceName());
+        matcher.learn("http://a.example.com:80/y/*");
+        ResourceMatcher.Match match = matcher.match("http://a.example.com:80/x", false);
+
+        // When
+        matcher.learn("http://a.example.com:80/z/*");
+
+        // Then
+        assertThat(match.isCandidate("http://b.example.com:80/*")).isTrue();
+        assertThat(match.isCandidate("http://a.example.com:80/z/*")).isTrue();
+        assertThat(matcher.match("http://a.example.com:80/x", false).isCandidate("http://a.example.com:80/z/*"))
+                .isFalse();
+    }
+
+    @Test
+    public void shouldForgetPatterns() {
+        // Given
+        ResourceMatcher matcher = ResourceMatcher.forComparator(new URLResourceName());
+        matcher.learn("http://a.example.com:80/x/*");
+        matcher.learn("http://a.example.com:80/y/*");
+
+        // When
+        matcher.forget(Collections.singleton("http://a.example.com:80/x/*"));
+
+        // Then
+        assertThat(matcher.size()).isEqualTo(1);
+        assertThat(matcher.match("http://a.example.com:80/x", true).getCandidates()).isEmpty();
+        assertThat(matcher.match("http://a.example.com:80/y/z", false).getCandidates())
+                .containsOnly("http://a.example.com:80/y/*");
+    }
+
+    @Test
+    public void shouldNotIndexRegularExpressionsThatAreNotLiteral() {
+        // Given
+        ResourceMatcher matcher = ResourceMatcher.forComparator(new RegExResourceName());
+        matcher.learn("http://(a|b).example.com/*");
+
+        // When
+        ResourceMatcher.Match match = matcher.match("http://b.example.com/x", false);
+
+        // Then
+        assertThat(match.getCandidates()).isEmpty();
+        assertThat(match.isCandidate("http://(a|b).example.com/*")).isTrue();
+    }
+
+    @Test
+    public void shouldNotMatchResourcesWithWildcards() {
+        ResourceMatcher matcher = ResourceMatcher.forComparator(new URLResourceName());
+        assertThat(matcher.match("http://a.example.com:80/*", false)).isNull();
+    }
+
+    @Test
+    public void shouldOnlyIndexKnownResourceNames() {
+        assertThat(ResourceMatcher.forComparator(new ResourceNameSubclass())).isNull();
+    }
+
+    /**
+     * Whether a pattern matches a resource, as decided by {@link Entitlement}.
+     */
+    private static boolean matches(ResourceName resourceName, String pattern, String resource, boolean recursive) {
+        ResourceMatch match;
+        if (resourceName instanceof RegExResourceName) {
+            if (!recursive) {
+                match = resourceName.compare(resource, pattern, true);
+                return match == ResourceMatch.EXACT_MATCH || match == ResourceMatch.SUPER_RESOURCE_MATCH
+                        || match == ResourceMatch.WILDCARD_MATCH;
+            }
+            return resourceName.compare(pattern, resource, true) != ResourceMatch.NO_MATCH;
+        }
+        if (!recursive) {
+            return resourceName.compare(pattern, resource, false) == ResourceMatch.EXACT_MATCH
+                    || resourceName.compare(resource, pattern, true) == ResourceMatch.WILDCARD_MATCH;
+        }
+        match = resourceName.compare(resource, pattern, true);
+        if (match == ResourceMatch.WILDCARD_MATCH || match == ResourceMatch.SUB_RESOURCE_MATCH) {
+            return true;
+        }
+        match = resourceName.compare(pattern, resource, false);
+        return match == ResourceMatch.EXACT_MATCH || match == ResourceMatch.SUPER_RESOURCE_MATCH;
+    }
+
+    private static String resource(ResourceName resourceName, Random random) {
+        StringBuilder resource = new StringBuilder();
+        resource.append(pick(SCHEMES, random)).append("://").append(pick(HOSTS, random)).append(pick(PORTS, random));
+        int segments = random.nextInt(4);
+        for (int i = 0; i < segments; i++) {
+            resource.append('/').append(pick(SEGMENTS, random));
+        }
+        if (random.nextInt(4) == 0) {
+            resource.append('/');
+        }
+        resource.append(pick(QUERIES, random));
+        return canonicalize(resourceName, resource.toString());
+    }
+
+    private static String pattern(ResourceName resourceName, Random random) {
+        StringBuilder pattern = new StringBuilder();
+        pattern.append(pick(PATTERN_SCHEMES, random)).append("://").append(pick(PATTERN_HOSTS, random))
+                .append(pick(PATTERN_PORTS, random));
+        int segments = random.nextInt(4);
+        for (int i = 0; i < segments; i++) {
+            pattern.append('/').append(pick(PATTERN_SEGMENTS, random));
+        }
+        if (random.nextInt(4) == 0) {
+            pattern.append('/');
+        }
+        pattern.append(pick(PATTERN_QUERIES, random));
+        // Policies are saved with canonical resources, but not all of them have always been.
+        return random.nextBoolean() ? canonicalize(resourceName, pattern.toString()) : pattern.toString();
+    }
+
+    private static String regexPattern(Random random) {
+        StringBuilder pattern = new StringBuilder();
+        pattern.append(pick(PATTERN_SCHEMES, random)).append("://").append(pick(PATTERN_HOSTS, random))
+                .append(pick(PATTERN_PORTS, random));
+        int segments = random.nextInt(4);
+        for (int i = 0; i < segments; i++) {
+            pattern.append('/').append(pick(REGEX_SEGMENTS, random));
+        }
+        if (random.nextInt(4) == 0) {
+            pattern.append('/');
+        }
+        return pattern.append(pick(PATTERN_QUERIES, random)).toString();
+    }
+
+    private static String canonicalize(ResourceName resourceName, String resource) {
+        try {
+            return resourceName.canonicalize(resource);
+        } catch (EntitlementException e) {
+            return resource;
+        }
+    }
+
+    private static String pick(String[] values, Random random) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private static final class ResourceNameSubclass extends URLResourceName {
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.idm.server;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.sun.identity.idm.IdRepoErrorCode;
+import com.sun.identity.idm.IdRepoException;
+import com.sun.identity.idm.common.IdCacheBlock;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+public class StripedIdCacheTest {
+    private static final String ROOT = "dc=openam,dc=forgerock,dc=org";
+    private static final String SUB_REALM = "o=sub,ou=services," + ROOT;
+    private static final Map<String, Integer> NO_QUOTAS = Collections.emptyMap();
+
+    @Test
+    public void shouldFindTheRealmOfAUniversalId() {
+        assertThat(StripedIdCache.getRealm("id=demo,ou=user," + SUB_REALM)).isEqualTo(SUB_REALM);
+        assertThat(StripedIdCache.getRealm("id=de\\,mo,ou=user," + SUB_REALM)).isEqualTo(SUB_REALM);
+        assertThat(StripedIdCache.getRealm("id=demo,ou=user," + ROOT + ",amsdkdn=uid=demo,ou=people," + ROOT))
+                .isEqualTo(ROOT);
+        assertThat(StripedIdCache.getRealm("demo")).isEmpty();
+    }
+
+    @Test
+    public void shouldNotEvictOtherRealmsWhenARealmIsFull() {
+        // Given
+        StripedIdCache cache = new StripedIdCache(100, 2, NO_QUOTAS, 0, 0);
+        String subRealmUser = userId("other", SUB_REALM);
+        cache.put(subRealmUser, block(subRealmUser));
+
+        // When
+        for (int i = 0; i < 10; i++) {
+            cache.put(userId("user" + i, ROOT), block(userId("user" + i, ROOT)));
+        }
+
+        // Then
+        assertThat(cache.get(subRealmUser)).isNotNull();
+        assertThat(cache.getRealmSizes()).containsEntry(ROOT, 2).containsEntry(SUB_REALM, 1);
+        assertThat(cache.size()).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldKeepAllRealmsWithinTheMaximumSize() {
+        // Given
+        StripedIdCache cache = new StripedIdCache(4, 4, NO_QUOTAS, 0, 0);
+        for (int i = 0; i < 3; i++) {
+            cache.put(userId("user" + i, ROOT), block(userId("user" + i, ROOT)));
+        }
+
+        // When
+        for (int i = 0; i < 3; i++) {
+            cache.put(userId("other" + i, SUB_REALM), block(userId("other" + i, SUB_REALM)));
+        }
+
+        // Then
+        assertThat(cache.size()).isEqualTo(4);
+        assertThat(cache.getRealmSizes()).containsEntry(ROOT, 2).containsEntry(SUB_REALM, 2);
+        assertThat(cache.get(userId("user0", ROOT))).isNull();
+        assertThat(cache.get(userId("other0", SUB_REALM))).isNull();
+    }
+
+    @Test
+    public void shouldKeepMissingIdentitiesOfAllRealmsWithinTheirMaximumSize() {
+        // Given
+        StripedIdCache cache = new StripedIdCache(100, 10, NO_QUOTAS, 2, 60000L);
+        IdRepoException notFound = new IdRepoException("Not found", IdRepoErrorCode.UNABLE_FIND_ENTRY);
+        cache.putNotFound(userId("missing", ROOT), notFound);
+
+        // When
+        cache.putNotFound(userId("missing1", SUB_REALM), notFound);
+        cache.putNotFound(userId("missing2", SUB_REALM), notFound);
+
+        // Then
+        assertThat(cache.getNotFound(userId("missing", ROOT))).isSameAs(notFound);
+        assertThat(cache.getNotFound(userId("missing1", SUB_REALM))).isNull();
+        assertThat(cache.getNotFound(userId("missing2", SUB_REALM))).isSameAs(notFound);
+    }
+
+    @Test
+    public void shouldApplyRealmSpecificQuotas() {
+        // Given
+        StripedIdCache cache = new StripedIdCache(100, 2, Collections.singletonMap(SUB_REALM.toUpperCase(), 5), 0, 0);
+
+        // When
+        for (int i = 0; i < 10; i++) {
+            cache.put(userId("user" + i, SUB_REALM), block(userId("user" + i, SUB_REALM)));
+        }
+
+        // Then
+        assertThat(cache.getQuota(SUB_REALM)).isEqualTo(5);
+        assertThat(cache.getQuota(ROOT)).isEqualTo(2);
+        assertThat(cache.size()).isEqualTo(5);
+    }
+
+    @Test
+    public void shouldOnlyClearTheGivenRealm() {
+        // Given
+        StripedIdCache cache = new StripedIdCache(100, 10, NO_QUOTAS, 10, 60000L);
+        String rootUser = userId("demo", ROOT);
+        String subRealmUser = userId("demo", SUB_REALM);
+        cache.put(rootUser, block(rootUser));
+        cache.put(subRealmUser, block(subRealmUser));
+
+        // When
+        boolean cleared = cache.clearRealm(SUB_REALM.toUpperCase());
+
+        // Then
+        assertThat(cleared).isTrue();
+        assertThat(cache.get(rootUser)).isNotNull();
+        assertThat(cache.get(subRealmUser)).isNull();
+        assertThat(cache.keys()).containsOnly(rootUser);
+    }
+
+    @Test
+    public void shouldRememberIdentitiesThatDoNotExist() {
+        // Given
+        StripedIdCache cache = new StripedIdCache(100, 10, NO_QUOTAS, 10, 60000L);
+        String missingUser = userId("missing", ROOT);
+        IdRepoException notFound = new IdRepoException("Not found", IdRepoErrorCode.UNABLE_FIND_ENTRY);
+
+        // When
+        cache.putNotFound(missingUser + ",amsdkdn=uid=missing,ou=people," + ROOT, notFound);
+
+        // Then
+        assertThat(cache.getNotFound(missingUser)).isSameAs(notFound);
+        assertThat(cache.get(missingUser)).isNull();
+        assertThat(cache.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldForgetMissingIdentitiesOnceCreated() {
+        // Given
+        StripedIdCache cache = new StripedIdCache(100, 10, NO_QUOTAS, 10, 60000L);
+        String createdUser = userId("created", ROOT);
+        String cachedUser = userId("cached", ROOT);
+        cache.putNotFound(createdUser, new IdRepoException("Not found", IdRepoErrorCode.UNABLE_FIND_ENTRY));
+        cache.putNotFound(cachedUser, new IdRepoException("Not found", IdRepoErrorCode.UNABLE_FIND_ENTRY));
+
+        // When
+        cache.removeNotFound(createdUser);
+        cache.put(cachedUser, block(cachedUser));
+
+        // Then
+        assertThat(cache.getNotFound(createdUser)).isNull();
+        assertThat(cache.getNotFound(cachedUser)).isNull();
+    }
+
+    @Test
+    public void shouldNotRememberMissingIdentitiesWhenDisabled() {
+        // Given
+        StripedIdCache cache = new StripedIdCache(100, 10, NO_QUOTAS, 0, 60000L);
+        String missingUser = userId("missing", ROOT);
+
+        // When
+        cache.putNotFound(missingUser, new IdRepoException("Not found", IdRepoErrorCode.UNABLE_FIND_ENTRY));
+
+        // Then
+        assertThat(cache.getNotFound(missingUser)).isNull();
+    }
+
+    private static String userId(String name, String realm) {
+        return "id=" + name + ",ou=user," + realm;
+    }
+
+    private static IdCacheBlock block(String id) {
+        return new IdCacheBlock(id, true);
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.log.handlers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+public class AsyncLogWriterTest {
+    private static final int PRODUCERS = 4;
+    private static final int RECORDS_PER_PRODUCER = 10000;
+
+    private AsyncLogWriter writer;
+
+    @AfterMethod
+    public void shutdown() {
+        if (writer != null) {
+            writer.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldWriteAllRecordsInOrderWhenBlocking() throws Exception {
+        // Given
+        writer = new AsyncLogWriter(16, AsyncLogWriter.OverflowPolicy.BLOCK);
+        RecordingSink sink = new RecordingSink();
+
+        // When
+        publishConcurrently(sink);
+
+        // Then
+        assertThat(writer.flush(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(sink.written).hasSize(PRODUCERS * RECORDS_PER_PRODUCER);
+        assertThat(sink.dropped).isEmpty();
+        assertInProducerOrder(sink.written);
+        assertThat(writer.getWrittenCount()).isEqualTo(PRODUCERS * RECORDS_PER_PRODUCER);
+        assertThat(writer.getHighestQueueDepth()).isLessThanOrEqualTo(16);
+    }
+
+    @Test
+    public void shouldWriteAllRecordsInOrderWhenSpilling() throws Exception {
+        // Given
+        writer = new AsyncLogWriter(16, AsyncLogWriter.OverflowPolicy.SPILL);
+        RecordingSink sink = new RecordingSink();
+
+        // When
+        publishConcurrently(sink);
+
+        // Then
+        assertThat(writer.flush(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(sink.written).hasSize(PRODUCERS * RECORDS_PER_PRODUCER);
+        assertInProducerOrder(sink.written);
+    }
+
+    @Test
+    public void shouldDropRecordsWhenFull() throws Exception {
+        // Given
+        writer = new AsyncLogWriter(16, AsyncLogWriter.OverflowPolicy.DROP);
+        final CountDownLatch release = new CountDownLatch(1);
+        RecordingSink sink = new RecordingSink() {
+            @Override
+            public void write(String message) {
+                awaitQuietly(release);
+                super.write(message);
+            }
+        };
+
+        // When
+        for (int i = 0; i < 100; i++) {
+            writer.publish(sink, String.valueOf(i));
+        }
+        release.countDown();
+
+        // Then
+        assertThat(writer.flush(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(sink.dropped).isNotEmpty();
+        assertThat(sink.written.size() + sink.dropped.size()).isEqualTo(100);
+        assertThat(writer.getDroppedCount()).isEqualTo(sink.dropped.size());
+    }
+
+    @Test
+    public void shouldCommitOncePerBatch() throws Exception {
+        // Given
+        writer = new AsyncLogWriter(1024, AsyncLogWriter.OverflowPolicy.BLOCK);
+        final CountDownLatch release = new CountDownLatch(1);
+        RecordingSink sink = new RecordingSink() {
+            @Override
+            public void write(String message) {
+                awaitQuietly(release);
+                super.write(message);
+            }
+        };
+
+        // When
+        for (int i = 0; i < 500; i++) {
+            writer.publish(sink, String.valueOf(i));
+        }
+        release.countDown();
+
+        // Then
+        assertThat(writer.flush(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(sink.written).hasSize(500);
+        assertThat((long) sink.commits).isEqualTo(writer.getBatchCount()).isLessThan(500L);
+    }
+
+    @Test
+    public void shouldRefuseRecordsOnceShutdown() {
+        // Given
+        writer = new AsyncLogWriter(16, AsyncLogWriter.OverflowPolicy.BLOCK);
+        RecordingSink sink = new RecordingSink();
+        writer.publish(sink, "before");
+
+        // When
+        writer.shutdown();
+
+        // Then
+        assertThat(writer.publish(sink, "after")).isFalse();
+        assertThat(sink.written).containsExactly("before");
+    }
+
+    private void publishConcurrently(final AsyncLogWriter.Sink sink) throws InterruptedException {
+        List<Thread> producers = new ArrayList<Thread>();
+        for (int p = 0; p < PRODUCERS; p++) {
+            final int producer = p;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < RECORDS_PER_PRODUCER; i++) {
+                        writer.publish(sink, producer + ":" + i);
+                    }
+                }
+            });
+            producers.add(thread);
+            thread.start();
+        }
+        for (Thread thread : producers) {
+            thread.join();
+        }
+    }
+
+    private static void assertInProducerOrder(List<String> records) {
+        int[] last = new int[PRODUCERS];
+        for (int p = 0; p < PRODUCERS; p++) {
+            last[p] = -1;
+        }
+        for (String record : records) {
+            String[] parts = record.split(":");
+            int producer = Integer.parseInt(parts[0]);
+            int sequence = Integer.parseInt(parts[1]);
+            assertThat(sequence).isGreaterThan(last[producer]);
+            last[producer] = sequence;
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class RecordingSink implements AsyncLogWriter.Sink {
+        final List<String> written = Collections.synchronizedList(new ArrayList<String>());
+        final List<String> dropped = Collections.synchronizedList(new ArrayList<String>());
+        volatile int commits;
+
+        @Override
+        public void write(String message) {
+            written.add(message);
+        }
+
+        @Override
+        public void commit() {
+            commits++;
+        }
+
+        @Override
+        public void dropped(String message) {
+            dropped.add(message);
+        }
+    }
+}
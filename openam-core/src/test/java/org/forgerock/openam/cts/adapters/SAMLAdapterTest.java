@@ -11,7 +11,7 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2013-2015 ForgeRock AS.
+ * Copyright 2013-2016 ForgeRock AS.
  */
 package org.forgerock.openam.cts.adapters;
 
@@ -94,7 +94,7 @@ public class SAMLAdapterTest {
         SAMLToken samlToken = new SAMLToken("primary", null, 12345, "");
 
         given(tokenIdFactory.toSAMLPrimaryTokenId(anyString())).willReturn("id");
-        given(serialisation.serialise(anyObject())).willReturn("");
+        given(serialisation.serialiseToBlob(anyObject())).willReturn(new byte[0]);
 
         // When
         Token token = adapter.toToken(samlToken);
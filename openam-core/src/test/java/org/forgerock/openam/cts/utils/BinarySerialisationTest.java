@@ -0,0 +1,126 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.cts.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class BinarySerialisationTest {
+
+    private ObjectMapper mapper;
+    private BinarySerialisation serialisation;
+
+    @BeforeMethod
+    public void setup() {
+        mapper = new ObjectMapper();
+        serialisation = new BinarySerialisation(mapper);
+    }
+
+    @Test
+    public void shouldDeserialiseWhatWasSerialised() throws IOException {
+        // Given
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("int", -12);
+        map.put("long", Long.MAX_VALUE);
+        map.put("bigInteger", new BigInteger("123456789012345678901234567890"));
+        map.put("double", -1.5);
+        map.put("string", "badger é中");
+        map.put("true", true);
+        map.put("false", false);
+        map.put("null", null);
+        map.put("list", Arrays.asList(1, "ferret", Collections.singletonMap("int", 3)));
+
+        // When
+        Map<?, ?> result = serialisation.deserialise(serialisation.serialise(map), Map.class);
+
+        // Then
+        assertThat(result).isEqualTo(map);
+        assertThat(mapper.writeValueAsString(result)).isEqualTo(mapper.writeValueAsString(map));
+    }
+
+    @Test
+    public void shouldKeepDecimalsAndBinary() throws IOException {
+        // Given
+        Values values = new Values();
+        values.decimal = new BigDecimal("3.14159265358979323846");
+        values.real = 0.25f;
+        values.bytes = new byte[] {0, 1, -1, 127};
+
+        // When
+        Values result = serialisation.deserialise(serialisation.serialise(values), Values.class);
+
+        // Then
+        assertThat(result.decimal).isEqualTo(values.decimal);
+        assertThat(result.real).isEqualTo(values.real);
+        assertThat(result.bytes).isEqualTo(values.bytes);
+    }
+
+    @Test
+    public void shouldWriteRepeatedFieldNamesOnce() throws IOException {
+        // Given
+        List<Map<String, Integer>> list = Arrays.asList(Collections.singletonMap("latestAccessTime", 1),
+                Collections.singletonMap("latestAccessTime", 2));
+
+        // When
+        byte[] blob = serialisation.serialise(list);
+
+        // Then
+        assertThat(new String(blob, "UTF-8").split("latestAccessTime", -1)).hasSize(2);
+    }
+
+    @Test
+    public void shouldRecogniseBinaryBlobs() throws IOException {
+        assertThat(BinarySerialisation.isBinary(serialisation.serialise("badger"))).isTrue();
+        assertThat(BinarySerialisation.isBinary(mapper.writeValueAsBytes("badger"))).isFalse();
+        assertThat(BinarySerialisation.isBinary(new byte[0])).isFalse();
+        assertThat(BinarySerialisation.isBinary(null)).isFalse();
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void shouldRejectUnknownVersion() throws IOException {
+        byte[] blob = serialisation.serialise("badger");
+        blob[4] = BinarySerialisation.VERSION + 1;
+
+        serialisation.deserialise(blob, String.class);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void shouldRejectTruncatedBlob() throws IOException {
+        byte[] blob = serialisation.serialise("badger");
+
+        serialisation.deserialise(Arrays.copyOf(blob, blob.length - 1), String.class);
+    }
+
+    private static final class Values {
+        public BigDecimal decimal;
+        public float real;
+        public byte[] bytes;
+    }
+}
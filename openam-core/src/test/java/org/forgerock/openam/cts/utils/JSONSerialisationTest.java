@@ -16,8 +16,13 @@
 package org.forgerock.openam.cts.utils;
 
 import static org.assertj.core.api.Assertions.*;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
 import static org.testng.Assert.*;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.inject.AbstractModule;
+import com.google.inject.Key;
+import com.google.inject.name.Names;
 import com.iplanet.dpro.session.DNOrIPAddressListTokenRestriction;
 import com.iplanet.dpro.session.SessionID;
 import com.iplanet.dpro.session.TokenRestriction;
@@ -36,7 +41,9 @@ import org.forgerock.openam.audit.configuration.AuditServiceConfigurationListene
 import org.forgerock.openam.audit.configuration.AuditServiceConfigurationProvider;
 import org.forgerock.openam.core.guice.CoreGuiceModule;
 import org.forgerock.openam.core.guice.DataLayerGuiceModule;
+import org.forgerock.openam.cts.CoreTokenConfig;
 import org.forgerock.openam.cts.TokenTestUtils;
+import org.forgerock.openam.cts.api.CoreTokenConstants;
 import org.forgerock.openam.cts.api.tokens.Token;
 import org.forgerock.openam.shared.guice.SharedGuiceModule;
 import org.forgerock.openam.tokens.TokenType;
@@ -166,6 +173,25 @@ public class JSONSerialisationTest extends GuiceTestCase {
         assertThat(is.getID()).isEqualTo(is2.getID());
     }
 
+    @Test(dataProvider = "complex")
+    public void complexInternalSessionBinarySerialisationWorks(String path) throws Exception {
+        // Given
+        CoreTokenConfig config = mock(CoreTokenConfig.class);
+        given(config.isBinaryFormat()).willReturn(true);
+        JSONSerialisation binary = new JSONSerialisation(InjectorHolder.getInstance(
+                Key.get(ObjectMapper.class, Names.named(CoreTokenConstants.OBJECT_MAPPER))), config);
+        InternalSession is = serialization.deserialise(getJSON(path), InternalSession.class);
+
+        // When
+        byte[] blob = binary.serialiseToBlob(is);
+        InternalSession is2 = serialization.deserialiseBlob(blob, InternalSession.class);
+
+        // Then
+        assertThat(JSONSerialisation.isBinary(blob)).isTrue();
+        assertThat(blob.length).isLessThan(serialization.serialiseToBlob(is).length);
+        assertThat(serialization.serialise(is2)).isEqualTo(serialization.serialise(is));
+    }
+
     @Test
     public void shouldChangeAttributeName() {
         String name = "badger";
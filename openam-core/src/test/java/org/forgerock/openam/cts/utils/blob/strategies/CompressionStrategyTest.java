@@ -11,7 +11,7 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2013-2014 ForgeRock AS.
+ * Copyright 2013-2016 ForgeRock AS.
  */
 package org.forgerock.openam.cts.utils.blob.strategies;
 
@@ -97,6 +97,41 @@ public class CompressionStrategyTest {
         assertThat(compression.reverse(compression.perform(data))).isEqualTo(data);
     }
 
+    @Test
+    public void shouldDeflateContents() throws TokenStrategyFailedException {
+        CompressionStrategy deflate = new CompressionStrategy(CompressionStrategy.Algorithm.DEFLATE);
+        assertThat(deflate.perform(data).length).isLessThan(data.length);
+    }
+
+    @Test
+    public void shouldInflateDeflatedContents() throws TokenStrategyFailedException {
+        CompressionStrategy deflate = new CompressionStrategy(CompressionStrategy.Algorithm.DEFLATE);
+        assertThat(deflate.reverse(deflate.perform(data))).isEqualTo(data);
+        assertThat(deflate.reverse(deflate.perform(new byte[0]))).isEqualTo(new byte[0]);
+    }
+
+    @Test
+    public void shouldDecompressContentsCompressedWithEitherAlgorithm() throws TokenStrategyFailedException {
+        CompressionStrategy deflate = new CompressionStrategy(CompressionStrategy.Algorithm.DEFLATE);
+        assertThat(deflate.reverse(compression.perform(data))).isEqualTo(data);
+        assertThat(compression.reverse(deflate.perform(data))).isEqualTo(data);
+    }
+
+    @Test(expectedExceptions = TokenStrategyFailedException.class)
+    public void shouldRejectCorruptDeflatedContents() throws TokenStrategyFailedException {
+        CompressionStrategy deflate = new CompressionStrategy(CompressionStrategy.Algorithm.DEFLATE);
+        byte[] deflated = deflate.perform(data);
+        deflated[deflated.length / 2] ^= 0x55;
+        deflate.reverse(deflated);
+    }
+
+    @Test
+    public void shouldDefaultToGZipForUnknownAlgorithm() {
+        assertThat(CompressionStrategy.Algorithm.fromName("deflate")).isEqualTo(CompressionStrategy.Algorithm.DEFLATE);
+        assertThat(CompressionStrategy.Algorithm.fromName("lz4")).isEqualTo(CompressionStrategy.Algorithm.GZIP);
+        assertThat(CompressionStrategy.Algorithm.fromName(null)).isEqualTo(CompressionStrategy.Algorithm.GZIP);
+    }
+
     @DataProvider
     public Object[][] numThreads() {
         return new Object[][]{
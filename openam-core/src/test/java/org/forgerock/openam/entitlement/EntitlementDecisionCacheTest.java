@@ -0,0 +1,226 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.entitlement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.forgerock.util.time.TimeService;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.sun.identity.entitlement.Entitlement;
+import com.sun.identity.entitlement.URLResourceName;
+
+public class EntitlementDecisionCacheTest {
+
+    private static final String REALM = "/realm";
+    private static final String APPLICATION = "iPlanetAMWebAgentService";
+    private static final String RESOURCE = "http://www.example.com:80/index.html";
+
+    private TimeService clock;
+    private EntitlementDecisionCache cache;
+
+    @BeforeMethod
+    public void setUp() {
+        clock = mock(TimeService.class);
+        given(clock.now()).willReturn(1000L);
+        cache = new EntitlementDecisionCache(2, 60000L, clock);
+    }
+
+    @Test
+    public void shouldReturnStoredDecision() {
+        // Given
+        EntitlementDecisionCache.Lookup miss = cache.lookup(key(RESOURCE), null);
+        miss.store(new URLResourceName(), entitlements(RESOURCE, true));
+
+        // When
+        EntitlementDecisionCache.Lookup hit = cache.lookup(key(RESOURCE), null);
+
+        // Then
+        assertThat(miss.isHit()).isFalse();
+        assertThat(hit.isHit()).isTrue();
+        assertThat(hit.getResults()).hasSize(1);
+        assertThat(hit.getResults().get(0).getActionValue("GET")).isEqualTo(true);
+        assertThat(hit.getResults().get(0)).isNotSameAs(hit.getResults().get(0));
+    }
+
+    @Test
+    public void shouldOnlyReuseDecisionForSameValuesOfEnvironmentParametersRead() {
+        // Given
+        EntitlementDecisionCache.Lookup miss = cache.lookup(key(RESOURCE),
+                environment("requestIp", "10.0.0.1", "requestTime", "1"));
+        miss.getEnvironment().get("requestIp");
+        miss.store(new URLResourceName(), entitlements(RESOURCE, true));
+
+        // When
+        EntitlementDecisionCache.Lookup sameIp = cache.lookup(key(RESOURCE),
+                environment("requestIp", "10.0.0.1", "requestTime", "2"));
+        EntitlementDecisionCache.Lookup otherIp = cache.lookup(key(RESOURCE),
+                environment("requestIp", "10.0.0.2", "requestTime", "1"));
+
+        // Then
+        assertThat(sameIp.isHit()).isTrue();
+        assertThat(otherIp.isHit()).isFalse();
+    }
+
+    @Test
+    public void shouldNotStoreDecisionIfEnvironmentWasChanged() {
+        // Given
+        EntitlementDecisionCache.Lookup miss = cache.lookup(key(RESOURCE), environment("requestIp", "10.0.0.1"));
+        miss.getEnvironment().put("requestDnsName", Collections.singleton("host.example.com"));
+        miss.store(new URLResourceName(), entitlements(RESOURCE, true));
+
+        // When
+        EntitlementDecisionCache.Lookup lookup = cache.lookup(key(RESOURCE), environment("requestIp", "10.0.0.1"));
+
+        // Then
+        assertThat(lookup.isHit()).isFalse();
+    }
+
+    @Test
+    public void shouldExpireDecisions() {
+        // Given
+        List<Entitlement> entitlements = entitlements(RESOURCE, true);
+        entitlements.get(0).setTTL(2000L);
+        cache.lookup(key(RESOURCE), null).store(new URLResourceName(), entitlements);
+        cache.lookup(key("http://www.example.com:80/other.html"), null)
+                .store(new URLResourceName(), entitlements("http://www.example.com:80/other.html", true));
+
+        // When
+        given(clock.now()).willReturn(2000L);
+        boolean entitlementExpired = !cache.lookup(key(RESOURCE), null).isHit();
+        boolean otherCached = cache.lookup(key("http://www.example.com:80/other.html"), null).isHit();
+        given(clock.now()).willReturn(61000L);
+        boolean otherExpired = !cache.lookup(key("http://www.example.com:80/other.html"), null).isHit();
+
+        // Then
+        assertThat(entitlementExpired).isTrue();
+        assertThat(otherCached).isTrue();
+        assertThat(otherExpired).isTrue();
+    }
+
+    @Test
+    public void shouldRemoveDecisionsForChangedPolicyResources() {
+        // Given
+        cache.lookup(key(RESOURCE), null).store(new URLResourceName(), entitlements(RESOURCE, true));
+
+        // When
+        cache.invalidate(REALM, APPLICATION, Collections.singleton("http://www.other.com:80/*"));
+        boolean cachedAfterOtherChange = cache.lookup(key(RESOURCE), null).isHit();
+        cache.invalidate(REALM, APPLICATION, Collections.singleton("http://www.example.com:80/*"));
+        boolean cachedAfterChange = cache.lookup(key(RESOURCE), null).isHit();
+
+        // Then
+        assertThat(cachedAfterOtherChange).isTrue();
+        assertThat(cachedAfterChange).isFalse();
+        assertThat(cache.getInvalidations()).isEqualTo(1);
+        assertThat(cache.getSize()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldRemoveDecisionsForChangedPathIndexes() {
+        // Given
+        cache.lookup(key(RESOURCE), null).store(new URLResourceName(), entitlements(RESOURCE, true));
+
+        // When
+        cache.invalidatePathIndex(REALM, "http://www.example.com:80/^.jsp");
+        boolean cachedAfterOtherChange = cache.lookup(key(RESOURCE), null).isHit();
+        cache.invalidatePathIndex(REALM, "http://www.example.com:80/^.html");
+        boolean cachedAfterChange = cache.lookup(key(RESOURCE), null).isHit();
+
+        // Then
+        assertThat(cachedAfterOtherChange).isTrue();
+        assertThat(cachedAfterChange).isFalse();
+    }
+
+    @Test
+    public void shouldNotStoreDecisionMadeWhilePoliciesChanged() {
+        // Given
+        EntitlementDecisionCache.Lookup miss = cache.lookup(key(RESOURCE), null);
+
+        // When
+        cache.invalidate(REALM);
+        miss.store(new URLResourceName(), entitlements(RESOURCE, true));
+
+        // Then
+        assertThat(cache.lookup(key(RESOURCE), null).isHit()).isFalse();
+    }
+
+    @Test
+    public void shouldEvictDecisionsStoredLongestAgo() {
+        // Given
+        String[] resources = {RESOURCE, "http://www.example.com:80/a.html", "http://www.example.com:80/b.html"};
+        for (String resource : resources) {
+            cache.lookup(key(resource), null).store(new URLResourceName(), entitlements(resource, true));
+        }
+
+        // Then
+        assertThat(cache.getSize()).isEqualTo(2);
+        assertThat(cache.lookup(key(RESOURCE), null).isHit()).isFalse();
+        assertThat(cache.lookup(key(resources[2]), null).isHit()).isTrue();
+    }
+
+    @Test
+    public void shouldReportHitRatio() {
+        // Given
+        cache.lookup(key(RESOURCE), null).store(new URLResourceName(), entitlements(RESOURCE, true));
+
+        // When
+        for (int i = 0; i < 3; i++) {
+            cache.lookup(key(RESOURCE), null);
+        }
+
+        // Then
+        assertThat(cache.getHits()).isEqualTo(3);
+        assertThat(cache.getMisses()).isEqualTo(1);
+        assertThat(cache.getHitRatio()).isEqualTo(75);
+    }
+
+    @Test
+    public void shouldBeDisabledWithoutSize() {
+        assertThat(new EntitlementDecisionCache(0, 60000L, clock).isEnabled()).isFalse();
+        assertThat(cache.isEnabled()).isTrue();
+    }
+
+    private static EntitlementDecisionCache.DecisionKey key(String resource) {
+        return new EntitlementDecisionCache.DecisionKey(REALM, APPLICATION, resource, resource,
+                Collections.singleton("GET"), false, null, new HashSet<String>(), null);
+    }
+
+    private static List<Entitlement> entitlements(String resource, boolean allow) {
+        Entitlement entitlement = new Entitlement(APPLICATION, resource, Collections.singletonMap("GET", allow));
+        return new ArrayList<>(Collections.singletonList(entitlement));
+    }
+
+    private static Map<String, Set<String>> environment(String... namesAndValues) {
+        Map<String, Set<String>> environment = new HashMap<>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            environment.put(namesAndValues[i], Collections.singleton(namesAndValues[i + 1]));
+        }
+        return environment;
+    }
+}
@@ -11,7 +11,7 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2015 ForgeRock AS.
+ * Copyright 2015-2016 ForgeRock AS.
  */
 
 package org.forgerock.openam.session.blacklist;
@@ -24,7 +24,6 @@ import static org.mockito.Mockito.*;
 
 import com.iplanet.dpro.session.Session;
 import com.iplanet.dpro.session.service.SessionServiceConfig;
-import org.forgerock.bloomfilter.BloomFilter;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
@@ -40,7 +39,7 @@ public class BloomFilterSessionBlacklistTest {
     private SessionBlacklist mockDelegate;
 
     @Mock
-    private BloomFilter<BloomFilterSessionBlacklist.SessionBlacklistEntry> mockBloomFilter;
+    private RollingBloomFilter<BloomFilterSessionBlacklist.SessionBlacklistEntry> mockBloomFilter;
 
     @Mock
     private SessionServiceConfig mockServiceConfig;
@@ -124,6 +123,47 @@ public class BloomFilterSessionBlacklistTest {
         verify(mockDelegate).isBlacklisted(mockSession);
     }
 
+    @Test
+    public void shouldFindSessionsBlacklistedBeforePurgeDelayChanged() throws Exception {
+        // Given
+        given(mockServiceConfig.getSessionBlacklistPartitionDuration(TimeUnit.MILLISECONDS))
+                .willReturn(TimeUnit.MINUTES.toMillis(15));
+        given(mockServiceConfig.getSessionBlacklistPartitionSize()).willReturn(100);
+        ArgumentCaptor<SessionBlacklist.Listener> listenerArgumentCaptor
+                = ArgumentCaptor.forClass(SessionBlacklist.Listener.class);
+        willDoNothing().given(mockDelegate).subscribe(listenerArgumentCaptor.capture());
+        testBlacklist = new BloomFilterSessionBlacklist(mockDelegate, mockServiceConfig);
+        String id = "testSession";
+        long sessionExpiryTime = System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1);
+        listenerArgumentCaptor.getValue().onBlacklisted(id, sessionExpiryTime + PURGE_DELAY);
+
+        long newPurgeDelay = TimeUnit.HOURS.toMillis(1);
+        given(mockServiceConfig.getSessionBlacklistPurgeDelay(any(TimeUnit.class))).willReturn(newPurgeDelay);
+        given(mockSession.getStableStorageID()).willReturn(id);
+        given(mockSession.getBlacklistExpiryTime(newPurgeDelay)).willReturn(sessionExpiryTime + newPurgeDelay);
+        given(mockDelegate.isBlacklisted(mockSession)).willReturn(true);
+
+        // When
+        boolean result = testBlacklist.isBlacklisted(mockSession);
+
+        // Then
+        assertThat(result).isTrue();
+        verify(mockDelegate).isBlacklisted(mockSession);
+    }
+
+    @Test
+    public void shouldReportBloomFilterStatistics() {
+        // Given
+        given(mockBloomFilter.getExpectedFalsePositiveProbability()).willReturn(0.001d);
+        given(mockBloomFilter.getMemoryUsage()).willReturn(18000L);
+        given(mockBloomFilter.getPartitionCount()).willReturn(3);
+
+        // When / Then
+        assertThat(testBlacklist.getFalsePositiveProbability()).isEqualTo(0.001d);
+        assertThat(testBlacklist.getMemoryUsage()).isEqualTo(18000L);
+        assertThat(testBlacklist.getPartitionCount()).isEqualTo(3);
+    }
+
     @Test
     public void shouldDelegateSubscriptions() {
         // Given
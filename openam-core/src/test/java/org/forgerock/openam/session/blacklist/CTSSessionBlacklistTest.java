@@ -11,16 +11,21 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2015 ForgeRock AS.
+ * Copyright 2015-2016 ForgeRock AS.
  */
 
 package org.forgerock.openam.session.blacklist;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willDoNothing;
 import static org.mockito.BDDMockito.willThrow;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.argThat;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import com.iplanet.dpro.session.Session;
@@ -33,12 +38,16 @@ import org.forgerock.openam.cts.exceptions.CoreTokenException;
 import org.forgerock.openam.shared.concurrency.ThreadMonitor;
 import org.forgerock.openam.tokens.TokenType;
 import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatcher;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class CTSSessionBlacklistTest {
     private static final String SID = "session123";
@@ -146,4 +155,92 @@ public class CTSSessionBlacklistTest {
 
         // Then - exception
     }
+
+    @Test
+    public void shouldPublishLocallyBlacklistedSessionsAsDeltaInTheBackground() throws Exception {
+        // Given
+        given(mockServiceConfig.isSessionBlacklistDeltaSyncEnabled()).willReturn(true);
+        testBlacklist = new CTSSessionBlacklist(mockCts, mockScheduler, mockThreadMonitor, mockServerConfig,
+                mockServiceConfig);
+        given(mockSession.getBlacklistExpiryTime(anyLong())).willReturn(1234l);
+        Session otherSession = mock(Session.class);
+        given(otherSession.getStableStorageID()).willReturn("session456");
+        given(otherSession.getBlacklistExpiryTime(anyLong())).willReturn(5678l);
+        testBlacklist.blacklist(mockSession);
+        testBlacklist.blacklist(otherSession);
+        verify(mockCts, times(2)).create(any(Token.class));
+        ArgumentCaptor<Runnable> publishTask = ArgumentCaptor.forClass(Runnable.class);
+        verify(mockThreadMonitor).watchScheduledThread(eq(mockScheduler), publishTask.capture(), anyLong(),
+                anyLong(), any(TimeUnit.class));
+
+        // When
+        publishTask.getValue().run();
+
+        // Then
+        ArgumentCaptor<Token> storedTokens = ArgumentCaptor.forClass(Token.class);
+        verify(mockCts, times(3)).create(storedTokens.capture());
+        Token delta = storedTokens.getAllValues().get(2);
+        assertThat(delta.getType()).isEqualTo(TokenType.SESSION_BLACKLIST_DELTA);
+        assertThat(delta.getExpiryTimestamp().getTimeInMillis()).isEqualTo(5678l);
+        SessionBlacklist.Listener listener = mock(SessionBlacklist.Listener.class);
+        SessionBlacklistDelta.decode(delta.getBlob(), listener);
+        verify(listener).onBlacklisted(SID, 1234l);
+        verify(listener).onBlacklisted("session456", 5678l);
+    }
+
+    @Test
+    public void shouldNotFailBlacklistWhenDeltaCannotBeStoredAndRetryLater() throws Exception {
+        // Given
+        given(mockServiceConfig.isSessionBlacklistDeltaSyncEnabled()).willReturn(true);
+        testBlacklist = new CTSSessionBlacklist(mockCts, mockScheduler, mockThreadMonitor, mockServerConfig,
+                mockServiceConfig);
+        given(mockSession.getBlacklistExpiryTime(anyLong())).willReturn(1234l);
+        willThrow(new CoreTokenException("test")).given(mockCts).create(argThat(isDeltaToken()));
+        testBlacklist.blacklist(mockSession);
+        ArgumentCaptor<Runnable> publishTask = ArgumentCaptor.forClass(Runnable.class);
+        verify(mockThreadMonitor).watchScheduledThread(eq(mockScheduler), publishTask.capture(), anyLong(),
+                anyLong(), any(TimeUnit.class));
+        publishTask.getValue().run();
+        willDoNothing().given(mockCts).create(argThat(isDeltaToken()));
+
+        // When
+        publishTask.getValue().run();
+
+        // Then
+        ArgumentCaptor<Token> storedTokens = ArgumentCaptor.forClass(Token.class);
+        verify(mockCts, times(3)).create(storedTokens.capture());
+        Token delta = storedTokens.getAllValues().get(2);
+        assertThat(delta.getType()).isEqualTo(TokenType.SESSION_BLACKLIST_DELTA);
+        SessionBlacklist.Listener listener = mock(SessionBlacklist.Listener.class);
+        SessionBlacklistDelta.decode(delta.getBlob(), listener);
+        verify(listener).onBlacklisted(SID, 1234l);
+    }
+
+    @Test
+    public void shouldEncodeNumericAndOpaqueSessionIdsInDeltas() throws Exception {
+        // Given
+        Map<String, Long> entries = new LinkedHashMap<String, Long>();
+        entries.put("-4611686018427387904", 1000l);
+        entries.put("007", 2000l);
+        entries.put(SID, 1500l);
+        SessionBlacklist.Listener listener = mock(SessionBlacklist.Listener.class);
+
+        // When
+        SessionBlacklistDelta.decode(SessionBlacklistDelta.encode(entries), listener);
+
+        // Then
+        verify(listener).onBlacklisted("-4611686018427387904", 1000l);
+        verify(listener).onBlacklisted("007", 2000l);
+        verify(listener).onBlacklisted(SID, 1500l);
+    }
+
+    private static ArgumentMatcher<Token> isDeltaToken() {
+        return new ArgumentMatcher<Token>() {
+            @Override
+            public boolean matches(Object argument) {
+                return argument instanceof Token
+                        && ((Token) argument).getType() == TokenType.SESSION_BLACKLIST_DELTA;
+            }
+        };
+    }
 }
\ No newline at end of file
@@ -0,0 +1,172 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.session.blacklist;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import org.forgerock.bloomfilter.ExpiryStrategy;
+import org.forgerock.guava.common.hash.Funnel;
+import org.forgerock.guava.common.hash.PrimitiveSink;
+import org.forgerock.util.time.TimeService;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.annotation.Nonnull;
+
+public class RollingBloomFilterTest {
+    private static final long PARTITION_DURATION = 1000L;
+    private static final int EXPECTED_INSERTIONS = 100;
+
+    private TimeService mockClock;
+    private RollingBloomFilter<Entry> testFilter;
+
+    @BeforeMethod
+    public void setup() {
+        mockClock = mock(TimeService.class);
+        given(mockClock.now()).willReturn(0L);
+        testFilter = new RollingBloomFilter<Entry>(EntryFunnel.INSTANCE, EntryExpiry.INSTANCE, PARTITION_DURATION,
+                EXPECTED_INSERTIONS, 0.001d, mockClock);
+    }
+
+    @Test
+    public void shouldContainAddedElements() {
+        // Given
+        testFilter.add(new Entry(1, 500L));
+        testFilter.add(new Entry(2, 1500L));
+
+        // When / Then
+        assertThat(testFilter.mightContain(new Entry(1, 500L))).isTrue();
+        assertThat(testFilter.mightContain(new Entry(2, 1500L))).isTrue();
+        assertThat(testFilter.mightContain(new Entry(3, 500L))).isFalse();
+        assertThat(testFilter.getPartitionCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldFindElementsCheckedWithADifferentExpiryTime() {
+        // Given
+        testFilter.add(new Entry(1, 500L));
+        testFilter.add(new Entry(2, 2500L));
+
+        // When / Then
+        assertThat(testFilter.mightContain(new Entry(1, 1500L))).isTrue();
+        assertThat(testFilter.mightContain(new Entry(2, 100L))).isTrue();
+    }
+
+    @Test
+    public void shouldNotCheckPartitionsWhoseWindowHasPassed() {
+        // Given
+        testFilter.add(new Entry(1, 500L));
+        given(mockClock.now()).willReturn(1200L);
+
+        // When / Then
+        assertThat(testFilter.mightContain(new Entry(1, 1500L))).isFalse();
+    }
+
+    @Test
+    public void shouldDropPartitionsOnceExpired() {
+        // Given
+        testFilter.add(new Entry(1, 500L));
+        testFilter.add(new Entry(2, 1500L));
+        given(mockClock.now()).willReturn(1200L);
+
+        // When
+        testFilter.add(new Entry(3, 1600L));
+
+        // Then
+        assertThat(testFilter.getPartitionCount()).isEqualTo(1);
+        assertThat(testFilter.mightContain(new Entry(1, 500L))).isFalse();
+        assertThat(testFilter.mightContain(new Entry(2, 1500L))).isTrue();
+        assertThat(testFilter.mightContain(new Entry(3, 1600L))).isTrue();
+    }
+
+    @Test
+    public void shouldIgnoreElementsThatHaveAlreadyExpired() {
+        // Given
+        given(mockClock.now()).willReturn(700L);
+
+        // When
+        testFilter.add(new Entry(1, 500L));
+
+        // Then
+        assertThat(testFilter.getPartitionCount()).isEqualTo(0);
+        assertThat(testFilter.getInsertionCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldAddSlicesWhenPartitionIsFull() {
+        // Given
+        testFilter.add(new Entry(0, 500L));
+        long sliceSize = testFilter.getMemoryUsage();
+
+        // When
+        for (int i = 1; i < EXPECTED_INSERTIONS * 3; i++) {
+            testFilter.add(new Entry(i, 500L));
+        }
+
+        // Then
+        assertThat(testFilter.getPartitionCount()).isEqualTo(1);
+        assertThat(testFilter.getMemoryUsage()).isEqualTo(sliceSize * 3);
+        assertThat(testFilter.getInsertionCount()).isEqualTo(EXPECTED_INSERTIONS * 3);
+        for (int i = 0; i < EXPECTED_INSERTIONS * 3; i++) {
+            assertThat(testFilter.mightContain(new Entry(i, 500L))).isTrue();
+        }
+    }
+
+    @Test
+    public void shouldEstimateFalsePositiveProbability() {
+        // Given
+        assertThat(testFilter.getExpectedFalsePositiveProbability()).isEqualTo(0d);
+
+        // When
+        for (int i = 0; i < EXPECTED_INSERTIONS; i++) {
+            testFilter.add(new Entry(i, 500L));
+        }
+
+        // Then
+        assertThat(testFilter.getExpectedFalsePositiveProbability()).isGreaterThan(0d).isLessThan(0.01d);
+    }
+
+    private static final class Entry {
+        private final long id;
+        private final long expiryTime;
+
+        Entry(long id, long expiryTime) {
+            this.id = id;
+            this.expiryTime = expiryTime;
+        }
+    }
+
+    private enum EntryFunnel implements Funnel<Entry> {
+        INSTANCE;
+
+        @Override
+        public void funnel(final @Nonnull Entry entry, final @Nonnull PrimitiveSink primitiveSink) {
+            primitiveSink.putLong(entry.id);
+        }
+    }
+
+    private enum EntryExpiry implements ExpiryStrategy<Entry> {
+        INSTANCE;
+
+        @Override
+        public long expiryTime(final Entry entry) {
+            return entry.expiryTime;
+        }
+    }
+}
@@ -144,4 +144,44 @@ public class StatelessJWTCacheTest {
         // Then
         assertThat(cache.contains(mockSessionInfo)).isFalse();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldFindSessionInfoByReverseIndex() {
+        // Given
+        given(mockConfig.getJWTCacheSize()).willReturn(10);
+        cache = new StatelessJWTCache(mockConfig, mockListeners);
+        SessionInfo mockSessionInfo = mock(SessionInfo.class);
+        given(mockSessionInfo.getSessionID()).willReturn("sessionId");
+
+        // When
+        cache.cache(mockSessionInfo, "badger");
+
+        // Then
+        assertThat(cache.contains(mockSessionInfo)).isTrue();
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedWhenByteLimitReached() {
+        // Given
+        given(mockConfig.getJWTCacheSize()).willReturn(1000);
+        given(mockConfig.getJWTCacheMaxBytes()).willReturn(16000L);
+        cache = new StatelessJWTCache(mockConfig, mockListeners);
+        SessionInfo first = mock(SessionInfo.class);
+        given(first.getSessionID()).willReturn("first");
+
+        // When
+        cache.cache(first, "badger");
+        for (int i = 0; i < 1000; i++) {
+            cache.cache(mock(SessionInfo.class), "weasel" + i);
+        }
+
+        // Then
+        assertThat(cache.contains("badger")).isFalse();
+        assertThat(cache.contains(first)).isFalse();
+        long bytes = 0;
+        for (StatelessJWTCache.ShardStatistics statistics : cache.getStatistics()) {
+            bytes += statistics.getBytes();
+        }
+        assertThat(bytes).isLessThanOrEqualTo(16000L);
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.sm.datalayer.impl;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.BDDMockito.*;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+
+import org.forgerock.openam.cts.impl.queue.config.CTSQueueConfiguration;
+import org.forgerock.openam.cts.monitoring.CTSQueueMonitoringStore;
+import org.forgerock.openam.shared.concurrency.ThreadMonitor;
+import org.forgerock.openam.sm.datalayer.api.DataLayerException;
+import org.forgerock.openam.sm.datalayer.api.Task;
+import org.forgerock.openam.sm.datalayer.api.TokenStorageAdapter;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.sun.identity.shared.debug.Debug;
+
+public class WorkStealingTaskExecutorTest {
+
+    private ExecutorService executorService;
+    private WorkStealingTaskExecutor executor;
+    private SeriesTaskExecutorThreadFactory processorFactory;
+    private ThreadMonitor monitor;
+    private CTSQueueConfiguration configuration;
+    private CTSQueueMonitoringStore monitoringStore;
+    private TokenStorageAdapter<Object> adapter;
+
+    @BeforeMethod
+    public void setup() throws Exception {
+        executorService = mock(ExecutorService.class);
+        processorFactory = mock(SeriesTaskExecutorThreadFactory.class);
+        monitor = mock(ThreadMonitor.class);
+        configuration = mock(CTSQueueConfiguration.class);
+        monitoringStore = mock(CTSQueueMonitoringStore.class);
+        adapter = mock(TokenStorageAdapter.class);
+        given(configuration.getQueueSize()).willReturn(10);
+        given(configuration.getBatchSize()).willReturn(2);
+        given(configuration.getProcessors()).willReturn(2);
+
+        executor = new WorkStealingTaskExecutor(executorService, processorFactory, monitor, configuration,
+                monitoringStore, mock(Debug.class));
+    }
+
+    @Test
+    public void shouldStartTaskProcessorsWithThreadMonitor() throws Exception {
+        // Given
+        given(processorFactory.create(any(BlockingQueue.class))).willReturn(mock(SeriesTaskExecutorThread.class));
+
+        // When
+        executor.start();
+
+        // Then
+        verify(monitor, times(2)).watchThread(any(ExecutorService.class), any(Runnable.class));
+    }
+
+    @Test
+    public void shouldShareOneReadyQueueBetweenProcessors() throws Exception {
+        // Given
+        ArgumentCaptor<BlockingQueue> captor = ArgumentCaptor.forClass(BlockingQueue.class);
+        given(processorFactory.create(captor.capture())).willReturn(mock(SeriesTaskExecutorThread.class));
+
+        // When
+        executor.start();
+
+        // Then
+        assertThat(captor.getAllValues()).hasSize(2);
+        assertThat(captor.getAllValues().get(0)).isSameAs(captor.getAllValues().get(1));
+    }
+
+    @Test
+    public void shouldScheduleGroupOnceForTasksOnSameToken() throws Exception {
+        // Given
+        BlockingQueue<Task> ready = startAndCaptureReadyQueue();
+
+        // When
+        executor.execute("123", mock(Task.class));
+        executor.execute("123", mock(Task.class));
+
+        // Then
+        assertThat(ready.size()).isEqualTo(1);
+        verify(monitoringStore, times(2)).addQueueDepth(anyInt());
+    }
+
+    @Test
+    public void shouldPerformTasksForSameTokenInOrderAndInBatches() throws Exception {
+        // Given
+        BlockingQueue<Task> ready = startAndCaptureReadyQueue();
+        Task first = mock(Task.class);
+        Task second = mock(Task.class);
+        Task third = mock(Task.class);
+        Object connection = new Object();
+        executor.execute("123", first);
+        executor.execute("123", second);
+        executor.execute("123", third);
+
+        // When
+        ready.take().execute(connection, adapter);
+
+        // Then
+        InOrder inOrder = inOrder(first, second);
+        inOrder.verify(first).execute(connection, adapter);
+        inOrder.verify(second).execute(connection, adapter);
+        verify(third, never()).execute(connection, adapter);
+        verify(monitoringStore, times(2)).addQueueWaitTime(anyLong());
+
+        // The remaining task is rescheduled for any processor to pick up
+        assertThat(ready.size()).isEqualTo(1);
+        ready.take().execute(connection, adapter);
+        verify(third).execute(connection, adapter);
+        assertThat(ready).isEmpty();
+    }
+
+    @Test
+    public void shouldContinueBatchAfterTaskFailure() throws Exception {
+        // Given
+        BlockingQueue<Task> ready = startAndCaptureReadyQueue();
+        Task failing = mock(Task.class);
+        Task next = mock(Task.class);
+        Object connection = new Object();
+        willThrow(new DataLayerException("failed")).given(failing).execute(connection, adapter);
+        executor.execute("123", failing);
+        executor.execute("123", next);
+
+        // When
+        ready.take().execute(connection, adapter);
+
+        // Then
+        verify(next).execute(connection, adapter);
+    }
+
+    @Test
+    public void shouldFailRemainingBatchTasksAfterUnexpectedTaskError() throws Exception {
+        // Given
+        BlockingQueue<Task> ready = startAndCaptureReadyQueue();
+        Task failing = mock(Task.class);
+        Task next = mock(Task.class);
+        Object connection = new Object();
+        willThrow(new IllegalStateException("failed")).given(failing).execute(connection, adapter);
+        executor.execute("123", failing);
+        executor.execute("123", next);
+
+        // When
+        ready.take().execute(connection, adapter);
+
+        // Then
+        verify(failing).processError(any(DataLayerException.class));
+        verify(next).processError(any(DataLayerException.class));
+        verify(next, never()).execute(connection, adapter);
+        assertThat(ready).isEmpty();
+    }
+
+    @Test
+    public void shouldPassConnectionErrorToQueuedTasks() throws Exception {
+        // Given
+        BlockingQueue<Task> ready = startAndCaptureReadyQueue();
+        Task task = mock(Task.class);
+        DataLayerException error = new DataLayerException("no connection");
+        executor.execute("123", task);
+
+        // When
+        ready.take().processError(error);
+
+        // Then
+        verify(task).processError(error);
+        assertThat(ready).isEmpty();
+    }
+
+    @Test
+    public void shouldCatchTimeoutWhenOfferingTaskToQueue() throws Exception {
+        // Given
+        given(configuration.getQueueTimeout()).willReturn(0);
+        given(configuration.getQueueSize()).willReturn(1);
+        startAndCaptureReadyQueue();
+        executor.execute("123", mock(Task.class)); // First create fills the group queue
+
+        // When
+        DataLayerException result = null;
+        try {
+            executor.execute("123", mock(Task.class)); // Second create causes timeout.
+            fail("Expected exception");
+        } catch (DataLayerException e) {
+            result = e;
+        }
+
+        // Then
+        assertThat(result).isNotNull();
+    }
+
+    private BlockingQueue<Task> startAndCaptureReadyQueue() throws Exception {
+        ArgumentCaptor<BlockingQueue> captor = ArgumentCaptor.forClass(BlockingQueue.class);
+        given(processorFactory.create(captor.capture())).willReturn(mock(SeriesTaskExecutorThread.class));
+        executor.start();
+        return captor.getValue();
+    }
+}
@@ -11,7 +11,7 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2013-2014 ForgeRock AS.
+ * Copyright 2013-2016 ForgeRock AS.
  */
 package org.forgerock.openam.entitlement.indextree;
 
@@ -22,6 +22,7 @@ import com.sun.identity.sm.SMSDataEntry;
 import com.sun.identity.sm.SMSException;
 import com.sun.identity.sm.ServiceManagementDAO;
 import org.forgerock.openam.core.guice.CoreGuiceModule.DNWrapper;
+import org.forgerock.openam.entitlement.EntitlementDecisionCache;
 import org.forgerock.openam.entitlement.indextree.events.ErrorEventType;
 import org.forgerock.openam.entitlement.indextree.events.EventType;
 import org.forgerock.openam.entitlement.indextree.events.IndexChangeEvent;
@@ -29,23 +30,41 @@ import org.forgerock.openam.entitlement.indextree.events.IndexChangeObserver;
 import org.forgerock.openam.entitlement.indextree.events.ModificationEvent;
 import org.forgerock.openam.entitlement.indextree.events.ModificationEventType;
 import org.forgerock.openam.entitlement.utils.indextree.IndexRuleTree;
-import org.forgerock.openam.entitlement.utils.indextree.SimpleReferenceTree;
+import org.forgerock.openam.entitlement.utils.indextree.PersistentIndexRuleTree;
 import org.forgerock.util.thread.listener.ShutdownListener;
 import org.forgerock.util.thread.listener.ShutdownManager;
 
 import javax.inject.Inject;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Date;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.TimeZone;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Provides a search implementation that takes on a lazy approach to policy rule retrieval. Policy rules for a given
  * realm are only loaded into a index rule tree instance as search requests are made against that realm. This avoids
  * there being a potentially large memory consumption earlier on and instead builds up the data as it is required.
+ * <p/>
+ * Each realm's rules are held in a {@link PersistentIndexRuleTree}, so searches are never blocked by policy changes
+ * being applied to the tree. If snapshots have been enabled, a realm's tree is loaded from its snapshot in preference
+ * to searching for all of the realm's policy path indexes, and snapshots are saved when a tree is loaded and on
+ * shutdown. A loaded snapshot is brought up to date by adding the path indexes of the policy index entries created or
+ * modified since the snapshot was taken. Path indexes of policies deleted or changed since then are left in the tree;
+ * as the tree only selects which path indexes to read policies by, this costs a wasted policy search rather than a
+ * wrong decision, and such entries are dropped the next time the realm is loaded without a snapshot.
+ * <p/>
+ * Index changes also remove the policy decisions that they may change from the {@link EntitlementDecisionCache}.
  *
  * @author apforrest
  */
@@ -55,27 +74,38 @@ public class IndexTreeServiceImpl implements IndexTreeService, IndexChangeObserv
 
     private static final String INDEX_PATH_ATT = "pathindex";
     private static final String SEARCH_FILTER = "(sunserviceID=indexes)";
+    private static final String CHANGED_SINCE_FILTER =
+            "(&" + SEARCH_FILTER + "(|(createTimestamp>=%1$s)(modifyTimestamp>=%1$s)))";
+    private static final String GENERALIZED_TIME_FORMAT = "yyyyMMddHHmmss'Z'";
+    // Allowance for clock differences between this server and the configuration store, and for changes that had not
+    // yet been notified to this server when its snapshot was taken.
+    private static final long SNAPSHOT_RECONCILE_MARGIN = TimeUnit.MINUTES.toMillis(5);
     private static final String REALM_DN_TEMPLATE =
             "ou=default,ou=OrganizationConfig,ou=1.0,ou=sunEntitlementIndexes,ou=services,%s";
 
-    private final ConcurrentMap<String, IndexRuleTree> indexTreeCache;
+    private final ConcurrentMap<String, PersistentIndexRuleTree> indexTreeCache;
 
     private final IndexChangeManager manager;
     private final PrivilegedAction<SSOToken> adminAction;
     private final ServiceManagementDAO smDAO;
     private final DNWrapper dnMapper;
+    private final IndexTreeSnapshotStore snapshotStore;
+    private final EntitlementDecisionCache decisionCache;
 
     @Inject
     public IndexTreeServiceImpl(IndexChangeManager manager, PrivilegedAction<SSOToken> adminTokenAction,
                                 ServiceManagementDAO smDAO, DNWrapper dnMapper,
-                                ShutdownManager shutdownManager) {
+                                ShutdownManager shutdownManager, EntitlementDecisionCache decisionCache,
+                                IndexTreeSnapshotStore snapshotStore) {
 
         this.manager = manager;
         this.adminAction = adminTokenAction;
         this.smDAO = smDAO;
         this.dnMapper = dnMapper;
+        this.snapshotStore = snapshotStore;
+        this.decisionCache = decisionCache;
 
-        indexTreeCache = new ConcurrentHashMap<String, IndexRuleTree>();
+        indexTreeCache = new ConcurrentHashMap<String, PersistentIndexRuleTree>();
 
         // Register to the shutdown to clean up appropriate resources.
         shutdownManager.addShutdownListener(this);
@@ -112,7 +142,7 @@ public class IndexTreeServiceImpl implements IndexTreeService, IndexChangeObserv
      *         When an error occurs reading policy data..
      */
     private IndexRuleTree getIndexTree(String realm) throws EntitlementException {
-        IndexRuleTree indexTree = null;
+        PersistentIndexRuleTree indexTree = null;
 
         // It is important to note here that get() is used on the cache as opposed to contains() followed by a get().
         // This is done to make the retrieval of the tree atomic, whereas contains() follow by get() is not atomic
@@ -126,8 +156,21 @@ public class IndexTreeServiceImpl implements IndexTreeService, IndexChangeObserv
                 indexTree = indexTreeCache.get(realm);
 
                 if (indexTree == null) {
-                    // Create a new tree instance for the realm.
-                    indexTree = createAndPopulateTree(realm);
+                    // Load the realm's tree from its snapshot, or failing that create a new tree instance.
+                    long loadTime = System.currentTimeMillis();
+                    IndexTreeSnapshotStore.Snapshot snapshot = snapshotStore.load(realm);
+
+                    if (snapshot != null) {
+                        indexTree = reconcileTree(realm, snapshot);
+                    }
+
+                    if (indexTree == null) {
+                        indexTree = createAndPopulateTree(realm);
+                    }
+
+                    if (indexTree != null) {
+                        snapshotStore.save(realm, indexTree, loadTime);
+                    }
 
                     if (indexTree != null) {
                         // Valid tree entry create, add to the cache.
@@ -149,17 +192,18 @@ public class IndexTreeServiceImpl implements IndexTreeService, IndexChangeObserv
      * @throws EntitlementException
      *         When an error occurs reading policy data.
      */
-    private IndexRuleTree createAndPopulateTree(String realm) throws EntitlementException {
-        IndexRuleTree indexTree = null;
+    private PersistentIndexRuleTree createAndPopulateTree(String realm) throws EntitlementException {
+        PersistentIndexRuleTree indexTree = null;
 
         String baseDN = String.format(REALM_DN_TEMPLATE, dnMapper.orgNameToDN(realm));
         SSOToken token = AccessController.doPrivileged(adminAction);
 
         if (smDAO.checkIfEntryExists(baseDN, token)) {
-            indexTree = new SimpleReferenceTree();
+            indexTree = new PersistentIndexRuleTree();
 
             try {
                 Set<String> excludes = Collections.emptySet();
+                List<String> pathIndexes = new ArrayList<String>();
                 // Carry out search.
                 Iterator<SMSDataEntry> i = smDAO.search(token, baseDN, SEARCH_FILTER, 0, 0, false, false, excludes);
 
@@ -170,9 +214,12 @@ public class IndexTreeServiceImpl implements IndexTreeService, IndexChangeObserv
                     @SuppressWarnings("unchecked")
                     Set<String> policyPathIndexes = e.getAttributeValues(INDEX_PATH_ATT);
 
-                    indexTree.addIndexRules(policyPathIndexes);
+                    pathIndexes.addAll(policyPathIndexes);
                 }
 
+                // Publish all of the realm's rules as a single modification.
+                indexTree.addIndexRules(pathIndexes);
+
             } catch (SMSException smsE) {
                 throw new EntitlementException(52, new Object[] {baseDN}, smsE);
             }
@@ -185,6 +232,61 @@ public class IndexTreeServiceImpl implements IndexTreeService, IndexChangeObserv
         return indexTree;
     }
 
+    /**
+     * Adds the policy path indexes created or modified since a realm's snapshot was taken to the snapshot's tree.
+     *
+     * @param realm
+     *         The realm for which policy path indexes are to be read from.
+     * @param snapshot
+     *         The realm's snapshot.
+     * @return The reconciled tree, or null if the realm has no policy path indexes.
+     * @throws EntitlementException
+     *         When an error occurs reading policy data.
+     */
+    private PersistentIndexRuleTree reconcileTree(String realm, IndexTreeSnapshotStore.Snapshot snapshot)
+            throws EntitlementException {
+
+        String baseDN = String.format(REALM_DN_TEMPLATE, dnMapper.orgNameToDN(realm));
+        SSOToken token = AccessController.doPrivileged(adminAction);
+
+        if (!smDAO.checkIfEntryExists(baseDN, token)) {
+            return null;
+        }
+
+        PersistentIndexRuleTree indexTree = snapshot.getTree();
+        SimpleDateFormat generalizedTime = new SimpleDateFormat(GENERALIZED_TIME_FORMAT, Locale.ROOT);
+        generalizedTime.setTimeZone(TimeZone.getTimeZone("UTC"));
+        String filter = String.format(CHANGED_SINCE_FILTER,
+                generalizedTime.format(new Date(snapshot.getTime() - SNAPSHOT_RECONCILE_MARGIN)));
+
+        try {
+            Set<String> excludes = Collections.emptySet();
+            List<String> pathIndexes = new ArrayList<String>();
+            Iterator<SMSDataEntry> i = smDAO.search(token, baseDN, filter, 0, 0, false, false, excludes);
+
+            while (i.hasNext()) {
+                SMSDataEntry e = i.next();
+
+                // Suppressed warning as unchecked assignment is valid.
+                @SuppressWarnings("unchecked")
+                Set<String> policyPathIndexes = e.getAttributeValues(INDEX_PATH_ATT);
+
+                pathIndexes.addAll(policyPathIndexes);
+            }
+
+            indexTree.addIndexRules(pathIndexes);
+
+            if (DEBUG.messageEnabled()) {
+                DEBUG.message(String.format("Index rule tree for '%s' reconciled with %d changed path indexes.",
+                        realm, pathIndexes.size()));
+            }
+        } catch (SMSException smsE) {
+            throw new EntitlementException(52, new Object[] {baseDN}, smsE);
+        }
+
+        return indexTree;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -198,6 +300,7 @@ public class IndexTreeServiceImpl implements IndexTreeService, IndexChangeObserv
 
             String realm = modification.getRealm();
             IndexRuleTree tree = indexTreeCache.get(realm);
+            decisionCache.invalidatePathIndex(realm, modification.getPathIndex());
 
             if (tree != null) {
                 String pathIndex = modification.getPathIndex();
@@ -220,6 +323,8 @@ public class IndexTreeServiceImpl implements IndexTreeService, IndexChangeObserv
             // Error event received, destroy the cache as policy updates may well have been lost, resulting in cached
             // trees becoming inconsistent. This will force all trees to be reloaded with clean data.
             indexTreeCache.clear();
+            snapshotStore.clear();
+            decisionCache.invalidateAll();
 
             if (DEBUG.messageEnabled()) {
                 DEBUG.message("Potential policy path index loss, cached index trees cleared.");
@@ -233,6 +338,12 @@ public class IndexTreeServiceImpl implements IndexTreeService, IndexChangeObserv
     public void shutdown() {
         manager.removeObserver(this);
         manager.shutdown();
+
+        // Save the trees as they now stand, including changes received since they were loaded.
+        long shutdownTime = System.currentTimeMillis();
+        for (Map.Entry<String, PersistentIndexRuleTree> entry : indexTreeCache.entrySet()) {
+            snapshotStore.save(entry.getKey(), entry.getValue(), shutdownTime);
+        }
     }
 
 }
\ No newline at end of file
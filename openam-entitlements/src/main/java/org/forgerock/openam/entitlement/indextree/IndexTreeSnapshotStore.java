@@ -0,0 +1,243 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.entitlement.indextree;
+
+import com.iplanet.am.util.SystemProperties;
+import com.sun.identity.shared.debug.Debug;
+import org.forgerock.openam.entitlement.utils.indextree.PersistentIndexRuleTree;
+import org.forgerock.openam.utils.IOUtils;
+import org.forgerock.util.annotations.VisibleForTesting;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Keeps snapshots of realm index rule trees on local disk, so that a server can load a realm's tree without searching
+ * the configuration store for all of the realm's policy path indexes.
+ * <p/>
+ * Snapshots are only kept when a directory has been configured with {@link #SNAPSHOT_DIRECTORY}. Each snapshot
+ * records the time up to which it reflects the configuration store, so that policy changes made after that time can
+ * be applied to it when it is loaded. A snapshot is only loaded if that time is within the last
+ * {@link #SNAPSHOT_MAX_AGE} minutes.
+ */
+@Singleton
+public class IndexTreeSnapshotStore {
+
+    /**
+     * System property naming the directory in which to keep index rule tree snapshots.
+     */
+    static final String SNAPSHOT_DIRECTORY = "org.forgerock.openam.entitlement.index.snapshot.directory";
+
+    /**
+     * System property giving the maximum age, in minutes, of a snapshot that will be loaded.
+     */
+    static final String SNAPSHOT_MAX_AGE = "org.forgerock.openam.entitlement.index.snapshot.maxAge";
+
+    private static final Debug DEBUG = Debug.getInstance("amEntitlements");
+
+    private static final String SNAPSHOT_SUFFIX = ".idx";
+    private static final int SNAPSHOT_FORMAT = 2;
+    private static final int DEFAULT_MAX_AGE_MINUTES = 60;
+
+    private final File directory;
+    private final long maxAge;
+
+    /**
+     * Creates a snapshot store configured from system properties.
+     */
+    @Inject
+    public IndexTreeSnapshotStore() {
+        this(getDirectory(SystemProperties.get(SNAPSHOT_DIRECTORY)),
+                TimeUnit.MINUTES.toMillis(SystemProperties.getAsInt(SNAPSHOT_MAX_AGE, DEFAULT_MAX_AGE_MINUTES)));
+    }
+
+    @VisibleForTesting
+    IndexTreeSnapshotStore(File directory, long maxAge) {
+        this.directory = directory;
+        this.maxAge = maxAge;
+    }
+
+    private static File getDirectory(String directoryName) {
+        return directoryName == null || directoryName.trim().isEmpty() ? null : new File(directoryName);
+    }
+
+    /**
+     * Whether snapshots are enabled.
+     *
+     * @return True if a snapshot directory has been configured.
+     */
+    boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * Loads the snapshot for the given realm.
+     *
+     * @param realm
+     *         The realm.
+     * @return The realm's snapshot, or null if there is no usable snapshot.
+     */
+    Snapshot load(String realm) {
+        if (!isEnabled()) {
+            return null;
+        }
+
+        File snapshotFile = getSnapshotFile(realm);
+        if (!snapshotFile.isFile()) {
+            return null;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new InflaterInputStream(new BufferedInputStream(
+                    new FileInputStream(snapshotFile))));
+
+            int format = in.readUnsignedByte();
+            if (format != SNAPSHOT_FORMAT) {
+                throw new IOException("Unsupported index rule tree snapshot format: " + format);
+            }
+
+            long time = in.readLong();
+            if (System.currentTimeMillis() - time > maxAge) {
+                return null;
+            }
+
+            PersistentIndexRuleTree tree = new PersistentIndexRuleTree();
+            tree.readSnapshot(in);
+
+            if (DEBUG.messageEnabled()) {
+                DEBUG.message(String.format("Index rule tree for '%s' loaded from snapshot %s.", realm,
+                        snapshotFile));
+            }
+
+            return new Snapshot(tree, time);
+        } catch (IOException ioE) {
+            DEBUG.warning(String.format("Unable to load index rule tree snapshot %s.", snapshotFile), ioE);
+            return null;
+        } finally {
+            IOUtils.closeIfNotNull(in);
+        }
+    }
+
+    /**
+     * Saves a snapshot of the given realm's tree, replacing any previous snapshot.
+     *
+     * @param realm
+     *         The realm.
+     * @param tree
+     *         The realm's tree.
+     * @param time
+     *         The time up to which the tree reflects the configuration store.
+     */
+    void save(String realm, PersistentIndexRuleTree tree, long time) {
+        if (!isEnabled() || (!directory.isDirectory() && !directory.mkdirs())) {
+            return;
+        }
+
+        File snapshotFile = getSnapshotFile(realm);
+        File temporary = new File(directory, snapshotFile.getName() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new DeflaterOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(temporary))));
+            out.writeByte(SNAPSHOT_FORMAT);
+            out.writeLong(time);
+            tree.writeSnapshot(out);
+            out.close();
+            out = null;
+
+            // Replace the previous snapshot in one step so that a partially written snapshot is never loaded.
+            if (!temporary.renameTo(snapshotFile)
+                    && !(snapshotFile.delete() && temporary.renameTo(snapshotFile))) {
+                throw new IOException("Unable to rename " + temporary + " to " + snapshotFile);
+            }
+        } catch (IOException ioE) {
+            DEBUG.warning(String.format("Unable to save index rule tree snapshot %s.", snapshotFile), ioE);
+            temporary.delete();
+        } finally {
+            IOUtils.closeIfNotNull(out);
+        }
+    }
+
+    /**
+     * Removes all snapshots, so that trees are next loaded from the configuration store.
+     */
+    void clear() {
+        if (!isEnabled()) {
+            return;
+        }
+
+        File[] snapshots = directory.listFiles();
+        if (snapshots != null) {
+            for (File snapshot : snapshots) {
+                if (snapshot.getName().endsWith(SNAPSHOT_SUFFIX)) {
+                    snapshot.delete();
+                }
+            }
+        }
+    }
+
+    private File getSnapshotFile(String realm) {
+        try {
+            return new File(directory, URLEncoder.encode(realm, "UTF-8") + SNAPSHOT_SUFFIX);
+        } catch (UnsupportedEncodingException ueE) {
+            throw new IllegalStateException(ueE);
+        }
+    }
+
+    /**
+     * A realm's tree as loaded from its snapshot.
+     */
+    static final class Snapshot {
+
+        private final PersistentIndexRuleTree tree;
+        private final long time;
+
+        Snapshot(PersistentIndexRuleTree tree, long time) {
+            this.tree = tree;
+            this.time = time;
+        }
+
+        /**
+         * @return The realm's tree.
+         */
+        PersistentIndexRuleTree getTree() {
+            return tree;
+        }
+
+        /**
+         * @return The time up to which the tree reflects the configuration store.
+         */
+        long getTime() {
+            return time;
+        }
+
+    }
+
+}
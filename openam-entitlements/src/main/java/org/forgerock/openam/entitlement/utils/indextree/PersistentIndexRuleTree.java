@@ -0,0 +1,449 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.entitlement.utils.indextree;
+
+import org.forgerock.openam.entitlement.utils.indextree.nodecontext.ContextKey;
+import org.forgerock.openam.entitlement.utils.indextree.nodecontext.MapSearchContext;
+import org.forgerock.openam.entitlement.utils.indextree.nodecontext.SearchContext;
+import org.forgerock.openam.entitlement.utils.indextree.nodefactory.BasicTreeNodeFactory;
+import org.forgerock.openam.entitlement.utils.indextree.nodefactory.TreeNodeFactory;
+import org.forgerock.openam.entitlement.utils.indextree.treenodes.TreeNode;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An index rule tree that searches can traverse without any locking, whilst modifications publish a new version of
+ * the tree atomically.
+ * <p/>
+ * The tree has the same structure and search behaviour as {@link SimpleReferenceTree}, one node per character with
+ * the most recently added child first, but its nodes are never modified once a version of the tree has been
+ * published. A modification copies only the nodes on the path from the root to the modified node, sharing every other
+ * node with the previous version, and then replaces the root reference. A search therefore always sees a complete
+ * and consistent version of the tree, and is never held up by modifications.
+ * <p/>
+ * Modifications are serialised against each other. When a collection of rules is added, nodes created for that
+ * modification are updated in place until it is published, so building a tree from many rules does not copy any
+ * nodes.
+ * <p/>
+ * Unlike {@link SimpleReferenceTree}, the tree node instances created by the {@link TreeNodeFactory} are only used to
+ * decide which characters a node has interest in; one instance is shared by all nodes with the same character.
+ * <p/>
+ * The tree can be written to and read from a compact snapshot, which preserves the order of the nodes and so
+ * produces a tree which behaves identically to the original.
+ */
+public class PersistentIndexRuleTree implements IndexRuleTree {
+
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private final TreeNodeFactory factory;
+    private final ConcurrentMap<Character, TreeNode> matchers;
+    private final Object writeLock;
+    private volatile Node root;
+
+    public PersistentIndexRuleTree() {
+        this(new BasicTreeNodeFactory());
+    }
+
+    public PersistentIndexRuleTree(TreeNodeFactory factory) {
+        this.factory = factory;
+        matchers = new ConcurrentHashMap<Character, TreeNode>();
+        writeLock = new Object();
+        root = new Node(null, new Object());
+    }
+
+    @Override
+    public void addIndexRule(String indexRule) {
+        addIndexRules(Collections.singleton(indexRule));
+    }
+
+    @Override
+    public void addIndexRules(Collection<String> indexRules) {
+        for (String indexRule : indexRules) {
+            if (indexRule == null) {
+                throw new IllegalArgumentException("Pattern must not be null");
+            }
+        }
+
+        synchronized (writeLock) {
+            // Nodes created or copied during this modification may be updated in place until it is published.
+            Object edit = new Object();
+            Node newRoot = root;
+            for (String indexRule : indexRules) {
+                newRoot = add(newRoot, indexRule, 0, edit);
+            }
+            root = newRoot;
+        }
+    }
+
+    @Override
+    public void removeIndexRule(String indexRule) {
+        if (indexRule == null) {
+            throw new IllegalArgumentException("Pattern must not be null");
+        }
+
+        synchronized (writeLock) {
+            Node newRoot = remove(root, indexRule, 0, new Object());
+            if (newRoot != null) {
+                root = newRoot;
+            }
+        }
+    }
+
+    @Override
+    public Set<String> searchTree(String resource) {
+        if (resource == null) {
+            throw new IllegalArgumentException("The search term must not be null");
+        }
+
+        char[] searchTerm = resource.toCharArray();
+
+        List<Node> candidates = new ArrayList<Node>();
+        // Start with the current version's root node as the candidate.
+        candidates.add(root);
+
+        // Create a new search context for the current search.
+        SearchContext context = new MapSearchContext();
+
+        for (int i = 0, l = searchTerm.length; i < l && !candidates.isEmpty(); i++) {
+            if (i == l - 1) {
+                // Record that this is the last character.
+                context.add(ContextKey.LAST_CHARACTER, Boolean.TRUE);
+            }
+
+            // For each character of the search term.
+            searchTree(searchTerm[i], candidates, context);
+        }
+
+        Set<String> results = new HashSet<String>();
+        for (Node candidate : candidates) {
+            if (candidate.endPointCount > 0) {
+                // Filter out valid index rules.
+                results.add(candidate.rule);
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Writes the current version of the tree as a snapshot, from which an identical tree can be read with
+     * {@link #readSnapshot(DataInput)}.
+     *
+     * @param out
+     *         The output to write the snapshot to.
+     * @throws IOException
+     *         When an error occurs writing to the output.
+     */
+    public void writeSnapshot(DataOutput out) throws IOException {
+        out.writeByte(SNAPSHOT_VERSION);
+        writeNode(root, out);
+    }
+
+    /**
+     * Replaces the contents of the tree with the contents of a snapshot written by {@link #writeSnapshot(DataOutput)}.
+     *
+     * @param in
+     *         The input to read the snapshot from.
+     * @throws IOException
+     *         When an error occurs reading from the input, or the snapshot is not in a supported format.
+     */
+    public void readSnapshot(DataInput in) throws IOException {
+        int version = in.readUnsignedByte();
+        if (version != SNAPSHOT_VERSION) {
+            throw new IOException("Unsupported index rule tree snapshot version: " + version);
+        }
+
+        Object edit = new Object();
+        Node newRoot = new Node(null, edit);
+        readNode(newRoot, new StringBuilder(), in, edit);
+
+        synchronized (writeLock) {
+            root = newRoot;
+        }
+    }
+
+    /**
+     * Adds the remainder of the rule beneath the given node.
+     *
+     * @return The node to replace the given node with.
+     */
+    private Node add(Node node, String rule, int index, Object edit) {
+        Node target = node.editable(edit);
+
+        if (index == rule.length()) {
+            target.endPointCount++;
+            target.rule = rule;
+            return target;
+        }
+
+        char value = rule.charAt(index);
+        int position = target.indexOf(value);
+
+        if (position < 0) {
+            // Build out an additional tree node.
+            target.addChild(add(new Node(getMatcher(value), edit), rule, index + 1, edit));
+        } else {
+            target.children[position] = add(target.children[position], rule, index + 1, edit);
+        }
+
+        return target;
+    }
+
+    /**
+     * Removes an end point for the remainder of the rule beneath the given node.
+     *
+     * @return The node to replace the given node with, or null if the rule is not in the tree.
+     */
+    private Node remove(Node node, String rule, int index, Object edit) {
+        if (index == rule.length()) {
+            if (node.matcher == null || node.endPointCount == 0) {
+                return null;
+            }
+            Node target = node.editable(edit);
+            if (--target.endPointCount == 0) {
+                target.rule = null;
+            }
+            return target;
+        }
+
+        int position = node.indexOf(rule.charAt(index));
+        if (position < 0) {
+            return null;
+        }
+
+        Node child = remove(node.children[position], rule, index + 1, edit);
+        if (child == null) {
+            return null;
+        }
+
+        // Nodes are never removed, only their end point markers, in line with the simple reference tree.
+        Node target = node.editable(edit);
+        target.children[position] = child;
+        return target;
+    }
+
+    private TreeNode getMatcher(char value) {
+        TreeNode matcher = matchers.get(value);
+        if (matcher == null) {
+            matcher = factory.getTreeNode(value);
+            TreeNode existing = matchers.putIfAbsent(value, matcher);
+            if (existing != null) {
+                matcher = existing;
+            }
+        }
+        return matcher;
+    }
+
+    /**
+     * Evaluate previous candidates for reelection and their children for first election.
+     */
+    private void searchTree(char searchTerm, List<Node> candidates, SearchContext context) {
+        // Every candidate has to be reelected.
+        List<Node> previousCandidates = new ArrayList<Node>(candidates);
+        candidates.clear();
+
+        for (Node previousCandidate : previousCandidates) {
+            // Reelect any previous wildcard candidates.
+            electWildcard(searchTerm, previousCandidate, candidates, context);
+            // Evaluate previous candidates children.
+            electChildren(searchTerm, previousCandidate, candidates, context);
+        }
+    }
+
+    /**
+     * Evaluate each child tree node against the given value.
+     */
+    private void electChildren(char searchTerm, Node parent, List<Node> candidates, SearchContext context) {
+        for (int i = parent.childCount - 1; i >= 0; i--) {
+            Node child = parent.children[i];
+
+            if (child.matcher.hasInterestIn(searchTerm, context)) {
+                // Elect child as a candidate.
+                candidates.add(child);
+                // Checks for any last chance elections.
+                lastChanceElection(searchTerm, child, candidates, context);
+            }
+
+            if (child.matcher.isWildcard()) {
+                // This scenario handles zero or more characters.
+                electChildren(searchTerm, child, candidates, context);
+            }
+        }
+    }
+
+    /**
+     * Given the last character in the resource, affirm whether a valid zero or more wildcard exists next in the tree.
+     */
+    private void lastChanceElection(char searchTerm, Node parent, List<Node> candidates, SearchContext context) {
+        // Check that the search term is indeed the last character of the resource.
+        if (context.has(ContextKey.LAST_CHARACTER)) {
+            for (int i = parent.childCount - 1; i >= 0; i--) {
+                // Elect the next tree node if it's a zero or more wildcard.
+                electWildcard(searchTerm, parent.children[i], candidates, context);
+            }
+        }
+    }
+
+    /**
+     * Elects the current candidate if it's a wildcard tree node and has interest in the current search term.
+     */
+    private void electWildcard(char searchTerm, Node candidate, List<Node> candidates, SearchContext context) {
+        if (candidate.matcher != null && candidate.matcher.isWildcard()
+                && candidate.matcher.hasInterestIn(searchTerm, context)) {
+            // Reelect previous candidate.
+            candidates.add(candidate);
+        }
+    }
+
+    private void writeNode(Node node, DataOutput out) throws IOException {
+        writeCount(node.endPointCount, out);
+        writeCount(node.childCount, out);
+        for (int i = 0; i < node.childCount; i++) {
+            Node child = node.children[i];
+            out.writeChar(child.matcher.getNodeValue());
+            writeNode(child, out);
+        }
+    }
+
+    private void readNode(Node node, StringBuilder path, DataInput in, Object edit) throws IOException {
+        node.endPointCount = readCount(in);
+        if (node.endPointCount > 0) {
+            node.rule = path.toString();
+        }
+
+        int childCount = readCount(in);
+        node.children = childCount == 0 ? NO_CHILDREN : new Node[childCount];
+        node.childCount = childCount;
+        for (int i = 0; i < childCount; i++) {
+            char value = in.readChar();
+            Node child = new Node(getMatcher(value), edit);
+            path.append(value);
+            readNode(child, path, in, edit);
+            path.setLength(path.length() - 1);
+            node.children[i] = child;
+        }
+    }
+
+    private static void writeCount(int count, DataOutput out) throws IOException {
+        while ((count & ~0x7F) != 0) {
+            out.writeByte((count & 0x7F) | 0x80);
+            count >>>= 7;
+        }
+        out.writeByte(count);
+    }
+
+    private static int readCount(DataInput in) throws IOException {
+        int count = 0;
+        for (int shift = 0; shift < Integer.SIZE; shift += 7) {
+            int b = in.readUnsignedByte();
+            count |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return count;
+            }
+        }
+        throw new IOException("Malformed index rule tree snapshot");
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder view = new StringBuilder();
+        appendNode(root, 0, view);
+        return view.toString();
+    }
+
+    private void appendNode(Node node, int depth, StringBuilder view) {
+        boolean first = true;
+        for (int c = node.childCount - 1; c >= 0; c--) {
+            Node child = node.children[c];
+            if (!first) {
+                view.append('\n');
+                for (int i = 0; i < depth; i++) {
+                    view.append(' ');
+                }
+            }
+            view.append(child.matcher.getNodeValue());
+            appendNode(child, depth + 1, view);
+            first = false;
+        }
+    }
+
+    /**
+     * A single character of one or more index rules. A node may only be modified by the modification that created or
+     * copied it, and only until that modification has been published.
+     */
+    private static final class Node {
+
+        // Null for the root node.
+        private final TreeNode matcher;
+        private final Object edit;
+        // Ordered oldest first; searches visit the most recently added child first, as in the simple reference tree.
+        private Node[] children;
+        private int childCount;
+        private int endPointCount;
+        // The full index rule, when this node is an end point.
+        private String rule;
+
+        private Node(TreeNode matcher, Object edit) {
+            this.matcher = matcher;
+            this.edit = edit;
+            this.children = NO_CHILDREN;
+        }
+
+        /**
+         * Returns this node if it belongs to the given modification, otherwise a copy of it which does.
+         */
+        private Node editable(Object edit) {
+            if (this.edit == edit) {
+                return this;
+            }
+            Node copy = new Node(matcher, edit);
+            copy.children = childCount == 0 ? NO_CHILDREN : Arrays.copyOf(children, childCount);
+            copy.childCount = childCount;
+            copy.endPointCount = endPointCount;
+            copy.rule = rule;
+            return copy;
+        }
+
+        private void addChild(Node child) {
+            if (childCount == children.length) {
+                children = Arrays.copyOf(children, Math.max(2, childCount * 2));
+            }
+            children[childCount++] = child;
+        }
+
+        private int indexOf(char value) {
+            for (int i = childCount - 1; i >= 0; i--) {
+                if (children[i].matcher.getNodeValue() == value) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+}
@@ -11,7 +11,7 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2013-2015 ForgeRock AS.
+ * Copyright 2013-2016 ForgeRock AS.
  */
 
 package org.forgerock.openam.entitlement.indextree;
@@ -29,8 +29,13 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import org.forgerock.openam.core.guice.CoreGuiceModule.DNWrapper;
+import org.forgerock.openam.entitlement.EntitlementDecisionCache;
+import org.forgerock.openam.entitlement.indextree.events.ErrorEventType;
+import org.forgerock.openam.entitlement.indextree.events.ModificationEventType;
+import org.forgerock.openam.entitlement.utils.indextree.PersistentIndexRuleTree;
 import org.forgerock.opendj.ldap.LdapException;
 import org.forgerock.util.thread.listener.ShutdownManager;
+import org.mockito.ArgumentCaptor;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
@@ -60,6 +65,8 @@ public class IndexTreeServiceImplTest {
     private ShutdownManager shutdownManager;
     private DNWrapper dnMapper;
     private SSOToken ssoToken;
+    private EntitlementDecisionCache decisionCache;
+    private IndexTreeSnapshotStore snapshotStore;
 
     private Set<String> excludes;
 
@@ -72,10 +79,13 @@ public class IndexTreeServiceImplTest {
         dnMapper = mock(DNWrapper.class);
         shutdownManager = mock(ShutdownManager.class);
         ssoToken = mock(SSOToken.class);
+        decisionCache = mock(EntitlementDecisionCache.class);
+        snapshotStore = mock(IndexTreeSnapshotStore.class);
         excludes = Collections.emptySet();
 
         treeService = new IndexTreeServiceImpl(
-                manager, privilegedAction, serviceManagementDAO, dnMapper, shutdownManager);
+                manager, privilegedAction, serviceManagementDAO, dnMapper, shutdownManager, decisionCache,
+                snapshotStore);
 
         verify(shutdownManager).addShutdownListener(treeService);
         verify(manager).registerObserver(treeService);
@@ -255,6 +265,79 @@ public class IndexTreeServiceImplTest {
         assertTrue(results.isEmpty());
     }
 
+    /**
+     * Verifies that a tree loaded from the configuration store is saved as a snapshot.
+     */
+    @Test
+    public void loadedTreeIsSavedAsSnapshot() throws Exception {
+        // Path indexes to return from the DAO search.
+        List<SMSDataEntry> pathIndexes = new ArrayList<SMSDataEntry>();
+        pathIndexes.add(new SMSDataEntry("{dn:somedn,attributeValues:{pathindex:[\"http://www.test.com\"]}}"));
+
+        when(dnMapper.orgNameToDN(REALM)).thenReturn(REALM_DN);
+        when(privilegedAction.run()).thenReturn(ssoToken);
+        when(serviceManagementDAO.checkIfEntryExists(SERVICE_DN, ssoToken)).thenReturn(true);
+        when(serviceManagementDAO.search(ssoToken, SERVICE_DN, FILTER, 0, 0, false, false, excludes))
+                .thenReturn(pathIndexes.iterator());
+        long before = System.currentTimeMillis();
+
+        treeService.searchTree("http://www.test.com", REALM);
+
+        // Verify the snapshot is taken as of the time the realm was searched.
+        ArgumentCaptor<Long> time = ArgumentCaptor.forClass(Long.class);
+        verify(snapshotStore).save(eq(REALM), any(PersistentIndexRuleTree.class), time.capture());
+        assertTrue(time.getValue() >= before && time.getValue() <= System.currentTimeMillis());
+    }
+
+    /**
+     * Verifies that a snapshot is used in place of the full search, and that path indexes added to the configuration
+     * store since the snapshot was taken are added to it.
+     */
+    @Test
+    public void snapshotIsReconciledWithChangesSinceItWasTaken() throws Exception {
+        // Snapshot of the realm, taken at 2016-01-01T00:10:00Z.
+        PersistentIndexRuleTree snapshotTree = new PersistentIndexRuleTree();
+        snapshotTree.addIndexRule("http://www.test.com");
+        when(snapshotStore.load(REALM)).thenReturn(new IndexTreeSnapshotStore.Snapshot(snapshotTree, 1451607000000L));
+
+        // Policy added since the snapshot was taken.
+        List<SMSDataEntry> changedIndexes = new ArrayList<SMSDataEntry>();
+        changedIndexes.add(new SMSDataEntry("{dn:somedn,attributeValues:{pathindex:[\"http://*.test.com\"]}}"));
+        String changedSinceFilter = "(&(sunserviceID=indexes)"
+                + "(|(createTimestamp>=20160101000500Z)(modifyTimestamp>=20160101000500Z)))";
+
+        when(dnMapper.orgNameToDN(REALM)).thenReturn(REALM_DN);
+        when(privilegedAction.run()).thenReturn(ssoToken);
+        when(serviceManagementDAO.checkIfEntryExists(SERVICE_DN, ssoToken)).thenReturn(true);
+        when(serviceManagementDAO.search(ssoToken, SERVICE_DN, changedSinceFilter, 0, 0, false, false, excludes))
+                .thenReturn(changedIndexes.iterator());
+
+        Set<String> results = treeService.searchTree("http://www.test.com", REALM);
+
+        // Verify the full search was not carried out.
+        verify(serviceManagementDAO).search(ssoToken, SERVICE_DN, changedSinceFilter, 0, 0, false, false, excludes);
+        verify(serviceManagementDAO, never()).search(ssoToken, SERVICE_DN, FILTER, 0, 0, false, false, excludes);
+
+        Set<String> expectedResults = new HashSet<String>();
+        expectedResults.add("http://www.test.com");
+        expectedResults.add("http://*.test.com");
+        assertEquals(expectedResults, results);
+        verify(snapshotStore).save(eq(REALM), eq(snapshotTree), anyLong());
+    }
+
+    /**
+     * Verifies that index changes remove the cached policy decisions that they affect.
+     */
+    @Test
+    public void indexChangesInvalidateCachedDecisions() {
+        // Apply an addition and a data loss event.
+        treeService.update(ModificationEventType.ADD.createEvent("http://www.test.com/*", REALM));
+        treeService.update(ErrorEventType.DATA_LOSS.createEvent());
+
+        // Verify the decision cache was invalidated for both.
+        verify(decisionCache).invalidatePathIndex(REALM, "http://www.test.com/*");
+        verify(decisionCache).invalidateAll();
+    }
 
     /**
      * Verify that shutdown causes any clean up, including the connection being closed.
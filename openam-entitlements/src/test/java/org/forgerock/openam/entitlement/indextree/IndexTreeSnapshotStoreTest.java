@@ -0,0 +1,145 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.entitlement.indextree;
+
+import static org.testng.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.openam.entitlement.utils.indextree.PersistentIndexRuleTree;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit test for IndexTreeSnapshotStore.
+ */
+public class IndexTreeSnapshotStoreTest {
+
+    private static final String REALM = "/test-realm";
+    private static final long MAX_AGE = TimeUnit.HOURS.toMillis(1);
+
+    private File directory;
+    private IndexTreeSnapshotStore store;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        directory = File.createTempFile("indextree", "");
+        directory.delete();
+        store = new IndexTreeSnapshotStore(directory, MAX_AGE);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    /**
+     * Verifies that a saved tree is loaded with the same rules and the time it was saved with.
+     */
+    @Test
+    public void savedSnapshotIsLoaded() {
+        PersistentIndexRuleTree tree = new PersistentIndexRuleTree();
+        tree.addIndexRules(Arrays.asList("http://www.test.com", "http://*.test.com", "*"));
+        long time = System.currentTimeMillis();
+
+        store.save(REALM, tree, time);
+        IndexTreeSnapshotStore.Snapshot snapshot = store.load(REALM);
+
+        assertNotNull(snapshot);
+        assertEquals(snapshot.getTime(), time);
+        assertEquals(snapshot.getTree().searchTree("http://www.test.com"),
+                new HashSet<String>(Arrays.asList("http://www.test.com", "http://*.test.com", "*")));
+        assertNull(store.load("/some-other-test-realm"));
+    }
+
+    /**
+     * Verifies that a snapshot older than the maximum age is not loaded.
+     */
+    @Test
+    public void expiredSnapshotIsNotLoaded() {
+        PersistentIndexRuleTree tree = new PersistentIndexRuleTree();
+        tree.addIndexRule("http://www.test.com");
+
+        store.save(REALM, tree, System.currentTimeMillis() - MAX_AGE - 1);
+
+        assertNull(store.load(REALM));
+    }
+
+    /**
+     * Verifies that a corrupt snapshot is not loaded.
+     */
+    @Test
+    public void corruptSnapshotIsNotLoaded() throws IOException {
+        PersistentIndexRuleTree tree = new PersistentIndexRuleTree();
+        tree.addIndexRule("http://www.test.com");
+        store.save(REALM, tree, System.currentTimeMillis());
+
+        File[] snapshots = directory.listFiles();
+        assertNotNull(snapshots);
+        assertEquals(snapshots.length, 1);
+        FileOutputStream out = new FileOutputStream(snapshots[0]);
+        try {
+            out.write("not a snapshot".getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+
+        assertNull(store.load(REALM));
+    }
+
+    /**
+     * Verifies that clearing the store removes all snapshots.
+     */
+    @Test
+    public void clearRemovesSnapshots() {
+        PersistentIndexRuleTree tree = new PersistentIndexRuleTree();
+        tree.addIndexRule("http://www.test.com");
+        store.save(REALM, tree, System.currentTimeMillis());
+
+        store.clear();
+
+        assertNull(store.load(REALM));
+    }
+
+    /**
+     * Verifies that nothing is saved or loaded when no directory is configured.
+     */
+    @Test
+    public void disabledStoreKeepsNoSnapshots() {
+        IndexTreeSnapshotStore disabled = new IndexTreeSnapshotStore(null, MAX_AGE);
+        PersistentIndexRuleTree tree = new PersistentIndexRuleTree();
+        tree.addIndexRule("http://www.test.com");
+
+        disabled.save(REALM, tree, System.currentTimeMillis());
+
+        assertFalse(disabled.isEnabled());
+        assertNull(disabled.load(REALM));
+    }
+
+}
@@ -0,0 +1,180 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.entitlement.utils.indextree;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Unit test for PersistentIndexRuleTree.
+ */
+public class PersistentIndexRuleTreeTest {
+
+    private static final String RULE_CHARACTERS = "ab/.*^?";
+    private static final String RESOURCE_CHARACTERS = "ab/.?#";
+
+    private PersistentIndexRuleTree tree;
+
+    @BeforeMethod
+    public void setUp() {
+        tree = new PersistentIndexRuleTree();
+    }
+
+    @Test
+    public void shouldMatchRulesWithWildcards() {
+        tree.addIndexRules(Arrays.asList("http://www.endurl.com/*", "http://www.middleurl.com/*/home",
+                "http://www.example.com/^/index.html", "*"));
+
+        assertEquals(tree.searchTree("http://www.endurl.com/a/b/c"),
+                asSet("http://www.endurl.com/*", "*"));
+        assertEquals(tree.searchTree("http://www.middleurl.com/abc/home"),
+                asSet("http://www.middleurl.com/*/home", "*"));
+        assertEquals(tree.searchTree("http://www.example.com/a/index.html"),
+                asSet("http://www.example.com/^/index.html", "*"));
+        assertEquals(tree.searchTree("http://www.example.com/a/b/index.html"), asSet("*"));
+    }
+
+    @Test
+    public void shouldOnlyRemoveRuleOnceAllAdditionsAreRemoved() {
+        tree.addIndexRule("http://www.test.com");
+        tree.addIndexRule("http://www.test.com");
+
+        tree.removeIndexRule("http://www.test.com");
+        assertEquals(tree.searchTree("http://www.test.com"), asSet("http://www.test.com"));
+
+        tree.removeIndexRule("http://www.test.com");
+        assertTrue(tree.searchTree("http://www.test.com").isEmpty());
+    }
+
+    @Test
+    public void shouldIgnoreRemovalOfUnknownRule() {
+        tree.addIndexRule("http://www.test.com");
+
+        tree.removeIndexRule("http://www.test.co");
+        tree.removeIndexRule("http://www.test.com/other");
+
+        assertEquals(tree.searchTree("http://www.test.com"), asSet("http://www.test.com"));
+    }
+
+    @Test
+    public void shouldMatchSimpleReferenceTree() {
+        Random random = new Random(7);
+
+        for (int round = 0; round < 100; round++) {
+            IndexRuleTree reference = new SimpleReferenceTree();
+            tree = new PersistentIndexRuleTree();
+
+            List<String> rules = new ArrayList<String>();
+            for (int i = 0; i < 20; i++) {
+                rules.add(randomString(random, "http://", RULE_CHARACTERS, 8));
+            }
+            reference.addIndexRules(rules.subList(0, 10));
+            tree.addIndexRules(rules.subList(0, 10));
+            for (String rule : rules.subList(10, 20)) {
+                reference.addIndexRule(rule);
+                tree.addIndexRule(rule);
+            }
+            for (int i = 0; i < 5; i++) {
+                String rule = rules.get(random.nextInt(rules.size()));
+                reference.removeIndexRule(rule);
+                tree.removeIndexRule(rule);
+            }
+
+            for (int i = 0; i < 100; i++) {
+                String resource = randomString(random, "http://", RESOURCE_CHARACTERS, 10);
+                assertEquals(tree.searchTree(resource), reference.searchTree(resource), resource);
+            }
+        }
+    }
+
+    @Test
+    public void shouldRestoreIdenticalTreeFromSnapshot() throws Exception {
+        Random random = new Random(11);
+        for (int i = 0; i < 200; i++) {
+            tree.addIndexRule(randomString(random, "http://", RULE_CHARACTERS, 8));
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        tree.writeSnapshot(new DataOutputStream(bytes));
+        PersistentIndexRuleTree restored = new PersistentIndexRuleTree();
+        restored.readSnapshot(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        for (int i = 0; i < 1000; i++) {
+            String resource = randomString(random, "http://", RESOURCE_CHARACTERS, 10);
+            assertEquals(restored.searchTree(resource), tree.searchTree(resource), resource);
+        }
+        assertEquals(restored.toString(), tree.toString());
+    }
+
+    @Test
+    public void shouldSearchConsistentlyWhilstBeingModified() throws Exception {
+        tree.addIndexRule("http://www.test.com/*");
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 5000; i++) {
+                    tree.addIndexRule("http://www.test.com/" + i);
+                    tree.removeIndexRule("http://www.test.com/" + i);
+                }
+            }
+        });
+        writer.start();
+
+        while (writer.isAlive()) {
+            try {
+                Set<String> results = tree.searchTree("http://www.test.com/1");
+                assertTrue(results.contains("http://www.test.com/*"));
+            } catch (Throwable t) {
+                failures.add(t);
+                break;
+            }
+        }
+        writer.join();
+
+        assertTrue(failures.isEmpty(), failures.toString());
+        assertEquals(tree.searchTree("http://www.test.com/1"), asSet("http://www.test.com/*"));
+    }
+
+    private static String randomString(Random random, String prefix, String characters, int maxLength) {
+        StringBuilder value = new StringBuilder(prefix);
+        for (int i = 0, l = random.nextInt(maxLength); i < l; i++) {
+            value.append(characters.charAt(random.nextInt(characters.length())));
+        }
+        return value.toString();
+    }
+
+    private static Set<String> asSet(String... values) {
+        return new HashSet<String>(Arrays.asList(values));
+    }
+
+}
@@ -24,7 +24,7 @@
  *
  * $Id: AssertionImpl.java,v 1.8 2009/05/09 15:43:59 mallas Exp $
  *
- * Portions Copyrighted 2015 ForgeRock AS.
+ * Portions Copyrighted 2015-2016 ForgeRock AS.
  */
 
 
@@ -84,6 +84,7 @@ public class AssertionImpl implements Assertion {
     private Issuer issuer;
     private boolean isMutable = true;
     private String signedXMLString = null;
+    private Element signedElement = null;
     private Boolean isSignatureValid = null;
 
     public static String ASSERTION_ELEMENT = "Assertion";
@@ -131,6 +132,7 @@ public class AssertionImpl implements Assertion {
         }
         if (signature != null) {
             signedXMLString = xml;
+            signedElement = document.getDocumentElement();
         }   
     }
 
@@ -146,7 +148,8 @@ public class AssertionImpl implements Assertion {
         processElement(element);
         makeImmutable();
         if (signature != null) {
-            signedXMLString = XMLUtils.print(element,"UTF-8");
+            // Only serialized when asked for, the signature is verified against the element itself
+            signedElement = element;
         }
     }
 
@@ -661,6 +664,10 @@ public class AssertionImpl implements Assertion {
     throws SAML2Exception {
 
         if (isSignatureValid == null) {            
+            if (signedElement != null) {
+                isSignatureValid = SigManager.getSigInstance().verify(signedElement, getID(), verificationCerts);
+                return isSignatureValid.booleanValue();
+            }
             if (signedXMLString == null) {
                 signedXMLString = toXMLString(true, true);
             }
@@ -685,17 +692,21 @@ public class AssertionImpl implements Assertion {
         X509Certificate cert
     ) throws SAML2Exception {
 
-        Element signatureElement = 
-            SigManager.getSigInstance().sign(
-            toXMLString(true, true),
+        Document document = XMLUtils.toDOMDocument(toXMLString(true, true), SAML2SDKUtils.debug);
+        if (document == null) {
+            throw new SAML2Exception(SAML2SDKUtils.bundle.getString("errorObtainingElement"));
+        }
+        // Keep the signed element, it is only serialized again when asked for
+        Element signatureElement = SigManager.getSigInstance().sign(
+            document.getDocumentElement(),
             getID(),
             privateKey,
             cert
         );
         signature = XMLUtils.print(signatureElement); 
-        signedXMLString = XMLUtils.print(
-            signatureElement.getOwnerDocument().
-            getDocumentElement(), "UTF-8");
+        signedElement = document.getDocumentElement();
+        signedXMLString = null;
+        isSignatureValid = null;
         makeImmutable();  
     }
 
@@ -769,6 +780,9 @@ public class AssertionImpl implements Assertion {
     public String toXMLString(boolean includeNSPrefix, boolean declareNS)
         throws SAML2Exception {
 
+        if ((signature != null) && (signedXMLString == null) && (signedElement != null)) {
+            signedXMLString = XMLUtils.print(signedElement, "UTF-8");
+        }
         if ((signature != null) && (signedXMLString != null)) {
             return signedXMLString;
         }
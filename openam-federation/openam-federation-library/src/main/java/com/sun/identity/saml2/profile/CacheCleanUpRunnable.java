@@ -23,6 +23,8 @@
  * "Portions Copyrighted [year] [name of copyright owner]"
  *
  * $Id: CacheCleanUpRunnable.java,v 1.2 2008/11/10 22:57:03 veiming Exp $
+ *
+ * Portions Copyrighted 2016 ForgeRock AS.
  */
 
 
@@ -31,6 +33,9 @@ package com.sun.identity.saml2.profile;
 import java.util.List;
 import java.util.Iterator;
 
+import org.forgerock.openam.saml2.cache.SAML2Cache;
+import org.forgerock.openam.saml2.cache.SAML2CacheRegistry;
+
 import com.sun.identity.common.GeneralTaskRunnable;
 import com.sun.identity.saml2.assertion.Assertion;
 import com.sun.identity.saml2.common.SAML2Utils;
@@ -76,6 +81,9 @@ public class CacheCleanUpRunnable extends GeneralTaskRunnable {
     public void run() {
         if (SAML2Utils.debug.messageEnabled()) {
             SAML2Utils.debug.message("CacheCleanUpRunnable.run:");
+            for (SAML2Cache<?, ?> cache : SAML2CacheRegistry.getCaches()) {
+                SAML2Utils.debug.message("CacheCleanUpRunnable.run: " + cache);
+            }
         }
 
         synchronized(IDPCache.assertionCache) {
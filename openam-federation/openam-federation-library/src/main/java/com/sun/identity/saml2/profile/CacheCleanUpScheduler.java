@@ -24,7 +24,7 @@
  *
  * $Id: CacheCleanUpScheduler.java,v 1.8 2009/05/14 17:23:44 exu Exp $
  *
- * Portions Copyrighted 2014-2015 ForgeRock AS.
+ * Portions Copyrighted 2014-2016 ForgeRock AS.
  */
 
 package com.sun.identity.saml2.profile;
@@ -49,6 +49,7 @@ public class CacheCleanUpScheduler {
         pool.schedule(SPCache.authnRequestHash, nextRun);
         pool.schedule(SPCache.fedAccountHash, nextRun);
         pool.schedule(SPCache.assertionByIDCache, nextRun);
+        pool.schedule(SPCache.fedSessionListsByNameIDInfoKey, nextRun);
         pool.schedule(IDPCache.authnRequestCache, nextRun);
         pool.schedule(IDPCache.idpAuthnContextCache, nextRun);
         pool.schedule(IDPCache.assertionByIDCache, nextRun);
@@ -60,6 +61,14 @@ public class CacheCleanUpScheduler {
         pool.schedule(IDPCache.proxySPLogoutReqCache, nextRun);
         pool.schedule(IDPCache.SOAPMessageByLogoutRequestID, nextRun);
         pool.schedule(IDPCache.logoutResponseCache, nextRun);
+        pool.schedule(IDPCache.assertionCache, nextRun);
+        pool.schedule(IDPCache.idpSessionsByIndices, nextRun);
+        pool.schedule(IDPCache.authnContextCache, nextRun);
+        pool.schedule(IDPCache.sessionUpgradeCache, nextRun);
+        pool.schedule(IDPCache.oldIDPSessionCache, nextRun);
+        pool.schedule(IDPCache.idpSessionsBySessionID, nextRun);
+        pool.schedule(IDPCache.userIDByTransientNameIDValue, nextRun);
+        pool.schedule(IDPCache.spSessionPartnerBySessionID, nextRun);
         pool.schedule(new CacheCleanUpRunnable(SPCache.interval * 1000),
             nextRun);
     }
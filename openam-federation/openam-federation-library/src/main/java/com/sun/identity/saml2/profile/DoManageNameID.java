@@ -24,7 +24,7 @@
  *
  * $Id: DoManageNameID.java,v 1.26 2009/11/24 21:53:27 madan_ranganath Exp $
  *
- * Portions copyright 2013-2015 ForgeRock AS.
+ * Portions copyright 2013-2016 ForgeRock AS.
  */
 package com.sun.identity.saml2.profile;
 
@@ -34,6 +34,7 @@ import java.io.OutputStream;
 import java.security.Key;
 import java.security.PrivateKey;
 import java.security.cert.X509Certificate;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.Iterator;
@@ -2041,7 +2042,7 @@ public class DoManageNameID {
                + ", nameID=" + nameID + " from IDP session cache");
         }
         if (IDPCache.idpSessionsByIndices != null) {
-            keys = IDPCache.idpSessionsByIndices.keys();
+            keys = Collections.enumeration(IDPCache.idpSessionsByIndices.keySet());
         } else {
             if (debug.messageEnabled()) {
                 debug.message(method+"IDPCache.idpSessionsByIndices is null.");
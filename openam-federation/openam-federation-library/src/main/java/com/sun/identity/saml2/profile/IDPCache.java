@@ -24,23 +24,29 @@
  *
  * $Id: IDPCache.java,v 1.18 2009/05/14 17:23:45 exu Exp $
  *
- * Portions Copyrighted 2010-2015 ForgeRock AS.
+ * Portions Copyrighted 2010-2016 ForgeRock AS.
  */
 package com.sun.identity.saml2.profile;
 
-import com.sun.identity.common.PeriodicCleanUpMap;
+import static org.forgerock.openam.saml2.cache.SAML2CacheRegistry.DEFAULT_MAX_SIZE;
+
 import java.util.Collections;
 import java.util.Hashtable;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
+import org.forgerock.openam.saml2.cache.SAML2Cache;
+import org.forgerock.openam.saml2.cache.SAML2CacheRegistry;
+
 /**
  * This class caches authn request objects and relay states
  * based on the request id of the authn requests 
  * It also caches idp session by session index. 
- * TODO: Add cleanup thread to update IDP Cache if the cached
- * objects stay in the cache longer than a certain Cache Duration.
+ * <p>
+ * The caches are {@link SAML2Cache}s, bounded in size and in the time their entries live, which can be configured
+ * for each cache by the system properties described by {@link SAML2CacheRegistry}. Caches that hold the state of a
+ * single request expire their entries after the cache cleanup interval, as before. Caches that hold the state of
+ * a session are unbounded unless configured otherwise, as their entries are removed when the session ends.
  */
 
 public class IDPCache {
@@ -48,6 +54,8 @@ public class IDPCache {
     private IDPCache() {
     }
 
+    private static final long REQUEST_TIME_TO_LIVE = SPCache.interval * 1000L;
+
     /**
      * Cache saves the authn request objects.
      * Key : request ID String
@@ -55,8 +63,8 @@ public class IDPCache {
      * TODO : handle the case when assertion effective time is different
      *        from cleanup interval
      */
-    public static PeriodicCleanUpMap authnRequestCache = new PeriodicCleanUpMap(
-        SPCache.interval * 1000, SPCache.interval * 1000); 
+    public static final SAML2Cache<String, Object> authnRequestCache =
+            SAML2CacheRegistry.newCache("IDPCache.authnRequestCache", DEFAULT_MAX_SIZE, REQUEST_TIME_TO_LIVE);
 
     /**
      * Cache saves the authn context objects before IDP redirects user to 
@@ -64,33 +72,32 @@ public class IDPCache {
      * Key : request ID String
      * Value : AuthnContext object
      */
-    public static PeriodicCleanUpMap idpAuthnContextCache = 
-        new PeriodicCleanUpMap(
-            SPCache.interval * 1000, SPCache.interval * 1000); 
+    public static final SAML2Cache<String, Object> idpAuthnContextCache =
+            SAML2CacheRegistry.newCache("IDPCache.idpAuthnContextCache", DEFAULT_MAX_SIZE, REQUEST_TIME_TO_LIVE);
 
     /**
      * Cache saves the assertion objects.
      * Key : user ID String
      * Value : list of assertion objects
      */
-    public static Hashtable assertionCache = new Hashtable();
+    public static final SAML2Cache<String, Object> assertionCache =
+            SAML2CacheRegistry.newCache("IDPCache.assertionCache", 0, 0);
 
     /**
      * Cache saves the assertion objects.
      * Key : assertion ID String
      * Value : assertion object
      */
-    public static PeriodicCleanUpMap assertionByIDCache =
-        new PeriodicCleanUpMap(SPCache.interval * 1000,
-        SPCache.interval * 1000); 
+    public static final SAML2Cache<String, Object> assertionByIDCache =
+            SAML2CacheRegistry.newCache("IDPCache.assertionByIDCache", DEFAULT_MAX_SIZE, REQUEST_TIME_TO_LIVE);
 
     /**
      * Cache saves the relay state strings.
      * Key : request ID String
      * Value : relay state string
      */
-    public static PeriodicCleanUpMap relayStateCache = new PeriodicCleanUpMap(
-        SPCache.interval * 1000, SPCache.interval * 1000); 
+    public static final SAML2Cache<String, Object> relayStateCache =
+            SAML2CacheRegistry.newCache("IDPCache.relayStateCache", DEFAULT_MAX_SIZE, REQUEST_TIME_TO_LIVE);
 
     /**
      * Cache saves the idp sessions.
@@ -99,7 +106,8 @@ public class IDPCache {
      * IDP: used in SingleSignOnService and SingleLogoutService
      *      to invalidate a specific session
      */
-    public static Hashtable<String, IDPSession> idpSessionsByIndices = new Hashtable<String, IDPSession>();
+    public static final SAML2Cache<String, IDPSession> idpSessionsByIndices = SAML2CacheRegistry.newCache(
+            "IDPCache.idpSessionsByIndices", 0, 0, new IDPSessionEvictionListener());
 
     /**
      * Cache saves Responses to be used by ArtifactResolutionService.
@@ -109,16 +117,16 @@ public class IDPCache {
      * TODO : handle the case when artifact expiration time is different
      *        from cleanup interval
      */
-    public static PeriodicCleanUpMap responsesByArtifacts = 
-       new PeriodicCleanUpMap(SPCache.interval * 1000, SPCache.interval * 1000);
+    public static final SAML2Cache<String, Object> responsesByArtifacts =
+            SAML2CacheRegistry.newCache("IDPCache.responsesByArtifacts", DEFAULT_MAX_SIZE, REQUEST_TIME_TO_LIVE);
 
     /**
      * Hashtable saves the MNI request info.
      * Key   :   requestID String
      * Value : ManageNameIDRequestInfo object
      */
-    public static PeriodicCleanUpMap mniRequestHash = new PeriodicCleanUpMap(
-        SPCache.interval * 1000, SPCache.interval * 1000);
+    public static final SAML2Cache<String, Object> mniRequestHash =
+            SAML2CacheRegistry.newCache("IDPCache.mniRequestHash", DEFAULT_MAX_SIZE, REQUEST_TIME_TO_LIVE);
 
     /**
      * Cache saves the idp attribute mapper.
@@ -168,8 +176,8 @@ public class IDPCache {
      * value --- Response Information List (ArrayList of size 9)
      * IDP: used in SingleSignOnService and ArtifactResolutionService
      */
-    public static PeriodicCleanUpMap responseCache = new PeriodicCleanUpMap(
-        SPCache.interval * 1000, SPCache.interval * 1000);
+    public static final SAML2Cache<String, Object> responseCache =
+            SAML2CacheRegistry.newCache("IDPCache.responseCache", DEFAULT_MAX_SIZE, REQUEST_TIME_TO_LIVE);
  
     /**
      * Cache saves informate needed to determine the Authentication
@@ -177,7 +185,8 @@ public class IDPCache {
      * key   : sessionIndex (String)
      * value : the AuthnContext object
      */
-    public static Hashtable authnContextCache = new Hashtable();
+    public static final SAML2Cache<String, Object> authnContextCache =
+            SAML2CacheRegistry.newCache("IDPCache.authnContextCache", 0, 0);
 
     /**
      * Cache saves information to determine if the request was
@@ -185,63 +194,65 @@ public class IDPCache {
      * key   : requestID (String)
      * value : session upgrade (Boolean)
      */
-    public static Set isSessionUpgradeCache =  
-        Collections.synchronizedSet(new HashSet());
+    static final SAML2Cache<String, Boolean> sessionUpgradeCache =
+            SAML2CacheRegistry.newCache("IDPCache.isSessionUpgradeCache", DEFAULT_MAX_SIZE, REQUEST_TIME_TO_LIVE);
+    public static final Set<String> isSessionUpgradeCache = Collections.newSetFromMap(sessionUpgradeCache);
 
     /**
      * Cache saves the IDP Session object before an session upgrade.
      * key    : requestID (String)
      * value  : IDPSession object.
      */
-    public static Hashtable oldIDPSessionCache = new Hashtable();
+    public static final SAML2Cache<String, Object> oldIDPSessionCache =
+            SAML2CacheRegistry.newCache("IDPCache.oldIDPSessionCache", DEFAULT_MAX_SIZE, REQUEST_TIME_TO_LIVE);
     
     /**
       * Cache saves the original AuthnRequest coming from SP to IDP proxy
       * key   : requestID (String) 
       * value : AuthnRequest 
       */ 
-    public static PeriodicCleanUpMap proxySPAuthnReqCache =
-         new PeriodicCleanUpMap(
-         SPCache.interval * 1000, SPCache.interval * 1000); 
+    public static final SAML2Cache<String, Object> proxySPAuthnReqCache =
+            SAML2CacheRegistry.newCache("IDPCache.proxySPAuthnReqCache", DEFAULT_MAX_SIZE, REQUEST_TIME_TO_LIVE);
 
     /** 
       * Cache saves the IDPSession per session ID.
       * key   : sessionId (String) 
       * value : IDPSession
       */
-    public static Hashtable<String, IDPSession> idpSessionsBySessionID = new Hashtable<>();
+    public static final SAML2Cache<String, IDPSession> idpSessionsBySessionID =
+            SAML2CacheRegistry.newCache("IDPCache.idpSessionsBySessionID", 0, 0);
     
     /** 
       * Cache saves user ID for transient NameID 
       * key   : NameID value (String) 
       * value : user ID 
       */
-    public static Hashtable userIDByTransientNameIDValue = new Hashtable(); 
+    public static final SAML2Cache<String, Object> userIDByTransientNameIDValue =
+            SAML2CacheRegistry.newCache("IDPCache.userIDByTransientNameIDValue", 0, 0);
 
     /** 
       * Cache saves the original LogoutRequest coming from SP to IDP proxy
       * key   : requestID (String) 
       * value : LogoutRequest
       */
-    public static PeriodicCleanUpMap proxySPLogoutReqCache =
-        new PeriodicCleanUpMap(
-        SPCache.interval * 1000, SPCache.interval * 1000); 
+    public static final SAML2Cache<String, Object> proxySPLogoutReqCache =
+            SAML2CacheRegistry.newCache("IDPCache.proxySPLogoutReqCache", DEFAULT_MAX_SIZE, REQUEST_TIME_TO_LIVE);
     
     /** 
       * Cache saves the SOAPMessage created by proxy IDP to the original SP
       * key   : requestID (String) 
       * value : SOAPMessage
       */
-    public static PeriodicCleanUpMap SOAPMessageByLogoutRequestID =
-         new PeriodicCleanUpMap(
-         SPCache.interval * 1000, SPCache.interval * 1000); 
+    public static final SAML2Cache<String, Object> SOAPMessageByLogoutRequestID = SAML2CacheRegistry.newCache(
+            "IDPCache.SOAPMessageByLogoutRequestID", DEFAULT_MAX_SIZE, REQUEST_TIME_TO_LIVE);
     
     /**
       * Cache saves the SAML2 Session Partner's providerID 
       * key   : sessionId (String)
       * value : SAML2 SessionPartner's provider id 
       */
-    public static Hashtable<String, String> spSessionPartnerBySessionID = new Hashtable<>();
+    public static final SAML2Cache<String, String> spSessionPartnerBySessionID =
+            SAML2CacheRegistry.newCache("IDPCache.spSessionPartnerBySessionID", 0, 0);
     
      /** 
       * Cache saves the original LogoutResponse generated by IDP proxy 
@@ -250,9 +261,8 @@ public class IDPCache {
       * value : Map keeping LogoutResponse, sending location, 
       *         spEntityID and idpEntityID. 
       */
-     public static PeriodicCleanUpMap logoutResponseCache =
-          new PeriodicCleanUpMap(
-          SPCache.interval * 1000, SPCache.interval * 1000); 
+    public static final SAML2Cache<String, Object> logoutResponseCache =
+            SAML2CacheRegistry.newCache("IDPCache.logoutResponseCache", DEFAULT_MAX_SIZE, REQUEST_TIME_TO_LIVE);
     /**
      * Hashtable saves AuthnContextClassRef to auth schems mapping
      * key  : hostEntityID + "|" + realmName
@@ -0,0 +1,63 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.saml2.profile;
+
+import org.forgerock.openam.federation.saml2.SAML2TokenRepositoryException;
+import org.forgerock.openam.saml2.cache.SAML2Cache;
+
+import com.sun.identity.plugin.session.SessionException;
+import com.sun.identity.plugin.session.SessionManager;
+import com.sun.identity.saml2.common.SAML2FailoverUtils;
+import com.sun.identity.saml2.common.SAML2Utils;
+
+/**
+ * Writes the IDP sessions that are evicted from {@link IDPCache#idpSessionsByIndices} to the SAML2 failover store,
+ * from where they are read back when they are next needed, so that the cache can be bounded without losing the
+ * sessions' single logout state.
+ *
+ * @since 14.0.0
+ */
+final class IDPSessionEvictionListener implements SAML2Cache.EvictionListener<String, IDPSession> {
+
+    @Override
+    public void evicted(String sessionIndex, IDPSession idpSession) {
+        String classMethod = "IDPSessionEvictionListener.evicted: ";
+        if (!SAML2FailoverUtils.isSAML2FailoverEnabled()) {
+            SAML2Utils.debug.warning(classMethod + "Evicted the IDPSession with sessionIndex " + sessionIndex
+                    + " while SAML2 failover is disabled, it can no longer be logged out of with single logout.");
+            return;
+        }
+        if (idpSession.getSession() == null) {
+            // Read from the SAML2 Token Repository, so already saved there
+            return;
+        }
+        try {
+            long sessionExpireTime = System.currentTimeMillis() / 1000
+                    + SessionManager.getProvider().getTimeLeft(idpSession.getSession());
+            SAML2FailoverUtils.saveSAML2TokenWithoutSecondaryKey(sessionIndex, new IDPSessionCopy(idpSession),
+                    sessionExpireTime);
+            if (SAML2Utils.debug.messageEnabled()) {
+                SAML2Utils.debug.message(classMethod + "Saved the evicted IDPSession with sessionIndex "
+                        + sessionIndex);
+            }
+        } catch (SessionException se) {
+            SAML2Utils.debug.error(classMethod + "Unable to get left-time from the session.", se);
+        } catch (SAML2TokenRepositoryException se) {
+            SAML2Utils.debug.error(classMethod + "Unable to save IDPSession to the SAML2 Token Repository", se);
+        }
+    }
+}
@@ -24,15 +24,19 @@
  *
  * $Id: SPCache.java,v 1.17 2009/06/09 20:28:32 exu Exp $
  *
- * Portions Copyrighted 2015 ForgeRock AS.
+ * Portions Copyrighted 2015-2016 ForgeRock AS.
  */
 
 
 package com.sun.identity.saml2.profile;
 
+import static org.forgerock.openam.saml2.cache.SAML2CacheRegistry.DEFAULT_MAX_SIZE;
+
 import java.util.Hashtable;
 
-import com.sun.identity.common.PeriodicCleanUpMap;
+import org.forgerock.openam.saml2.cache.SAML2Cache;
+import org.forgerock.openam.saml2.cache.SAML2CacheRegistry;
+
 import com.sun.identity.saml2.common.SAML2Constants;
 import com.sun.identity.saml2.common.SAML2Utils;
 import com.sun.identity.shared.configuration.SystemPropertiesManager;
@@ -40,6 +44,8 @@ import com.sun.identity.shared.configuration.SystemPropertiesManager;
 
 /**
  * This class provides the memory store for SAML request and response information on Service Provider side.
+ * <p>
+ * The caches are {@link SAML2Cache}s, configured as described for {@link IDPCache}.
  */
 
 public class SPCache {
@@ -79,45 +85,47 @@ public class SPCache {
     private SPCache() {
     }
 
+    private static final long REQUEST_TIME_TO_LIVE = interval * 1000L;
+
     /**
      * Map saves the authentication request.
      * Key   :   A unique key String value
      * Value : AuthnRequest object
      */
-    final public static PeriodicCleanUpMap authnRequestHash = new PeriodicCleanUpMap(
-            interval * 1000, interval * 1000);
+    final public static SAML2Cache<String, Object> authnRequestHash =
+            SAML2CacheRegistry.newCache("SPCache.authnRequestHash", DEFAULT_MAX_SIZE, REQUEST_TIME_TO_LIVE);
 
     /**
      * Map saves data on whether the account was federated.
      * Key   :   A unique key String value
      * Value : String representing boolean val
      */
-    final public static PeriodicCleanUpMap fedAccountHash = new PeriodicCleanUpMap(
-            interval * 1000, interval * 1000);
+    final public static SAML2Cache<String, Object> fedAccountHash =
+            SAML2CacheRegistry.newCache("SPCache.fedAccountHash", DEFAULT_MAX_SIZE, REQUEST_TIME_TO_LIVE);
 
     /**
      * Map saves the request info.
      * Key   :   requestID String
      * Value : AuthnRequestInfo object
      */
-    final public static PeriodicCleanUpMap requestHash = new PeriodicCleanUpMap(
-        interval * 1000, interval * 1000); 
+    final public static SAML2Cache<String, Object> requestHash =
+            SAML2CacheRegistry.newCache("SPCache.requestHash", DEFAULT_MAX_SIZE, REQUEST_TIME_TO_LIVE);
 
     /**
      * Map saves the MNI request info.
      * Key   :   requestID String
      * Value : ManageNameIDRequestInfo object
      */
-    final protected static PeriodicCleanUpMap mniRequestHash = new PeriodicCleanUpMap(
-        interval * 1000, interval * 1000);
+    final protected static SAML2Cache<String, Object> mniRequestHash =
+            SAML2CacheRegistry.newCache("SPCache.mniRequestHash", DEFAULT_MAX_SIZE, REQUEST_TIME_TO_LIVE);
 
     /**
      * Map to save the relayState URL.
      * Key  : a String the relayStateID 
      * Value: a String the RelayState Value 
      */
-    final public static PeriodicCleanUpMap relayStateHash= new PeriodicCleanUpMap(
-        interval * 1000, interval * 1000);
+    final public static SAML2Cache<String, Object> relayStateHash =
+            SAML2CacheRegistry.newCache("SPCache.relayStateHash", DEFAULT_MAX_SIZE, REQUEST_TIME_TO_LIVE);
 
     /**
      * Hashtable stores information required for LogoutRequest consumption.
@@ -127,7 +135,8 @@ public class SPCache {
      *                     - sp token id (String)                     
      * one key --- multiple SPFedSession's
      */
-    final public static Hashtable fedSessionListsByNameIDInfoKey = new Hashtable();
+    final public static SAML2Cache<String, Object> fedSessionListsByNameIDInfoKey =
+            SAML2CacheRegistry.newCache("SPCache.fedSessionListsByNameIDInfoKey", 0, 0);
 
     /**
      * SP: used to map LogoutRequest ID and inResponseTo in LogoutResponse
@@ -135,16 +144,16 @@ public class SPCache {
      * key : request ID (String)
      * value : original logout request object  (LogotRequest)
      */
-    final public static PeriodicCleanUpMap logoutRequestIDHash =
-        new PeriodicCleanUpMap(interval * 1000, interval * 1000);
+    final public static SAML2Cache<String, Object> logoutRequestIDHash =
+            SAML2CacheRegistry.newCache("SPCache.logoutRequestIDHash", DEFAULT_MAX_SIZE, REQUEST_TIME_TO_LIVE);
 
     /**
      * Map saves response info for local auth.
      * Key: requestID String
      * Value: ResponseInfo object
      */
-    final protected static PeriodicCleanUpMap responseHash = new PeriodicCleanUpMap(
-        interval * 1000, interval * 1000);
+    final protected static SAML2Cache<String, Object> responseHash =
+            SAML2CacheRegistry.newCache("SPCache.responseHash", DEFAULT_MAX_SIZE, REQUEST_TIME_TO_LIVE);
 
     /**
      * Hashtable saves AuthnContext Mapper object.
@@ -167,8 +176,8 @@ public class SPCache {
      * Key: requestID a String
      * Value : Request Parameters Map , a Map
      */
-    final public static PeriodicCleanUpMap reqParamHash = new PeriodicCleanUpMap(
-        SPCache.interval * 1000, SPCache.interval * 1000);
+    final public static SAML2Cache<String, Object> reqParamHash =
+            SAML2CacheRegistry.newCache("SPCache.reqParamHash", DEFAULT_MAX_SIZE, REQUEST_TIME_TO_LIVE);
 
 
     /**
@@ -206,9 +215,8 @@ public class SPCache {
      * Key : assertion ID String
      * Value : Constant  
      */
-    final public static PeriodicCleanUpMap assertionByIDCache =
-        new PeriodicCleanUpMap(interval * 1000,
-        interval * 1000);
+    final public static SAML2Cache<String, Object> assertionByIDCache =
+            SAML2CacheRegistry.newCache("SPCache.assertionByIDCache", DEFAULT_MAX_SIZE, REQUEST_TIME_TO_LIVE);
     
     /**
      * Clears the auth context object hash table.
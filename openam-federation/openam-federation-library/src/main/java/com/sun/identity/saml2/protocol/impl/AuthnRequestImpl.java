@@ -24,6 +24,8 @@
  *
  * $Id: AuthnRequestImpl.java,v 1.8 2009/06/09 20:28:32 exu Exp $
  *
+ * Portions Copyrighted 2016 ForgeRock AS.
+ *
  */
 
 
@@ -90,7 +92,8 @@ public class AuthnRequestImpl extends RequestAbstractImpl
     public AuthnRequestImpl(Element element) throws SAML2Exception {
 	parseDOMElement(element);
 	if (isSigned) {
-            signedXMLString = XMLUtils.print(element);
+            // Only serialized when asked for, the signature is verified against the element itself
+            signedElement = element;
         }
     }
 
@@ -111,6 +114,7 @@ public class AuthnRequestImpl extends RequestAbstractImpl
         parseDOMElement(xmlDocument.getDocumentElement());
         if (isSigned) {
             signedXMLString = xmlString;
+            signedElement = xmlDocument.getDocumentElement();
         }
     }
 
@@ -455,6 +459,9 @@ public class AuthnRequestImpl extends RequestAbstractImpl
     
     public String toXMLString(boolean includeNSPrefix,boolean declareNS)
     throws SAML2Exception {
+	if (isSigned && signedXMLString == null && signedElement != null) {
+            signedXMLString = XMLUtils.print(signedElement);
+        }
 	if (isSigned && signedXMLString != null) {
             return signedXMLString;
         }
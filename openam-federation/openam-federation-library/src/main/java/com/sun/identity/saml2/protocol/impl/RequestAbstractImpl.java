@@ -24,7 +24,7 @@
  *
  * $Id: RequestAbstractImpl.java,v 1.5 2008/06/25 05:48:00 qcheng Exp $
  *
- * Portions Copyrighted 2015 ForgeRock AS.
+ * Portions Copyrighted 2015-2016 ForgeRock AS.
  */
 package com.sun.identity.saml2.protocol.impl;
 
@@ -54,6 +54,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Set;
+import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
@@ -80,6 +81,7 @@ public abstract class RequestAbstractImpl implements RequestAbstract {
     protected boolean isMutable = false;
     protected String  signatureString = null;
     protected String  signedXMLString = null; 
+    protected Element signedElement = null;
     protected String elementName = "";
  
     /**
@@ -129,15 +131,21 @@ public abstract class RequestAbstractImpl implements RequestAbstract {
      public void sign(PrivateKey privateKey, X509Certificate cert)
         throws SAML2Exception  {
 
+        Document document = XMLUtils.toDOMDocument(toXMLString(true, true), SAML2SDKUtils.debug);
+        if (document == null) {
+            throw new SAML2Exception(SAML2SDKUtils.bundle.getString("errorObtainingElement"));
+        }
+        // Keep the signed element, so that its signature is verified without parsing the XML again
         Element signatureEle = SigManager.getSigInstance().sign(
-            toXMLString(true, true),
+            document.getDocumentElement(),
             getID(),
             privateKey,
             cert
         );
-        signatureString = XMLUtils.print(signatureEle); 
-        signedXMLString = XMLUtils.print(signatureEle.getOwnerDocument().
-                                         getDocumentElement());
+        signatureString = XMLUtils.print(signatureEle);
+        signedElement = document.getDocumentElement();
+        signedXMLString = XMLUtils.print(signedElement);
+        isSignatureValid = null;
         isSigned =true;
         makeImmutable();
     }   
@@ -310,7 +318,11 @@ public abstract class RequestAbstractImpl implements RequestAbstract {
     public boolean isSignatureValid(Set<X509Certificate> verificationCerts)
         throws SAML2Exception {
         if (isSignatureValid == null) {
-            isSignatureValid = SigManager.getSigInstance().verify(signedXMLString, getID(), verificationCerts);
+            if (signedElement != null) {
+                isSignatureValid = SigManager.getSigInstance().verify(signedElement, getID(), verificationCerts);
+            } else {
+                isSignatureValid = SigManager.getSigInstance().verify(signedXMLString, getID(), verificationCerts);
+            }
         }
         return isSignatureValid.booleanValue();
     }
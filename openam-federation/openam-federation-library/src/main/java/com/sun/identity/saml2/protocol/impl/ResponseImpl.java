@@ -24,6 +24,7 @@
  *
  * $Id: ResponseImpl.java,v 1.4 2009/12/16 05:26:39 ericow Exp $
  *
+ * Portions Copyrighted 2016 ForgeRock AS.
  */
 
 
@@ -293,9 +294,8 @@ public class ResponseImpl extends StatusResponseImpl implements Response {
         throws SAML2Exception {
         parseElement(element);
         if (isSigned) {
-            signedXMLString = XMLUtils.print(element,
-                "UTF-8");
-
+            // Only serialized when asked for, the signature is verified against the element itself
+            signedElement = element;
         }
     }
 
@@ -315,6 +315,7 @@ public class ResponseImpl extends StatusResponseImpl implements Response {
         parseElement(doc.getDocumentElement());
         if (isSigned) {
             signedXMLString = xmlString;
+            signedElement = doc.getDocumentElement();
         }
     }
 
@@ -415,6 +416,9 @@ public class ResponseImpl extends StatusResponseImpl implements Response {
      **/
     public String toXMLString(boolean includeNSPrefix, boolean declareNS)
 	throws SAML2Exception {
+	if (isSigned && signedXMLString == null && signedElement != null) {
+	    signedXMLString = XMLUtils.print(signedElement, "UTF-8");
+	}
 	if (isSigned && signedXMLString != null) {
 	    return signedXMLString;
 	}
@@ -24,7 +24,7 @@
  *
  * $Id: StatusResponseImpl.java,v 1.4 2008/06/25 05:48:01 qcheng Exp $
  *
- * Portions Copyrighted 2015 ForgeRock AS.
+ * Portions Copyrighted 2015-2016 ForgeRock AS.
  */
 package com.sun.identity.saml2.protocol.impl;
 
@@ -47,6 +47,7 @@ import java.security.cert.X509Certificate;
 import java.util.Set;
 
 import com.sun.identity.saml2.xmlsig.SigManager;
+import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import com.sun.identity.shared.xml.XMLUtils;
 
@@ -74,6 +75,7 @@ public abstract class StatusResponseImpl implements StatusResponse {
     protected boolean isMutable = false;
     protected PublicKey publicKey = null;
     protected String  signedXMLString = null;
+    protected Element signedElement = null;
 
     /**
      * Returns the value of the version property.
@@ -176,15 +178,21 @@ public abstract class StatusResponseImpl implements StatusResponse {
      */
      public void sign(PrivateKey privateKey, X509Certificate cert)
         throws SAML2Exception  {
+        Document document = XMLUtils.toDOMDocument(toXMLString(true, true), SAML2SDKUtils.debug);
+        if (document == null) {
+            throw new SAML2Exception(SAML2SDKUtils.bundle.getString("errorObtainingElement"));
+        }
+        // Keep the signed element, so that its signature is verified without parsing the XML again
         Element signatureEle = SigManager.getSigInstance().sign(
-            toXMLString(true, true),
+            document.getDocumentElement(),
             getID(),
             privateKey,
             cert
         );
         signatureString = XMLUtils.print(signatureEle);
-        signedXMLString = XMLUtils.print(signatureEle.getOwnerDocument().
-           getDocumentElement(), "UTF-8");
+        signedElement = document.getDocumentElement();
+        signedXMLString = XMLUtils.print(signedElement, "UTF-8");
+        isSignatureValid = null;
         isSigned =true;
         makeImmutable();
     }
@@ -360,7 +368,11 @@ public abstract class StatusResponseImpl implements StatusResponse {
     public boolean isSignatureValid(Set<X509Certificate> verificationCerts)
         throws SAML2Exception { 	
         if (isSignatureValid == null) {
-             isSignatureValid = SigManager.getSigInstance().verify(signedXMLString, getID(), verificationCerts);
+            if (signedElement != null) {
+                isSignatureValid = SigManager.getSigInstance().verify(signedElement, getID(), verificationCerts);
+            } else {
+                isSignatureValid = SigManager.getSigInstance().verify(signedXMLString, getID(), verificationCerts);
+            }
          }
          return isSignatureValid.booleanValue();
     }   
@@ -24,7 +24,7 @@
  *
  * $Id: FMSigProvider.java,v 1.5 2009/05/09 15:43:59 mallas Exp $
  *
- *  Portions Copyrighted 2011-2015 ForgeRock AS.
+ *  Portions Copyrighted 2011-2016 ForgeRock AS.
  */
 
 package com.sun.identity.saml2.xmlsig;
@@ -147,89 +147,107 @@ public final class FMSigProvider implements SigProvider {
 		    "errorObtainingElement")
 	    );
         }
-	Element root = doc.getDocumentElement();
-	XMLSignature sig = null;
-	try {
-        ElementProxy.setDefaultPrefix(Constants.SignatureSpecNS, SAMLConstants.PREFIX_DS);
-	} catch (XMLSecurityException xse1) {
-	    throw new SAML2Exception(xse1);
-	}
-    root.setIdAttribute(SAML2Constants.ID, true);
-	try {
-	    if ((sigAlg == null) || (sigAlg.trim().length() == 0)) {
-	       if (privateKey.getAlgorithm().equalsIgnoreCase(
-			SAML2Constants.DSA)) {
-	           sigAlg = 
-	               XMLSignature.ALGO_ID_SIGNATURE_DSA;
-	       } else { 
-	           if (privateKey.getAlgorithm().equalsIgnoreCase(
-			SAML2Constants.RSA)) {
-	               sigAlg = 
-	                   XMLSignature.ALGO_ID_SIGNATURE_RSA_SHA1;
-                   }
-	       }  
-	    }        
-	    sig = new XMLSignature(
-		doc, "", sigAlg, c14nMethod);
-	} catch (XMLSecurityException xse2) {
-	    throw new SAML2Exception(xse2);
-	}	    
-	Node firstChild = root.getFirstChild();
-	while (firstChild != null &&
-	       (firstChild.getLocalName() == null ||
-		!firstChild.getLocalName().equals("Issuer"))) {
-	    firstChild = firstChild.getNextSibling();
-	}
-	Node nextSibling = null;
-	if (firstChild != null) {
-	    nextSibling = firstChild.getNextSibling();
-	}
-	if (nextSibling == null) {
-	    root.appendChild(sig.getElement());  
-	} else {
-	    root.insertBefore(sig.getElement(), nextSibling);
-	}
-	sig.getSignedInfo().addResourceResolver(   
-	    new com.sun.identity.saml.xmlsig.OfflineResolver()); 
-	Transforms transforms = new Transforms(doc);
-	try {
-	    transforms.addTransform(
-		Transforms.TRANSFORM_ENVELOPED_SIGNATURE);
-	} catch (TransformationException te1) {
-	    throw new SAML2Exception(te1);
-	}	    
-	try {
-	    transforms.addTransform(transformAlg);
-	} catch (TransformationException te2) {
-	    throw new SAML2Exception(te2);
-	}	    
-	String ref = "#" + idValue;
-	try {
-	    sig.addDocument(
-		ref,
-		transforms,
-		Constants.ALGO_ID_DIGEST_SHA1);
-	} catch (XMLSignatureException sige1) {
-	    throw new SAML2Exception(sige1);
-	}	    
-	if (cert != null) {
-	    try {
-		sig.addKeyInfo(cert);
-	    } catch (XMLSecurityException xse3) {
-		throw new SAML2Exception(xse3);
-	    }		
-	}
-	try {
-	    sig.sign(privateKey);
-	} catch (XMLSignatureException sige2) {
-	    throw new SAML2Exception(sige2);
-	}	    
-	if (SAML2SDKUtils.debug.messageEnabled()) {
-	    SAML2SDKUtils.debug.message(
-		classMethod +
-		"Signing is successful.");
-	}
-        return sig.getElement();   
+        return sign(doc.getDocumentElement(), idValue, privateKey, cert);
+    }
+
+    /**
+     * Sign the given element in place, using enveloped signatures and use
+     * exclusive xml canonicalization. The resulting signature is inserted
+     * after the Issuer child of the element, or appended to it when it has
+     * no Issuer. The element does not have to be the root of its document.
+     * @param element Element to be signed
+     * @param idValue id attribute value of the element to be signed
+     * @param privateKey Signing key
+     * @param cert Certificate which contain the public key correlated to
+     *             the signing key; It if is not null, then the signature
+     *             will include the certificate; Otherwise, the signature
+     *             will not include any certificate
+     * @return Element representing the signature element
+     * @throws SAML2Exception if the element could not be signed
+     */
+    public Element sign(
+        Element element,
+        String idValue,
+        PrivateKey privateKey,
+        X509Certificate cert
+    ) throws SAML2Exception {
+
+        String classMethod = "FMSigProvider.sign: ";
+        if (element == null || idValue == null || idValue.length() == 0 || privateKey == null) {
+            SAML2SDKUtils.debug.error(classMethod + "Either input element or id value or private key is null.");
+            throw new SAML2Exception(SAML2SDKUtils.bundle.getString("nullInput"));
+        }
+        Document doc = element.getOwnerDocument();
+        XMLSignature sig = null;
+        try {
+            ElementProxy.setDefaultPrefix(Constants.SignatureSpecNS, SAMLConstants.PREFIX_DS);
+        } catch (XMLSecurityException xse1) {
+            throw new SAML2Exception(xse1);
+        }
+        element.setIdAttribute(SAML2Constants.ID, true);
+        try {
+            sig = new XMLSignature(doc, "", getSignatureAlgorithm(privateKey), c14nMethod);
+        } catch (XMLSecurityException xse2) {
+            throw new SAML2Exception(xse2);
+        }
+        Node issuer = element.getFirstChild();
+        while (issuer != null && (issuer.getLocalName() == null || !issuer.getLocalName().equals("Issuer"))) {
+            issuer = issuer.getNextSibling();
+        }
+        Node nextSibling = null;
+        if (issuer != null) {
+            nextSibling = issuer.getNextSibling();
+        }
+        if (nextSibling == null) {
+            element.appendChild(sig.getElement());
+        } else {
+            element.insertBefore(sig.getElement(), nextSibling);
+        }
+        sig.getSignedInfo().addResourceResolver(new com.sun.identity.saml.xmlsig.OfflineResolver());
+        Transforms transforms = new Transforms(doc);
+        try {
+            transforms.addTransform(Transforms.TRANSFORM_ENVELOPED_SIGNATURE);
+            transforms.addTransform(transformAlg);
+        } catch (TransformationException te) {
+            throw new SAML2Exception(te);
+        }
+        try {
+            sig.addDocument("#" + idValue, transforms, Constants.ALGO_ID_DIGEST_SHA1);
+        } catch (XMLSignatureException sige1) {
+            throw new SAML2Exception(sige1);
+        }
+        if (cert != null) {
+            try {
+                sig.addKeyInfo(cert);
+            } catch (XMLSecurityException xse3) {
+                throw new SAML2Exception(xse3);
+            }
+        }
+        try {
+            sig.sign(privateKey);
+        } catch (XMLSignatureException sige2) {
+            throw new SAML2Exception(sige2);
+        }
+        if (SAML2SDKUtils.debug.messageEnabled()) {
+            SAML2SDKUtils.debug.message(classMethod + "Signing is successful.");
+        }
+        return sig.getElement();
+    }
+
+    /**
+     * Returns the configured signature algorithm, or the default one for the type of the given key when none is
+     * configured.
+     */
+    private static String getSignatureAlgorithm(PrivateKey privateKey) {
+        if (sigAlg != null && sigAlg.trim().length() != 0) {
+            return sigAlg;
+        }
+        if (privateKey.getAlgorithm().equalsIgnoreCase(SAML2Constants.DSA)) {
+            return XMLSignature.ALGO_ID_SIGNATURE_DSA;
+        } else if (privateKey.getAlgorithm().equalsIgnoreCase(SAML2Constants.RSA)) {
+            return XMLSignature.ALGO_ID_SIGNATURE_RSA_SHA1;
+        }
+        return null;
     }
 
     public boolean verify(
@@ -263,29 +281,74 @@ public final class FMSigProvider implements SigProvider {
                         createDSctx(doc, "ds", Constants.SignatureSpecNS);
         Element sigElement = null;
         try {
-            sigElement = (Element) org.apache.xpath.XPathAPI.selectSingleNode(
+            sigElement = (Element) XPathAPI.selectSingleNode(
                     doc,
                     "//ds:Signature[1]", nscontext);
         } catch (TransformerException te) {
             throw new SAML2Exception(te);
         }
-        Element refElement;
-        try {
-            refElement = (Element) XPathAPI.selectSingleNode(
-                    doc,
-                    "//ds:Reference[1]", nscontext);
-        } catch (TransformerException te) {
-            throw new SAML2Exception(te);
+        return verifySignature(sigElement, verificationCerts);
+    }
+
+    /**
+     * Verify the signature of the given element in place, without serializing or re-parsing it. Only a signature
+     * that is a direct child of the element is considered, so that signatures on elements nested in it, such as
+     * Assertions in a Response, are never mistaken for the signature of the element itself.
+     *
+     * @param element The signed element, which does not have to be the root of its document.
+     * @param idValue id attribute value of the element.
+     * @param verificationCerts Certificates containing the public keys which may be used for signature
+     *                          verification.
+     * @return true if the xml signature is verified, false otherwise.
+     * @throws SAML2Exception if problem occurs during verification.
+     */
+    public boolean verify(Element element, String idValue, Set<X509Certificate> verificationCerts)
+            throws SAML2Exception {
+
+        String classMethod = "FMSigProvider.verify: ";
+        if (element == null || idValue == null || idValue.length() == 0) {
+            SAML2SDKUtils.debug.error(classMethod + "Either input element or idValue is null.");
+            throw new SAML2Exception(SAML2SDKUtils.bundle.getString("nullInput"));
+        }
+        if (!idValue.equals(element.getAttribute(SAML2Constants.ID))) {
+            SAML2SDKUtils.debug.error(classMethod + "The ID of the element does not match " + idValue);
+            throw new SAML2Exception(SAML2SDKUtils.bundle.getString("uriNoMatchWithId"));
+        }
+        Element sigElement = null;
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE && "Signature".equals(child.getLocalName())
+                    && Constants.SignatureSpecNS.equals(child.getNamespaceURI())) {
+                sigElement = (Element) child;
+                break;
+            }
+        }
+        return verifySignature(sigElement, verificationCerts);
+    }
+
+    private boolean verifySignature(Element sigElement, Set<X509Certificate> verificationCerts)
+            throws SAML2Exception {
+
+        String classMethod = "FMSigProvider.verify: ";
+        if (sigElement == null) {
+            SAML2SDKUtils.debug.error(classMethod + "The document is not signed.");
+            throw new SAML2Exception(SAML2SDKUtils.bundle.getString("nullSig"));
+        }
+        Element refElement = (Element) sigElement.getElementsByTagNameNS(Constants.SignatureSpecNS, "Reference")
+                .item(0);
+        if (refElement == null) {
+            SAML2SDKUtils.debug.error(classMethod + "The signature does not have a reference.");
+            throw new SAML2Exception(SAML2SDKUtils.bundle.getString("uriNoMatchWithId"));
         }
         String refUri = refElement.getAttribute("URI");
-        String signedId = ((Element) sigElement.getParentNode()).getAttribute(SAML2Constants.ID);
+        Element signedElement = (Element) sigElement.getParentNode();
+        String signedId = signedElement.getAttribute(SAML2Constants.ID);
         if (refUri == null || signedId == null || !refUri.substring(1).equals(signedId)) {
             SAML2SDKUtils.debug.error(classMethod + "Signature reference ID does "
                     + "not match with element ID");
             throw new SAML2Exception(SAML2SDKUtils.bundle.getString("uriNoMatchWithId"));
         }
 
-        doc.getDocumentElement().setIdAttribute(SAML2Constants.ID, true);
+        signedElement.setIdAttribute(SAML2Constants.ID, true);
         XMLSignature signature = null;
         try {
             signature = new
@@ -24,7 +24,7 @@
  *
  * $Id: SigProvider.java,v 1.2 2008/06/25 05:48:04 qcheng Exp $
  *
- * Portions Copyrighted 2015 ForgeRock AS.
+ * Portions Copyrighted 2015-2016 ForgeRock AS.
  */
 package com.sun.identity.saml2.xmlsig;
 
@@ -64,6 +64,28 @@ public interface SigProvider {
 	X509Certificate cert
     ) throws SAML2Exception;
 
+    /**
+     * Sign the given element in place, using enveloped signatures and use exclusive xml canonicalization. The
+     * resulting signature is inserted after the first child node (normally Issuer element for SAML2) of the element.
+     * Unlike {@link #sign(String, String, PrivateKey, X509Certificate)} the element is neither serialized nor
+     * re-parsed, so it may be part of a larger document that is signed or encrypted afterwards.
+     * @param element Element to be signed
+     * @param idValue id attribute value of the element to be signed
+     * @param privateKey Signing key
+     * @param cert Certificate which contain the public key correlated to
+     *             the signing key; It if is not null, then the signature
+     *             will include the certificate; Otherwise, the signature
+     *             will not include any certificate
+     * @return Element representing the signature element
+     * @throws SAML2Exception if the element could not be signed
+     */
+    public Element sign(
+        Element element,
+        String idValue,
+        PrivateKey privateKey,
+        X509Certificate cert
+    ) throws SAML2Exception;
+
 	/**
 	 * Verify the signature of the xml document.
 	 *
@@ -80,4 +102,21 @@ public interface SigProvider {
 	String idValue,
 	Set<X509Certificate> verificationCerts
     ) throws SAML2Exception;
+
+    /**
+     * Verify the signature of the given element in place, without serializing or re-parsing it.
+     *
+     * @param element The signed element, which does not have to be the root of its document.
+     * @param idValue id attribute value of the element whose signature is to be verified.
+     * @param verificationCerts Certificates containing the public keys which may be used for signature verification;
+     *                          This certificate may also may be used to check against the certificate included in the
+     *                          signature.
+     * @return true if the xml signature is verified, false otherwise.
+     * @throws SAML2Exception if problem occurs during verification.
+     */
+    public boolean verify(
+        Element element,
+        String idValue,
+        Set<X509Certificate> verificationCerts
+    ) throws SAML2Exception;
 }
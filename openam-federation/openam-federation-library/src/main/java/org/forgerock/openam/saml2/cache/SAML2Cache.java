@@ -0,0 +1,564 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.saml2.cache;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.forgerock.util.Reject;
+import org.forgerock.util.annotations.VisibleForTesting;
+import org.forgerock.util.time.TimeService;
+
+import com.sun.identity.common.GeneralTaskRunnable;
+
+/**
+ * A concurrent map for the SAML2 profile caches, bounded in size and optionally in the time its entries live.
+ * <p>
+ * Once the cache holds more than its maximum number of entries, the entries that were written longest ago are
+ * evicted and handed to the {@link EvictionListener}, if there is one, so that they can be written to the SAML2
+ * failover store and read back from there by any server. Entries that have outlived their time to live are no
+ * longer returned by {@link #get(Object)}, and are removed when the cache is run by a
+ * {@link com.sun.identity.common.TimerPool}, just as the {@link com.sun.identity.common.PeriodicCleanUpMap}s that
+ * used to hold them were. Expired entries are not handed to the listener.
+ * <p>
+ * The collection views are weakly consistent, like those of {@link ConcurrentHashMap}, and may include expired
+ * entries until they are removed.
+ *
+ * @param <K> The type of the keys.
+ * @param <V> The type of the values.
+ * @since 14.0.0
+ */
+public class SAML2Cache<K, V> extends GeneralTaskRunnable implements ConcurrentMap<K, V> {
+
+    private final String name;
+    private final int maxSize;
+    private final long timeToLive;
+    private final long runPeriod;
+    private final EvictionListener<K, V> evictionListener;
+    private final TimeService clock;
+
+    private final ConcurrentMap<K, CacheEntry<K, V>> entries = new ConcurrentHashMap<>();
+    /** Every entry in the cache, oldest write first, along with entries that have since been replaced or removed. */
+    private final Queue<CacheEntry<K, V>> writeOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+
+    /**
+     * Constructs a new cache.
+     *
+     * @param name The name of the cache, used in its statistics.
+     * @param maxSize The maximum number of entries, or 0 for no maximum.
+     * @param timeToLive The time in milliseconds that an entry lives after it is written, or 0 for no limit.
+     * @param runPeriod The time in milliseconds between removals of expired entries.
+     * @param evictionListener The listener to hand evicted entries to, or {@code null}.
+     */
+    public SAML2Cache(String name, int maxSize, long timeToLive, long runPeriod,
+            EvictionListener<K, V> evictionListener) {
+        this(name, maxSize, timeToLive, runPeriod, evictionListener, TimeService.SYSTEM);
+    }
+
+    @VisibleForTesting
+    SAML2Cache(String name, int maxSize, long timeToLive, long runPeriod, EvictionListener<K, V> evictionListener,
+            TimeService clock) {
+        Reject.ifNull(name, clock);
+        Reject.ifFalse(maxSize >= 0, "maxSize must be >= 0");
+        Reject.ifFalse(timeToLive >= 0, "timeToLive must be >= 0");
+        Reject.ifFalse(runPeriod > 0, "runPeriod must be > 0");
+        this.name = name;
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive;
+        this.runPeriod = runPeriod;
+        this.evictionListener = evictionListener;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the name of this cache.
+     *
+     * @return The name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the maximum number of entries in this cache.
+     *
+     * @return The maximum number of entries, or 0 if there is no maximum.
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the time that entries live in this cache after they are written.
+     *
+     * @return The time to live in milliseconds, or 0 if there is no limit.
+     */
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    /**
+     * Returns the number of reads that found a live entry.
+     *
+     * @return The number of hits.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of reads that found no entry, or an expired one.
+     *
+     * @return The number of misses.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of entries removed to keep the cache within its maximum size.
+     *
+     * @return The number of evictions.
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Returns the number of entries removed because they outlived their time to live.
+     *
+     * @return The number of expirations.
+     */
+    public long getExpirations() {
+        return expirations.get();
+    }
+
+    @Override
+    public V get(Object key) {
+        CacheEntry<K, V> entry = getLiveEntry(key);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return getLiveEntry(key) != null;
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        long now = clock.now();
+        for (CacheEntry<K, V> entry : entries.values()) {
+            if (!entry.isExpired(now) && entry.value.equals(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Maps the key to the value. A {@code null} value removes the key, as the PeriodicCleanUpMaps that these caches
+     * replace accepted {@code null} values, and a {@code null} value reads the same as no value.
+     *
+     * @param key The key.
+     * @param value The value, or {@code null} to remove the key.
+     * @return The previous live value of the key, or {@code null} if there was none.
+     */
+    @Override
+    public V put(K key, V value) {
+        Reject.ifNull(key);
+        if (value == null) {
+            return remove(key);
+        }
+        CacheEntry<K, V> entry = newEntry(key, value);
+        CacheEntry<K, V> previous = entries.put(key, entry);
+        if (previous == null) {
+            size.incrementAndGet();
+        }
+        written(entry);
+        return valueOf(previous);
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        Reject.ifNull(key, value);
+        CacheEntry<K, V> entry = newEntry(key, value);
+        while (true) {
+            CacheEntry<K, V> previous = entries.putIfAbsent(key, entry);
+            if (previous == null) {
+                size.incrementAndGet();
+                written(entry);
+                return null;
+            } else if (!previous.isExpired(clock.now())) {
+                return previous.value;
+            } else if (entries.replace(key, previous, entry)) {
+                expirations.incrementAndGet();
+                written(entry);
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> map) {
+        for (Map.Entry<? extends K, ? extends V> entry : map.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public V remove(Object key) {
+        CacheEntry<K, V> previous = entries.remove(key);
+        if (previous == null) {
+            return null;
+        }
+        size.decrementAndGet();
+        return valueOf(previous);
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        CacheEntry<K, V> entry = getLiveEntry(key);
+        return entry != null && entry.value.equals(value) && removeEntry(entry);
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        Reject.ifNull(newValue);
+        CacheEntry<K, V> entry = getLiveEntry(key);
+        if (entry == null || !entry.value.equals(oldValue)) {
+            return false;
+        }
+        CacheEntry<K, V> replacement = newEntry(key, newValue);
+        if (!entries.replace(key, entry, replacement)) {
+            return false;
+        }
+        written(replacement);
+        return true;
+    }
+
+    @Override
+    public V replace(K key, V value) {
+        Reject.ifNull(value);
+        CacheEntry<K, V> replacement = newEntry(key, value);
+        while (true) {
+            CacheEntry<K, V> entry = getLiveEntry(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entries.replace(key, entry, replacement)) {
+                written(replacement);
+                return entry.value;
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (K key : entries.keySet()) {
+            remove(key);
+        }
+    }
+
+    @Override
+    public int size() {
+        return Math.max(size.get(), 0);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public Set<K> keySet() {
+        return new AbstractSet<K>() {
+            @Override
+            public Iterator<K> iterator() {
+                final Iterator<CacheEntry<K, V>> iterator = new EntryIterator();
+                return new Iterator<K>() {
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public K next() {
+                        return iterator.next().key;
+                    }
+
+                    @Override
+                    public void remove() {
+                        iterator.remove();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return SAML2Cache.this.size();
+            }
+
+            @Override
+            public boolean contains(Object key) {
+                return containsKey(key);
+            }
+
+            @Override
+            public boolean remove(Object key) {
+                return SAML2Cache.this.remove(key) != null;
+            }
+        };
+    }
+
+    @Override
+    public Collection<V> values() {
+        return new AbstractCollection<V>() {
+            @Override
+            public Iterator<V> iterator() {
+                final Iterator<CacheEntry<K, V>> iterator = new EntryIterator();
+                return new Iterator<V>() {
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public V next() {
+                        return iterator.next().value;
+                    }
+
+                    @Override
+                    public void remove() {
+                        iterator.remove();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return SAML2Cache.this.size();
+            }
+        };
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new AbstractSet<Map.Entry<K, V>>() {
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator() {
+                final Iterator<CacheEntry<K, V>> iterator = new EntryIterator();
+                return new Iterator<Map.Entry<K, V>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public Map.Entry<K, V> next() {
+                        CacheEntry<K, V> entry = iterator.next();
+                        return new AbstractMap.SimpleImmutableEntry<>(entry.key, entry.value);
+                    }
+
+                    @Override
+                    public void remove() {
+                        iterator.remove();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return SAML2Cache.this.size();
+            }
+        };
+    }
+
+    /**
+     * Removes the expired entries, and forgets the writes of entries that have since been replaced or removed.
+     */
+    @Override
+    public void run() {
+        long now = clock.now();
+        for (Iterator<CacheEntry<K, V>> iterator = writeOrder.iterator(); iterator.hasNext();) {
+            CacheEntry<K, V> entry = iterator.next();
+            if (entries.get(entry.key) != entry) {
+                iterator.remove();
+            } else if (entry.isExpired(now)) {
+                iterator.remove();
+                if (removeEntry(entry)) {
+                    expirations.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    @Override
+    public long getRunPeriod() {
+        return runPeriod;
+    }
+
+    @Override
+    public boolean addElement(Object key) {
+        return false;
+    }
+
+    @Override
+    public boolean removeElement(Object key) {
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return name + "[size=" + size() + ", maxSize=" + maxSize + ", timeToLive=" + timeToLive + ", hits=" + hits
+                + ", misses=" + misses + ", evictions=" + evictions + ", expirations=" + expirations + "]";
+    }
+
+    private CacheEntry<K, V> newEntry(K key, V value) {
+        return new CacheEntry<>(key, value, timeToLive == 0 ? 0 : clock.now() + timeToLive);
+    }
+
+    /**
+     * Returns the entry for the key if it has not expired. An expired entry is removed.
+     */
+    private CacheEntry<K, V> getLiveEntry(Object key) {
+        CacheEntry<K, V> entry = entries.get(key);
+        if (entry != null && entry.isExpired(clock.now())) {
+            if (removeEntry(entry)) {
+                expirations.incrementAndGet();
+            }
+            return null;
+        }
+        return entry;
+    }
+
+    private boolean removeEntry(CacheEntry<K, V> entry) {
+        if (entries.remove(entry.key, entry)) {
+            size.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    private V valueOf(CacheEntry<K, V> entry) {
+        return entry == null || entry.isExpired(clock.now()) ? null : entry.value;
+    }
+
+    /**
+     * Records the write of the entry, then evicts the entries written longest ago while the cache is too big.
+     */
+    private void written(CacheEntry<K, V> entry) {
+        writeOrder.add(entry);
+        while (maxSize > 0 && size.get() > maxSize) {
+            CacheEntry<K, V> eldest = writeOrder.poll();
+            if (eldest == null) {
+                return;
+            }
+            if (removeEntry(eldest)) {
+                evictions.incrementAndGet();
+                if (evictionListener != null && !eldest.isExpired(clock.now())) {
+                    evictionListener.evicted(eldest.key, eldest.value);
+                }
+            }
+        }
+    }
+
+    /**
+     * Iterates over the entries in the cache, removing them from the cache on {@link #remove()}.
+     */
+    private final class EntryIterator implements Iterator<CacheEntry<K, V>> {
+        private final Iterator<CacheEntry<K, V>> delegate = entries.values().iterator();
+        private CacheEntry<K, V> current;
+
+        @Override
+        public boolean hasNext() {
+            return delegate.hasNext();
+        }
+
+        @Override
+        public CacheEntry<K, V> next() {
+            current = delegate.next();
+            return current;
+        }
+
+        @Override
+        public void remove() {
+            if (current == null) {
+                throw new IllegalStateException();
+            }
+            removeEntry(current);
+            current = null;
+        }
+    }
+
+    /**
+     * A value in the cache, along with its key so that it can be evicted, and the time it expires.
+     */
+    private static final class CacheEntry<K, V> {
+        private final K key;
+        private final V value;
+        private final long expiryTime;
+
+        private CacheEntry(K key, V value, long expiryTime) {
+            this.key = key;
+            this.value = value;
+            this.expiryTime = expiryTime;
+        }
+
+        private boolean isExpired(long now) {
+            return expiryTime != 0 && expiryTime <= now;
+        }
+    }
+
+    /**
+     * Notified of entries that are evicted from a {@link SAML2Cache} to keep it within its maximum size.
+     *
+     * @param <K> The type of the keys.
+     * @param <V> The type of the values.
+     */
+    public interface EvictionListener<K, V> {
+
+        /**
+         * Called after an entry has been evicted, on the thread that wrote the entry that made the cache too big.
+         *
+         * @param key The key of the evicted entry.
+         * @param value The value of the evicted entry.
+         */
+        void evicted(K key, V value);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.saml2.cache;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.identity.shared.configuration.SystemPropertiesManager;
+
+/**
+ * Creates the {@link SAML2Cache}s that hold the state of SAML2 profiles in between requests, and keeps track of them
+ * by name so that their sizes and statistics can be reported.
+ * <p>
+ * The maximum size and time to live that each cache is created with can be overridden by the system properties
+ * {@code org.forgerock.openam.saml2.cache.<name>.maxSize} and
+ * {@code org.forgerock.openam.saml2.cache.<name>.timeToLive}, the latter in seconds. A value of 0 removes the
+ * limit.
+ *
+ * @since 14.0.0
+ */
+public final class SAML2CacheRegistry {
+
+    /**
+     * The prefix of the system properties that configure each cache.
+     */
+    public static final String PROPERTY_PREFIX = "org.forgerock.openam.saml2.cache.";
+
+    /**
+     * The default maximum size of the caches that hold the state of a single request, such as a pending
+     * AuthnRequest.
+     */
+    public static final int DEFAULT_MAX_SIZE = 100000;
+
+    private static final String MAX_SIZE_PROPERTY = ".maxSize";
+    private static final String TIME_TO_LIVE_PROPERTY = ".timeToLive";
+    private static final long DEFAULT_RUN_PERIOD = TimeUnit.MINUTES.toMillis(5);
+
+    private static final ConcurrentMap<String, SAML2Cache<?, ?>> caches = new ConcurrentSkipListMap<>();
+
+    private SAML2CacheRegistry() {
+    }
+
+    /**
+     * Creates and registers a new cache.
+     *
+     * @param name The name of the cache, unique amongst all caches.
+     * @param maxSize The maximum number of entries, or 0 for no maximum, unless configured otherwise.
+     * @param timeToLive The time in milliseconds that entries live, or 0 for no limit, unless configured otherwise.
+     * @param <K> The type of the keys.
+     * @param <V> The type of the values.
+     * @return The new cache.
+     */
+    public static <K, V> SAML2Cache<K, V> newCache(String name, int maxSize, long timeToLive) {
+        return newCache(name, maxSize, timeToLive, null);
+    }
+
+    /**
+     * Creates and registers a new cache that hands the entries it evicts to a listener.
+     *
+     * @param name The name of the cache, unique amongst all caches.
+     * @param maxSize The maximum number of entries, or 0 for no maximum, unless configured otherwise.
+     * @param timeToLive The time in milliseconds that entries live, or 0 for no limit, unless configured otherwise.
+     * @param evictionListener The listener to hand evicted entries to, or {@code null}.
+     * @param <K> The type of the keys.
+     * @param <V> The type of the values.
+     * @return The new cache.
+     */
+    public static <K, V> SAML2Cache<K, V> newCache(String name, int maxSize, long timeToLive,
+            SAML2Cache.EvictionListener<K, V> evictionListener) {
+        int configuredMaxSize = Math.max(0,
+                SystemPropertiesManager.getAsInt(PROPERTY_PREFIX + name + MAX_SIZE_PROPERTY, maxSize));
+        long configuredTimeToLive = TimeUnit.SECONDS.toMillis(Math.max(0, SystemPropertiesManager.getAsInt(
+                PROPERTY_PREFIX + name + TIME_TO_LIVE_PROPERTY, (int) TimeUnit.MILLISECONDS.toSeconds(timeToLive))));
+        long runPeriod = configuredTimeToLive > 0 ? configuredTimeToLive : DEFAULT_RUN_PERIOD;
+        SAML2Cache<K, V> cache = new SAML2Cache<>(name, configuredMaxSize, configuredTimeToLive, runPeriod,
+                evictionListener);
+        caches.put(name, cache);
+        return cache;
+    }
+
+    /**
+     * Returns the cache with the given name.
+     *
+     * @param name The name of the cache.
+     * @return The cache, or {@code null} if there is no cache with the name.
+     */
+    public static SAML2Cache<?, ?> getCache(String name) {
+        return caches.get(name);
+    }
+
+    /**
+     * Returns all of the caches, in order of their names.
+     *
+     * @return An unmodifiable view of the caches.
+     */
+    public static Collection<SAML2Cache<?, ?>> getCaches() {
+        return Collections.unmodifiableCollection(caches.values());
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.saml2.assertion.impl;
+
+import com.sun.identity.saml.xmlsig.KeyProvider;
+import com.sun.identity.saml2.assertion.Assertion;
+import com.sun.identity.saml2.assertion.AssertionFactory;
+import com.sun.identity.saml2.assertion.Issuer;
+import com.sun.identity.saml2.assertion.NameID;
+import com.sun.identity.saml2.assertion.Subject;
+import com.sun.identity.saml2.common.SAML2Exception;
+import org.forgerock.openam.utils.AMKeyProvider;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Set;
+
+public class AssertionImplTest {
+
+    private static final String DEFAULT_PRIVATE_KEY_ALIAS = "defaultkey";
+    private static final String ASSERTION_ID = "s2a4d6b8c0e2f4a6b8c0d2e4f6a8b0c2d4e6f8a0b2";
+
+    private KeyProvider keyProvider = null;
+    private Set<X509Certificate> verificationCerts = null;
+
+    @BeforeClass
+    public void setUp() {
+
+        // The keystore properties required to bootstrap this class are setup in the POM
+        keyProvider = new AMKeyProvider();
+        verificationCerts = Collections.singleton(keyProvider.getX509Certificate(DEFAULT_PRIVATE_KEY_ALIAS));
+    }
+
+    @Test
+    public void testSignedAssertionVerifies() throws SAML2Exception {
+
+        Assertion assertion = newAssertion();
+
+        assertion.sign(keyProvider.getPrivateKey(DEFAULT_PRIVATE_KEY_ALIAS),
+                keyProvider.getX509Certificate(DEFAULT_PRIVATE_KEY_ALIAS));
+
+        Assert.assertTrue(assertion.isSigned());
+        Assert.assertTrue(assertion.isSignatureValid(verificationCerts));
+    }
+
+    @Test
+    public void testSignedAssertionVerifiesOnceSerialized() throws SAML2Exception {
+
+        Assertion assertion = newAssertion();
+        assertion.sign(keyProvider.getPrivateKey(DEFAULT_PRIVATE_KEY_ALIAS),
+                keyProvider.getX509Certificate(DEFAULT_PRIVATE_KEY_ALIAS));
+
+        // The receiving party parses the serialized assertion and verifies it
+        String xml = assertion.toXMLString(true, true);
+        Assertion parsed = AssertionFactory.getInstance().createAssertion(xml);
+
+        Assert.assertTrue(parsed.isSigned());
+        Assert.assertTrue(parsed.isSignatureValid(verificationCerts));
+        Assert.assertEquals(parsed.toXMLString(true, true), xml);
+    }
+
+    private Assertion newAssertion() throws SAML2Exception {
+        AssertionFactory factory = AssertionFactory.getInstance();
+
+        Issuer issuer = factory.createIssuer();
+        issuer.setValue("http://idp.example.com");
+        NameID nameID = factory.createNameID();
+        nameID.setValue("demo");
+        Subject subject = factory.createSubject();
+        subject.setNameID(nameID);
+
+        Assertion assertion = factory.createAssertion();
+        assertion.setID(ASSERTION_ID);
+        assertion.setVersion("2.0");
+        assertion.setIssueInstant(new Date());
+        assertion.setIssuer(issuer);
+        assertion.setSubject(subject);
+        return assertion;
+    }
+}
@@ -11,7 +11,7 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2013-2015 ForgeRock AS.
+ * Copyright 2013-2016 ForgeRock AS.
  */
 
 package com.sun.identity.saml2.xmlsig;
@@ -25,10 +25,13 @@ import org.forgerock.openam.utils.AMKeyProvider;
 import org.testng.Assert;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
+import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 
+import java.security.cert.X509Certificate;
 import java.util.Collections;
+import java.util.Set;
 
 public class SigProviderTest {
 
@@ -89,4 +92,49 @@ public class SigProviderTest {
         }
         Assert.assertTrue(verified);
     }
+
+    @Test
+    public void testVerifySignatureOfElement() throws SAML2Exception {
+
+        Document signedDocument = XMLUtils.toDOMDocument(ClassLoader.getSystemResourceAsStream(SIGNED_XML_DOCUMENT),
+                SAML2Utils.debug);
+
+        // Verify the signed document in place, without serializing it
+        Assert.assertTrue(sigProvider.verify(signedDocument.getDocumentElement(), ID_ATTRIBUTE_VALUE,
+                Collections.singleton(keyProvider.getX509Certificate(DEFAULT_PRIVATE_KEY_ALIAS))));
+    }
+
+    @Test
+    public void testSigningAndVerifyingNestedElement() throws SAML2Exception {
+
+        Document document = XMLUtils.toDOMDocument(
+                "<Outer ID=\"outer\"><Issuer>issuer</Issuer><Inner ID=\"inner\"><Issuer>issuer</Issuer>"
+                        + "<SubElement/></Inner></Outer>", SAML2Utils.debug);
+        Element inner = (Element) document.getElementsByTagName("Inner").item(0);
+        Set<X509Certificate> certs = Collections.singleton(keyProvider.getX509Certificate(DEFAULT_PRIVATE_KEY_ALIAS));
+
+        // Sign the nested element in the document it is part of
+        Element signature = sigProvider.sign(inner, "inner", keyProvider.getPrivateKey(DEFAULT_PRIVATE_KEY_ALIAS),
+                keyProvider.getX509Certificate(DEFAULT_PRIVATE_KEY_ALIAS));
+
+        Assert.assertSame(signature.getParentNode(), inner);
+        Assert.assertEquals(signature.getPreviousSibling().getLocalName(), "Issuer");
+        Assert.assertTrue(sigProvider.verify(inner, "inner", certs));
+        // The signature of the nested element is also valid once the whole document is serialized
+        Assert.assertTrue(sigProvider.verify(XMLUtils.print(inner, "UTF-8"), "inner", certs));
+    }
+
+    @Test(expectedExceptions = SAML2Exception.class)
+    public void testVerifyingUnsignedElementWithSignedChild() throws SAML2Exception {
+
+        Document document = XMLUtils.toDOMDocument(
+                "<Outer ID=\"outer\"><Inner ID=\"inner\"><Issuer>issuer</Issuer></Inner></Outer>", SAML2Utils.debug);
+        Element inner = (Element) document.getElementsByTagName("Inner").item(0);
+        sigProvider.sign(inner, "inner", keyProvider.getPrivateKey(DEFAULT_PRIVATE_KEY_ALIAS),
+                keyProvider.getX509Certificate(DEFAULT_PRIVATE_KEY_ALIAS));
+
+        // The signature of the Inner element is not the signature of the Outer element
+        sigProvider.verify(document.getDocumentElement(), "outer",
+                Collections.singleton(keyProvider.getX509Certificate(DEFAULT_PRIVATE_KEY_ALIAS)));
+    }
 }
@@ -0,0 +1,187 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.saml2.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.forgerock.util.time.TimeService;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class SAML2CacheTest {
+
+    private static final long TIME_TO_LIVE = 1000;
+
+    private FakeClock clock;
+    private RecordingListener listener;
+
+    @BeforeMethod
+    public void setup() {
+        clock = new FakeClock();
+        listener = new RecordingListener();
+    }
+
+    @Test
+    public void shouldEvictEntriesWrittenLongestAgo() {
+        // Given
+        SAML2Cache<String, String> cache = newCache(2, 0);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.put("a", "3");
+
+        // When
+        cache.put("c", "4");
+
+        // Then
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.containsKey("b")).isFalse();
+        assertThat(cache.get("a")).isEqualTo("3");
+        assertThat(cache.get("c")).isEqualTo("4");
+        assertThat(cache.getEvictions()).isEqualTo(1);
+        assertThat(listener.evicted).containsExactly("b=2");
+    }
+
+    @Test
+    public void shouldNotReturnExpiredEntries() {
+        // Given
+        SAML2Cache<String, String> cache = newCache(0, TIME_TO_LIVE);
+        cache.put("a", "1");
+        clock.time += TIME_TO_LIVE / 2;
+        cache.put("b", "2");
+
+        // When
+        clock.time += TIME_TO_LIVE / 2;
+
+        // Then
+        assertThat(cache.get("a")).isNull();
+        assertThat(cache.get("b")).isEqualTo("2");
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.getExpirations()).isEqualTo(1);
+        assertThat(cache.getHits()).isEqualTo(1);
+        assertThat(cache.getMisses()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldRemoveExpiredEntriesWhenRun() {
+        // Given
+        SAML2Cache<String, String> cache = newCache(0, TIME_TO_LIVE);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        clock.time += TIME_TO_LIVE;
+        cache.put("b", "3");
+
+        // When
+        cache.run();
+
+        // Then
+        assertThat(cache.keySet()).containsOnly("b");
+        assertThat(cache.getExpirations()).isEqualTo(1);
+        assertThat(listener.evicted).isEmpty();
+    }
+
+    @Test
+    public void shouldNotEvictEntriesThatWereRemoved() {
+        // Given
+        SAML2Cache<String, String> cache = newCache(2, 0);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.remove("a");
+
+        // When
+        cache.put("c", "3");
+
+        // Then
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.getEvictions()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldReplaceExpiredEntryWhenPuttingIfAbsent() {
+        // Given
+        SAML2Cache<String, String> cache = newCache(0, TIME_TO_LIVE);
+        cache.put("a", "1");
+        clock.time += TIME_TO_LIVE;
+
+        // When
+        String previous = cache.putIfAbsent("a", "2");
+
+        // Then
+        assertThat(previous).isNull();
+        assertThat(cache.putIfAbsent("a", "3")).isEqualTo("2");
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldRemoveKeyWhenPuttingNullValue() {
+        // Given
+        SAML2Cache<String, String> cache = newCache(0, 0);
+        cache.put("a", "1");
+
+        // When
+        String previous = cache.put("a", null);
+
+        // Then
+        assertThat(previous).isEqualTo("1");
+        assertThat(cache.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void shouldRemoveEntriesThroughIterator() {
+        // Given
+        SAML2Cache<String, String> cache = newCache(0, 0);
+        cache.put("a", "1");
+        cache.put("b", "2");
+
+        // When
+        cache.values().remove("1");
+        cache.keySet().remove("b");
+
+        // Then
+        assertThat(cache.isEmpty()).isTrue();
+        assertThat(cache.entrySet()).isEmpty();
+    }
+
+    private SAML2Cache<String, String> newCache(int maxSize, long timeToLive) {
+        return new SAML2Cache<>("test", maxSize, timeToLive, TIME_TO_LIVE, listener, clock);
+    }
+
+    private static final class FakeClock implements TimeService {
+        private long time = 1000000;
+
+        @Override
+        public long now() {
+            return time;
+        }
+
+        @Override
+        public long since(long past) {
+            return time - past;
+        }
+    }
+
+    private static final class RecordingListener implements SAML2Cache.EvictionListener<String, String> {
+        private final List<String> evicted = new ArrayList<>();
+
+        @Override
+        public void evicted(String key, String value) {
+            evicted.add(key + "=" + value);
+        }
+    }
+}
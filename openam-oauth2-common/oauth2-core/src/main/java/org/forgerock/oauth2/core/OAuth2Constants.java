@@ -890,6 +890,10 @@ public class OAuth2Constants {
         public static final String DEVICE_COMPLETION_URL = "completionUrl";
         public static final String DEVICE_CODE_LIFETIME = "deviceCodeLifetime";
         public static final String DEVICE_CODE_POLL_INTERVAL = "devicePollInterval";
+        public static final String STATELESS_TOKENS_ENABLED = "statelessTokensEnabled";
+        public static final String TOKEN_SIGNING_ALGORITHM = "tokenSigningAlgorithm";
+        public static final String TOKEN_SIGNING_HMAC_SHARED_SECRET = "tokenSigningHmacSharedSecret";
+        public static final String TOKEN_ENCRYPTION_ENABLED = "tokenEncryptionEnabled";
     }
 
     /**
@@ -964,6 +968,7 @@ public class OAuth2Constants {
         public static final String AZP = "azp";
         public static final String EXP = "exp";
         public static final String IAT =  "iat";
+        public static final String JTI = "jti";
         public static final String AUTH_TIME = "auth_time";
         public static final String NONCE = "nonce";
         public static final String OPS = "org.forgerock.openidconnect.ops";
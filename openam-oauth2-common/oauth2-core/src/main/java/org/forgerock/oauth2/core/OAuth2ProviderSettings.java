@@ -454,4 +454,32 @@ public interface OAuth2ProviderSettings {
      */
     int getDeviceCodePollInterval() throws ServerException;
 
+    /**
+     * Whether access tokens are issued as signed JWTs that can be validated without the token store.
+     * @return {@code true} if stateless access tokens are issued.
+     * @throws ServerException If the setting could not be retrieved.
+     */
+    boolean isStatelessTokensEnabled() throws ServerException;
+
+    /**
+     * The JWS algorithm used to sign stateless access tokens, for example {@code HS256} or {@code RS256}.
+     * @return The algorithm name.
+     * @throws ServerException If the setting could not be retrieved.
+     */
+    String getTokenSigningAlgorithm() throws ServerException;
+
+    /**
+     * The shared secret used to sign stateless access tokens with an HMAC algorithm.
+     * @return The shared secret.
+     * @throws ServerException If the setting could not be retrieved.
+     */
+    String getTokenHmacSharedSecret() throws ServerException;
+
+    /**
+     * Whether stateless access tokens are encrypted with the key pair of the OAuth2 provider.
+     * @return {@code true} if stateless access tokens are encrypted.
+     * @throws ServerException If the setting could not be retrieved.
+     */
+    boolean isTokenEncryptionEnabled() throws ServerException;
+
 }
@@ -11,7 +11,7 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2014-2015 ForgeRock AS.
+ * Copyright 2014-2016 ForgeRock AS.
  */
 
 package org.forgerock.openam.oauth2;
@@ -276,6 +276,19 @@ public class OpenAMAccessToken extends AccessToken {
         return null;
     }
 
+    /**
+     * Gets the JWT ID of a stateless access token.
+     *
+     * @return The JWT ID, or {@code null} if this is not a stateless access token.
+     */
+    public String getJwtId() {
+        final Set<String> value = getParameter(OAuth2Constants.JWTTokenParams.JTI);
+        if (value != null && !value.isEmpty()) {
+            return value.iterator().next();
+        }
+        return null;
+    }
+
     /**
      * Gets the realm.
      *
@@ -11,7 +11,7 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2014-2015 ForgeRock AS.
+ * Copyright 2014-2016 ForgeRock AS.
  * Portions Copyrighted 2015 Nomura Research Institute, Ltd.
  */
 
@@ -30,6 +30,7 @@ import java.net.URL;
 import java.security.Key;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
@@ -70,6 +71,9 @@ import org.restlet.Request;
 
 /**
  * Models an OpenAM OAuth2 and OpenId Connect client registration in the OAuth2 provider.
+ * <p>
+ * Instances are cached and shared between requests by the {@link OpenAMClientRegistrationStore} until the client's
+ * identity changes, so the redirect URIs and the keys used to verify the client's JWTs are only parsed once.
  *
  * @since 12.0.0
  */
@@ -89,7 +93,9 @@ public class OpenAMClientRegistration implements OpenIdConnectClientRegistration
     private final OpenIdResolverService resolverService;
     private final MessageDigest digest;
     private final OAuth2ProviderSettings providerSettings;
-
+    private volatile Set<URI> redirectUris;
+    private volatile Map<String, Key> jwks;
+    private volatile PublicKey x509PublicKey;
 
     /**
      * Constructs a new OpenAMClientRegistration.
@@ -114,7 +120,10 @@ public class OpenAMClientRegistration implements OpenIdConnectClientRegistration
      * {@inheritDoc}
      */
     public Set<URI> getRedirectUris() {
-        Set<URI> redirectionURIs;
+        Set<URI> redirectionURIs = redirectUris;
+        if (redirectionURIs != null) {
+            return redirectionURIs;
+        }
         try {
             Set<String> redirectionURIsSet = amIdentity.getAttribute(OAuth2Constants.OAuth2Client.REDIRECT_URI);
             redirectionURIsSet = convertAttributeValues(redirectionURIsSet);
@@ -127,6 +136,8 @@ public class OpenAMClientRegistration implements OpenIdConnectClientRegistration
             throw OAuthProblemException.OAuthError.SERVER_ERROR.handle(Request.getCurrent(),
                     "Unable to get "+ OAuth2Constants.OAuth2Client.REDIRECT_URI +" from repository");
         }
+        redirectionURIs = Collections.unmodifiableSet(redirectionURIs);
+        redirectUris = redirectionURIs;
         return redirectionURIs;
     }
 
@@ -629,18 +640,22 @@ public class OpenAMClientRegistration implements OpenIdConnectClientRegistration
 
     private boolean byJWKs(OAuth2Jwt jwt) throws IdRepoException, SSOException,
             MalformedURLException, FailedToLoadJWKException {
-        Set<String> set = amIdentity.getAttribute(OAuth2Constants.OAuth2Client.JWKS);
+        Map<String, Key> jwkMap = jwks;
+        if (jwkMap == null) {
+            Set<String> set = amIdentity.getAttribute(OAuth2Constants.OAuth2Client.JWKS);
 
-        if (set == null || set.isEmpty()) {
-            throw OAuthProblemException.OAuthError.SERVER_ERROR.handle(Request.getCurrent(),
-                    "No Client Bearer JWKs_URI set.");
-        }
+            if (set == null || set.isEmpty()) {
+                throw OAuthProblemException.OAuthError.SERVER_ERROR.handle(Request.getCurrent(),
+                        "No Client Bearer JWKs_URI set.");
+            }
 
-        final String jwkSetStr = set.iterator().next();
-        final JWKSet jwkSet = new JWKSet(JsonValueBuilder.toJsonValue(jwkSetStr));
-        final JWKSetParser setParser = new JWKSetParser(0, 0); //0 values as not using for inet comms
+            final String jwkSetStr = set.iterator().next();
+            final JWKSet jwkSet = new JWKSet(JsonValueBuilder.toJsonValue(jwkSetStr));
+            final JWKSetParser setParser = new JWKSetParser(0, 0); //0 values as not using for inet comms
 
-        final Map<String, Key> jwkMap = setParser.jwkSetToMap(jwkSet);
+            jwkMap = setParser.jwkSetToMap(jwkSet);
+            jwks = jwkMap;
+        }
 
         final Key key = jwkMap.get(jwt.getSignedJwt().getHeader().getKeyId());
 
@@ -680,17 +695,22 @@ public class OpenAMClientRegistration implements OpenIdConnectClientRegistration
 
     private boolean byX509Key(OAuth2Jwt jwt) throws IdRepoException, SSOException, CertificateException {
 
-        Set<String> set = amIdentity.getAttribute(OAuth2Constants.OAuth2Client.CLIENT_JWT_PUBLIC_KEY);
+        PublicKey publicKey = x509PublicKey;
+        if (publicKey == null) {
+            Set<String> set = amIdentity.getAttribute(OAuth2Constants.OAuth2Client.CLIENT_JWT_PUBLIC_KEY);
 
-        if (set == null || set.isEmpty()) {
-            throw OAuthProblemException.OAuthError.SERVER_ERROR.handle(Request.getCurrent(),
-                    "No Client Bearer Jwt Public key certificate set");
-        }
+            if (set == null || set.isEmpty()) {
+                throw OAuthProblemException.OAuthError.SERVER_ERROR.handle(Request.getCurrent(),
+                        "No Client Bearer Jwt Public key certificate set");
+            }
 
-        String encodedCert = set.iterator().next();
-        X509Certificate certificate = pemDecoder.decodeX509Certificate(encodedCert);
+            String encodedCert = set.iterator().next();
+            X509Certificate certificate = pemDecoder.decodeX509Certificate(encodedCert);
+            publicKey = certificate.getPublicKey();
+            x509PublicKey = publicKey;
+        }
 
-        return jwt.isValid(signingManager.newRsaSigningHandler(certificate.getPublicKey()));
+        return jwt.isValid(signingManager.newRsaSigningHandler(publicKey));
     }
 
     /**
@@ -768,7 +788,10 @@ public class OpenAMClientRegistration implements OpenIdConnectClientRegistration
     private String subValueFromHost(String host, String resourceOwnerId, OAuth2ProviderSettings providerSettings) {
         try {
             final String concat = host + resourceOwnerId + providerSettings.getHashSalt();
-            byte[] hash = digest.digest(concat.getBytes("UTF-8"));
+            byte[] hash;
+            synchronized (digest) {
+                hash = digest.digest(concat.getBytes("UTF-8"));
+            }
             return Base64.encode(hash);
         } catch (UnsupportedEncodingException e) {
             logger.message("Unable to encrypt the sub value for user.");
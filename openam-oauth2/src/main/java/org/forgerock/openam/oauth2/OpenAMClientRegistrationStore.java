@@ -11,29 +11,39 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2014-2015 ForgeRock AS.
+ * Copyright 2014-2016 ForgeRock AS.
  * Portions Copyrighted 2015 Nomura Research Institute, Ltd
  */
 
 package org.forgerock.openam.oauth2;
 
+import com.iplanet.am.util.SystemProperties;
 import com.iplanet.sso.SSOException;
 import com.iplanet.sso.SSOToken;
 import com.sun.identity.idm.AMIdentity;
 import com.sun.identity.idm.AMIdentityRepository;
+import com.sun.identity.idm.IdEventListener;
 import com.sun.identity.idm.IdRepoException;
 import com.sun.identity.idm.IdSearchControl;
 import com.sun.identity.idm.IdSearchResults;
 import com.sun.identity.idm.IdType;
 import com.sun.identity.security.AdminTokenAction;
 import com.sun.identity.shared.debug.Debug;
+import com.sun.identity.sm.DNMapper;
 import java.security.AccessController;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 
+import org.forgerock.guava.common.annotations.VisibleForTesting;
 import org.forgerock.openam.core.RealmInfo;
 import org.forgerock.oauth2.core.exceptions.ClientAuthenticationFailureFactory;
 import org.forgerock.services.context.Context;
@@ -45,23 +55,41 @@ import org.forgerock.oauth2.core.PEMDecoder;
 import org.forgerock.oauth2.core.exceptions.InvalidClientException;
 import org.forgerock.oauth2.core.exceptions.NotFoundException;
 import org.forgerock.openam.utils.RealmNormaliser;
+import org.forgerock.openam.utils.collections.LeastRecentlyUsed;
 import org.forgerock.openidconnect.OpenIdConnectClientRegistration;
 import org.forgerock.openidconnect.OpenIdConnectClientRegistrationStore;
 
 /**
  * The OpenAM OAuth2 and OpenId Connect provider's store for all client registrations.
+ * <p>
+ * Client registrations are cached by realm and client ID, so that requests from a known client do not search the
+ * identity repository. The cache holds at most {@value #DEFAULT_CACHE_SIZE} registrations, or the number set by the
+ * {@value #CACHE_SIZE_PROPERTY} system property, discarding the least recently used. The store listens for changes
+ * to the agent identities of each realm it has read a client from, and drops a client's registration when its
+ * identity is changed, deactivated or deleted.
  *
  * @since 12.0.0
  */
 @Singleton
 public class OpenAMClientRegistrationStore implements OpenIdConnectClientRegistrationStore {
 
+    /**
+     * System property setting the most client registrations that are cached.
+     */
+    static final String CACHE_SIZE_PROPERTY = "org.forgerock.openam.oauth2.client.registration.cache.size";
+    static final int DEFAULT_CACHE_SIZE = 10000;
+
     private final Debug logger = Debug.getInstance("OAuth2Provider");
     private final RealmNormaliser realmNormaliser;
     private final PEMDecoder pemDecoder;
     private final OpenIdResolverService resolverService;
     private final OAuth2ProviderSettingsFactory providerSettingsFactory;
     private final ClientAuthenticationFailureFactory failureFactory;
+    private final Map<List<String>, OpenAMClientRegistration> registrations;
+    private final Set<String> listenedRealms = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final AtomicLong changes = new AtomicLong();
+    @VisibleForTesting
+    final IdEventListener clientChangeListener = new ClientChangeListener();
 
     /**
      * Constructs a new OpenAMClientRegistrationStore.
@@ -73,11 +101,21 @@ public class OpenAMClientRegistrationStore implements OpenIdConnectClientRegistr
     public OpenAMClientRegistrationStore(RealmNormaliser realmNormaliser, PEMDecoder pemDecoder,
             @Named(OAuth2Constants.Custom.JWK_RESOLVER) OpenIdResolverService resolverService,
             OAuth2ProviderSettingsFactory providerSettingsFactory, ClientAuthenticationFailureFactory failureFactory) {
+        this(realmNormaliser, pemDecoder, resolverService, providerSettingsFactory, failureFactory,
+                SystemProperties.getAsInt(CACHE_SIZE_PROPERTY, DEFAULT_CACHE_SIZE));
+    }
+
+    @VisibleForTesting
+    OpenAMClientRegistrationStore(RealmNormaliser realmNormaliser, PEMDecoder pemDecoder,
+            OpenIdResolverService resolverService, OAuth2ProviderSettingsFactory providerSettingsFactory,
+            ClientAuthenticationFailureFactory failureFactory, int cacheSize) {
         this.realmNormaliser = realmNormaliser;
         this.pemDecoder = pemDecoder;
         this.resolverService = resolverService;
         this.providerSettingsFactory = providerSettingsFactory;
         this.failureFactory = failureFactory;
+        this.registrations = Collections.synchronizedMap(
+                new LeastRecentlyUsed<List<String>, OpenAMClientRegistration>(cacheSize));
     }
 
     /**
@@ -87,8 +125,7 @@ public class OpenAMClientRegistrationStore implements OpenIdConnectClientRegistr
             throws InvalidClientException, NotFoundException {
 
         final String realm = realmNormaliser.normalise(request.<String>getParameter(OAuth2Constants.Custom.REALM));
-        return new OpenAMClientRegistration(getIdentity(clientId, realm, request), pemDecoder, resolverService,
-                providerSettingsFactory.get(request), failureFactory);
+        return getRegistration(clientId, realm, request);
     }
 
     /**
@@ -97,22 +134,62 @@ public class OpenAMClientRegistrationStore implements OpenIdConnectClientRegistr
     public OpenIdConnectClientRegistration get(String clientId, String realm, Context context)
             throws InvalidClientException, NotFoundException {
 
-        final String normalisedRealm = realmNormaliser.normalise(realm);
-        return new OpenAMClientRegistration(getIdentity(clientId, normalisedRealm), pemDecoder, resolverService,
-                providerSettingsFactory.get(normalisedRealm), failureFactory);
+        return getRegistration(clientId, realmNormaliser.normalise(realm), null);
+    }
+
+    /**
+     * Returns the cached registration of the client, reading it with the provider settings of its realm if need be.
+     * The settings are looked up by realm rather than from the request, as the registration is shared by every
+     * request from the client.
+     */
+    private OpenAMClientRegistration getRegistration(String clientId, String realm, OAuth2Request request)
+            throws InvalidClientException, NotFoundException {
+        final List<String> key = cacheKey(clientId, realm);
+        OpenAMClientRegistration registration = registrations.get(key);
+        if (registration == null) {
+            final long version = changes.get();
+            registration = new OpenAMClientRegistration(getIdentity(clientId, realm, request), pemDecoder,
+                    resolverService, providerSettingsFactory.get(realm), failureFactory);
+            cache(key, registration, version);
+        }
+        return registration;
+    }
+
+    /**
+     * Caches a registration read when the change count was {@code version}. If a client has changed since then the
+     * registration may be stale, so it is dropped again.
+     */
+    private void cache(List<String> key, OpenAMClientRegistration registration, long version) {
+        registrations.put(key, registration);
+        if (changes.get() != version) {
+            synchronized (registrations) {
+                if (registrations.get(key) == registration) {
+                    registrations.remove(key);
+                }
+            }
+        }
     }
 
-    private AMIdentity getIdentity(String uName, String realm) throws InvalidClientException {
-        return getIdentity(uName, realm, null);
+    private List<String> cacheKey(String clientId, String realm) {
+        return Arrays.asList(realmKey(realm), clientId.toLowerCase(Locale.ROOT));
     }
 
+    @VisibleForTesting
+    String realmKey(String realm) {
+        return DNMapper.orgNameToDN(realm).toLowerCase(Locale.ROOT);
+    }
+
+    @VisibleForTesting
     @SuppressWarnings("unchecked")
-    private AMIdentity getIdentity(String uName, String realm, OAuth2Request request) throws InvalidClientException {
+    AMIdentity getIdentity(String uName, String realm, OAuth2Request request) throws InvalidClientException {
         final SSOToken token = AccessController.doPrivileged(AdminTokenAction.getInstance());
         final AMIdentity theID;
 
         try {
             final AMIdentityRepository amIdRepo = new AMIdentityRepository(token, realm);
+            if (listenedRealms.add(realmKey(realm))) {
+                amIdRepo.addEventListener(clientChangeListener);
+            }
 
             final IdSearchControl idsc = new IdSearchControl();
             idsc.setRecursive(true);
@@ -147,4 +224,44 @@ public class OpenAMClientRegistrationStore implements OpenIdConnectClientRegistr
             throw failureFactory.getException(request, "Client authentication failed");
         }
     }
+
+    /**
+     * Drops the cached registration of a client when its agent identity changes.
+     */
+    private final class ClientChangeListener implements IdEventListener {
+
+        @Override
+        public void identityChanged(String universalId) {
+            evict(universalId);
+        }
+
+        @Override
+        public void identityDeleted(String universalId) {
+            evict(universalId);
+        }
+
+        @Override
+        public void identityRenamed(String universalId) {
+            evict(universalId);
+        }
+
+        @Override
+        public void allIdentitiesChanged() {
+            changes.incrementAndGet();
+            registrations.clear();
+        }
+
+        private void evict(String universalId) {
+            changes.incrementAndGet();
+            try {
+                final AMIdentity identity = new AMIdentity(null, universalId);
+                if (IdType.AGENT.equals(identity.getType())) {
+                    registrations.remove(cacheKey(identity.getName(), identity.getRealm()));
+                }
+            } catch (IdRepoException e) {
+                logger.warning("Unable to read changed identity " + universalId + ", clearing client cache", e);
+                registrations.clear();
+            }
+        }
+    }
 }
@@ -11,7 +11,7 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2014-2015 ForgeRock AS.
+ * Copyright 2014-2016 ForgeRock AS.
  * Portions Copyrighted 2015 Nomura Research Institute, Ltd.
  */
 
@@ -107,6 +107,7 @@ public class OpenAMOAuth2ProviderSettings extends OpenAMSettingsImpl implements
     private final CookieExtractor cookieExtractor;
     private ScopeValidator scopeValidator;
     private volatile Template loginUrlTemplate;
+    private volatile KeyPair serverKeyPair;
 
     /**
      * Constructs a new OpenAMOAuth2ProviderSettings.
@@ -603,8 +604,14 @@ public class OpenAMOAuth2ProviderSettings extends OpenAMSettingsImpl implements
      * {@inheritDoc}
      */
     public KeyPair getServerKeyPair() throws ServerException {
+        KeyPair keyPair = serverKeyPair;
+        if (keyPair != null) {
+            return keyPair;
+        }
         try {
-            return getServerKeyPair(realm);
+            keyPair = getServerKeyPair(realm);
+            serverKeyPair = keyPair;
+            return keyPair;
         } catch (SMSException e) {
             logger.error(e.getMessage());
             throw new ServerException(e);
@@ -982,6 +989,36 @@ public class OpenAMOAuth2ProviderSettings extends OpenAMSettingsImpl implements
         return (int) getLongSettingValue(OAuth2ProviderService.DEVICE_CODE_POLL_INTERVAL);
     }
 
+    @Override
+    public boolean isStatelessTokensEnabled() throws ServerException {
+        try {
+            return getBooleanSetting(realm, OAuth2ProviderService.STATELESS_TOKENS_ENABLED);
+        } catch (SSOException | SMSException e) {
+            logger.error(e.getMessage());
+            throw new ServerException(e);
+        }
+    }
+
+    @Override
+    public String getTokenSigningAlgorithm() throws ServerException {
+        return getStringSettingValue(OAuth2ProviderService.TOKEN_SIGNING_ALGORITHM);
+    }
+
+    @Override
+    public String getTokenHmacSharedSecret() throws ServerException {
+        return getStringSettingValue(OAuth2ProviderService.TOKEN_SIGNING_HMAC_SHARED_SECRET);
+    }
+
+    @Override
+    public boolean isTokenEncryptionEnabled() throws ServerException {
+        try {
+            return getBooleanSetting(realm, OAuth2ProviderService.TOKEN_ENCRYPTION_ENABLED);
+        } catch (SSOException | SMSException e) {
+            logger.error(e.getMessage());
+            throw new ServerException(e);
+        }
+    }
+
     /**
      * ServiceListener implementation to clear cache when it changes.
      */
@@ -1008,6 +1045,7 @@ public class OpenAMOAuth2ProviderSettings extends OpenAMSettingsImpl implements
                     attributeCache.clear();
                     jwks.clear();
                     loginUrlTemplate = null;
+                    serverKeyPair = null;
                 }
             } else {
                 if (logger.messageEnabled()) {
@@ -45,7 +45,9 @@ import com.sun.identity.authentication.util.ISAuthConstants;
 import com.sun.identity.shared.debug.Debug;
 import org.forgerock.json.JsonValue;
 import org.forgerock.json.jose.jws.JwsAlgorithm;
+import org.forgerock.json.jose.exceptions.JwtRuntimeException;
 import org.forgerock.json.jose.jws.JwsAlgorithmType;
+import org.forgerock.json.jose.jws.SigningManager;
 import org.forgerock.json.jose.utils.Utils;
 import org.forgerock.oauth2.core.AccessToken;
 import org.forgerock.oauth2.core.AuthorizationCode;
@@ -102,6 +104,7 @@ public class OpenAMTokenStore implements OpenIdConnectTokenStore {
     private final CookieExtractor cookieExtractor;
     private final SecureRandom secureRandom;
     private final ClientAuthenticationFailureFactory failureFactory;
+    private final StatelessTokenBlacklist statelessTokenBlacklist;
 
     //removed 0, 1, U, u, 8, 9 and l due to similarities to O, I, V, v, B, g and I on some displays
     protected final static String ALPHABET = "234567ABCDEFGHIJKLMNOPQRSTVWXYZabcdefghijkmnopqrstvwxyz";
@@ -119,6 +122,7 @@ public class OpenAMTokenStore implements OpenIdConnectTokenStore {
      * @param cookieExtractor An instance of the CookieExtractor
      * @param auditLogger An instance of OAuth2AuditLogger
      * @param failureFactory
+     * @param statelessTokenBlacklist An instance of the StatelessTokenBlacklist.
      */
     @Inject
     public OpenAMTokenStore(OAuthTokenStore tokenStore, OAuth2ProviderSettingsFactory providerSettingsFactory,
@@ -126,7 +130,7 @@ public class OpenAMTokenStore implements OpenIdConnectTokenStore {
             OpenIdConnectClientRegistrationStore clientRegistrationStore, RealmNormaliser realmNormaliser,
             SSOTokenManager ssoTokenManager, CookieExtractor cookieExtractor, OAuth2AuditLogger auditLogger,
             @Named(OAuth2Constants.DEBUG_LOG_NAME) Debug logger, SecureRandom secureRandom,
-            ClientAuthenticationFailureFactory failureFactory) {
+            ClientAuthenticationFailureFactory failureFactory, StatelessTokenBlacklist statelessTokenBlacklist) {
         this.tokenStore = tokenStore;
         this.providerSettingsFactory = providerSettingsFactory;
         this.oauth2UrisFactory = oauth2UrisFactory;
@@ -138,6 +142,7 @@ public class OpenAMTokenStore implements OpenIdConnectTokenStore {
         this.logger = logger;
         this.secureRandom = secureRandom;
         this.failureFactory = failureFactory;
+        this.statelessTokenBlacklist = statelessTokenBlacklist;
     }
 
     /**
@@ -489,6 +494,12 @@ public class OpenAMTokenStore implements OpenIdConnectTokenStore {
             expiryTime = clientRegistration.getAccessTokenLifeTime(providerSettings) + System.currentTimeMillis();
         }
         
+        if (providerSettings.isStatelessTokensEnabled()) {
+            return createStatelessAccessToken(new OpenAMAccessToken(id, authorizationCode, resourceOwnerId, clientId,
+                    redirectUri, scope, expiryTime, null, OAuth2Constants.Token.OAUTH_ACCESS_TOKEN, grantType, nonce,
+                    realm, claims, auditId), providerSettings, request);
+        }
+
         final AccessToken accessToken;
         if (refreshToken == null) {
             accessToken = new OpenAMAccessToken(id, authorizationCode, resourceOwnerId, clientId, redirectUri,
@@ -517,6 +528,49 @@ public class OpenAMTokenStore implements OpenIdConnectTokenStore {
         return accessToken;
     }
 
+    /**
+     * Signs the access token as a JWT that becomes its ID, instead of storing it in the CTS. The refresh token is
+     * left out so that its ID is not given to resource servers.
+     */
+    private AccessToken createStatelessAccessToken(OpenAMAccessToken accessToken,
+            OAuth2ProviderSettings providerSettings, OAuth2Request request) throws ServerException, NotFoundException {
+        accessToken.setStringProperty(OAuth2Constants.JWTTokenParams.JTI, accessToken.getTokenId());
+        final String jwt = getStatelessTokenMapper(providerSettings).asJwt(accessToken,
+                oauth2UrisFactory.get(request).getIssuer());
+        accessToken.setStringProperty(OAuth2Constants.CoreTokenParams.ID, jwt);
+        if (auditLogger.isAuditLogEnabled()) {
+            String[] obs = {"CREATED_TOKEN", accessToken.toString()};
+            auditLogger.logAccessMessage("CREATED_TOKEN", obs, null);
+        }
+        request.setToken(AccessToken.class, accessToken);
+        return accessToken;
+    }
+
+    private StatelessTokenMapper getStatelessTokenMapper(OAuth2ProviderSettings providerSettings)
+            throws ServerException {
+        final JwsAlgorithm algorithm;
+        try {
+            algorithm = JwsAlgorithm.valueOf(providerSettings.getTokenSigningAlgorithm());
+        } catch (IllegalArgumentException | NullPointerException e) {
+            throw new ServerException("Unsupported stateless token signing algorithm");
+        }
+        final SigningManager signingManager = new SigningManager();
+        final KeyPair encryptionKeyPair =
+                providerSettings.isTokenEncryptionEnabled() ? providerSettings.getServerKeyPair() : null;
+        if (JwsAlgorithmType.RSA.equals(algorithm.getAlgorithmType())) {
+            final KeyPair keyPair = providerSettings.getServerKeyPair();
+            return new StatelessTokenMapper(algorithm, signingManager.newRsaSigningHandler(keyPair.getPrivate()),
+                    signingManager.newRsaSigningHandler(keyPair.getPublic()), encryptionKeyPair);
+        }
+        final String sharedSecret = providerSettings.getTokenHmacSharedSecret();
+        if (StringUtils.isEmpty(sharedSecret)) {
+            throw new ServerException("No shared secret configured for signing stateless tokens");
+        }
+        final byte[] secret = sharedSecret.getBytes(Utils.CHARSET);
+        return new StatelessTokenMapper(algorithm, signingManager.newHmacSigningHandler(secret),
+                signingManager.newHmacSigningHandler(secret), encryptionKeyPair);
+    }
+
     @Override
     public RefreshToken createRefreshToken(String grantType, String clientId, String resourceOwnerId,
             String redirectUri, Set<String> scope, OAuth2Request request)
@@ -646,6 +700,10 @@ public class OpenAMTokenStore implements OpenIdConnectTokenStore {
     }
 
     public void updateAccessToken(AccessToken accessToken) {
+        if (StatelessTokenMapper.isStatelessToken(accessToken.getTokenId())) {
+            // Additional data on a stateless token only lasts for the current request
+            return;
+        }
         try {
             tokenStore.update(accessToken);
         } catch (CoreTokenException e) {
@@ -718,6 +776,11 @@ public class OpenAMTokenStore implements OpenIdConnectTokenStore {
     public void deleteAccessToken(String accessTokenId) throws ServerException {
         logger.message("Deleting access token");
 
+        if (StatelessTokenMapper.isStatelessToken(accessTokenId)) {
+            revokeStatelessAccessToken(accessTokenId);
+            return;
+        }
+
         // Delete the code
         try {
             tokenStore.delete(accessTokenId);
@@ -727,6 +790,22 @@ public class OpenAMTokenStore implements OpenIdConnectTokenStore {
         }
     }
 
+    private void revokeStatelessAccessToken(String accessTokenId) throws ServerException {
+        final String realm = StatelessTokenMapper.getRealm(accessTokenId);
+        if (realm == null) {
+            logger.error("Unable to revoke encrypted stateless access token without the realm it was issued in");
+            throw new ServerException("Could not revoke token");
+        }
+        final AccessToken accessToken;
+        try {
+            accessToken = readStatelessAccessToken(providerSettingsFactory.get(realm), accessTokenId);
+        } catch (InvalidGrantException | NotFoundException e) {
+            logger.message("Not revoking invalid stateless access token", e);
+            return;
+        }
+        statelessTokenBlacklist.blacklist(accessToken.getJwtId(), accessToken.getExpiryTime());
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -753,6 +832,20 @@ public class OpenAMTokenStore implements OpenIdConnectTokenStore {
 
         logger.message("Reading access token");
 
+        if (StatelessTokenMapper.isStatelessToken(tokenId)) {
+            final String tokenRealm = StatelessTokenMapper.getRealm(tokenId);
+            final OpenAMAccessToken accessToken = readStatelessAccessToken(tokenRealm == null
+                    ? providerSettingsFactory.get(request) : providerSettingsFactory.get(tokenRealm), tokenId);
+            if (statelessTokenBlacklist.isBlacklisted(accessToken.getJwtId())) {
+                logger.message("Stateless access token has been revoked");
+                throw new InvalidGrantException("Token has been revoked");
+            }
+            validateTokenRealm(accessToken.getRealm(), request);
+
+            request.setToken(AccessToken.class, accessToken);
+            return accessToken;
+        }
+
         JsonValue token;
 
         // Read from CTS
@@ -807,6 +900,16 @@ public class OpenAMTokenStore implements OpenIdConnectTokenStore {
         return refreshToken;
     }
 
+    private OpenAMAccessToken readStatelessAccessToken(OAuth2ProviderSettings providerSettings, String tokenId)
+            throws ServerException, InvalidGrantException {
+        try {
+            return new OpenAMAccessToken(getStatelessTokenMapper(providerSettings).fromJwt(tokenId));
+        } catch (JwtRuntimeException e) {
+            logger.message("Unable to read stateless access token", e);
+            throw new InvalidGrantException("Could not read token");
+        }
+    }
+
     protected void validateTokenRealm(final String tokenRealm, final OAuth2Request request)
             throws InvalidGrantException, NotFoundException {
         final String normalisedRequestRealm = realmNormaliser.normalise(request.<String>getParameter(REALM));
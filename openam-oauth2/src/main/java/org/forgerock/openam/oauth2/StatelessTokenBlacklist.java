@@ -0,0 +1,221 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.oauth2;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.forgerock.util.query.QueryFilter.*;
+
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.forgerock.guava.common.annotations.VisibleForTesting;
+import org.forgerock.oauth2.core.OAuth2Constants;
+import org.forgerock.oauth2.core.exceptions.ServerException;
+import org.forgerock.openam.cts.CTSPersistentStore;
+import org.forgerock.openam.cts.api.CoreTokenConstants;
+import org.forgerock.openam.cts.api.filter.TokenFilterBuilder;
+import org.forgerock.openam.cts.api.tokens.Token;
+import org.forgerock.openam.cts.exceptions.CoreTokenException;
+import org.forgerock.openam.shared.concurrency.ThreadMonitor;
+import org.forgerock.openam.sm.datalayer.api.query.PartialToken;
+import org.forgerock.openam.tokens.CoreTokenField;
+import org.forgerock.openam.tokens.TokenType;
+
+import com.iplanet.am.util.SystemProperties;
+import com.sun.identity.shared.debug.Debug;
+
+/**
+ * Blacklist of revoked stateless access tokens. Stateless access tokens cannot be deleted, so a revoked token is
+ * recorded in the CTS by its JWT ID until the token would have expired anyway, and the CTS reaper removes it after
+ * that.
+ * <p/>
+ * Checking the blacklist does not read the CTS. Each server keeps the blacklist in memory, loading it on first use
+ * and then polling the CTS for entries added since the last poll. A token revoked on another server is therefore
+ * rejected by this server within one poll interval, set in seconds by the
+ * {@value #POLL_INTERVAL_PROPERTY} system property. Each poll looks back over the time since the last successful
+ * poll plus a margin for clock skew between servers, set in seconds by the {@value #CLOCK_SKEW_PROPERTY} system
+ * property, so a failed poll or a revocation time from a server whose clock is behind does not lose entries.
+ * <p/>
+ * The fields used by this class are:
+ * <ul>
+ *     <li>{@link CoreTokenField#TOKEN_TYPE} - always {@link TokenType#OAUTH2_BLACKLIST}</li>
+ *     <li>{@link CoreTokenField#TOKEN_ID} - the JWT ID of the revoked access token.</li>
+ *     <li>{@link CoreTokenField#EXPIRY_DATE} - the expiry time of the revoked access token.</li>
+ *     <li>{@link CoreTokenField#DATE_ONE} - the time at which the token was revoked. Used to discover tokens
+ *     revoked on other servers.</li>
+ * </ul>
+ *
+ * @since 14.0.0
+ */
+@Singleton
+public class StatelessTokenBlacklist {
+
+    /**
+     * System property for the number of seconds between polls for tokens revoked on other servers.
+     */
+    public static final String POLL_INTERVAL_PROPERTY = "org.forgerock.openam.oauth2.stateless.blacklist.poll.interval";
+    private static final long DEFAULT_POLL_INTERVAL = 60;
+
+    /**
+     * System property for the number of seconds by which clocks on different servers are allowed to differ.
+     */
+    public static final String CLOCK_SKEW_PROPERTY = "org.forgerock.openam.oauth2.stateless.blacklist.clock.skew";
+    private static final long DEFAULT_CLOCK_SKEW = 60;
+    private static final CoreTokenField BLACKLIST_TIME_FIELD = CoreTokenField.DATE_ONE;
+
+    private final CTSPersistentStore cts;
+    private final ScheduledExecutorService scheduler;
+    private final ThreadMonitor threadMonitor;
+    private final Debug logger;
+    private final long pollIntervalMs;
+    private final long clockSkewMs;
+    private final ConcurrentMap<String, Long> blacklist = new ConcurrentHashMap<String, Long>();
+    private final AtomicLong lastPollTime = new AtomicLong(0);
+    private volatile boolean running = false;
+
+    /**
+     * Constructs a new StatelessTokenBlacklist.
+     *
+     * @param cts An instance of the CTSPersistentStore.
+     * @param scheduler The executor used to poll the CTS.
+     * @param threadMonitor The thread monitor that restarts the poll task if it fails.
+     * @param logger The logger.
+     */
+    @Inject
+    public StatelessTokenBlacklist(CTSPersistentStore cts,
+            @Named(CoreTokenConstants.CTS_SCHEDULED_SERVICE) ScheduledExecutorService scheduler,
+            ThreadMonitor threadMonitor, @Named(OAuth2Constants.DEBUG_LOG_NAME) Debug logger) {
+        this(cts, scheduler, threadMonitor, logger,
+                TimeUnit.SECONDS.toMillis(SystemProperties.getAsLong(POLL_INTERVAL_PROPERTY, DEFAULT_POLL_INTERVAL)),
+                TimeUnit.SECONDS.toMillis(SystemProperties.getAsLong(CLOCK_SKEW_PROPERTY, DEFAULT_CLOCK_SKEW)));
+    }
+
+    @VisibleForTesting
+    StatelessTokenBlacklist(CTSPersistentStore cts, ScheduledExecutorService scheduler, ThreadMonitor threadMonitor,
+            Debug logger, long pollIntervalMs, long clockSkewMs) {
+        this.cts = cts;
+        this.scheduler = scheduler;
+        this.threadMonitor = threadMonitor;
+        this.logger = logger;
+        this.pollIntervalMs = pollIntervalMs;
+        this.clockSkewMs = clockSkewMs;
+    }
+
+    /**
+     * Revokes a stateless access token until it expires.
+     *
+     * @param jwtId The JWT ID of the access token.
+     * @param expiryTime The expiry time of the access token, in milliseconds.
+     * @throws ServerException If the token could not be added to the blacklist.
+     */
+    public void blacklist(String jwtId, long expiryTime) throws ServerException {
+        Token token = new Token(jwtId, TokenType.OAUTH2_BLACKLIST);
+        token.setExpiryTimestamp(timeOf(expiryTime));
+        token.setAttribute(BLACKLIST_TIME_FIELD, now());
+        try {
+            cts.create(token);
+        } catch (CoreTokenException e) {
+            logger.error("Unable to blacklist stateless access token " + jwtId, e);
+            throw new ServerException("Could not revoke token");
+        }
+        blacklist.put(jwtId, expiryTime);
+    }
+
+    /**
+     * Whether a stateless access token has been revoked.
+     *
+     * @param jwtId The JWT ID of the access token.
+     * @return {@code true} if the token has been revoked.
+     */
+    public boolean isBlacklisted(String jwtId) {
+        start();
+        return blacklist.containsKey(jwtId);
+    }
+
+    private void start() {
+        if (!running) {
+            synchronized (this) {
+                if (!running) {
+                    poll();
+                    threadMonitor.watchScheduledThread(scheduler, new Runnable() {
+                        @Override
+                        public void run() {
+                            poll();
+                        }
+                    }, pollIntervalMs, pollIntervalMs, MILLISECONDS);
+                    running = true;
+                }
+            }
+        }
+    }
+
+    @VisibleForTesting
+    void poll() {
+        long pollTime = System.currentTimeMillis();
+        Collection<PartialToken> revoked;
+        try {
+            revoked = findTokensRevokedSince(Math.max(0, lastPollTime.get() - clockSkewMs));
+        } catch (CoreTokenException e) {
+            logger.error("CTS failure while polling stateless access token blacklist", e);
+            return;
+        }
+        for (PartialToken token : revoked) {
+            blacklist.put(token.<String>getValue(CoreTokenField.TOKEN_ID),
+                    token.<Calendar>getValue(CoreTokenField.EXPIRY_DATE).getTimeInMillis());
+        }
+        lastPollTime.set(pollTime);
+
+        long now = System.currentTimeMillis();
+        for (Iterator<Map.Entry<String, Long>> i = blacklist.entrySet().iterator(); i.hasNext();) {
+            if (i.next().getValue() < now) {
+                i.remove();
+            }
+        }
+    }
+
+    private Collection<PartialToken> findTokensRevokedSince(long time) throws CoreTokenException {
+        TokenFilterBuilder builder = new TokenFilterBuilder()
+                .withQuery(and(equalTo(CoreTokenField.TOKEN_TYPE, TokenType.OAUTH2_BLACKLIST),
+                        greaterThanOrEqualTo(BLACKLIST_TIME_FIELD, timeOf(time))))
+                .returnAttribute(CoreTokenField.TOKEN_ID)
+                .returnAttribute(CoreTokenField.EXPIRY_DATE);
+        return cts.attributeQuery(builder.build());
+    }
+
+    private Calendar now() {
+        return Calendar.getInstance(TimeZone.getTimeZone("UTC"), Locale.ROOT);
+    }
+
+    private Calendar timeOf(long utcMillis) {
+        Calendar calendar = now();
+        calendar.setTimeInMillis(utcMillis);
+        return calendar;
+    }
+}
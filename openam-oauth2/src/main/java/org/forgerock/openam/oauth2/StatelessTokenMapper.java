@@ -0,0 +1,239 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.oauth2;
+
+import static org.forgerock.oauth2.core.OAuth2Constants.CoreTokenParams.*;
+import static org.forgerock.oauth2.core.OAuth2Constants.JWTTokenParams.*;
+
+import java.security.KeyPair;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.jose.builders.JwtBuilderFactory;
+import org.forgerock.json.jose.exceptions.JwtRuntimeException;
+import org.forgerock.json.jose.jwe.EncryptionMethod;
+import org.forgerock.json.jose.jwe.JweAlgorithm;
+import org.forgerock.json.jose.jws.JwsAlgorithm;
+import org.forgerock.json.jose.jws.SignedEncryptedJwt;
+import org.forgerock.json.jose.jws.SignedJwt;
+import org.forgerock.json.jose.jws.handlers.SigningHandler;
+import org.forgerock.json.jose.jwt.JwtClaimsSet;
+import org.forgerock.oauth2.core.OAuth2Constants;
+import org.forgerock.oauth2.core.Utils;
+import org.forgerock.util.Reject;
+
+/**
+ * Converts OAuth2 access tokens to and from signed, and optionally encrypted, JWTs so that they can be validated
+ * without reading the CTS.
+ * <p/>
+ * Each field of the token, other than its ID, is stored as a claim of the same name, with multiple values separated
+ * by spaces as they are in the {@code scope} parameter. The registered {@code iss}, {@code sub}, {@code aud},
+ * {@code iat} and {@code exp} claims are added for resource servers that read the JWT themselves.
+ *
+ * @since 14.0.0
+ */
+@Immutable
+public final class StatelessTokenMapper {
+
+    private static final JwtBuilderFactory jwtBuilderFactory = new JwtBuilderFactory();
+    private static final Set<String> REGISTERED_CLAIMS = new HashSet<String>(Arrays.asList(ISS, SUB, AUD, IAT, EXP));
+
+    private final JwsAlgorithm jwsAlgorithm;
+    private final SigningHandler signingHandler;
+    private final SigningHandler verificationHandler;
+    private final KeyPair encryptionKeyPair;
+
+    /**
+     * Constructs a fully-configured, immutable instance of StatelessTokenMapper.
+     *
+     * @param jwsAlgorithm Non-null, JwtAlgorithm to use for signing and verification.
+     * @param signingHandler Non-null, delegate to call for signing.
+     * @param verificationHandler Non-null, delegate to call for signature verification.
+     * @param encryptionKeyPair Nullable, public-private key-pair to use for encryption.
+     *                          If null, no encryption is applied.
+     */
+    public StatelessTokenMapper(@Nonnull JwsAlgorithm jwsAlgorithm,
+                                @Nonnull SigningHandler signingHandler,
+                                @Nonnull SigningHandler verificationHandler,
+                                @Nullable KeyPair encryptionKeyPair) {
+
+        Reject.ifNull(jwsAlgorithm, "jwsAlgorithm must not be null.");
+        Reject.ifNull(signingHandler, "signingHandler must not be null.");
+        Reject.ifNull(verificationHandler, "verificationHandler must not be null.");
+
+        this.jwsAlgorithm = jwsAlgorithm;
+        this.signingHandler = signingHandler;
+        this.verificationHandler = verificationHandler;
+        this.encryptionKeyPair = encryptionKeyPair;
+    }
+
+    /**
+     * Whether a token ID is a stateless token rather than the ID of a token in the CTS.
+     *
+     * @param tokenId The token ID.
+     * @return {@code true} if the token ID is a compact serialized JWS or JWE.
+     */
+    public static boolean isStatelessToken(String tokenId) {
+        if (tokenId == null) {
+            return false;
+        }
+        int parts = 1;
+        for (int i = 0; i < tokenId.length(); i++) {
+            if (tokenId.charAt(i) == '.') {
+                parts++;
+            }
+        }
+        return parts == 3 || parts == 5;
+    }
+
+    /**
+     * Reads the realm of a signed stateless token without verifying its signature, so that the settings of that
+     * realm can be used to verify it.
+     *
+     * @param jwtString The stateless token.
+     * @return The realm, or {@code null} if the token is encrypted or cannot be read.
+     */
+    public static String getRealm(String jwtString) {
+        try {
+            SignedJwt signedJwt = jwtBuilderFactory.reconstruct(jwtString, SignedJwt.class);
+            Object realm = signedJwt.getClaimsSet().getClaim(OAuth2Constants.CoreTokenParams.REALM);
+            return realm == null ? null : realm.toString();
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Stores the fields of an access token as the claims of a JWT.
+     *
+     * @param token Non-null, the access token.
+     * @param issuer The issuer of the token.
+     * @return String JWT holding the access token.
+     */
+    @SuppressWarnings("unchecked")
+    public String asJwt(@Nonnull JsonValue token, String issuer) {
+
+        Reject.ifNull(token, "token must not be null.");
+
+        Map<String, Object> claims = new LinkedHashMap<String, Object>();
+        for (String key : token.keys()) {
+            Object value = token.get(key).getObject();
+            if (!ID.equals(key) && value instanceof Set) {
+                claims.put(key, Utils.joinScope((Set<String>) value));
+            }
+        }
+        claims.put(ISS, issuer);
+        putIfNotNull(claims, SUB, claims.get(USERNAME));
+        putIfNotNull(claims, AUD, claims.get(CLIENT_ID));
+        claims.put(IAT, System.currentTimeMillis() / 1000);
+        Object expireTime = claims.get(EXPIRE_TIME);
+        if (expireTime != null) {
+            claims.put(EXP, Long.parseLong(expireTime.toString()) / 1000);
+        }
+
+        JwtClaimsSet claimsSet = jwtBuilderFactory.claims().claims(claims).build();
+
+        if (encryptionKeyPair != null) {
+
+            return jwtBuilderFactory.jwe(encryptionKeyPair.getPublic())
+                    .headers().alg(JweAlgorithm.RSAES_PKCS1_V1_5).enc(EncryptionMethod.A128CBC_HS256).done()
+                    .claims(claimsSet)
+                    .sign(signingHandler, jwsAlgorithm)
+                    .build();
+
+        } else {
+
+            return jwtBuilderFactory.jws(signingHandler)
+                    .headers().alg(jwsAlgorithm).done()
+                    .claims(claimsSet)
+                    .build();
+
+        }
+    }
+
+    /**
+     * Reads the access token held in a JWT, with the JWT itself as the token ID.
+     *
+     * @param jwtString Non-null, the stateless token.
+     * @return The access token fields.
+     * @throws JwtRuntimeException If the JWT could not be reconstructed or its signature is not valid.
+     */
+    public JsonValue fromJwt(@Nonnull String jwtString) throws JwtRuntimeException {
+
+        Reject.ifNull(jwtString, "jwtString must not be null.");
+
+        SignedJwt signedJwt;
+
+        if (encryptionKeyPair != null) {
+
+            // could throw JwtRuntimeException
+            SignedEncryptedJwt signedEncryptedJwt = jwtBuilderFactory.reconstruct(jwtString, SignedEncryptedJwt.class);
+            signedEncryptedJwt.decrypt(encryptionKeyPair.getPrivate());
+            signedJwt = signedEncryptedJwt;
+
+        } else {
+
+            // could throw JwtRuntimeException
+            signedJwt = jwtBuilderFactory.reconstruct(jwtString, SignedJwt.class);
+
+        }
+
+        if (!doesJwtAlgorithmMatch(signedJwt) || !signedJwt.verify(verificationHandler)) {
+            throw new JwtRuntimeException("Invalid JWT!");
+        }
+
+        JwtClaimsSet claimsSet = signedJwt.getClaimsSet();
+        Map<String, Object> token = new HashMap<String, Object>();
+        for (String key : claimsSet.keys()) {
+            Object value = claimsSet.getClaim(key);
+            if (REGISTERED_CLAIMS.contains(key) || value == null) {
+                continue;
+            }
+            if (OAuth2Constants.Custom.CLAIMS.equals(key)) {
+                token.put(key, Collections.singleton(value.toString()));
+            } else {
+                token.put(key, Utils.stringToSet(value.toString()));
+            }
+        }
+        token.put(ID, Collections.singleton(jwtString));
+        return new JsonValue(token);
+    }
+
+    private boolean doesJwtAlgorithmMatch(SignedJwt signedJwt) {
+        try {
+            return jwsAlgorithm.equals(signedJwt.getHeader().getAlgorithm());
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static void putIfNotNull(Map<String, Object> claims, String key, Object value) {
+        if (value != null) {
+            claims.put(key, value);
+        }
+    }
+}
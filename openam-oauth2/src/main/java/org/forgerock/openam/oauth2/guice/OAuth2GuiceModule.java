@@ -109,6 +109,7 @@ import org.forgerock.openam.oauth2.OpenAMOAuth2UrisFactory;
 import org.forgerock.openam.oauth2.OpenAMResourceOwnerAuthenticator;
 import org.forgerock.openam.oauth2.OpenAMResourceOwnerSessionValidator;
 import org.forgerock.openam.oauth2.OpenAMTokenStore;
+import org.forgerock.openam.oauth2.StatelessTokenBlacklist;
 import org.forgerock.openam.oauth2.resources.OpenAMResourceSetStore;
 import org.forgerock.openam.oauth2.resources.ResourceSetRegistrationEndpoint;
 import org.forgerock.openam.oauth2.resources.ResourceSetStoreFactory;
@@ -304,10 +305,10 @@ public class OAuth2GuiceModule extends AbstractModule {
             OpenIdConnectClientRegistrationStore clientRegistrationStore, RealmNormaliser realmNormaliser,
             SSOTokenManager ssoTokenManager, CookieExtractor cookieExtractor, OAuth2AuditLogger auditLogger,
             @Named(OAuth2Constants.DEBUG_LOG_NAME) Debug debug, SecureRandom secureRandom,
-            ClientAuthenticationFailureFactory failureFactory) {
+            ClientAuthenticationFailureFactory failureFactory, StatelessTokenBlacklist statelessTokenBlacklist) {
         return new RealmAgnosticTokenStore(oauthTokenStore, providerSettingsFactory, oauth2UrisFactory,
                 clientRegistrationStore, realmNormaliser, ssoTokenManager, cookieExtractor, auditLogger, debug,
-                secureRandom, failureFactory);
+                secureRandom, failureFactory, statelessTokenBlacklist);
     }
 
     @Inject
@@ -359,9 +360,11 @@ public class OAuth2GuiceModule extends AbstractModule {
                 OAuth2ProviderSettingsFactory providerSettingsFactory, OAuth2UrisFactory<RealmInfo> oauth2UrisFactory,
                 OpenIdConnectClientRegistrationStore clientRegistrationStore, RealmNormaliser realmNormaliser,
                 SSOTokenManager ssoTokenManager, CookieExtractor cookieExtractor, OAuth2AuditLogger auditLogger,
-                Debug debug, SecureRandom secureRandom, ClientAuthenticationFailureFactory failureFactory) {
+                Debug debug, SecureRandom secureRandom, ClientAuthenticationFailureFactory failureFactory,
+                StatelessTokenBlacklist statelessTokenBlacklist) {
             super(tokenStore, providerSettingsFactory, oauth2UrisFactory, clientRegistrationStore, realmNormaliser,
-                    ssoTokenManager, cookieExtractor, auditLogger, debug, secureRandom, failureFactory);
+                    ssoTokenManager, cookieExtractor, auditLogger, debug, secureRandom, failureFactory,
+                    statelessTokenBlacklist);
         }
 
         @Override
@@ -0,0 +1,195 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.oauth2;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.BDDMockito.*;
+
+import java.util.Locale;
+
+import org.forgerock.jaspi.modules.openid.resolvers.service.OpenIdResolverService;
+import org.forgerock.oauth2.core.OAuth2Constants;
+import org.forgerock.oauth2.core.OAuth2ProviderSettings;
+import org.forgerock.oauth2.core.OAuth2ProviderSettingsFactory;
+import org.forgerock.oauth2.core.OAuth2Request;
+import org.forgerock.oauth2.core.PEMDecoder;
+import org.forgerock.oauth2.core.exceptions.ClientAuthenticationFailureFactory;
+import org.forgerock.oauth2.core.exceptions.InvalidClientException;
+import org.forgerock.openam.utils.RealmNormaliser;
+import org.forgerock.openidconnect.OpenIdConnectClientRegistration;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.sun.identity.idm.AMIdentity;
+
+public class OpenAMClientRegistrationStoreTest {
+
+    private static final String REALM = "o=sub,ou=services,dc=openam,dc=forgerock,dc=org";
+    private static final String CLIENT_UID = "id=client,ou=agent," + REALM;
+
+    private RealmNormaliser realmNormaliser;
+    private OAuth2ProviderSettingsFactory providerSettingsFactory;
+    private OAuth2ProviderSettings providerSettings;
+    private OAuth2Request request;
+    private TestStore store;
+
+    @BeforeMethod
+    public void setup() throws Exception {
+        realmNormaliser = mock(RealmNormaliser.class);
+        providerSettingsFactory = mock(OAuth2ProviderSettingsFactory.class);
+        providerSettings = mock(OAuth2ProviderSettings.class);
+        request = mock(OAuth2Request.class);
+        given(realmNormaliser.normalise(REALM)).willReturn(REALM);
+        given(request.<String>getParameter(OAuth2Constants.Custom.REALM)).willReturn(REALM);
+        given(providerSettingsFactory.get(REALM)).willReturn(providerSettings);
+
+        store = new TestStore(2);
+    }
+
+    @Test
+    public void shouldOnlyLookUpClientOnce() throws Exception {
+        // When
+        OpenIdConnectClientRegistration first = store.get("client", request);
+        OpenIdConnectClientRegistration second = store.get("client", REALM, null);
+
+        // Then
+        assertThat(second).isSameAs(first);
+        assertThat(store.lookups).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldUseProviderSettingsOfClientRealm() throws Exception {
+        // When
+        store.get("client", request);
+
+        // Then
+        verify(providerSettingsFactory).get(REALM);
+        verify(providerSettingsFactory, never()).get(request);
+    }
+
+    @Test
+    public void shouldLookUpClientAgainAfterItsIdentityChanges() throws Exception {
+        // Given
+        OpenIdConnectClientRegistration first = store.get("client", request);
+
+        // When
+        store.clientChangeListener.identityChanged(CLIENT_UID);
+        OpenIdConnectClientRegistration second = store.get("client", request);
+
+        // Then
+        assertThat(second).isNotSameAs(first);
+        assertThat(store.lookups).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldOnlyEvictChangedClient() throws Exception {
+        // Given
+        store.get("client", request);
+        store.get("other", request);
+
+        // When
+        store.clientChangeListener.identityDeleted(CLIENT_UID);
+        store.get("other", request);
+
+        // Then
+        assertThat(store.lookups).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldIgnoreChangesToOtherIdentityTypes() throws Exception {
+        // Given
+        store.get("client", request);
+
+        // When
+        store.clientChangeListener.identityChanged("id=client,ou=user," + REALM);
+        store.get("client", request);
+
+        // Then
+        assertThat(store.lookups).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldLookUpEveryClientAgainWhenAllIdentitiesChange() throws Exception {
+        // Given
+        store.get("client", request);
+
+        // When
+        store.clientChangeListener.allIdentitiesChanged();
+        store.get("client", request);
+
+        // Then
+        assertThat(store.lookups).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldNotCacheRegistrationReadWhileClientChanges() throws Exception {
+        // Given
+        store.changeDuringLookup = true;
+        store.get("client", request);
+        store.changeDuringLookup = false;
+
+        // When
+        store.get("client", request);
+
+        // Then
+        assertThat(store.lookups).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldDiscardLeastRecentlyUsedRegistrationsBeyondCacheSize() throws Exception {
+        // Given
+        store.get("first", request);
+        store.get("second", request);
+        store.get("first", request);
+
+        // When
+        store.get("third", request);
+        store.get("first", request);
+        store.get("second", request);
+
+        // Then
+        assertThat(store.lookups).isEqualTo(4);
+    }
+
+    /**
+     * Stands in for the identity repository search, and maps realm DNs directly to cache keys.
+     */
+    private final class TestStore extends OpenAMClientRegistrationStore {
+
+        private int lookups;
+        private boolean changeDuringLookup;
+
+        private TestStore(int cacheSize) {
+            super(realmNormaliser, new PEMDecoder(), mock(OpenIdResolverService.class), providerSettingsFactory,
+                    mock(ClientAuthenticationFailureFactory.class), cacheSize);
+        }
+
+        @Override
+        AMIdentity getIdentity(String uName, String realm, OAuth2Request request) throws InvalidClientException {
+            lookups++;
+            if (changeDuringLookup) {
+                clientChangeListener.identityChanged("id=" + uName + ",ou=agent," + realm);
+            }
+            return mock(AMIdentity.class);
+        }
+
+        @Override
+        String realmKey(String realm) {
+            return realm.toLowerCase(Locale.ROOT);
+        }
+    }
+}
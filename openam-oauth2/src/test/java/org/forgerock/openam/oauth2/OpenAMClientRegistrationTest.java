@@ -11,7 +11,7 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2014-2015 ForgeRock AS.
+ * Copyright 2014-2016 ForgeRock AS.
  * Portions Copyrighted 2015 Nomura Research Institute, Ltd.
  */
 
@@ -23,6 +23,7 @@ import static org.forgerock.openam.utils.CollectionUtils.*;
 import static org.mockito.Mockito.*;
 
 import com.sun.identity.idm.AMIdentity;
+import java.net.URI;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -78,6 +79,20 @@ public class OpenAMClientRegistrationTest {
         assertThat(desc).isEqualTo("Desc3");
     }
 
+    @Test
+    public void shouldOnlyReadRedirectUrisOnce() throws Exception {
+        // Given
+        when(amIdentity.getAttribute(REDIRECT_URI)).thenReturn(asSet("[0]=https://client.example.com/callback"));
+
+        // When
+        clientRegistration.getRedirectUris();
+        Set<URI> redirectUris = clientRegistration.getRedirectUris();
+
+        // Then
+        assertThat(redirectUris).containsOnly(URI.create("https://client.example.com/callback"));
+        verify(amIdentity, times(1)).getAttribute(REDIRECT_URI);
+    }
+
     @DataProvider(name = "languageStrings")
     public Object[][] languageStrings() {
         return new Object[][] {
@@ -41,6 +41,7 @@ import org.forgerock.oauth2.core.DeviceCode;
 import org.forgerock.oauth2.core.OAuth2ProviderSettings;
 import org.forgerock.oauth2.core.OAuth2ProviderSettingsFactory;
 import org.forgerock.oauth2.core.OAuth2Request;
+import org.forgerock.oauth2.core.OAuth2Uris;
 import org.forgerock.oauth2.core.OAuth2UrisFactory;
 import org.forgerock.oauth2.core.ResourceOwner;
 import org.forgerock.oauth2.core.exceptions.ClientAuthenticationFailureFactory;
@@ -77,6 +78,7 @@ public class OpenAMTokenStoreTest {
     private Debug debug;
     private ClientAuthenticationFailureFactory failureFactory;
     private RestletOAuth2RequestFactory oAuth2RequestFactory;
+    private StatelessTokenBlacklist statelessTokenBlacklist;
 
     @BeforeMethod
     public void setUp() {
@@ -92,6 +94,7 @@ public class OpenAMTokenStoreTest {
         auditLogger = mock(OAuth2AuditLogger.class);
         debug = mock(Debug.class);
         failureFactory = mock(ClientAuthenticationFailureFactory.class);
+        statelessTokenBlacklist = mock(StatelessTokenBlacklist.class);
 
         oAuth2RequestFactory = new RestletOAuth2RequestFactory(new JacksonRepresentationFactory(new ObjectMapper()));
 
@@ -104,7 +107,7 @@ public class OpenAMTokenStoreTest {
 
         openAMtokenStore = new OpenAMTokenStore(tokenStore, providerSettingsFactory, oAuth2UrisFactory,
                 clientRegistrationStore, realmNormaliser, ssoTokenManager, cookieExtractor, auditLogger, debug,
-                new SecureRandom(), failureFactory);
+                new SecureRandom(), failureFactory, statelessTokenBlacklist);
     }
 
     @Test
@@ -197,7 +200,7 @@ public class OpenAMTokenStoreTest {
         //Given
         OpenAMTokenStore realmAgnosticTokenStore = new OAuth2GuiceModule.RealmAgnosticTokenStore(tokenStore,
                 providerSettingsFactory, oAuth2UrisFactory, clientRegistrationStore, realmNormaliser, ssoTokenManager,
-                cookieExtractor, auditLogger, debug, new SecureRandom(), failureFactory);
+                cookieExtractor, auditLogger, debug, new SecureRandom(), failureFactory, statelessTokenBlacklist);
         JsonValue token = json(object(
                 field("tokenName", Collections.singleton("access_token")),
                 field("realm", Collections.singleton("/otherrealm"))));
@@ -216,6 +219,91 @@ public class OpenAMTokenStoreTest {
         assertThat(request.getToken(AccessToken.class)).isSameAs(accessToken);
     }
 
+    @Test
+    public void shouldReadStatelessAccessTokenWithoutCts() throws Exception {
+        //Given
+        givenStatelessTokens("/testrealm", "HS256", "secret");
+        AccessToken created = openAMtokenStore.createAccessToken("client_credentials", "Bearer", null,
+                "RESOURCE_OWNER", "CLIENT_ID", null, asSet("one", "two"), null, null, null, requestInRealm("/testrealm"));
+        OAuth2Request request = requestInRealm("/testrealm");
+
+        //When
+        AccessToken accessToken = openAMtokenStore.readAccessToken(request, created.getTokenId());
+
+        //Then
+        assertThat(created.getTokenId()).matches("[\\w-]+\\.[\\w-]+\\.[\\w-]+");
+        assertThat(accessToken.getTokenId()).isEqualTo(created.getTokenId());
+        assertThat(accessToken.getResourceOwnerId()).isEqualTo("RESOURCE_OWNER");
+        assertThat(accessToken.getClientId()).isEqualTo("CLIENT_ID");
+        assertThat(accessToken.getScope()).containsOnly("one", "two");
+        assertThat(accessToken.getExpiryTime()).isEqualTo(created.getExpiryTime());
+        assertThat(request.getToken(AccessToken.class)).isSameAs(accessToken);
+        verify(tokenStore, never()).create(any(JsonValue.class));
+        verify(tokenStore, never()).read(anyString());
+    }
+
+    @Test(expectedExceptions = InvalidGrantException.class)
+    public void shouldNotReadStatelessAccessTokenWithInvalidSignature() throws Exception {
+        //Given
+        OAuth2ProviderSettings providerSettings = givenStatelessTokens("/testrealm", "HS256", "secret");
+        AccessToken created = openAMtokenStore.createAccessToken("client_credentials", "Bearer", null,
+                "RESOURCE_OWNER", "CLIENT_ID", null, asSet("one"), null, null, null, requestInRealm("/testrealm"));
+        given(providerSettings.getTokenHmacSharedSecret()).willReturn("other secret");
+
+        //When
+        openAMtokenStore.readAccessToken(requestInRealm("/testrealm"), created.getTokenId());
+    }
+
+    @Test(expectedExceptions = InvalidGrantException.class)
+    public void shouldNotReadRevokedStatelessAccessToken() throws Exception {
+        //Given
+        givenStatelessTokens("/testrealm", "HS256", "secret");
+        AccessToken created = openAMtokenStore.createAccessToken("client_credentials", "Bearer", null,
+                "RESOURCE_OWNER", "CLIENT_ID", null, asSet("one"), null, null, null, requestInRealm("/testrealm"));
+        given(statelessTokenBlacklist.isBlacklisted(anyString())).willReturn(true);
+
+        //When
+        openAMtokenStore.readAccessToken(requestInRealm("/testrealm"), created.getTokenId());
+    }
+
+    @Test
+    public void shouldBlacklistDeletedStatelessAccessToken() throws Exception {
+        //Given
+        givenStatelessTokens("/testrealm", "HS256", "secret");
+        OpenAMAccessToken created = (OpenAMAccessToken) openAMtokenStore.createAccessToken("client_credentials",
+                "Bearer", null, "RESOURCE_OWNER", "CLIENT_ID", null, asSet("one"), null, null, null,
+                requestInRealm("/testrealm"));
+
+        //When
+        openAMtokenStore.deleteAccessToken(created.getTokenId());
+
+        //Then
+        verify(statelessTokenBlacklist).blacklist(created.getJwtId(), created.getExpiryTime());
+        verify(tokenStore, never()).delete(anyString());
+    }
+
+    private OAuth2ProviderSettings givenStatelessTokens(String realm, String algorithm, String secret)
+            throws Exception {
+        OAuth2ProviderSettings providerSettings = mock(OAuth2ProviderSettings.class);
+        given(providerSettingsFactory.get(any(OAuth2Request.class))).willReturn(providerSettings);
+        given(providerSettingsFactory.get(realm)).willReturn(providerSettings);
+        given(providerSettings.isStatelessTokensEnabled()).willReturn(true);
+        given(providerSettings.getTokenSigningAlgorithm()).willReturn(algorithm);
+        given(providerSettings.getTokenHmacSharedSecret()).willReturn(secret);
+        given(providerSettings.getAccessTokenLifetime()).willReturn(3600000L);
+        OAuth2Uris uris = mock(OAuth2Uris.class);
+        given(oAuth2UrisFactory.get(any(OAuth2Request.class))).willReturn(uris);
+        given(uris.getIssuer()).willReturn("http://openam.example.com/openam/oauth2" + realm);
+        given(realmNormaliser.normalise(realm)).willReturn(realm);
+        return providerSettings;
+    }
+
+    private OAuth2Request requestInRealm(String realm) {
+        Request request = mock(Request.class);
+        given(request.getAttributes()).willReturn(new ConcurrentHashMap<>(singletonMap("realm", (Object) realm)));
+        return oAuth2RequestFactory.create(request);
+    }
+
     @Test
     public void shouldCreateDeviceCode() throws Exception {
         // Given
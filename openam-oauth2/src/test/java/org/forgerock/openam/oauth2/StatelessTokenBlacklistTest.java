@@ -0,0 +1,183 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.oauth2;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.forgerock.oauth2.core.exceptions.ServerException;
+import org.forgerock.openam.cts.CTSPersistentStore;
+import org.forgerock.openam.cts.api.filter.TokenFilter;
+import org.forgerock.openam.cts.api.tokens.Token;
+import org.forgerock.openam.cts.exceptions.CoreTokenException;
+import org.forgerock.openam.shared.concurrency.ThreadMonitor;
+import org.forgerock.openam.sm.datalayer.api.query.PartialToken;
+import org.forgerock.openam.tokens.CoreTokenField;
+import org.forgerock.openam.tokens.TokenType;
+import org.mockito.ArgumentCaptor;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.sun.identity.shared.debug.Debug;
+
+public class StatelessTokenBlacklistTest {
+
+    private static final long POLL_INTERVAL = 1000L;
+    private static final long CLOCK_SKEW = 5000L;
+    private static final Pattern QUERY_TIME = Pattern.compile("time=(\\d+),");
+
+    private CTSPersistentStore cts;
+    private ScheduledExecutorService scheduler;
+    private ThreadMonitor threadMonitor;
+    private StatelessTokenBlacklist blacklist;
+
+    @BeforeMethod
+    public void setup() {
+        cts = mock(CTSPersistentStore.class);
+        scheduler = mock(ScheduledExecutorService.class);
+        threadMonitor = mock(ThreadMonitor.class);
+        blacklist = new StatelessTokenBlacklist(cts, scheduler, threadMonitor, mock(Debug.class), POLL_INTERVAL,
+                CLOCK_SKEW);
+    }
+
+    @Test
+    public void shouldStoreRevokedTokensInCts() throws Exception {
+        // Given
+        long expiryTime = System.currentTimeMillis() + 60000L;
+
+        // When
+        blacklist.blacklist("jwt-id", expiryTime);
+
+        // Then
+        ArgumentCaptor<Token> token = ArgumentCaptor.forClass(Token.class);
+        verify(cts).create(token.capture());
+        assertThat(token.getValue().getTokenId()).isEqualTo("jwt-id");
+        assertThat(token.getValue().getType()).isEqualTo(TokenType.OAUTH2_BLACKLIST);
+        assertThat(token.getValue().getExpiryTimestamp().getTimeInMillis()).isEqualTo(expiryTime);
+        assertThat(blacklist.isBlacklisted("jwt-id")).isTrue();
+        assertThat(blacklist.isBlacklisted("other-jwt-id")).isFalse();
+    }
+
+    @Test(expectedExceptions = ServerException.class)
+    public void shouldFailRevocationIfCtsFails() throws Exception {
+        // Given
+        willThrow(new CoreTokenException("test")).given(cts).create(any(Token.class));
+
+        // When
+        blacklist.blacklist("jwt-id", System.currentTimeMillis() + 60000L);
+    }
+
+    @Test
+    public void shouldLoadTokensRevokedOnOtherServersAndStartPolling() throws Exception {
+        // Given
+        given(cts.attributeQuery(any(TokenFilter.class)))
+                .willReturn(revoked("jwt-id", System.currentTimeMillis() + 60000L));
+
+        // When
+        boolean result = blacklist.isBlacklisted("jwt-id");
+
+        // Then
+        assertThat(result).isTrue();
+        blacklist.isBlacklisted("jwt-id");
+        verify(threadMonitor).watchScheduledThread(eq(scheduler), any(Runnable.class), eq(POLL_INTERVAL),
+                eq(POLL_INTERVAL), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void shouldDropExpiredTokens() throws Exception {
+        // Given
+        blacklist.blacklist("jwt-id", System.currentTimeMillis() - 1000L);
+
+        // When
+        blacklist.poll();
+
+        // Then
+        assertThat(blacklist.isBlacklisted("jwt-id")).isFalse();
+    }
+
+    @Test
+    public void shouldQueryFromLastPollLessClockSkew() throws Exception {
+        // Given
+        long before = System.currentTimeMillis();
+        blacklist.poll();
+        long after = System.currentTimeMillis();
+
+        // When
+        blacklist.poll();
+
+        // Then
+        List<TokenFilter> filters = queries(2);
+        assertThat(queriedFrom(filters.get(0))).isEqualTo(0L);
+        assertThat(queriedFrom(filters.get(1))).isBetween(before - CLOCK_SKEW, after - CLOCK_SKEW);
+    }
+
+    @Test
+    public void shouldRetryTheSameWindowAfterAFailedPoll() throws Exception {
+        // Given
+        blacklist.poll();
+        given(cts.attributeQuery(any(TokenFilter.class))).willThrow(new CoreTokenException("test"));
+        blacklist.poll();
+        given(cts.attributeQuery(any(TokenFilter.class)))
+                .willReturn(revoked("jwt-id", System.currentTimeMillis() + 60000L));
+
+        // When
+        blacklist.poll();
+
+        // Then
+        List<TokenFilter> filters = queries(3);
+        assertThat(queriedFrom(filters.get(2))).isEqualTo(queriedFrom(filters.get(1)));
+        assertThat(blacklist.isBlacklisted("jwt-id")).isTrue();
+    }
+
+    private List<TokenFilter> queries(int count) throws CoreTokenException {
+        ArgumentCaptor<TokenFilter> filters = ArgumentCaptor.forClass(TokenFilter.class);
+        verify(cts, times(count)).attributeQuery(filters.capture());
+        return filters.getAllValues();
+    }
+
+    private long queriedFrom(TokenFilter filter) {
+        Matcher matcher = QUERY_TIME.matcher(filter.getQuery().toString());
+        assertThat(matcher.find()).isTrue();
+        return Long.parseLong(matcher.group(1));
+    }
+
+    private Collection<PartialToken> revoked(String jwtId, long expiryTime) {
+        Calendar expiry = Calendar.getInstance();
+        expiry.setTimeInMillis(expiryTime);
+        Map<CoreTokenField, Object> fields = new HashMap<CoreTokenField, Object>();
+        fields.put(CoreTokenField.TOKEN_ID, jwtId);
+        fields.put(CoreTokenField.EXPIRY_DATE, expiry);
+        return Collections.singleton(new PartialToken(fields));
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.oauth2;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.forgerock.oauth2.core.OAuth2Constants.CoreTokenParams.*;
+
+import java.nio.charset.Charset;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.jose.builders.JwtBuilderFactory;
+import org.forgerock.json.jose.exceptions.JwtRuntimeException;
+import org.forgerock.json.jose.jws.JwsAlgorithm;
+import org.forgerock.json.jose.jws.SignedJwt;
+import org.forgerock.json.jose.jws.SigningManager;
+import org.testng.annotations.Test;
+
+public class StatelessTokenMapperTest {
+
+    private static final String ISSUER = "http://openam.example.com/openam/oauth2";
+    private static final byte[] SECRET = "SHARED_SECRET".getBytes(Charset.forName("UTF-8"));
+
+    @Test
+    public void canRoundtripSignedAccessToken() {
+        // Given
+        StatelessTokenMapper mapper = hmacMapper(SECRET);
+
+        // When
+        String jwt = mapper.asJwt(newAccessToken(), ISSUER);
+        JsonValue token = mapper.fromJwt(jwt);
+
+        // Then
+        assertThat(StatelessTokenMapper.isStatelessToken(jwt)).isTrue();
+        assertThat(token.get(ID).asSet(String.class)).containsOnly(jwt);
+        assertThat(token.get(SCOPE).asSet(String.class)).containsOnly("openid", "profile");
+        assertThat(token.get(USERNAME).asSet(String.class)).containsOnly("demo");
+        assertThat(token.get(CLIENT_ID).asSet(String.class)).containsOnly("myClient");
+        assertThat(token.get(REALM).asSet(String.class)).containsOnly("/");
+        assertThat(token.get(EXPIRE_TIME).asSet(String.class)).containsOnly("1500000000000");
+        assertThat(token.isDefined("iss")).isFalse();
+        assertThat(token.isDefined("exp")).isFalse();
+    }
+
+    @Test
+    public void canRoundtripSignedEncryptedAccessToken() throws Exception {
+        // Given
+        KeyPair keyPair = newKeyPair();
+        StatelessTokenMapper mapper = new StatelessTokenMapper(JwsAlgorithm.RS256,
+                new SigningManager().newRsaSigningHandler(keyPair.getPrivate()),
+                new SigningManager().newRsaSigningHandler(keyPair.getPublic()), keyPair);
+
+        // When
+        String jwt = mapper.asJwt(newAccessToken(), ISSUER);
+        JsonValue token = mapper.fromJwt(jwt);
+
+        // Then
+        assertThat(StatelessTokenMapper.isStatelessToken(jwt)).isTrue();
+        assertThat(StatelessTokenMapper.getRealm(jwt)).isNull();
+        assertThat(token.get(SCOPE).asSet(String.class)).containsOnly("openid", "profile");
+        assertThat(token.get(USERNAME).asSet(String.class)).containsOnly("demo");
+    }
+
+    @Test
+    public void shouldAddRegisteredClaims() {
+        // Given
+        StatelessTokenMapper mapper = hmacMapper(SECRET);
+
+        // When
+        SignedJwt jwt = new JwtBuilderFactory().reconstruct(mapper.asJwt(newAccessToken(), ISSUER), SignedJwt.class);
+
+        // Then
+        assertThat(jwt.getClaimsSet().getClaim("iss")).isEqualTo(ISSUER);
+        assertThat(jwt.getClaimsSet().getClaim("sub")).isEqualTo("demo");
+        assertThat(jwt.getClaimsSet().getClaim("aud").toString()).contains("myClient");
+        assertThat(jwt.getClaimsSet().getClaim("exp")).isNotNull();
+    }
+
+    @Test
+    public void shouldReadRealmWithoutVerifyingSignature() {
+        // Given
+        String jwt = hmacMapper(SECRET).asJwt(newAccessToken(), ISSUER);
+
+        // When
+        String realm = StatelessTokenMapper.getRealm(jwt);
+
+        // Then
+        assertThat(realm).isEqualTo("/");
+    }
+
+    @Test(expectedExceptions = JwtRuntimeException.class)
+    public void shouldRejectTokenWithInvalidSignature() {
+        // Given
+        String jwt = hmacMapper(SECRET).asJwt(newAccessToken(), ISSUER);
+
+        // When
+        hmacMapper("OTHER_SECRET".getBytes(Charset.forName("UTF-8"))).fromJwt(jwt);
+    }
+
+    @Test(expectedExceptions = JwtRuntimeException.class)
+    public void shouldRejectTokenSignedWithDifferentAlgorithm() {
+        // Given
+        String jwt = hmacMapper(SECRET).asJwt(newAccessToken(), ISSUER);
+        StatelessTokenMapper mapper = new StatelessTokenMapper(JwsAlgorithm.HS512,
+                new SigningManager().newHmacSigningHandler(SECRET), new SigningManager().newHmacSigningHandler(SECRET),
+                null);
+
+        // When
+        mapper.fromJwt(jwt);
+    }
+
+    @Test
+    public void shouldOnlyTreatCompactJwtsAsStatelessTokens() {
+        assertThat(StatelessTokenMapper.isStatelessToken(null)).isFalse();
+        assertThat(StatelessTokenMapper.isStatelessToken("f7a3b1c0-5d1e-4ef6-a2a1-9c7e35f7c1d4")).isFalse();
+        assertThat(StatelessTokenMapper.isStatelessToken("a.b")).isFalse();
+        assertThat(StatelessTokenMapper.isStatelessToken("a.b.c")).isTrue();
+        assertThat(StatelessTokenMapper.isStatelessToken("a.b.c.d.e")).isTrue();
+    }
+
+    private StatelessTokenMapper hmacMapper(byte[] secret) {
+        return new StatelessTokenMapper(JwsAlgorithm.HS256, new SigningManager().newHmacSigningHandler(secret),
+                new SigningManager().newHmacSigningHandler(secret), null);
+    }
+
+    private JsonValue newAccessToken() {
+        Map<String, Object> token = new HashMap<String, Object>();
+        token.put(ID, Collections.singleton("f7a3b1c0-5d1e-4ef6-a2a1-9c7e35f7c1d4"));
+        token.put(SCOPE, new LinkedHashSet<String>(Arrays.asList("openid", "profile")));
+        token.put(USERNAME, Collections.singleton("demo"));
+        token.put(CLIENT_ID, Collections.singleton("myClient"));
+        token.put(REALM, Collections.singleton("/"));
+        token.put(EXPIRE_TIME, Collections.singleton("1500000000000"));
+        return new JsonValue(token);
+    }
+
+    private KeyPair newKeyPair() throws Exception {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(2048);
+        return keyPairGenerator.generateKeyPair();
+    }
+}
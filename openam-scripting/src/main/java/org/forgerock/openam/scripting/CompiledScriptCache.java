@@ -0,0 +1,243 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.scripting;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+
+import org.forgerock.util.Reject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.iplanet.am.util.ConcurrentCache;
+
+/**
+ * Caches compiled scripts so that each script is parsed and compiled by its script engine once, rather than on every
+ * evaluation.
+ *
+ * Compiled scripts are keyed by scripting language and a SHA-256 digest of the script source, so an edited script
+ * always misses the cache and is compiled afresh. The cache is cleared when the script engine configuration changes,
+ * and when scripts are changed in the scripting service, to release compiled scripts which will no longer be used.
+ *
+ * Compile and evaluation times are recorded per script name and can be read with {@link #getMetrics()}.
+ *
+ * @since 13.0.0
+ */
+public final class CompiledScriptCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CompiledScriptCache.class);
+
+    /**
+     * Default maximum number of compiled scripts held in the cache.
+     */
+    public static final int DEFAULT_SIZE = 1000;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final ConcurrentCache compiledScripts;
+    private final ConcurrentMap<String, ScriptMetrics> metrics = new ConcurrentHashMap<String, ScriptMetrics>();
+
+    /**
+     * Constructs a cache holding at most the given number of compiled scripts.
+     *
+     * @param maxSize the maximum number of compiled scripts to hold. Must be positive.
+     */
+    public CompiledScriptCache(int maxSize) {
+        Reject.ifTrue(maxSize < 1, "Cache size must be positive");
+        this.compiledScripts = new ConcurrentCache(maxSize);
+    }
+
+    /**
+     * Returns the compiled form of the given script, compiling it with the given engine if it is not already cached.
+     *
+     * @param script the script to compile. May not be null.
+     * @param engine the engine to compile the script with. May not be null.
+     * @return the compiled script, or null if the engine does not support compilation.
+     * @throws ScriptException if the script cannot be compiled.
+     */
+    public CompiledScript getCompiledScript(ScriptObject script, ScriptEngine engine) throws ScriptException {
+        Reject.ifNull(script, engine);
+        if (!(engine instanceof Compilable)) {
+            return null;
+        }
+
+        CacheKey key = new CacheKey(script.getLanguage(), digest(script.getScript()));
+        CompiledScript compiled = (CompiledScript) compiledScripts.get(key);
+        if (compiled == null) {
+            long start = System.nanoTime();
+            compiled = ((Compilable) engine).compile(script.getScript());
+            long compileTime = System.nanoTime() - start;
+            metricsFor(script).compiled(compileTime);
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Compiled script {} in {}us", script.getName(), compileTime / 1000);
+            }
+            compiledScripts.put(key, compiled);
+        }
+        return compiled;
+    }
+
+    /**
+     * Records the time taken to evaluate a script.
+     *
+     * @param script the script which was evaluated. May not be null.
+     * @param evaluationTime the evaluation time in nanoseconds.
+     */
+    public void recordEvaluation(ScriptObject script, long evaluationTime) {
+        metricsFor(script).evaluated(evaluationTime);
+    }
+
+    /**
+     * Removes all compiled scripts from the cache. Metrics are retained.
+     */
+    public void clear() {
+        compiledScripts.clear();
+    }
+
+    /**
+     * Returns the number of compiled scripts currently held.
+     *
+     * @return the number of cached scripts.
+     */
+    public int size() {
+        return compiledScripts.size();
+    }
+
+    /**
+     * Returns a snapshot of the compile and evaluation metrics, keyed by script name.
+     *
+     * @return an unmodifiable map of script name to metrics.
+     */
+    public Map<String, ScriptMetrics> getMetrics() {
+        return Collections.unmodifiableMap(new HashMap<String, ScriptMetrics>(metrics));
+    }
+
+    private ScriptMetrics metricsFor(ScriptObject script) {
+        ScriptMetrics scriptMetrics = metrics.get(script.getName());
+        if (scriptMetrics == null) {
+            ScriptMetrics created = new ScriptMetrics();
+            scriptMetrics = metrics.putIfAbsent(script.getName(), created);
+            if (scriptMetrics == null) {
+                scriptMetrics = created;
+            }
+        }
+        return scriptMetrics;
+    }
+
+    private static String digest(String source) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(source.getBytes(StandardCharsets.UTF_8));
+            char[] hex = new char[digest.length * 2];
+            for (int i = 0; i < digest.length; i++) {
+                hex[i * 2] = HEX[(digest[i] >> 4) & 0xf];
+                hex[i * 2 + 1] = HEX[digest[i] & 0xf];
+            }
+            return new String(hex);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Cache key combining the scripting language and the digest of the script source.
+     */
+    private static final class CacheKey {
+        private final ScriptingLanguage language;
+        private final String digest;
+
+        private CacheKey(ScriptingLanguage language, String digest) {
+            this.language = language;
+            this.digest = digest;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey that = (CacheKey) o;
+            return language.equals(that.language) && digest.equals(that.digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * language.hashCode() + digest.hashCode();
+        }
+    }
+
+    /**
+     * Compile and evaluation counts and cumulative times for a single script.
+     */
+    public static final class ScriptMetrics {
+        private final AtomicLong compileCount = new AtomicLong();
+        private final AtomicLong compileTime = new AtomicLong();
+        private final AtomicLong evaluationCount = new AtomicLong();
+        private final AtomicLong evaluationTime = new AtomicLong();
+
+        private void compiled(long time) {
+            compileCount.incrementAndGet();
+            compileTime.addAndGet(time);
+        }
+
+        private void evaluated(long time) {
+            evaluationCount.incrementAndGet();
+            evaluationTime.addAndGet(time);
+        }
+
+        /**
+         * @return the number of times the script has been compiled.
+         */
+        public long getCompileCount() {
+            return compileCount.get();
+        }
+
+        /**
+         * @return the total time spent compiling the script, in nanoseconds.
+         */
+        public long getCompileTime() {
+            return compileTime.get();
+        }
+
+        /**
+         * @return the number of times the script has been evaluated.
+         */
+        public long getEvaluationCount() {
+            return evaluationCount.get();
+        }
+
+        /**
+         * @return the total time spent evaluating the script, in nanoseconds.
+         */
+        public long getEvaluationTime() {
+            return evaluationTime.get();
+        }
+    }
+}
@@ -58,6 +58,7 @@ public final class ScriptConstants {
     public static final String BLACK_LIST = "blackList";
     public static final String USE_SECURITY_MANAGER = "useSecurityManager";
     public static final String ENGINE_CONFIGURATION = "EngineConfiguration";
+    public static final String COMPILED_SCRIPT_CACHE_SIZE = "org.forgerock.openam.scripting.compiledscript.cache.size";
 
     public static final int DEFAULT_CORE_THREADS = 10;
     public static final int DEFAULT_MAX_THREADS = 10;
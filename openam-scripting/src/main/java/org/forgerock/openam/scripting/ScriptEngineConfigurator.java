@@ -101,10 +101,16 @@ public class ScriptEngineConfigurator implements ServiceListener {
         // Ignore
     }
 
+    /**
+     * Releases compiled scripts when scripts are changed in a realm. Edited scripts would miss the compiled script
+     * caches anyway, so this only frees the compiled forms which will no longer be used.
+     */
     @Override
     public void organizationConfigChanged(String serviceName, String version, String orgName, String groupName,
                                           String serviceComponent, int type) {
-        // Ignore
+        if (SERVICE_NAME.equals(serviceName)) {
+            clearCompiledScripts();
+        }
     }
 
     /**
@@ -127,10 +133,19 @@ public class ScriptEngineConfigurator implements ServiceListener {
             } catch (IllegalArgumentException e) {
                 logger.error("Script Context does not exist: " + components[0], e);
             }
+        } else {
+            // Global script configurations have changed
+            clearCompiledScripts();
         }
 
     }
 
+    private void clearCompiledScripts() {
+        for (ScriptContext context : new ScriptContext[] {POLICY_CONDITION, AUTHENTICATION_SERVER_SIDE, OIDC_CLAIMS}) {
+            getScriptEngineManager(context).getCompiledScriptCache().clear();
+        }
+    }
+
     private StandardScriptEngineManager getScriptEngineManager(ScriptContext context) {
         return InjectorHolder.getInstance(Key.get(StandardScriptEngineManager.class, Names.named(context.name())));
     }
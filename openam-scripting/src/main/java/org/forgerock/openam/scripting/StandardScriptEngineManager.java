@@ -16,6 +16,7 @@
 
 package org.forgerock.openam.scripting;
 
+import com.sun.identity.shared.configuration.SystemPropertiesManager;
 import org.forgerock.openam.scripting.factories.GroovyEngineFactory;
 import org.forgerock.openam.scripting.factories.RhinoScriptEngineFactory;
 import org.forgerock.openam.scripting.sandbox.GroovySandboxValueFilter;
@@ -66,6 +67,13 @@ public final class StandardScriptEngineManager extends ScriptEngineManager {
     private final Set<ConfigurationListener> listeners
             = Collections.synchronizedSet(new HashSet<ConfigurationListener>());
 
+    /**
+     * Compiled forms of the scripts evaluated with this manager's engines.
+     */
+    private final CompiledScriptCache compiledScriptCache = new CompiledScriptCache(Math.max(1,
+            SystemPropertiesManager.getAsInt(ScriptConstants.COMPILED_SCRIPT_CACHE_SIZE,
+                    CompiledScriptCache.DEFAULT_SIZE)));
+
     /**
      * Constructs and configures the engine manager.
      */
@@ -106,6 +114,8 @@ public final class StandardScriptEngineManager extends ScriptEngineManager {
             // Update the configuration within the synchronized block to ensure that the latest configuration always
             // reflects the last configuration that was broadcast to listeners.
             this.configuration = newConfiguration;
+            // Scripts compiled under the previous configuration must not outlive it
+            compiledScriptCache.clear();
 
             for (final ConfigurationListener listener : listeners) {
                 try {
@@ -128,6 +138,16 @@ public final class StandardScriptEngineManager extends ScriptEngineManager {
         return configuration;
     }
 
+    /**
+     * Get the cache of compiled scripts for the engines created by this manager. The cache is cleared whenever the
+     * configuration changes.
+     *
+     * @return the compiled script cache. Never null.
+     */
+    public CompiledScriptCache getCompiledScriptCache() {
+        return compiledScriptCache;
+    }
+
     /**
      * Adds an observer to be called whenever the current script engine configuration changes. The listener will be
      * called immediately after the configuration is updated and is guaranteed to be passed a consistent (immutable)
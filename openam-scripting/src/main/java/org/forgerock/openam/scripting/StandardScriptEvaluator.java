@@ -11,7 +11,7 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2014-2015 ForgeRock AS.
+ * Copyright 2014-2016 ForgeRock AS.
  */
 
 package org.forgerock.openam.scripting;
@@ -23,6 +23,7 @@ import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.script.Bindings;
+import javax.script.CompiledScript;
 import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
 import javax.script.ScriptException;
@@ -40,6 +41,8 @@ import javax.script.SimpleScriptContext;
  * us sending its thread an interrupt signal, while JavaScript has its own timer which is checked on
  * each processed instruction.
  *
+ * Scripts are compiled once and reused through the script engine manager's {@link CompiledScriptCache}.
+ *
  * @since 12.0.0
  */
 public class StandardScriptEvaluator implements ScriptEvaluator {
@@ -90,8 +93,18 @@ public class StandardScriptEvaluator implements ScriptEvaluator {
         final ScriptEngine engine = getScriptEngineFor(script);
         final Bindings variableBindings = mergeBindings(script.getBindings(), bindings);
         final ScriptContext context = buildScriptContext(variableBindings);
+        final CompiledScriptCache cache = scriptEngineManager.getCompiledScriptCache();
+        final CompiledScript compiledScript = cache.getCompiledScript(script, engine);
 
-        return (T) engine.eval(script.getScript(), context);
+        final long start = System.nanoTime();
+        try {
+            if (compiledScript != null) {
+                return (T) compiledScript.eval(context);
+            }
+            return (T) engine.eval(script.getScript(), context);
+        } finally {
+            cache.recordEvaluation(script, System.nanoTime() - start);
+        }
     }
 
     /**
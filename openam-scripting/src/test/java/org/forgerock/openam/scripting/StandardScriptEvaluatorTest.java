@@ -11,7 +11,7 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2014 ForgeRock AS.
+ * Copyright 2014-2016 ForgeRock AS.
  */
 
 package org.forgerock.openam.scripting;
@@ -263,6 +263,38 @@ public class StandardScriptEvaluatorTest {
         // Then - sandbox should abort script
     }
 
+    @Test
+    public void shouldReuseCompiledScripts() throws Exception {
+        // Given
+        ScriptObject script = getGroovyScript("3 * 4");
+        CompiledScriptCache cache = scriptEngineManager.getCompiledScriptCache();
+
+        // When
+        testEvaluator.evaluateScript(script, null);
+        testEvaluator.evaluateScript(getGroovyScript("3 * 4"), null);
+
+        // Then
+        assertThat(cache.size()).isEqualTo(1);
+        CompiledScriptCache.ScriptMetrics metrics = cache.getMetrics().get(script.getName());
+        assertThat(metrics.getCompileCount()).isEqualTo(1);
+        assertThat(metrics.getEvaluationCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldDiscardCompiledScriptsWhenConfigurationChanges() throws Exception {
+        // Given
+        testEvaluator.evaluateScript(getJavascript("1 + 1"), null);
+
+        // When
+        scriptEngineManager.setConfiguration(ScriptEngineConfiguration.builder()
+                .withWhiteList(CONFIGURATION.getClassWhiteList())
+                .withBlackList(CONFIGURATION.getClassBlackList())
+                .build());
+
+        // Then
+        assertThat(scriptEngineManager.getCompiledScriptCache().size()).isEqualTo(0);
+    }
+
     @Test(expectedExceptions = ScriptException.class,
             expectedExceptionsMessageRegExp = ".*Access to Java class .*? is prohibited.*")
     public void shouldForbidChangingIntegerCacheFromGroovy() throws Exception {
@@ -24,7 +24,7 @@
  *
  * $Id: Cache.java,v 1.4 2008/06/27 20:56:21 arviranga Exp $
  *
- * Portions Copyrighted 2011-2015 ForgeRock AS.
+ * Portions Copyrighted 2011-2016 ForgeRock AS.
  */
 package com.iplanet.am.util;
 
@@ -39,6 +39,9 @@ import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
 
+import com.sun.identity.shared.Constants;
+import com.sun.identity.shared.configuration.SystemPropertiesManager;
+
 // IMPORTANT NOTE: The cache has be implemented by modifing the existing
 // java.util.Hashtable code. Its has added functionality of a built in
 // replacement strategy which in this case is based on Least Recently Used
@@ -226,6 +229,25 @@ public class Cache extends Dictionary implements Map {
         lruTracker = new LRUList();
     }
 
+    /**
+     * Creates a new cache holding at most <code>capacity</code> entries. If
+     * the <code>org.forgerock.openam.cache.concurrent.enabled</code> property
+     * is <code>true</code> a segmented {@link ConcurrentCache} is returned,
+     * otherwise a plain <code>Cache</code> is returned.
+     *
+     * @param capacity
+     *            the maximum number of entries in the cache.
+     * @return a new cache.
+     */
+    public static Cache newInstance(int capacity) {
+        if (SystemPropertiesManager.getAsBoolean(Constants.CONCURRENT_CACHE_ENABLED, false)) {
+            int concurrencyLevel = SystemPropertiesManager.getAsInt(Constants.CONCURRENT_CACHE_CONCURRENCY_LEVEL,
+                    ConcurrentCache.DEFAULT_CONCURRENCY_LEVEL);
+            return new ConcurrentCache(Math.max(capacity, 1), 0, Math.max(concurrencyLevel, 1));
+        }
+        return new Cache(capacity);
+    }
+
     /**
      * Returns the number of keys in this Cache.
      * 
@@ -0,0 +1,685 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.iplanet.am.util;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A segmented, bounded LRU cache which can be used wherever a {@link Cache} is expected.
+ * <p>
+ * The key space is split into a power of two number of segments, each guarded by its own lock and each holding an
+ * access ordered {@link LinkedHashMap}. Threads working on keys in different segments never contend with each other,
+ * unlike {@link Cache} which serialises every operation on a single monitor. The maximum size is divided between the
+ * segments so the total number of entries never exceeds the configured maximum; when a segment is full its least
+ * recently used entry is evicted.
+ * <p>
+ * Entries may optionally expire a fixed time after they were last written. Expired entries are treated as absent and
+ * are purged lazily when they are next encountered.
+ * <p>
+ * The collection views and enumerations returned by this class are snapshots taken one segment at a time. They never
+ * throw {@link java.util.ConcurrentModificationException}, and removal through a view iterator removes the entry from
+ * the cache.
+ * <p>
+ * As with {@link Cache}, neither keys nor values may be {@code null}.
+ */
+public class ConcurrentCache extends Cache {
+
+    /**
+     * Default number of segments the cache is split into.
+     */
+    public static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    private static final int MAX_SEGMENTS = 1 << 16;
+    private static final long NO_EXPIRY = Long.MAX_VALUE;
+
+    private final Segment[] segments;
+    private final int segmentMask;
+    private final int maxSize;
+    private final long timeToLive;
+
+    /**
+     * Constructs a cache holding at most {@code maxSize} entries which never expire.
+     *
+     * @param maxSize The maximum number of entries held by the cache.
+     * @throws IllegalArgumentException if {@code maxSize} is less than one.
+     */
+    public ConcurrentCache(int maxSize) {
+        this(maxSize, 0, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * Constructs a cache holding at most {@code maxSize} entries.
+     *
+     * @param maxSize The maximum number of entries held by the cache.
+     * @param timeToLive The number of milliseconds after which an entry expires, or zero if entries never expire.
+     * @param concurrencyLevel The expected number of concurrently updating threads, used to size the segment array.
+     * @throws IllegalArgumentException if {@code maxSize} or {@code concurrencyLevel} is less than one, or if
+     * {@code timeToLive} is negative.
+     */
+    public ConcurrentCache(int maxSize, long timeToLive, int concurrencyLevel) {
+        // The parent's own hash table is never used, so keep it as small as possible.
+        super(1);
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Illegal maximum size: " + maxSize);
+        }
+        if (concurrencyLevel < 1) {
+            throw new IllegalArgumentException("Illegal concurrency level: " + concurrencyLevel);
+        }
+        if (timeToLive < 0) {
+            throw new IllegalArgumentException("Illegal time to live: " + timeToLive);
+        }
+
+        int segmentCount = 1;
+        int limit = Math.min(Math.min(concurrencyLevel, maxSize), MAX_SEGMENTS);
+        while (segmentCount < limit) {
+            segmentCount <<= 1;
+        }
+        if (segmentCount > maxSize) {
+            segmentCount >>= 1;
+        }
+
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive;
+        this.segmentMask = segmentCount - 1;
+        this.segments = new Segment[segmentCount];
+        int remainder = maxSize % segmentCount;
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(maxSize / segmentCount + (i < remainder ? 1 : 0));
+        }
+    }
+
+    /**
+     * Returns the maximum number of entries this cache will hold.
+     *
+     * @return the maximum size.
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            segment.lock();
+            try {
+                size += segment.map.size();
+            } finally {
+                segment.unlock();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public Object get(Object key) {
+        Segment segment = segmentFor(key);
+        segment.lock();
+        try {
+            CacheEntry entry = segment.getLive(key, System.currentTimeMillis());
+            if (entry == null) {
+                segment.misses++;
+                return null;
+            }
+            segment.hits++;
+            return entry.value;
+        } finally {
+            segment.unlock();
+        }
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        Segment segment = segmentFor(key);
+        segment.lock();
+        try {
+            return segment.getLive(key, System.currentTimeMillis()) != null;
+        } finally {
+            segment.unlock();
+        }
+    }
+
+    @Override
+    public boolean contains(Object value) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+        long now = System.currentTimeMillis();
+        for (Segment segment : segments) {
+            segment.lock();
+            try {
+                for (CacheEntry entry : segment.map.values()) {
+                    if (!entry.isExpired(now) && value.equals(entry.value)) {
+                        return true;
+                    }
+                }
+            } finally {
+                segment.unlock();
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        return contains(value);
+    }
+
+    @Override
+    public Object put(Object key, Object value) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+        long now = System.currentTimeMillis();
+        long expiry = timeToLive == 0 ? NO_EXPIRY : now + timeToLive;
+        Segment segment = segmentFor(key);
+        segment.lock();
+        try {
+            CacheEntry previous = segment.map.put(key, new CacheEntry(value, expiry));
+            if (previous == null) {
+                segment.evictIfRequired();
+                return null;
+            }
+            if (previous.isExpired(now)) {
+                onEviction(key, previous.value);
+                return null;
+            }
+            return previous.value;
+        } finally {
+            segment.unlock();
+        }
+    }
+
+    @Override
+    public void putAll(Map t) {
+        for (Object o : t.entrySet()) {
+            Map.Entry e = (Map.Entry) o;
+            put(e.getKey(), e.getValue());
+        }
+    }
+
+    @Override
+    public Object remove(Object key) {
+        Segment segment = segmentFor(key);
+        segment.lock();
+        try {
+            CacheEntry previous = segment.map.remove(key);
+            if (previous == null) {
+                return null;
+            }
+            if (previous.isExpired(System.currentTimeMillis())) {
+                onEviction(key, previous.value);
+                return null;
+            }
+            return previous.value;
+        } finally {
+            segment.unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.lock();
+            try {
+                segment.map.clear();
+            } finally {
+                segment.unlock();
+            }
+        }
+    }
+
+    @Override
+    public Enumeration keys() {
+        return Collections.enumeration(snapshotKeys());
+    }
+
+    @Override
+    public Enumeration elements() {
+        List<Object> values = new ArrayList<Object>();
+        for (Map.Entry<Object, Object> entry : snapshot()) {
+            values.add(entry.getValue());
+        }
+        return Collections.enumeration(values);
+    }
+
+    @Override
+    public Set keySet() {
+        return new AbstractSet() {
+            @Override
+            public Iterator iterator() {
+                return new RemovingIterator(snapshotKeys().iterator()) {
+                    @Override
+                    Object keyOf(Object element) {
+                        return element;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return ConcurrentCache.this.size();
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return containsKey(o);
+            }
+
+            @Override
+            public boolean remove(Object o) {
+                return ConcurrentCache.this.remove(o) != null;
+            }
+
+            @Override
+            public void clear() {
+                ConcurrentCache.this.clear();
+            }
+        };
+    }
+
+    @Override
+    public Set entrySet() {
+        return new AbstractSet() {
+            @Override
+            public Iterator iterator() {
+                return new RemovingIterator(snapshot().iterator()) {
+                    @Override
+                    Object keyOf(Object element) {
+                        return ((Map.Entry) element).getKey();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return ConcurrentCache.this.size();
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                if (!(o instanceof Map.Entry)) {
+                    return false;
+                }
+                Map.Entry entry = (Map.Entry) o;
+                Object value = get(entry.getKey());
+                return value != null && value.equals(entry.getValue());
+            }
+
+            @Override
+            public boolean remove(Object o) {
+                return contains(o) && ConcurrentCache.this.remove(((Map.Entry) o).getKey()) != null;
+            }
+
+            @Override
+            public void clear() {
+                ConcurrentCache.this.clear();
+            }
+        };
+    }
+
+    @Override
+    public Collection values() {
+        return new AbstractCollection() {
+            @Override
+            public Iterator iterator() {
+                final Iterator<Map.Entry<Object, Object>> entries = snapshot().iterator();
+                return new RemovingIterator(entries) {
+                    @Override
+                    Object keyOf(Object element) {
+                        return ((Map.Entry) element).getKey();
+                    }
+
+                    @Override
+                    public Object next() {
+                        return ((Map.Entry) super.next()).getValue();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return ConcurrentCache.this.size();
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return ConcurrentCache.this.contains(o);
+            }
+
+            @Override
+            public void clear() {
+                ConcurrentCache.this.clear();
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (!(o instanceof Map)) {
+            return false;
+        }
+        Map other = (Map) o;
+        List<Map.Entry<Object, Object>> entries = snapshot();
+        if (entries.size() != other.size()) {
+            return false;
+        }
+        for (Map.Entry<Object, Object> entry : entries) {
+            if (!entry.getValue().equals(other.get(entry.getKey()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = 0;
+        for (Map.Entry<Object, Object> entry : snapshot()) {
+            h += entry.hashCode();
+        }
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder("{");
+        Iterator<Map.Entry<Object, Object>> it = snapshot().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Object, Object> entry = it.next();
+            buf.append(entry.getKey()).append("=").append(entry.getValue());
+            if (it.hasNext()) {
+                buf.append(", ");
+            }
+        }
+        return buf.append("}").toString();
+    }
+
+    @Override
+    public String audit() {
+        int size = size();
+        if (size > maxSize) {
+            return "Size (" + size + ") > maximum size (" + maxSize + ")";
+        }
+        return "";
+    }
+
+    /**
+     * Returns the number of successful lookups made through {@link #get(Object)}.
+     *
+     * @return the hit count.
+     */
+    public long getHitCount() {
+        long total = 0;
+        for (Segment segment : segments) {
+            segment.lock();
+            try {
+                total += segment.hits;
+            } finally {
+                segment.unlock();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Returns the number of unsuccessful lookups made through {@link #get(Object)}, including lookups of expired
+     * entries.
+     *
+     * @return the miss count.
+     */
+    public long getMissCount() {
+        long total = 0;
+        for (Segment segment : segments) {
+            segment.lock();
+            try {
+                total += segment.misses;
+            } finally {
+                segment.unlock();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Returns the number of entries removed to keep the cache within its maximum size.
+     *
+     * @return the eviction count.
+     */
+    public long getEvictionCount() {
+        long total = 0;
+        for (Segment segment : segments) {
+            segment.lock();
+            try {
+                total += segment.evictions;
+            } finally {
+                segment.unlock();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Returns the number of entries purged because their time to live elapsed.
+     *
+     * @return the expiration count.
+     */
+    public long getExpirationCount() {
+        long total = 0;
+        for (Segment segment : segments) {
+            segment.lock();
+            try {
+                total += segment.expirations;
+            } finally {
+                segment.unlock();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Evicts up to {@code count} entries, taking the least recently used entry of each segment in turn.
+     *
+     * @param count The number of entries to evict.
+     * @return The number of entries evicted, which is less than {@code count} only if the cache is now empty.
+     */
+    public int evict(int count) {
+        int evicted = 0;
+        boolean found = true;
+        while (evicted < count && found) {
+            found = false;
+            for (int i = 0; i < segments.length && evicted < count; i++) {
+                Segment segment = segments[i];
+                segment.lock();
+                try {
+                    if (segment.evictEldest()) {
+                        evicted++;
+                        found = true;
+                    }
+                } finally {
+                    segment.unlock();
+                }
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Called for each entry the cache drops by itself, either to stay within its maximum size or because the entry
+     * expired, so that subclasses can keep track of the entries held. It is called while the entry's segment is
+     * locked, so it must not call back into the cache. Does nothing by default.
+     *
+     * @param key The key of the dropped entry.
+     * @param value The value of the dropped entry.
+     */
+    protected void onEviction(Object key, Object value) {
+    }
+
+    private Segment segmentFor(Object key) {
+        int h = key.hashCode();
+        // Spread the bits so keys with poor hash codes still spread across segments.
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        h ^= (h >>> 13);
+        return segments[h & segmentMask];
+    }
+
+    private List<Object> snapshotKeys() {
+        List<Object> keys = new ArrayList<Object>();
+        for (Map.Entry<Object, Object> entry : snapshot()) {
+            keys.add(entry.getKey());
+        }
+        return keys;
+    }
+
+    private List<Map.Entry<Object, Object>> snapshot() {
+        List<Map.Entry<Object, Object>> entries = new ArrayList<Map.Entry<Object, Object>>();
+        long now = System.currentTimeMillis();
+        for (Segment segment : segments) {
+            segment.lock();
+            try {
+                for (Map.Entry<Object, CacheEntry> entry : segment.map.entrySet()) {
+                    if (!entry.getValue().isExpired(now)) {
+                        entries.add(new AbstractMap.SimpleImmutableEntry<Object, Object>(entry.getKey(),
+                                entry.getValue().value));
+                    }
+                }
+            } finally {
+                segment.unlock();
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Iterates over a snapshot, removing entries from the cache on {@link #remove()}.
+     */
+    private abstract class RemovingIterator implements Iterator {
+
+        private final Iterator<?> delegate;
+        private Object current;
+
+        RemovingIterator(Iterator<?> delegate) {
+            this.delegate = delegate;
+        }
+
+        abstract Object keyOf(Object element);
+
+        @Override
+        public boolean hasNext() {
+            return delegate.hasNext();
+        }
+
+        @Override
+        public Object next() {
+            current = delegate.next();
+            return current;
+        }
+
+        @Override
+        public void remove() {
+            if (current == null) {
+                throw new IllegalStateException();
+            }
+            ConcurrentCache.this.remove(keyOf(current));
+            current = null;
+        }
+    }
+
+    private static final class CacheEntry {
+
+        private final Object value;
+        private final long expiry;
+
+        CacheEntry(Object value, long expiry) {
+            this.value = value;
+            this.expiry = expiry;
+        }
+
+        boolean isExpired(long now) {
+            return expiry != NO_EXPIRY && now >= expiry;
+        }
+    }
+
+    /**
+     * A single lock protected, access ordered partition of the cache. The statistics are only ever read or written
+     * while holding the lock.
+     */
+    private final class Segment extends ReentrantLock {
+
+        private final int capacity;
+        private final LinkedHashMap<Object, CacheEntry> map;
+        private long hits;
+        private long misses;
+        private long evictions;
+        private long expirations;
+
+        Segment(int capacity) {
+            this.capacity = capacity;
+            this.map = new LinkedHashMap<Object, CacheEntry>(16, 0.75f, true);
+        }
+
+        CacheEntry getLive(Object key, long now) {
+            CacheEntry entry = map.get(key);
+            if (entry != null && entry.isExpired(now)) {
+                map.remove(key);
+                expirations++;
+                onEviction(key, entry.value);
+                return null;
+            }
+            return entry;
+        }
+
+        void evictIfRequired() {
+            while (map.size() > capacity) {
+                evictEldest();
+            }
+        }
+
+        boolean evictEldest() {
+            Iterator<Map.Entry<Object, CacheEntry>> it = map.entrySet().iterator();
+            if (!it.hasNext()) {
+                return false;
+            }
+            Map.Entry<Object, CacheEntry> eldest = it.next();
+            it.remove();
+            evictions++;
+            onEviction(eldest.getKey(), eldest.getValue().value);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.common;
+
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Keeps the scheduled heads in time order, so each head runs at the time it was scheduled for. Every operation
+ * takes time logarithmic in the number of scheduled times, holding the lock of the queue.
+ */
+final class SortedTimerTaskQueue implements TimerTaskQueue {
+
+    private final SortedMap<Long, HeadTaskRunnable> heads = new TreeMap<Long, HeadTaskRunnable>();
+
+    @Override
+    public synchronized HeadTaskRunnable get(long time) {
+        return heads.get(time);
+    }
+
+    @Override
+    public synchronized HeadTaskRunnable putIfAbsent(long time, HeadTaskRunnable head) {
+        HeadTaskRunnable existing = heads.get(time);
+        if (existing == null) {
+            heads.put(time, head);
+        }
+        return existing;
+    }
+
+    @Override
+    public synchronized void remove(long time) {
+        heads.remove(time);
+    }
+
+    @Override
+    public synchronized HeadTaskRunnable pollDue(long now) {
+        if (heads.isEmpty() || heads.firstKey() > now) {
+            return null;
+        }
+        return heads.remove(heads.firstKey());
+    }
+
+    @Override
+    public synchronized long nextRunTime(long now) {
+        return heads.isEmpty() ? -1 : heads.firstKey();
+    }
+}
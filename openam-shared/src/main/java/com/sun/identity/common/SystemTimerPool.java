@@ -27,7 +27,7 @@
  */
 
 /*
- * Portions Copyrighted 2012-2015 ForgeRock AS.
+ * Portions Copyrighted 2012-2016 ForgeRock AS.
  */
 package com.sun.identity.common;
 
@@ -38,13 +38,18 @@ import org.forgerock.util.thread.listener.ShutdownListener;
 
 /**
  * SystemTimerPool is a TimerPool which shared in the system.
+ *
+ * It holds the timeouts of every session, so its tasks are kept in a timing
+ * wheel unless the tick is set to 0.
  */
 
 public class SystemTimerPool {
     
     protected static TimerPool instance;
     public static final int DEFAULT_POOL_SIZE = 3;
+    public static final long DEFAULT_TICK = 100;
     private static int poolSize;
+    private static long tick;
 
     static {
         poolSize = DEFAULT_POOL_SIZE;
@@ -61,6 +66,18 @@ public class SystemTimerPool {
                     + size + " defaulting to " + DEFAULT_POOL_SIZE);
             }
         }
+        tick = DEFAULT_TICK;
+        String tickValue = SystemPropertiesManager.get(
+            Constants.SYSTEM_TIMERPOOL_TICK);
+        if (tickValue != null) {
+            try {
+                tick = Math.max(0, Long.parseLong(tickValue));
+            } catch (NumberFormatException ex) {
+                Debug debug = Debug.getInstance("SystemTimerPool");
+                debug.error("SystemTimerPool.<init>: incorrect tick "
+                    + tickValue + " defaulting to " + DEFAULT_TICK);
+            }
+        }
     }
     
     /**
@@ -74,7 +91,7 @@ public class SystemTimerPool {
             // Don't load the Debug object in static block as it can
             // cause issues when doing a container restart.
             instance = new TimerPool("SystemTimerPool",
-                poolSize, false, Debug.getInstance("SystemTimerPool"));
+                poolSize, false, Debug.getInstance("SystemTimerPool"), tick);
 
             try {
                 shutdownMan.addShutdownListener(new ShutdownListener() {
@@ -27,23 +27,21 @@
  */
 
 /*
- * Portions Copyrighted 2012 ForgeRock Inc
+ * Portions Copyrighted 2012-2016 ForgeRock AS.
  */
 
 package com.sun.identity.common;
 
 import com.sun.identity.shared.debug.Debug;
-import java.util.Collections;
 import java.util.Date;
-import java.util.HashSet;
-import java.util.NoSuchElementException;
-import java.util.Set;
-import java.util.SortedMap;
-import java.util.Timer;
-import java.util.TreeMap;
 
 /**
  * TimerPool is a scheduleable version of ThreadPool.
+ *
+ * Scheduled tasks are kept either in time order, so that each task runs at
+ * the time it is scheduled for, or in a hierarchical timing wheel, where
+ * scheduling and cancelling a task take the same time however many tasks are
+ * scheduled but a task may run up to one tick after its scheduled time.
  */
 
 public class TimerPool implements Triggerable {
@@ -56,12 +54,18 @@ public class TimerPool implements Triggerable {
     private boolean daemon;
     private WorkerThread[] threads;
     private Scheduler scheduler;
-    private SortedMap taskList;
+    private TimerTaskQueue taskQueue;
     private Date nextRun;
     private Debug debug;
 
     /**
-     * Constructor of TimerPool.
+     * Number of buckets in each wheel of the timing wheel.
+     */
+    private static final int TIMING_WHEEL_SIZE = 512;
+
+    /**
+     * Constructor of TimerPool which runs each task at the time it is
+     * scheduled for.
      *
      * @param name The name of the TimerPool
      * @param poolSize The size of the TimerPool
@@ -71,6 +75,23 @@ public class TimerPool implements Triggerable {
      */
     
     public TimerPool(String name, int poolSize, boolean daemon, Debug debug) {
+        this(name, poolSize, daemon, debug, 0);
+    }
+
+    /**
+     * Constructor of TimerPool.
+     *
+     * @param name The name of the TimerPool
+     * @param poolSize The size of the TimerPool
+     * @param daemon The boolean to indicate whether the threads in TimerPool
+     *        are daemon
+     * @param debug Debug object to send debugging message to.
+     * @param tickDuration The tick (in ms) of the timing wheel to keep the
+     *        scheduled tasks in, or 0 to keep them in time order
+     */
+
+    public TimerPool(String name, int poolSize, boolean daemon, Debug debug,
+        long tickDuration) {
         this.name = name;
 	this.poolSize = poolSize;
         this.busyThreadCount = 0;
@@ -81,7 +102,12 @@ public class TimerPool implements Triggerable {
         this.threads = new WorkerThread[poolSize];
         this.scheduler = new Scheduler(this);
         this.scheduler.start();
-        this.taskList = Collections.synchronizedSortedMap(new TreeMap());
+        if (tickDuration > 0) {
+            this.taskQueue = new TimingWheelTimerTaskQueue(tickDuration,
+                TIMING_WHEEL_SIZE);
+        } else {
+            this.taskQueue = new SortedTimerTaskQueue();
+        }
         synchronized (this) {
             createThreads(poolSize);
         }
@@ -150,16 +176,16 @@ public class TimerPool implements Triggerable {
                 if (nextRun != null) {
                     long now = System.currentTimeMillis();
                     if (nextRun.getTime() <= now ) {
-                        if ((task = (HeadTaskRunnable) taskList.remove(nextRun)) 
-                            != null) {
+                        if ((task = taskQueue.pollDue(now)) != null) {
                             t = getAvailableThread();
                         }
                     }
-                    try {
-                        nextRun = (Date) taskList.firstKey();
-                        long delay = nextRun.getTime() - now;
+                    long nextRunTime = taskQueue.nextRunTime(now);
+                    if (nextRunTime >= 0) {
+                        nextRun = new Date(nextRunTime);
+                        long delay = nextRunTime - now;
                         scheduler.setDelay((delay >= 0 ? delay : 0));
-                    } catch(NoSuchElementException ex) {
+                    } else {
                         nextRun = null;
                         scheduler.setDelay(-1);
                     }
@@ -254,12 +280,10 @@ public class TimerPool implements Triggerable {
                         }
                     }
                 } while (head != task.getHeadTask());
-                synchronized (taskList) {
-                    if((head = (HeadTaskRunnable) taskList.get(time)) == null) {
-                        task.setNext(null);
-                        taskList.put(time, new HeadTaskRunnable(this, task,
-                            time));        
-                    }
+                if ((head = taskQueue.get(time.getTime())) == null) {
+                    task.setNext(null);
+                    head = taskQueue.putIfAbsent(time.getTime(),
+                        new HeadTaskRunnable(this, task, time));
                 }
                 if (head == null) {
                     synchronized (this) {
@@ -311,7 +335,7 @@ public class TimerPool implements Triggerable {
     
     public void trigger(Date time) {
         // no need to synchronize for single operation
-        taskList.remove(time);
+        taskQueue.remove(time.getTime());
     }
     
     /**
@@ -0,0 +1,67 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.common;
+
+/**
+ * Holds the {@link HeadTaskRunnable}s scheduled in a {@link TimerPool}, keyed by the time they are scheduled to run,
+ * and finds the ones that are due. All tasks scheduled for the same time share a single HeadTaskRunnable.
+ * <p>
+ * {@link #pollDue(long)} and {@link #nextRunTime(long)} are only called by the scheduler of the pool, one call at
+ * a time. The other methods may be called by any thread.
+ */
+interface TimerTaskQueue {
+
+    /**
+     * Returns the head scheduled for the given time.
+     *
+     * @param time The scheduled time, in milliseconds.
+     * @return The head, or null if nothing is scheduled for the time.
+     */
+    HeadTaskRunnable get(long time);
+
+    /**
+     * Adds the head for the given time, unless there is already a head for it.
+     *
+     * @param time The scheduled time, in milliseconds.
+     * @param head The head to add.
+     * @return The head already scheduled for the time, or null if the given head was added.
+     */
+    HeadTaskRunnable putIfAbsent(long time, HeadTaskRunnable head);
+
+    /**
+     * Removes the head scheduled for the given time.
+     *
+     * @param time The scheduled time, in milliseconds.
+     */
+    void remove(long time);
+
+    /**
+     * Removes and returns a head that is due to run.
+     *
+     * @param now The current time, in milliseconds.
+     * @return A due head, or null if none is due.
+     */
+    HeadTaskRunnable pollDue(long now);
+
+    /**
+     * Returns the time at which the scheduler should next call {@link #pollDue(long)}.
+     *
+     * @param now The current time, in milliseconds.
+     * @return The time in milliseconds, or -1 if nothing is scheduled.
+     */
+    long nextRunTime(long now);
+}
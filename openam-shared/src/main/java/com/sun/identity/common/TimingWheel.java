@@ -0,0 +1,202 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A hierarchical timing wheel that tracks when items expire, so that expired items can be found without walking
+ * every item.
+ * <p>
+ * The lowest wheel has one bucket per tick. Each higher wheel has buckets as wide as the whole of the wheel below it,
+ * and its items are moved down a wheel as the time they expire comes within range. Scheduling an item costs the same
+ * however many items are scheduled and however far in the future it expires.
+ * <p>
+ * Scheduling never blocks: items are queued and placed in the wheels by whichever thread next calls
+ * {@link #expire(long)}. Only one thread advances the wheels at a time; other threads calling {@link #expire(long)}
+ * meanwhile return straight away. Items are reported at most one tick after they expire.
+ *
+ * @param <T> the type of item scheduled.
+ */
+public final class TimingWheel<T> {
+
+    private final long tickDuration;
+    private final int wheelSize;
+    private final Queue<Scheduled<T>> pending = new ConcurrentLinkedQueue<Scheduled<T>>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final List<Wheel> wheels = new ArrayList<Wheel>();
+    private volatile long nextTick;
+
+    /**
+     * Constructs an empty timing wheel.
+     *
+     * @param tickDuration the width of each bucket in the lowest wheel, in milliseconds.
+     * @param wheelSize the number of buckets in each wheel.
+     * @param startTime the current time, in milliseconds.
+     */
+    public TimingWheel(long tickDuration, int wheelSize, long startTime) {
+        if (tickDuration < 1 || wheelSize < 2) {
+            throw new IllegalArgumentException("Illegal tick duration or wheel size");
+        }
+        this.tickDuration = tickDuration;
+        this.wheelSize = wheelSize;
+        wheels.add(new Wheel(tickDuration, startTime - startTime % tickDuration));
+        this.nextTick = startTime - startTime % tickDuration + tickDuration;
+    }
+
+    /**
+     * Schedules an item to be reported by {@link #expire(long)} once the given time has passed.
+     *
+     * @param item the item.
+     * @param expiryTime the time the item expires, in milliseconds.
+     */
+    public void schedule(T item, long expiryTime) {
+        pending.add(new Scheduled<T>(item, expiryTime));
+    }
+
+    /**
+     * Advances the wheels to the given time and returns the items that have expired. Returns an empty list if another
+     * thread is already advancing the wheels.
+     *
+     * @param now the current time, in milliseconds.
+     * @return the expired items.
+     */
+    public List<T> expire(long now) {
+        if (now < nextTick && pending.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (!lock.tryLock()) {
+            return Collections.emptyList();
+        }
+        try {
+            List<T> expired = new ArrayList<T>();
+            Scheduled<T> scheduled;
+            while ((scheduled = pending.poll()) != null) {
+                add(scheduled, expired);
+            }
+
+            Wheel lowest = wheels.get(0);
+            while (lowest.currentTime + tickDuration <= now) {
+                // Everything in the current bucket expires before the end of the tick, which has now passed.
+                for (Scheduled<T> item : lowest.take(lowest.currentTime)) {
+                    expired.add(item.item);
+                }
+                lowest.currentTime += tickDuration;
+
+                // Find the higher wheels whose current bucket has now passed, and move each of them on.
+                int top = 0;
+                while (top + 1 < wheels.size()
+                        && lowest.currentTime >= wheels.get(top + 1).currentTime + wheels.get(top + 1).tick) {
+                    top++;
+                    Wheel wheel = wheels.get(top);
+                    wheel.currentTime = lowest.currentTime - lowest.currentTime % wheel.tick;
+                }
+                // Items in the new current bucket of each of those wheels now fall within range of a lower wheel.
+                for (int level = top; level > 0; level--) {
+                    Wheel wheel = wheels.get(level);
+                    for (Scheduled<T> item : wheel.take(wheel.currentTime)) {
+                        add(item, expired);
+                    }
+                }
+            }
+            nextTick = lowest.currentTime + tickDuration;
+            return expired;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Places an item in the lowest wheel that covers its expiry time, or adds it to the expired items if it has
+     * already expired. Must be called holding the lock.
+     */
+    private void add(Scheduled<T> item, List<T> expired) {
+        Wheel wheel = wheels.get(0);
+        if (item.expiryTime < wheel.currentTime) {
+            expired.add(item.item);
+            return;
+        }
+        for (int level = 0; ; level++) {
+            if (level == wheels.size()) {
+                Wheel below = wheels.get(level - 1);
+                long tick = below.tick * wheelSize;
+                wheels.add(new Wheel(tick, below.currentTime - below.currentTime % tick));
+            }
+            wheel = wheels.get(level);
+            if (item.expiryTime < wheel.currentTime + wheel.tick * wheelSize) {
+                wheel.put(item);
+                return;
+            }
+        }
+    }
+
+    /**
+     * One level of the hierarchy.
+     */
+    private final class Wheel {
+        private final long tick;
+        private final List<List<Scheduled<T>>> buckets;
+        private long currentTime;
+
+        private Wheel(long tick, long currentTime) {
+            this.tick = tick;
+            this.currentTime = currentTime;
+            this.buckets = new ArrayList<List<Scheduled<T>>>(wheelSize);
+            for (int i = 0; i < wheelSize; i++) {
+                buckets.add(null);
+            }
+        }
+
+        private void put(Scheduled<T> item) {
+            int index = (int) ((item.expiryTime / tick) % wheelSize);
+            List<Scheduled<T>> bucket = buckets.get(index);
+            if (bucket == null) {
+                bucket = new ArrayList<Scheduled<T>>();
+                buckets.set(index, bucket);
+            }
+            bucket.add(item);
+        }
+
+        private List<Scheduled<T>> take(long time) {
+            int index = (int) ((time / tick) % wheelSize);
+            List<Scheduled<T>> bucket = buckets.get(index);
+            if (bucket == null) {
+                return Collections.emptyList();
+            }
+            buckets.set(index, null);
+            return bucket;
+        }
+    }
+
+    /**
+     * An item and the time it expires.
+     */
+    private static final class Scheduled<T> {
+        private final T item;
+        private final long expiryTime;
+
+        private Scheduled(T item, long expiryTime) {
+            this.item = item;
+            this.expiryTime = expiryTime;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.common;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps the scheduled heads in a hash map for lookup by time, and their times in a {@link TimingWheel} for finding
+ * the due heads. Adding, finding and removing a head take the same time however many are scheduled, and do not
+ * take a lock shared by the whole queue.
+ * <p>
+ * A head becomes due up to one tick after the time it was scheduled for. The times of removed heads are left in the
+ * wheel and skipped once they are due.
+ */
+final class TimingWheelTimerTaskQueue implements TimerTaskQueue {
+
+    private final long tickDuration;
+    private final ConcurrentMap<Long, HeadTaskRunnable> heads = new ConcurrentHashMap<Long, HeadTaskRunnable>();
+    private final TimingWheel<Long> wheel;
+    private final Deque<Long> due = new ArrayDeque<Long>();
+
+    /**
+     * Constructs an empty queue.
+     *
+     * @param tickDuration The width of each bucket in the lowest wheel, in milliseconds.
+     * @param wheelSize The number of buckets in each wheel.
+     */
+    TimingWheelTimerTaskQueue(long tickDuration, int wheelSize) {
+        this.tickDuration = tickDuration;
+        this.wheel = new TimingWheel<Long>(tickDuration, wheelSize, System.currentTimeMillis());
+    }
+
+    @Override
+    public HeadTaskRunnable get(long time) {
+        return heads.get(time);
+    }
+
+    @Override
+    public HeadTaskRunnable putIfAbsent(long time, HeadTaskRunnable head) {
+        HeadTaskRunnable existing = heads.putIfAbsent(time, head);
+        if (existing == null) {
+            wheel.schedule(time, time);
+        }
+        return existing;
+    }
+
+    @Override
+    public void remove(long time) {
+        heads.remove(time);
+    }
+
+    @Override
+    public HeadTaskRunnable pollDue(long now) {
+        if (due.isEmpty()) {
+            due.addAll(wheel.expire(now));
+        }
+        Long time;
+        while ((time = due.poll()) != null) {
+            HeadTaskRunnable head = heads.remove(time);
+            if (head != null) {
+                return head;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public long nextRunTime(long now) {
+        if (!due.isEmpty()) {
+            return now;
+        }
+        if (heads.isEmpty()) {
+            return -1;
+        }
+        return now - now % tickDuration + tickDuration;
+    }
+}
@@ -393,6 +393,11 @@ public interface Constants {
     static final String SERVICES_COMM_SERVER_PLLREQUEST_MAX_CONTENT_LENGTH =
             "com.iplanet.services.comm.server.pllrequest.maxContentLength";
 
+    /**
+     * Property string for enabling the binary PLL encoding, which is used between servers that both support it.
+     */
+    static final String SERVICES_COMM_BINARY_ENABLED = "com.iplanet.services.comm.binary.enabled";
+
     /**
      * Property string for encrypting class implementation.
      */
@@ -530,6 +535,14 @@ public interface Constants {
     static final String ENFORCE_JAAS_THREAD =
             "com.sun.identity.authentication.usingJaasThread";
 
+    /**
+     * Property string to determine if chains of pure JAAS modules are run on
+     * the request threads, replaying the callbacks already answered on each
+     * request, instead of on a separate JAAS thread.
+     */
+    static final String JAAS_CONTINUATIONS =
+            "org.forgerock.openam.authentication.jaasContinuations";
+
     /**
      * Property string to list all the Session properties that should be
      * protected.
@@ -641,6 +654,20 @@ public interface Constants {
     static final String SESSION_REPOSITORY_ATTRIBUTE_NAME_COMPRESSION =
             "com.sun.identity.session.repository.enableAttributeCompression";
 
+    /**
+     * Compression algorithm used for Session Repository tokens, either gzip (the default) or deflate. Tokens
+     * compressed with either algorithm can always be read.
+     */
+    static final String SESSION_REPOSITORY_COMPRESSION_ALGORITHM =
+            "com.sun.identity.session.repository.compressionAlgorithm";
+
+    /**
+     * Property for storing Session Repository tokens in the binary format rather than as JSON. Tokens stored in
+     * either format can always be read.
+     */
+    static final String SESSION_REPOSITORY_BINARY_FORMAT =
+            "com.sun.identity.session.repository.enableBinaryFormat";
+
     /**
      * Property string for determining whether or not appplication sessions
      * should be returned via the getValidSessions() call.
@@ -1021,6 +1048,14 @@ public interface Constants {
     static final String SYSTEM_TIMERPOOL_SIZE =
             "com.sun.identity.common.systemtimerpool.size";
 
+    /**
+     * property string to the tick (in ms) of the timing wheel that holds the
+     * tasks scheduled in SystemTimerPool. Tasks run up to one tick after
+     * their scheduled time. 0 keeps the tasks in time order instead.
+     */
+    static final String SYSTEM_TIMERPOOL_TICK =
+            "com.sun.identity.common.systemtimerpool.tick";
+
     /**
      * property string for Distributed Authentication cluster
      */
@@ -1387,4 +1422,17 @@ public interface Constants {
      * Property that allows the AM_ACCESS_ATTEMPT event name to be audited.
      */
     public static final String AUDIT_AM_ACCESS_ATTEMPT_ENABLED = "org.forgerock.openam.audit.access.attempt.enabled";
+
+    /**
+     * Property to make {@link com.iplanet.am.util.Cache#newInstance(int)} return the segmented
+     * {@link com.iplanet.am.util.ConcurrentCache} instead of the single monitor cache.
+     */
+    public static final String CONCURRENT_CACHE_ENABLED = "org.forgerock.openam.cache.concurrent.enabled";
+
+    /**
+     * Number of segments used by caches created through {@link com.iplanet.am.util.Cache#newInstance(int)} when
+     * {@link #CONCURRENT_CACHE_ENABLED} is set. Defaults to 16.
+     */
+    public static final String CONCURRENT_CACHE_CONCURRENCY_LEVEL =
+            "org.forgerock.openam.cache.concurrent.concurrencyLevel";
 }
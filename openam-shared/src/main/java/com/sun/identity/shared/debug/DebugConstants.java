@@ -49,6 +49,18 @@ public final class DebugConstants {
 
     public static final String CONFIG_DEBUG_DIRECTORY = "com.iplanet.services.debug.directory";
 
+    /**
+     * Whether debug files are written from a background thread. Defaults to true in server mode.
+     */
+    public static final String CONFIG_DEBUG_ASYNC_ENABLED = "org.forgerock.openam.debug.async.enabled";
+
+    /**
+     * The number of debug records that can wait to be written before further records are dropped.
+     */
+    public static final String CONFIG_DEBUG_ASYNC_BUFFER_SIZE = "org.forgerock.openam.debug.async.buffersize";
+
+    public static final int DEFAULT_DEBUG_ASYNC_BUFFER_SIZE = 8192;
+
     /**
      * Constant string used as property key to look up the debug provider class
      * name.
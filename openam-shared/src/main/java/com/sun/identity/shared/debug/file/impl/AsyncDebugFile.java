@@ -0,0 +1,56 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.shared.debug.file.impl;
+
+import com.sun.identity.shared.debug.file.DebugFile;
+
+import java.io.IOException;
+
+/**
+ * A debug file whose records are written by an {@link AsyncDebugFileWriter}. Once the writer has been shut down,
+ * records are written to the underlying debug file on the calling thread.
+ *
+ * @since 14.0.0
+ */
+public class AsyncDebugFile implements DebugFile {
+
+    private final DebugFile debugFile;
+    private final AsyncDebugFileWriter writer;
+
+    /**
+     * Constructor.
+     *
+     * @param debugFile The debug file records are written to.
+     * @param writer The writer which writes them.
+     */
+    public AsyncDebugFile(DebugFile debugFile, AsyncDebugFileWriter writer) {
+        this.debugFile = debugFile;
+        this.writer = writer;
+    }
+
+    @Override
+    public void writeIt(String prefix, String msg, Throwable th) throws IOException {
+        if (!writer.publish(debugFile, prefix, msg, th)) {
+            debugFile.writeIt(prefix, msg, th);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "AsyncDebugFile{" + debugFile + '}';
+    }
+}
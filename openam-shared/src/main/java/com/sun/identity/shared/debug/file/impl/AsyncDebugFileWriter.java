@@ -0,0 +1,257 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.shared.debug.file.impl;
+
+import com.sun.identity.shared.debug.file.DebugFile;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes debug records to their {@link DebugFile}s from a single background thread, so that a thread writing a debug
+ * record does not wait for the debug file, its rotation or the disk.
+ * <br/>
+ * Records are placed in a bounded, lock free ring buffer of reusable slots. When the buffer is full the record is
+ * dropped rather than holding up the calling thread; dropped records are counted and the count is written to the
+ * next debug file written to. Each debug file is still written to by one thread at a time, in the order the records
+ * were queued, so rotation behaves as it does when writing synchronously.
+ *
+ * @since 14.0.0
+ */
+public class AsyncDebugFileWriter {
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long FLUSH_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long FILE_ERROR_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+    private final DebugFile fallback;
+    private final int capacity;
+    private final int mask;
+    private final Slot[] slots;
+    /**
+     * For each slot, one more than the sequence of the record last published to it.
+     */
+    private final AtomicLongArray published;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicBoolean writerWaiting = new AtomicBoolean();
+    private final AtomicBoolean running = new AtomicBoolean(true);
+    private final Thread writerThread;
+    private long droppedReported = 0;
+    private long lastFileError = 0;
+
+    /**
+     * Creates a writer and starts its thread.
+     *
+     * @param bufferSize The number of records that can be queued, rounded up to a power of two.
+     * @param fallback The debug file to write records to when their own debug file cannot be written.
+     */
+    public AsyncDebugFileWriter(int bufferSize, DebugFile fallback) {
+        this.fallback = fallback;
+        this.capacity = Integer.highestOneBit(Math.max(1, bufferSize - 1)) << 1;
+        this.mask = capacity - 1;
+        this.slots = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot();
+        }
+        this.published = new AtomicLongArray(capacity);
+        this.writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "AsyncDebugFileWriter");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Queues a record to be written to the given debug file.
+     *
+     * @param debugFile The debug file to write to.
+     * @param prefix The record prefix.
+     * @param msg The message.
+     * @param th The optional throwable whose stack trace is written with the message.
+     * @return false if the writer has been shut down and the caller must write the record itself, otherwise true,
+     * including when the record was dropped because the buffer was full.
+     */
+    public boolean publish(DebugFile debugFile, String prefix, String msg, Throwable th) {
+        if (!running.get()) {
+            return false;
+        }
+        long sequence;
+        do {
+            sequence = tail.get();
+            if (sequence - head.get() >= capacity) {
+                dropped.incrementAndGet();
+                wakeWriter();
+                return true;
+            }
+        } while (!tail.compareAndSet(sequence, sequence + 1));
+        int index = (int) (sequence & mask);
+        Slot slot = slots[index];
+        slot.debugFile = debugFile;
+        slot.prefix = prefix;
+        slot.msg = msg;
+        slot.th = th;
+        published.set(index, sequence + 1);
+        wakeWriter();
+        return true;
+    }
+
+    /**
+     * Waits until every record queued before this call has been written.
+     *
+     * @param timeout The maximum time to wait.
+     * @param unit The unit of the timeout.
+     * @return true if all records were written within the timeout.
+     */
+    public boolean flush(long timeout, TimeUnit unit) {
+        if (Thread.currentThread() == writerThread) {
+            return true;
+        }
+        long target = tail.get();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (written.get() < target && writerThread.isAlive()) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            wakeWriter();
+            LockSupport.parkNanos(this, FLUSH_PARK_NANOS);
+        }
+        return true;
+    }
+
+    /**
+     * Stops accepting records and waits for the writer thread to write those already queued.
+     */
+    public void shutdown() {
+        if (running.compareAndSet(true, false)) {
+            LockSupport.unpark(writerThread);
+            try {
+                writerThread.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * @return The number of records waiting to be written.
+     */
+    public long getQueueDepth() {
+        return tail.get() - head.get();
+    }
+
+    /**
+     * @return The number of records written.
+     */
+    public long getWrittenCount() {
+        return written.get();
+    }
+
+    /**
+     * @return The number of records dropped because the buffer was full.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    private void wakeWriter() {
+        if (writerWaiting.get() && writerWaiting.compareAndSet(true, false)) {
+            LockSupport.unpark(writerThread);
+        }
+    }
+
+    private void writeLoop() {
+        long sequence = head.get();
+        while (true) {
+            int index = (int) (sequence & mask);
+            if (published.get(index) != sequence + 1) {
+                if (!running.get() && tail.get() == sequence) {
+                    return;
+                }
+                writerWaiting.set(true);
+                if (published.get(index) != sequence + 1 && running.get()) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                writerWaiting.set(false);
+                continue;
+            }
+            Slot slot = slots[index];
+            DebugFile debugFile = slot.debugFile;
+            String prefix = slot.prefix;
+            String msg = slot.msg;
+            Throwable th = slot.th;
+            slot.clear();
+            head.set(++sequence);
+            reportDropped(debugFile, prefix);
+            write(debugFile, prefix, msg, th);
+            written.incrementAndGet();
+        }
+    }
+
+    private void reportDropped(DebugFile debugFile, String prefix) {
+        long count = dropped.get();
+        if (count != droppedReported) {
+            write(debugFile, prefix, (count - droppedReported)
+                    + " debug records were dropped because the debug buffer was full", null);
+            droppedReported = count;
+        }
+    }
+
+    private void write(DebugFile debugFile, String prefix, String msg, Throwable th) {
+        try {
+            try {
+                debugFile.writeIt(prefix, msg, th);
+            } catch (IOException e) {
+                // As when writing synchronously, report the problem at most once an interval and use the fallback
+                long now = System.currentTimeMillis();
+                if (lastFileError + FILE_ERROR_INTERVAL < now) {
+                    lastFileError = now;
+                    fallback.writeIt(prefix, "Debug file can't be written : " + e.getMessage(), null);
+                }
+                fallback.writeIt(prefix, msg, th);
+            }
+        } catch (IOException | RuntimeException e) {
+            StdDebugFile.printError(AsyncDebugFileWriter.class.getSimpleName(), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * A reusable ring buffer slot.
+     */
+    private static final class Slot {
+        private DebugFile debugFile;
+        private String prefix;
+        private String msg;
+        private Throwable th;
+
+        private void clear() {
+            debugFile = null;
+            prefix = null;
+            msg = null;
+            th = null;
+        }
+    }
+}
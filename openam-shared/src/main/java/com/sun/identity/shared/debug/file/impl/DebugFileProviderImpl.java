@@ -11,11 +11,14 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2014-2015 ForgeRock AS.
+ * Copyright 2014-2016 ForgeRock AS.
  */
 package com.sun.identity.shared.debug.file.impl;
 
 
+import com.sun.identity.common.ShutdownManager;
+import com.sun.identity.shared.Constants;
+import com.sun.identity.shared.configuration.SystemPropertiesManager;
 import com.sun.identity.shared.debug.DebugConstants;
 import com.sun.identity.shared.debug.file.DebugConfiguration;
 import com.sun.identity.shared.debug.file.DebugFile;
@@ -24,11 +27,16 @@ import com.sun.identity.shared.debug.file.DebugFileProvider;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.forgerock.util.thread.listener.ShutdownListener;
+import org.forgerock.util.thread.listener.ShutdownPriority;
+
 /**
  * Debug file provider
  * Manage Debug files controller
  * Keep the following constraint one :
  * - One debugFile instance for One log file
+ * Debug files are written from a background {@link AsyncDebugFileWriter} when
+ * {@link DebugConstants#CONFIG_DEBUG_ASYNC_ENABLED} is set, which it is by default in server mode.
  */
 public class DebugFileProviderImpl implements DebugFileProvider {
 
@@ -36,6 +44,8 @@ public class DebugFileProviderImpl implements DebugFileProvider {
 
     private DebugConfiguration configuration;
 
+    private AsyncDebugFileWriter asyncWriter;
+
     /**
      * Default constructor
      */
@@ -49,6 +59,20 @@ public class DebugFileProviderImpl implements DebugFileProvider {
                     "' isn't valid, the default configuration will be used instead: " + e.getMessage(), null);
             this.configuration = DefaultDebugConfiguration.getInstance();
         }
+
+        boolean serverMode = SystemPropertiesManager.getAsBoolean(Constants.SERVER_MODE, false);
+        if (SystemPropertiesManager.getAsBoolean(DebugConstants.CONFIG_DEBUG_ASYNC_ENABLED, serverMode)) {
+            final AsyncDebugFileWriter writer = new AsyncDebugFileWriter(SystemPropertiesManager.getAsInt(
+                    DebugConstants.CONFIG_DEBUG_ASYNC_BUFFER_SIZE, DebugConstants.DEFAULT_DEBUG_ASYNC_BUFFER_SIZE),
+                    getStdOutDebugFile());
+            ShutdownManager.getInstance().addShutdownListener(new ShutdownListener() {
+                @Override
+                public void shutdown() {
+                    writer.shutdown();
+                }
+            }, ShutdownPriority.LOWEST);
+            this.asyncWriter = writer;
+        }
     }
 
     /**
@@ -61,6 +85,9 @@ public class DebugFileProviderImpl implements DebugFileProvider {
         DebugFile debugFile = debugMap.get(debugName);
         if (debugFile == null) {
             debugFile = new DebugFileImpl(configuration, debugName);
+            if (asyncWriter != null) {
+                debugFile = new AsyncDebugFile(debugFile, asyncWriter);
+            }
             debugMap.put(debugName, debugFile);
         }
         return debugFile;
@@ -42,14 +42,13 @@ import com.sun.identity.shared.debug.IDebug;
 import com.sun.identity.shared.debug.file.DebugFile;
 import com.sun.identity.shared.debug.file.DebugFileProvider;
 import com.sun.identity.shared.debug.file.impl.StdDebugFile;
+import org.apache.commons.lang.time.FastDateFormat;
 import org.forgerock.openam.audit.context.AuditRequestContext;
 import org.forgerock.openam.utils.IOUtils;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.text.SimpleDateFormat;
 import java.util.Comparator;
-import java.util.Date;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
@@ -78,7 +77,12 @@ public class DebugImpl implements IDebug {
 
     private DebugLevel debugLevel = DebugLevel.ON;
 
-    private SimpleDateFormat dateFormat = new SimpleDateFormat("MM/dd/yyyy hh:mm:ss:SSS a zzz");
+    private static final ThreadLocal<PrefixFormatter> PREFIX_FORMATTER = new ThreadLocal<PrefixFormatter>() {
+        @Override
+        protected PrefixFormatter initialValue() {
+            return new PrefixFormatter();
+        }
+    };
 
     private DebugFileProvider debugFileProvider;
     private DebugFile debugFile = null;
@@ -245,18 +249,8 @@ public class DebugImpl implements IDebug {
     }
 
     private void record(String msg, Throwable th) {
-
-        StringBuilder prefix = new StringBuilder();
-        String dateFormatted;
-        synchronized (dateFormat) {
-            dateFormatted = this.dateFormat.format(new Date());
-        }
-        prefix.append(debugName)
-                .append(":").append(dateFormatted)
-                .append(": ").append(Thread.currentThread().toString())
-                .append(": TransactionId[").append(getAuditTransactionId()).append("]");
-
-        writeIt(prefix.toString(), msg, th);
+        String prefix = PREFIX_FORMATTER.get().format(debugName, System.currentTimeMillis(), getAuditTransactionId());
+        writeIt(prefix, msg, th);
     }
 
     /**
@@ -382,4 +376,42 @@ public class DebugImpl implements IDebug {
                     && value.startsWith(pattern.substring(0, pattern.length() - 1));
         }
     }
+
+    /**
+     * Formats record prefixes into a reused buffer, one instance per thread. The date, which is formatted as
+     * {@code MM/dd/yyyy hh:mm:ss:SSS a zzz}, is only formatted once a second; in between only the milliseconds are
+     * appended to the cached text.
+     */
+    private static final class PrefixFormatter {
+
+        private static final FastDateFormat SECONDS_FORMAT = FastDateFormat.getInstance("MM/dd/yyyy hh:mm:ss:");
+        private static final FastDateFormat ZONE_FORMAT = FastDateFormat.getInstance(" a zzz");
+
+        private final StringBuilder buffer = new StringBuilder(256);
+        private long second = Long.MIN_VALUE;
+        private String secondsText;
+        private String zoneText;
+
+        private String format(String debugName, long now, String transactionId) {
+            long nowSecond = now / 1000;
+            if (nowSecond != second) {
+                secondsText = SECONDS_FORMAT.format(now);
+                zoneText = ZONE_FORMAT.format(now);
+                second = nowSecond;
+            }
+            int millis = (int) (now % 1000);
+            buffer.setLength(0);
+            buffer.append(debugName).append(':').append(secondsText);
+            if (millis < 100) {
+                buffer.append('0');
+            }
+            if (millis < 10) {
+                buffer.append('0');
+            }
+            buffer.append(millis).append(zoneText)
+                    .append(": ").append(Thread.currentThread().toString())
+                    .append(": TransactionId[").append(transactionId).append(']');
+            return buffer.toString();
+        }
+    }
 }
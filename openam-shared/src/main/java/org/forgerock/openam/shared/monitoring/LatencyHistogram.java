@@ -0,0 +1,214 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.shared.monitoring;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.forgerock.util.Reject;
+
+/**
+ * A lock free histogram of latencies, from which percentiles can be read.
+ * <br/>
+ * Samples are counted in a fixed set of log-linear buckets, in the manner of an HDR histogram: each power of two
+ * range is split into {@value #SUB_BUCKETS} equal buckets, so a percentile read from the histogram is within
+ * 1/{@value #SUB_BUCKETS} of the recorded value whatever its magnitude. Recording a sample is a handful of atomic
+ * increments, and taking a snapshot copies the same number of buckets however many samples have been recorded.
+ * <br/>
+ * The counts cover every sample since the histogram was created. Consumers wanting recent latencies, such as a
+ * Prometheus {@code histogram_quantile} over a rate, take the difference between successive snapshots.
+ *
+ * @since 14.0.0
+ */
+public final class LatencyHistogram {
+
+    static final int SUB_BUCKET_BITS = 4;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final TimeUnit unit;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Constructs an empty histogram.
+     *
+     * @param unit The unit of the values that will be recorded.
+     */
+    public LatencyHistogram(TimeUnit unit) {
+        Reject.ifNull(unit);
+        this.unit = unit;
+    }
+
+    /**
+     * @return The unit of the recorded values.
+     */
+    public TimeUnit getUnit() {
+        return unit;
+    }
+
+    /**
+     * Records a latency.
+     *
+     * @param value The latency in this histogram's unit, negative values are recorded as zero.
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        buckets.incrementAndGet(bucket(value));
+        sum.addAndGet(value);
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Takes a snapshot of the samples recorded so far. Samples recorded while the snapshot is taken may or may not
+     * be included.
+     *
+     * @return A non null snapshot.
+     */
+    public Snapshot getSnapshot() {
+        long[] counts = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            count += counts[i];
+        }
+        return new Snapshot(unit, counts, count, sum.get(), max.get());
+    }
+
+    /**
+     * Determines the bucket for the given value.
+     *
+     * @param value A non negative value.
+     * @return The bucket index, the value itself for values below {@link #SUB_BUCKETS}.
+     */
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * Determines the highest value counted by the given bucket.
+     *
+     * @param bucket A bucket index.
+     * @return The highest value that {@link #bucket(long)} maps to the bucket.
+     */
+    static long highestValue(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowest + ((1L << shift) - 1);
+    }
+
+    /**
+     * An immutable copy of a {@link LatencyHistogram}.
+     */
+    public static final class Snapshot {
+
+        private final TimeUnit unit;
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(TimeUnit unit, long[] counts, long count, long sum, long max) {
+            this.unit = unit;
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        /**
+         * @return The unit of the values in this snapshot.
+         */
+        public TimeUnit getUnit() {
+            return unit;
+        }
+
+        /**
+         * @return The number of recorded samples.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return The total of the recorded samples.
+         */
+        public long getSum() {
+            return sum;
+        }
+
+        /**
+         * @return The largest recorded sample, zero if nothing has been recorded.
+         */
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * Counts the samples no greater than the given value. Only buckets lying wholly at or below the value are
+         * counted, so a sample within 1/{@value #SUB_BUCKETS} below the value may be left out, but a larger sample
+         * is never counted.
+         *
+         * @param value A value in this snapshot's unit.
+         * @return The number of samples in the buckets at or below the value.
+         */
+        public long getCountAtOrBelow(long value) {
+            long total = 0;
+            for (int i = 0; i < counts.length && highestValue(i) <= value; i++) {
+                total += counts[i];
+            }
+            return total;
+        }
+
+        /**
+         * Finds the value below which the given fraction of the samples fall.
+         *
+         * @param quantile A fraction between zero and one, for example 0.99 for the 99th percentile.
+         * @return The highest value in the bucket holding the sample at that rank, never more than the largest
+         * recorded sample, or zero if nothing has been recorded.
+         */
+        public long getValueAtQuantile(double quantile) {
+            Reject.ifFalse(quantile >= 0 && quantile <= 1, "Quantile must be between 0 and 1");
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestValue(i), max);
+                }
+            }
+            return max;
+        }
+    }
+}
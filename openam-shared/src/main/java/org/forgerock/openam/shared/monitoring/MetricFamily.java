@@ -0,0 +1,138 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.shared.monitoring;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.forgerock.util.Reject;
+
+/**
+ * A named metric and its labelled children, one child per distinct set of label values.
+ *
+ * @param <T> The type of the children: {@link AtomicLong} for counters and {@link LatencyHistogram} for latencies.
+ * @since 14.0.0
+ * @see MetricsRegistry
+ */
+public final class MetricFamily<T> {
+
+    /**
+     * The kinds of metric held by a family.
+     */
+    public enum Type {
+        /** A monotonically increasing count, held in an {@link AtomicLong}. */
+        COUNTER,
+        /** Latencies counted in cumulative buckets, held in a {@link LatencyHistogram}. */
+        HISTOGRAM
+    }
+
+    private final String name;
+    private final String help;
+    private final Type type;
+    private final TimeUnit unit;
+    private final List<String> labelNames;
+    private final ConcurrentMap<List<String>, T> children = new ConcurrentHashMap<>();
+
+    MetricFamily(String name, String help, Type type, TimeUnit unit, String... labelNames) {
+        this.name = name;
+        this.help = help;
+        this.type = type;
+        this.unit = unit;
+        this.labelNames = Collections.unmodifiableList(Arrays.asList(labelNames.clone()));
+    }
+
+    /**
+     * @return The name of the metric.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return A description of the metric.
+     */
+    public String getHelp() {
+        return help;
+    }
+
+    /**
+     * @return The kind of metric.
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return The names of the labels that distinguish the children of this family.
+     */
+    public List<String> getLabelNames() {
+        return labelNames;
+    }
+
+    /**
+     * Returns the child for the given label values, creating it if need be. Callers on a hot path may keep hold of
+     * the child rather than looking it up for each sample.
+     *
+     * @param labelValues One non null value for each of the family's label names, in the same order.
+     * @return The child metric.
+     */
+    public T labels(String... labelValues) {
+        Reject.ifFalse(labelValues.length == labelNames.size(), "Expected values for labels " + labelNames);
+        List<String> key = Arrays.asList(labelValues.clone());
+        T child = children.get(key);
+        if (child == null) {
+            for (String value : labelValues) {
+                Reject.ifNull(value);
+            }
+            T created = newChild();
+            child = children.putIfAbsent(key, created);
+            if (child == null) {
+                child = created;
+            }
+        }
+        return child;
+    }
+
+    /**
+     * @return An unmodifiable live view of the children of this family, keyed by their label values.
+     */
+    public Map<List<String>, T> getChildren() {
+        return Collections.unmodifiableMap(children);
+    }
+
+    boolean isCompatible(Type type, TimeUnit unit, String... labelNames) {
+        return this.type == type && this.unit == unit && this.labelNames.equals(Arrays.asList(labelNames));
+    }
+
+    @SuppressWarnings("unchecked")
+    private T newChild() {
+        switch (type) {
+        case COUNTER:
+            return (T) new AtomicLong();
+        case HISTOGRAM:
+            return (T) new LatencyHistogram(unit);
+        default:
+            throw new IllegalStateException("Unknown metric type " + type);
+        }
+    }
+}
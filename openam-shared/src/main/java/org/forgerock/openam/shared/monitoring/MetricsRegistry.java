@@ -0,0 +1,106 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.shared.monitoring;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import javax.inject.Singleton;
+
+import org.forgerock.util.Reject;
+
+/**
+ * Holds the server's counters and latency histograms so that they can be published in the OpenMetrics text format
+ * by {@link OpenMetricsWriter}.
+ * <br/>
+ * The existing monitoring stores feed the registry as they record their own statistics. Recording is lock free, and
+ * publishing walks a fixed number of buckets per metric, so the cost of a scrape does not grow with the number of
+ * requests served.
+ *
+ * @since 14.0.0
+ */
+@Singleton
+public class MetricsRegistry {
+
+    private static final Pattern METRIC_NAME = Pattern.compile("[a-zA-Z_:][a-zA-Z0-9_:]*");
+    private static final Pattern LABEL_NAME = Pattern.compile("[a-zA-Z_][a-zA-Z0-9_]*");
+
+    private final ConcurrentMap<String, MetricFamily<?>> families = new ConcurrentSkipListMap<>();
+
+    /**
+     * Returns the named counter family, registering it if need be.
+     *
+     * @param name The metric name, without the {@code _total} suffix added when it is published.
+     * @param help A description of the metric.
+     * @param labelNames The names of the labels that distinguish the counters in the family.
+     * @return The counter family.
+     * @throws IllegalStateException If a different metric has already been registered with the name.
+     */
+    public MetricFamily<AtomicLong> counter(String name, String help, String... labelNames) {
+        return register(name, help, MetricFamily.Type.COUNTER, null, labelNames);
+    }
+
+    /**
+     * Returns the named latency family, registering it if need be.
+     *
+     * @param name The metric name, which by convention ends with {@code _seconds} as latencies are published in
+     * seconds.
+     * @param help A description of the metric.
+     * @param unit The unit in which latencies will be recorded.
+     * @param labelNames The names of the labels that distinguish the histograms in the family.
+     * @return The latency family.
+     * @throws IllegalStateException If a different metric has already been registered with the name.
+     */
+    public MetricFamily<LatencyHistogram> latency(String name, String help, TimeUnit unit, String... labelNames) {
+        Reject.ifNull(unit);
+        return register(name, help, MetricFamily.Type.HISTOGRAM, unit, labelNames);
+    }
+
+    /**
+     * @return An unmodifiable live view of the registered metric families, in name order.
+     */
+    public Collection<MetricFamily<?>> getFamilies() {
+        return Collections.unmodifiableCollection(families.values());
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> MetricFamily<T> register(String name, String help, MetricFamily.Type type, TimeUnit unit,
+            String... labelNames) {
+        Reject.ifFalse(name != null && METRIC_NAME.matcher(name).matches(), "Invalid metric name " + name);
+        for (String labelName : labelNames) {
+            Reject.ifFalse(labelName != null && LABEL_NAME.matcher(labelName).matches()
+                    && !labelName.equals(OpenMetricsWriter.BUCKET_LABEL), "Invalid label name " + labelName);
+        }
+        MetricFamily<?> family = families.get(name);
+        if (family == null) {
+            MetricFamily<?> created = new MetricFamily<>(name, help, type, unit, labelNames);
+            family = families.putIfAbsent(name, created);
+            if (family == null) {
+                family = created;
+            }
+        }
+        if (!family.isCompatible(type, unit, labelNames)) {
+            throw new IllegalStateException("Metric " + name + " is already registered as a different metric");
+        }
+        return (MetricFamily<T>) family;
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.shared.monitoring;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes the metrics held in a {@link MetricsRegistry} in the OpenMetrics text exposition format.
+ * <br/>
+ * Counters are published with the {@code _total} suffix. Latencies are published as histograms in seconds, with
+ * cumulative {@code _bucket} counts at each of the {@link #BUCKET_BOUNDS} and the count and sum of the samples, so
+ * a scraper can work out percentiles over whatever interval it chooses rather than over the life of the server.
+ *
+ * @since 14.0.0
+ */
+public class OpenMetricsWriter {
+
+    /**
+     * The content type of the OpenMetrics text format.
+     */
+    public static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+    static final String BUCKET_LABEL = "le";
+    static final String[] BUCKET_BOUNDS = {"0.001", "0.0025", "0.005", "0.01", "0.025", "0.05", "0.1", "0.25", "0.5",
+        "1.0", "2.5", "5.0", "10.0"};
+    private static final String INFINITE_BOUND = "+Inf";
+
+    private final Writer writer;
+
+    /**
+     * Constructs a writer.
+     *
+     * @param writer The writer to write the metrics to, which is not closed or flushed.
+     */
+    public OpenMetricsWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Writes every metric in the registry, followed by the end of exposition marker.
+     *
+     * @param registry The registry to write.
+     * @throws IOException If the underlying writer fails.
+     */
+    public void write(MetricsRegistry registry) throws IOException {
+        for (MetricFamily<?> family : registry.getFamilies()) {
+            if (family.getType() == MetricFamily.Type.COUNTER) {
+                writeHeader(family, "counter", null);
+                writeCounters(family);
+            } else {
+                writeHeader(family, "histogram", "seconds");
+                writeLatencies(family);
+            }
+        }
+        writer.write("# EOF\n");
+    }
+
+    private void writeHeader(MetricFamily<?> family, String type, String unit) throws IOException {
+        writer.append("# TYPE ").append(family.getName()).append(' ').append(type).append('\n');
+        if (unit != null && family.getName().endsWith("_" + unit)) {
+            writer.append("# UNIT ").append(family.getName()).append(' ').append(unit).append('\n');
+        }
+        if (family.getHelp() != null) {
+            writer.append("# HELP ").append(family.getName()).append(' ');
+            writeEscaped(family.getHelp());
+            writer.append('\n');
+        }
+    }
+
+    private void writeCounters(MetricFamily<?> family) throws IOException {
+        for (Map.Entry<List<String>, ?> child : family.getChildren().entrySet()) {
+            writeSample(family, "_total", child.getKey(), null, null);
+            writer.append(Long.toString(((AtomicLong) child.getValue()).get())).append('\n');
+        }
+    }
+
+    private void writeLatencies(MetricFamily<?> family) throws IOException {
+        for (Map.Entry<List<String>, ?> child : family.getChildren().entrySet()) {
+            LatencyHistogram.Snapshot snapshot = ((LatencyHistogram) child.getValue()).getSnapshot();
+            double toSeconds = snapshot.getUnit().toNanos(1) / (double) TimeUnit.SECONDS.toNanos(1);
+            for (String bound : BUCKET_BOUNDS) {
+                // Samples are whole numbers of the histogram's unit, so the bound is rounded down to one
+                long value = (long) Math.floor(Double.parseDouble(bound) / toSeconds + 1e-9);
+                writeSample(family, "_bucket", child.getKey(), BUCKET_LABEL, bound);
+                writer.append(Long.toString(snapshot.getCountAtOrBelow(value))).append('\n');
+            }
+            writeSample(family, "_bucket", child.getKey(), BUCKET_LABEL, INFINITE_BOUND);
+            writer.append(Long.toString(snapshot.getCount())).append('\n');
+            writeSample(family, "_count", child.getKey(), null, null);
+            writer.append(Long.toString(snapshot.getCount())).append('\n');
+            writeSample(family, "_sum", child.getKey(), null, null);
+            writer.append(Double.toString(snapshot.getSum() * toSeconds)).append('\n');
+        }
+    }
+
+    private void writeSample(MetricFamily<?> family, String suffix, List<String> labelValues, String extraLabel,
+            String extraValue) throws IOException {
+        writer.append(family.getName()).append(suffix);
+        List<String> labelNames = family.getLabelNames();
+        if (!labelNames.isEmpty() || extraLabel != null) {
+            char separator = '{';
+            for (int i = 0; i < labelNames.size(); i++) {
+                writer.append(separator).append(labelNames.get(i)).append("=\"");
+                writeEscaped(labelValues.get(i));
+                writer.append('"');
+                separator = ',';
+            }
+            if (extraLabel != null) {
+                writer.append(separator).append(extraLabel).append("=\"").append(extraValue).append('"');
+            }
+            writer.append('}');
+        }
+        writer.append(' ');
+    }
+
+    private void writeEscaped(String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '\\':
+                writer.write("\\\\");
+                break;
+            case '"':
+                writer.write("\\\"");
+                break;
+            case '\n':
+                writer.write("\\n");
+                break;
+            default:
+                writer.write(c);
+            }
+        }
+    }
+}
@@ -15,7 +15,7 @@
  */
 
 /*
- * Portions Copyrighted 2013-2015 ForgeRock AS.
+ * Portions Copyrighted 2013-2016 ForgeRock AS.
  */
 
 package org.forgerock.openam.utils;
@@ -43,8 +43,13 @@ import java.security.UnrecoverableKeyException;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Implementation of a {@code KeyProvider} interface for retrieving X509 Certificates and private
@@ -67,6 +72,14 @@ public class AMKeyProvider implements KeyProvider {
 
     HashMap keyTable = new HashMap();
 
+    /**
+     * Private keys already recovered from the key store, as recovering a key decrypts it and is far more expensive
+     * than the signing operation it is wanted for. Keys recovered with the key store's own key password are cached
+     * by alias alone, and keys recovered with a given encrypted key password by alias and that password, so that the
+     * two can never be mistaken for one another.
+     */
+    private final ConcurrentMap<List<String>, PrivateKey> privateKeys = new ConcurrentHashMap<>();
+
     /**
      * Constructor.
      */
@@ -232,6 +245,7 @@ public class AMKeyProvider implements KeyProvider {
     public void setKey(String storepass, String keypass) {
         keystorePass = storepass;
         privateKeyPass = keypass;
+        privateKeys.clear();
     }
 
     /**
@@ -283,10 +297,15 @@ public class AMKeyProvider implements KeyProvider {
      * @return PrivateKey which matches the certAlias, return null if the private key could not be found.
      */
     public java.security.PrivateKey getPrivateKey(String certAlias) {
-        java.security.PrivateKey key = null;
+        List<String> cacheKey = Collections.singletonList(certAlias);
+        java.security.PrivateKey key = privateKeys.get(cacheKey);
+        if (key != null) {
+            return key;
+        }
         try {
             key = (PrivateKey) ks.getKey(certAlias,
                     privateKeyPass.toCharArray());
+            cacheKey(cacheKey, key);
         } catch (KeyStoreException e) {
             logger.error(e.getMessage());
         } catch (NoSuchAlgorithmException e) {
@@ -305,12 +324,17 @@ public class AMKeyProvider implements KeyProvider {
      */
     public PrivateKey getPrivateKey(String certAlias, String encryptedKeyPass) {
 
-        PrivateKey key = null;
+        List<String> cacheKey = Arrays.asList(certAlias, encryptedKeyPass);
+        PrivateKey key = privateKeys.get(cacheKey);
+        if (key != null) {
+            return key;
+        }
 
         String keyPass = decodePassword(encryptedKeyPass);
         if (keyPass != null) {
             try {
                 key = (PrivateKey) ks.getKey(certAlias, keyPass.toCharArray());
+                cacheKey(cacheKey, key);
             } catch (KeyStoreException e) {
                 logger.error(e.getMessage());
             } catch (NoSuchAlgorithmException e) {
@@ -327,6 +351,12 @@ public class AMKeyProvider implements KeyProvider {
         return key;
     }
 
+    private void cacheKey(List<String> cacheKey, PrivateKey key) {
+        if (key != null) {
+            privateKeys.put(cacheKey, key);
+        }
+    }
+
     /**
      * Return {@link KeyPair} containing {@link PublicKey} and {@link PrivateKey} for the specified certAlias.
      *
@@ -418,6 +448,7 @@ public class AMKeyProvider implements KeyProvider {
     public void setCertificateEntry(String certAlias, Certificate cert) throws KeyStoreException {
         try {
             ks.setCertificateEntry(certAlias, cert);
+            privateKeys.clear();
         } catch (KeyStoreException e) {
             logger.error(e.getMessage());
             throw e;
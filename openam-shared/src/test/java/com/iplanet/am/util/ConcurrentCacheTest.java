@@ -0,0 +1,167 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.iplanet.am.util;
+
+import static org.fest.assertions.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+public class ConcurrentCacheTest {
+
+    @Test
+    public void shouldStoreAndRetrieveValues() {
+        ConcurrentCache cache = new ConcurrentCache(10);
+
+        cache.put("one", 1);
+        cache.put("two", 2);
+
+        assertThat(cache.get("one")).isEqualTo(1);
+        assertThat(cache.containsKey("two")).isTrue();
+        assertThat(cache.contains(2)).isTrue();
+        assertThat(cache.get("three")).isNull();
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.getHitCount()).isEqualTo(1);
+        assertThat(cache.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldReturnPreviousValueOnPutAndRemove() {
+        ConcurrentCache cache = new ConcurrentCache(10);
+
+        assertThat(cache.put("key", "first")).isNull();
+        assertThat(cache.put("key", "second")).isEqualTo("first");
+        assertThat(cache.remove("key")).isEqualTo("second");
+        assertThat(cache.remove("key")).isNull();
+        assertThat(cache.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void shouldNeverExceedMaximumSize() {
+        ConcurrentCache cache = new ConcurrentCache(100);
+
+        for (int i = 0; i < 1000; i++) {
+            cache.put("key" + i, i);
+        }
+
+        assertThat(cache.size()).isLessThanOrEqualTo(100);
+        assertThat(cache.getEvictionCount()).isEqualTo(1000 - cache.size());
+        assertThat(cache.audit()).isEmpty();
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedEntry() {
+        ConcurrentCache cache = new ConcurrentCache(2, 0, 1);
+        cache.put("a", "a");
+        cache.put("b", "b");
+
+        cache.get("a");
+        cache.put("c", "c");
+
+        assertThat(cache.containsKey("a")).isTrue();
+        assertThat(cache.containsKey("b")).isFalse();
+        assertThat(cache.containsKey("c")).isTrue();
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedEntriesOnRequest() {
+        final List<Object> dropped = new ArrayList<Object>();
+        ConcurrentCache cache = new ConcurrentCache(10, 0, 1) {
+            @Override
+            protected void onEviction(Object key, Object value) {
+                dropped.add(key);
+            }
+        };
+        cache.put("a", "a");
+        cache.put("b", "b");
+        cache.put("c", "c");
+        cache.get("a");
+
+        assertThat(cache.evict(2)).isEqualTo(2);
+
+        assertThat(dropped).isEqualTo(Arrays.<Object>asList("b", "c"));
+        assertThat(cache.containsKey("a")).isTrue();
+        assertThat(cache.evict(5)).isEqualTo(1);
+        assertThat(cache.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void shouldExpireEntriesAfterTimeToLive() throws Exception {
+        ConcurrentCache cache = new ConcurrentCache(10, 1, 1);
+        cache.put("key", "value");
+
+        Thread.sleep(5);
+
+        assertThat(cache.get("key")).isNull();
+        assertThat(cache.getExpirationCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldRemoveThroughKeySetIterator() {
+        ConcurrentCache cache = new ConcurrentCache(10);
+        cache.put("one", 1);
+        cache.put("two", 2);
+
+        Iterator it = cache.keySet().iterator();
+        while (it.hasNext()) {
+            if ("one".equals(it.next())) {
+                it.remove();
+            }
+        }
+
+        assertThat(cache.keySet()).containsOnly("two");
+        assertThat(cache.values()).containsOnly(2);
+    }
+
+    @Test
+    public void shouldNotFailWhenModifiedDuringIteration() {
+        ConcurrentCache cache = new ConcurrentCache(10);
+        cache.put("one", 1);
+        cache.put("two", 2);
+
+        for (Object key : cache.keySet()) {
+            cache.put(key + "-copy", 3);
+        }
+
+        assertThat(cache.size()).isEqualTo(4);
+    }
+
+    @Test
+    public void shouldBeEqualToCacheWithSameMappings() {
+        ConcurrentCache concurrent = new ConcurrentCache(10);
+        Cache cache = new Cache(10);
+        concurrent.put("one", 1);
+        cache.put("one", 1);
+
+        assertThat(concurrent).isEqualTo(cache);
+        assertThat(concurrent.hashCode()).isEqualTo(cache.hashCode());
+    }
+
+    @Test(expectedExceptions = NullPointerException.class)
+    public void shouldRejectNullValues() {
+        new ConcurrentCache(10).put("key", null);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void shouldRejectInvalidMaximumSize() {
+        new ConcurrentCache(0);
+    }
+}
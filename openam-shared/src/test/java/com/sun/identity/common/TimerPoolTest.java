@@ -0,0 +1,142 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.common;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class TimerPoolTest {
+
+    private TimerPool pool;
+
+    @DataProvider
+    public Object[][] ticks() {
+        return new Object[][] {{0L}, {10L}};
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    @Test(dataProvider = "ticks")
+    public void shouldRunScheduledTask(long tick) throws Exception {
+        // Given
+        pool = new TimerPool("TimerPoolTest", 2, true, null, tick);
+        LatchTask task = new LatchTask(1, -1);
+
+        // When
+        pool.schedule(task, 50L);
+
+        // Then
+        assertThat(task.latch.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test(dataProvider = "ticks")
+    public void shouldRunTasksScheduledForTheSameTime(long tick) throws Exception {
+        // Given
+        pool = new TimerPool("TimerPoolTest", 2, true, null, tick);
+        CountDownLatch latch = new CountDownLatch(2);
+        long time = System.currentTimeMillis() + 50L;
+
+        // When
+        pool.schedule(new LatchTask(latch, -1), new Date(time));
+        pool.schedule(new LatchTask(latch, -1), new Date(time));
+
+        // Then
+        assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test(dataProvider = "ticks")
+    public void shouldNotRunCancelledTask(long tick) throws Exception {
+        // Given
+        pool = new TimerPool("TimerPoolTest", 2, true, null, tick);
+        LatchTask cancelled = new LatchTask(1, -1);
+        LatchTask later = new LatchTask(1, -1);
+        pool.schedule(cancelled, 50L);
+        pool.schedule(later, 200L);
+
+        // When
+        cancelled.cancel();
+
+        // Then
+        assertThat(later.latch.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(cancelled.latch.getCount()).isEqualTo(1L);
+        assertThat(cancelled.scheduledExecutionTime()).isEqualTo(-1L);
+    }
+
+    @Test(dataProvider = "ticks")
+    public void shouldRescheduleRepeatingTask(long tick) throws Exception {
+        // Given
+        pool = new TimerPool("TimerPoolTest", 2, true, null, tick);
+        LatchTask task = new LatchTask(3, 20L);
+
+        // When
+        pool.schedule(task, 20L);
+
+        // Then
+        assertThat(task.latch.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private static final class LatchTask extends GeneralTaskRunnable {
+        private final CountDownLatch latch;
+        private final long runPeriod;
+
+        private LatchTask(int count, long runPeriod) {
+            this(new CountDownLatch(count), runPeriod);
+        }
+
+        private LatchTask(CountDownLatch latch, long runPeriod) {
+            this.latch = latch;
+            this.runPeriod = runPeriod;
+        }
+
+        @Override
+        public boolean addElement(Object key) {
+            return false;
+        }
+
+        @Override
+        public boolean removeElement(Object key) {
+            return false;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return true;
+        }
+
+        @Override
+        public long getRunPeriod() {
+            return runPeriod;
+        }
+
+        @Override
+        public void run() {
+            latch.countDown();
+        }
+    }
+}
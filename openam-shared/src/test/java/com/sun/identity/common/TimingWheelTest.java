@@ -0,0 +1,113 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.common;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class TimingWheelTest {
+    private static final long TICK = 10L;
+    private static final int WHEEL_SIZE = 4;
+
+    private TimingWheel<String> wheel;
+
+    @BeforeMethod
+    public void setup() {
+        wheel = new TimingWheel<String>(TICK, WHEEL_SIZE, 1000L);
+    }
+
+    @Test
+    public void shouldNotReportItemsBeforeTheyExpire() {
+        // Given
+        wheel.schedule("a", 1015L);
+
+        // When / Then
+        assertThat(wheel.expire(1005L)).isEmpty();
+        assertThat(wheel.expire(1015L)).isEmpty();
+    }
+
+    @Test
+    public void shouldReportItemsWithinOneTickOfExpiry() {
+        // Given
+        wheel.schedule("a", 1015L);
+
+        // When
+        List<String> expired = wheel.expire(1020L);
+
+        // Then
+        assertThat(expired).containsExactly("a");
+        assertThat(wheel.expire(1100L)).isEmpty();
+    }
+
+    @Test
+    public void shouldReportItemsBeyondTheRangeOfTheLowestWheel() {
+        // Given
+        wheel.schedule("near", 1025L);
+        wheel.schedule("far", 1000L + TICK * WHEEL_SIZE * WHEEL_SIZE + 5L);
+
+        // When / Then
+        assertThat(wheel.expire(1030L)).containsExactly("near");
+        assertThat(wheel.expire(1160L)).isEmpty();
+        assertThat(wheel.expire(1170L)).containsExactly("far");
+    }
+
+    @Test
+    public void shouldReportItemsThatHaveAlreadyExpired() {
+        // Given
+        wheel.expire(1100L);
+
+        // When
+        wheel.schedule("a", 1050L);
+
+        // Then
+        assertThat(wheel.expire(1100L)).containsExactly("a");
+    }
+
+    @Test
+    public void shouldReportEveryItemOnceWhenTimeJumps() {
+        // Given
+        Random random = new Random(42L);
+        Map<String, Long> expiryTimes = new HashMap<String, Long>();
+        long now = 1000L;
+        for (int i = 0; i < 10000; i++) {
+            long expiryTime = now + random.nextInt(100000);
+            expiryTimes.put("item" + i, expiryTime);
+            wheel.schedule("item" + i, expiryTime);
+        }
+
+        // When
+        List<String> expired = new ArrayList<String>();
+        while (expired.size() < expiryTimes.size()) {
+            now += random.nextInt(5000);
+            for (String item : wheel.expire(now)) {
+                assertThat(expiryTimes.get(item)).isLessThan(now);
+                expired.add(item);
+            }
+        }
+
+        // Then
+        assertThat(expired).doesNotHaveDuplicates().hasSize(expiryTimes.size());
+    }
+}
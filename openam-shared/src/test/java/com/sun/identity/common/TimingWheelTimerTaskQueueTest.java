@@ -0,0 +1,137 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.common;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Date;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class TimingWheelTimerTaskQueueTest {
+    private static final long TICK = 100L;
+
+    private TimingWheelTimerTaskQueue queue;
+    private long now;
+
+    @BeforeMethod
+    public void setup() {
+        now = System.currentTimeMillis();
+        queue = new TimingWheelTimerTaskQueue(TICK, 8);
+    }
+
+    @Test
+    public void shouldFindHeadByTime() {
+        // Given
+        HeadTaskRunnable head = head(now + 1000L);
+
+        // When
+        HeadTaskRunnable existing = queue.putIfAbsent(now + 1000L, head);
+
+        // Then
+        assertThat(existing).isNull();
+        assertThat(queue.get(now + 1000L)).isSameAs(head);
+        assertThat(queue.putIfAbsent(now + 1000L, head(now + 1000L))).isSameAs(head);
+    }
+
+    @Test
+    public void shouldOnlyReturnHeadsOnceDue() {
+        // Given
+        HeadTaskRunnable head = head(now + 1000L);
+        queue.putIfAbsent(now + 1000L, head);
+
+        // When / Then
+        assertThat(queue.pollDue(now + 500L)).isNull();
+        assertThat(queue.pollDue(now + 1000L + TICK)).isSameAs(head);
+        assertThat(queue.get(now + 1000L)).isNull();
+        assertThat(queue.pollDue(now + 5000L)).isNull();
+    }
+
+    @Test
+    public void shouldSkipRemovedHeads() {
+        // Given
+        queue.putIfAbsent(now + 1000L, head(now + 1000L));
+        HeadTaskRunnable later = head(now + 1050L);
+        queue.putIfAbsent(now + 1050L, later);
+
+        // When
+        queue.remove(now + 1000L);
+
+        // Then
+        assertThat(queue.pollDue(now + 2000L)).isSameAs(later);
+        assertThat(queue.pollDue(now + 2000L)).isNull();
+    }
+
+    @Test
+    public void shouldReturnEveryDueHeadBeforeAdvancing() {
+        // Given
+        queue.putIfAbsent(now + 1000L, head(now + 1000L));
+        queue.putIfAbsent(now + 1001L, head(now + 1001L));
+
+        // When
+        HeadTaskRunnable first = queue.pollDue(now + 2000L);
+
+        // Then
+        assertThat(first).isNotNull();
+        assertThat(queue.nextRunTime(now + 2000L)).isEqualTo(now + 2000L);
+        assertThat(queue.pollDue(now + 2000L)).isNotNull().isNotSameAs(first);
+    }
+
+    @Test
+    public void shouldWaitForNextTickWhileHeadsAreScheduled() {
+        // Given
+        assertThat(queue.nextRunTime(now)).isEqualTo(-1L);
+        queue.putIfAbsent(now + 60000L, head(now + 60000L));
+
+        // When
+        long nextRunTime = queue.nextRunTime(now);
+
+        // Then
+        assertThat(nextRunTime).isGreaterThan(now).isLessThanOrEqualTo(now + TICK);
+    }
+
+    private static HeadTaskRunnable head(long time) {
+        return new HeadTaskRunnable(null, new Task(), new Date(time));
+    }
+
+    private static final class Task extends GeneralTaskRunnable {
+        @Override
+        public boolean addElement(Object key) {
+            return false;
+        }
+
+        @Override
+        public boolean removeElement(Object key) {
+            return false;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return true;
+        }
+
+        @Override
+        public long getRunPeriod() {
+            return -1;
+        }
+
+        @Override
+        public void run() {
+        }
+    }
+}
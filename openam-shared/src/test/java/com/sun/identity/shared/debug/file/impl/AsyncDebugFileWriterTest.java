@@ -0,0 +1,136 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.shared.debug.file.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.sun.identity.shared.debug.file.DebugFile;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class AsyncDebugFileWriterTest {
+
+    private final RecordingDebugFile fallback = new RecordingDebugFile();
+    private AsyncDebugFileWriter writer;
+
+    @AfterMethod
+    public void tearDown() {
+        writer.shutdown();
+    }
+
+    @Test
+    public void shouldWriteRecordsInOrder() {
+        // Given
+        writer = new AsyncDebugFileWriter(4, fallback);
+        RecordingDebugFile first = new RecordingDebugFile();
+        RecordingDebugFile second = new RecordingDebugFile();
+
+        // When
+        for (int i = 0; i < 10; i++) {
+            writer.publish(i % 2 == 0 ? first : second, "prefix", "message" + i, null);
+            writer.flush(1, TimeUnit.SECONDS);
+        }
+
+        // Then
+        assertThat(first.messages).containsExactly("message0", "message2", "message4", "message6", "message8");
+        assertThat(second.messages).containsExactly("message1", "message3", "message5", "message7", "message9");
+        assertThat(writer.getWrittenCount()).isEqualTo(10);
+        assertThat(writer.getQueueDepth()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldDropAndReportRecordsWhenBufferIsFull() throws Exception {
+        // Given
+        writer = new AsyncDebugFileWriter(2, fallback);
+        RecordingDebugFile debugFile = new RecordingDebugFile();
+        debugFile.blocked = new CountDownLatch(1);
+        writer.publish(debugFile, "prefix", "blocking", null);
+        while (writer.getQueueDepth() > 0) {
+            Thread.yield();
+        }
+
+        // When
+        writer.publish(debugFile, "prefix", "queued1", null);
+        writer.publish(debugFile, "prefix", "queued2", null);
+        writer.publish(debugFile, "prefix", "dropped", null);
+        debugFile.blocked.countDown();
+        writer.flush(1, TimeUnit.SECONDS);
+
+        // Then
+        assertThat(writer.getDroppedCount()).isEqualTo(1);
+        assertThat(debugFile.messages).containsExactly("blocking",
+                "1 debug records were dropped because the debug buffer was full", "queued1", "queued2");
+    }
+
+    @Test
+    public void shouldWriteToFallbackWhenDebugFileFails() {
+        // Given
+        writer = new AsyncDebugFileWriter(4, fallback);
+        RecordingDebugFile debugFile = new RecordingDebugFile();
+        debugFile.failing = true;
+
+        // When
+        writer.publish(debugFile, "prefix", "message", null);
+        writer.flush(1, TimeUnit.SECONDS);
+
+        // Then
+        assertThat(fallback.messages).containsExactly("Debug file can't be written : failed", "message");
+    }
+
+    @Test
+    public void shouldWriteQueuedRecordsOnShutdownAndThenRefuseRecords() {
+        // Given
+        writer = new AsyncDebugFileWriter(4, fallback);
+        RecordingDebugFile debugFile = new RecordingDebugFile();
+        writer.publish(debugFile, "prefix", "message", null);
+
+        // When
+        writer.shutdown();
+
+        // Then
+        assertThat(debugFile.messages).containsExactly("message");
+        assertThat(writer.publish(debugFile, "prefix", "late", null)).isFalse();
+    }
+
+    private static final class RecordingDebugFile implements DebugFile {
+        private final List<String> messages = new CopyOnWriteArrayList<>();
+        private volatile CountDownLatch blocked;
+        private volatile boolean failing;
+
+        @Override
+        public void writeIt(String prefix, String msg, Throwable th) throws IOException {
+            if (failing) {
+                throw new IOException("failed");
+            }
+            messages.add(msg);
+            if (blocked != null) {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                blocked = null;
+            }
+        }
+    }
+}
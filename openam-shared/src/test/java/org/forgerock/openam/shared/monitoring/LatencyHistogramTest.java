@@ -0,0 +1,109 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.shared.monitoring;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void shouldMapEveryValueToBucketContainingIt() {
+        for (long value : new long[] {0, 1, 15, 16, 17, 31, 32, 33, 1000, 123456789, Long.MAX_VALUE}) {
+            int bucket = LatencyHistogram.bucket(value);
+            assertThat(bucket).isLessThan(LatencyHistogram.BUCKETS);
+            assertThat(LatencyHistogram.highestValue(bucket)).isGreaterThanOrEqualTo(value);
+            if (bucket > 0) {
+                assertThat(LatencyHistogram.highestValue(bucket - 1)).isLessThan(value);
+            }
+        }
+    }
+
+    @Test
+    public void shouldReadPercentilesWithinBucketPrecision() {
+        // Given
+        LatencyHistogram histogram = new LatencyHistogram(TimeUnit.MICROSECONDS);
+        for (int i = 1; i <= 10000; i++) {
+            histogram.record(i);
+        }
+
+        // When
+        LatencyHistogram.Snapshot snapshot = histogram.getSnapshot();
+
+        // Then
+        assertThat(snapshot.getCount()).isEqualTo(10000);
+        assertThat(snapshot.getSum()).isEqualTo(50005000L);
+        assertThat(snapshot.getMax()).isEqualTo(10000);
+        assertThat(snapshot.getValueAtQuantile(0.5)).isBetween(5000L, 5000L + 5000L / LatencyHistogram.SUB_BUCKETS);
+        assertThat(snapshot.getValueAtQuantile(0.99)).isBetween(9900L, 9900L + 9900L / LatencyHistogram.SUB_BUCKETS);
+        assertThat(snapshot.getValueAtQuantile(1)).isEqualTo(10000);
+        assertThat(snapshot.getValueAtQuantile(0)).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldCountSamplesAtOrBelowValueWithinBucketPrecision() {
+        // Given
+        LatencyHistogram histogram = new LatencyHistogram(TimeUnit.MICROSECONDS);
+        for (int i = 1; i <= 10000; i++) {
+            histogram.record(i);
+        }
+
+        // When
+        LatencyHistogram.Snapshot snapshot = histogram.getSnapshot();
+
+        // Then
+        assertThat(snapshot.getCountAtOrBelow(0)).isEqualTo(0);
+        assertThat(snapshot.getCountAtOrBelow(10)).isEqualTo(10);
+        assertThat(snapshot.getCountAtOrBelow(5000)).isBetween(5000L - 5000L / LatencyHistogram.SUB_BUCKETS, 5000L);
+        assertThat(snapshot.getCountAtOrBelow(Long.MAX_VALUE)).isEqualTo(10000);
+    }
+
+    @Test
+    public void shouldNotReportMoreThanLargestSample() {
+        // Given
+        LatencyHistogram histogram = new LatencyHistogram(TimeUnit.MILLISECONDS);
+        histogram.record(1000);
+
+        // When
+        long p99 = histogram.getSnapshot().getValueAtQuantile(0.99);
+
+        // Then
+        assertThat(p99).isEqualTo(1000);
+    }
+
+    @Test
+    public void shouldRecordNegativeValuesAsZero() {
+        // Given
+        LatencyHistogram histogram = new LatencyHistogram(TimeUnit.MILLISECONDS);
+
+        // When
+        histogram.record(-5);
+
+        // Then
+        LatencyHistogram.Snapshot snapshot = histogram.getSnapshot();
+        assertThat(snapshot.getCount()).isEqualTo(1);
+        assertThat(snapshot.getValueAtQuantile(0.5)).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldReportZeroWhenEmpty() {
+        assertThat(new LatencyHistogram(TimeUnit.MILLISECONDS).getSnapshot().getValueAtQuantile(0.99)).isEqualTo(0);
+    }
+}
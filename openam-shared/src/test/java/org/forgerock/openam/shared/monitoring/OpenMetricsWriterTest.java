@@ -0,0 +1,130 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.shared.monitoring;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class OpenMetricsWriterTest {
+
+    private MetricsRegistry registry;
+
+    @BeforeMethod
+    public void setup() {
+        registry = new MetricsRegistry();
+    }
+
+    @Test
+    public void shouldWriteCounters() throws IOException {
+        // Given
+        MetricFamily<?> family = registry.counter("openam_test", "Test \"counter\"", "outcome");
+        registry.counter("openam_test", "Test \"counter\"", "outcome").labels("success").addAndGet(3);
+
+        // When
+        String text = write();
+
+        // Then
+        assertThat(family.getChildren()).hasSize(1);
+        assertThat(text).isEqualTo("# TYPE openam_test counter\n"
+                + "# HELP openam_test Test \\\"counter\\\"\n"
+                + "openam_test_total{outcome=\"success\"} 3\n"
+                + "# EOF\n");
+    }
+
+    @Test
+    public void shouldWriteLatenciesInSeconds() throws IOException {
+        // Given
+        LatencyHistogram histogram = registry.latency("openam_test_seconds", null, TimeUnit.MILLISECONDS).labels();
+        histogram.record(10);
+        histogram.record(10);
+
+        // When
+        String text = write();
+
+        // Then
+        assertThat(text).startsWith("# TYPE openam_test_seconds histogram\n# UNIT openam_test_seconds seconds\n")
+                .contains("openam_test_seconds_bucket{le=\"0.005\"} 0\n")
+                .contains("openam_test_seconds_bucket{le=\"0.01\"} 2\n")
+                .contains("openam_test_seconds_bucket{le=\"10.0\"} 2\n")
+                .contains("openam_test_seconds_bucket{le=\"+Inf\"} 2\n")
+                .contains("openam_test_seconds_sum 0.02\n")
+                .contains("openam_test_seconds_count 2\n")
+                .endsWith("# EOF\n");
+    }
+
+    @Test
+    public void shouldWriteCumulativeBuckets() throws IOException {
+        // Given
+        LatencyHistogram histogram = registry.latency("openam_test_seconds", null, TimeUnit.MILLISECONDS).labels();
+        histogram.record(1);
+        histogram.record(3);
+        histogram.record(400);
+        histogram.record(20000);
+
+        // When
+        String text = write();
+
+        // Then
+        assertThat(text).contains("openam_test_seconds_bucket{le=\"0.001\"} 1\n")
+                .contains("openam_test_seconds_bucket{le=\"0.0025\"} 1\n")
+                .contains("openam_test_seconds_bucket{le=\"0.005\"} 2\n")
+                .contains("openam_test_seconds_bucket{le=\"0.25\"} 2\n")
+                .contains("openam_test_seconds_bucket{le=\"0.5\"} 3\n")
+                .contains("openam_test_seconds_bucket{le=\"10.0\"} 3\n")
+                .contains("openam_test_seconds_bucket{le=\"+Inf\"} 4\n");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void shouldRejectReservedBucketLabel() {
+        registry.latency("openam_test_seconds", null, TimeUnit.MILLISECONDS, "le");
+    }
+
+    @Test
+    public void shouldEscapeLabelValues() throws IOException {
+        // Given
+        registry.counter("openam_test", null, "realm").labels("a\\b\n\"c\"").incrementAndGet();
+
+        // When
+        String text = write();
+
+        // Then
+        assertThat(text).contains("openam_test_total{realm=\"a\\\\b\\n\\\"c\\\"\"} 1\n");
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void shouldRejectNameRegisteredAsDifferentMetric() {
+        registry.counter("openam_test", null);
+        registry.latency("openam_test", null, TimeUnit.MILLISECONDS);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void shouldRejectWrongNumberOfLabelValues() {
+        registry.counter("openam_test", null, "outcome").labels();
+    }
+
+    private String write() throws IOException {
+        StringWriter writer = new StringWriter();
+        new OpenMetricsWriter(writer).write(registry);
+        return writer.toString();
+    }
+}
@@ -107,4 +107,13 @@ public class AMKeyProviderTest {
         PrivateKey key = amKeyProvider.getPrivateKey(PRIVATE_KEY_ALIAS);
         Assert.assertNull(key);
     }
+
+    @Test
+    public void getPrivateKeyUsingNullPasswordAfterDefaultPasswordIsCached() {
+
+        // A key recovered with the default password must not be returned for a null password
+        Assert.assertNotNull(amKeyProvider.getPrivateKey(DEFAULT_PRIVATE_KEY_ALIAS));
+        PrivateKey key = amKeyProvider.getPrivateKey(DEFAULT_PRIVATE_KEY_ALIAS, null);
+        Assert.assertNull(key);
+    }
 }
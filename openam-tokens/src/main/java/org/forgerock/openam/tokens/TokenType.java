@@ -11,7 +11,7 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2013-2015 ForgeRock AS.
+ * Copyright 2013-2016 ForgeRock AS.
  */
 
 package org.forgerock.openam.tokens;
@@ -72,5 +72,13 @@ public enum TokenType {
     /**
      * STS token type.
      */
-    STS
+    STS,
+    /**
+     * Session blacklist delta token type.
+     */
+    SESSION_BLACKLIST_DELTA,
+    /**
+     * Stateless OAuth2 token blacklist token type.
+     */
+    OAUTH2_BLACKLIST
 }